@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks.extractor;
+
+import static com.google.android.exoplayer.benchmarks.extractor.Mp4Builder.box;
+import static com.google.android.exoplayer.benchmarks.extractor.Mp4Builder.fullBoxPayload;
+
+import com.google.android.exoplayer.benchmarks.testutil.BenchmarkTestCase;
+import com.google.android.exoplayer.benchmarks.testutil.DiscardingExtractorOutput;
+import com.google.android.exoplayer.benchmarks.testutil.ExtractorBenchmarkUtil;
+import com.google.android.exoplayer.benchmarks.testutil.SyntheticMedia;
+import com.google.android.exoplayer.extractor.mp4.FragmentedMp4Extractor;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Benchmarks {@link FragmentedMp4Extractor} on a file holding H.264 video and AAC audio, in
+ * fragments of one second that each contain a run of samples for both tracks.
+ */
+public final class FragmentedMp4ExtractorBenchmark extends BenchmarkTestCase {
+
+  private static final int FRAGMENT_COUNT = 10;
+  private static final int VIDEO_SAMPLES_PER_FRAGMENT = Mp4Builder.VIDEO_TIMESCALE;
+  private static final int AUDIO_SAMPLES_PER_FRAGMENT = 43;
+  private static final int KEYFRAME_SIZE = 40000;
+  private static final int NON_KEYFRAME_SIZE = 8000;
+
+  private static final int SAMPLE_IS_NON_SYNC_SAMPLE = 0x10000;
+  // data_offset_present, first_sample_flags_present, sample_duration_present, sample_size_present.
+  private static final int VIDEO_TRUN_FLAGS = 0x000305;
+  // data_offset_present, sample_size_present.
+  private static final int AUDIO_TRUN_FLAGS = 0x000201;
+
+  private byte[] file;
+  private DiscardingExtractorOutput output;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    file = buildFile(new Random(0));
+    output = new DiscardingExtractorOutput();
+  }
+
+  public void testExtract() throws Exception {
+    measure("extract", file.length, new Operation() {
+      @Override
+      public void run() throws Exception {
+        ExtractorBenchmarkUtil.extract(new FragmentedMp4Extractor(), file, output);
+      }
+    });
+    assertEquals(2, output.trackCount);
+    assertEquals(FRAGMENT_COUNT * (VIDEO_SAMPLES_PER_FRAGMENT + AUDIO_SAMPLES_PER_FRAGMENT),
+        output.sampleCount);
+  }
+
+  private static byte[] buildFile(Random random) {
+    ByteArrayOutputStream file = new ByteArrayOutputStream();
+    write(file, Mp4Builder.ftyp());
+    write(file, buildMoov());
+    for (int fragment = 0; fragment < FRAGMENT_COUNT; fragment++) {
+      ByteArrayOutputStream mdatPayload = new ByteArrayOutputStream();
+      int[] videoSampleSizes = new int[VIDEO_SAMPLES_PER_FRAGMENT];
+      for (int i = 0; i < VIDEO_SAMPLES_PER_FRAGMENT; i++) {
+        // Each fragment starts with a keyframe.
+        videoSampleSizes[i] = i == 0 ? KEYFRAME_SIZE : NON_KEYFRAME_SIZE;
+        write(mdatPayload, Mp4Builder.createVideoSample(random, videoSampleSizes[i], i == 0));
+      }
+      int videoDataSize = mdatPayload.size();
+      int[] audioSampleSizes = new int[AUDIO_SAMPLES_PER_FRAGMENT];
+      for (int i = 0; i < AUDIO_SAMPLES_PER_FRAGMENT; i++) {
+        audioSampleSizes[i] = Mp4Builder.AUDIO_FRAME_SIZE;
+        write(mdatPayload, SyntheticMedia.createRandomData(random, audioSampleSizes[i]));
+      }
+
+      long videoDecodeTime = (long) fragment * VIDEO_SAMPLES_PER_FRAGMENT;
+      long audioDecodeTime = (long) fragment * AUDIO_SAMPLES_PER_FRAGMENT
+          * Mp4Builder.AUDIO_FRAME_DURATION;
+      // The size of the moof box doesn't depend on the data offsets.
+      int moofSize = buildMoof(fragment, videoDecodeTime, videoSampleSizes, 0, audioDecodeTime,
+          audioSampleSizes, 0).length;
+      write(file, buildMoof(fragment, videoDecodeTime, videoSampleSizes, moofSize + 8,
+          audioDecodeTime, audioSampleSizes, moofSize + 8 + videoDataSize));
+      write(file, box("mdat", mdatPayload.toByteArray()));
+    }
+    return file.toByteArray();
+  }
+
+  private static byte[] buildMoov() {
+    byte[][] emptySampleTable = new byte[][] {
+        box("stts", fullBoxPayload(0)),
+        box("stsc", fullBoxPayload(0)),
+        box("stsz", fullBoxPayload(0, 0)),
+        box("stco", fullBoxPayload(0))};
+    return box("moov",
+        Mp4Builder.mvhd(),
+        Mp4Builder.videoTrak(emptySampleTable),
+        Mp4Builder.audioTrak(emptySampleTable),
+        box("mvex",
+            // track_ID, default_sample_description_index, duration, size and flags.
+            box("trex", fullBoxPayload(Mp4Builder.VIDEO_TRACK_ID, 1, 1, 0,
+                SAMPLE_IS_NON_SYNC_SAMPLE)),
+            box("trex", fullBoxPayload(Mp4Builder.AUDIO_TRACK_ID, 1,
+                Mp4Builder.AUDIO_FRAME_DURATION, 0, 0))));
+  }
+
+  private static byte[] buildMoof(int sequenceNumber, long videoDecodeTime,
+      int[] videoSampleSizes, int videoDataOffset, long audioDecodeTime, int[] audioSampleSizes,
+      int audioDataOffset) {
+    ByteBuffer videoTrun = ByteBuffer.allocate(16 + 8 * videoSampleSizes.length);
+    videoTrun.putInt(VIDEO_TRUN_FLAGS);
+    videoTrun.putInt(videoSampleSizes.length);
+    videoTrun.putInt(videoDataOffset);
+    videoTrun.putInt(0); // first_sample_flags
+    for (int sampleSize : videoSampleSizes) {
+      videoTrun.putInt(1);
+      videoTrun.putInt(sampleSize);
+    }
+    ByteBuffer audioTrun = ByteBuffer.allocate(12 + 4 * audioSampleSizes.length);
+    audioTrun.putInt(AUDIO_TRUN_FLAGS);
+    audioTrun.putInt(audioSampleSizes.length);
+    audioTrun.putInt(audioDataOffset);
+    for (int sampleSize : audioSampleSizes) {
+      audioTrun.putInt(sampleSize);
+    }
+    return box("moof",
+        box("mfhd", fullBoxPayload(sequenceNumber + 1)),
+        box("traf",
+            box("tfhd", fullBoxPayload(Mp4Builder.VIDEO_TRACK_ID)),
+            box("tfdt", fullBoxPayload((int) videoDecodeTime)),
+            box("trun", videoTrun.array())),
+        box("traf",
+            box("tfhd", fullBoxPayload(Mp4Builder.AUDIO_TRACK_ID)),
+            box("tfdt", fullBoxPayload((int) audioDecodeTime)),
+            box("trun", audioTrun.array())));
+  }
+
+  private static void write(ByteArrayOutputStream stream, byte[] data) {
+    stream.write(data, 0, data.length);
+  }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks.extractor;
+
+import com.google.android.exoplayer.benchmarks.testutil.SyntheticMedia;
+import com.google.android.exoplayer.util.Util;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Builds the boxes of MP4 files holding an H.264 video track and an AAC audio track.
+ */
+/* package */ final class Mp4Builder {
+
+  public static final int VIDEO_TRACK_ID = 1;
+  public static final int AUDIO_TRACK_ID = 2;
+  /** The timescale of the video track, in which each frame has a duration of one unit. */
+  public static final int VIDEO_TIMESCALE = 30;
+  /** The number of samples per channel in each AAC frame. */
+  public static final int AUDIO_FRAME_DURATION = 1024;
+  /** The size of each AAC frame, for 128 kbit/s audio at 44.1 kHz. */
+  public static final int AUDIO_FRAME_SIZE = 372;
+
+  /** An ftyp payload with major brand isom and compatible brands isom, iso2, avc1 and mp41. */
+  private static final byte[] FTYP_PAYLOAD = Util.getBytesFromHexString(
+      "69736f6d0000020069736f6d69736f32617663316d703431");
+  private static final byte[] MVHD_PAYLOAD = Util.getBytesFromHexString(
+      "00000000cf6c4888cf6c48880000025800023ad40001000001000000000000000000000000010000000000000000"
+      + "000000000000000100000000000000000000000000004000000000000000000000000000000000000000000000"
+      + "000000000000000003");
+  private static final byte[] TKHD_PAYLOAD = Util.getBytesFromHexString(
+      "00000007D1F0C7BFD1F0C7BF0000000000000000FFFFFFFF00000000000000000000000000000000000100000000"
+      + "0000000000000000000000010000000000000000000000000000400000000780000004380000");
+  private static final byte[] VIDEO_STSD_PAYLOAD = Util.getBytesFromHexString(
+      "00000000000000010000009961766331000000000000000100000000000000000000000000000000050002d00048"
+      + "000000480000000000000001000000000000000000000000000000000000000000000000000000000000000000"
+      + "18ffff0000002f617663430164001fffe100186764001facb402802dd80880000003008000001e078c19500100"
+      + "0468ee3cb000000014627472740000e35c0042a61000216cb8");
+  private static final byte[] VIDEO_HDLR_PAYLOAD = Util.getBytesFromHexString(
+      "000000000000000076696465");
+  private static final byte[] VIDEO_MDHD_PAYLOAD = Util.getBytesFromHexString(
+      "0000000000000000cf6c48890000001e00001c8a55c40000");
+  private static final byte[] AUDIO_STSD_PAYLOAD = Util.getBytesFromHexString(
+      "0000000000000001000000596d703461000000000000000100000000000000000001001000000000ac4400000000"
+      + "003565736473000000000327000000041f401500023e00024bc000023280051012080000000000000000000000"
+      + "000000060102");
+  private static final byte[] AUDIO_HDLR_PAYLOAD = Util.getBytesFromHexString(
+      "0000000000000000736f756e");
+  private static final byte[] AUDIO_MDHD_PAYLOAD = Util.getBytesFromHexString(
+      "00000000cf6c4889cf6c488a0000ac4400a3e40055c40000");
+  private static final byte[] EMPTY = new byte[0];
+
+  private Mp4Builder() {}
+
+  /**
+   * Returns a box with the specified type, whose payload is the concatenation of {@code contents}.
+   */
+  public static byte[] box(String type, byte[]... contents) {
+    int size = 8;
+    for (byte[] content : contents) {
+      size += content.length;
+    }
+    ByteBuffer box = ByteBuffer.allocate(size);
+    box.putInt(size);
+    box.putInt(Util.getIntegerCodeForString(type));
+    for (byte[] content : contents) {
+      box.put(content);
+    }
+    return box.array();
+  }
+
+  /**
+   * Returns an ftyp box.
+   */
+  public static byte[] ftyp() {
+    return box("ftyp", FTYP_PAYLOAD);
+  }
+
+  /**
+   * Returns an mvhd box.
+   */
+  public static byte[] mvhd() {
+    return box("mvhd", MVHD_PAYLOAD);
+  }
+
+  /**
+   * Returns a trak box for the video track.
+   *
+   * @param sampleTableBoxes The boxes of the sample table other than the stsd box.
+   */
+  public static byte[] videoTrak(byte[]... sampleTableBoxes) {
+    return trak(VIDEO_TRACK_ID, VIDEO_MDHD_PAYLOAD, VIDEO_HDLR_PAYLOAD,
+        box("stsd", VIDEO_STSD_PAYLOAD), sampleTableBoxes);
+  }
+
+  /**
+   * Returns a trak box for the audio track.
+   *
+   * @param sampleTableBoxes The boxes of the sample table other than the stsd box.
+   */
+  public static byte[] audioTrak(byte[]... sampleTableBoxes) {
+    return trak(AUDIO_TRACK_ID, AUDIO_MDHD_PAYLOAD, AUDIO_HDLR_PAYLOAD,
+        box("stsd", AUDIO_STSD_PAYLOAD), sampleTableBoxes);
+  }
+
+  /**
+   * Returns the payload of a full box with version and flags zero, followed by the specified
+   * 32-bit fields.
+   */
+  public static byte[] fullBoxPayload(int... fields) {
+    ByteBuffer payload = ByteBuffer.allocate(4 + 4 * fields.length);
+    payload.putInt(0);
+    for (int field : fields) {
+      payload.putInt(field);
+    }
+    return payload.array();
+  }
+
+  /**
+   * Returns a video sample holding a single coded slice NAL unit, with a four byte length prefix.
+   */
+  public static byte[] createVideoSample(Random random, int size, boolean keyframe) {
+    ByteBuffer sample = ByteBuffer.allocate(size);
+    sample.putInt(size - 4);
+    sample.put(SyntheticMedia.createH264Slice(random, size - 4, keyframe));
+    return sample.array();
+  }
+
+  private static byte[] trak(int trackId, byte[] mdhdPayload, byte[] hdlrPayload, byte[] stsd,
+      byte[][] sampleTableBoxes) {
+    byte[] tkhdPayload = TKHD_PAYLOAD.clone();
+    ByteBuffer.wrap(tkhdPayload).putInt(12, trackId);
+    byte[][] stblContents = new byte[sampleTableBoxes.length + 1][];
+    stblContents[0] = stsd;
+    System.arraycopy(sampleTableBoxes, 0, stblContents, 1, sampleTableBoxes.length);
+    return box("trak",
+        box("tkhd", tkhdPayload),
+        box("mdia",
+            box("mdhd", mdhdPayload),
+            box("hdlr", hdlrPayload),
+            box("minf",
+                box("vmhd", EMPTY),
+                box("stbl", stblContents))));
+  }
+
+}
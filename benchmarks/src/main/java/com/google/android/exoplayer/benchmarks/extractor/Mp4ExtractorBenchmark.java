@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks.extractor;
+
+import static com.google.android.exoplayer.benchmarks.extractor.Mp4Builder.box;
+import static com.google.android.exoplayer.benchmarks.extractor.Mp4Builder.fullBoxPayload;
+
+import com.google.android.exoplayer.benchmarks.testutil.BenchmarkTestCase;
+import com.google.android.exoplayer.benchmarks.testutil.DiscardingExtractorOutput;
+import com.google.android.exoplayer.benchmarks.testutil.ExtractorBenchmarkUtil;
+import com.google.android.exoplayer.benchmarks.testutil.SyntheticMedia;
+import com.google.android.exoplayer.extractor.mp4.Mp4Extractor;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+/**
+ * Benchmarks {@link Mp4Extractor} on a file holding H.264 video and AAC audio, interleaved in
+ * chunks of one second. Extraction includes parsing the moov box and building the sample tables.
+ */
+public final class Mp4ExtractorBenchmark extends BenchmarkTestCase {
+
+  private static final int CHUNK_COUNT = 10;
+  private static final int VIDEO_SAMPLES_PER_CHUNK = Mp4Builder.VIDEO_TIMESCALE;
+  private static final int AUDIO_SAMPLES_PER_CHUNK = 43;
+  private static final int KEYFRAME_INTERVAL = 30;
+  private static final int KEYFRAME_SIZE = 40000;
+  private static final int NON_KEYFRAME_SIZE = 8000;
+
+  private static final int VIDEO_SAMPLE_COUNT = CHUNK_COUNT * VIDEO_SAMPLES_PER_CHUNK;
+  private static final int AUDIO_SAMPLE_COUNT = CHUNK_COUNT * AUDIO_SAMPLES_PER_CHUNK;
+
+  private byte[] file;
+  private DiscardingExtractorOutput output;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    file = buildFile(new Random(0));
+    output = new DiscardingExtractorOutput();
+  }
+
+  public void testExtract() throws Exception {
+    measure("extract", file.length, new Operation() {
+      @Override
+      public void run() throws Exception {
+        ExtractorBenchmarkUtil.extract(new Mp4Extractor(), file, output);
+      }
+    });
+    assertEquals(2, output.trackCount);
+    assertEquals(VIDEO_SAMPLE_COUNT + AUDIO_SAMPLE_COUNT, output.sampleCount);
+  }
+
+  private static byte[] buildFile(Random random) {
+    int[] videoSampleSizes = new int[VIDEO_SAMPLE_COUNT];
+    ByteArrayOutputStream mdatPayload = new ByteArrayOutputStream();
+    int[] videoChunkOffsets = new int[CHUNK_COUNT];
+    int[] audioChunkOffsets = new int[CHUNK_COUNT];
+    for (int chunk = 0; chunk < CHUNK_COUNT; chunk++) {
+      videoChunkOffsets[chunk] = mdatPayload.size();
+      for (int i = 0; i < VIDEO_SAMPLES_PER_CHUNK; i++) {
+        int sampleIndex = chunk * VIDEO_SAMPLES_PER_CHUNK + i;
+        boolean keyframe = sampleIndex % KEYFRAME_INTERVAL == 0;
+        videoSampleSizes[sampleIndex] = keyframe ? KEYFRAME_SIZE : NON_KEYFRAME_SIZE;
+        byte[] sample = Mp4Builder.createVideoSample(random, videoSampleSizes[sampleIndex],
+            keyframe);
+        mdatPayload.write(sample, 0, sample.length);
+      }
+      audioChunkOffsets[chunk] = mdatPayload.size();
+      for (int i = 0; i < AUDIO_SAMPLES_PER_CHUNK; i++) {
+        byte[] sample = SyntheticMedia.createRandomData(random, Mp4Builder.AUDIO_FRAME_SIZE);
+        mdatPayload.write(sample, 0, sample.length);
+      }
+    }
+
+    byte[] ftyp = Mp4Builder.ftyp();
+    // The size of the moov box doesn't depend on the chunk offsets.
+    int mdatPayloadOffset = ftyp.length + buildMoov(videoSampleSizes, videoChunkOffsets,
+        audioChunkOffsets, 0).length + 8;
+    byte[] moov = buildMoov(videoSampleSizes, videoChunkOffsets, audioChunkOffsets,
+        mdatPayloadOffset);
+    byte[] mdat = box("mdat", mdatPayload.toByteArray());
+
+    ByteArrayOutputStream file = new ByteArrayOutputStream();
+    file.write(ftyp, 0, ftyp.length);
+    file.write(moov, 0, moov.length);
+    file.write(mdat, 0, mdat.length);
+    return file.toByteArray();
+  }
+
+  private static byte[] buildMoov(int[] videoSampleSizes, int[] videoChunkOffsets,
+      int[] audioChunkOffsets, int mdatPayloadOffset) {
+    int[] syncSamples = new int[VIDEO_SAMPLE_COUNT / KEYFRAME_INTERVAL];
+    for (int i = 0; i < syncSamples.length; i++) {
+      syncSamples[i] = i * KEYFRAME_INTERVAL + 1;
+    }
+    return box("moov",
+        Mp4Builder.mvhd(),
+        Mp4Builder.videoTrak(
+            box("stts", fullBoxPayload(1, VIDEO_SAMPLE_COUNT, 1)),
+            box("stss", fullBoxPayload(prepend(syncSamples.length, syncSamples))),
+            box("stsc", fullBoxPayload(1, 1, VIDEO_SAMPLES_PER_CHUNK, 1)),
+            box("stsz", fullBoxPayload(prepend(0, prepend(VIDEO_SAMPLE_COUNT, videoSampleSizes)))),
+            box("stco", fullBoxPayload(prepend(CHUNK_COUNT,
+                offset(videoChunkOffsets, mdatPayloadOffset))))),
+        Mp4Builder.audioTrak(
+            box("stts", fullBoxPayload(1, AUDIO_SAMPLE_COUNT, Mp4Builder.AUDIO_FRAME_DURATION)),
+            box("stsc", fullBoxPayload(1, 1, AUDIO_SAMPLES_PER_CHUNK, 1)),
+            box("stsz", fullBoxPayload(Mp4Builder.AUDIO_FRAME_SIZE, AUDIO_SAMPLE_COUNT)),
+            box("stco", fullBoxPayload(prepend(CHUNK_COUNT,
+                offset(audioChunkOffsets, mdatPayloadOffset))))));
+  }
+
+  private static int[] prepend(int value, int[] values) {
+    int[] result = new int[values.length + 1];
+    result[0] = value;
+    System.arraycopy(values, 0, result, 1, values.length);
+    return result;
+  }
+
+  private static int[] offset(int[] values, int offset) {
+    int[] result = new int[values.length];
+    for (int i = 0; i < values.length; i++) {
+      result[i] = values[i] + offset;
+    }
+    return result;
+  }
+
+}
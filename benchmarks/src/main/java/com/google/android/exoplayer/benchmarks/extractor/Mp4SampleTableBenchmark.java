@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks.extractor;
+
+import static com.google.android.exoplayer.benchmarks.extractor.Mp4Builder.box;
+import static com.google.android.exoplayer.benchmarks.extractor.Mp4Builder.fullBoxPayload;
+
+import android.util.Log;
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.benchmarks.testutil.BenchmarkTestCase;
+import com.google.android.exoplayer.benchmarks.testutil.DiscardingExtractorOutput;
+import com.google.android.exoplayer.extractor.DefaultExtractorInput;
+import com.google.android.exoplayer.extractor.Extractor;
+import com.google.android.exoplayer.extractor.ExtractorInput;
+import com.google.android.exoplayer.extractor.PositionHolder;
+import com.google.android.exoplayer.extractor.mp4.Mp4Extractor;
+import com.google.android.exoplayer.upstream.ByteArrayDataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Benchmarks the sample table that {@link Mp4Extractor} builds for a two hour video track, with a
+ * synchronization sample every two seconds, B-frames and half a second of samples in each chunk.
+ * Only the ftyp and moov boxes are held in memory, since the extractor requests a seek to the first
+ * sample once it has built the table.
+ * <p>
+ * The time taken to parse the moov box and to seek is measured, and the heap retained by the
+ * extractor is logged alongside the size of the four arrays with an entry per sample (offsets,
+ * sizes, timestamps and flags) that would otherwise represent the table.
+ */
+public final class Mp4SampleTableBenchmark extends BenchmarkTestCase {
+
+  private static final int DURATION_S = 2 * 60 * 60;
+  private static final int SAMPLE_COUNT = Mp4Builder.VIDEO_TIMESCALE * DURATION_S;
+  private static final int SYNC_SAMPLE_INTERVAL = 2 * Mp4Builder.VIDEO_TIMESCALE;
+  private static final int SAMPLES_PER_CHUNK = Mp4Builder.VIDEO_TIMESCALE / 2;
+  private static final int CHUNK_COUNT = SAMPLE_COUNT / SAMPLES_PER_CHUNK;
+  private static final int KEYFRAME_SIZE = 20000;
+  private static final int NON_KEYFRAME_SIZE = 4000;
+  // The distance from the end of the moov box to the first sample, which is large enough for the
+  // extractor to request a seek rather than skip to it.
+  private static final int MDAT_PAYLOAD_GAP = 1024 * 1024;
+  private static final int SEEK_COUNT = 1000;
+  // A long offset, an int size, a long timestamp and int flags.
+  private static final int DENSE_BYTES_PER_SAMPLE = 8 + 4 + 8 + 4;
+
+  private byte[] file;
+  private long[] seekTimesUs;
+  private DiscardingExtractorOutput output;
+  private PositionHolder positionHolder;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    Random random = new Random(0);
+    file = buildFile(random);
+    seekTimesUs = new long[SEEK_COUNT];
+    for (int i = 0; i < SEEK_COUNT; i++) {
+      seekTimesUs[i] = (long) (random.nextDouble() * DURATION_S * C.MICROS_PER_SECOND);
+    }
+    output = new DiscardingExtractorOutput();
+    positionHolder = new PositionHolder();
+  }
+
+  public void testParseMoov() throws Exception {
+    measure("parseMoov", file.length, new Operation() {
+      @Override
+      public void run() throws Exception {
+        parseMoov();
+      }
+    });
+  }
+
+  public void testSeek() throws Exception {
+    final Mp4Extractor extractor = parseMoov();
+    measure("seek", 0, new Operation() {
+      private int seekIndex;
+
+      @Override
+      public void run() {
+        extractor.getPosition(seekTimesUs[seekIndex]);
+        seekIndex = (seekIndex + 1) % SEEK_COUNT;
+      }
+    });
+  }
+
+  public void testMemory() throws Exception {
+    long baselineBytes = getUsedMemory();
+    Mp4Extractor extractor = parseMoov();
+    long retainedBytes = getUsedMemory() - baselineBytes;
+    Log.i(TAG, String.format(Locale.US, "%s.memory: %d KiB retained, %d KiB as dense arrays",
+        getClass().getSimpleName(), retainedBytes / 1024,
+        (long) SAMPLE_COUNT * DENSE_BYTES_PER_SAMPLE / 1024));
+    // Keep the extractor reachable until it's been measured.
+    assertTrue(extractor.isSeekable());
+  }
+
+  /**
+   * Reads the ftyp and moov boxes with a new extractor, and returns the extractor.
+   */
+  private Mp4Extractor parseMoov() throws IOException, InterruptedException {
+    output.reset();
+    Mp4Extractor extractor = new Mp4Extractor();
+    extractor.init(output);
+    ByteArrayDataSource dataSource = new ByteArrayDataSource(file);
+    dataSource.open(new DataSpec(null));
+    ExtractorInput input = new DefaultExtractorInput(dataSource, 0, file.length);
+    int result;
+    do {
+      result = extractor.read(input, positionHolder);
+    } while (result == Extractor.RESULT_CONTINUE);
+    dataSource.close();
+    assertEquals(Extractor.RESULT_SEEK, result);
+    assertNotNull(output.seekMap);
+    return extractor;
+  }
+
+  private static long getUsedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static byte[] buildFile(Random random) {
+    int[] sampleSizes = new int[SAMPLE_COUNT];
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      sampleSizes[i] = i % SYNC_SAMPLE_INTERVAL == 0
+          ? KEYFRAME_SIZE + random.nextInt(KEYFRAME_SIZE / 2)
+          : NON_KEYFRAME_SIZE + random.nextInt(NON_KEYFRAME_SIZE);
+    }
+    int[] chunkOffsets = new int[CHUNK_COUNT];
+    int offset = 0;
+    for (int chunk = 0; chunk < CHUNK_COUNT; chunk++) {
+      chunkOffsets[chunk] = offset;
+      for (int i = 0; i < SAMPLES_PER_CHUNK; i++) {
+        offset += sampleSizes[chunk * SAMPLES_PER_CHUNK + i];
+      }
+    }
+
+    byte[] ftyp = Mp4Builder.ftyp();
+    // The size of the moov box doesn't depend on the chunk offsets.
+    int mdatPayloadOffset = ftyp.length + buildMoov(sampleSizes, chunkOffsets, 0).length
+        + MDAT_PAYLOAD_GAP;
+    byte[] moov = buildMoov(sampleSizes, chunkOffsets, mdatPayloadOffset);
+
+    ByteArrayOutputStream file = new ByteArrayOutputStream();
+    file.write(ftyp, 0, ftyp.length);
+    file.write(moov, 0, moov.length);
+    return file.toByteArray();
+  }
+
+  private static byte[] buildMoov(int[] sampleSizes, int[] chunkOffsets, int mdatPayloadOffset) {
+    int[] syncSamples = new int[SAMPLE_COUNT / SYNC_SAMPLE_INTERVAL + 1];
+    syncSamples[0] = syncSamples.length - 1;
+    for (int i = 1; i < syncSamples.length; i++) {
+      syncSamples[i] = (i - 1) * SYNC_SAMPLE_INTERVAL + 1;
+    }
+    // An IBBP pattern in decoding order (I, P, B, B, P, B, B, ...), with an entry per sample.
+    int[] compositionOffsets = new int[1 + 2 * SAMPLE_COUNT];
+    compositionOffsets[0] = SAMPLE_COUNT;
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      int positionInGroup = (i % SYNC_SAMPLE_INTERVAL) % 3;
+      compositionOffsets[1 + 2 * i] = 1;
+      compositionOffsets[2 + 2 * i] = positionInGroup == 0 ? 1 : positionInGroup == 1 ? 3 : 0;
+    }
+    int[] sampleSizeFields = new int[2 + SAMPLE_COUNT];
+    sampleSizeFields[1] = SAMPLE_COUNT;
+    System.arraycopy(sampleSizes, 0, sampleSizeFields, 2, SAMPLE_COUNT);
+    int[] chunkOffsetFields = new int[1 + CHUNK_COUNT];
+    chunkOffsetFields[0] = CHUNK_COUNT;
+    for (int i = 0; i < CHUNK_COUNT; i++) {
+      chunkOffsetFields[1 + i] = chunkOffsets[i] + mdatPayloadOffset;
+    }
+    return box("moov",
+        Mp4Builder.mvhd(),
+        Mp4Builder.videoTrak(
+            box("stts", fullBoxPayload(1, SAMPLE_COUNT, 1)),
+            box("ctts", fullBoxPayload(compositionOffsets)),
+            box("stss", fullBoxPayload(syncSamples)),
+            box("stsc", fullBoxPayload(1, 1, SAMPLES_PER_CHUNK, 1)),
+            box("stsz", fullBoxPayload(sampleSizeFields)),
+            box("stco", fullBoxPayload(chunkOffsetFields))));
+  }
+
+}
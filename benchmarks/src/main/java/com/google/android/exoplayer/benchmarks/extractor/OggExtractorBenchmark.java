@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks.extractor;
+
+import com.google.android.exoplayer.benchmarks.testutil.BenchmarkTestCase;
+import com.google.android.exoplayer.benchmarks.testutil.DiscardingExtractorOutput;
+import com.google.android.exoplayer.benchmarks.testutil.ExtractorBenchmarkUtil;
+import com.google.android.exoplayer.extractor.ogg.OggExtractor;
+import com.google.android.exoplayer.util.Util;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmarks {@link OggExtractor} on a FLAC stream, in which each page holds as many whole audio
+ * packets as fit in its segment table.
+ */
+public final class OggExtractorBenchmark extends BenchmarkTestCase {
+
+  private static final int SAMPLE_RATE = 44100;
+  private static final int BLOCK_SIZE = 4096;
+  private static final int FRAME_COUNT = 300;
+  private static final int FRAME_SIZE = 8000;
+  private static final int MAX_SEGMENT_COUNT = 255;
+  private static final int SERIAL_NUMBER = 0x12345678;
+
+  private byte[] stream;
+  private DiscardingExtractorOutput output;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    stream = buildStream(new Random(0));
+    output = new DiscardingExtractorOutput();
+  }
+
+  public void testExtract() throws Exception {
+    measure("extract", stream.length, new Operation() {
+      @Override
+      public void run() throws Exception {
+        ExtractorBenchmarkUtil.extract(new OggExtractor(), stream, output);
+      }
+    });
+    assertEquals(1, output.trackCount);
+    assertEquals(FRAME_COUNT, output.sampleCount);
+  }
+
+  private static byte[] buildStream(Random random) {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    int pageSequenceNumber = 0;
+    List<byte[]> packets = new ArrayList<>();
+    packets.add(createIdentificationPacket());
+    writePage(stream, 0x02 /* beginning of stream */, 0, pageSequenceNumber++, packets);
+    packets.clear();
+    // An empty VORBIS_COMMENT metadata block, which is the last metadata block.
+    packets.add(new byte[] {(byte) 0x84, 0, 0, 8, 0, 0, 0, 0, 0, 0, 0, 0});
+    writePage(stream, 0, 0, pageSequenceNumber++, packets);
+    packets.clear();
+
+    int segmentCount = 0;
+    for (int i = 0; i < FRAME_COUNT; i++) {
+      byte[] frame = createFrame(random, i);
+      int frameSegmentCount = frame.length / 255 + 1;
+      if (segmentCount + frameSegmentCount > MAX_SEGMENT_COUNT) {
+        writePage(stream, 0, (long) i * BLOCK_SIZE, pageSequenceNumber++, packets);
+        packets.clear();
+        segmentCount = 0;
+      }
+      packets.add(frame);
+      segmentCount += frameSegmentCount;
+    }
+    writePage(stream, 0x04 /* end of stream */, (long) FRAME_COUNT * BLOCK_SIZE,
+        pageSequenceNumber, packets);
+    return stream.toByteArray();
+  }
+
+  /**
+   * Returns the first packet of the FLAC to Ogg mapping, which holds the STREAMINFO metadata block.
+   */
+  private static byte[] createIdentificationPacket() {
+    byte[] packet = new byte[13 + 4 + 34];
+    packet[0] = 0x7F;
+    System.arraycopy("FLAC".getBytes(), 0, packet, 1, 4);
+    packet[5] = 1; // Major version.
+    packet[6] = 0; // Minor version.
+    packet[8] = 1; // Number of header packets, other than this one.
+    System.arraycopy("fLaC".getBytes(), 0, packet, 9, 4);
+    packet[14] = 0;
+    packet[15] = 0;
+    packet[16] = 34; // Length of the STREAMINFO metadata block.
+    packet[17] = (byte) (BLOCK_SIZE >> 8); // Minimum block size.
+    packet[18] = (byte) BLOCK_SIZE;
+    packet[19] = (byte) (BLOCK_SIZE >> 8); // Maximum block size.
+    packet[20] = (byte) BLOCK_SIZE;
+    // The minimum and maximum frame sizes are unknown. The next 64 bits hold the sample rate, the
+    // channel count minus one, the bits per sample minus one and the total number of samples.
+    long bits = ((long) SAMPLE_RATE << 44) | (1L << 41) | (15L << 36)
+        | ((long) FRAME_COUNT * BLOCK_SIZE);
+    for (int i = 0; i < 8; i++) {
+      packet[27 + i] = (byte) (bits >> (56 - 8 * i));
+    }
+    // The MD5 signature of the unencoded audio is left as zero.
+    return packet;
+  }
+
+  /**
+   * Returns a FLAC frame with a valid header, for a fixed block size, stereo, 16-bit stream.
+   */
+  private static byte[] createFrame(Random random, int frameNumber) {
+    byte[] frame = new byte[FRAME_SIZE];
+    random.nextBytes(frame);
+    frame[0] = (byte) 0xFF;
+    frame[1] = (byte) 0xF8; // Sync code, fixed block size.
+    frame[2] = (byte) 0xC9; // 4096 samples per block, 44.1 kHz.
+    frame[3] = 0x18; // Left and right channels, 16 bits per sample.
+    // The frame number, as a UTF-8 encoded integer of up to 11 bits.
+    if (frameNumber < 0x80) {
+      frame[4] = (byte) frameNumber;
+    } else {
+      frame[4] = (byte) (0xC0 | (frameNumber >> 6));
+      frame[5] = (byte) (0x80 | (frameNumber & 0x3F));
+    }
+    return frame;
+  }
+
+  private static void writePage(ByteArrayOutputStream stream, int headerType,
+      long granulePosition, int pageSequenceNumber, List<byte[]> packets) {
+    ByteArrayOutputStream segmentTable = new ByteArrayOutputStream();
+    int bodySize = 0;
+    for (byte[] packet : packets) {
+      for (int size = packet.length; size >= 0; size -= 255) {
+        segmentTable.write(Math.min(size, 255));
+      }
+      bodySize += packet.length;
+    }
+    byte[] page = new byte[27 + segmentTable.size() + bodySize];
+    System.arraycopy("OggS".getBytes(), 0, page, 0, 4);
+    page[5] = (byte) headerType;
+    writeLittleEndian(page, 6, granulePosition, 8);
+    writeLittleEndian(page, 14, SERIAL_NUMBER, 4);
+    writeLittleEndian(page, 18, pageSequenceNumber, 4);
+    page[26] = (byte) segmentTable.size();
+    System.arraycopy(segmentTable.toByteArray(), 0, page, 27, segmentTable.size());
+    int position = 27 + segmentTable.size();
+    for (byte[] packet : packets) {
+      System.arraycopy(packet, 0, page, position, packet.length);
+      position += packet.length;
+    }
+    // The checksum is calculated with the checksum field set to zero.
+    writeLittleEndian(page, 22, Util.crc(page, 0, page.length, 0), 4);
+    stream.write(page, 0, page.length);
+  }
+
+  private static void writeLittleEndian(byte[] data, int offset, long value, int length) {
+    for (int i = 0; i < length; i++) {
+      data[offset + i] = (byte) (value >> (8 * i));
+    }
+  }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks.extractor;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.SampleHolder;
+import com.google.android.exoplayer.benchmarks.testutil.BenchmarkTestCase;
+import com.google.android.exoplayer.extractor.DefaultTrackOutput;
+import com.google.android.exoplayer.upstream.DefaultAllocator;
+import com.google.android.exoplayer.util.ParsableByteArray;
+import java.nio.ByteBuffer;
+
+/**
+ * Benchmarks writing samples to and reading samples from a {@link DefaultTrackOutput}.
+ * <p>
+ * Samples follow the pattern of 4K H.264 video at around 25 Mbit/s and 30 fps, with a large IDR
+ * frame at the start of each group of pictures followed by smaller P and B frames. Each group of
+ * pictures is written and then read by copying samples into a {@link SampleHolder}.
+ * <p>
+ * The latency of seeking within the queue is also measured for queues holding increasing numbers
+ * of samples, with 60 fps video and a keyframe every second.
+ */
+public final class SampleQueueBenchmark extends BenchmarkTestCase {
+
+  private static final int ALLOCATION_SIZE = 64 * 1024;
+  private static final int GOP_LENGTH = 30;
+  private static final int IDR_FRAME_SIZE = 400 * 1024;
+  private static final int P_FRAME_SIZE = 110 * 1024;
+  private static final int B_FRAME_SIZE = 40 * 1024;
+  private static final int FRAME_DURATION_US = 33333;
+  private static final int WRITE_CHUNK_SIZE = 16 * 1024;
+  private static final int[] SEEK_QUEUE_DEPTHS = {1000, 10000, 100000};
+  private static final int SEEK_FRAME_DURATION_US = 16667;
+  private static final int SEEK_GOP_LENGTH = 60;
+
+  private int[] frameSizes;
+  private int[] frameFlags;
+  private ParsableByteArray chunk;
+  private DefaultTrackOutput trackOutput;
+  private SampleHolder holder;
+  private int gopIndex;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    frameSizes = new int[GOP_LENGTH];
+    frameFlags = new int[GOP_LENGTH];
+    for (int i = 0; i < GOP_LENGTH; i++) {
+      if (i == 0) {
+        frameSizes[i] = IDR_FRAME_SIZE;
+        frameFlags[i] = C.SAMPLE_FLAG_SYNC;
+      } else if (i % 3 == 0) {
+        frameSizes[i] = P_FRAME_SIZE + (i * 7919) % 4096;
+      } else {
+        frameSizes[i] = B_FRAME_SIZE + (i * 7919) % 4096;
+      }
+    }
+    chunk = new ParsableByteArray(WRITE_CHUNK_SIZE);
+    trackOutput = new DefaultTrackOutput(new DefaultAllocator(ALLOCATION_SIZE));
+    holder = new SampleHolder(SampleHolder.BUFFER_REPLACEMENT_MODE_DISABLED);
+    holder.data = ByteBuffer.allocateDirect(IDR_FRAME_SIZE);
+  }
+
+  public void testWriteAndReadGop() throws Exception {
+    long gopBytes = 0;
+    for (int frameSize : frameSizes) {
+      gopBytes += frameSize;
+    }
+    measure("writeAndReadGop", gopBytes, new Operation() {
+      @Override
+      public void run() {
+        writeGop(gopIndex++);
+        for (int i = 0; i < GOP_LENGTH; i++) {
+          assertTrue(trackOutput.getSample(holder));
+          holder.clearData();
+        }
+      }
+    });
+  }
+
+  public void testSkipToKeyframeBefore() throws Exception {
+    ParsableByteArray sampleData = new ParsableByteArray(1);
+    // A time in the first group of pictures, so that the skip doesn't discard any samples and can
+    // be repeated. The keyframe index is still searched in full.
+    final long seekTimeUs = (long) (SEEK_GOP_LENGTH - 1) * SEEK_FRAME_DURATION_US;
+    for (int depth : SEEK_QUEUE_DEPTHS) {
+      trackOutput.clear();
+      for (int i = 0; i < depth; i++) {
+        sampleData.setPosition(0);
+        trackOutput.sampleData(sampleData, 1);
+        int flags = i % SEEK_GOP_LENGTH == 0 ? C.SAMPLE_FLAG_SYNC : 0;
+        trackOutput.sampleMetadata((long) i * SEEK_FRAME_DURATION_US, flags, 1, 0, null);
+      }
+      measure("skipToKeyframeBefore" + depth, 0, new Operation() {
+        @Override
+        public void run() {
+          assertTrue(trackOutput.skipToKeyframeBefore(seekTimeUs));
+        }
+      });
+    }
+  }
+
+  private void writeGop(int gop) {
+    for (int i = 0; i < GOP_LENGTH; i++) {
+      int remaining = frameSizes[i];
+      while (remaining > 0) {
+        int chunkLength = Math.min(remaining, WRITE_CHUNK_SIZE);
+        chunk.setPosition(0);
+        trackOutput.sampleData(chunk, chunkLength);
+        remaining -= chunkLength;
+      }
+      long frameTimeUs = (long) (gop * GOP_LENGTH + i) * FRAME_DURATION_US;
+      trackOutput.sampleMetadata(frameTimeUs, frameFlags[i], frameSizes[i], 0, null);
+    }
+  }
+
+}
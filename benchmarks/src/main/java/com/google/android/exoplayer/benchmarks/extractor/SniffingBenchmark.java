@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks.extractor;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.benchmarks.testutil.BenchmarkTestCase;
+import com.google.android.exoplayer.benchmarks.testutil.SyntheticMedia;
+import com.google.android.exoplayer.extractor.DefaultExtractorInput;
+import com.google.android.exoplayer.extractor.Extractor;
+import com.google.android.exoplayer.extractor.ExtractorInput;
+import com.google.android.exoplayer.extractor.mp3.Mp3Extractor;
+import com.google.android.exoplayer.extractor.mp4.FragmentedMp4Extractor;
+import com.google.android.exoplayer.extractor.mp4.Mp4Extractor;
+import com.google.android.exoplayer.extractor.webm.WebmExtractor;
+import com.google.android.exoplayer.upstream.ByteArrayDataSource;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Benchmarks detecting the format of an MP3 stream, as done by
+ * {@link com.google.android.exoplayer.extractor.ExtractorSampleSource} before preparation
+ * completes. The extractors that precede {@link Mp3Extractor} in the default order sniff the
+ * stream first, unless a hint such as the file extension puts {@link Mp3Extractor} first.
+ */
+public final class SniffingBenchmark extends BenchmarkTestCase {
+
+  private static final int FRAME_COUNT = 100;
+
+  private byte[] stream;
+  private Extractor selectedExtractor;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    Random random = new Random(0);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    for (int i = 0; i < FRAME_COUNT; i++) {
+      byte[] frame = SyntheticMedia.createMpegAudioFrame(random);
+      output.write(frame, 0, frame.length);
+    }
+    stream = output.toByteArray();
+  }
+
+  public void testSniffInDefaultOrder() throws Exception {
+    measure("sniffInDefaultOrder", 0, new Operation() {
+      @Override
+      public void run() throws Exception {
+        selectedExtractor = sniff(new WebmExtractor(), new FragmentedMp4Extractor(),
+            new Mp4Extractor(), new Mp3Extractor());
+      }
+    });
+    assertTrue(selectedExtractor instanceof Mp3Extractor);
+  }
+
+  public void testSniffHintedExtractorFirst() throws Exception {
+    measure("sniffHintedExtractorFirst", 0, new Operation() {
+      @Override
+      public void run() throws Exception {
+        selectedExtractor = sniff(new Mp3Extractor(), new WebmExtractor(),
+            new FragmentedMp4Extractor(), new Mp4Extractor());
+      }
+    });
+    assertTrue(selectedExtractor instanceof Mp3Extractor);
+  }
+
+  private Extractor sniff(Extractor... extractors) throws IOException, InterruptedException {
+    DataSource dataSource = new ByteArrayDataSource(stream);
+    dataSource.open(new DataSpec(null, 0, C.LENGTH_UNBOUNDED, null));
+    ExtractorInput input = new DefaultExtractorInput(dataSource, 0, stream.length);
+    try {
+      for (Extractor extractor : extractors) {
+        try {
+          if (extractor.sniff(input)) {
+            return extractor;
+          }
+        } catch (EOFException e) {
+          // Do nothing.
+        } finally {
+          input.resetPeekPosition();
+        }
+      }
+      return null;
+    } finally {
+      dataSource.close();
+    }
+  }
+
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks.extractor;
+
+import com.google.android.exoplayer.benchmarks.testutil.BenchmarkTestCase;
+import com.google.android.exoplayer.benchmarks.testutil.DiscardingExtractorOutput;
+import com.google.android.exoplayer.benchmarks.testutil.ExtractorBenchmarkUtil;
+import com.google.android.exoplayer.benchmarks.testutil.SyntheticMedia;
+import com.google.android.exoplayer.extractor.ts.PtsTimestampAdjuster;
+import com.google.android.exoplayer.extractor.ts.TsExtractor;
+import com.google.android.exoplayer.util.Util;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+/**
+ * Benchmarks {@link TsExtractor} on a transport stream holding H.264 video and MPEG audio, with the
+ * program association and program map tables repeated before each keyframe. Multi-program
+ * extraction is measured on a stream holding {@link #PROGRAM_COUNT} such programs, both with every
+ * program extracted and with a single program selected.
+ */
+public final class TsExtractorBenchmark extends BenchmarkTestCase {
+
+  private static final int TS_PACKET_SIZE = 188;
+  private static final int PAT_PID = 0;
+  private static final int PROGRAM_COUNT = 4;
+  private static final int STREAM_TYPE_MPA = 0x03;
+  private static final int STREAM_TYPE_H264 = 0x1B;
+
+  private static final int FRAME_RATE = 30;
+  private static final int FRAME_COUNT = 300;
+  private static final int KEYFRAME_INTERVAL = 30;
+  private static final int KEYFRAME_SIZE = 40000;
+  private static final int NON_KEYFRAME_SIZE = 8000;
+  private static final int AUDIO_FRAMES_PER_PES = 4;
+
+  private byte[] stream;
+  private byte[] multiProgramStream;
+  private DiscardingExtractorOutput output;
+  private int[] continuityCounters;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    stream = buildStream(new Random(0), 1);
+    multiProgramStream = buildStream(new Random(0), PROGRAM_COUNT);
+    output = new DiscardingExtractorOutput();
+  }
+
+  public void testExtract() throws Exception {
+    measure("extract", stream.length, new Operation() {
+      @Override
+      public void run() throws Exception {
+        ExtractorBenchmarkUtil.extract(new TsExtractor(), stream, output);
+      }
+    });
+    // The video track has an embedded SEI track.
+    assertEquals(3, output.trackCount);
+    assertEquals(getSampleCountPerProgram(), output.sampleCount);
+  }
+
+  public void testExtractAllPrograms() throws Exception {
+    measureMultiProgramExtraction("extractAllPrograms", TsExtractor.PROGRAM_NUMBER_ALL);
+    assertEquals(3 * PROGRAM_COUNT, output.trackCount);
+    assertEquals(PROGRAM_COUNT * getSampleCountPerProgram(), output.sampleCount);
+  }
+
+  public void testExtractSelectedProgram() throws Exception {
+    measureMultiProgramExtraction("extractSelectedProgram", 1);
+    assertEquals(3, output.trackCount);
+    assertEquals(getSampleCountPerProgram(), output.sampleCount);
+  }
+
+  private void measureMultiProgramExtraction(String name, final int programNumber)
+      throws Exception {
+    measure(name, multiProgramStream.length, new Operation() {
+      @Override
+      public void run() throws Exception {
+        ExtractorBenchmarkUtil.extract(
+            new TsExtractor(new PtsTimestampAdjuster(0), 0, programNumber), multiProgramStream,
+            output);
+      }
+    });
+  }
+
+  /**
+   * Builds a stream holding {@code programCount} programs with the same content, numbered from one.
+   */
+  private byte[] buildStream(Random random, int programCount) {
+    continuityCounters = new int[getAudioPid(programCount) + 1];
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    int audioFrameCount = getAudioFrameCount();
+    int audioFrameIndex = 0;
+    for (int i = 0; i < FRAME_COUNT; i++) {
+      boolean keyframe = i % KEYFRAME_INTERVAL == 0;
+      if (keyframe) {
+        writeTables(stream, programCount);
+      }
+      long videoPts = 90000L * i / FRAME_RATE;
+      ByteArrayOutputStream accessUnit = new ByteArrayOutputStream();
+      writeNalUnit(accessUnit, SyntheticMedia.H264_AUD);
+      if (keyframe) {
+        writeNalUnit(accessUnit, SyntheticMedia.H264_SPS);
+        writeNalUnit(accessUnit, SyntheticMedia.H264_PPS);
+      }
+      writeNalUnit(accessUnit, SyntheticMedia.createH264Slice(random,
+          keyframe ? KEYFRAME_SIZE : NON_KEYFRAME_SIZE, keyframe));
+      byte[] accessUnitData = accessUnit.toByteArray();
+      for (int program = 1; program <= programCount; program++) {
+        writePes(stream, getVideoPid(program), 0xE0, videoPts, accessUnitData);
+      }
+      // Write the audio that starts before the next video frame.
+      while (audioFrameIndex + AUDIO_FRAMES_PER_PES <= audioFrameCount
+          && getAudioPts(audioFrameIndex) < videoPts + 90000L / FRAME_RATE) {
+        ByteArrayOutputStream audio = new ByteArrayOutputStream();
+        for (int j = 0; j < AUDIO_FRAMES_PER_PES; j++) {
+          byte[] frame = SyntheticMedia.createMpegAudioFrame(random);
+          audio.write(frame, 0, frame.length);
+        }
+        byte[] audioData = audio.toByteArray();
+        for (int program = 1; program <= programCount; program++) {
+          writePes(stream, getAudioPid(program), 0xC0, getAudioPts(audioFrameIndex), audioData);
+        }
+        audioFrameIndex += AUDIO_FRAMES_PER_PES;
+      }
+    }
+    return stream.toByteArray();
+  }
+
+  private static int getSampleCountPerProgram() {
+    // The last access unit isn't output, because the extractor waits for the next delimiter.
+    int audioFrameCount = getAudioFrameCount() / AUDIO_FRAMES_PER_PES * AUDIO_FRAMES_PER_PES;
+    return FRAME_COUNT - 1 + audioFrameCount;
+  }
+
+  private static int getAudioFrameCount() {
+    return (int) ((long) FRAME_COUNT * SyntheticMedia.MPEG_AUDIO_SAMPLE_RATE
+        / (FRAME_RATE * SyntheticMedia.MPEG_AUDIO_SAMPLES_PER_FRAME));
+  }
+
+  private static long getAudioPts(int frameIndex) {
+    return 90000L * frameIndex * SyntheticMedia.MPEG_AUDIO_SAMPLES_PER_FRAME
+        / SyntheticMedia.MPEG_AUDIO_SAMPLE_RATE;
+  }
+
+  private static int getPmtPid(int programNumber) {
+    return programNumber * 0x100;
+  }
+
+  private static int getVideoPid(int programNumber) {
+    return getPmtPid(programNumber) + 1;
+  }
+
+  private static int getAudioPid(int programNumber) {
+    return getPmtPid(programNumber) + 2;
+  }
+
+  private void writeTables(ByteArrayOutputStream stream, int programCount) {
+    byte[] pat = new byte[12 + 4 * programCount];
+    int position = writeSectionHeader(pat, 0x00, 1 /* transport_stream_id */);
+    for (int program = 1; program <= programCount; program++) {
+      int pmtPid = getPmtPid(program);
+      pat[position++] = (byte) (program >> 8);
+      pat[position++] = (byte) program; // program_number
+      pat[position++] = (byte) (0xE0 | (pmtPid >> 8));
+      pat[position++] = (byte) pmtPid;
+    }
+    writeSection(stream, PAT_PID, pat);
+
+    for (int program = 1; program <= programCount; program++) {
+      int videoPid = getVideoPid(program);
+      byte[] pmt = new byte[26];
+      position = writeSectionHeader(pmt, 0x02, program /* program_number */);
+      pmt[position++] = (byte) (0xE0 | (videoPid >> 8)); // PCR_PID
+      pmt[position++] = (byte) videoPid;
+      pmt[position++] = (byte) 0xF0; // program_info_length
+      pmt[position++] = 0;
+      position = writeElementaryStreamInfo(pmt, position, STREAM_TYPE_H264, videoPid);
+      writeElementaryStreamInfo(pmt, position, STREAM_TYPE_MPA, getAudioPid(program));
+      writeSection(stream, getPmtPid(program), pmt);
+    }
+  }
+
+  private static int writeSectionHeader(byte[] section, int tableId, int tableIdExtension) {
+    int sectionLength = section.length - 3;
+    section[0] = (byte) tableId;
+    section[1] = (byte) (0xB0 | (sectionLength >> 8));
+    section[2] = (byte) sectionLength;
+    section[3] = (byte) (tableIdExtension >> 8);
+    section[4] = (byte) tableIdExtension;
+    section[5] = (byte) 0xC1; // version_number (0), current_next_indicator (1)
+    return 8;
+  }
+
+  private static int writeElementaryStreamInfo(byte[] section, int position, int streamType,
+      int pid) {
+    section[position++] = (byte) streamType;
+    section[position++] = (byte) (0xE0 | (pid >> 8));
+    section[position++] = (byte) pid;
+    section[position++] = (byte) 0xF0; // ES_info_length
+    section[position++] = 0;
+    return position;
+  }
+
+  private void writeSection(ByteArrayOutputStream stream, int pid, byte[] section) {
+    int crc = Util.crc(section, 0, section.length - 4, 0xFFFFFFFF);
+    section[section.length - 4] = (byte) (crc >> 24);
+    section[section.length - 3] = (byte) (crc >> 16);
+    section[section.length - 2] = (byte) (crc >> 8);
+    section[section.length - 1] = (byte) crc;
+    byte[] payload = new byte[section.length + 1];
+    // pointer_field is zero.
+    System.arraycopy(section, 0, payload, 1, section.length);
+    writePayload(stream, pid, payload);
+  }
+
+  private void writePes(ByteArrayOutputStream stream, int pid, int streamId, long pts,
+      byte[] data) {
+    byte[] pes = new byte[14 + data.length];
+    pes[2] = 0x01;
+    pes[3] = (byte) streamId;
+    // PES_packet_length is left as zero (unbounded).
+    pes[6] = (byte) 0x80;
+    pes[7] = (byte) 0x80; // PTS_DTS_flags
+    pes[8] = 5; // PES_header_data_length
+    pes[9] = (byte) (0x21 | ((pts >> 29) & 0x0E));
+    pes[10] = (byte) (pts >> 22);
+    pes[11] = (byte) (0x01 | ((pts >> 14) & 0xFE));
+    pes[12] = (byte) (pts >> 7);
+    pes[13] = (byte) (0x01 | ((pts << 1) & 0xFE));
+    System.arraycopy(data, 0, pes, 14, data.length);
+    writePayload(stream, pid, pes);
+  }
+
+  /**
+   * Writes a payload unit in as many packets as are required, using adaptation field stuffing to
+   * fill the last packet.
+   */
+  private void writePayload(ByteArrayOutputStream stream, int pid, byte[] payload) {
+    int position = 0;
+    while (position < payload.length) {
+      int bytesToWrite = Math.min(TS_PACKET_SIZE - 4, payload.length - position);
+      int stuffingLength = TS_PACKET_SIZE - 4 - bytesToWrite;
+      boolean adaptationFieldExists = stuffingLength > 0;
+      stream.write(0x47);
+      stream.write((position == 0 ? 0x40 : 0) | (pid >> 8));
+      stream.write(pid);
+      stream.write((adaptationFieldExists ? 0x30 : 0x10) | continuityCounters[pid]);
+      continuityCounters[pid] = (continuityCounters[pid] + 1) & 0x0F;
+      if (adaptationFieldExists) {
+        // The adaptation field length byte is included in the stuffing.
+        stream.write(stuffingLength - 1);
+        if (stuffingLength > 1) {
+          stream.write(0); // Adaptation field flags.
+          for (int i = 2; i < stuffingLength; i++) {
+            stream.write(0xFF);
+          }
+        }
+      }
+      stream.write(payload, position, bytesToWrite);
+      position += bytesToWrite;
+    }
+  }
+
+  private static void writeNalUnit(ByteArrayOutputStream stream, byte[] nalUnit) {
+    stream.write(0);
+    stream.write(0);
+    stream.write(0);
+    stream.write(1);
+    stream.write(nalUnit, 0, nalUnit.length);
+  }
+
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks.extractor;
+
+import com.google.android.exoplayer.benchmarks.testutil.BenchmarkTestCase;
+import com.google.android.exoplayer.benchmarks.testutil.DiscardingExtractorOutput;
+import com.google.android.exoplayer.benchmarks.testutil.ExtractorBenchmarkUtil;
+import com.google.android.exoplayer.benchmarks.testutil.SyntheticMedia;
+import com.google.android.exoplayer.extractor.webm.WebmExtractor;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+/**
+ * Benchmarks {@link WebmExtractor} on a file holding VP9 video and Opus audio, in clusters of one
+ * second that each start with a keyframe. The Cues element precedes the clusters.
+ */
+public final class WebmExtractorBenchmark extends BenchmarkTestCase {
+
+  private static final int CLUSTER_COUNT = 10;
+  private static final int VIDEO_FRAMES_PER_CLUSTER = 30;
+  private static final int AUDIO_FRAMES_PER_CLUSTER = 50;
+  private static final int KEYFRAME_SIZE = 40000;
+  private static final int NON_KEYFRAME_SIZE = 8000;
+  private static final int AUDIO_FRAME_SIZE = 160;
+
+  private static final int VIDEO_TRACK_NUMBER = 1;
+  private static final int AUDIO_TRACK_NUMBER = 2;
+
+  private byte[] file;
+  private DiscardingExtractorOutput output;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    file = buildFile(new Random(0));
+    output = new DiscardingExtractorOutput();
+  }
+
+  public void testExtract() throws Exception {
+    measure("extract", file.length, new Operation() {
+      @Override
+      public void run() throws Exception {
+        ExtractorBenchmarkUtil.extract(new WebmExtractor(), file, output);
+      }
+    });
+    assertEquals(2, output.trackCount);
+    assertTrue(output.seekMap.isSeekable());
+    assertEquals(CLUSTER_COUNT * (VIDEO_FRAMES_PER_CLUSTER + AUDIO_FRAMES_PER_CLUSTER),
+        output.sampleCount);
+  }
+
+  private static byte[] buildFile(Random random) {
+    byte[] header = element(0x1A45DFA3, // EBML
+        element(0x4282, "webm".getBytes()), // DocType
+        element(0x4285, unsigned(2))); // DocTypeReadVersion
+    byte[] info = element(0x1549A966, // Info
+        element(0x2AD7B1, unsigned(1000000)), // TimecodeScale
+        element(0x4489, float64(CLUSTER_COUNT * 1000))); // Duration
+    byte[] tracks = element(0x1654AE6B, // Tracks
+        element(0xAE, // TrackEntry
+            element(0xD7, unsigned(VIDEO_TRACK_NUMBER)), // TrackNumber
+            element(0x83, unsigned(1)), // TrackType
+            element(0x86, "V_VP9".getBytes()), // CodecID
+            element(0xE0, // Video
+                element(0xB0, unsigned(1280)), // PixelWidth
+                element(0xBA, unsigned(720)))), // PixelHeight
+        element(0xAE, // TrackEntry
+            element(0xD7, unsigned(AUDIO_TRACK_NUMBER)), // TrackNumber
+            element(0x83, unsigned(2)), // TrackType
+            element(0x86, "A_OPUS".getBytes()), // CodecID
+            element(0x63A2, new byte[] {0, 0}), // CodecPrivate
+            element(0x56AA, unsigned(6500000)), // CodecDelay
+            element(0x56BB, unsigned(80000000)), // SeekPreRoll
+            element(0xE1, // Audio
+                element(0x9F, unsigned(2)), // Channels
+                element(0xB5, float64(48000))))); // SamplingFrequency
+
+    byte[][] clusters = new byte[CLUSTER_COUNT][];
+    for (int i = 0; i < CLUSTER_COUNT; i++) {
+      clusters[i] = buildCluster(random, i * 1000);
+    }
+    // The size of the Cues element doesn't depend on the cluster positions, which are written
+    // using a fixed number of bytes.
+    long[] clusterPositions = new long[CLUSTER_COUNT];
+    long position = info.length + tracks.length + buildCues(clusterPositions).length;
+    for (int i = 0; i < CLUSTER_COUNT; i++) {
+      clusterPositions[i] = position;
+      position += clusters[i].length;
+    }
+    byte[][] segmentContents = new byte[3 + CLUSTER_COUNT][];
+    segmentContents[0] = info;
+    segmentContents[1] = tracks;
+    segmentContents[2] = buildCues(clusterPositions);
+    System.arraycopy(clusters, 0, segmentContents, 3, CLUSTER_COUNT);
+
+    ByteArrayOutputStream file = new ByteArrayOutputStream();
+    file.write(header, 0, header.length);
+    byte[] segment = element(0x18538067, segmentContents); // Segment
+    file.write(segment, 0, segment.length);
+    return file.toByteArray();
+  }
+
+  private static byte[] buildCues(long[] clusterPositions) {
+    byte[][] cuePoints = new byte[CLUSTER_COUNT][];
+    for (int i = 0; i < CLUSTER_COUNT; i++) {
+      byte[] clusterPosition = new byte[8];
+      for (int j = 0; j < 8; j++) {
+        clusterPosition[j] = (byte) (clusterPositions[i] >> (56 - 8 * j));
+      }
+      cuePoints[i] = element(0xBB, // CuePoint
+          element(0xB3, unsigned(i * 1000)), // CueTime
+          element(0xB7, // CueTrackPositions
+              element(0xF7, unsigned(VIDEO_TRACK_NUMBER)), // CueTrack
+              element(0xF1, clusterPosition))); // CueClusterPosition
+    }
+    return element(0x1C53BB6B, cuePoints); // Cues
+  }
+
+  private static byte[] buildCluster(Random random, int timecode) {
+    byte[][] contents = new byte[1 + VIDEO_FRAMES_PER_CLUSTER + AUDIO_FRAMES_PER_CLUSTER][];
+    contents[0] = element(0xE7, unsigned(timecode)); // Timecode
+    int videoFrameIndex = 0;
+    int audioFrameIndex = 0;
+    for (int i = 1; i < contents.length; i++) {
+      int videoTimecode = videoFrameIndex * 1000 / VIDEO_FRAMES_PER_CLUSTER;
+      int audioTimecode = audioFrameIndex * 1000 / AUDIO_FRAMES_PER_CLUSTER;
+      if (audioFrameIndex == AUDIO_FRAMES_PER_CLUSTER
+          || (videoFrameIndex < VIDEO_FRAMES_PER_CLUSTER && videoTimecode <= audioTimecode)) {
+        boolean keyframe = videoFrameIndex == 0;
+        contents[i] = simpleBlock(VIDEO_TRACK_NUMBER, videoTimecode, keyframe,
+            SyntheticMedia.createRandomData(random, keyframe ? KEYFRAME_SIZE : NON_KEYFRAME_SIZE));
+        videoFrameIndex++;
+      } else {
+        contents[i] = simpleBlock(AUDIO_TRACK_NUMBER, audioTimecode, true,
+            SyntheticMedia.createRandomData(random, AUDIO_FRAME_SIZE));
+        audioFrameIndex++;
+      }
+    }
+    return element(0x1F43B675, contents); // Cluster
+  }
+
+  private static byte[] simpleBlock(int trackNumber, int timecode, boolean keyframe,
+      byte[] data) {
+    byte[] content = new byte[4 + data.length];
+    content[0] = (byte) (0x80 | trackNumber);
+    content[1] = (byte) (timecode >> 8);
+    content[2] = (byte) timecode;
+    content[3] = (byte) (keyframe ? 0x80 : 0x00);
+    System.arraycopy(data, 0, content, 4, data.length);
+    return element(0xA3, content); // SimpleBlock
+  }
+
+  /**
+   * Returns an element with the specified ID, whose content is the concatenation of
+   * {@code contents}. The size is encoded using the shortest possible variable-length integer.
+   */
+  private static byte[] element(int id, byte[]... contents) {
+    int idLength = 4;
+    while (idLength > 1 && (id >>> (8 * (idLength - 1))) == 0) {
+      idLength--;
+    }
+    long contentSize = 0;
+    for (byte[] content : contents) {
+      contentSize += content.length;
+    }
+    int sizeLength = 1;
+    // All ones is reserved to indicate an unknown size.
+    while (contentSize >= (1L << (7 * sizeLength)) - 1) {
+      sizeLength++;
+    }
+    byte[] element = new byte[(int) (idLength + sizeLength + contentSize)];
+    for (int i = 0; i < idLength; i++) {
+      element[i] = (byte) (id >> (8 * (idLength - 1 - i)));
+    }
+    for (int i = 0; i < sizeLength; i++) {
+      element[idLength + i] = (byte) (contentSize >> (8 * (sizeLength - 1 - i)));
+    }
+    element[idLength] |= (byte) (0x80 >> (sizeLength - 1));
+    int position = idLength + sizeLength;
+    for (byte[] content : contents) {
+      System.arraycopy(content, 0, element, position, content.length);
+      position += content.length;
+    }
+    return element;
+  }
+
+  private static byte[] unsigned(long value) {
+    int length = 1;
+    while (length < 8 && (value >>> (8 * length)) != 0) {
+      length++;
+    }
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = (byte) (value >> (8 * (length - 1 - i)));
+    }
+    return bytes;
+  }
+
+  private static byte[] float64(double value) {
+    long bits = Double.doubleToLongBits(value);
+    byte[] bytes = new byte[8];
+    for (int i = 0; i < 8; i++) {
+      bytes[i] = (byte) (bits >> (56 - 8 * i));
+    }
+    return bytes;
+  }
+
+}
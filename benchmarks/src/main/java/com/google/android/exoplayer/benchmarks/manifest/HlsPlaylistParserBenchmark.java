@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks.manifest;
+
+import com.google.android.exoplayer.benchmarks.testutil.BenchmarkTestCase;
+import com.google.android.exoplayer.hls.HlsMasterPlaylist;
+import com.google.android.exoplayer.hls.HlsMediaPlaylist;
+import com.google.android.exoplayer.hls.HlsPlaylist;
+import com.google.android.exoplayer.hls.HlsPlaylistParser;
+import java.io.ByteArrayInputStream;
+import java.util.Locale;
+
+/**
+ * Benchmarks {@link HlsPlaylistParser} on a master playlist and on a long media playlist, such as
+ * that of a live stream with a large DVR window.
+ */
+public final class HlsPlaylistParserBenchmark extends BenchmarkTestCase {
+
+  private static final String PLAYLIST_URL = "https://example.com/playlist.m3u8";
+
+  private static final int VARIANT_COUNT = 8;
+  private static final int SEGMENT_COUNT = 2000;
+  private static final int SEGMENTS_PER_KEY = 10;
+
+  private HlsPlaylistParser parser;
+  private HlsPlaylist playlist;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    parser = new HlsPlaylistParser();
+  }
+
+  public void testParseMasterPlaylist() throws Exception {
+    final byte[] data = buildMasterPlaylist().getBytes("UTF-8");
+    measure("parseMasterPlaylist", data.length, new Operation() {
+      @Override
+      public void run() throws Exception {
+        playlist = parser.parse(PLAYLIST_URL, new ByteArrayInputStream(data));
+      }
+    });
+    assertEquals(VARIANT_COUNT, ((HlsMasterPlaylist) playlist).variants.size());
+  }
+
+  public void testParseMediaPlaylist() throws Exception {
+    final byte[] data = buildMediaPlaylist().getBytes("UTF-8");
+    measure("parseMediaPlaylist", data.length, new Operation() {
+      @Override
+      public void run() throws Exception {
+        playlist = parser.parse(PLAYLIST_URL, new ByteArrayInputStream(data));
+      }
+    });
+    assertEquals(SEGMENT_COUNT, ((HlsMediaPlaylist) playlist).segments.size());
+  }
+
+  private static String buildMasterPlaylist() {
+    StringBuilder builder = new StringBuilder("#EXTM3U\n");
+    for (int i = 0; i < VARIANT_COUNT; i++) {
+      int height = 144 * (i + 1);
+      builder.append(String.format(Locale.US,
+          "#EXT-X-STREAM-INF:BANDWIDTH=%d,CODECS=\"mp4a.40.2,avc1.4d401f\",RESOLUTION=%dx%d\n",
+          250000 * (i + 1), height * 16 / 9, height));
+      builder.append("https://example.com/variant").append(i).append(".m3u8\n");
+    }
+    return builder.toString();
+  }
+
+  private static String buildMediaPlaylist() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("#EXTM3U\n")
+        .append("#EXT-X-VERSION:3\n")
+        .append("#EXT-X-TARGETDURATION:6\n")
+        .append("#EXT-X-MEDIA-SEQUENCE:10000\n");
+    for (int i = 0; i < SEGMENT_COUNT; i++) {
+      if (i % SEGMENTS_PER_KEY == 0) {
+        builder.append("#EXT-X-KEY:METHOD=AES-128,URI=\"https://example.com/key?r=")
+            .append(i / SEGMENTS_PER_KEY).append("\"\n");
+      }
+      builder.append(String.format(Locale.US, "#EXTINF:%.3f,\n", 5.9 + (i % 3) * 0.05));
+      builder.append("https://example.com/segment").append(10000 + i).append(".ts\n");
+    }
+    builder.append("#EXT-X-ENDLIST\n");
+    return builder.toString();
+  }
+
+}
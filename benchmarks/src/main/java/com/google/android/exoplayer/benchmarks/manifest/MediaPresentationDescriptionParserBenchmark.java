@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks.manifest;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.benchmarks.testutil.BenchmarkTestCase;
+import com.google.android.exoplayer.dash.mpd.AdaptationSet;
+import com.google.android.exoplayer.dash.mpd.MediaPresentationDescription;
+import com.google.android.exoplayer.dash.mpd.MediaPresentationDescriptionParser;
+import com.google.android.exoplayer.dash.mpd.Representation.MultiSegmentRepresentation;
+import java.io.ByteArrayInputStream;
+import java.util.Locale;
+
+/**
+ * Benchmarks {@link MediaPresentationDescriptionParser} on a dynamic manifest whose adaptation
+ * sets share a long SegmentTimeline, such as that of a live stream with a large DVR window.
+ */
+public final class MediaPresentationDescriptionParserBenchmark extends BenchmarkTestCase {
+
+  private static final String MANIFEST_URL = "https://example.com/manifest.mpd";
+
+  private static final int VIDEO_REPRESENTATION_COUNT = 6;
+  private static final int AUDIO_REPRESENTATION_COUNT = 2;
+  private static final int SEGMENT_COUNT = 1800;
+
+  private MediaPresentationDescriptionParser parser;
+  private MediaPresentationDescription manifest;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    parser = new MediaPresentationDescriptionParser();
+  }
+
+  public void testParse() throws Exception {
+    final byte[] data = buildManifest().getBytes("UTF-8");
+    measure("parse", data.length, new Operation() {
+      @Override
+      public void run() throws Exception {
+        manifest = parser.parse(MANIFEST_URL, new ByteArrayInputStream(data));
+      }
+    });
+    AdaptationSet videoAdaptationSet = manifest.getPeriod(0).adaptationSets.get(0);
+    assertEquals(VIDEO_REPRESENTATION_COUNT, videoAdaptationSet.representations.size());
+    MultiSegmentRepresentation representation =
+        (MultiSegmentRepresentation) videoAdaptationSet.representations.get(0);
+    assertEquals(SEGMENT_COUNT, representation.getLastSegmentNum(C.UNKNOWN_TIME_US)
+        - representation.getFirstSegmentNum() + 1);
+  }
+
+  private static String buildManifest() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+        .append("<MPD xmlns=\"urn:mpeg:dash:schema:mpd:2011\" type=\"dynamic\"")
+        .append(" availabilityStartTime=\"2016-01-01T00:00:00Z\"")
+        .append(" minimumUpdatePeriod=\"PT2S\" timeShiftBufferDepth=\"PT1H\"")
+        .append(" minBufferTime=\"PT4S\" profiles=\"urn:mpeg:dash:profile:isoff-live:2011\">\n")
+        .append("<Period id=\"0\" start=\"PT0S\">\n");
+    appendAdaptationSet(builder, "video/mp4", VIDEO_REPRESENTATION_COUNT);
+    appendAdaptationSet(builder, "audio/mp4", AUDIO_REPRESENTATION_COUNT);
+    builder.append("</Period>\n")
+        .append("</MPD>\n");
+    return builder.toString();
+  }
+
+  private static void appendAdaptationSet(StringBuilder builder, String mimeType,
+      int representationCount) {
+    boolean video = mimeType.startsWith("video");
+    builder.append("<AdaptationSet mimeType=\"").append(mimeType)
+        .append("\" segmentAlignment=\"true\" startWithSAP=\"1\">\n")
+        .append("<SegmentTemplate timescale=\"90000\"")
+        .append(" initialization=\"$RepresentationID$/init.mp4\"")
+        .append(" media=\"$RepresentationID$/$Time$.m4s\">\n")
+        .append("<SegmentTimeline>\n");
+    long time = 0;
+    for (int i = 0; i < SEGMENT_COUNT; i++) {
+      // Segment durations vary slightly, as they do for live encoders, so that they can't be
+      // collapsed into a single S element with a repeat count.
+      int duration = 180000 + (i % 3 - 1) * 3003;
+      builder.append("<S t=\"").append(time).append("\" d=\"").append(duration).append("\"/>\n");
+      time += duration;
+    }
+    builder.append("</SegmentTimeline>\n")
+        .append("</SegmentTemplate>\n");
+    for (int i = 0; i < representationCount; i++) {
+      builder.append("<Representation id=\"").append(mimeType.charAt(0)).append(i)
+          .append("\" bandwidth=\"").append((video ? 500000 : 64000) * (i + 1)).append('"');
+      if (video) {
+        int height = 144 * (i + 1);
+        builder.append(String.format(Locale.US,
+            " codecs=\"avc1.4d401f\" width=\"%d\" height=\"%d\" frameRate=\"30\"",
+            height * 16 / 9, height));
+      } else {
+        builder.append(" codecs=\"mp4a.40.2\" audioSamplingRate=\"48000\"");
+      }
+      builder.append("/>\n");
+    }
+    builder.append("</AdaptationSet>\n");
+  }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks.testutil;
+
+import android.os.Debug;
+import android.util.Log;
+import java.util.Arrays;
+import java.util.Locale;
+import junit.framework.TestCase;
+
+/**
+ * Base class for benchmarks.
+ * <p>
+ * Operations are measured in the same way as by JMH's average time mode: after a number of warm-up
+ * iterations, each measurement iteration runs the operation repeatedly for at least
+ * {@link #MIN_ITERATION_DURATION_NS}, and the median time per operation across the measurement
+ * iterations is reported. The operation is then run again with allocation counting enabled, to
+ * report the number of objects and bytes allocated per operation. Results are written to logcat
+ * under {@link #TAG}, one line per measurement, so that they can be collected and compared between
+ * releases.
+ */
+public abstract class BenchmarkTestCase extends TestCase {
+
+  /**
+   * An operation to be measured.
+   */
+  public interface Operation {
+
+    /**
+     * Runs the operation once.
+     *
+     * @throws Exception If the operation fails, in which case the benchmark fails.
+     */
+    void run() throws Exception;
+
+  }
+
+  public static final String TAG = "ExoPlayerBenchmark";
+
+  private static final int WARM_UP_ITERATION_COUNT = 5;
+  private static final int MEASUREMENT_ITERATION_COUNT = 10;
+  private static final long MIN_ITERATION_DURATION_NS = 100 * 1000 * 1000;
+  private static final int ALLOCATION_COUNTING_OPERATION_COUNT = 10;
+
+  /**
+   * Measures an operation and logs the result.
+   *
+   * @param name The name of the measurement, which is prefixed with the name of the benchmark
+   *     class.
+   * @param bytesPerOperation The number of bytes of input processed by each operation, used to
+   *     report throughput, or 0 if throughput isn't meaningful.
+   * @param operation The operation to measure.
+   * @return The median duration of an operation, in nanoseconds.
+   * @throws Exception If the operation fails.
+   */
+  protected final double measure(String name, long bytesPerOperation, Operation operation)
+      throws Exception {
+    for (int i = 0; i < WARM_UP_ITERATION_COUNT; i++) {
+      runIteration(operation);
+    }
+    double[] durationsNs = new double[MEASUREMENT_ITERATION_COUNT];
+    for (int i = 0; i < MEASUREMENT_ITERATION_COUNT; i++) {
+      durationsNs[i] = runIteration(operation);
+    }
+    Arrays.sort(durationsNs);
+    double durationNs = durationsNs[MEASUREMENT_ITERATION_COUNT / 2];
+
+    Debug.startAllocCounting();
+    Debug.resetThreadAllocCount();
+    Debug.resetThreadAllocSize();
+    for (int i = 0; i < ALLOCATION_COUNTING_OPERATION_COUNT; i++) {
+      operation.run();
+    }
+    int allocationCount = Debug.getThreadAllocCount();
+    int allocationSize = Debug.getThreadAllocSize();
+    Debug.stopAllocCounting();
+
+    StringBuilder result = new StringBuilder();
+    result.append(getClass().getSimpleName()).append('.').append(name).append(": ")
+        .append(String.format(Locale.US, "%.3f us/op", durationNs / 1000));
+    if (bytesPerOperation > 0) {
+      result.append(String.format(Locale.US, ", %.1f MB/s", bytesPerOperation * 1000 / durationNs));
+    }
+    result.append(String.format(Locale.US, ", %.1f allocs/op, %d B/op",
+        (double) allocationCount / ALLOCATION_COUNTING_OPERATION_COUNT,
+        allocationSize / ALLOCATION_COUNTING_OPERATION_COUNT));
+    Log.i(TAG, result.toString());
+    return durationNs;
+  }
+
+  /**
+   * Runs the operation repeatedly for at least {@link #MIN_ITERATION_DURATION_NS}, and returns the
+   * average duration of each run in nanoseconds.
+   */
+  private static double runIteration(Operation operation) throws Exception {
+    int operationCount = 0;
+    long startTimeNs = System.nanoTime();
+    long durationNs;
+    do {
+      operation.run();
+      operationCount++;
+      durationNs = System.nanoTime() - startTimeNs;
+    } while (durationNs < MIN_ITERATION_DURATION_NS);
+    return (double) durationNs / operationCount;
+  }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks.testutil;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.MediaFormat;
+import com.google.android.exoplayer.drm.DrmInitData;
+import com.google.android.exoplayer.extractor.ExtractorInput;
+import com.google.android.exoplayer.extractor.ExtractorOutput;
+import com.google.android.exoplayer.extractor.SeekMap;
+import com.google.android.exoplayer.extractor.TrackOutput;
+import com.google.android.exoplayer.util.ParsableByteArray;
+import java.io.IOException;
+
+/**
+ * An {@link ExtractorOutput} that discards sample data, so that benchmarks measure extraction
+ * rather than buffering. The number of samples and bytes of sample data output are counted, so
+ * that benchmarks can check that extraction succeeded.
+ */
+public final class DiscardingExtractorOutput implements ExtractorOutput, TrackOutput {
+
+  private final byte[] discardBuffer;
+
+  public int trackCount;
+  public boolean tracksEnded;
+  public SeekMap seekMap;
+  public int sampleCount;
+  public long sampleBytes;
+
+  public DiscardingExtractorOutput() {
+    discardBuffer = new byte[4096];
+  }
+
+  /**
+   * Resets the counters, so that the output can be used for another extraction.
+   */
+  public void reset() {
+    trackCount = 0;
+    tracksEnded = false;
+    seekMap = null;
+    sampleCount = 0;
+    sampleBytes = 0;
+  }
+
+  // ExtractorOutput implementation.
+
+  @Override
+  public TrackOutput track(int trackId) {
+    trackCount++;
+    return this;
+  }
+
+  @Override
+  public void endTracks() {
+    tracksEnded = true;
+  }
+
+  @Override
+  public void seekMap(SeekMap seekMap) {
+    this.seekMap = seekMap;
+  }
+
+  @Override
+  public void drmInitData(DrmInitData drmInitData) {
+    // Do nothing.
+  }
+
+  // TrackOutput implementation.
+
+  @Override
+  public void format(MediaFormat format) {
+    // Do nothing.
+  }
+
+  @Override
+  public int sampleData(ExtractorInput input, int length, boolean allowEndOfInput)
+      throws IOException, InterruptedException {
+    int bytesSkipped = input.read(discardBuffer, 0, Math.min(discardBuffer.length, length));
+    if (bytesSkipped == C.RESULT_END_OF_INPUT) {
+      if (allowEndOfInput) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      throw new IOException("Unexpected end of input.");
+    }
+    return bytesSkipped;
+  }
+
+  @Override
+  public void sampleData(ParsableByteArray data, int length) {
+    data.skipBytes(length);
+  }
+
+  @Override
+  public void sampleMetadata(long timeUs, int flags, int size, int offset, byte[] encryptionKey) {
+    sampleCount++;
+    sampleBytes += size;
+  }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks.testutil;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.extractor.DefaultExtractorInput;
+import com.google.android.exoplayer.extractor.Extractor;
+import com.google.android.exoplayer.extractor.ExtractorInput;
+import com.google.android.exoplayer.extractor.PositionHolder;
+import com.google.android.exoplayer.upstream.ByteArrayDataSource;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+import java.io.IOException;
+
+/**
+ * Utility methods for extractor benchmarks.
+ */
+public final class ExtractorBenchmarkUtil {
+
+  private ExtractorBenchmarkUtil() {}
+
+  /**
+   * Extracts the whole of a stream held in memory, in the same way as
+   * {@link com.google.android.exoplayer.extractor.ExtractorSampleSource} does from a
+   * {@link DataSource}: the extractor sniffs the start of the stream before it's initialized, and
+   * the source is opened again at the requested position when the extractor requests a seek.
+   *
+   * @param extractor The extractor, which must not have been initialized.
+   * @param data The stream.
+   * @param output The output to which the extractor should write.
+   * @throws IOException If the extractor fails to parse the stream, or doesn't recognize it.
+   * @throws InterruptedException If the thread is interrupted.
+   */
+  public static void extract(Extractor extractor, byte[] data, DiscardingExtractorOutput output)
+      throws IOException, InterruptedException {
+    output.reset();
+    DataSource dataSource = new ByteArrayDataSource(data);
+    PositionHolder positionHolder = new PositionHolder();
+    boolean initialized = false;
+    long position = 0;
+    int result = Extractor.RESULT_CONTINUE;
+    while (result != Extractor.RESULT_END_OF_INPUT) {
+      dataSource.open(new DataSpec(null, position, C.LENGTH_UNBOUNDED, null));
+      ExtractorInput input = new DefaultExtractorInput(dataSource, position, data.length);
+      if (!initialized) {
+        if (!extractor.sniff(input)) {
+          throw new IOException("Extractor didn't recognize the stream.");
+        }
+        input.resetPeekPosition();
+        extractor.init(output);
+        initialized = true;
+      }
+      do {
+        result = extractor.read(input, positionHolder);
+      } while (result == Extractor.RESULT_CONTINUE);
+      dataSource.close();
+      position = positionHolder.position;
+    }
+    extractor.release();
+  }
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks.testutil;
+
+import com.google.android.exoplayer.upstream.cache.Cache;
+import com.google.android.exoplayer.upstream.cache.CacheEvictor;
+import com.google.android.exoplayer.upstream.cache.CacheSpan;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * An in-memory {@link Cache} that tracks spans without storing any data, for benchmarking
+ * {@link CacheEvictor}s.
+ * <p>
+ * Spans are added and accessed by {@link #read(String, long, long)}, which reports the changes to
+ * the evictor and to any listeners in the same way as
+ * {@link com.google.android.exoplayer.upstream.cache.SimpleCache}. The methods that write data to
+ * the cache aren't supported.
+ */
+public final class FakeCache implements Cache {
+
+  private static final File FILE = new File("span");
+
+  private final CacheEvictor evictor;
+  private final HashMap<String, TreeSet<CacheSpan>> cachedSpans;
+  private final HashMap<String, ArrayList<Listener>> listeners;
+
+  private long clock;
+  private long totalSpace;
+  private long evictorTimeNs;
+
+  /**
+   * @param evictor The {@link CacheEvictor}, which is notified that the cache is initialized.
+   */
+  public FakeCache(CacheEvictor evictor) {
+    this.evictor = evictor;
+    cachedSpans = new HashMap<>();
+    listeners = new HashMap<>();
+    evictor.onCacheInitialized();
+  }
+
+  /**
+   * Reads a span, adding it to the cache if it isn't cached. A cached span must have been added
+   * with the same position and length.
+   *
+   * @param key The cache key of the span.
+   * @param position The position of the span.
+   * @param length The length of the span.
+   * @return Whether the span was cached.
+   */
+  public boolean read(String key, long position, long length) {
+    TreeSet<CacheSpan> spans = cachedSpans.get(key);
+    if (spans == null) {
+      spans = new TreeSet<>();
+      cachedSpans.put(key, spans);
+    }
+    CacheSpan span = spans.floor(new CacheSpan(key, position, length));
+    if (span != null && span.position != position) {
+      span = null;
+    }
+    CacheSpan newSpan = new CacheSpan(key, position, length, ++clock, FILE);
+    long startTimeNs = System.nanoTime();
+    if (span != null) {
+      spans.remove(span);
+      spans.add(newSpan);
+      totalSpace += newSpan.length - span.length;
+      evictor.onSpanTouched(this, span, newSpan);
+      for (Listener listener : getListeners(key)) {
+        listener.onSpanTouched(this, span, newSpan);
+      }
+    } else {
+      evictor.onStartFile(this, key, position, length);
+      spans.add(newSpan);
+      totalSpace += newSpan.length;
+      evictor.onSpanAdded(this, newSpan);
+      for (Listener listener : getListeners(key)) {
+        listener.onSpanAdded(this, newSpan);
+      }
+    }
+    evictorTimeNs += System.nanoTime() - startTimeNs;
+    return span != null;
+  }
+
+  /**
+   * Returns the total time spent in calls to the evictor made by {@link #read(String, long, long)},
+   * in nanoseconds.
+   */
+  public long getEvictorTimeNs() {
+    return evictorTimeNs;
+  }
+
+  @Override
+  public NavigableSet<CacheSpan> addListener(String key, Listener listener) {
+    ArrayList<Listener> keyListeners = listeners.get(key);
+    if (keyListeners == null) {
+      keyListeners = new ArrayList<>();
+      listeners.put(key, keyListeners);
+    }
+    keyListeners.add(listener);
+    return getCachedSpans(key);
+  }
+
+  @Override
+  public void removeListener(String key, Listener listener) {
+    ArrayList<Listener> keyListeners = listeners.get(key);
+    if (keyListeners != null) {
+      keyListeners.remove(listener);
+      if (keyListeners.isEmpty()) {
+        listeners.remove(key);
+      }
+    }
+  }
+
+  @Override
+  public NavigableSet<CacheSpan> getCachedSpans(String key) {
+    TreeSet<CacheSpan> spans = cachedSpans.get(key);
+    return spans == null || spans.isEmpty() ? null : new TreeSet<>(spans);
+  }
+
+  @Override
+  public Set<String> getKeys() {
+    HashSet<String> keys = new HashSet<>();
+    for (String key : cachedSpans.keySet()) {
+      if (!cachedSpans.get(key).isEmpty()) {
+        keys.add(key);
+      }
+    }
+    return keys;
+  }
+
+  @Override
+  public long getCacheSpace() {
+    return totalSpace;
+  }
+
+  @Override
+  public CacheSpan startReadWrite(String key, long position) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public CacheSpan startReadWriteNonBlocking(String key, long position) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public File startFile(String key, long position, long length) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void commitFile(File file) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void releaseHoleSpan(CacheSpan holeSpan) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void removeSpan(CacheSpan span) {
+    TreeSet<CacheSpan> spans = cachedSpans.get(span.key);
+    CacheSpan cachedSpan = spans == null ? null : spans.floor(span);
+    if (cachedSpan != span) {
+      // The span isn't cached, or has been replaced by touching it.
+      return;
+    }
+    spans.remove(span);
+    totalSpace -= span.length;
+    evictor.onSpanRemoved(this, span);
+    for (Listener listener : getListeners(span.key)) {
+      listener.onSpanRemoved(this, span);
+    }
+  }
+
+  @Override
+  public boolean isCached(String key, long position, long length) {
+    TreeSet<CacheSpan> spans = cachedSpans.get(key);
+    if (spans == null) {
+      return false;
+    }
+    CacheSpan span = spans.floor(new CacheSpan(key, position, length));
+    if (span == null || span.position + span.length <= position) {
+      return false;
+    }
+    long endPosition = position + length;
+    long currentEndPosition = span.position + span.length;
+    for (CacheSpan next : spans.tailSet(span, false)) {
+      if (currentEndPosition >= endPosition || next.position > currentEndPosition) {
+        break;
+      }
+      currentEndPosition = Math.max(currentEndPosition, next.position + next.length);
+    }
+    return currentEndPosition >= endPosition;
+  }
+
+  private ArrayList<Listener> getListeners(String key) {
+    ArrayList<Listener> keyListeners = listeners.get(key);
+    // Copy the listeners, since they may be removed whilst they're being notified.
+    return keyListeners == null ? new ArrayList<Listener>() : new ArrayList<>(keyListeners);
+  }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks.testutil;
+
+import com.google.android.exoplayer.util.Util;
+import java.util.Random;
+
+/**
+ * Elementary stream data from which benchmarks build synthetic media.
+ * <p>
+ * The data is valid as far as the extractors parse it (parameter sets, NAL unit structure and
+ * frame headers), but the coded picture and audio data is random.
+ */
+public final class SyntheticMedia {
+
+  /** An H.264 sequence parameter set NAL unit for 1280x720 video. */
+  public static final byte[] H264_SPS = Util.getBytesFromHexString(
+      "6764001facb402802dd80880000003008000001e078c1950");
+  /** An H.264 picture parameter set NAL unit. */
+  public static final byte[] H264_PPS = Util.getBytesFromHexString("68ee3cb0");
+  /** The contents of an avcC box holding {@link #H264_SPS} and {@link #H264_PPS}. */
+  public static final byte[] H264_AVCC = Util.getBytesFromHexString(
+      "0164001fffe100186764001facb402802dd80880000003008000001e078c19500100"
+      + "0468ee3cb0");
+  /** An H.264 access unit delimiter NAL unit. */
+  public static final byte[] H264_AUD = new byte[] {0x09, (byte) 0xF0};
+
+  /** The header of an MPEG-1 Layer III frame at 128 kbit/s, 44.1 kHz, without padding. */
+  public static final int MPEG_AUDIO_HEADER = 0xFFFB9000;
+  /** The size of a frame with {@link #MPEG_AUDIO_HEADER}. */
+  public static final int MPEG_AUDIO_FRAME_SIZE = 417;
+  /** The number of samples per channel in a frame with {@link #MPEG_AUDIO_HEADER}. */
+  public static final int MPEG_AUDIO_SAMPLES_PER_FRAME = 1152;
+  /** The sample rate of a frame with {@link #MPEG_AUDIO_HEADER}. */
+  public static final int MPEG_AUDIO_SAMPLE_RATE = 44100;
+
+  private SyntheticMedia() {}
+
+  /**
+   * Returns an H.264 coded slice NAL unit, without a start code prefix.
+   *
+   * @param random The source of the slice data.
+   * @param size The size of the NAL unit.
+   * @param idr Whether the slice is part of an IDR picture.
+   * @return The NAL unit.
+   */
+  public static byte[] createH264Slice(Random random, int size, boolean idr) {
+    byte[] nalUnit = new byte[size];
+    nalUnit[0] = (byte) (idr ? 0x65 : 0x41);
+    // first_mb_in_slice (0) and slice_type (I or P), as exp-Golomb codes.
+    nalUnit[1] = (byte) (idr ? 0x88 : 0x9A);
+    for (int i = 2; i < size; i++) {
+      byte value = (byte) random.nextInt();
+      // Escape sequences of two zero bytes, as emulation prevention does.
+      if (nalUnit[i - 2] == 0 && nalUnit[i - 1] == 0 && value >= 0 && value <= 3) {
+        value = 3;
+      }
+      nalUnit[i] = value;
+    }
+    return nalUnit;
+  }
+
+  /**
+   * Returns an MPEG audio frame with {@link #MPEG_AUDIO_HEADER}. The frame data can't be mistaken
+   * for a frame header.
+   *
+   * @param random The source of the frame data.
+   * @return The frame.
+   */
+  public static byte[] createMpegAudioFrame(Random random) {
+    byte[] frame = new byte[MPEG_AUDIO_FRAME_SIZE];
+    frame[0] = (byte) (MPEG_AUDIO_HEADER >> 24);
+    frame[1] = (byte) (MPEG_AUDIO_HEADER >> 16);
+    frame[2] = (byte) (MPEG_AUDIO_HEADER >> 8);
+    frame[3] = (byte) MPEG_AUDIO_HEADER;
+    for (int i = 4; i < MPEG_AUDIO_FRAME_SIZE; i++) {
+      frame[i] = (byte) random.nextInt(0x7F);
+    }
+    return frame;
+  }
+
+  /**
+   * Returns an array of random bytes.
+   *
+   * @param random The source of the data.
+   * @param size The size of the array.
+   * @return The array.
+   */
+  public static byte[] createRandomData(Random random, int size) {
+    byte[] data = new byte[size];
+    random.nextBytes(data);
+    return data;
+  }
+
+}
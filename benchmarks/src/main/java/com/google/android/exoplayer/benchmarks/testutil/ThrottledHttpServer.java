@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks.testutil;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A local HTTP/1.1 server that serves a byte array with range support, and throttles each
+ * connection.
+ * <p>
+ * Each response is delayed by a fixed latency, and its body is written no faster than a fixed rate
+ * per connection. This models a link on which the throughput of a single connection is limited by
+ * its round trip time and window size rather than by the bandwidth of the link, so that using more
+ * connections increases the aggregate throughput.
+ */
+public final class ThrottledHttpServer {
+
+  private static final Pattern RANGE_HEADER = Pattern.compile("^bytes=(\\d+)-(\\d*)$");
+  private static final int WRITE_SIZE = 8 * 1024;
+
+  private final byte[] data;
+  private final int latencyMs;
+  private final long bytesPerSecondPerConnection;
+  private final ServerSocket serverSocket;
+  private final Thread acceptThread;
+  private final List<Socket> sockets;
+
+  /**
+   * @param data The data to serve.
+   * @param latencyMs The delay before each response is written, in milliseconds.
+   * @param bytesPerSecondPerConnection The maximum rate at which each connection writes data.
+   */
+  public ThrottledHttpServer(byte[] data, int latencyMs, long bytesPerSecondPerConnection)
+      throws IOException {
+    this.data = data;
+    this.latencyMs = latencyMs;
+    this.bytesPerSecondPerConnection = bytesPerSecondPerConnection;
+    serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    sockets = new ArrayList<>();
+    acceptThread = new Thread("ThrottledHttpServer") {
+      @Override
+      public void run() {
+        acceptConnections();
+      }
+    };
+    acceptThread.start();
+  }
+
+  /**
+   * Returns the URL from which the data is served.
+   */
+  public String getUrl() {
+    return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/data";
+  }
+
+  /**
+   * Stops the server and closes all open connections.
+   */
+  public void release() throws IOException, InterruptedException {
+    serverSocket.close();
+    acceptThread.join();
+    synchronized (this) {
+      for (Socket socket : sockets) {
+        socket.close();
+      }
+      sockets.clear();
+    }
+  }
+
+  private void acceptConnections() {
+    while (true) {
+      final Socket socket;
+      try {
+        socket = serverSocket.accept();
+      } catch (IOException e) {
+        // The server socket has been closed.
+        return;
+      }
+      synchronized (this) {
+        sockets.add(socket);
+      }
+      new Thread("ThrottledHttpServer:Connection") {
+        @Override
+        public void run() {
+          try {
+            serveConnection(socket);
+          } catch (IOException e) {
+            // The connection was closed.
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          } finally {
+            try {
+              socket.close();
+            } catch (IOException e) {
+              // Ignore.
+            }
+          }
+        }
+      }.start();
+    }
+  }
+
+  private void serveConnection(Socket socket) throws IOException, InterruptedException {
+    InputStream inputStream = new BufferedInputStream(socket.getInputStream());
+    OutputStream outputStream = socket.getOutputStream();
+    while (true) {
+      readLine(inputStream);
+      String rangeHeader = null;
+      String line;
+      while (!(line = readLine(inputStream)).isEmpty()) {
+        if (line.toLowerCase(Locale.US).startsWith("range:")) {
+          rangeHeader = line.substring(6).trim();
+        }
+      }
+      Thread.sleep(latencyMs);
+      Matcher matcher = rangeHeader == null ? null : RANGE_HEADER.matcher(rangeHeader);
+      int start = 0;
+      int end = data.length;
+      String status = "200 OK";
+      String contentRange = "";
+      if (matcher != null && matcher.matches()) {
+        start = Integer.parseInt(matcher.group(1));
+        if (!matcher.group(2).isEmpty()) {
+          end = Math.min(end, Integer.parseInt(matcher.group(2)) + 1);
+        }
+        status = "206 Partial Content";
+        contentRange = "Content-Range: bytes " + start + "-" + (end - 1) + "/" + data.length
+            + "\r\n";
+      }
+      String headers = "HTTP/1.1 " + status + "\r\n" + contentRange + "Content-Length: "
+          + (end - start) + "\r\n\r\n";
+      outputStream.write(headers.getBytes("US-ASCII"));
+      writeThrottled(outputStream, start, end);
+    }
+  }
+
+  private void writeThrottled(OutputStream outputStream, int start, int end)
+      throws IOException, InterruptedException {
+    long startTimeMs = System.currentTimeMillis();
+    for (int position = start; position < end; position += WRITE_SIZE) {
+      int length = Math.min(WRITE_SIZE, end - position);
+      outputStream.write(data, position, length);
+      long sendTimeMs = startTimeMs
+          + (position + length - start) * 1000L / bytesPerSecondPerConnection;
+      long delayMs = sendTimeMs - System.currentTimeMillis();
+      if (delayMs > 0) {
+        Thread.sleep(delayMs);
+      }
+    }
+    outputStream.flush();
+  }
+
+  private static String readLine(InputStream inputStream) throws IOException {
+    StringBuilder line = new StringBuilder();
+    int c;
+    while ((c = inputStream.read()) != '\n') {
+      if (c == -1) {
+        throw new EOFException();
+      } else if (c != '\r') {
+        line.append((char) c);
+      }
+    }
+    return line.toString();
+  }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks.text;
+
+import com.google.android.exoplayer.benchmarks.testutil.BenchmarkTestCase;
+import com.google.android.exoplayer.text.ttml.TtmlParser;
+import com.google.android.exoplayer.text.ttml.TtmlSubtitle;
+import java.util.Locale;
+
+/**
+ * Benchmarks {@link TtmlParser} on a document with styles, a region and many styled cues.
+ */
+public final class TtmlParserBenchmark extends BenchmarkTestCase {
+
+  private static final int CUE_COUNT = 1000;
+
+  private TtmlParser parser;
+  private TtmlSubtitle subtitle;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    parser = new TtmlParser();
+  }
+
+  public void testParse() throws Exception {
+    final byte[] data = buildDocument().getBytes("UTF-8");
+    measure("parse", data.length, new Operation() {
+      @Override
+      public void run() throws Exception {
+        subtitle = parser.parse(data, 0, data.length);
+      }
+    });
+    // Cues don't overlap or abut, so each has a distinct start and end time.
+    assertEquals(2 * CUE_COUNT, subtitle.getEventTimeCount());
+  }
+
+  private static String buildDocument() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n")
+        .append("<tt xmlns=\"http://www.w3.org/ns/ttml\"")
+        .append(" xmlns:tts=\"http://www.w3.org/ns/ttml#styling\" xml:lang=\"en\">\n")
+        .append("<head>\n")
+        .append("<styling>\n")
+        .append("<style xml:id=\"s1\" tts:color=\"white\" tts:fontFamily=\"sansSerif\"")
+        .append(" tts:fontSize=\"100%\" tts:textAlign=\"center\"/>\n")
+        .append("<style xml:id=\"s2\" style=\"s1\" tts:backgroundColor=\"black\"/>\n")
+        .append("</styling>\n")
+        .append("<layout>\n")
+        .append("<region xml:id=\"bottom\" tts:origin=\"10% 80%\" tts:extent=\"80% 15%\"/>\n")
+        .append("</layout>\n")
+        .append("</head>\n")
+        .append("<body>\n")
+        .append("<div>\n");
+    for (int i = 0; i < CUE_COUNT; i++) {
+      builder.append("<p begin=\"").append(formatTime(i * 3000)).append("\" end=\"")
+          .append(formatTime(i * 3000 + 2000)).append("\" style=\"s2\" region=\"bottom\">")
+          .append("Subtitle line ").append(i).append(" with <span tts:fontStyle=\"italic\">")
+          .append("styled</span> text<br/>and a second line</p>\n");
+    }
+    builder.append("</div>\n")
+        .append("</body>\n")
+        .append("</tt>\n");
+    return builder.toString();
+  }
+
+  private static String formatTime(int timeMs) {
+    return String.format(Locale.US, "%02d:%02d:%02d.%03d", timeMs / 3600000,
+        (timeMs / 60000) % 60, (timeMs / 1000) % 60, timeMs % 1000);
+  }
+
+}
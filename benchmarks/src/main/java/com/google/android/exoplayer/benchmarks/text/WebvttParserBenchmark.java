@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks.text;
+
+import com.google.android.exoplayer.benchmarks.testutil.BenchmarkTestCase;
+import com.google.android.exoplayer.text.webvtt.WebvttParser;
+import com.google.android.exoplayer.text.webvtt.WebvttSubtitle;
+import java.util.Locale;
+
+/**
+ * Benchmarks {@link WebvttParser} on a file with many cues, each with settings and markup.
+ */
+public final class WebvttParserBenchmark extends BenchmarkTestCase {
+
+  private static final int CUE_COUNT = 1000;
+
+  private WebvttParser parser;
+  private WebvttSubtitle subtitle;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    parser = new WebvttParser();
+  }
+
+  public void testParse() throws Exception {
+    final byte[] data = buildFile().getBytes("UTF-8");
+    measure("parse", data.length, new Operation() {
+      @Override
+      public void run() throws Exception {
+        subtitle = parser.parse(data, 0, data.length);
+      }
+    });
+    assertEquals(2 * CUE_COUNT, subtitle.getEventTimeCount());
+  }
+
+  private static String buildFile() {
+    StringBuilder builder = new StringBuilder("WEBVTT\n\n");
+    for (int i = 0; i < CUE_COUNT; i++) {
+      builder.append(i + 1).append('\n')
+          .append(formatTime(i * 3000)).append(" --> ").append(formatTime(i * 3000 + 2000))
+          .append(" line:85% position:50% align:middle\n")
+          .append("Subtitle line ").append(i).append(" with <i>styled</i> text\n")
+          .append("and a <b>second</b> line &amp; an entity\n\n");
+    }
+    return builder.toString();
+  }
+
+  private static String formatTime(int timeMs) {
+    return String.format(Locale.US, "%02d:%02d:%02d.%03d", timeMs / 3600000,
+        (timeMs / 60000) % 60, (timeMs / 1000) % 60, timeMs % 1000);
+  }
+
+}
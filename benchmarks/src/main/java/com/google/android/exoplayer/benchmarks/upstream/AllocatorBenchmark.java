@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks.upstream;
+
+import com.google.android.exoplayer.benchmarks.testutil.BenchmarkTestCase;
+import com.google.android.exoplayer.upstream.Allocation;
+import com.google.android.exoplayer.upstream.Allocator;
+import com.google.android.exoplayer.upstream.DefaultAllocator;
+import com.google.android.exoplayer.upstream.SlabAllocator;
+
+/**
+ * Benchmarks contention in {@link Allocator} implementations.
+ * <p>
+ * Several threads repeatedly allocate a few allocations and release them, as loading threads and
+ * the playback thread do when samples are written to and read from sample queues. Each operation
+ * runs a fixed number of cycles on each thread, so the time per operation grows with the thread
+ * count only to the extent that the threads contend.
+ */
+public final class AllocatorBenchmark extends BenchmarkTestCase {
+
+  private static final int ALLOCATION_SIZE = 64 * 1024;
+  private static final int ALLOCATIONS_PER_CYCLE = 4;
+  private static final int CYCLES_PER_THREAD = 10000;
+  private static final int[] THREAD_COUNTS = {1, 2, 4};
+
+  public void testDefaultAllocator() throws Exception {
+    measureAllocateAndRelease("defaultAllocator", new DefaultAllocator(ALLOCATION_SIZE));
+  }
+
+  public void testSlabAllocator() throws Exception {
+    measureAllocateAndRelease("slabAllocator", new SlabAllocator(ALLOCATION_SIZE));
+  }
+
+  private void measureAllocateAndRelease(String name, final Allocator allocator)
+      throws Exception {
+    for (final int threadCount : THREAD_COUNTS) {
+      measure(name + "Threads" + threadCount, 0, new Operation() {
+        @Override
+        public void run() throws InterruptedException {
+          allocateAndRelease(allocator, threadCount);
+        }
+      });
+    }
+  }
+
+  /**
+   * Runs {@link #CYCLES_PER_THREAD} allocate and release cycles on each of several threads.
+   */
+  private static void allocateAndRelease(final Allocator allocator, int threadCount)
+      throws InterruptedException {
+    Thread[] threads = new Thread[threadCount];
+    for (int i = 0; i < threadCount; i++) {
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          Allocation[] allocations = new Allocation[ALLOCATIONS_PER_CYCLE];
+          for (int j = 0; j < CYCLES_PER_THREAD; j++) {
+            for (int k = 0; k < ALLOCATIONS_PER_CYCLE; k++) {
+              allocations[k] = allocator.allocate();
+            }
+            // Samples are typically released one allocation at a time.
+            for (int k = 0; k < ALLOCATIONS_PER_CYCLE; k++) {
+              allocator.release(allocations[k]);
+            }
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+  }
+
+}
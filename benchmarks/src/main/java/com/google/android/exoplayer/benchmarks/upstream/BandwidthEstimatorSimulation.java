@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks.upstream;
+
+import android.util.Log;
+import com.google.android.exoplayer.benchmarks.testutil.BenchmarkTestCase;
+import com.google.android.exoplayer.upstream.BandwidthEstimator;
+import com.google.android.exoplayer.upstream.BandwidthMeter;
+import com.google.android.exoplayer.upstream.EwmaBandwidthEstimator;
+import com.google.android.exoplayer.upstream.HarmonicMeanBandwidthEstimator;
+import com.google.android.exoplayer.upstream.SlidingPercentileBandwidthEstimator;
+import com.google.android.exoplayer.upstream.TimeToFirstByteBandwidthEstimator;
+import java.util.Locale;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Compares {@link BandwidthEstimator} implementations by replaying bandwidth traces.
+ * <p>
+ * Each trace gives the link bandwidth and the time to first byte over time. A simulated player
+ * downloads chunks one after another, sized as if it always selected the format closest to the
+ * current estimate, and passes each completed transfer to the estimator. After each transfer the
+ * estimate is compared with the link bandwidth. For each trace and estimator, the mean relative
+ * error, the fraction of estimates that exceed the bandwidth by more than 20% (which risk
+ * rebuffering) and the mean relative change between consecutive estimates (which causes format
+ * switches) are written to logcat under {@link BenchmarkTestCase#TAG}.
+ */
+public final class BandwidthEstimatorSimulation extends TestCase {
+
+  private static final int SIMULATION_DURATION_MS = 600000;
+  private static final int CHUNK_DURATION_MS = 2000;
+  private static final int TRACE_STEP_MS = 10;
+  private static final long[] FORMAT_BITRATES = new long[] {250000, 500000, 1000000, 2000000,
+      4000000, 8000000};
+
+  public void testSteadyBandwidth() {
+    simulate("steady", new Trace() {
+      @Override
+      public long getBitrate(long timeMs) {
+        return 5000000;
+      }
+    });
+  }
+
+  public void testStepChanges() {
+    simulate("stepChanges", new Trace() {
+      @Override
+      public long getBitrate(long timeMs) {
+        // Alternate between a fast and a slow link every minute.
+        return (timeMs / 60000) % 2 == 0 ? 6000000 : 800000;
+      }
+    });
+  }
+
+  public void testNoisyBandwidth() {
+    final long[] bitrates = createNoisyBitrates(new Random(0), 3000000, 0.5, 0);
+    simulate("noisy", new Trace() {
+      @Override
+      public long getBitrate(long timeMs) {
+        return bitrates[(int) (timeMs / 1000)];
+      }
+    });
+  }
+
+  public void testBurstyBandwidth() {
+    final long[] bitrates = createNoisyBitrates(new Random(0), 2000000, 0.2, 0.1);
+    simulate("bursty", new Trace() {
+      @Override
+      public long getBitrate(long timeMs) {
+        return bitrates[(int) (timeMs / 1000)];
+      }
+    });
+  }
+
+  public void testHighLatency() {
+    simulate("highLatency", new Trace() {
+      @Override
+      public long getBitrate(long timeMs) {
+        return 5000000;
+      }
+
+      @Override
+      public int getTimeToFirstByteMs(long timeMs) {
+        // The latency rises from 50ms to 550ms halfway through.
+        return timeMs < SIMULATION_DURATION_MS / 2 ? 50 : 550;
+      }
+    });
+  }
+
+  private static void simulate(String traceName, Trace trace) {
+    simulate(traceName, "slidingPercentile", trace, new SlidingPercentileBandwidthEstimator());
+    simulate(traceName, "ewma", trace, new EwmaBandwidthEstimator());
+    simulate(traceName, "harmonicMean", trace, new HarmonicMeanBandwidthEstimator());
+    simulate(traceName, "timeToFirstByte+harmonicMean", trace,
+        new TimeToFirstByteBandwidthEstimator(new HarmonicMeanBandwidthEstimator()));
+    simulate(traceName, "timeToFirstByte+ewma", trace,
+        new TimeToFirstByteBandwidthEstimator(new EwmaBandwidthEstimator()));
+  }
+
+  private static void simulate(String traceName, String estimatorName, Trace trace,
+      BandwidthEstimator estimator) {
+    long timeMs = 0;
+    int estimateCount = 0;
+    double errorSum = 0;
+    int overestimateCount = 0;
+    double changeSum = 0;
+    long previousEstimate = BandwidthMeter.NO_ESTIMATE;
+    while (timeMs < SIMULATION_DURATION_MS) {
+      long bitrateEstimate = estimator.getBitrateEstimate();
+      long formatBitrate = selectFormat(bitrateEstimate);
+      long bytes = formatBitrate * CHUNK_DURATION_MS / 8000;
+      // Transfer the chunk.
+      long startTimeMs = timeMs;
+      timeMs += trace.getTimeToFirstByteMs(timeMs);
+      long timeToFirstByteMs = timeMs - startTimeMs;
+      double bytesRemaining = bytes;
+      while (bytesRemaining > 0) {
+        bytesRemaining -= trace.getBitrate(timeMs) * TRACE_STEP_MS / 8000d;
+        timeMs += TRACE_STEP_MS;
+      }
+      estimator.addSample(bytes, timeToFirstByteMs, timeMs - startTimeMs);
+
+      bitrateEstimate = estimator.getBitrateEstimate();
+      if (bitrateEstimate != BandwidthMeter.NO_ESTIMATE) {
+        long bitrate = trace.getBitrate(timeMs);
+        double relativeError = (double) (bitrateEstimate - bitrate) / bitrate;
+        errorSum += Math.abs(relativeError);
+        if (relativeError > 0.2) {
+          overestimateCount++;
+        }
+        if (previousEstimate != BandwidthMeter.NO_ESTIMATE) {
+          changeSum += (double) Math.abs(bitrateEstimate - previousEstimate) / previousEstimate;
+        }
+        previousEstimate = bitrateEstimate;
+        estimateCount++;
+      }
+    }
+    assertTrue(estimateCount > 0);
+    Log.i(BenchmarkTestCase.TAG, String.format(Locale.US,
+        "BandwidthEstimatorSimulation.%s.%s: %.1f%% error, %.1f%% overestimates, %.1f%% change",
+        traceName, estimatorName, errorSum * 100 / estimateCount,
+        overestimateCount * 100d / estimateCount, changeSum * 100 / estimateCount));
+  }
+
+  /**
+   * Returns the highest format bitrate no greater than the estimate, or the lowest format bitrate
+   * if there's no estimate.
+   */
+  private static long selectFormat(long bitrateEstimate) {
+    long formatBitrate = FORMAT_BITRATES[0];
+    for (long bitrate : FORMAT_BITRATES) {
+      if (bitrate <= bitrateEstimate) {
+        formatBitrate = bitrate;
+      }
+    }
+    return formatBitrate;
+  }
+
+  /**
+   * Returns bitrates for each second of the simulation, which vary randomly around a mean.
+   *
+   * @param random The source of randomness.
+   * @param meanBitrate The mean bitrate.
+   * @param variation The maximum relative deviation from the mean.
+   * @param burstProbability The probability that the bitrate is four times the mean for a second.
+   */
+  private static long[] createNoisyBitrates(Random random, long meanBitrate, double variation,
+      double burstProbability) {
+    long[] bitrates = new long[SIMULATION_DURATION_MS / 1000 + 60];
+    for (int i = 0; i < bitrates.length; i++) {
+      if (random.nextDouble() < burstProbability) {
+        bitrates[i] = meanBitrate * 4;
+      } else {
+        bitrates[i] = (long) (meanBitrate * (1 + variation * (2 * random.nextDouble() - 1)));
+      }
+    }
+    return bitrates;
+  }
+
+  /**
+   * A bandwidth trace.
+   */
+  private abstract static class Trace {
+
+    /**
+     * Returns the link bandwidth at the specified time, in bits/sec.
+     */
+    public abstract long getBitrate(long timeMs);
+
+    /**
+     * Returns the time to first byte of a transfer started at the specified time, in milliseconds.
+     */
+    public int getTimeToFirstByteMs(long timeMs) {
+      return 50;
+    }
+
+  }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks.upstream;
+
+import android.net.Uri;
+import android.util.Log;
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.benchmarks.testutil.BenchmarkTestCase;
+import com.google.android.exoplayer.benchmarks.testutil.ThrottledHttpServer;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.HttpConnectionPool;
+import com.google.android.exoplayer.upstream.ParallelRangeDataSource;
+import com.google.android.exoplayer.upstream.PooledHttpDataSource;
+import java.util.Random;
+
+/**
+ * Benchmarks loading data from a {@link ThrottledHttpServer} over a single connection, and over
+ * several connections with {@link ParallelRangeDataSource}.
+ * <p>
+ * The server limits the throughput of each connection, as a link with a high bandwidth-delay
+ * product does, so the benchmark measures how much of the latency and throughput limit
+ * {@link ParallelRangeDataSource} hides, and which number of connections it settles on.
+ */
+public final class ParallelRangeDataSourceBenchmark extends BenchmarkTestCase {
+
+  private static final int DATA_LENGTH = 2 * 1024 * 1024;
+  private static final int LATENCY_MS = 20;
+  private static final int BYTES_PER_SECOND_PER_CONNECTION = 4 * 1024 * 1024;
+  private static final int PART_SIZE = 128 * 1024;
+
+  private ThrottledHttpServer server;
+  private HttpConnectionPool connectionPool;
+  private DataSpec dataSpec;
+  private byte[] buffer;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    byte[] data = new byte[DATA_LENGTH];
+    new Random(0).nextBytes(data);
+    server = new ThrottledHttpServer(data, LATENCY_MS, BYTES_PER_SECOND_PER_CONNECTION);
+    connectionPool = new HttpConnectionPool();
+    dataSpec = new DataSpec(Uri.parse(server.getUrl()), 0, C.LENGTH_UNBOUNDED, null);
+    buffer = new byte[16 * 1024];
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    connectionPool.evictAll();
+    server.release();
+    super.tearDown();
+  }
+
+  public void testSingleConnection() throws Exception {
+    measureLoad("singleConnection", createUpstream());
+  }
+
+  public void testParallelRanges4Connections() throws Exception {
+    measureParallelLoad("parallelRanges4Connections", 4);
+  }
+
+  public void testParallelRanges8Connections() throws Exception {
+    measureParallelLoad("parallelRanges8Connections", 8);
+  }
+
+  private void measureParallelLoad(String name, int maxConnectionCount) throws Exception {
+    DataSource[] upstreams = new DataSource[maxConnectionCount];
+    for (int i = 0; i < maxConnectionCount; i++) {
+      upstreams[i] = createUpstream();
+    }
+    ParallelRangeDataSource dataSource =
+        new ParallelRangeDataSource(upstreams, PART_SIZE, maxConnectionCount * 2);
+    measureLoad(name, dataSource);
+    Log.i(TAG, getClass().getSimpleName() + "." + name + ": settled on "
+        + dataSource.getConnectionCount() + " connections");
+  }
+
+  private void measureLoad(String name, final DataSource dataSource) throws Exception {
+    measure(name, DATA_LENGTH, new Operation() {
+      @Override
+      public void run() throws Exception {
+        long bytesLoaded = 0;
+        try {
+          dataSource.open(dataSpec);
+          int bytesRead;
+          while ((bytesRead = dataSource.read(buffer, 0, buffer.length))
+              != C.RESULT_END_OF_INPUT) {
+            bytesLoaded += bytesRead;
+          }
+        } finally {
+          dataSource.close();
+        }
+        assertEquals(DATA_LENGTH, bytesLoaded);
+      }
+    });
+  }
+
+  private DataSource createUpstream() {
+    return new PooledHttpDataSource("ExoPlayerBenchmark", null, null, connectionPool);
+  }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks.upstream.cache;
+
+import android.net.Uri;
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.benchmarks.testutil.BenchmarkTestCase;
+import com.google.android.exoplayer.benchmarks.testutil.SyntheticMedia;
+import com.google.android.exoplayer.extractor.DefaultExtractorInput;
+import com.google.android.exoplayer.extractor.DefaultTrackOutput;
+import com.google.android.exoplayer.extractor.ExtractorInput;
+import com.google.android.exoplayer.upstream.ByteArrayDataSource;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.DefaultAllocator;
+import com.google.android.exoplayer.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer.upstream.cache.NoOpCacheEvictor;
+import com.google.android.exoplayer.upstream.cache.SimpleCache;
+import java.io.File;
+import java.util.Random;
+
+/**
+ * Benchmarks extraction from fully cached content, reading cache files through a
+ * {@link com.google.android.exoplayer.upstream.FileDataSource} and through a
+ * {@link com.google.android.exoplayer.upstream.MappedFileDataSource}.
+ * <p>
+ * The content consists of length prefixed samples, which are extracted into a
+ * {@link DefaultTrackOutput} in the same way as by real extractors.
+ */
+public final class CacheDataSourceBenchmark extends BenchmarkTestCase {
+
+  private static final String KEY = "key";
+  private static final Uri URI = Uri.parse("http://www.google.com");
+  private static final int CONTENT_LENGTH = 8 * 1024 * 1024;
+  private static final int MAX_CACHE_FILE_SIZE = 1024 * 1024;
+  private static final int MAX_SAMPLE_SIZE = 32 * 1024;
+  private static final int SAMPLES_PER_CLEAR = 64;
+
+  private File cacheDir;
+  private SimpleCache cache;
+  private DefaultTrackOutput output;
+  private byte[] sampleHeader;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    cacheDir = File.createTempFile("ExoPlayerBenchmark", null);
+    assertTrue(cacheDir.delete());
+    assertTrue(cacheDir.mkdir());
+    cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    // Write the content to the cache.
+    CacheDataSource dataSource = new CacheDataSource(cache,
+        new ByteArrayDataSource(buildContent()), false, false, MAX_CACHE_FILE_SIZE);
+    dataSource.open(new DataSpec(URI, 0, CONTENT_LENGTH, KEY));
+    byte[] buffer = new byte[64 * 1024];
+    while (dataSource.read(buffer, 0, buffer.length) != C.RESULT_END_OF_INPUT) {}
+    dataSource.close();
+    assertTrue(cache.isCached(KEY, 0, CONTENT_LENGTH));
+    output = new DefaultTrackOutput(new DefaultAllocator(64 * 1024));
+    sampleHeader = new byte[4];
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    recursiveDelete(cacheDir);
+    super.tearDown();
+  }
+
+  public void testFileDataSource() throws Exception {
+    measureExtraction("fileDataSource", false);
+  }
+
+  public void testMappedFileDataSource() throws Exception {
+    measureExtraction("mappedFileDataSource", true);
+  }
+
+  private void measureExtraction(String name, final boolean memoryMapCacheFiles)
+      throws Exception {
+    measure(name, CONTENT_LENGTH, new Operation() {
+      @Override
+      public void run() throws Exception {
+        extract(memoryMapCacheFiles);
+      }
+    });
+  }
+
+  private void extract(boolean memoryMapCacheFiles) throws Exception {
+    // The upstream source is never read, since the content is cached.
+    DataSource upstream = new ByteArrayDataSource(new byte[1]);
+    CacheDataSource dataSource = new CacheDataSource(cache, upstream, false, false,
+        MAX_CACHE_FILE_SIZE, memoryMapCacheFiles);
+    dataSource.open(new DataSpec(URI, 0, CONTENT_LENGTH, KEY));
+    ExtractorInput input = new DefaultExtractorInput(dataSource, 0, CONTENT_LENGTH);
+    int sampleCount = 0;
+    while (input.readFully(sampleHeader, 0, 4, true)) {
+      int sampleSize = ((sampleHeader[0] & 0xFF) << 24) | ((sampleHeader[1] & 0xFF) << 16)
+          | ((sampleHeader[2] & 0xFF) << 8) | (sampleHeader[3] & 0xFF);
+      int bytesRemaining = sampleSize;
+      while (bytesRemaining > 0) {
+        bytesRemaining -= output.sampleData(input, bytesRemaining, false);
+      }
+      output.sampleMetadata(sampleCount, C.SAMPLE_FLAG_SYNC, sampleSize, 0, null);
+      if (++sampleCount % SAMPLES_PER_CLEAR == 0) {
+        output.clear();
+      }
+    }
+    output.clear();
+    dataSource.close();
+  }
+
+  private static byte[] buildContent() {
+    Random random = new Random(0);
+    byte[] content = SyntheticMedia.createRandomData(random, CONTENT_LENGTH);
+    int position = 0;
+    while (position + 4 <= CONTENT_LENGTH) {
+      int bytesAfterHeader = CONTENT_LENGTH - position - 4;
+      int sampleSize = 1 + random.nextInt(MAX_SAMPLE_SIZE);
+      if (bytesAfterHeader - sampleSize < 4) {
+        // Make the last sample end at the end of the content.
+        sampleSize = bytesAfterHeader;
+      }
+      content[position] = (byte) (sampleSize >> 24);
+      content[position + 1] = (byte) (sampleSize >> 16);
+      content[position + 2] = (byte) (sampleSize >> 8);
+      content[position + 3] = (byte) sampleSize;
+      position += 4 + sampleSize;
+    }
+    return content;
+  }
+
+  private static void recursiveDelete(File fileOrDirectory) {
+    if (fileOrDirectory.isDirectory()) {
+      for (File child : fileOrDirectory.listFiles()) {
+        recursiveDelete(child);
+      }
+    }
+    fileOrDirectory.delete();
+  }
+
+}
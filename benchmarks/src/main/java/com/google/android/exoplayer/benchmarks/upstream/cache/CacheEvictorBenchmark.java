@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks.upstream.cache;
+
+import android.util.Log;
+import com.google.android.exoplayer.benchmarks.testutil.BenchmarkTestCase;
+import com.google.android.exoplayer.benchmarks.testutil.FakeCache;
+import com.google.android.exoplayer.upstream.cache.CacheEvictor;
+import com.google.android.exoplayer.upstream.cache.LeastRecentlyUsedCacheEvictor;
+import com.google.android.exoplayer.upstream.cache.PerKeyQuotaCacheEvictor;
+import com.google.android.exoplayer.upstream.cache.SegmentedLruCacheEvictor;
+import com.google.android.exoplayer.upstream.cache.TinyLfuCacheEvictor;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Benchmarks {@link CacheEvictor} implementations by replaying a trace of cache accesses.
+ * <p>
+ * The synthetic trace mixes frequently read initialization segments, a sliding live window and
+ * popular on-demand content with periodic long scans through content that's read once. The time
+ * taken to replay the trace against a {@link FakeCache} is measured for each evictor, and the hit
+ * ratio and the time spent in evictor callbacks per access are logged alongside it.
+ */
+public final class CacheEvictorBenchmark extends BenchmarkTestCase {
+
+  private static final int SPAN_LENGTH = 1024;
+  private static final int CACHE_SPAN_COUNT = 400;
+  private static final long MAX_BYTES = (long) CACHE_SPAN_COUNT * SPAN_LENGTH;
+  private static final int TRACE_LENGTH = 200000;
+  private static final int INIT_KEY_COUNT = 10;
+  private static final int LIVE_WINDOW_SPAN_COUNT = 30;
+  private static final int LIVE_WINDOW_ADVANCE_INTERVAL = 20;
+  private static final int VOD_KEY_COUNT = 50;
+  private static final int VOD_SPANS_PER_KEY = 10;
+  private static final int SCAN_INTERVAL = 2000;
+  private static final int SCAN_SPAN_COUNT = 1000;
+
+  private ArrayList<Access> trace;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    trace = createTrace();
+  }
+
+  public void testLeastRecentlyUsed() throws Exception {
+    measureReplay("leastRecentlyUsed", new EvictorFactory() {
+      @Override
+      public CacheEvictor createEvictor() {
+        return new LeastRecentlyUsedCacheEvictor(MAX_BYTES);
+      }
+    });
+  }
+
+  public void testSegmentedLru() throws Exception {
+    measureReplay("segmentedLru", new EvictorFactory() {
+      @Override
+      public CacheEvictor createEvictor() {
+        return new SegmentedLruCacheEvictor(MAX_BYTES);
+      }
+    });
+  }
+
+  public void testTinyLfu() throws Exception {
+    measureReplay("tinyLfu", new EvictorFactory() {
+      @Override
+      public CacheEvictor createEvictor() {
+        return new TinyLfuCacheEvictor(MAX_BYTES, CACHE_SPAN_COUNT);
+      }
+    });
+  }
+
+  public void testPerKeyQuota() throws Exception {
+    measureReplay("perKeyQuota", new EvictorFactory() {
+      @Override
+      public CacheEvictor createEvictor() {
+        return new PerKeyQuotaCacheEvictor(MAX_BYTES, MAX_BYTES / 4);
+      }
+    });
+  }
+
+  private void measureReplay(String name, final EvictorFactory evictorFactory) throws Exception {
+    measure(name, 0, new Operation() {
+      @Override
+      public void run() {
+        replay(trace, evictorFactory.createEvictor());
+      }
+    });
+    Result result = replay(trace, evictorFactory.createEvictor());
+    Log.i(TAG, String.format(Locale.US, "%s.%s: %s", getClass().getSimpleName(), name, result));
+    assertTrue(result.hits > 0);
+  }
+
+  private static ArrayList<Access> createTrace() {
+    Random random = new Random(0);
+    ArrayList<Access> trace = new ArrayList<>(TRACE_LENGTH + TRACE_LENGTH / SCAN_INTERVAL
+        * SCAN_SPAN_COUNT);
+    int liveWindowStart = 0;
+    int scanCount = 0;
+    for (int i = 0; i < TRACE_LENGTH; i++) {
+      if (i % SCAN_INTERVAL == SCAN_INTERVAL - 1) {
+        String scanKey = "scan" + scanCount++;
+        for (int j = 0; j < SCAN_SPAN_COUNT; j++) {
+          trace.add(new Access(scanKey, j));
+        }
+      }
+      if (i % LIVE_WINDOW_ADVANCE_INTERVAL == 0) {
+        liveWindowStart++;
+      }
+      float category = random.nextFloat();
+      if (category < 0.2f) {
+        trace.add(new Access("init" + random.nextInt(INIT_KEY_COUNT), 0));
+      } else if (category < 0.6f) {
+        trace.add(new Access("live", liveWindowStart + random.nextInt(LIVE_WINDOW_SPAN_COUNT)));
+      } else {
+        // Skew towards the most popular content.
+        float popularity = random.nextFloat();
+        int vodKey = (int) (VOD_KEY_COUNT * popularity * popularity * popularity);
+        trace.add(new Access("vod" + vodKey, random.nextInt(VOD_SPANS_PER_KEY)));
+      }
+    }
+    return trace;
+  }
+
+  private static Result replay(ArrayList<Access> trace, CacheEvictor evictor) {
+    FakeCache cache = new FakeCache(evictor);
+    int hits = 0;
+    for (int i = 0; i < trace.size(); i++) {
+      Access access = trace.get(i);
+      if (cache.read(access.key, access.position, SPAN_LENGTH)) {
+        hits++;
+      }
+    }
+    return new Result(hits, trace.size(), cache.getEvictorTimeNs());
+  }
+
+  private interface EvictorFactory {
+
+    CacheEvictor createEvictor();
+
+  }
+
+  private static final class Access {
+
+    public final String key;
+    public final long position;
+
+    public Access(String key, int spanIndex) {
+      this.key = key;
+      this.position = (long) spanIndex * SPAN_LENGTH;
+    }
+
+  }
+
+  private static final class Result {
+
+    public final int hits;
+    public final int accesses;
+    public final long evictorTimeNs;
+
+    public Result(int hits, int accesses, long evictorTimeNs) {
+      this.hits = hits;
+      this.accesses = accesses;
+      this.evictorTimeNs = evictorTimeNs;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(Locale.US, "hit ratio %.3f, %d ns per access in evictor",
+          (float) hits / accesses, evictorTimeNs / accesses);
+    }
+
+  }
+
+}
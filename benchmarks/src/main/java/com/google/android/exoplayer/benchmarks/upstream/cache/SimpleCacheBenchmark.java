@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks.upstream.cache;
+
+import com.google.android.exoplayer.benchmarks.testutil.BenchmarkTestCase;
+import com.google.android.exoplayer.upstream.cache.Cache;
+import com.google.android.exoplayer.upstream.cache.CacheSpan;
+import com.google.android.exoplayer.upstream.cache.NoOpCacheEvictor;
+import com.google.android.exoplayer.upstream.cache.SimpleCache;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Benchmarks {@link SimpleCache} when it's used by several threads at once.
+ * <p>
+ * Reader threads query and read spans of a populated cache, and writer threads add a span and then
+ * remove it. Each operation runs a fixed number of reads or writes on each thread. The same
+ * operations are also measured with every call serialized on a single global lock, which is how
+ * {@link SimpleCache} used to be synchronized.
+ */
+public final class SimpleCacheBenchmark extends BenchmarkTestCase {
+
+  private static final int CACHED_KEY_COUNT = 64;
+  private static final int SPAN_LENGTH = 1024;
+  private static final int READER_THREAD_COUNT = 6;
+  private static final int WRITER_THREAD_COUNT = 2;
+  private static final int READS_PER_THREAD = 1000;
+  private static final int WRITES_PER_THREAD = 10;
+
+  private File cacheDir;
+  private SimpleCache simpleCache;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    cacheDir = File.createTempFile("ExoPlayerBenchmark", null);
+    assertTrue(cacheDir.delete());
+    assertTrue(cacheDir.mkdir());
+    simpleCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    for (int i = 0; i < CACHED_KEY_COUNT; i++) {
+      String key = "cached" + i;
+      CacheSpan holeSpan = simpleCache.startReadWrite(key, 0);
+      writeSpan(simpleCache, key);
+      simpleCache.releaseHoleSpan(holeSpan);
+    }
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    recursiveDelete(cacheDir);
+    super.tearDown();
+  }
+
+  public void testReads() throws Exception {
+    measureThreads("simpleCacheReads", simpleCache, 0);
+    measureThreads("globalLockReads", new GloballyLockedCache(simpleCache), 0);
+  }
+
+  public void testMixedReadsAndWrites() throws Exception {
+    measureThreads("simpleCacheMixed", simpleCache, WRITER_THREAD_COUNT);
+    measureThreads("globalLockMixed", new GloballyLockedCache(simpleCache), WRITER_THREAD_COUNT);
+  }
+
+  private void measureThreads(String name, final Cache cache, final int writerThreadCount)
+      throws Exception {
+    measure(name, 0, new Operation() {
+      @Override
+      public void run() throws Exception {
+        runThreads(cache, writerThreadCount);
+      }
+    });
+  }
+
+  private static void runThreads(final Cache cache, int writerThreadCount) throws Exception {
+    final Throwable[] error = new Throwable[1];
+    Thread[] threads = new Thread[READER_THREAD_COUNT + writerThreadCount];
+    for (int i = 0; i < READER_THREAD_COUNT; i++) {
+      final Random random = new Random(i);
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int j = 0; j < READS_PER_THREAD; j++) {
+              String key = "cached" + random.nextInt(CACHED_KEY_COUNT);
+              cache.isCached(key, 0, SPAN_LENGTH);
+              NavigableSet<CacheSpan> spans = cache.getCachedSpans(key);
+              CacheSpan span = cache.startReadWrite(key, spans.first().position);
+              assertTrue(span.isCached);
+            }
+          } catch (Throwable e) {
+            error[0] = e;
+          }
+        }
+      };
+    }
+    for (int i = 0; i < writerThreadCount; i++) {
+      final String key = "written" + i;
+      threads[READER_THREAD_COUNT + i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int j = 0; j < WRITES_PER_THREAD; j++) {
+              CacheSpan holeSpan = cache.startReadWrite(key, 0);
+              writeSpan(cache, key);
+              cache.releaseHoleSpan(holeSpan);
+              cache.removeSpan(cache.getCachedSpans(key).first());
+            }
+          } catch (Throwable e) {
+            error[0] = e;
+          }
+        }
+      };
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertNull(error[0]);
+  }
+
+  private static void writeSpan(Cache cache, String key) throws IOException {
+    File file = cache.startFile(key, 0, SPAN_LENGTH);
+    FileOutputStream fos = new FileOutputStream(file);
+    try {
+      fos.write(new byte[SPAN_LENGTH]);
+    } finally {
+      fos.close();
+    }
+    cache.commitFile(file);
+  }
+
+  private static void recursiveDelete(File fileOrDirectory) {
+    if (fileOrDirectory.isDirectory()) {
+      for (File child : fileOrDirectory.listFiles()) {
+        recursiveDelete(child);
+      }
+    }
+    fileOrDirectory.delete();
+  }
+
+  /**
+   * Serializes all operations of a wrapped {@link Cache} on a single lock.
+   */
+  private static final class GloballyLockedCache implements Cache {
+
+    private final Cache cache;
+
+    public GloballyLockedCache(Cache cache) {
+      this.cache = cache;
+    }
+
+    @Override
+    public synchronized NavigableSet<CacheSpan> addListener(String key, Listener listener) {
+      return cache.addListener(key, listener);
+    }
+
+    @Override
+    public synchronized void removeListener(String key, Listener listener) {
+      cache.removeListener(key, listener);
+    }
+
+    @Override
+    public synchronized NavigableSet<CacheSpan> getCachedSpans(String key) {
+      return cache.getCachedSpans(key);
+    }
+
+    @Override
+    public synchronized Set<String> getKeys() {
+      return cache.getKeys();
+    }
+
+    @Override
+    public synchronized long getCacheSpace() {
+      return cache.getCacheSpace();
+    }
+
+    @Override
+    public synchronized CacheSpan startReadWrite(String key, long position)
+        throws InterruptedException, CacheException {
+      while (true) {
+        CacheSpan span = cache.startReadWriteNonBlocking(key, position);
+        if (span != null) {
+          return span;
+        }
+        wait();
+      }
+    }
+
+    @Override
+    public synchronized CacheSpan startReadWriteNonBlocking(String key, long position)
+        throws CacheException {
+      return cache.startReadWriteNonBlocking(key, position);
+    }
+
+    @Override
+    public synchronized File startFile(String key, long position, long length)
+        throws CacheException {
+      return cache.startFile(key, position, length);
+    }
+
+    @Override
+    public synchronized void commitFile(File file) throws CacheException {
+      cache.commitFile(file);
+      notifyAll();
+    }
+
+    @Override
+    public synchronized void releaseHoleSpan(CacheSpan holeSpan) {
+      cache.releaseHoleSpan(holeSpan);
+      notifyAll();
+    }
+
+    @Override
+    public synchronized void removeSpan(CacheSpan span) throws CacheException {
+      cache.removeSpan(span);
+    }
+
+    @Override
+    public synchronized boolean isCached(String key, long position, long length) {
+      return cache.isCached(key, position, length);
+    }
+
+  }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks.util;
+
+import com.google.android.exoplayer.benchmarks.testutil.BenchmarkTestCase;
+import com.google.android.exoplayer.util.NalUnitUtil;
+import java.util.Random;
+
+/**
+ * Benchmarks {@link NalUnitUtil#findNalUnit(byte[], int, int, boolean[])}.
+ * <p>
+ * The data follows the pattern of H.264 video at 20 Mbit/s and 30 fps, with each frame split into
+ * slices of around 8K. Slice data is random, with emulation prevention applied so that it doesn't
+ * contain start code prefixes. The data is searched in 184 byte chunks, as for the payload of
+ * transport stream packets, and in 64K chunks, as for data read by an extractor directly from its
+ * input. Each search is measured both for the current implementation and for the byte by byte
+ * implementation it replaced.
+ */
+public final class NalUnitUtilBenchmark extends BenchmarkTestCase {
+
+  private static final int BITRATE = 20000000;
+  private static final int FRAME_RATE = 30;
+  private static final int SLICE_SIZE = 8 * 1024;
+  private static final int TS_PAYLOAD_SIZE = 184;
+  private static final int LARGE_CHUNK_SIZE = 64 * 1024;
+
+  private byte[] data;
+  private int expectedNalUnitCount;
+  private boolean[] prefixFlags;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    // One second of video.
+    Random random = new Random(0);
+    data = new byte[BITRATE / 8];
+    int nalUnitCount = 0;
+    int position = 0;
+    while (position < data.length - 4) {
+      // Start code prefix followed by a NAL unit header.
+      data[position++] = 0;
+      data[position++] = 0;
+      data[position++] = 1;
+      data[position++] = 0x41;
+      nalUnitCount++;
+      int sliceEnd = Math.min(data.length, position + SLICE_SIZE);
+      while (position < sliceEnd) {
+        byte value = (byte) random.nextInt();
+        // Escape sequences of two zero bytes, as emulation prevention does.
+        if (position >= 2 && data[position - 2] == 0 && data[position - 1] == 0 && value <= 3
+            && value >= 0) {
+          value = 3;
+        }
+        data[position++] = value;
+      }
+    }
+    expectedNalUnitCount = nalUnitCount;
+    prefixFlags = new boolean[3];
+  }
+
+  public void testFindNalUnitTsPayload() throws Exception {
+    measureFindNalUnit("findNalUnitTsPayload", TS_PAYLOAD_SIZE, true);
+  }
+
+  public void testFindNalUnitLargeChunk() throws Exception {
+    measureFindNalUnit("findNalUnitLargeChunk", LARGE_CHUNK_SIZE, true);
+  }
+
+  public void testByteByByteTsPayload() throws Exception {
+    measureFindNalUnit("byteByByteTsPayload", TS_PAYLOAD_SIZE, false);
+  }
+
+  public void testByteByByteLargeChunk() throws Exception {
+    measureFindNalUnit("byteByByteLargeChunk", LARGE_CHUNK_SIZE, false);
+  }
+
+  private void measureFindNalUnit(String name, final int chunkSize, final boolean useNalUnitUtil)
+      throws Exception {
+    measure(name, data.length, new Operation() {
+      @Override
+      public void run() {
+        assertEquals(expectedNalUnitCount, countNalUnits(chunkSize, useNalUnitUtil));
+      }
+    });
+  }
+
+  private int countNalUnits(int chunkSize, boolean useNalUnitUtil) {
+    NalUnitUtil.clearPrefixFlags(prefixFlags);
+    int nalUnitCount = 0;
+    for (int chunkStart = 0; chunkStart < data.length; chunkStart += chunkSize) {
+      int chunkEnd = Math.min(data.length, chunkStart + chunkSize);
+      int offset = chunkStart;
+      while (true) {
+        int result = useNalUnitUtil ? NalUnitUtil.findNalUnit(data, offset, chunkEnd, prefixFlags)
+            : findNalUnitByteByByte(data, offset, chunkEnd, prefixFlags);
+        if (result == chunkEnd) {
+          break;
+        }
+        nalUnitCount++;
+        offset = Math.max(offset, result + 3);
+      }
+    }
+    return nalUnitCount;
+  }
+
+  /**
+   * The implementation of {@link NalUnitUtil#findNalUnit(byte[], int, int, boolean[])} prior to
+   * the introduction of word at a time searching.
+   */
+  private static int findNalUnitByteByByte(byte[] data, int startOffset, int endOffset,
+      boolean[] prefixFlags) {
+    int length = endOffset - startOffset;
+    if (length == 0) {
+      return endOffset;
+    }
+
+    if (prefixFlags[0]) {
+      NalUnitUtil.clearPrefixFlags(prefixFlags);
+      return startOffset - 3;
+    } else if (length > 1 && prefixFlags[1] && data[startOffset] == 1) {
+      NalUnitUtil.clearPrefixFlags(prefixFlags);
+      return startOffset - 2;
+    } else if (length > 2 && prefixFlags[2] && data[startOffset] == 0
+        && data[startOffset + 1] == 1) {
+      NalUnitUtil.clearPrefixFlags(prefixFlags);
+      return startOffset - 1;
+    }
+
+    int limit = endOffset - 1;
+    for (int i = startOffset + 2; i < limit; i += 3) {
+      if ((data[i] & 0xFE) != 0) {
+        // Do nothing.
+      } else if (data[i - 2] == 0 && data[i - 1] == 0 && data[i] == 1) {
+        NalUnitUtil.clearPrefixFlags(prefixFlags);
+        return i - 2;
+      } else {
+        i -= 2;
+      }
+    }
+
+    prefixFlags[0] = length > 2
+        ? (data[endOffset - 3] == 0 && data[endOffset - 2] == 0 && data[endOffset - 1] == 1)
+        : length == 2 ? (prefixFlags[2] && data[endOffset - 2] == 0 && data[endOffset - 1] == 1)
+        : (prefixFlags[1] && data[endOffset - 1] == 1);
+    prefixFlags[1] = length > 1 ? data[endOffset - 2] == 0 && data[endOffset - 1] == 0
+        : prefixFlags[2] && data[endOffset - 1] == 0;
+    prefixFlags[2] = data[endOffset - 1] == 0;
+    return endOffset;
+  }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks.util;
+
+import com.google.android.exoplayer.benchmarks.testutil.BenchmarkTestCase;
+import com.google.android.exoplayer.benchmarks.testutil.SyntheticMedia;
+import com.google.android.exoplayer.util.ParsableBitArray;
+import java.util.Random;
+
+/**
+ * Benchmarks {@link ParsableBitArray} reading fields of the widths found in codec headers, and
+ * reading Exp-Golomb codes as found in H.264 parameter sets and slice headers.
+ */
+public final class ParsableBitArrayBenchmark extends BenchmarkTestCase {
+
+  private static final int DATA_LENGTH = 64 * 1024;
+  private static final int[] FIELD_WIDTHS = new int[] {1, 3, 5, 8, 12, 16, 24, 32, 2, 7};
+  private static final int EXP_GOLOMB_CODE_COUNT = 32 * 1024;
+
+  private ParsableBitArray bitArray;
+  private int checksum;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    bitArray = new ParsableBitArray();
+  }
+
+  public void testReadBits() throws Exception {
+    final byte[] data = SyntheticMedia.createRandomData(new Random(0), DATA_LENGTH);
+    measure("readBits", DATA_LENGTH, new Operation() {
+      @Override
+      public void run() {
+        bitArray.reset(data);
+        int checksum = 0;
+        int fieldIndex = 0;
+        while (bitArray.bitsLeft() >= 32) {
+          checksum ^= bitArray.readBits(FIELD_WIDTHS[fieldIndex]);
+          fieldIndex = fieldIndex == FIELD_WIDTHS.length - 1 ? 0 : fieldIndex + 1;
+        }
+        ParsableBitArrayBenchmark.this.checksum = checksum;
+      }
+    });
+  }
+
+  public void testReadBit() throws Exception {
+    final byte[] data = SyntheticMedia.createRandomData(new Random(0), DATA_LENGTH);
+    measure("readBit", DATA_LENGTH, new Operation() {
+      @Override
+      public void run() {
+        bitArray.reset(data);
+        int setBitCount = 0;
+        for (int i = 0; i < DATA_LENGTH * 8; i++) {
+          if (bitArray.readBit()) {
+            setBitCount++;
+          }
+        }
+        checksum = setBitCount;
+      }
+    });
+    assertTrue(checksum > 0);
+  }
+
+  public void testReadExpGolombCodes() throws Exception {
+    Random random = new Random(0);
+    int[] values = new int[EXP_GOLOMB_CODE_COUNT];
+    int expectedChecksum = 0;
+    for (int i = 0; i < EXP_GOLOMB_CODE_COUNT; i++) {
+      // Small values are the most common in practice.
+      values[i] = random.nextInt(1 << random.nextInt(12));
+      expectedChecksum += values[i];
+    }
+    final byte[] data = encodeExpGolombCodes(values);
+    measure("readExpGolombCodes", data.length, new Operation() {
+      @Override
+      public void run() {
+        bitArray.reset(data);
+        int checksum = 0;
+        for (int i = 0; i < EXP_GOLOMB_CODE_COUNT; i++) {
+          checksum += bitArray.readUnsignedExpGolombCodedInt();
+        }
+        ParsableBitArrayBenchmark.this.checksum = checksum;
+      }
+    });
+    assertEquals(expectedChecksum, checksum);
+  }
+
+  public void testCheckAndReadExpGolombCodes() throws Exception {
+    Random random = new Random(0);
+    int[] values = new int[EXP_GOLOMB_CODE_COUNT];
+    for (int i = 0; i < EXP_GOLOMB_CODE_COUNT; i++) {
+      values[i] = random.nextInt(1 << random.nextInt(12));
+    }
+    final byte[] data = encodeExpGolombCodes(values);
+    // H264Reader checks that each code in a slice header can be read before reading it.
+    measure("checkAndReadExpGolombCodes", data.length, new Operation() {
+      @Override
+      public void run() {
+        bitArray.reset(data);
+        int codeCount = 0;
+        while (bitArray.canReadExpGolombCodedNum()) {
+          bitArray.readUnsignedExpGolombCodedInt();
+          codeCount++;
+        }
+        checksum = codeCount;
+      }
+    });
+    // The last code may be treated as unreadable if it ends exactly at the limit.
+    assertTrue(checksum >= EXP_GOLOMB_CODE_COUNT - 1);
+  }
+
+  private static byte[] encodeExpGolombCodes(int[] values) {
+    int bitCount = 0;
+    for (int value : values) {
+      bitCount += 2 * (32 - Integer.numberOfLeadingZeros(value + 1)) - 1;
+    }
+    byte[] data = new byte[(bitCount + 7) / 8];
+    int bitPosition = 0;
+    for (int value : values) {
+      int codeNum = value + 1;
+      int length = 32 - Integer.numberOfLeadingZeros(codeNum);
+      // The leading zero bits are already zero.
+      bitPosition += length - 1;
+      for (int i = length - 1; i >= 0; i--) {
+        if ((codeNum & (1 << i)) != 0) {
+          data[bitPosition / 8] |= (byte) (0x80 >> (bitPosition % 8));
+        }
+        bitPosition++;
+      }
+    }
+    return data;
+  }
+
+}
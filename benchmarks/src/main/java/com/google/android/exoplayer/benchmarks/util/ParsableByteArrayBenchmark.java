@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks.util;
+
+import com.google.android.exoplayer.benchmarks.testutil.BenchmarkTestCase;
+import com.google.android.exoplayer.benchmarks.testutil.SyntheticMedia;
+import com.google.android.exoplayer.util.ParsableByteArray;
+import java.util.Random;
+
+/**
+ * Benchmarks {@link ParsableByteArray} reading the big-endian integers from which container
+ * headers are built, and reading lines of text as playlist and subtitle parsers do.
+ */
+public final class ParsableByteArrayBenchmark extends BenchmarkTestCase {
+
+  private static final int DATA_LENGTH = 64 * 1024;
+  private static final int LINE_COUNT = 2000;
+
+  private ParsableByteArray byteArray;
+  private long checksum;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    byteArray = new ParsableByteArray();
+  }
+
+  public void testReadIntegers() throws Exception {
+    final byte[] data = SyntheticMedia.createRandomData(new Random(0), DATA_LENGTH);
+    measure("readIntegers", DATA_LENGTH, new Operation() {
+      @Override
+      public void run() {
+        byteArray.reset(data, data.length);
+        long checksum = 0;
+        // Each iteration reads 16 bytes.
+        while (byteArray.bytesLeft() >= 16) {
+          checksum ^= byteArray.readUnsignedByte();
+          checksum ^= byteArray.readUnsignedShort();
+          checksum ^= byteArray.readUnsignedInt24();
+          checksum ^= byteArray.readInt();
+          checksum ^= byteArray.readUnsignedInt();
+          checksum ^= byteArray.readUnsignedShort();
+        }
+        ParsableByteArrayBenchmark.this.checksum = checksum;
+      }
+    });
+  }
+
+  public void testReadLongs() throws Exception {
+    final byte[] data = SyntheticMedia.createRandomData(new Random(0), DATA_LENGTH);
+    measure("readLongs", DATA_LENGTH, new Operation() {
+      @Override
+      public void run() {
+        byteArray.reset(data, data.length);
+        long checksum = 0;
+        while (byteArray.bytesLeft() >= 8) {
+          checksum ^= byteArray.readLong();
+        }
+        ParsableByteArrayBenchmark.this.checksum = checksum;
+      }
+    });
+  }
+
+  public void testReadLine() throws Exception {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < LINE_COUNT; i++) {
+      text.append("#EXTINF:5.967,\n")
+          .append("https://example.com/segment").append(i).append(".ts\r\n");
+    }
+    final byte[] data = text.toString().getBytes("UTF-8");
+    measure("readLine", data.length, new Operation() {
+      @Override
+      public void run() {
+        byteArray.reset(data, data.length);
+        int lineCount = 0;
+        while (byteArray.readLine() != null) {
+          lineCount++;
+        }
+        checksum = lineCount;
+      }
+    });
+    assertEquals(2 * LINE_COUNT, checksum);
+  }
+
+}
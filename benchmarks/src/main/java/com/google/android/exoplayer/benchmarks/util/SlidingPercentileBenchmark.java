@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmarks.util;
+
+import com.google.android.exoplayer.benchmarks.testutil.BenchmarkTestCase;
+import com.google.android.exoplayer.util.SlidingPercentile;
+import java.util.Random;
+
+/**
+ * Benchmarks {@link SlidingPercentile} used as {@link
+ * com.google.android.exoplayer.upstream.DefaultBandwidthMeter} uses it: a sample is added at the
+ * end of each transfer, and the median is queried straight afterwards.
+ */
+public final class SlidingPercentileBenchmark extends BenchmarkTestCase {
+
+  private static final int MAX_WEIGHT = 2000;
+  private static final int SAMPLE_COUNT = 1000;
+
+  private int[] weights;
+  private float[] values;
+  private float median;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    Random random = new Random(0);
+    weights = new int[SAMPLE_COUNT];
+    values = new float[SAMPLE_COUNT];
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      // The bandwidth meter weights samples by the square root of the number of bytes transferred.
+      weights[i] = 100 + random.nextInt(900);
+      values[i] = 1000000 + random.nextFloat() * 9000000;
+    }
+  }
+
+  public void testAddSampleAndGetMedian() throws Exception {
+    measure("addSampleAndGetMedian", 0, new Operation() {
+      @Override
+      public void run() {
+        SlidingPercentile slidingPercentile = new SlidingPercentile(MAX_WEIGHT);
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+          slidingPercentile.addSample(weights[i], values[i]);
+          median = slidingPercentile.getPercentile(0.5f);
+        }
+      }
+    });
+    assertTrue(median > 0);
+  }
+
+  public void testAddSampleAndGetMedianLargeWindow() throws Exception {
+    measure("addSampleAndGetMedianLargeWindow", 0, new Operation() {
+      @Override
+      public void run() {
+        // The window holds every sample, as when many small transfers are made.
+        SlidingPercentile slidingPercentile = new SlidingPercentile(MAX_WEIGHT * SAMPLE_COUNT);
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+          slidingPercentile.addSample(weights[i], values[i]);
+          median = slidingPercentile.getPercentile(0.5f);
+        }
+      }
+    });
+    assertTrue(median > 0);
+  }
+
+}
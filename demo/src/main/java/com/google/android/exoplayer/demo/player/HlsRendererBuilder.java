@@ -140,7 +140,8 @@ public class HlsRendererBuilder implements RendererBuilder {
       }
 
       // Build the video/id3 renderers.
-      DataSource dataSource = new DefaultUriDataSource(context, bandwidthMeter, userAgent);
+      DataSource dataSource = new DefaultUriDataSource(context,
+          bandwidthMeter.createTransferListener(), userAgent);
       HlsChunkSource chunkSource = new HlsChunkSource(true /* isMaster */, dataSource, manifest,
           DefaultHlsTrackSelector.newDefaultInstance(context), bandwidthMeter,
           timestampAdjusterProvider);
@@ -155,7 +156,8 @@ public class HlsRendererBuilder implements RendererBuilder {
       // Build the audio renderer.
       MediaCodecAudioTrackRenderer audioRenderer;
       if (haveAudios) {
-        DataSource audioDataSource = new DefaultUriDataSource(context, bandwidthMeter, userAgent);
+        DataSource audioDataSource = new DefaultUriDataSource(context,
+            bandwidthMeter.createTransferListener(), userAgent);
         HlsChunkSource audioChunkSource = new HlsChunkSource(false /* isMaster */, audioDataSource,
             manifest, DefaultHlsTrackSelector.newAudioInstance(), bandwidthMeter,
             timestampAdjusterProvider);
@@ -175,7 +177,8 @@ public class HlsRendererBuilder implements RendererBuilder {
       // Build the text renderer.
       TrackRenderer textRenderer;
       if (haveSubtitles) {
-        DataSource textDataSource = new DefaultUriDataSource(context, bandwidthMeter, userAgent);
+        DataSource textDataSource = new DefaultUriDataSource(context,
+            bandwidthMeter.createTransferListener(), userAgent);
         HlsChunkSource textChunkSource = new HlsChunkSource(false /* isMaster */, textDataSource,
             manifest, DefaultHlsTrackSelector.newSubtitleInstance(), bandwidthMeter,
             timestampAdjusterProvider);
@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.chunk;
+
+import android.net.Uri;
+import android.os.ConditionVariable;
+import android.os.Handler;
+import android.os.HandlerThread;
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.DefaultLoadControl;
+import com.google.android.exoplayer.MediaFormat;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.DefaultAllocator;
+import com.google.android.exoplayer.upstream.PrefetchingDataSource;
+import com.google.android.exoplayer.util.MimeTypes;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ * Tests the prefetching of {@link ChunkSampleSource}, with a fake {@link PrefetchingChunkSource}.
+ */
+public final class ChunkSampleSourceTest extends TestCase {
+
+  private static final int CHUNK_COUNT = 5;
+  private static final int FORMAT_SWITCH_CHUNK_INDEX = 3;
+  private static final long CHUNK_DURATION_US = 1000000;
+  private static final int BUFFER_SEGMENT_SIZE = 64 * 1024;
+  private static final int TIMEOUT_MS = 10000;
+
+  private static final Format FORMAT_A = new Format("a", MimeTypes.TEXT_VTT, -1, -1, -1, -1, -1,
+      1000);
+  private static final Format FORMAT_B = new Format("b", MimeTypes.TEXT_VTT, -1, -1, -1, -1, -1,
+      2000);
+  private static final MediaFormat MEDIA_FORMAT = MediaFormat.createTextFormat("0",
+      MimeTypes.TEXT_VTT, MediaFormat.NO_VALUE, C.UNKNOWN_TIME_US, null);
+
+  private HandlerThread playbackThread;
+  private Handler playbackHandler;
+  private FakeDataSource dataSource;
+  private FakeChunkSource chunkSource;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    playbackThread = new HandlerThread("ChunkSampleSourceTest");
+    playbackThread.start();
+    playbackHandler = new Handler(playbackThread.getLooper());
+    dataSource = new FakeDataSource();
+    chunkSource = new FakeChunkSource(dataSource);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    playbackThread.quit();
+    super.tearDown();
+  }
+
+  public void testPrefetchCounters() {
+    final ChunkSampleSource sampleSource = loadAllChunks(true);
+
+    // Each chunk but the last is predicted when the chunk before it starts loading. The prediction
+    // for the chunk at which the format switches is canceled, and the others are hits.
+    assertEquals(CHUNK_COUNT - 1, sampleSource.getPrefetchCount());
+    assertEquals(CHUNK_COUNT - 2, sampleSource.getPrefetchHitCount());
+    assertEquals(1, sampleSource.getPrefetchCancelCount());
+    List<DataSpec> nextDataSpecs = dataSource.getNextDataSpecs();
+    assertEquals(CHUNK_COUNT - 1, nextDataSpecs.size());
+    for (int i = 0; i < CHUNK_COUNT - 1; i++) {
+      // The predictions assume the format of the previous chunk.
+      Format predictedFormat = i + 1 <= FORMAT_SWITCH_CHUNK_INDEX ? FORMAT_A : FORMAT_B;
+      assertEquals(getUri(predictedFormat, i + 1), nextDataSpecs.get(i).uri);
+    }
+    // The next chunk operation is only requested once the queued chunks have loaded.
+    assertEquals(0, chunkSource.getEarlyChunkOperationCount());
+  }
+
+  public void testPrefetchDisabled() {
+    ChunkSampleSource sampleSource = loadAllChunks(false);
+
+    assertEquals(0, sampleSource.getPrefetchCount());
+    assertEquals(0, sampleSource.getPrefetchHitCount());
+    assertEquals(0, sampleSource.getPrefetchCancelCount());
+    assertEquals(0, dataSource.getNextDataSpecs().size());
+  }
+
+  private ChunkSampleSource loadAllChunks(boolean prefetchEnabled) {
+    DefaultLoadControl loadControl =
+        new DefaultLoadControl(new DefaultAllocator(BUFFER_SEGMENT_SIZE));
+    final ChunkSampleSource sampleSource = new ChunkSampleSource(chunkSource, loadControl,
+        BUFFER_SEGMENT_SIZE * 16, null, null, 0, ChunkSampleSource.DEFAULT_MIN_LOADABLE_RETRY_COUNT,
+        prefetchEnabled);
+    playbackHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        sampleSource.register();
+        sampleSource.prepare(0);
+        sampleSource.enable(0, 0);
+      }
+    });
+    assertTrue(chunkSource.blockUntilAllChunksLoaded(TIMEOUT_MS));
+    final ConditionVariable released = new ConditionVariable();
+    playbackHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        sampleSource.disable(0);
+        sampleSource.release();
+        released.open();
+      }
+    });
+    assertTrue(released.block(TIMEOUT_MS));
+    return sampleSource;
+  }
+
+  private static Uri getUri(Format format, int chunkIndex) {
+    return Uri.parse("fake://" + format.id + "/" + chunkIndex);
+  }
+
+  /**
+   * A {@link PrefetchingChunkSource} that provides {@link #CHUNK_COUNT} chunks, switching from
+   * {@link #FORMAT_A} to {@link #FORMAT_B} at {@link #FORMAT_SWITCH_CHUNK_INDEX}.
+   */
+  private static final class FakeChunkSource implements PrefetchingChunkSource {
+
+    private final FakeDataSource dataSource;
+    private final ConditionVariable allChunksLoaded;
+
+    private volatile int earlyChunkOperationCount;
+    private int loadedChunkCount;
+
+    public FakeChunkSource(FakeDataSource dataSource) {
+      this.dataSource = dataSource;
+      allChunksLoaded = new ConditionVariable();
+    }
+
+    /**
+     * Returns the number of chunk operations that were requested before the last chunk in the queue
+     * had loaded, as a speculative request for the chunk that follows it would be.
+     */
+    public int getEarlyChunkOperationCount() {
+      return earlyChunkOperationCount;
+    }
+
+    public boolean blockUntilAllChunksLoaded(long timeoutMs) {
+      return allChunksLoaded.block(timeoutMs);
+    }
+
+    @Override
+    public void maybeThrowError() {
+      // Do nothing.
+    }
+
+    @Override
+    public boolean prepare() {
+      return true;
+    }
+
+    @Override
+    public int getTrackCount() {
+      return 1;
+    }
+
+    @Override
+    public MediaFormat getFormat(int track) {
+      return MEDIA_FORMAT;
+    }
+
+    @Override
+    public void enable(int track) {
+      // Do nothing.
+    }
+
+    @Override
+    public void continueBuffering(long playbackPositionUs) {
+      // Do nothing.
+    }
+
+    @Override
+    public void getChunkOperation(List<? extends MediaChunk> queue, long playbackPositionUs,
+        ChunkOperationHolder out) {
+      if (queue.size() > loadedChunkCount) {
+        earlyChunkOperationCount++;
+      }
+      int chunkIndex = queue.isEmpty() ? 0 : queue.get(queue.size() - 1).chunkIndex + 1;
+      if (chunkIndex == CHUNK_COUNT) {
+        out.chunk = null;
+        out.endOfStream = true;
+        return;
+      }
+      Format format = chunkIndex < FORMAT_SWITCH_CHUNK_INDEX ? FORMAT_A : FORMAT_B;
+      if (out.chunk == null || !out.chunk.format.equals(format)) {
+        out.chunk = newMediaChunk(format, chunkIndex);
+      }
+    }
+
+    @Override
+    public DataSpec getNextChunkDataSpec(List<? extends MediaChunk> queue) {
+      MediaChunk previous = queue.get(queue.size() - 1);
+      int chunkIndex = previous.chunkIndex + 1;
+      return chunkIndex == CHUNK_COUNT ? null : getDataSpec(previous.format, chunkIndex);
+    }
+
+    @Override
+    public void onChunkLoadCompleted(Chunk chunk) {
+      if (++loadedChunkCount == CHUNK_COUNT) {
+        allChunksLoaded.open();
+      }
+    }
+
+    @Override
+    public void onChunkLoadError(Chunk chunk, Exception e) {
+      // Do nothing.
+    }
+
+    @Override
+    public void disable(List<? extends MediaChunk> queue) {
+      // Do nothing.
+    }
+
+    private Chunk newMediaChunk(Format format, int chunkIndex) {
+      return new SingleSampleMediaChunk(dataSource, getDataSpec(format, chunkIndex),
+          Chunk.TRIGGER_UNSPECIFIED, format, chunkIndex * CHUNK_DURATION_US,
+          (chunkIndex + 1) * CHUNK_DURATION_US, chunkIndex, MEDIA_FORMAT, null,
+          Chunk.NO_PARENT_ID);
+    }
+
+    private static DataSpec getDataSpec(Format format, int chunkIndex) {
+      return new DataSpec(getUri(format, chunkIndex), 0, C.LENGTH_UNBOUNDED, null);
+    }
+
+  }
+
+  /**
+   * A {@link PrefetchingDataSource} that serves a few bytes for any {@link DataSpec}, and records
+   * the {@link DataSpec}s passed to {@link #setNextDataSpec(DataSpec)}.
+   */
+  private static final class FakeDataSource implements PrefetchingDataSource {
+
+    private static final int DATA_LENGTH = 10;
+
+    private final List<DataSpec> nextDataSpecs;
+
+    private int bytesRemaining;
+
+    public FakeDataSource() {
+      nextDataSpecs = new ArrayList<>();
+    }
+
+    public synchronized List<DataSpec> getNextDataSpecs() {
+      return new ArrayList<>(nextDataSpecs);
+    }
+
+    @Override
+    public synchronized void setNextDataSpec(DataSpec nextDataSpec) {
+      nextDataSpecs.add(nextDataSpec);
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) {
+      bytesRemaining = DATA_LENGTH;
+      return DATA_LENGTH;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) {
+      if (bytesRemaining == 0) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      int bytesRead = Math.min(readLength, bytesRemaining);
+      bytesRemaining -= bytesRead;
+      return bytesRead;
+    }
+
+    @Override
+    public void close() {
+      // Do nothing.
+    }
+
+  }
+
+}
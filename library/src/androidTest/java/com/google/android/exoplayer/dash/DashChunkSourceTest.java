@@ -37,6 +37,7 @@ import com.google.android.exoplayer.dash.mpd.SegmentBase.SingleSegmentBase;
 import com.google.android.exoplayer.dash.mpd.UrlTemplate;
 import com.google.android.exoplayer.testutil.TestUtil;
 import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
 import com.google.android.exoplayer.util.FakeClock;
 import com.google.android.exoplayer.util.ManifestFetcher;
 import com.google.android.exoplayer.util.Util;
@@ -132,6 +133,29 @@ public class DashChunkSourceTest extends InstrumentationTestCase {
     assertNotNull(((InitializationChunk) out.chunk).dataSpec);
   }
 
+  public void testNextChunkDataSpecMatchesNextChunk() {
+    MediaPresentationDescription mpd = buildLiveMpdWithTimeline(LIVE_DURATION_MS, 0);
+    DashChunkSource chunkSource = buildDashChunkSource(mpd);
+    List<MediaChunk> queue = new ArrayList<>();
+    ChunkOperationHolder out = new ChunkOperationHolder();
+
+    chunkSource.getChunkOperation(queue, 0, out);
+    queue.add((MediaChunk) out.chunk);
+    for (int i = 1; i < LIVE_SEGMENT_COUNT; i++) {
+      DataSpec nextDataSpec = chunkSource.getNextChunkDataSpec(queue);
+      // Predicting the next chunk doesn't change the chunk that's then selected.
+      assertEquals(nextDataSpec.uri, chunkSource.getNextChunkDataSpec(queue).uri);
+      out.chunk = null;
+      chunkSource.getChunkOperation(queue, 0, out);
+      assertEquals(nextDataSpec.uri, out.chunk.dataSpec.uri);
+      assertEquals(nextDataSpec.absoluteStreamPosition, out.chunk.dataSpec.absoluteStreamPosition);
+      assertEquals(nextDataSpec.length, out.chunk.dataSpec.length);
+      queue.add((MediaChunk) out.chunk);
+    }
+    // The last segment has been queued.
+    assertNull(chunkSource.getNextChunkDataSpec(queue));
+  }
+
   public void testSegmentRequestSequenceOnMultiPeriodLiveWithTimeline() {
     MediaPresentationDescription mpd = buildMultiPeriodLiveMpdWithTimeline();
     DashChunkSource chunkSource = buildDashChunkSource(mpd);
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.SampleHolder;
+import com.google.android.exoplayer.testutil.TestUtil;
+import com.google.android.exoplayer.upstream.DefaultAllocator;
+import com.google.android.exoplayer.util.ParsableByteArray;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link DefaultTrackOutput}.
+ */
+public class DefaultTrackOutputTest extends TestCase {
+
+  private static final int ALLOCATION_SIZE = 16;
+
+  private static final int[] SAMPLE_SIZES = {5, 40, 16, 1, 23, 0, 32};
+  private static final int[] SAMPLE_FLAGS = {C.SAMPLE_FLAG_SYNC, 0, 0, C.SAMPLE_FLAG_SYNC, 0, 0,
+      C.SAMPLE_FLAG_SYNC};
+
+  private DefaultAllocator allocator;
+  private DefaultTrackOutput trackOutput;
+  private SampleHolder holder;
+
+  @Override
+  protected void setUp() {
+    allocator = new DefaultAllocator(ALLOCATION_SIZE);
+    trackOutput = new DefaultTrackOutput(allocator);
+    holder = new SampleHolder(SampleHolder.BUFFER_REPLACEMENT_MODE_NORMAL);
+  }
+
+  public void testReadSamples() {
+    byte[][] samples = writeSamples(0);
+    for (int i = 0; i < samples.length; i++) {
+      assertReadSample(samples[i], i);
+    }
+    assertFalse(trackOutput.getSample(holder));
+    trackOutput.clear();
+    assertEquals(0, allocator.getTotalBytesAllocated());
+  }
+
+  public void testDiscardUpstreamSamples() {
+    byte[][] samples = writeSamples(0);
+    trackOutput.discardUpstreamSamples(3);
+    assertEquals(3, trackOutput.getWriteIndex());
+    // Samples written after the discard follow those that were retained.
+    trackOutput.sampleData(new ParsableByteArray(samples[6]), samples[6].length);
+    trackOutput.sampleMetadata(getTimeUs(3), SAMPLE_FLAGS[3], samples[6].length, 0, null);
+    for (int i = 0; i < 3; i++) {
+      assertReadSample(samples[i], i);
+    }
+    assertTrue(trackOutput.getSample(holder));
+    assertSampleData(samples[6]);
+    assertFalse(trackOutput.getSample(holder));
+  }
+
+  public void testSkipToKeyframeBefore() {
+    byte[][] samples = writeSamples(0);
+    assertFalse(trackOutput.skipToKeyframeBefore(getTimeUs(samples.length)));
+    assertTrue(trackOutput.skipToKeyframeBefore(getTimeUs(5)));
+    assertReadSample(samples[3], 3);
+  }
+
+  public void testSkipToKeyframeBeforeAfterReads() {
+    byte[][] samples = writeSamples(0);
+    assertReadSample(samples[0], 0);
+    assertReadSample(samples[1], 1);
+    // The keyframe before the read position can't be skipped to.
+    assertFalse(trackOutput.skipToKeyframeBefore(getTimeUs(2)));
+    assertTrue(trackOutput.skipToKeyframeBefore(getTimeUs(6)));
+    assertReadSample(samples[6], 6);
+  }
+
+  public void testSkipToKeyframeBeforeAfterDiscardUpstream() {
+    byte[][] samples = writeSamples(0);
+    trackOutput.discardUpstreamSamples(5);
+    assertTrue(trackOutput.skipToKeyframeBefore(getTimeUs(4)));
+    assertReadSample(samples[3], 3);
+    assertFalse(trackOutput.skipToKeyframeBefore(getTimeUs(6)));
+  }
+
+  public void testSkipToKeyframeBeforeWithUnorderedKeyframes() {
+    long[] timesUs = {2000, 3000, 1000, 4000};
+    int[] flags = {C.SAMPLE_FLAG_SYNC, 0, C.SAMPLE_FLAG_SYNC, 0};
+    for (int i = 0; i < timesUs.length; i++) {
+      trackOutput.sampleData(new ParsableByteArray(new byte[1]), 1);
+      trackOutput.sampleMetadata(timesUs[i], flags[i], 1, 0, null);
+    }
+    // Skipping stops at the first sample after the seek time.
+    assertTrue(trackOutput.skipToKeyframeBefore(2500));
+    assertEquals(0, trackOutput.getReadIndex());
+  }
+
+  public void testSkipToKeyframeBeforeInLargeQueue() {
+    int sampleCount = 10000;
+    for (int i = 0; i < sampleCount; i++) {
+      trackOutput.sampleData(new ParsableByteArray(new byte[1]), 1);
+      trackOutput.sampleMetadata(getTimeUs(i), i % 30 == 0 ? C.SAMPLE_FLAG_SYNC : 0, 1, 0, null);
+      if (i % 7 == 0) {
+        assertTrue(trackOutput.getSample(holder));
+        holder.clearData();
+      }
+    }
+    for (int seekIndex = trackOutput.getReadIndex() + 100; seekIndex < sampleCount;
+        seekIndex += 997) {
+      int keyframeIndex = seekIndex - seekIndex % 30;
+      if (keyframeIndex < trackOutput.getReadIndex()) {
+        assertFalse(trackOutput.skipToKeyframeBefore(getTimeUs(seekIndex)));
+        continue;
+      }
+      assertTrue(trackOutput.skipToKeyframeBefore(getTimeUs(seekIndex)));
+      assertEquals(keyframeIndex, trackOutput.getReadIndex());
+      assertTrue(trackOutput.getSample(holder));
+      assertEquals(getTimeUs(keyframeIndex), holder.timeUs);
+      holder.clearData();
+    }
+  }
+
+  public void testQueueGrowsBeyondInitialCapacity() {
+    int sampleCount = 5000;
+    for (int i = 0; i < sampleCount; i++) {
+      byte[] sample = TestUtil.buildTestData(1 + i % 20, i);
+      trackOutput.sampleData(new ParsableByteArray(sample), sample.length);
+      trackOutput.sampleMetadata(i, C.SAMPLE_FLAG_SYNC, sample.length, 0, null);
+      if (i % 3 == 0) {
+        // Read some samples, so that the queue wraps around.
+        assertTrue(trackOutput.getSample(holder));
+        holder.clearData();
+      }
+    }
+    int readCount = trackOutput.getReadIndex();
+    while (trackOutput.getSample(holder)) {
+      assertEquals(readCount, holder.timeUs);
+      assertSampleData(TestUtil.buildTestData(1 + readCount % 20, readCount));
+      readCount++;
+    }
+    assertEquals(sampleCount, readCount);
+  }
+
+  public void testConcurrentWriteAndRead() throws Exception {
+    final int sampleCount = 20000;
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    Thread loadingThread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          for (int i = 0; i < sampleCount; i++) {
+            byte[] sample = TestUtil.buildTestData(i % 50, i);
+            trackOutput.sampleData(new ParsableByteArray(sample), sample.length);
+            trackOutput.sampleMetadata(i, C.SAMPLE_FLAG_SYNC, sample.length, 0, null);
+          }
+        } catch (Throwable e) {
+          failure.set(e);
+        }
+      }
+    };
+    loadingThread.start();
+    int readCount = 0;
+    while (readCount < sampleCount && failure.get() == null) {
+      if (!trackOutput.getSample(holder)) {
+        Thread.yield();
+        continue;
+      }
+      assertEquals(readCount, holder.timeUs);
+      assertSampleData(TestUtil.buildTestData(readCount % 50, readCount));
+      readCount++;
+    }
+    loadingThread.join();
+    assertNull(failure.get());
+    assertEquals(sampleCount, readCount);
+  }
+
+  private byte[][] writeSamples(int seed) {
+    byte[][] samples = new byte[SAMPLE_SIZES.length][];
+    for (int i = 0; i < samples.length; i++) {
+      samples[i] = TestUtil.buildTestData(SAMPLE_SIZES[i], seed + i);
+      trackOutput.sampleData(new ParsableByteArray(samples[i]), samples[i].length);
+      trackOutput.sampleMetadata(getTimeUs(i), SAMPLE_FLAGS[i], samples[i].length, 0, null);
+    }
+    return samples;
+  }
+
+  private void assertReadSample(byte[] expectedData, int index) {
+    assertTrue(trackOutput.getSample(holder));
+    assertEquals(getTimeUs(index), holder.timeUs);
+    assertEquals(SAMPLE_FLAGS[index], holder.flags);
+    assertSampleData(expectedData);
+  }
+
+  private void assertSampleData(byte[] expectedData) {
+    assertEquals(expectedData.length, holder.size);
+    byte[] data = new byte[holder.size];
+    holder.data.flip();
+    holder.data.get(data);
+    holder.clearData();
+    assertTrue(Arrays.equals(expectedData, data));
+  }
+
+  private static long getTimeUs(int sampleIndex) {
+    return sampleIndex * 1000L;
+  }
+
+}
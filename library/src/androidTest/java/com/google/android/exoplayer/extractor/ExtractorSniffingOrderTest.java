@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor;
+
+import android.net.Uri;
+import com.google.android.exoplayer.extractor.mp3.Mp3Extractor;
+import com.google.android.exoplayer.extractor.mp4.FragmentedMp4Extractor;
+import com.google.android.exoplayer.extractor.mp4.Mp4Extractor;
+import com.google.android.exoplayer.extractor.ts.AdtsExtractor;
+import com.google.android.exoplayer.extractor.ts.TsExtractor;
+import com.google.android.exoplayer.extractor.webm.WebmExtractor;
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link ExtractorSniffingOrder}.
+ */
+public final class ExtractorSniffingOrderTest extends TestCase {
+
+  private WebmExtractor webmExtractor;
+  private FragmentedMp4Extractor fragmentedMp4Extractor;
+  private Mp4Extractor mp4Extractor;
+  private Mp3Extractor mp3Extractor;
+  private AdtsExtractor adtsExtractor;
+  private TsExtractor tsExtractor;
+  private Extractor[] extractors;
+
+  @Override
+  public void setUp() {
+    webmExtractor = new WebmExtractor();
+    fragmentedMp4Extractor = new FragmentedMp4Extractor();
+    mp4Extractor = new Mp4Extractor();
+    mp3Extractor = new Mp3Extractor();
+    adtsExtractor = new AdtsExtractor();
+    tsExtractor = new TsExtractor();
+    extractors = new Extractor[] {webmExtractor, fragmentedMp4Extractor, mp4Extractor,
+        mp3Extractor, adtsExtractor, tsExtractor};
+  }
+
+  public void testOrderWithoutHints() {
+    Extractor[] order = ExtractorSniffingOrder.order(extractors,
+        new Uri[] {Uri.parse("file:///sdcard/media")}, null);
+    assertSame(extractors, order);
+  }
+
+  public void testOrderWithExtension() {
+    Extractor[] order = ExtractorSniffingOrder.order(extractors,
+        new Uri[] {Uri.parse("https://extension.example.com/audio/track.MP3")}, null);
+    assertOrder(order, mp3Extractor, webmExtractor, fragmentedMp4Extractor, mp4Extractor,
+        adtsExtractor, tsExtractor);
+  }
+
+  public void testOrderWithExtensionOfRedirectedUri() {
+    Extractor[] order = ExtractorSniffingOrder.order(extractors,
+        new Uri[] {Uri.parse("https://redirect.example.com/play?id=1"),
+        Uri.parse("https://cdn.example.com/media/stream.ts")}, null);
+    assertOrder(order, tsExtractor, webmExtractor, fragmentedMp4Extractor, mp4Extractor,
+        mp3Extractor, adtsExtractor);
+  }
+
+  public void testOrderWithMimeTypePrecedesExtension() {
+    Extractor[] order = ExtractorSniffingOrder.order(extractors,
+        new Uri[] {Uri.parse("https://mime.example.com/media/video.mp4")},
+        "audio/aac; charset=binary");
+    assertOrder(order, adtsExtractor, fragmentedMp4Extractor, mp4Extractor, webmExtractor,
+        mp3Extractor, tsExtractor);
+  }
+
+  public void testOrderWithExtensionMatchesSubclass() {
+    FragmentedMp4Extractor customExtractor = new FragmentedMp4Extractor() {};
+    extractors[1] = customExtractor;
+    Extractor[] order = ExtractorSniffingOrder.order(extractors,
+        new Uri[] {Uri.parse("https://subclass.example.com/video/movie.mp4")}, null);
+    assertOrder(order, customExtractor, mp4Extractor, webmExtractor, mp3Extractor, adtsExtractor,
+        tsExtractor);
+  }
+
+  public void testOrderWithSelectedExtractorForHost() {
+    Uri uri = Uri.parse("https://host.example.com/media/1");
+    ExtractorSniffingOrder.onExtractorSelected(uri, new AdtsExtractor());
+    Extractor[] order = ExtractorSniffingOrder.order(extractors,
+        new Uri[] {Uri.parse("https://host.example.com/media/2")}, null);
+    assertOrder(order, adtsExtractor, webmExtractor, fragmentedMp4Extractor, mp4Extractor,
+        mp3Extractor, tsExtractor);
+    // Hints from the stream itself take precedence.
+    order = ExtractorSniffingOrder.order(extractors,
+        new Uri[] {Uri.parse("https://host.example.com/media/3.webm")}, null);
+    assertOrder(order, webmExtractor, adtsExtractor, fragmentedMp4Extractor, mp4Extractor,
+        mp3Extractor, tsExtractor);
+    // Other hosts are unaffected.
+    order = ExtractorSniffingOrder.order(extractors,
+        new Uri[] {Uri.parse("https://other.example.com/media/2")}, null);
+    assertSame(extractors, order);
+  }
+
+  public void testOrderWithSelectedExtractorMatchesSubclass() {
+    ExtractorSniffingOrder.onExtractorSelected(Uri.parse("https://subclass-host.example.com/1"),
+        new FragmentedMp4Extractor());
+    FragmentedMp4Extractor customExtractor = new FragmentedMp4Extractor() {};
+    extractors[1] = customExtractor;
+    Extractor[] order = ExtractorSniffingOrder.order(extractors,
+        new Uri[] {Uri.parse("https://subclass-host.example.com/2")}, null);
+    assertOrder(order, customExtractor, webmExtractor, mp4Extractor, mp3Extractor, adtsExtractor,
+        tsExtractor);
+  }
+
+  private static void assertOrder(Extractor[] order, Extractor... expectedOrder) {
+    assertEquals(expectedOrder.length, order.length);
+    for (int i = 0; i < expectedOrder.length; i++) {
+      assertSame(expectedOrder[i], order[i]);
+    }
+  }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor;
+
+import android.test.InstrumentationTestCase;
+import com.google.android.exoplayer.testutil.TestUtil;
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Tests for {@link SimpleSeekIndexCache}.
+ */
+public final class SimpleSeekIndexCacheTest extends InstrumentationTestCase {
+
+  private static final String KEY = "http://example.com/media";
+  private static final long CONTENT_LENGTH = 123456;
+
+  private File cacheDir;
+
+  @Override
+  public void setUp() throws Exception {
+    cacheDir = TestUtil.createTempFolder(getInstrumentation().getContext());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    TestUtil.recursiveDelete(cacheDir);
+  }
+
+  public void testGetMissing() {
+    SimpleSeekIndexCache cache = new SimpleSeekIndexCache(4, cacheDir);
+    assertNull(cache.get(KEY, CONTENT_LENGTH));
+  }
+
+  public void testPutGet() {
+    SimpleSeekIndexCache cache = new SimpleSeekIndexCache(4);
+    ChunkIndex chunkIndex = createChunkIndex(10);
+    cache.put(KEY, CONTENT_LENGTH, chunkIndex);
+    assertSame(chunkIndex, cache.get(KEY, CONTENT_LENGTH));
+    // The index isn't used if the content length changes.
+    assertNull(cache.get(KEY, CONTENT_LENGTH + 1));
+    assertNull(cache.get(KEY + "/other", CONTENT_LENGTH));
+  }
+
+  public void testEvictsLeastRecentlyUsed() {
+    SimpleSeekIndexCache cache = new SimpleSeekIndexCache(2);
+    cache.put("a", CONTENT_LENGTH, createChunkIndex(1));
+    cache.put("b", CONTENT_LENGTH, createChunkIndex(2));
+    assertNotNull(cache.get("a", CONTENT_LENGTH));
+    cache.put("c", CONTENT_LENGTH, createChunkIndex(3));
+    assertNotNull(cache.get("a", CONTENT_LENGTH));
+    assertNull(cache.get("b", CONTENT_LENGTH));
+    assertNotNull(cache.get("c", CONTENT_LENGTH));
+  }
+
+  public void testPersistsIndices() {
+    ChunkIndex chunkIndex = createChunkIndex(10);
+    new SimpleSeekIndexCache(4, cacheDir).put(KEY, CONTENT_LENGTH, chunkIndex);
+
+    SimpleSeekIndexCache cache = new SimpleSeekIndexCache(4, cacheDir);
+    assertChunkIndexEquals(chunkIndex, cache.get(KEY, CONTENT_LENGTH));
+    assertNull(cache.get(KEY, CONTENT_LENGTH + 1));
+  }
+
+  private static ChunkIndex createChunkIndex(int length) {
+    int[] sizes = new int[length];
+    long[] offsets = new long[length];
+    long[] durationsUs = new long[length];
+    long[] timesUs = new long[length];
+    for (int i = 0; i < length; i++) {
+      sizes[i] = 1000 + i;
+      offsets[i] = i == 0 ? 100 : offsets[i - 1] + sizes[i - 1];
+      durationsUs[i] = 2000000 + i;
+      timesUs[i] = i == 0 ? 0 : timesUs[i - 1] + durationsUs[i - 1];
+    }
+    return new ChunkIndex(sizes, offsets, durationsUs, timesUs);
+  }
+
+  private static void assertChunkIndexEquals(ChunkIndex expected, ChunkIndex actual) {
+    assertEquals(expected.length, actual.length);
+    assertTrue(Arrays.equals(expected.sizes, actual.sizes));
+    assertTrue(Arrays.equals(expected.offsets, actual.offsets));
+    assertTrue(Arrays.equals(expected.durationsUs, actual.durationsUs));
+    assertTrue(Arrays.equals(expected.timesUs, actual.timesUs));
+  }
+
+}
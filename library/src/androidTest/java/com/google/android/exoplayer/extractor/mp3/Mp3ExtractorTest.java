@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor.mp3;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.extractor.ChunkIndex;
+import com.google.android.exoplayer.extractor.Extractor;
+import com.google.android.exoplayer.extractor.PositionHolder;
+import com.google.android.exoplayer.extractor.SeekIndexCache;
+import com.google.android.exoplayer.extractor.SeekMap;
+import com.google.android.exoplayer.extractor.SimpleSeekIndexCache;
+import com.google.android.exoplayer.testutil.FakeExtractorInput;
+import com.google.android.exoplayer.testutil.FakeExtractorOutput;
+import com.google.android.exoplayer.testutil.TestUtil;
+import java.io.IOException;
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link Mp3Extractor}.
+ */
+public final class Mp3ExtractorTest extends TestCase {
+
+  private static final String TEST_KEY = "http://example.com/test.mp3";
+
+  // MPEG-1 Layer III, 44.1 kHz, no padding, at 128 kbit/s and 320 kbit/s.
+  private static final int HEADER_128_KBPS = 0xFFFB9000;
+  private static final int HEADER_320_KBPS = 0xFFFBE000;
+  private static final int FRAME_SIZE_128_KBPS = 417;
+  private static final int FRAME_SIZE_320_KBPS = 1044;
+  private static final int SAMPLES_PER_FRAME = 1152;
+  private static final int SAMPLE_RATE = 44100;
+
+  private static final int[] FRAME_HEADERS = new int[] {HEADER_128_KBPS, HEADER_128_KBPS,
+      HEADER_320_KBPS, HEADER_128_KBPS, HEADER_320_KBPS, HEADER_320_KBPS, HEADER_128_KBPS,
+      HEADER_320_KBPS, HEADER_128_KBPS, HEADER_128_KBPS};
+  private static final int FRAME_COUNT = 45;
+  // The number of frames in half a second, rounded down.
+  private static final int FRAMES_PER_SEEK_INDEX_ENTRY = 19;
+
+  private byte[] data;
+  private long[] framePositions;
+
+  @Override
+  public void setUp() {
+    framePositions = new long[FRAME_COUNT];
+    int length = 0;
+    for (int i = 0; i < FRAME_COUNT; i++) {
+      framePositions[i] = length;
+      length += getFrameHeader(i) == HEADER_128_KBPS ? FRAME_SIZE_128_KBPS : FRAME_SIZE_320_KBPS;
+    }
+    data = new byte[length];
+    for (int i = 0; i < FRAME_COUNT; i++) {
+      int position = (int) framePositions[i];
+      int header = getFrameHeader(i);
+      data[position] = (byte) (header >> 24);
+      data[position + 1] = (byte) (header >> 16);
+      data[position + 2] = (byte) (header >> 8);
+      data[position + 3] = (byte) header;
+    }
+  }
+
+  public void testReadCachesSeekIndex() throws IOException, InterruptedException {
+    SeekIndexCache seekIndexCache = new SimpleSeekIndexCache(1);
+    Mp3Extractor extractor = new Mp3Extractor(-1, seekIndexCache, TEST_KEY);
+    extractor.init(new FakeExtractorOutput());
+
+    TestUtil.consumeTestData(extractor, data);
+
+    ChunkIndex index = seekIndexCache.get(TEST_KEY, data.length);
+    assertNotNull(index);
+    // There's an entry for every FRAMES_PER_SEEK_INDEX_ENTRY frames, the last of which is short.
+    assertEquals(3, index.length);
+    for (int i = 0; i < index.length; i++) {
+      int frameIndex = i * FRAMES_PER_SEEK_INDEX_ENTRY;
+      int endFrameIndex = Math.min(frameIndex + FRAMES_PER_SEEK_INDEX_ENTRY, FRAME_COUNT);
+      long endPosition = endFrameIndex < FRAME_COUNT ? framePositions[endFrameIndex] : data.length;
+      assertEquals(framePositions[frameIndex], index.offsets[i]);
+      assertEquals(endPosition - framePositions[frameIndex], index.sizes[i]);
+      assertEquals(getFrameTimeUs(frameIndex), index.timesUs[i]);
+      assertEquals(getFrameTimeUs(endFrameIndex) - getFrameTimeUs(frameIndex),
+          index.durationsUs[i]);
+    }
+  }
+
+  public void testReadUsesCachedSeekIndex() throws IOException, InterruptedException {
+    SeekIndexCache seekIndexCache = new SimpleSeekIndexCache(1);
+    Mp3Extractor extractor = new Mp3Extractor(-1, seekIndexCache, TEST_KEY);
+    extractor.init(new FakeExtractorOutput());
+    TestUtil.consumeTestData(extractor, data);
+
+    extractor = new Mp3Extractor(-1, seekIndexCache, TEST_KEY);
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    extractor.init(output);
+    TestUtil.consumeTestData(extractor, data);
+
+    SeekMap seekMap = output.seekMap;
+    assertTrue(seekMap instanceof IndexSeeker);
+    IndexSeeker seeker = (IndexSeeker) seekMap;
+    assertEquals(getFrameTimeUs(FRAME_COUNT), seeker.getDurationUs());
+    for (int i = 0; i < FRAME_COUNT; i++) {
+      // Seeking to any frame starts reading from the frame of the preceding entry.
+      int entryFrameIndex = i / FRAMES_PER_SEEK_INDEX_ENTRY * FRAMES_PER_SEEK_INDEX_ENTRY;
+      long timeUs = getFrameTimeUs(i);
+      assertEquals(framePositions[entryFrameIndex], seeker.getPosition(timeUs));
+      assertEquals(framePositions[entryFrameIndex], seeker.getPosition(timeUs + 1));
+      assertEquals(getFrameTimeUs(entryFrameIndex),
+          seeker.getTimeUs(framePositions[entryFrameIndex]));
+    }
+  }
+
+  public void testReadAfterSeekDoesNotCacheIncompleteIndex()
+      throws IOException, InterruptedException {
+    SeekIndexCache seekIndexCache = new SimpleSeekIndexCache(1);
+    Mp3Extractor extractor = new Mp3Extractor(-1, seekIndexCache, TEST_KEY);
+    extractor.init(new FakeExtractorOutput());
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+    PositionHolder seekPositionHolder = new PositionHolder();
+    while (input.getPosition() < framePositions[2]) {
+      assertEquals(Extractor.RESULT_CONTINUE, extractor.read(input, seekPositionHolder));
+    }
+
+    // Seek past a frame that hasn't been read, then read to the end of the stream.
+    extractor.seek();
+    input.setPosition((int) framePositions[4]);
+    int result = Extractor.RESULT_CONTINUE;
+    while (result != Extractor.RESULT_END_OF_INPUT) {
+      result = extractor.read(input, seekPositionHolder);
+    }
+
+    assertNull(seekIndexCache.get(TEST_KEY, data.length));
+  }
+
+  private static int getFrameHeader(int frameIndex) {
+    return FRAME_HEADERS[frameIndex % FRAME_HEADERS.length];
+  }
+
+  private static long getFrameTimeUs(int frameIndex) {
+    return ((long) frameIndex * SAMPLES_PER_FRAME * C.MICROS_PER_SECOND) / SAMPLE_RATE;
+  }
+
+}
@@ -15,6 +15,7 @@
  */
 package com.google.android.exoplayer.extractor.mp4;
 
+import com.google.android.exoplayer.ParserException;
 import com.google.android.exoplayer.util.ParsableByteArray;
 import com.google.android.exoplayer.util.Util;
 
@@ -34,24 +35,52 @@ public final class AtomParsersTest extends TestCase {
   private static final byte[] SIXTEEN_BIT_STZ2 = Util.getBytesFromHexString(ATOM_HEADER + "00000010"
       + SAMPLE_COUNT + "0001000200030004");
 
-  public void testStz2Parsing4BitFieldSize() {
-    verifyParsing(new Atom.LeafAtom(Atom.TYPE_stsz, new ParsableByteArray(FOUR_BIT_STZ2)));
+  public void testStz2Parsing4BitFieldSize() throws ParserException {
+    verifyParsing(FOUR_BIT_STZ2);
   }
 
-  public void testStz2Parsing8BitFieldSize() {
-    verifyParsing(new Atom.LeafAtom(Atom.TYPE_stsz, new ParsableByteArray(EIGHT_BIT_STZ2)));
+  public void testStz2Parsing8BitFieldSize() throws ParserException {
+    verifyParsing(EIGHT_BIT_STZ2);
   }
 
-  public void testStz2Parsing16BitFieldSize() {
-    verifyParsing(new Atom.LeafAtom(Atom.TYPE_stsz, new ParsableByteArray(SIXTEEN_BIT_STZ2)));
+  public void testStz2Parsing16BitFieldSize() throws ParserException {
+    verifyParsing(SIXTEEN_BIT_STZ2);
   }
 
-  private void verifyParsing(Atom.LeafAtom stz2Atom) {
-    AtomParsers.Stz2SampleSizeBox box = new AtomParsers.Stz2SampleSizeBox(stz2Atom);
-    assertEquals(4, box.getSampleCount());
-    assertFalse(box.isFixedSampleSize());
-    for (int i = 0; i < box.getSampleCount(); i++) {
-      assertEquals(i + 1, box.readNextSampleSize());
+  public void testStz2ParsingInPieces() throws ParserException {
+    // Pass the box one byte at a time.
+    SampleTableBoxes boxes = new SampleTableBoxes();
+    boxes.startBox(Atom.TYPE_stz2, SIXTEEN_BIT_STZ2.length - Atom.HEADER_SIZE);
+    ParsableByteArray data = new ParsableByteArray(SIXTEEN_BIT_STZ2.length);
+    data.reset(0);
+    for (int position = Atom.HEADER_SIZE; position < SIXTEEN_BIT_STZ2.length; position++) {
+      // Retain the bytes that weren't consumed, as the extractor does.
+      int bytesLeft = data.bytesLeft();
+      System.arraycopy(data.data, data.getPosition(), data.data, 0, bytesLeft);
+      data.data[bytesLeft] = SIXTEEN_BIT_STZ2[position];
+      data.reset(bytesLeft + 1);
+      boxes.parse(data);
+    }
+    boxes.endBox();
+    assertSampleSizes(boxes);
+  }
+
+  private static void verifyParsing(byte[] stz2) throws ParserException {
+    SampleTableBoxes boxes = new SampleTableBoxes();
+    boxes.startBox(Atom.TYPE_stz2, stz2.length - Atom.HEADER_SIZE);
+    ParsableByteArray data = new ParsableByteArray(stz2);
+    data.setPosition(Atom.HEADER_SIZE);
+    boxes.parse(data);
+    boxes.endBox();
+    assertSampleSizes(boxes);
+  }
+
+  private static void assertSampleSizes(SampleTableBoxes boxes) {
+    assertTrue(boxes.hasSampleSizes);
+    assertEquals(4, boxes.sampleCount);
+    assertEquals(0, boxes.fixedSampleSize);
+    for (int i = 0; i < boxes.sampleCount; i++) {
+      assertEquals(i + 1, boxes.sampleSizes[i]);
     }
   }
 
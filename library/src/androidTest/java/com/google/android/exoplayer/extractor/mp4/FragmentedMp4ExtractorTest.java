@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor.mp4;
+
+import android.os.Debug;
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.MediaFormat;
+import com.google.android.exoplayer.drm.DrmInitData;
+import com.google.android.exoplayer.extractor.Extractor;
+import com.google.android.exoplayer.extractor.ExtractorInput;
+import com.google.android.exoplayer.extractor.ExtractorOutput;
+import com.google.android.exoplayer.extractor.PositionHolder;
+import com.google.android.exoplayer.extractor.SeekMap;
+import com.google.android.exoplayer.extractor.TrackOutput;
+import com.google.android.exoplayer.testutil.FakeExtractorInput;
+import com.google.android.exoplayer.util.MimeTypes;
+import com.google.android.exoplayer.util.ParsableByteArray;
+import com.google.android.exoplayer.util.Util;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link FragmentedMp4Extractor}.
+ */
+public final class FragmentedMp4ExtractorTest extends TestCase {
+
+  private static final int TIMESCALE = 1000;
+  private static final int SAMPLE_DURATION = 20;
+  private static final int SAMPLES_PER_FRAGMENT = 8;
+  private static final int FRAGMENT_COUNT = 64;
+  private static final int WARM_UP_FRAGMENT_COUNT = 16;
+  private static final int VECTOR_SIZE = 8;
+  private static final byte[] KEY_ID = new byte[16];
+  private static final int SAMPLE_COUNT = SAMPLES_PER_FRAGMENT * FRAGMENT_COUNT;
+
+  // The signal byte, vector, subsample count and a single subsample entry.
+  private static final int ENCRYPTION_DATA_SIZE = 1 + VECTOR_SIZE + 2 + 6;
+
+  public void testParsesEncryptedFragments() throws IOException, InterruptedException {
+    FragmentedMp4Extractor extractor = createExtractor();
+    RecordingOutput output = new RecordingOutput();
+    extractor.init(output);
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(buildFragments())
+        .setSimulatePartialReads(true).build();
+    readToEnd(extractor, input);
+
+    assertEquals(SAMPLE_COUNT, output.sampleCount);
+    ByteBuffer expectedData = ByteBuffer.allocate(output.dataLength);
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      int indexInFragment = i % SAMPLES_PER_FRAGMENT;
+      long expectedTimeUs = (i * SAMPLE_DURATION + getCompositionTimeOffset(indexInFragment))
+          * (C.MICROS_PER_SECOND / TIMESCALE);
+      assertEquals(expectedTimeUs, output.timesUs[i]);
+      int expectedFlags = C.SAMPLE_FLAG_ENCRYPTED
+          | (indexInFragment == 0 ? C.SAMPLE_FLAG_SYNC : 0);
+      assertEquals(expectedFlags, output.flags[i]);
+      assertEquals(ENCRYPTION_DATA_SIZE + getSampleSize(i), output.sizes[i]);
+      expectedData.put((byte) (VECTOR_SIZE | 0x80));
+      expectedData.putLong(i);
+      expectedData.putShort((short) 1);
+      expectedData.putShort((short) 1);
+      expectedData.putInt(getSampleSize(i) - 1);
+      expectedData.put(getSampleData(i));
+    }
+    assertTrue(Arrays.equals(expectedData.array(), Arrays.copyOf(output.data, output.dataLength)));
+  }
+
+  public void testSteadyStateDoesNotAllocate() throws IOException, InterruptedException {
+    FragmentedMp4Extractor extractor = createExtractor();
+    RecordingOutput output = new RecordingOutput();
+    extractor.init(output);
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(buildFragments()).build();
+    PositionHolder positionHolder = new PositionHolder();
+
+    // Reading the first fragments sizes the buffers that are reused for the remaining ones.
+    while (output.sampleCount < WARM_UP_FRAGMENT_COUNT * SAMPLES_PER_FRAGMENT) {
+      assertEquals(Extractor.RESULT_CONTINUE, extractor.read(input, positionHolder));
+    }
+    Debug.startAllocCounting();
+    Debug.resetThreadAllocSize();
+    int result = Extractor.RESULT_CONTINUE;
+    while (result == Extractor.RESULT_CONTINUE) {
+      result = extractor.read(input, positionHolder);
+    }
+    int allocatedBytes = Debug.getThreadAllocSize();
+    Debug.stopAllocCounting();
+
+    assertEquals(Extractor.RESULT_END_OF_INPUT, result);
+    assertEquals(SAMPLE_COUNT, output.sampleCount);
+    assertEquals(0, allocatedBytes);
+  }
+
+  private static FragmentedMp4Extractor createExtractor() {
+    MediaFormat format = MediaFormat.createAudioFormat(null, MimeTypes.AUDIO_AAC,
+        MediaFormat.NO_VALUE, MediaFormat.NO_VALUE, C.UNKNOWN_TIME_US, 2, 44100, null, null);
+    TrackEncryptionBox encryptionBox = new TrackEncryptionBox(true, VECTOR_SIZE, KEY_ID);
+    Track track = new Track(1, Track.TYPE_soun, TIMESCALE, TIMESCALE, C.UNKNOWN_TIME_US, format,
+        new TrackEncryptionBox[] {encryptionBox}, -1, null, null);
+    return new FragmentedMp4Extractor(0, track);
+  }
+
+  private static void readToEnd(Extractor extractor, ExtractorInput input)
+      throws IOException, InterruptedException {
+    PositionHolder positionHolder = new PositionHolder();
+    int result = Extractor.RESULT_CONTINUE;
+    while (result == Extractor.RESULT_CONTINUE) {
+      result = extractor.read(input, positionHolder);
+    }
+    assertEquals(Extractor.RESULT_END_OF_INPUT, result);
+  }
+
+  /**
+   * Returns {@link #FRAGMENT_COUNT} fragments, each consisting of a moof holding a tfhd, tfdt, trun
+   * and senc, followed by an mdat. The fragments are followed by a free atom, so that the input
+   * doesn't end exactly where an atom's header does.
+   */
+  private static byte[] buildFragments() {
+    int trunSize = 20 + 16 * SAMPLES_PER_FRAGMENT;
+    int sencSize = 16 + (VECTOR_SIZE + 8) * SAMPLES_PER_FRAGMENT;
+    int trafSize = 8 + 16 + 20 + trunSize + sencSize;
+    int moofSize = 8 + trafSize;
+    ByteBuffer buffer = ByteBuffer.allocate(FRAGMENT_COUNT * (moofSize + 8)
+        + getSampleDataOffset(SAMPLE_COUNT) + 16);
+    for (int fragment = 0; fragment < FRAGMENT_COUNT; fragment++) {
+      int firstSampleIndex = fragment * SAMPLES_PER_FRAGMENT;
+      buffer.putInt(moofSize);
+      buffer.putInt(Atom.TYPE_moof);
+      buffer.putInt(trafSize);
+      buffer.putInt(Atom.TYPE_traf);
+      buffer.putInt(16);
+      buffer.putInt(Atom.TYPE_tfhd);
+      buffer.putInt(0);
+      buffer.putInt(1);
+      buffer.putInt(20);
+      buffer.putInt(Atom.TYPE_tfdt);
+      buffer.putInt(0x01000000);
+      buffer.putLong(firstSampleIndex * SAMPLE_DURATION);
+      buffer.putInt(trunSize);
+      buffer.putInt(Atom.TYPE_trun);
+      // Data offset, sample duration, size, flags and composition time offset present.
+      buffer.putInt(0x000F01);
+      buffer.putInt(SAMPLES_PER_FRAGMENT);
+      buffer.putInt(moofSize + 8);
+      for (int i = 0; i < SAMPLES_PER_FRAGMENT; i++) {
+        buffer.putInt(SAMPLE_DURATION);
+        buffer.putInt(getSampleSize(firstSampleIndex + i));
+        buffer.putInt(i == 0 ? 0 : 0x10000 /* sample_is_non_sync_sample */);
+        buffer.putInt(getCompositionTimeOffset(i));
+      }
+      buffer.putInt(sencSize);
+      buffer.putInt(Atom.TYPE_senc);
+      buffer.putInt(0x02 /* use_subsample_encryption */);
+      buffer.putInt(SAMPLES_PER_FRAGMENT);
+      for (int i = 0; i < SAMPLES_PER_FRAGMENT; i++) {
+        buffer.putLong(firstSampleIndex + i);
+        buffer.putShort((short) 1);
+        buffer.putShort((short) 1);
+        buffer.putInt(getSampleSize(firstSampleIndex + i) - 1);
+      }
+      int mdatPayloadSize = getSampleDataOffset(firstSampleIndex + SAMPLES_PER_FRAGMENT)
+          - getSampleDataOffset(firstSampleIndex);
+      buffer.putInt(8 + mdatPayloadSize);
+      buffer.putInt(Atom.TYPE_mdat);
+      for (int i = 0; i < SAMPLES_PER_FRAGMENT; i++) {
+        buffer.put(getSampleData(firstSampleIndex + i));
+      }
+    }
+    buffer.putInt(16);
+    buffer.putInt(Util.getIntegerCodeForString("free"));
+    buffer.putLong(0);
+    return buffer.array();
+  }
+
+  private static int getSampleSize(int index) {
+    return 16 + index % 7;
+  }
+
+  private static int getSampleDataOffset(int index) {
+    int offset = 0;
+    for (int i = 0; i < index; i++) {
+      offset += getSampleSize(i);
+    }
+    return offset;
+  }
+
+  private static byte[] getSampleData(int index) {
+    byte[] data = new byte[getSampleSize(index)];
+    Arrays.fill(data, (byte) index);
+    return data;
+  }
+
+  private static int getCompositionTimeOffset(int indexInFragment) {
+    return (indexInFragment % 3) * SAMPLE_DURATION;
+  }
+
+  /**
+   * An {@link ExtractorOutput} with a single {@link TrackOutput}, which records samples into
+   * preallocated arrays.
+   */
+  private static final class RecordingOutput implements ExtractorOutput, TrackOutput {
+
+    public final byte[] data;
+    public final long[] timesUs;
+    public final int[] flags;
+    public final int[] sizes;
+
+    public int dataLength;
+    public int sampleCount;
+
+    public RecordingOutput() {
+      data = new byte[SAMPLE_COUNT * (ENCRYPTION_DATA_SIZE + 32)];
+      timesUs = new long[SAMPLE_COUNT];
+      flags = new int[SAMPLE_COUNT];
+      sizes = new int[SAMPLE_COUNT];
+    }
+
+    @Override
+    public TrackOutput track(int trackId) {
+      return this;
+    }
+
+    @Override
+    public void endTracks() {
+      // Do nothing.
+    }
+
+    @Override
+    public void seekMap(SeekMap seekMap) {
+      // Do nothing.
+    }
+
+    @Override
+    public void drmInitData(DrmInitData drmInitData) {
+      // Do nothing.
+    }
+
+    @Override
+    public void format(MediaFormat format) {
+      // Do nothing.
+    }
+
+    @Override
+    public int sampleData(ExtractorInput input, int length, boolean allowEndOfInput)
+        throws IOException, InterruptedException {
+      int bytesRead = input.read(data, dataLength, length);
+      if (bytesRead == C.RESULT_END_OF_INPUT) {
+        if (allowEndOfInput) {
+          return C.RESULT_END_OF_INPUT;
+        }
+        throw new IOException("Unexpected end of input.");
+      }
+      dataLength += bytesRead;
+      return bytesRead;
+    }
+
+    @Override
+    public void sampleData(ParsableByteArray data, int length) {
+      data.readBytes(this.data, dataLength, length);
+      dataLength += length;
+    }
+
+    @Override
+    public void sampleMetadata(long timeUs, int flags, int size, int offset,
+        byte[] encryptionKey) {
+      timesUs[sampleCount] = timeUs;
+      this.flags[sampleCount] = flags;
+      sizes[sampleCount] = size;
+      sampleCount++;
+    }
+
+  }
+
+}
@@ -18,7 +18,10 @@ package com.google.android.exoplayer.extractor.mp4;
 import android.annotation.TargetApi;
 import com.google.android.exoplayer.C;
 import com.google.android.exoplayer.MediaFormat;
+import com.google.android.exoplayer.extractor.PositionHolder;
 import com.google.android.exoplayer.extractor.SeekMap;
+import com.google.android.exoplayer.testutil.FakeExtractorInput;
+import com.google.android.exoplayer.testutil.FakeExtractorInput.SimulatedIOException;
 import com.google.android.exoplayer.testutil.FakeExtractorOutput;
 import com.google.android.exoplayer.testutil.FakeTrackOutput;
 import com.google.android.exoplayer.testutil.TestUtil;
@@ -94,6 +97,12 @@ public final class Mp4ExtractorTest extends TestCase {
   private static final int[] SAMPLES_IN_CHUNK = {2, 2, 1, 1};
   /** The mdat box must be large enough to avoid reading chunk sample data out of bounds. */
   private static final int MDAT_SIZE = 10 * 1024 * 1024;
+  /** The number of samples in a sample table that's larger than the extractor's read buffer. */
+  private static final int LARGE_TABLE_SAMPLE_COUNT = 5000;
+  /** The size of each sample in the large sample table. */
+  private static final int LARGE_TABLE_SAMPLE_SIZE = 10;
+  /** The offset of the samples in the large sample table, far beyond the end of the test data. */
+  private static final int LARGE_TABLE_CHUNK_OFFSET = 1024 * 1024;
   /** Empty byte array. */
   private static final byte[] EMPTY = new byte[0];
 
@@ -185,6 +194,27 @@ public final class Mp4ExtractorTest extends TestCase {
     }
   }
 
+  public void testResumesReadingLargeSampleTableAfterIOErrors() throws Exception {
+    // Each read from a new position fails once, so the stsz box, which is read in several pieces,
+    // is resumed part of the way through.
+    FakeExtractorInput input = new FakeExtractorInput.Builder()
+        .setData(getTestMp4FileWithLargeSampleTable()).setSimulateIOErrors(true).build();
+    PositionHolder seekPositionHolder = new PositionHolder();
+    while (extractorOutput.seekMap == null) {
+      try {
+        extractor.read(input, seekPositionHolder);
+      } catch (SimulatedIOException e) {
+        // Resume from the same position, as ExtractorSampleSource does.
+      }
+    }
+
+    SeekMap seekMap = extractorOutput.seekMap;
+    for (int i = 0; i < LARGE_TABLE_SAMPLE_COUNT; i += 499) {
+      assertEquals(LARGE_TABLE_CHUNK_OFFSET + i * LARGE_TABLE_SAMPLE_SIZE,
+          seekMap.getPosition(getVideoTimestampUs(i)));
+    }
+  }
+
   private static void assertSeekMap(SeekMap seekMap, boolean haveStss) {
     assertNotNull(seekMap);
     int expectedSeekPosition = getSampleOffset(0);
@@ -440,6 +470,50 @@ public final class Mp4ExtractorTest extends TestCase {
         atom(Atom.TYPE_mdat, getMdat(mp4vFormat ? 1120 : 1110, !mp4vFormat)));
   }
 
+  /**
+   * Gets the ftyp and moov boxes of an MP4 file with a video track whose samples are in a single
+   * chunk, and whose stsz box is larger than the extractor's read buffer.
+   */
+  private static byte[] getTestMp4FileWithLargeSampleTable() {
+    ByteBuffer stsz = ByteBuffer.allocate(4 + 4 + 4 + 4 * LARGE_TABLE_SAMPLE_COUNT);
+    stsz.putInt(0); // Version (skipped)
+    stsz.putInt(0); // No fixed sample size.
+    stsz.putInt(LARGE_TABLE_SAMPLE_COUNT);
+    for (int i = 0; i < LARGE_TABLE_SAMPLE_COUNT; i++) {
+      stsz.putInt(LARGE_TABLE_SAMPLE_SIZE);
+    }
+    return Mp4Atom.serialize(
+        atom(Atom.TYPE_ftyp, FTYP_PAYLOAD),
+        atom(Atom.TYPE_moov,
+            atom(Atom.TYPE_mvhd, MVHD_PAYLOAD),
+            atom(Atom.TYPE_trak,
+                atom(Atom.TYPE_tkhd, TKHD_PAYLOAD),
+                atom(Atom.TYPE_mdia,
+                    atom(Atom.TYPE_mdhd, VIDEO_MDHD_PAYLOAD),
+                    atom(Atom.TYPE_hdlr, VIDEO_HDLR_PAYLOAD),
+                    atom(Atom.TYPE_minf,
+                        atom(Atom.TYPE_vmhd, EMPTY),
+                        atom(Atom.TYPE_stbl,
+                            atom(Atom.TYPE_stsd, VIDEO_STSD_PAYLOAD),
+                            atom(Atom.TYPE_stts,
+                                getFullBoxPayload(1, LARGE_TABLE_SAMPLE_COUNT, 1)),
+                            atom(Atom.TYPE_stsc,
+                                getFullBoxPayload(1, 1, LARGE_TABLE_SAMPLE_COUNT, 0)),
+                            atom(Atom.TYPE_stsz, stsz.array()),
+                            atom(Atom.TYPE_stco,
+                                getFullBoxPayload(1, LARGE_TABLE_CHUNK_OFFSET))))))));
+  }
+
+  /** Returns a full box payload with version and flags zero, followed by {@code fields}. */
+  private static byte[] getFullBoxPayload(int... fields) {
+    ByteBuffer payload = ByteBuffer.allocate(4 + 4 * fields.length);
+    payload.putInt(0); // Version (skipped)
+    for (int field : fields) {
+      payload.putInt(field);
+    }
+    return payload.array();
+  }
+
   private static Mp4Atom atom(int type, Mp4Atom... containedMp4Atoms) {
     return new Mp4Atom(type, containedMp4Atoms);
   }
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor.mp4;
+
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link SyncSampleIndex}.
+ */
+public final class SyncSampleIndexTest extends TestCase {
+
+  private static final int SAMPLE_COUNT = 1000;
+
+  public void testAllSyncSamples() {
+    SyncSampleIndex index = SyncSampleIndex.create(null, SAMPLE_COUNT);
+    assertTrue(index.isSyncSample(0));
+    assertTrue(index.isSyncSample(SAMPLE_COUNT - 1));
+    assertEquals(10, index.getIndexAtOrBefore(10));
+    assertEquals(10, index.getIndexAtOrAfter(10));
+  }
+
+  public void testSparseSyncSamples() {
+    // One synchronization sample per 100 samples is encoded as sorted indices.
+    assertMatchesSyncSamples(buildSyncSamples(100, 0));
+  }
+
+  public void testDenseSyncSamples() {
+    // One synchronization sample per 4 samples is encoded as a bitset.
+    assertMatchesSyncSamples(buildSyncSamples(4, 1));
+  }
+
+  public void testEveryOtherSyncSample() {
+    int[] syncSamples = new int[SAMPLE_COUNT / 2];
+    for (int i = 0; i < syncSamples.length; i++) {
+      syncSamples[i] = i * 2 + 1;
+    }
+    assertMatchesSyncSamples(syncSamples);
+  }
+
+  public void testSyncSamplesAtWordBoundaries() {
+    // The samples either side of each word boundary, and the first sample in each word.
+    int[] syncSamples = new int[(SAMPLE_COUNT / 64 - 1) * 3];
+    for (int i = 0; i < syncSamples.length; i++) {
+      syncSamples[i] = 64 * (i / 3 + 1) + (i % 3) - 1;
+    }
+    assertMatchesSyncSamples(syncSamples);
+  }
+
+  public void testNoSyncSamples() {
+    SyncSampleIndex index = SyncSampleIndex.create(new int[0], SAMPLE_COUNT);
+    assertFalse(index.isSyncSample(0));
+    assertEquals(SyncSampleIndex.NO_SAMPLE, index.getIndexAtOrBefore(SAMPLE_COUNT - 1));
+    assertEquals(SyncSampleIndex.NO_SAMPLE, index.getIndexAtOrAfter(0));
+  }
+
+  private static int[] buildSyncSamples(int averageInterval, int seed) {
+    Random random = new Random(seed);
+    int[] syncSamples = new int[SAMPLE_COUNT];
+    int syncSampleCount = 0;
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      if (random.nextInt(averageInterval) == 0) {
+        syncSamples[syncSampleCount++] = i;
+      }
+    }
+    return Arrays.copyOf(syncSamples, syncSampleCount);
+  }
+
+  private static void assertMatchesSyncSamples(int[] syncSamples) {
+    SyncSampleIndex index = SyncSampleIndex.create(syncSamples, SAMPLE_COUNT);
+    for (int i = -1; i <= SAMPLE_COUNT; i++) {
+      boolean isSyncSample = Arrays.binarySearch(syncSamples, i) >= 0;
+      assertEquals(isSyncSample, index.isSyncSample(i));
+      int expectedIndexAtOrBefore = SyncSampleIndex.NO_SAMPLE;
+      int expectedIndexAtOrAfter = SyncSampleIndex.NO_SAMPLE;
+      for (int syncSample : syncSamples) {
+        if (syncSample <= i) {
+          expectedIndexAtOrBefore = syncSample;
+        }
+        if (syncSample >= i && expectedIndexAtOrAfter == SyncSampleIndex.NO_SAMPLE) {
+          expectedIndexAtOrAfter = syncSample;
+        }
+      }
+      assertEquals(expectedIndexAtOrBefore, index.getIndexAtOrBefore(i));
+      assertEquals(expectedIndexAtOrAfter, index.getIndexAtOrAfter(i));
+    }
+  }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor.ogg;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.extractor.Extractor;
+import com.google.android.exoplayer.extractor.PositionHolder;
+import com.google.android.exoplayer.testutil.FakeExtractorInput;
+import com.google.android.exoplayer.testutil.FakeExtractorInput.SimulatedIOException;
+import com.google.android.exoplayer.testutil.FakeExtractorOutput;
+import com.google.android.exoplayer.testutil.FakeTrackOutput;
+import com.google.android.exoplayer.testutil.TestUtil;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for {@link FlacReader}.
+ */
+public final class FlacReaderTest extends TestCase {
+
+  private static final int SAMPLE_RATE = 44100;
+  private static final int BLOCK_SIZE = 4096;
+  private static final int FRAME_COUNT = 100;
+
+  public void testReadFramesWithIOExceptions() throws IOException, InterruptedException {
+    Random random = new Random(0);
+    List<byte[]> packets = new ArrayList<>();
+    packets.add(createIdentificationPacket());
+    // An empty VORBIS_COMMENT metadata block, which is the last metadata block.
+    packets.add(new byte[] {(byte) 0x84, 0, 0, 8, 0, 0, 0, 0, 0, 0, 0, 0});
+    for (int i = 0; i < FRAME_COUNT; i++) {
+      // Some frames are short, or start close to the end of a page, and are read whole.
+      byte[] frame = TestUtil.buildTestData(6 + random.nextInt(i % 10 == 0 ? 10 : 3000), random);
+      frame[0] = (byte) 0xFF;
+      frame[1] = (byte) 0xF8; // Sync code, fixed block size.
+      frame[2] = (byte) 0xC9; // 4096 samples per block, 44.1 kHz.
+      frame[3] = 0x18; // Left and right channels, 16 bits per sample.
+      frame[4] = (byte) i; // The frame number, as a UTF-8 encoded integer.
+      packets.add(frame);
+    }
+    long[] granules = new long[packets.size()];
+    for (int i = 2; i < packets.size(); i++) {
+      granules[i] = (long) (i - 1) * BLOCK_SIZE;
+    }
+    FakeExtractorInput input = TestData.createInput(
+        TestData.buildOggPages(packets, granules, 8, 0), false);
+
+    FlacReader reader = new FlacReader();
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    reader.init(output, output.track(0));
+    PositionHolder seekPosition = new PositionHolder();
+    int result = Extractor.RESULT_CONTINUE;
+    while (result != Extractor.RESULT_END_OF_INPUT) {
+      try {
+        result = reader.read(input, seekPosition);
+      } catch (SimulatedIOException e) {
+        // Ignore.
+      }
+    }
+
+    FakeTrackOutput trackOutput = output.trackOutputs.get(0);
+    assertEquals(SAMPLE_RATE, trackOutput.format.sampleRate);
+    trackOutput.assertSampleCount(FRAME_COUNT);
+    for (int i = 0; i < FRAME_COUNT; i++) {
+      long timeUs = (long) i * BLOCK_SIZE * C.MICROS_PER_SECOND / SAMPLE_RATE;
+      trackOutput.assertSample(i, packets.get(i + 2), timeUs, C.SAMPLE_FLAG_SYNC, null);
+    }
+  }
+
+  /**
+   * Returns the first packet of the FLAC to Ogg mapping, which holds the STREAMINFO metadata block.
+   */
+  private static byte[] createIdentificationPacket() {
+    byte[] packet = new byte[13 + 4 + 34];
+    packet[0] = 0x7F;
+    System.arraycopy("FLAC".getBytes(), 0, packet, 1, 4);
+    packet[5] = 1; // Major version.
+    packet[8] = 1; // Number of header packets, other than this one.
+    System.arraycopy("fLaC".getBytes(), 0, packet, 9, 4);
+    packet[16] = 34; // Length of the STREAMINFO metadata block.
+    packet[17] = (byte) (BLOCK_SIZE >> 8); // Minimum block size.
+    packet[18] = (byte) BLOCK_SIZE;
+    packet[19] = (byte) (BLOCK_SIZE >> 8); // Maximum block size.
+    packet[20] = (byte) BLOCK_SIZE;
+    // The minimum and maximum frame sizes are unknown. The next 64 bits hold the sample rate, the
+    // channel count minus one, the bits per sample minus one and the total number of samples.
+    long bits = ((long) SAMPLE_RATE << 44) | (1L << 41) | (15L << 36)
+        | ((long) FRAME_COUNT * BLOCK_SIZE);
+    for (int i = 0; i < 8; i++) {
+      packet[27 + i] = (byte) (bits >> (56 - 8 * i));
+    }
+    return packet;
+  }
+
+}
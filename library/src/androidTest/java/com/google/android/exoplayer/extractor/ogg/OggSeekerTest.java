@@ -17,8 +17,13 @@ package com.google.android.exoplayer.extractor.ogg;
 
 import com.google.android.exoplayer.C;
 import com.google.android.exoplayer.testutil.FakeExtractorInput;
+import com.google.android.exoplayer.testutil.FakeExtractorInput.SimulatedIOException;
 import com.google.android.exoplayer.testutil.TestUtil;
+import com.google.android.exoplayer.util.ParsableByteArray;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 import junit.framework.TestCase;
 
 /**
@@ -26,18 +31,34 @@ import junit.framework.TestCase;
  */
 public final class OggSeekerTest extends TestCase {
 
+  private static final int PACKET_COUNT = 20000;
+  private static final int SAMPLES_PER_PACKET = 256;
+  private static final int MATCH_RANGE = 72000;
+
   private OggSeeker oggSeeker;
+  private FakeExtractorInput input;
 
   @Override
   public void setUp() throws Exception {
     super.setUp();
+    Random random = new Random(0);
+    List<byte[]> packets = new ArrayList<>();
+    long[] granules = new long[PACKET_COUNT];
+    for (int i = 0; i < PACKET_COUNT; i++) {
+      // Vary the bitrate, so that positions can't be interpolated from the granules alone.
+      int maxPacketSize = i < PACKET_COUNT / 4 ? 200 : 1500;
+      packets.add(TestUtil.buildTestData(1 + random.nextInt(maxPacketSize), random));
+      granules[i] = (i + 1) * SAMPLES_PER_PACKET;
+    }
+    byte[] data = TestData.buildOggPages(packets, granules, 16, 0);
+    input = TestData.createInput(data, false);
     oggSeeker = new OggSeeker();
-    oggSeeker.setup(1, 1);
+    oggSeeker.setup(0, data.length, PACKET_COUNT * SAMPLES_PER_PACKET);
   }
 
-  public void testSetupUnboundAudioLength() {
+  public void testSetupUnboundInputLength() {
     try {
-      new OggSeeker().setup(C.LENGTH_UNBOUNDED, 1000);
+      new OggSeeker().setup(0, C.LENGTH_UNBOUNDED, 1000);
       fail();
     } catch (IllegalArgumentException e) {
       // ignored
@@ -46,13 +67,13 @@ public final class OggSeekerTest extends TestCase {
 
   public void testSetupZeroOrNegativeTotalSamples() {
     try {
-      new OggSeeker().setup(1000, 0);
+      new OggSeeker().setup(0, 1000, 0);
       fail();
     } catch (IllegalArgumentException e) {
       // ignored
     }
     try {
-      new OggSeeker().setup(1000, -1000);
+      new OggSeeker().setup(0, 1000, -1000);
       fail();
     } catch (IllegalArgumentException e) {
       // ignored
@@ -68,63 +89,71 @@ public final class OggSeekerTest extends TestCase {
     }
   }
 
-  public void testGetNextSeekPositionMatch() throws IOException, InterruptedException {
-    long targetGranule = 100000;
-    long headerGranule = 52001;
-    FakeExtractorInput input = TestData.createInput(TestUtil.joinByteArrays(
-        TestData.buildOggHeader(0x00, headerGranule, 22, 2),
-        TestUtil.createByteArray(54, 55) // laces
-    ), false);
-    long expectedPosition = -1;
-    assertGetNextSeekPosition(expectedPosition, targetGranule, input);
+  public void testSeekConverges() throws IOException, InterruptedException {
+    long[] targetGranules = new long[] {PACKET_COUNT * SAMPLES_PER_PACKET / 2, 1234567,
+        PACKET_COUNT * SAMPLES_PER_PACKET - 1, 100000};
+    for (long targetGranule : targetGranules) {
+      assertTrue(seekTo(targetGranule) <= 12);
+      assertPageBeforeTarget(targetGranule);
+    }
   }
 
-  public void testGetNextSeekPositionTooHigh() throws IOException, InterruptedException {
-    long targetGranule = 100000;
-    long headerGranule = 200000;
-    FakeExtractorInput input = TestData.createInput(TestUtil.joinByteArrays(
-        TestData.buildOggHeader(0x00, headerGranule, 22, 2),
-        TestUtil.createByteArray(54, 55) // laces
-    ), false);
-    long doublePageSize = 2 * (input.getLength() + 54 + 55);
-    long expectedPosition = -doublePageSize + (targetGranule - headerGranule);
-    assertGetNextSeekPosition(expectedPosition, targetGranule, input);
+  public void testSeekToFirstPage() throws IOException, InterruptedException {
+    seekTo(SAMPLES_PER_PACKET);
+    assertEquals(0, input.getPosition());
   }
 
-  public void testGetNextSeekPositionTooHighDistanceLower48000()
-      throws IOException, InterruptedException {
-    long targetGranule = 199999;
-    long headerGranule = 200000;
-    FakeExtractorInput input = TestData.createInput(TestUtil.joinByteArrays(
-        TestData.buildOggHeader(0x00, headerGranule, 22, 2),
-        TestUtil.createByteArray(54, 55) // laces
-    ), false);
-    long doublePageSize = 2 * (input.getLength() + 54 + 55);
-    long expectedPosition = -doublePageSize - 1;
-    assertGetNextSeekPosition(expectedPosition, targetGranule, input);
+  public void testRepeatedSeekUsesCachedPages() throws IOException, InterruptedException {
+    long targetGranule = PACKET_COUNT * SAMPLES_PER_PACKET / 3;
+    seekTo(targetGranule);
+    long position = input.getPosition();
+    assertEquals(position, oggSeeker.getInitialSeekPosition(targetGranule));
+    assertEquals(0, seekTo(targetGranule));
+    assertPageBeforeTarget(targetGranule);
+    assertEquals(0, seekTo(targetGranule + MATCH_RANGE / 2));
+    assertPageBeforeTarget(targetGranule + MATCH_RANGE / 2);
+    // The pages read while seeking narrow the range for a nearby target.
+    long nearbyTargetGranule = targetGranule + 2 * MATCH_RANGE;
+    assertTrue(seekTo(nearbyTargetGranule) <= 3);
+    assertPageBeforeTarget(nearbyTargetGranule);
   }
 
-  public void testGetNextSeekPositionTooLow() throws IOException, InterruptedException {
-    long headerGranule = 200000;
-    FakeExtractorInput input = TestData.createInput(TestUtil.joinByteArrays(
-        TestData.buildOggHeader(0x00, headerGranule, 22, 2),
-        TestUtil.createByteArray(54, 55) // laces
-    ), false);
-    long targetGranule = 300000;
-    long expectedPosition = -(27 + 2 + 54 + 55) + (targetGranule - headerGranule);
-    assertGetNextSeekPosition(expectedPosition, targetGranule, input);
+  /**
+   * Seeks to {@code targetGranule}, returning the number of seeks performed after the initial one.
+   */
+  private int seekTo(long targetGranule) throws IOException, InterruptedException {
+    input.setPosition((int) oggSeeker.getInitialSeekPosition(targetGranule));
+    int seekCount = 0;
+    while (true) {
+      long position;
+      try {
+        position = oggSeeker.getNextSeekPosition(targetGranule, input);
+      } catch (SimulatedIOException e) {
+        continue;
+      }
+      if (position == -1) {
+        return seekCount;
+      }
+      input.setPosition((int) position);
+      seekCount++;
+      assertTrue(seekCount < 100);
+    }
   }
 
-  private void assertGetNextSeekPosition(long expectedPosition, long targetGranule,
-      FakeExtractorInput input) throws IOException, InterruptedException {
+  private void assertPageBeforeTarget(long targetGranule) throws IOException, InterruptedException {
+    OggUtil.PageHeader pageHeader = new OggUtil.PageHeader();
+    ParsableByteArray headerArray = new ParsableByteArray(27 + 255);
     while (true) {
       try {
-        assertEquals(expectedPosition, oggSeeker.getNextSeekPosition(targetGranule, input));
+        assertTrue(OggUtil.populatePageHeader(input, pageHeader, headerArray, false));
         break;
-      } catch (FakeExtractorInput.SimulatedIOException e) {
+      } catch (SimulatedIOException e) {
         // ignored
       }
     }
+    input.resetPeekPosition();
+    assertTrue(pageHeader.granulePosition < targetGranule);
+    assertTrue(targetGranule - pageHeader.granulePosition <= MATCH_RANGE);
   }
 
 }
@@ -174,7 +174,7 @@ public final class OggUtilTest extends TestCase {
       throws IOException, InterruptedException {
     while (true) {
       try {
-        OggUtil.skipToNextPage(extractorInput);
+        OggUtil.skipToNextPage(extractorInput, new byte[2048]);
         break;
       } catch (SimulatedIOException e) { /* ignored */ }
     }
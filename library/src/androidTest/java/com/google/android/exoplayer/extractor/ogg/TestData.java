@@ -17,6 +17,8 @@ package com.google.android.exoplayer.extractor.ogg;
 
 import com.google.android.exoplayer.testutil.FakeExtractorInput;
 import com.google.android.exoplayer.testutil.TestUtil;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
 
 /**
  * Provides ogg/vorbis test data in bytes for unit tests.
@@ -57,6 +59,61 @@ import com.google.android.exoplayer.testutil.TestUtil;
         pageSegmentCount);
   }
 
+  /**
+   * Returns pages holding {@code packets}, each page holding at most {@code maxPageSegmentCount}
+   * segments. Packets span pages where they don't fit, and the last page is flagged as the end of
+   * the stream.
+   *
+   * @param packets The packets to write.
+   * @param granules The granule position at the end of each packet.
+   * @param maxPageSegmentCount The maximum number of segments per page.
+   * @param firstPageSequenceNumber The sequence number of the first page.
+   */
+  public static byte[] buildOggPages(List<byte[]> packets, long[] granules,
+      int maxPageSegmentCount, int firstPageSequenceNumber) {
+    ByteArrayOutputStream pages = new ByteArrayOutputStream();
+    ByteArrayOutputStream laces = new ByteArrayOutputStream();
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    int pageSequenceNumber = firstPageSequenceNumber;
+    boolean continued = false;
+    long granule = -1;
+    for (int i = 0; i < packets.size(); i++) {
+      byte[] packet = packets.get(i);
+      int offset = 0;
+      while (true) {
+        int segmentSize = Math.min(packet.length - offset, 255);
+        laces.write(segmentSize);
+        body.write(packet, offset, segmentSize);
+        offset += segmentSize;
+        boolean packetComplete = segmentSize < 255;
+        if (packetComplete) {
+          granule = granules[i];
+        }
+        boolean lastSegment = packetComplete && i == packets.size() - 1;
+        if (laces.size() == maxPageSegmentCount || lastSegment) {
+          writePage(pages, (continued ? 0x01 : 0x00) | (lastSegment ? 0x04 : 0x00), granule,
+              pageSequenceNumber++, laces, body);
+          continued = !packetComplete;
+          granule = -1;
+        }
+        if (packetComplete) {
+          break;
+        }
+      }
+    }
+    return pages.toByteArray();
+  }
+
+  private static void writePage(ByteArrayOutputStream pages, int headerType, long granule,
+      int pageSequenceNumber, ByteArrayOutputStream laces, ByteArrayOutputStream body) {
+    byte[] header = buildOggHeader(headerType, granule, pageSequenceNumber, laces.size());
+    pages.write(header, 0, header.length);
+    pages.write(laces.toByteArray(), 0, laces.size());
+    pages.write(body.toByteArray(), 0, body.size());
+    laces.reset();
+    body.reset();
+  }
+
   /**
    * Returns the initial two pages of bytes which by spec contain the three vorbis header packets:
    * identification, comment and setup header.
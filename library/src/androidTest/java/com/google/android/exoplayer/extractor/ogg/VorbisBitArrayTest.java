@@ -16,6 +16,7 @@
 package com.google.android.exoplayer.extractor.ogg;
 
 import com.google.android.exoplayer.util.ParsableBitArray;
+import java.util.Random;
 import junit.framework.TestCase;
 
 /**
@@ -332,4 +333,24 @@ public final class VorbisBitArrayTest extends TestCase {
     assertEquals(0x0F, msb.readBits(4));
   }
 
+  public void testReadBitsMatchesBitwiseRead() {
+    Random random = new Random(0);
+    byte[] data = new byte[256];
+    random.nextBytes(data);
+    VorbisBitArray bitArray = new VorbisBitArray(data);
+    while (bitArray.bitsLeft() > 0) {
+      int position = bitArray.getPosition();
+      int numBits = 1 + random.nextInt(Math.min(32, bitArray.bitsLeft()));
+      int expected = 0;
+      for (int i = 0; i < numBits; i++) {
+        int bitPosition = position + i;
+        expected |= ((data[bitPosition / 8] >> (bitPosition % 8)) & 1) << i;
+      }
+      assertEquals(expected, bitArray.readBits(numBits));
+      if (random.nextInt(8) == 0) {
+        bitArray.setPosition(random.nextInt(bitArray.limit()));
+      }
+    }
+  }
+
 }
@@ -15,11 +15,20 @@
  */
 package com.google.android.exoplayer.extractor.ogg;
 
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.extractor.Extractor;
+import com.google.android.exoplayer.extractor.PositionHolder;
 import com.google.android.exoplayer.extractor.ogg.VorbisReader.VorbisSetup;
 import com.google.android.exoplayer.testutil.FakeExtractorInput;
 import com.google.android.exoplayer.testutil.FakeExtractorInput.SimulatedIOException;
+import com.google.android.exoplayer.testutil.FakeExtractorOutput;
+import com.google.android.exoplayer.testutil.FakeTrackOutput;
+import com.google.android.exoplayer.testutil.TestUtil;
 import com.google.android.exoplayer.util.ParsableByteArray;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 import junit.framework.TestCase;
 
 /**
@@ -27,8 +36,12 @@ import junit.framework.TestCase;
  */
 public final class VorbisReaderTest extends TestCase {
 
+  private static final int SAMPLE_RATE = 22050;
+  private static final int AUDIO_PACKET_COUNT = 2000;
+
   private VorbisReader extractor;
   private ParsableByteArray scratch;
+  private long totalSampleCount;
 
   @Override
   public void setUp() throws Exception {
@@ -81,6 +94,113 @@ public final class VorbisReaderTest extends TestCase {
     assertTrue(vorbisSetup.modes[1].blockFlag);
   }
 
+  public void testReadAudioPacketsWithIOExceptions() throws IOException, InterruptedException {
+    List<byte[]> samples = new ArrayList<>();
+    long[] sampleTimesUs = new long[AUDIO_PACKET_COUNT];
+    FakeExtractorInput input = createInput(buildStream(samples, sampleTimesUs), false);
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    extractor.init(output, output.track(0));
+    readToEndOfInput(input);
+
+    FakeTrackOutput trackOutput = output.trackOutputs.get(0);
+    assertEquals(totalSampleCount * C.MICROS_PER_SECOND / SAMPLE_RATE,
+        trackOutput.format.durationUs);
+    trackOutput.assertSampleCount(AUDIO_PACKET_COUNT);
+    for (int i = 0; i < AUDIO_PACKET_COUNT; i++) {
+      trackOutput.assertSample(i, samples.get(i), sampleTimesUs[i], C.SAMPLE_FLAG_SYNC, null);
+    }
+  }
+
+  public void testSeek() throws IOException, InterruptedException {
+    List<byte[]> samples = new ArrayList<>();
+    long[] sampleTimesUs = new long[AUDIO_PACKET_COUNT];
+    FakeExtractorInput input = createInput(buildStream(samples, sampleTimesUs), false);
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    extractor.init(output, output.track(0));
+    readToEndOfInput(input);
+
+    FakeTrackOutput trackOutput = output.trackOutputs.get(0);
+    long[] targetTimesUs = new long[] {sampleTimesUs[AUDIO_PACKET_COUNT * 2 / 3],
+        sampleTimesUs[AUDIO_PACKET_COUNT / 5] + 1000, sampleTimesUs[AUDIO_PACKET_COUNT * 2 / 3],
+        sampleTimesUs[3]};
+    for (long targetTimeUs : targetTimesUs) {
+      int sampleCount = trackOutput.getSampleCount();
+      input.setPosition((int) output.seekMap.getPosition(targetTimeUs));
+      extractor.seek();
+      PositionHolder seekPosition = new PositionHolder();
+      while (trackOutput.getSampleCount() == sampleCount) {
+        assertTrue(read(input, seekPosition) != Extractor.RESULT_END_OF_INPUT);
+      }
+      // The first sample holds the target, but its timestamp may be a few packets early as the
+      // samples of the packet continued from the previous page are not counted.
+      long timeUs = trackOutput.getSampleTimeUs(sampleCount);
+      assertTrue(timeUs <= targetTimeUs);
+      assertTrue(targetTimeUs - timeUs < 100000);
+    }
+  }
+
+  private void readToEndOfInput(FakeExtractorInput input)
+      throws IOException, InterruptedException {
+    PositionHolder seekPosition = new PositionHolder();
+    while (read(input, seekPosition) != Extractor.RESULT_END_OF_INPUT) {
+      // Do nothing.
+    }
+  }
+
+  private int read(FakeExtractorInput input, PositionHolder seekPosition)
+      throws IOException, InterruptedException {
+    while (true) {
+      try {
+        int result = extractor.read(input, seekPosition);
+        if (result == Extractor.RESULT_SEEK) {
+          input.setPosition((int) seekPosition.position);
+        }
+        return result;
+      } catch (SimulatedIOException e) {
+        // Ignore.
+      }
+    }
+  }
+
+  /**
+   * Returns the Vorbis header pages followed by pages holding audio packets of random sizes and
+   * block sizes. The expected samples are added to {@code samples}, and their timestamps are
+   * written to {@code sampleTimesUs}.
+   */
+  private byte[] buildStream(List<byte[]> samples, long[] sampleTimesUs) {
+    Random random = new Random(0);
+    List<byte[]> packets = new ArrayList<>();
+    long[] granules = new long[AUDIO_PACKET_COUNT];
+    long elapsedSamples = 0;
+    int previousBlockSize = 0;
+    for (int i = 0; i < AUDIO_PACKET_COUNT; i++) {
+      byte[] packet = TestUtil.buildTestData(1 + random.nextInt(700), random);
+      // Audio packets have a zero packet type bit, followed by the mode number.
+      int mode = random.nextInt(2);
+      packet[0] = (byte) (mode << 1);
+      int blockSize = mode == 0 ? 512 : 1024;
+      int packetSampleCount = i == 0 ? 0 : (blockSize + previousBlockSize) / 4;
+      previousBlockSize = blockSize;
+      sampleTimesUs[i] = elapsedSamples * C.MICROS_PER_SECOND / SAMPLE_RATE;
+      elapsedSamples += packetSampleCount;
+      granules[i] = elapsedSamples;
+      packets.add(packet);
+      totalSampleCount = elapsedSamples;
+      ParsableByteArray sample = new ParsableByteArray(packet.length + 4);
+      System.arraycopy(packet, 0, sample.data, 0, packet.length);
+      sample.setLimit(packet.length);
+      VorbisReader.appendNumberOfSamples(sample, packetSampleCount);
+      samples.add(sample.data);
+    }
+    return TestUtil.joinByteArrays(TestData.getVorbisHeaderPages(),
+        TestData.buildOggPages(packets, granules, 8, 2));
+  }
+
+  private static FakeExtractorInput createInput(byte[] data, boolean simulateUnknownLength) {
+    return new FakeExtractorInput.Builder().setData(data).setSimulateIOErrors(true)
+        .setSimulateUnknownLength(simulateUnknownLength).setSimulatePartialReads(true).build();
+  }
+
   private static FakeExtractorInput createInput(byte[] data) {
     return new FakeExtractorInput.Builder().setData(data).setSimulateIOErrors(true)
         .setSimulateUnknownLength(true).setSimulatePartialReads(true).build();
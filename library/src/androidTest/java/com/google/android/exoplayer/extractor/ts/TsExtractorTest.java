@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor.ts;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.extractor.Extractor;
+import com.google.android.exoplayer.extractor.PositionHolder;
+import com.google.android.exoplayer.testutil.FakeExtractorInput;
+import com.google.android.exoplayer.testutil.FakeExtractorOutput;
+import com.google.android.exoplayer.testutil.FakeTrackOutput;
+import com.google.android.exoplayer.util.MimeTypes;
+import java.io.IOException;
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link TsExtractor}.
+ */
+public final class TsExtractorTest extends TestCase {
+
+  private static final int PROGRAM_1_PMT_PID = 0x100;
+  private static final int PROGRAM_1_AUDIO_PID = 0x101;
+  private static final int PROGRAM_2_PMT_PID = 0x200;
+  private static final int PROGRAM_2_AUDIO_PID = 0x201;
+  private static final int PROGRAM_2_SECOND_AUDIO_PID = 0x202;
+
+  private static final int PES_PACKET_COUNT = 20;
+  private static final int FRAMES_PER_PES_PACKET = 3;
+  private static final long FRAME_DURATION_US = (1152 * C.MICROS_PER_SECOND) / 44100;
+
+  private byte[] data;
+
+  @Override
+  public void setUp() {
+    TsStreamBuilder builder = new TsStreamBuilder()
+        .addProgram(1, PROGRAM_1_PMT_PID, PROGRAM_1_AUDIO_PID)
+        .addProgram(2, PROGRAM_2_PMT_PID, PROGRAM_2_AUDIO_PID, PROGRAM_2_SECOND_AUDIO_PID)
+        .writePat();
+    for (int i = 0; i < PES_PACKET_COUNT; i++) {
+      long pts = i * FRAMES_PER_PES_PACKET * FRAME_DURATION_US * 90 / 1000;
+      builder.writeMpegAudioPes(PROGRAM_1_AUDIO_PID, pts, FRAMES_PER_PES_PACKET)
+          .writeNullPackets(i % 3)
+          .writeMpegAudioPes(PROGRAM_2_AUDIO_PID, pts, FRAMES_PER_PES_PACKET)
+          .writeMpegAudioPes(PROGRAM_2_SECOND_AUDIO_PID, pts, FRAMES_PER_PES_PACKET);
+    }
+    // Start a final PES packet on each PID, so that the preceding ones are complete.
+    builder.writeMpegAudioPes(PROGRAM_1_AUDIO_PID, 0, 0)
+        .writeMpegAudioPes(PROGRAM_2_AUDIO_PID, 0, 0)
+        .writeMpegAudioPes(PROGRAM_2_SECOND_AUDIO_PID, 0, 0);
+    data = builder.build();
+  }
+
+  public void testReadAllPrograms() throws IOException, InterruptedException {
+    FakeExtractorOutput output = consume(new TsExtractor(), data, false);
+
+    assertTrue(output.tracksEnded);
+    assertEquals(3, output.numberOfTracks);
+    assertTrack(output.trackOutputs.get(PROGRAM_1_AUDIO_PID));
+    assertTrack(output.trackOutputs.get(PROGRAM_2_AUDIO_PID));
+    assertTrack(output.trackOutputs.get(PROGRAM_2_SECOND_AUDIO_PID));
+  }
+
+  public void testReadSelectedProgram() throws IOException, InterruptedException {
+    TsExtractor extractor = new TsExtractor(new PtsTimestampAdjuster(0), 0, 2);
+    FakeExtractorOutput output = consume(extractor, data, false);
+
+    assertTrue(output.tracksEnded);
+    assertEquals(2, output.numberOfTracks);
+    assertNull(output.trackOutputs.get(PROGRAM_1_AUDIO_PID));
+    assertTrack(output.trackOutputs.get(PROGRAM_2_AUDIO_PID));
+    assertTrack(output.trackOutputs.get(PROGRAM_2_SECOND_AUDIO_PID));
+    // The packets of the program that isn't selected don't affect the selected program.
+    assertFalse(extractor.tsPayloadReaders.indexOfKey(PROGRAM_1_PMT_PID) >= 0);
+    assertFalse(extractor.tsPayloadReaders.indexOfKey(PROGRAM_1_AUDIO_PID) >= 0);
+  }
+
+  public void testReadWithPartialReads() throws IOException, InterruptedException {
+    FakeExtractorOutput expectedOutput = consume(new TsExtractor(), data, false);
+    FakeExtractorOutput output = consume(new TsExtractor(), data, true);
+
+    output.assertEquals(expectedOutput);
+  }
+
+  public void testReadUnalignedStream() throws IOException, InterruptedException {
+    // Leading garbage before the first sync byte, and a truncated final packet.
+    byte[] unalignedData = new byte[data.length + 50 - 100];
+    System.arraycopy(data, 0, unalignedData, 50, data.length - 100);
+    FakeExtractorOutput output = consume(new TsExtractor(), unalignedData, true);
+
+    assertEquals(3, output.numberOfTracks);
+    assertTrack(output.trackOutputs.get(PROGRAM_1_AUDIO_PID));
+  }
+
+  private static FakeExtractorOutput consume(Extractor extractor, byte[] data,
+      boolean simulatePartialReads) throws IOException, InterruptedException {
+    FakeExtractorOutput output = new FakeExtractorOutput(true);
+    extractor.init(output);
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data)
+        .setSimulatePartialReads(simulatePartialReads).build();
+    PositionHolder seekPositionHolder = new PositionHolder();
+    while (extractor.read(input, seekPositionHolder) != Extractor.RESULT_END_OF_INPUT) {
+      // Continue reading.
+    }
+    return output;
+  }
+
+  private static void assertTrack(FakeTrackOutput trackOutput) {
+    assertNotNull(trackOutput);
+    assertEquals(MimeTypes.AUDIO_MPEG, trackOutput.format.mimeType);
+    trackOutput.assertSampleCount(PES_PACKET_COUNT * FRAMES_PER_PES_PACKET);
+  }
+
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor.ts;
+
+import com.google.android.exoplayer.util.Util;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds MPEG-2 transport streams for tests, in which every elementary stream is MPEG-1 Layer III
+ * audio carried in PES packets with a PTS.
+ */
+/* package */ final class TsStreamBuilder {
+
+  public static final int TS_PACKET_SIZE = 188;
+  public static final int NULL_PACKET_PID = 0x1FFF;
+
+  // MPEG-1 Layer III, 44.1 kHz, 128 kbit/s, no padding.
+  public static final int MPEG_AUDIO_HEADER = 0xFFFB9000;
+  public static final int MPEG_AUDIO_FRAME_SIZE = 417;
+
+  private static final int STREAM_TYPE_MPA = 0x03;
+
+  private final List<int[]> programs;
+  private final ByteArrayOutputStream output;
+  private final int[] continuityCounters;
+
+  public TsStreamBuilder() {
+    programs = new ArrayList<>();
+    output = new ByteArrayOutputStream();
+    continuityCounters = new int[NULL_PACKET_PID + 1];
+  }
+
+  /**
+   * Adds a program to the program association table written by {@link #writePat()}.
+   *
+   * @param programNumber The program_number of the program.
+   * @param pmtPid The PID of the program's program map table.
+   * @param elementaryPids The PIDs of the program's elementary streams.
+   */
+  public TsStreamBuilder addProgram(int programNumber, int pmtPid, int... elementaryPids) {
+    int[] program = new int[elementaryPids.length + 2];
+    program[0] = programNumber;
+    program[1] = pmtPid;
+    System.arraycopy(elementaryPids, 0, program, 2, elementaryPids.length);
+    programs.add(program);
+    return this;
+  }
+
+  /**
+   * Writes the program association table and the program map table of each program.
+   */
+  public TsStreamBuilder writePat() {
+    byte[] section = new byte[12 + 4 * programs.size()];
+    int position = writeSectionHeader(section, 0x00, 1 /* transport_stream_id */);
+    for (int[] program : programs) {
+      section[position++] = (byte) (program[0] >> 8);
+      section[position++] = (byte) program[0];
+      section[position++] = (byte) (0xE0 | (program[1] >> 8));
+      section[position++] = (byte) program[1];
+    }
+    writeSection(0, section);
+    for (int[] program : programs) {
+      int elementaryStreamCount = program.length - 2;
+      section = new byte[16 + 5 * elementaryStreamCount];
+      position = writeSectionHeader(section, 0x02, program[0]);
+      section[position++] = (byte) (0xE0 | (program[2] >> 8)); // PCR_PID
+      section[position++] = (byte) program[2];
+      section[position++] = (byte) 0xF0; // program_info_length
+      section[position++] = 0;
+      for (int i = 2; i < program.length; i++) {
+        section[position++] = STREAM_TYPE_MPA;
+        section[position++] = (byte) (0xE0 | (program[i] >> 8));
+        section[position++] = (byte) program[i];
+        section[position++] = (byte) 0xF0; // ES_info_length
+        section[position++] = 0;
+      }
+      writeSection(program[1], section);
+    }
+    return this;
+  }
+
+  /**
+   * Writes a PES packet containing MPEG audio frames.
+   *
+   * @param pid The PID of the elementary stream.
+   * @param pts The presentation timestamp of the PES packet, in 90 kHz units.
+   * @param frameCount The number of frames in the PES packet.
+   */
+  public TsStreamBuilder writeMpegAudioPes(int pid, long pts, int frameCount) {
+    byte[] pes = new byte[14 + frameCount * MPEG_AUDIO_FRAME_SIZE];
+    pes[2] = 0x01;
+    pes[3] = (byte) 0xC0; // stream_id
+    // PES_packet_length is left as zero (unbounded).
+    pes[6] = (byte) 0x80;
+    pes[7] = (byte) 0x80; // PTS_DTS_flags
+    pes[8] = 5; // PES_header_data_length
+    pes[9] = (byte) (0x21 | ((pts >> 29) & 0x0E));
+    pes[10] = (byte) (pts >> 22);
+    pes[11] = (byte) (0x01 | ((pts >> 14) & 0xFE));
+    pes[12] = (byte) (pts >> 7);
+    pes[13] = (byte) (0x01 | ((pts << 1) & 0xFE));
+    for (int i = 0; i < frameCount; i++) {
+      int position = 14 + i * MPEG_AUDIO_FRAME_SIZE;
+      pes[position] = (byte) (MPEG_AUDIO_HEADER >> 24);
+      pes[position + 1] = (byte) (MPEG_AUDIO_HEADER >> 16);
+      pes[position + 2] = (byte) (MPEG_AUDIO_HEADER >> 8);
+      pes[position + 3] = (byte) MPEG_AUDIO_HEADER;
+      for (int j = 4; j < MPEG_AUDIO_FRAME_SIZE; j++) {
+        // Arbitrary data that can't be mistaken for a frame header.
+        pes[position + j] = (byte) ((i + j) & 0x7F);
+      }
+    }
+    writePayload(pid, pes);
+    return this;
+  }
+
+  /**
+   * Writes null packets, which should be ignored by the extractor.
+   *
+   * @param count The number of null packets to write.
+   */
+  public TsStreamBuilder writeNullPackets(int count) {
+    for (int i = 0; i < count; i++) {
+      writePayload(NULL_PACKET_PID, new byte[TS_PACKET_SIZE - 4]);
+    }
+    return this;
+  }
+
+  public byte[] build() {
+    return output.toByteArray();
+  }
+
+  private static int writeSectionHeader(byte[] section, int tableId, int tableIdExtension) {
+    int sectionLength = section.length - 3;
+    section[0] = (byte) tableId;
+    section[1] = (byte) (0xB0 | (sectionLength >> 8));
+    section[2] = (byte) sectionLength;
+    section[3] = (byte) (tableIdExtension >> 8);
+    section[4] = (byte) tableIdExtension;
+    section[5] = (byte) 0xC1; // version_number (0), current_next_indicator (1)
+    section[6] = 0; // section_number
+    section[7] = 0; // last_section_number
+    return 8;
+  }
+
+  private void writeSection(int pid, byte[] section) {
+    int crc = Util.crc(section, 0, section.length - 4, 0xFFFFFFFF);
+    section[section.length - 4] = (byte) (crc >> 24);
+    section[section.length - 3] = (byte) (crc >> 16);
+    section[section.length - 2] = (byte) (crc >> 8);
+    section[section.length - 1] = (byte) crc;
+    byte[] payload = new byte[section.length + 1];
+    // pointer_field is zero.
+    System.arraycopy(section, 0, payload, 1, section.length);
+    writePayload(pid, payload);
+  }
+
+  /**
+   * Writes a payload unit in as many packets as are required, using adaptation field stuffing to
+   * fill the last packet.
+   */
+  private void writePayload(int pid, byte[] payload) {
+    int position = 0;
+    while (position < payload.length) {
+      int bytesToWrite = Math.min(TS_PACKET_SIZE - 4, payload.length - position);
+      int stuffingLength = TS_PACKET_SIZE - 4 - bytesToWrite;
+      boolean adaptationFieldExists = stuffingLength > 0;
+      output.write(0x47);
+      output.write((position == 0 ? 0x40 : 0) | (pid >> 8));
+      output.write(pid);
+      output.write((adaptationFieldExists ? 0x30 : 0x10) | continuityCounters[pid]);
+      continuityCounters[pid] = (continuityCounters[pid] + 1) & 0x0F;
+      if (adaptationFieldExists) {
+        // The adaptation field length byte is included in the stuffing.
+        output.write(stuffingLength - 1);
+        if (stuffingLength > 1) {
+          output.write(0); // Adaptation field flags.
+          for (int i = 2; i < stuffingLength; i++) {
+            output.write(0xFF);
+          }
+        }
+      }
+      output.write(payload, position, bytesToWrite);
+      position += bytesToWrite;
+    }
+  }
+
+}
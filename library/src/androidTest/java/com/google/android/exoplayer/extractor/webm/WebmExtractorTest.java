@@ -24,7 +24,9 @@ import com.google.android.exoplayer.ParserException;
 import com.google.android.exoplayer.drm.DrmInitData;
 import com.google.android.exoplayer.drm.DrmInitData.SchemeInitData;
 import com.google.android.exoplayer.extractor.ChunkIndex;
+import com.google.android.exoplayer.extractor.SeekIndexCache;
 import com.google.android.exoplayer.extractor.SeekMap;
+import com.google.android.exoplayer.extractor.SimpleSeekIndexCache;
 import com.google.android.exoplayer.extractor.webm.StreamBuilder.ContentEncodingSettings;
 import com.google.android.exoplayer.testutil.FakeExtractorOutput;
 import com.google.android.exoplayer.testutil.FakeTrackOutput;
@@ -69,6 +71,7 @@ public final class WebmExtractorTest extends InstrumentationTestCase {
   private static final UUID ZERO_UUID = new UUID(0, 0);
   private static final String WEBM_DOC_TYPE = "webm";
   private static final String MATROSKA_DOC_TYPE = "matroska";
+  private static final String TEST_SEEK_INDEX_CACHE_KEY = "http://example.com/test.webm";
 
   private WebmExtractor extractor;
   private FakeExtractorOutput extractorOutput;
@@ -304,6 +307,45 @@ public final class WebmExtractorTest extends InstrumentationTestCase {
     assertIndexUnseekable();
   }
 
+  public void testPrepareCachesCues() throws IOException, InterruptedException {
+    SeekIndexCache seekIndexCache = new SimpleSeekIndexCache(1);
+    extractor = new WebmExtractor(0, seekIndexCache, TEST_SEEK_INDEX_CACHE_KEY);
+    extractor.init(extractorOutput);
+    byte[] data = new StreamBuilder()
+        .setHeader(WEBM_DOC_TYPE)
+        .setInfo(DEFAULT_TIMECODE_SCALE, TEST_DURATION_TIMECODE)
+        .addVp9Track(VIDEO_TRACK_NUMBER, TEST_WIDTH, TEST_HEIGHT, null)
+        .build(3);
+
+    TestUtil.consumeTestData(extractor, data);
+
+    assertIndex(DEFAULT_TIMECODE_SCALE, 3);
+    assertSame(extractorOutput.seekMap, seekIndexCache.get(TEST_SEEK_INDEX_CACHE_KEY, data.length));
+  }
+
+  public void testPrepareNoCuesElementWithCachedCues() throws IOException, InterruptedException {
+    byte[] media = createFrameData(100);
+    byte[] data = new StreamBuilder()
+        .setHeader(WEBM_DOC_TYPE)
+        .setInfo(DEFAULT_TIMECODE_SCALE, TEST_DURATION_TIMECODE)
+        .addVp9Track(VIDEO_TRACK_NUMBER, TEST_WIDTH, TEST_HEIGHT, null)
+        .addSimpleBlockMedia(1 /* trackNumber */, 0 /* clusterTimecode */, 0 /* blockTimecode */,
+            true /* keyframe */, false /* invisible */, media)
+        .build(0);
+    ChunkIndex cachedIndex = new ChunkIndex(new int[] {0}, new long[] {0},
+        new long[] {TEST_DURATION_TIMECODE * 1000}, new long[] {0});
+    SeekIndexCache seekIndexCache = new SimpleSeekIndexCache(1);
+    seekIndexCache.put(TEST_SEEK_INDEX_CACHE_KEY, data.length, cachedIndex);
+    extractor = new WebmExtractor(0, seekIndexCache, TEST_SEEK_INDEX_CACHE_KEY);
+    extractor.init(extractorOutput);
+
+    TestUtil.consumeTestData(extractor, data);
+
+    assertTracksEnded();
+    assertSame(cachedIndex, extractorOutput.seekMap);
+    getTrackOutput(VIDEO_TRACK_NUMBER).assertSampleCount(1);
+  }
+
   public void testAcceptsWebmDocType() throws IOException, InterruptedException {
     byte[] data = new StreamBuilder()
         .setHeader(WEBM_DOC_TYPE)
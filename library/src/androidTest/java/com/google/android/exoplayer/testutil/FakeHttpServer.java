@@ -0,0 +1,391 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.testutil;
+
+import android.util.Base64;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManagerFactory;
+
+/**
+ * A minimal HTTP/1.1 server that runs in the test process and serves byte arrays.
+ * <p>
+ * Connections are kept alive, requests are answered in order, and range requests are supported
+ * unless disabled. The server counts the connections it accepts and the requests it receives, so
+ * that tests can check how clients use connections. The server can also be used as an HTTP proxy
+ * for the URLs it serves.
+ * <p>
+ * A secure server serves HTTPS with a self-signed certificate for {@link #CERTIFICATE_HOST}, which
+ * doesn't match the address from which it's served. Clients can trust the certificate by using
+ * {@link #getClientSslSocketFactory()}.
+ */
+public final class FakeHttpServer {
+
+  /**
+   * The host name for which the certificate of a secure server is valid.
+   */
+  public static final String CERTIFICATE_HOST = "example.com";
+
+  private static final Pattern RANGE_HEADER = Pattern.compile("^bytes=(\\d+)-(\\d*)$");
+  private static final int CHUNK_SIZE = 1000;
+
+  // A PKCS #12 key store holding a self-signed certificate for example.com and its private key.
+  private static final String KEY_STORE =
+      "MIIDbAIBAzCCAyUGCSqGSIb3DQEHAaCCAxYEggMSMIIDDjCB2wYJKoZIhvcNAQcBoIHNBIHKMIHHMIHEBgsqhkiG9w"
+      + "0BDAoBAqB3MHUwKQYKKoZIhvcNAQwBAzAbBBSKCQpHBXZ/kjXOnYmCvCQ+ZqNtRgIDAMNQBEgU4/xzvrWvv8Y9xbif"
+      + "epiYZtPdy/JcMbTALnQpH+m5IjEUn1GZ0FY+a8HL9OQ3Ze46O4pw7fEBolTnWmoVGtyVGdS39kjIOZ4xPDAXBgkqhk"
+      + "iG9w0BCRQxCh4IAHQAZQBzAHQwIQYJKoZIhvcNAQkVMRQEElRpbWUgMTc5MjM0NjAyOTgwODCCAiwGCSqGSIb3DQEH"
+      + "BqCCAh0wggIZAgEAMIICEgYJKoZIhvcNAQcBMCkGCiqGSIb3DQEMAQYwGwQUR6DcnEjOA0U+O8ahI6Aci7hl0IACAw"
+      + "DDUICCAdiujwS9FUHPdPaQdQ6tfB90ENefZUhJceD4tdnaemcz0VCXvQBv9P4zgnX3ocRgk/x7c4uYhH+T/iUKbBPP"
+      + "4gFV0SSsC7uxrWAecypsnAmdGgcWFOgl771Uh4k4HtmnUkrQHV0EQFDikUBnMRDyfi5+gDJkwdudMFwMEaWEQlpe+q"
+      + "3ugKzN0KntjQBpdaiMhMwyRLLQCnG3IwCJeKKuKOqaIcOpMeAH22Z0iXq/lxsUsyW83GgM7dVzGmR5yl46IU2azD2d"
+      + "o5og5x2govz2aUKQAPjNUc+XaGDJ5cxsT8QkB4mqGNm6WzNuWUndm/spsxHVsEsrSOgLJlcONelEBwJYzobcrEYPiU"
+      + "deLMzSEemWKn1SxDwGLhheXmD4y45ZUDa7Q4WUSf3zN3PDjdCz8e5atpqQP8fF/8MvoJJt9M4G0ZyXTm5z8jdWDYi4"
+      + "ry2+CzGN73qMd21P15C7NAg8b99NVDv52KZC/t0Leg0X0DJ3xOo0UJ38MoCWyBc4g/gzXJq5142+CBZ1+uJubVQCPI"
+      + "dy8O52K/NEeyasIrE3q375/AHexI7vTbU4oKoa7je0EuKIPtt17/9n/8ucd142vZ3Rj6QUwgnExaa2xcVnwoosWaXv"
+      + "YbCdpcp8MD4wITAJBgUrDgMCGgUABBR+wy4+lKdk/Q09Bw/KeWZlQww0dgQUEHZIyGSISl1RKKfPK0m1w+Trvk4CAw"
+      + "GGoA==";
+  private static final char[] KEY_STORE_PASSWORD = "password".toCharArray();
+
+  private final boolean secure;
+
+  private final ServerSocket serverSocket;
+  private final Thread acceptThread;
+  private final HashMap<String, byte[]> data;
+  private final HashMap<String, String> redirects;
+  private final List<Socket> sockets;
+
+  private boolean supportsRanges;
+  private boolean chunked;
+  private int responseDelayMs;
+  private int connectionCount;
+  private int requestCount;
+  private int pipelinedRequestCount;
+  private int proxiedRequestCount;
+
+  public FakeHttpServer() throws IOException {
+    this(false);
+  }
+
+  /**
+   * @param secure Whether the server serves HTTPS rather than HTTP.
+   */
+  public FakeHttpServer(boolean secure) throws IOException {
+    this.secure = secure;
+    InetAddress address = InetAddress.getByName("127.0.0.1");
+    serverSocket = secure
+        ? createSslContext().getServerSocketFactory().createServerSocket(0, 50, address)
+        : new ServerSocket(0, 50, address);
+    data = new HashMap<>();
+    redirects = new HashMap<>();
+    sockets = new ArrayList<>();
+    supportsRanges = true;
+    acceptThread = new Thread("FakeHttpServer") {
+      @Override
+      public void run() {
+        acceptConnections();
+      }
+    };
+    acceptThread.start();
+  }
+
+  /**
+   * Returns the URL of a path on the server.
+   */
+  public String getUrl(String path) {
+    return (secure ? "https" : "http") + "://127.0.0.1:" + serverSocket.getLocalPort() + path;
+  }
+
+  /**
+   * Returns an {@link SSLSocketFactory} for clients that trust the certificate of a secure server.
+   */
+  public static SSLSocketFactory getClientSslSocketFactory() throws IOException {
+    return createSslContext().getSocketFactory();
+  }
+
+  /**
+   * Sets the data served for a path.
+   */
+  public synchronized void setData(String path, byte[] data) {
+    this.data.put(path, data);
+  }
+
+  /**
+   * Sets a path to be redirected to another location.
+   */
+  public synchronized void setRedirect(String path, String location) {
+    redirects.put(path, location);
+  }
+
+  /**
+   * Sets whether range requests are supported. If not, the whole of the data is always served.
+   */
+  public synchronized void setSupportsRanges(boolean supportsRanges) {
+    this.supportsRanges = supportsRanges;
+  }
+
+  /**
+   * Sets whether responses use the chunked transfer coding.
+   */
+  public synchronized void setChunked(boolean chunked) {
+    this.chunked = chunked;
+  }
+
+  /**
+   * Sets a delay before each response is written, during which a pipelining client sends its next
+   * request.
+   */
+  public synchronized void setResponseDelayMs(int responseDelayMs) {
+    this.responseDelayMs = responseDelayMs;
+  }
+
+  /**
+   * Returns the number of connections that have been accepted.
+   */
+  public synchronized int getConnectionCount() {
+    return connectionCount;
+  }
+
+  /**
+   * Returns the number of requests that have been received.
+   */
+  public synchronized int getRequestCount() {
+    return requestCount;
+  }
+
+  /**
+   * Returns the number of requests that were received before the response to the preceding
+   * request on the same connection was written.
+   */
+  public synchronized int getPipelinedRequestCount() {
+    return pipelinedRequestCount;
+  }
+
+  /**
+   * Returns the number of requests that were received as a proxy.
+   */
+  public synchronized int getProxiedRequestCount() {
+    return proxiedRequestCount;
+  }
+
+  /**
+   * Closes all open connections, as a server does when connections have been idle for too long.
+   */
+  public synchronized void closeConnections() throws IOException {
+    for (Socket socket : sockets) {
+      socket.close();
+    }
+    sockets.clear();
+  }
+
+  /**
+   * Stops the server and closes all open connections.
+   */
+  public void release() throws IOException, InterruptedException {
+    serverSocket.close();
+    acceptThread.join();
+    closeConnections();
+  }
+
+  private void acceptConnections() {
+    while (true) {
+      final Socket socket;
+      try {
+        socket = serverSocket.accept();
+      } catch (IOException e) {
+        // The server socket has been closed.
+        return;
+      }
+      synchronized (this) {
+        connectionCount++;
+        sockets.add(socket);
+      }
+      new Thread("FakeHttpServer:Connection") {
+        @Override
+        public void run() {
+          try {
+            serveConnection(socket);
+          } catch (IOException e) {
+            // The connection was closed.
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          } finally {
+            try {
+              socket.close();
+            } catch (IOException e) {
+              // Ignore.
+            }
+          }
+        }
+      }.start();
+    }
+  }
+
+  private void serveConnection(Socket socket) throws IOException, InterruptedException {
+    InputStream inputStream = new BufferedInputStream(socket.getInputStream());
+    OutputStream outputStream = new BufferedOutputStream(socket.getOutputStream());
+    while (true) {
+      String requestLine = readLine(inputStream);
+      String[] parts = requestLine.split(" ");
+      String path = parts[1];
+      boolean proxied = !path.startsWith("/");
+      if (proxied) {
+        // A proxy receives the absolute URL.
+        path = new URL(path).getFile();
+      }
+      String rangeHeader = null;
+      int contentLength = 0;
+      String line;
+      while (!(line = readLine(inputStream)).isEmpty()) {
+        String lowerCaseLine = line.toLowerCase(Locale.US);
+        if (lowerCaseLine.startsWith("range:")) {
+          rangeHeader = line.substring(6).trim();
+        } else if (lowerCaseLine.startsWith("content-length:")) {
+          contentLength = Integer.parseInt(line.substring(15).trim());
+        }
+      }
+      for (int i = 0; i < contentLength; i++) {
+        inputStream.read();
+      }
+      int responseDelayMs;
+      synchronized (this) {
+        requestCount++;
+        if (proxied) {
+          proxiedRequestCount++;
+        }
+        responseDelayMs = this.responseDelayMs;
+      }
+      Thread.sleep(responseDelayMs);
+      if (inputStream.available() > 0) {
+        synchronized (this) {
+          pipelinedRequestCount++;
+        }
+      }
+      writeResponse(outputStream, path, rangeHeader);
+      outputStream.flush();
+    }
+  }
+
+  private synchronized void writeResponse(OutputStream outputStream, String path,
+      String rangeHeader) throws IOException {
+    if (redirects.containsKey(path)) {
+      writeHeaders(outputStream, "302 Found", "Location: " + redirects.get(path),
+          "Content-Length: 0");
+      return;
+    }
+    byte[] body = data.get(path);
+    if (body == null) {
+      body = "Not found".getBytes("US-ASCII");
+      writeHeaders(outputStream, "404 Not Found", "Content-Length: " + body.length);
+      outputStream.write(body);
+      return;
+    }
+    Matcher matcher = rangeHeader == null ? null : RANGE_HEADER.matcher(rangeHeader);
+    int start = 0;
+    int end = body.length;
+    String status = "200 OK";
+    String contentRange = null;
+    if (supportsRanges && matcher != null && matcher.matches()) {
+      start = Integer.parseInt(matcher.group(1));
+      if (!matcher.group(2).isEmpty()) {
+        end = Math.min(end, Integer.parseInt(matcher.group(2)) + 1);
+      }
+      status = "206 Partial Content";
+      contentRange = "Content-Range: bytes " + start + "-" + (end - 1) + "/" + body.length;
+    }
+    if (chunked) {
+      writeHeaders(outputStream, status, contentRange, "Transfer-Encoding: chunked");
+      for (int position = start; position < end; position += CHUNK_SIZE) {
+        int length = Math.min(CHUNK_SIZE, end - position);
+        outputStream.write((Integer.toHexString(length) + "\r\n").getBytes("US-ASCII"));
+        outputStream.write(body, position, length);
+        outputStream.write("\r\n".getBytes("US-ASCII"));
+      }
+      outputStream.write("0\r\n\r\n".getBytes("US-ASCII"));
+    } else {
+      writeHeaders(outputStream, status, contentRange, "Content-Length: " + (end - start));
+      outputStream.write(body, start, end - start);
+    }
+  }
+
+  private static SSLContext createSslContext() throws IOException {
+    try {
+      KeyStore keyStore = KeyStore.getInstance("PKCS12");
+      keyStore.load(new ByteArrayInputStream(Base64.decode(KEY_STORE, Base64.DEFAULT)),
+          KEY_STORE_PASSWORD);
+      KeyManagerFactory keyManagerFactory =
+          KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+      keyManagerFactory.init(keyStore, KEY_STORE_PASSWORD);
+      TrustManagerFactory trustManagerFactory =
+          TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+      trustManagerFactory.init(keyStore);
+      SSLContext sslContext = SSLContext.getInstance("TLS");
+      sslContext.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(),
+          null);
+      return sslContext;
+    } catch (GeneralSecurityException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private static void writeHeaders(OutputStream outputStream, String status, String... headers)
+      throws IOException {
+    StringBuilder response = new StringBuilder();
+    response.append("HTTP/1.1 ").append(status).append("\r\n");
+    response.append("Content-Type: video/mp4\r\n");
+    for (String header : headers) {
+      if (header != null) {
+        response.append(header).append("\r\n");
+      }
+    }
+    response.append("\r\n");
+    outputStream.write(response.toString().getBytes("US-ASCII"));
+  }
+
+  private static String readLine(InputStream inputStream) throws IOException {
+    StringBuilder line = new StringBuilder();
+    int c;
+    while ((c = inputStream.read()) != '\n') {
+      if (c == -1) {
+        throw new EOFException();
+      } else if (c != '\r') {
+        line.append((char) c);
+      }
+    }
+    return line.toString();
+  }
+
+}
@@ -78,6 +78,14 @@ public final class FakeTrackOutput implements TrackOutput {
     sampleEncryptionKeys.add(encryptionKey);
   }
 
+  public int getSampleCount() {
+    return sampleTimesUs.size();
+  }
+
+  public long getSampleTimeUs(int index) {
+    return sampleTimesUs.get(index);
+  }
+
   public void assertSampleCount(int count) {
     Assert.assertEquals(count, sampleTimesUs.size());
   }
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the {@link BandwidthEstimator} implementations.
+ */
+public final class BandwidthEstimatorTest extends TestCase {
+
+  private static final long BYTES = 100000;
+
+  public void testSlidingPercentileEstimatesMedian() {
+    BandwidthEstimator estimator = new SlidingPercentileBandwidthEstimator();
+    assertEquals(BandwidthMeter.NO_ESTIMATE, estimator.getBitrateEstimate());
+    estimator.addSample(BYTES, 0, 100);
+    estimator.addSample(BYTES, 0, 200);
+    estimator.addSample(BYTES, 0, 400);
+    assertEquals(BYTES * 8000 / 200, estimator.getBitrateEstimate());
+  }
+
+  public void testEwmaConvergesAndFollowsDrop() {
+    BandwidthEstimator estimator = new EwmaBandwidthEstimator();
+    assertEquals(BandwidthMeter.NO_ESTIMATE, estimator.getBitrateEstimate());
+    estimator.addSample(BYTES, 0, 100);
+    assertEquals(BandwidthMeter.NO_ESTIMATE, estimator.getBitrateEstimate());
+    estimator.addSample(BYTES, 0, 100);
+    // The estimate is unbiased, so a constant throughput is estimated exactly.
+    assertEquals(BYTES * 8000 / 100, estimator.getBitrateEstimate(), 1);
+    for (int i = 0; i < 20; i++) {
+      estimator.addSample(BYTES, 0, 1000);
+    }
+    assertEquals(BYTES * 8000 / 1000, estimator.getBitrateEstimate(), BYTES * 8000 / 1000 / 10);
+  }
+
+  public void testEwmaIgnoresSmallTransfers() {
+    BandwidthEstimator estimator = new EwmaBandwidthEstimator(2000, 5000, 1000, 1000);
+    estimator.addSample(BYTES, 0, 100);
+    estimator.addSample(999, 0, 1);
+    assertEquals(BYTES * 8000 / 100, estimator.getBitrateEstimate(), 1);
+  }
+
+  public void testHarmonicMean() {
+    BandwidthEstimator estimator = new HarmonicMeanBandwidthEstimator(2);
+    assertEquals(BandwidthMeter.NO_ESTIMATE, estimator.getBitrateEstimate());
+    estimator.addSample(BYTES, 0, 100);
+    estimator.addSample(BYTES, 0, 300);
+    assertEquals(BYTES * 8000 / 200, estimator.getBitrateEstimate(), 1);
+    // The oldest sample drops out of the window.
+    estimator.addSample(BYTES, 0, 300);
+    assertEquals(BYTES * 8000 / 300, estimator.getBitrateEstimate(), 1);
+  }
+
+  public void testTimeToFirstByteIsSeparatedFromThroughput() {
+    BandwidthEstimator estimator =
+        new TimeToFirstByteBandwidthEstimator(new HarmonicMeanBandwidthEstimator());
+    assertEquals(BandwidthMeter.NO_ESTIMATE, estimator.getBitrateEstimate());
+    estimator.addSample(BYTES, 100, 200);
+    estimator.addSample(BYTES, 300, 400);
+    // The throughput excluding the time to first byte is constant, but the average time to first
+    // byte has risen to 140ms.
+    assertEquals(BYTES * 8000 / 240, estimator.getBitrateEstimate(), 1);
+  }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.util.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for {@link DefaultBandwidthMeter}.
+ */
+public final class DefaultBandwidthMeterTest extends TestCase {
+
+  private FakeClock clock;
+  private RecordingBandwidthEstimator estimator;
+  private DefaultBandwidthMeter bandwidthMeter;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    clock = new FakeClock();
+    estimator = new RecordingBandwidthEstimator();
+    bandwidthMeter = new DefaultBandwidthMeter(null, null, clock, estimator);
+  }
+
+  public void testNoEstimateBeforeFirstTransfer() {
+    assertEquals(BandwidthMeter.NO_ESTIMATE, bandwidthMeter.getBitrateEstimate());
+  }
+
+  public void testOverlappingTransfersAreSampledTogether() {
+    bandwidthMeter.onTransferStart();
+    clock.timeMs += 100;
+    bandwidthMeter.onBytesTransferred(1000);
+    bandwidthMeter.onTransferStart();
+    clock.timeMs += 100;
+    bandwidthMeter.onBytesTransferred(2000);
+    bandwidthMeter.onTransferEnd();
+    clock.timeMs += 300;
+    bandwidthMeter.onBytesTransferred(3000);
+    bandwidthMeter.onTransferEnd();
+
+    assertEquals(2, estimator.samples.size());
+    assertSample(estimator.samples.get(0), 3000, 100, 200);
+    assertSample(estimator.samples.get(1), 3000, 0, 300);
+    assertEquals(3000 * 8000 / 300, bandwidthMeter.getBitrateEstimate());
+  }
+
+  public void testConnectionTransferListenersAreSampledSeparately() {
+    TransferListener videoListener = bandwidthMeter.createTransferListener();
+    TransferListener audioListener = bandwidthMeter.createTransferListener();
+    videoListener.onTransferStart();
+    clock.timeMs += 100;
+    videoListener.onBytesTransferred(1000);
+    audioListener.onTransferStart();
+    clock.timeMs += 50;
+    audioListener.onBytesTransferred(2000);
+    clock.timeMs += 50;
+    videoListener.onBytesTransferred(4000);
+    audioListener.onTransferEnd();
+    clock.timeMs += 200;
+    videoListener.onTransferEnd();
+
+    assertEquals(2, estimator.samples.size());
+    assertSample(estimator.samples.get(0), 2000, 50, 100);
+    assertSample(estimator.samples.get(1), 5000, 100, 400);
+    assertEquals(5000 * 8000 / 400, bandwidthMeter.getBitrateEstimate());
+  }
+
+  public void testTransferWithoutBytesIsSampled() {
+    TransferListener listener = bandwidthMeter.createTransferListener();
+    listener.onTransferStart();
+    clock.timeMs += 100;
+    listener.onTransferEnd();
+
+    assertEquals(1, estimator.samples.size());
+    assertSample(estimator.samples.get(0), 0, 100, 100);
+  }
+
+  private static void assertSample(long[] sample, long bytes, long timeToFirstByteMs,
+      long elapsedMs) {
+    assertEquals(bytes, sample[0]);
+    assertEquals(timeToFirstByteMs, sample[1]);
+    assertEquals(elapsedMs, sample[2]);
+  }
+
+  private static final class FakeClock implements Clock {
+
+    public long timeMs;
+
+    @Override
+    public long elapsedRealtime() {
+      return timeMs;
+    }
+
+  }
+
+  /**
+   * Records the samples it's passed, and estimates the throughput of the most recent sample.
+   */
+  private static final class RecordingBandwidthEstimator implements BandwidthEstimator {
+
+    public final List<long[]> samples = new ArrayList<>();
+
+    @Override
+    public void addSample(long bytes, long timeToFirstByteMs, long elapsedMs) {
+      samples.add(new long[] {bytes, timeToFirstByteMs, elapsedMs});
+    }
+
+    @Override
+    public long getBitrateEstimate() {
+      long[] sample = samples.get(samples.size() - 1);
+      return sample[0] * 8000 / sample[2];
+    }
+
+  }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import android.net.Uri;
+import android.test.InstrumentationTestCase;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unit tests for {@link DefaultUriDataSource}.
+ */
+public class DefaultUriDataSourceTest extends InstrumentationTestCase {
+
+  private static final Uri HTTP_URI = Uri.parse("https://www.example.com/media.mp4");
+  private static final Map<String, List<String>> RESPONSE_HEADERS =
+      Collections.singletonMap("Content-Type", Collections.singletonList("video/mp4"));
+
+  public void testGetResponseHeadersOfOpenHttpDataSource() throws IOException {
+    DefaultUriDataSource dataSource = new DefaultUriDataSource(
+        getInstrumentation().getContext(), null, new FakeHttpDataSource());
+    assertNull(dataSource.getResponseHeaders());
+    dataSource.open(new DataSpec(HTTP_URI));
+    assertSame(RESPONSE_HEADERS, dataSource.getResponseHeaders());
+    dataSource.close();
+    assertNull(dataSource.getResponseHeaders());
+  }
+
+  public void testGetResponseHeadersOfOpenNonHttpDataSource() throws IOException {
+    DefaultUriDataSource dataSource = new DefaultUriDataSource(
+        getInstrumentation().getContext(), null, new FakeUriDataSource());
+    dataSource.open(new DataSpec(HTTP_URI));
+    assertNull(dataSource.getResponseHeaders());
+    dataSource.close();
+  }
+
+  private static class FakeUriDataSource implements UriDataSource {
+
+    protected boolean opened;
+
+    @Override
+    public long open(DataSpec dataSpec) {
+      opened = true;
+      return 0;
+    }
+
+    @Override
+    public void close() {
+      opened = false;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) {
+      return -1;
+    }
+
+    @Override
+    public String getUri() {
+      return opened ? HTTP_URI.toString() : null;
+    }
+
+  }
+
+  private static final class FakeHttpDataSource extends FakeUriDataSource
+      implements HttpDataSource {
+
+    @Override
+    public void setRequestProperty(String name, String value) {
+      // Do nothing.
+    }
+
+    @Override
+    public void clearRequestProperty(String name) {
+      // Do nothing.
+    }
+
+    @Override
+    public void clearAllRequestProperties() {
+      // Do nothing.
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+      return opened ? RESPONSE_HEADERS : null;
+    }
+
+  }
+
+}
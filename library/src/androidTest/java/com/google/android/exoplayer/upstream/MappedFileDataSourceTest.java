@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import android.net.Uri;
+import android.test.InstrumentationTestCase;
+import android.test.MoreAsserts;
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.extractor.DefaultExtractorInput;
+import com.google.android.exoplayer.testutil.TestUtil;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Unit tests for {@link MappedFileDataSource}.
+ */
+public class MappedFileDataSourceTest extends InstrumentationTestCase {
+
+  private static final byte[] TEST_DATA = TestUtil.buildTestData(1000);
+
+  private File tempFolder;
+  private Uri uri;
+
+  @Override
+  protected void setUp() throws Exception {
+    tempFolder = TestUtil.createTempFolder(getInstrumentation().getContext());
+    File file = new File(tempFolder, "data");
+    FileOutputStream outputStream = new FileOutputStream(file);
+    outputStream.write(TEST_DATA);
+    outputStream.close();
+    uri = Uri.fromFile(file);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    TestUtil.recursiveDelete(tempFolder);
+  }
+
+  public void testRead() throws IOException {
+    MappedFileDataSource dataSource = new MappedFileDataSource();
+    assertEquals(TEST_DATA.length, dataSource.open(new DataSpec(uri)));
+    byte[] target = new byte[TEST_DATA.length];
+    int bytesRead = 0;
+    while (bytesRead < target.length) {
+      bytesRead += dataSource.read(target, bytesRead, 300);
+    }
+    assertEquals(-1, dataSource.read(target, 0, 1));
+    dataSource.close();
+    MoreAsserts.assertEquals(TEST_DATA, target);
+  }
+
+  public void testReadBufferFromOffset() throws IOException {
+    MappedFileDataSource dataSource = new MappedFileDataSource();
+    assertEquals(500, dataSource.open(new DataSpec(uri, 400, 500, null)));
+    ByteBuffer buffer = dataSource.readBuffer(300);
+    assertEquals(300, buffer.remaining());
+    byte[] target = new byte[500];
+    buffer.get(target, 0, 300);
+    buffer = dataSource.readBuffer(300);
+    assertEquals(200, buffer.remaining());
+    buffer.get(target, 300, 200);
+    assertNull(dataSource.readBuffer(300));
+    assertEquals(-1, dataSource.read(target, 0, 1));
+    dataSource.close();
+    MoreAsserts.assertEquals(Arrays.copyOfRange(TEST_DATA, 400, 900), target);
+  }
+
+  public void testOpenBeyondEndOfFileFails() throws IOException {
+    MappedFileDataSource dataSource = new MappedFileDataSource();
+    try {
+      dataSource.open(new DataSpec(uri, TEST_DATA.length + 1, C.LENGTH_UNBOUNDED, null));
+      fail();
+    } catch (FileDataSource.FileDataSourceException e) {
+      // Expected.
+    } finally {
+      dataSource.close();
+    }
+  }
+
+  public void testReadBufferThroughExtractorInput() throws Exception {
+    MappedFileDataSource dataSource = new MappedFileDataSource();
+    dataSource.open(new DataSpec(uri));
+    DefaultExtractorInput input = new DefaultExtractorInput(dataSource, 0, TEST_DATA.length);
+    byte[] target = new byte[TEST_DATA.length];
+    // Peeked data must be read by copying it.
+    input.peekFully(target, 0, 10);
+    assertNull(input.readBuffer(100));
+    input.readFully(target, 0, 10);
+    ByteBuffer buffer = input.readBuffer(100);
+    assertEquals(100, buffer.remaining());
+    buffer.get(target, 10, 100);
+    assertEquals(110, input.getPosition());
+    input.readFully(target, 110, TEST_DATA.length - 110);
+    dataSource.close();
+    MoreAsserts.assertEquals(TEST_DATA, target);
+  }
+
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import android.net.Uri;
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.testutil.FakeHttpServer;
+import com.google.android.exoplayer.testutil.TestUtil;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for {@link ParallelRangeDataSource}, run against a {@link FakeHttpServer}.
+ */
+public final class ParallelRangeDataSourceTest extends TestCase {
+
+  private static final int PART_SIZE = 64 * 1024;
+  private static final int CONNECTION_COUNT = 4;
+
+  private static final byte[] DATA_SMALL = TestUtil.buildTestData(10000);
+  private static final byte[] DATA_LARGE = TestUtil.buildTestData(1000000);
+
+  private FakeHttpServer server;
+  private HttpConnectionPool connectionPool;
+  private ParallelRangeDataSource dataSource;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    server = new FakeHttpServer();
+    server.setData("/small", DATA_SMALL);
+    server.setData("/large", DATA_LARGE);
+    connectionPool = new HttpConnectionPool();
+    DataSource[] upstreams = new DataSource[CONNECTION_COUNT];
+    for (int i = 0; i < CONNECTION_COUNT; i++) {
+      upstreams[i] = new PooledHttpDataSource("test", null, null, connectionPool);
+    }
+    dataSource = new ParallelRangeDataSource(upstreams, PART_SIZE, CONNECTION_COUNT * 2);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    connectionPool.evictAll();
+    server.release();
+    super.tearDown();
+  }
+
+  public void testReadUnboundedData() throws IOException {
+    assertData(DATA_LARGE, read(createDataSpec("/large", 0, C.LENGTH_UNBOUNDED)));
+    // Each of the parts was requested separately. The connection of the first request, which was
+    // for the rest of the data, can't be reused once the first part has been read from it.
+    assertEquals(16, server.getRequestCount());
+    assertTrue(server.getConnectionCount() <= CONNECTION_COUNT + 1);
+  }
+
+  public void testReadBoundedData() throws IOException {
+    assertData(Arrays.copyOfRange(DATA_LARGE, 1000, 301000),
+        read(createDataSpec("/large", 1000, 300000)));
+    assertData(Arrays.copyOfRange(DATA_LARGE, 999000, 1000000),
+        read(createDataSpec("/large", 999000, 1000)));
+    assertEquals(6, server.getRequestCount());
+  }
+
+  public void testSmallDataIsReadDirectly() throws IOException {
+    assertData(DATA_SMALL, read(createDataSpec("/small", 0, C.LENGTH_UNBOUNDED)));
+    assertEquals(1, server.getRequestCount());
+  }
+
+  public void testUpstreamErrorIsThrownByRead() throws IOException {
+    DataSource failingDataSource = new DataSource() {
+      @Override
+      public long open(DataSpec dataSpec) throws IOException {
+        throw new IOException();
+      }
+      @Override
+      public int read(byte[] buffer, int offset, int readLength) {
+        throw new IllegalStateException();
+      }
+      @Override
+      public void close() {
+        // Do nothing.
+      }
+    };
+    DataSource[] upstreams = new DataSource[] {
+        new PooledHttpDataSource("test", null, null, connectionPool), failingDataSource};
+    dataSource = new ParallelRangeDataSource(upstreams, PART_SIZE, 2);
+    try {
+      read(createDataSpec("/large", 0, C.LENGTH_UNBOUNDED));
+      fail();
+    } catch (IOException e) {
+      // Expected.
+    }
+  }
+
+  public void testConnectionCountIsWithinBounds() throws IOException {
+    for (int i = 0; i < 5; i++) {
+      assertData(DATA_LARGE, read(createDataSpec("/large", 0, C.LENGTH_UNBOUNDED)));
+      int connectionCount = dataSource.getConnectionCount();
+      assertTrue(connectionCount >= 1 && connectionCount <= CONNECTION_COUNT);
+    }
+  }
+
+  public void testEachUpstreamOpenIsClosedOnce() throws IOException {
+    FakeRangeDataSource[] upstreams = new FakeRangeDataSource[CONNECTION_COUNT];
+    for (int i = 0; i < CONNECTION_COUNT; i++) {
+      upstreams[i] = new FakeRangeDataSource(DATA_LARGE.length);
+    }
+    dataSource = new ParallelRangeDataSource(upstreams, PART_SIZE, CONNECTION_COUNT * 2);
+    assertEquals(DATA_LARGE.length, read(createDataSpec("/large", 0, C.LENGTH_UNBOUNDED)).length);
+    int openCount = 0;
+    for (FakeRangeDataSource upstream : upstreams) {
+      assertEquals(upstream.openCount, upstream.closeCount);
+      openCount += upstream.openCount;
+    }
+    assertEquals(16, openCount);
+  }
+
+  public void testCloseWaitsForBlockedReadAndClosesUpstreamOnIoThread() throws Exception {
+    FakeRangeDataSource upstream = new FakeRangeDataSource(DATA_LARGE.length);
+    upstream.readTimeoutMs = 200;
+    dataSource = new ParallelRangeDataSource(new DataSource[] {upstream}, PART_SIZE, 2);
+    dataSource.open(createDataSpec("/large", 0, C.LENGTH_UNBOUNDED));
+    assertTrue(upstream.readStartedLatch.await(1, TimeUnit.SECONDS));
+    // Returns once the blocked read has timed out.
+    dataSource.close();
+    assertEquals(1, upstream.openCount);
+    assertEquals(1, upstream.closeCount);
+    assertFalse(upstream.closedDuringRead);
+    assertSame(upstream.readThread, upstream.closeThread);
+  }
+
+  public void testCloseDoesNotWaitForBlockedOpen() throws Exception {
+    FakeRangeDataSource[] upstreams = new FakeRangeDataSource[] {
+        new FakeRangeDataSource(DATA_LARGE.length), new FakeRangeDataSource(DATA_LARGE.length)};
+    // Keep the first I/O thread reading the first part, so that the second loads the next.
+    upstreams[0].readTimeoutMs = 200;
+    upstreams[1].blockOpens = true;
+    dataSource = new ParallelRangeDataSource(upstreams, PART_SIZE, 2);
+    dataSource.open(createDataSpec("/large", 0, C.LENGTH_UNBOUNDED));
+    assertTrue(upstreams[1].openStartedLatch.await(1, TimeUnit.SECONDS));
+    dataSource.close();
+    // The open was still blocked when close() returned.
+    assertEquals(0, upstreams[1].closeCount);
+    upstreams[0].readTimeoutMs = 0;
+    upstreams[1].blockOpens = false;
+    upstreams[1].openReleaseLatch.countDown();
+    // Waits for the upstream source to be closed before using it again.
+    assertEquals(DATA_LARGE.length, read(createDataSpec("/large", 0, C.LENGTH_UNBOUNDED)).length);
+    for (FakeRangeDataSource upstream : upstreams) {
+      assertEquals(upstream.openCount, upstream.closeCount);
+      assertFalse(upstream.closedDuringRead);
+    }
+  }
+
+  private DataSpec createDataSpec(String path, long position, long length) {
+    return new DataSpec(Uri.parse(server.getUrl(path)), position, length, null);
+  }
+
+  private byte[] read(DataSpec dataSpec) throws IOException {
+    try {
+      dataSource.open(dataSpec);
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int bytesRead;
+      while ((bytesRead = dataSource.read(buffer, 0, buffer.length)) != C.RESULT_END_OF_INPUT) {
+        output.write(buffer, 0, bytesRead);
+      }
+      return output.toByteArray();
+    } finally {
+      dataSource.close();
+    }
+  }
+
+  private static void assertData(byte[] expected, byte[] actual) {
+    assertTrue(Arrays.equals(expected, actual));
+  }
+
+  /**
+   * Provides zeros for any range of data of a given length, and records the calls to
+   * {@link #open(DataSpec)} and {@link #close()}. Opens can be made to block until released, and
+   * reads to block until a timeout elapses, both ignoring interrupts as socket operations do.
+   */
+  private static final class FakeRangeDataSource implements DataSource {
+
+    private static final long MAX_OPEN_BLOCK_MS = 10000;
+
+    private final long length;
+    private final CountDownLatch openStartedLatch;
+    private final CountDownLatch openReleaseLatch;
+    private final CountDownLatch readStartedLatch;
+
+    private volatile boolean blockOpens;
+    private volatile long readTimeoutMs;
+    private volatile int openCount;
+    private volatile int closeCount;
+    private volatile boolean reading;
+    private volatile boolean closedDuringRead;
+    private volatile Thread readThread;
+    private volatile Thread closeThread;
+    private long bytesRemaining;
+
+    public FakeRangeDataSource(long length) {
+      this.length = length;
+      openStartedLatch = new CountDownLatch(1);
+      openReleaseLatch = new CountDownLatch(1);
+      readStartedLatch = new CountDownLatch(1);
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) {
+      openCount++;
+      if (blockOpens) {
+        openStartedLatch.countDown();
+        awaitUninterruptibly(openReleaseLatch, MAX_OPEN_BLOCK_MS);
+      }
+      bytesRemaining = dataSpec.length != C.LENGTH_UNBOUNDED ? dataSpec.length
+          : length - dataSpec.position;
+      return bytesRemaining;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+      reading = true;
+      readThread = Thread.currentThread();
+      try {
+        if (readTimeoutMs > 0) {
+          readStartedLatch.countDown();
+          awaitUninterruptibly(new CountDownLatch(1), readTimeoutMs);
+          throw new SocketTimeoutException();
+        }
+        if (bytesRemaining == 0) {
+          return C.RESULT_END_OF_INPUT;
+        }
+        int bytesRead = (int) Math.min(readLength, bytesRemaining);
+        Arrays.fill(buffer, offset, offset + bytesRead, (byte) 0);
+        bytesRemaining -= bytesRead;
+        return bytesRead;
+      } finally {
+        reading = false;
+      }
+    }
+
+    @Override
+    public void close() {
+      closedDuringRead |= reading;
+      closeThread = Thread.currentThread();
+      closeCount++;
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch, long timeoutMs) {
+      long endTimeMs = System.currentTimeMillis() + timeoutMs;
+      long remainingMs;
+      while ((remainingMs = endTimeMs - System.currentTimeMillis()) > 0) {
+        try {
+          if (latch.await(remainingMs, TimeUnit.MILLISECONDS)) {
+            return;
+          }
+        } catch (InterruptedException e) {
+          // Ignore.
+        }
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import android.net.Uri;
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.testutil.FakeHttpServer;
+import com.google.android.exoplayer.testutil.TestUtil;
+import com.google.android.exoplayer.upstream.HttpDataSource.HttpDataSourceException;
+import com.google.android.exoplayer.upstream.HttpDataSource.InvalidResponseCodeException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for {@link PooledHttpDataSource}, run against a {@link FakeHttpServer}.
+ */
+public final class PooledHttpDataSourceTest extends TestCase {
+
+  private static final byte[] DATA_A = TestUtil.buildTestData(10000);
+  private static final byte[] DATA_B = TestUtil.buildTestData(20000);
+  private static final byte[] DATA_LARGE = TestUtil.buildTestData(1000000);
+
+  private FakeHttpServer server;
+  private HttpConnectionPool connectionPool;
+  private PooledHttpDataSource dataSource;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    server = new FakeHttpServer();
+    server.setData("/a", DATA_A);
+    server.setData("/b", DATA_B);
+    server.setData("/large", DATA_LARGE);
+    connectionPool = new HttpConnectionPool();
+    dataSource = new PooledHttpDataSource("test", null, null, connectionPool);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    connectionPool.evictAll();
+    server.release();
+    super.tearDown();
+  }
+
+  public void testConnectionIsReused() throws IOException {
+    assertData(DATA_A, read(createDataSpec("/a", 0, C.LENGTH_UNBOUNDED)));
+    assertData(DATA_B, read(createDataSpec("/b", 0, C.LENGTH_UNBOUNDED)));
+    assertData(DATA_A, read(createDataSpec("/a", 0, C.LENGTH_UNBOUNDED)));
+
+    assertEquals(1, server.getConnectionCount());
+    assertEquals(3, connectionPool.getRequestCount());
+    assertEquals(2, connectionPool.getHitCount());
+    assertEquals(2f / 3, connectionPool.getHitRate());
+  }
+
+  public void testRangeRequests() throws IOException {
+    assertData(Arrays.copyOfRange(DATA_B, 100, 300), read(createDataSpec("/b", 100, 200)));
+    assertData(Arrays.copyOfRange(DATA_B, 19000, 20000),
+        read(createDataSpec("/b", 19000, C.LENGTH_UNBOUNDED)));
+    assertEquals(1, server.getConnectionCount());
+  }
+
+  public void testRangeRequestsWithoutServerSupport() throws IOException {
+    server.setSupportsRanges(false);
+    assertData(Arrays.copyOfRange(DATA_A, 9000, 9200), read(createDataSpec("/a", 9000, 200)));
+    // The rest of the response was short enough to be drained, so the connection was reused.
+    assertData(DATA_A, read(createDataSpec("/a", 0, C.LENGTH_UNBOUNDED)));
+    assertEquals(1, server.getConnectionCount());
+  }
+
+  public void testChunkedResponses() throws IOException {
+    server.setChunked(true);
+    assertData(DATA_A, read(createDataSpec("/a", 0, C.LENGTH_UNBOUNDED)));
+    assertData(Arrays.copyOfRange(DATA_B, 500, 2500), read(createDataSpec("/b", 500, 2000)));
+    assertEquals(1, server.getConnectionCount());
+  }
+
+  public void testUnreadResponseIsNotReused() throws IOException {
+    dataSource.open(createDataSpec("/large", 0, C.LENGTH_UNBOUNDED));
+    dataSource.read(new byte[10], 0, 10);
+    dataSource.close();
+    assertData(DATA_A, read(createDataSpec("/a", 0, C.LENGTH_UNBOUNDED)));
+    assertEquals(2, server.getConnectionCount());
+  }
+
+  public void testRetriesWhenIdleConnectionWasClosed() throws IOException {
+    assertData(DATA_A, read(createDataSpec("/a", 0, C.LENGTH_UNBOUNDED)));
+    server.closeConnections();
+    assertData(DATA_B, read(createDataSpec("/b", 0, C.LENGTH_UNBOUNDED)));
+    assertEquals(2, server.getConnectionCount());
+  }
+
+  public void testPostIsNotRetriedWhenIdleConnectionWasClosed() throws Exception {
+    assertData(DATA_A, read(createDataSpec("/a", 0, C.LENGTH_UNBOUNDED)));
+    server.closeConnections();
+    DataSpec postDataSpec = new DataSpec(Uri.parse(server.getUrl("/a")), new byte[] {1, 2, 3}, 0,
+        0, C.LENGTH_UNBOUNDED, null, 0);
+    try {
+      read(postDataSpec);
+      fail();
+    } catch (HttpDataSourceException e) {
+      // Expected.
+    }
+    assertEquals(1, server.getRequestCount());
+    assertEquals(1, server.getConnectionCount());
+  }
+
+  public void testTimedOutRequestIsNotRetried() throws Exception {
+    connectionPool = new HttpConnectionPool(DefaultHttpDataSource.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+        200, HttpConnectionPool.DEFAULT_KEEP_ALIVE_DURATION_MS,
+        HttpConnectionPool.DEFAULT_MAX_IDLE_CONNECTIONS_PER_HOST);
+    dataSource = new PooledHttpDataSource("test", null, null, connectionPool);
+    assertData(DATA_A, read(createDataSpec("/a", 0, C.LENGTH_UNBOUNDED)));
+    server.setResponseDelayMs(1000);
+    try {
+      read(createDataSpec("/b", 0, C.LENGTH_UNBOUNDED));
+      fail();
+    } catch (HttpDataSourceException e) {
+      assertTrue(e.getCause() instanceof SocketTimeoutException);
+    }
+    Thread.sleep(100);
+    assertEquals(2, server.getRequestCount());
+    assertEquals(1, server.getConnectionCount());
+  }
+
+  public void testOverlongHeaderLineIsRejected() throws IOException {
+    char[] longPath = new char[10000];
+    Arrays.fill(longPath, 'a');
+    server.setRedirect("/redirect", "/" + new String(longPath));
+    try {
+      read(createDataSpec("/redirect", 0, C.LENGTH_UNBOUNDED));
+      fail();
+    } catch (HttpDataSourceException e) {
+      assertTrue(e.getCause() instanceof ProtocolException);
+    }
+  }
+
+  public void testRedirect() throws IOException {
+    server.setRedirect("/redirect", "/a");
+    assertData(DATA_A, read(createDataSpec("/redirect", 0, C.LENGTH_UNBOUNDED)));
+    assertEquals(server.getUrl("/a"), dataSource.getUri());
+    assertEquals(1, server.getConnectionCount());
+  }
+
+  public void testInvalidResponseCode() throws IOException {
+    try {
+      dataSource.open(createDataSpec("/missing", 0, C.LENGTH_UNBOUNDED));
+      fail();
+    } catch (InvalidResponseCodeException e) {
+      assertEquals(404, e.responseCode);
+    }
+    assertData(DATA_A, read(createDataSpec("/a", 0, C.LENGTH_UNBOUNDED)));
+  }
+
+  public void testPipelining() throws IOException {
+    server.setResponseDelayMs(100);
+    DataSpec dataSpecA = createDataSpec("/a", 0, C.LENGTH_UNBOUNDED);
+    DataSpec dataSpecB = createDataSpec("/b", 0, C.LENGTH_UNBOUNDED);
+    DataSpec dataSpecC = createDataSpec("/b", 1000, 1000);
+    dataSource.setNextDataSpec(dataSpecB);
+    assertData(DATA_A, read(dataSpecA));
+    dataSource.setNextDataSpec(dataSpecC);
+    assertData(DATA_B, read(dataSpecB));
+    assertData(Arrays.copyOfRange(DATA_B, 1000, 2000), read(dataSpecC));
+
+    assertEquals(1, server.getConnectionCount());
+    assertEquals(3, server.getRequestCount());
+    assertEquals(2, server.getPipelinedRequestCount());
+  }
+
+  public void testPipeliningReducesIdleGap() throws Exception {
+    server.setResponseDelayMs(100);
+    DataSpec dataSpecA = createDataSpec("/a", 0, C.LENGTH_UNBOUNDED);
+    DataSpec dataSpecB = createDataSpec("/b", 0, C.LENGTH_UNBOUNDED);
+    assertEquals(-1, dataSource.getMeanIdleGapMs());
+    assertData(DATA_A, read(dataSpecA));
+    assertData(DATA_B, read(dataSpecB));
+    assertTrue(dataSource.getMeanIdleGapMs() >= 100);
+
+    dataSource = new PooledHttpDataSource("test", null, null, connectionPool);
+    dataSource.setNextDataSpec(dataSpecB);
+    assertData(DATA_A, read(dataSpecA));
+    // The response to the pipelined request arrives while the first response is being consumed.
+    Thread.sleep(200);
+    assertData(DATA_B, read(dataSpecB));
+    assertTrue(dataSource.getMeanIdleGapMs() < 100);
+  }
+
+  public void testMispredictedPipelinedRequestIsDiscarded() throws IOException {
+    dataSource.setNextDataSpec(createDataSpec("/b", 0, C.LENGTH_UNBOUNDED));
+    assertData(DATA_A, read(createDataSpec("/a", 0, C.LENGTH_UNBOUNDED)));
+    assertData(Arrays.copyOfRange(DATA_A, 10, 20), read(createDataSpec("/a", 10, 10)));
+    assertEquals(2, server.getConnectionCount());
+  }
+
+  public void testWarmUp() throws Exception {
+    connectionPool.warmUp(server.getUrl("/"), 2);
+    while (connectionPool.getIdleConnectionCount() < 2) {
+      Thread.sleep(10);
+    }
+    assertData(DATA_A, read(createDataSpec("/a", 0, C.LENGTH_UNBOUNDED)));
+    assertEquals(2, server.getConnectionCount());
+    assertEquals(1f, connectionPool.getHitRate());
+  }
+
+  public void testWarmUpStopsAtMaxIdleConnections() throws Exception {
+    connectionPool = new HttpConnectionPool(DefaultHttpDataSource.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+        DefaultHttpDataSource.DEFAULT_READ_TIMEOUT_MILLIS,
+        HttpConnectionPool.DEFAULT_KEEP_ALIVE_DURATION_MS, 2);
+    connectionPool.warmUp(server.getUrl("/"), 5);
+    while (connectionPool.getIdleConnectionCount() < 2) {
+      Thread.sleep(10);
+    }
+    Thread.sleep(100);
+    assertEquals(2, connectionPool.getIdleConnectionCount());
+    assertEquals(2, server.getConnectionCount());
+  }
+
+  public void testProxiedUrlIsNotLoadedFromPool() throws Exception {
+    ProxySelector defaultProxySelector = ProxySelector.getDefault();
+    // The server acts as its own proxy.
+    final Proxy proxy = new Proxy(Proxy.Type.HTTP,
+        new InetSocketAddress("127.0.0.1", Uri.parse(server.getUrl("/")).getPort()));
+    ProxySelector.setDefault(new ProxySelector() {
+      @Override
+      public List<Proxy> select(URI uri) {
+        return Collections.singletonList(proxy);
+      }
+
+      @Override
+      public void connectFailed(URI uri, SocketAddress address, IOException e) {
+        // Do nothing.
+      }
+    });
+    try {
+      connectionPool.warmUp(server.getUrl("/"), 2);
+      assertData(DATA_A, read(createDataSpec("/a", 0, C.LENGTH_UNBOUNDED)));
+      assertData(Arrays.copyOfRange(DATA_B, 100, 300), read(createDataSpec("/b", 100, 200)));
+    } finally {
+      ProxySelector.setDefault(defaultProxySelector);
+    }
+    assertEquals(2, server.getProxiedRequestCount());
+    assertEquals(0, connectionPool.getRequestCount());
+    assertEquals(0, connectionPool.getIdleConnectionCount());
+  }
+
+  public void testHttpsRejectsCertificateForOtherHost() throws Exception {
+    // The certificate is trusted, but it's for a different host than the one connected to.
+    useSecureServer(HttpsURLConnection.getDefaultHostnameVerifier());
+    try {
+      dataSource.open(createDataSpec("/a", 0, C.LENGTH_UNBOUNDED));
+      fail();
+    } catch (HttpDataSourceException e) {
+      assertTrue(e.getCause() instanceof SSLPeerUnverifiedException);
+    } finally {
+      dataSource.close();
+    }
+    assertEquals(0, connectionPool.getIdleConnectionCount());
+  }
+
+  public void testHttpsWithVerifiedHost() throws Exception {
+    final String[] verifiedHost = new String[1];
+    useSecureServer(new HostnameVerifier() {
+      @Override
+      public boolean verify(String hostname, SSLSession session) {
+        verifiedHost[0] = hostname;
+        return true;
+      }
+    });
+    assertData(DATA_A, read(createDataSpec("/a", 0, C.LENGTH_UNBOUNDED)));
+    assertData(DATA_B, read(createDataSpec("/b", 0, C.LENGTH_UNBOUNDED)));
+    assertEquals("127.0.0.1", verifiedHost[0]);
+    assertEquals(1, server.getConnectionCount());
+  }
+
+  private void useSecureServer(HostnameVerifier hostnameVerifier) throws Exception {
+    connectionPool.evictAll();
+    server.release();
+    server = new FakeHttpServer(true);
+    server.setData("/a", DATA_A);
+    server.setData("/b", DATA_B);
+    connectionPool = new HttpConnectionPool(DefaultHttpDataSource.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+        DefaultHttpDataSource.DEFAULT_READ_TIMEOUT_MILLIS,
+        HttpConnectionPool.DEFAULT_KEEP_ALIVE_DURATION_MS,
+        HttpConnectionPool.DEFAULT_MAX_IDLE_CONNECTIONS_PER_HOST,
+        FakeHttpServer.getClientSslSocketFactory(), hostnameVerifier);
+    dataSource = new PooledHttpDataSource("test", null, null, connectionPool);
+  }
+
+  private DataSpec createDataSpec(String path, long position, long length) {
+    return new DataSpec(Uri.parse(server.getUrl(path)), position, length, null);
+  }
+
+  private byte[] read(DataSpec dataSpec) throws IOException {
+    try {
+      dataSource.open(dataSpec);
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int bytesRead;
+      while ((bytesRead = dataSource.read(buffer, 0, buffer.length)) != C.RESULT_END_OF_INPUT) {
+        output.write(buffer, 0, bytesRead);
+      }
+      return output.toByteArray();
+    } finally {
+      dataSource.close();
+    }
+  }
+
+  private static void assertData(byte[] expected, byte[] actual) {
+    assertTrue(Arrays.equals(expected, actual));
+  }
+
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import android.net.Uri;
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.testutil.FakeDataSource;
+import com.google.android.exoplayer.testutil.TestUtil;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link ReadAheadDataSource}.
+ */
+public class ReadAheadDataSourceTest extends TestCase {
+
+  private static final int BUFFER_SIZE = 100;
+  private static final int BUFFER_COUNT = 3;
+  private static final Uri TEST_URI = Uri.parse("http://www.google.com");
+
+  public void testReadAll() throws IOException {
+    byte[] data = TestUtil.buildTestData(1000);
+    FakeDataSource upstream = new FakeDataSource.Builder()
+        .appendReadData(Arrays.copyOfRange(data, 0, 150))
+        .appendReadData(Arrays.copyOfRange(data, 150, 160))
+        .appendReadData(Arrays.copyOfRange(data, 160, 1000))
+        .build();
+    ReadAheadDataSource dataSource = new ReadAheadDataSource(upstream, BUFFER_SIZE, BUFFER_COUNT);
+    assertEquals(1000, dataSource.open(new DataSpec(TEST_URI)));
+    assertTrue(Arrays.equals(data, readToEnd(dataSource, 37)));
+    dataSource.close();
+    assertEquals(1000, dataSource.getBytesLoaded());
+    assertEquals(1000, dataSource.getBytesConsumed());
+  }
+
+  public void testReopenAtPosition() throws IOException {
+    byte[] data = TestUtil.buildTestData(1000);
+    FakeDataSource upstream = new FakeDataSource.Builder().appendReadData(data).build();
+    ReadAheadDataSource dataSource = new ReadAheadDataSource(upstream, BUFFER_SIZE, BUFFER_COUNT);
+    dataSource.open(new DataSpec(TEST_URI));
+    byte[] buffer = new byte[10];
+    assertEquals(10, dataSource.read(buffer, 0, buffer.length));
+    // Close whilst the I/O thread may still be reading ahead.
+    dataSource.close();
+    dataSource.open(new DataSpec(TEST_URI, 500, C.LENGTH_UNBOUNDED, null));
+    assertTrue(Arrays.equals(Arrays.copyOfRange(data, 500, 1000), readToEnd(dataSource, 64)));
+    dataSource.close();
+  }
+
+  public void testUpstreamErrorFollowsData() throws IOException {
+    byte[] data = TestUtil.buildTestData(250);
+    FakeDataSource upstream = new FakeDataSource.Builder()
+        .appendReadData(data)
+        .appendReadError(new IOException("Test"))
+        .appendReadData(new byte[10])
+        .build();
+    ReadAheadDataSource dataSource = new ReadAheadDataSource(upstream, BUFFER_SIZE, BUFFER_COUNT);
+    dataSource.open(new DataSpec(TEST_URI));
+    byte[] buffer = new byte[data.length + 10];
+    int position = 0;
+    try {
+      while (true) {
+        int bytesRead = dataSource.read(buffer, position, buffer.length - position);
+        assertTrue(bytesRead != C.RESULT_END_OF_INPUT);
+        position += bytesRead;
+      }
+    } catch (IOException e) {
+      assertEquals("Test", e.getMessage());
+    }
+    assertEquals(data.length, position);
+    assertTrue(Arrays.equals(data, Arrays.copyOf(buffer, position)));
+    dataSource.close();
+  }
+
+  public void testReadAheadIsBounded() throws Exception {
+    CountingDataSource upstream = new CountingDataSource(100000);
+    ReadAheadDataSource dataSource = new ReadAheadDataSource(upstream, BUFFER_SIZE, BUFFER_COUNT);
+    dataSource.open(new DataSpec(TEST_URI));
+    assertTrue(upstream.bytesReadLatch.await(1, TimeUnit.SECONDS));
+    // Give the I/O thread time to read further, if it were to do so.
+    Thread.sleep(50);
+    assertEquals(BUFFER_SIZE * BUFFER_COUNT, dataSource.getBytesLoaded());
+    byte[] buffer = new byte[BUFFER_SIZE];
+    assertEquals(BUFFER_SIZE, dataSource.read(buffer, 0, BUFFER_SIZE));
+    dataSource.close();
+    assertTrue(dataSource.getBytesLoaded() <= BUFFER_SIZE * (BUFFER_COUNT + 1));
+  }
+
+  public void testCloseWaitsForReadAndClosesUpstreamOnIoThread() throws Exception {
+    TimeoutDataSource upstream = new TimeoutDataSource();
+    ReadAheadDataSource dataSource = new ReadAheadDataSource(upstream, BUFFER_SIZE, BUFFER_COUNT);
+    dataSource.open(new DataSpec(TEST_URI));
+    assertTrue(upstream.readStartedLatch.await(1, TimeUnit.SECONDS));
+    // Returns once the blocked read has timed out.
+    dataSource.close();
+    assertEquals(1, upstream.closeCount);
+    assertFalse(upstream.closedDuringRead);
+    assertSame(upstream.readThread, upstream.closeThread);
+    assertEquals(0, dataSource.getBytesLoaded());
+  }
+
+  private static byte[] readToEnd(DataSource dataSource, int readLength) throws IOException {
+    byte[] data = new byte[0];
+    byte[] buffer = new byte[readLength];
+    int bytesRead;
+    while ((bytesRead = dataSource.read(buffer, 0, readLength)) != C.RESULT_END_OF_INPUT) {
+      int length = data.length;
+      data = Arrays.copyOf(data, length + bytesRead);
+      System.arraycopy(buffer, 0, data, length, bytesRead);
+    }
+    return data;
+  }
+
+  /**
+   * Provides zeros, and counts down a latch once the read-ahead limit has been read.
+   */
+  private static final class CountingDataSource implements DataSource {
+
+    private final long length;
+    private final CountDownLatch bytesReadLatch;
+
+    private long bytesRead;
+
+    public CountingDataSource(long length) {
+      this.length = length;
+      bytesReadLatch = new CountDownLatch(1);
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) {
+      bytesRead = 0;
+      return length;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) {
+      if (bytesRead == length) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      int bytesToRead = (int) Math.min(readLength, length - bytesRead);
+      Arrays.fill(buffer, offset, offset + bytesToRead, (byte) 0);
+      bytesRead += bytesToRead;
+      if (bytesRead >= BUFFER_SIZE * BUFFER_COUNT) {
+        bytesReadLatch.countDown();
+      }
+      return bytesToRead;
+    }
+
+    @Override
+    public void close() {
+      // Do nothing.
+    }
+
+  }
+
+  /**
+   * Blocks each read until a timeout elapses, ignoring interrupts as a socket read does, and
+   * records how the source is closed.
+   */
+  private static final class TimeoutDataSource implements DataSource {
+
+    private static final long READ_TIMEOUT_MS = 200;
+
+    private final CountDownLatch readStartedLatch;
+
+    private volatile boolean reading;
+    private volatile Thread readThread;
+    private volatile Thread closeThread;
+    private volatile boolean closedDuringRead;
+    private volatile int closeCount;
+
+    public TimeoutDataSource() {
+      readStartedLatch = new CountDownLatch(1);
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) {
+      return C.LENGTH_UNBOUNDED;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+      reading = true;
+      readThread = Thread.currentThread();
+      readStartedLatch.countDown();
+      long endTimeMs = System.currentTimeMillis() + READ_TIMEOUT_MS;
+      long remainingMs;
+      while ((remainingMs = endTimeMs - System.currentTimeMillis()) > 0) {
+        try {
+          Thread.sleep(remainingMs);
+        } catch (InterruptedException e) {
+          // Ignore.
+        }
+      }
+      reading = false;
+      throw new SocketTimeoutException();
+    }
+
+    @Override
+    public void close() {
+      closedDuringRead |= reading;
+      closeThread = Thread.currentThread();
+      closeCount++;
+    }
+
+  }
+
+}
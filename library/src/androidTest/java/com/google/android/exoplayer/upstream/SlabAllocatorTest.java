@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link SlabAllocator}.
+ */
+public class SlabAllocatorTest extends TestCase {
+
+  private static final int ALLOCATION_SIZE = 16;
+  private static final int SLAB_ALLOCATION_COUNT = 4;
+
+  private SlabAllocator allocator;
+
+  @Override
+  protected void setUp() {
+    allocator = new SlabAllocator(ALLOCATION_SIZE, SLAB_ALLOCATION_COUNT);
+  }
+
+  public void testAllocateDistinctAllocations() {
+    Allocation[] allocations = allocate(10);
+    Map<Allocation, Boolean> distinctAllocations = new IdentityHashMap<>();
+    for (Allocation allocation : allocations) {
+      distinctAllocations.put(allocation, true);
+      assertTrue(allocation.translateOffset(ALLOCATION_SIZE) <= allocation.data.length);
+    }
+    assertEquals(10, distinctAllocations.size());
+    assertEquals(10 * ALLOCATION_SIZE, allocator.getTotalBytesAllocated());
+    allocator.release(allocations);
+    assertEquals(0, allocator.getTotalBytesAllocated());
+  }
+
+  public void testReleasedAllocationsAreReused() {
+    Allocation[] allocations = allocate(SLAB_ALLOCATION_COUNT);
+    allocator.release(allocations[1]);
+    assertSame(allocations[1], allocator.allocate());
+    allocator.release(allocations);
+    Map<Allocation, Boolean> reallocated = new IdentityHashMap<>();
+    for (Allocation allocation : allocate(SLAB_ALLOCATION_COUNT)) {
+      reallocated.put(allocation, true);
+    }
+    for (Allocation allocation : allocations) {
+      assertTrue(reallocated.containsKey(allocation));
+    }
+  }
+
+  public void testTrimDiscardsUnusedSlabs() {
+    Allocation[] allocations = allocate(3 * SLAB_ALLOCATION_COUNT);
+    // Release all allocations, apart from one in the second slab.
+    Allocation retained = allocations[SLAB_ALLOCATION_COUNT];
+    for (Allocation allocation : allocations) {
+      if (allocation != retained) {
+        allocator.release(allocation);
+      }
+    }
+    allocator.trim(0);
+    // Only the slab with an allocation in use remains.
+    Allocation[] reallocated = allocate(SLAB_ALLOCATION_COUNT - 1);
+    for (Allocation allocation : reallocated) {
+      assertSame(retained.data, allocation.data);
+    }
+    assertNotSame(retained.data, allocator.allocate().data);
+  }
+
+  public void testTrimRetainsTargetSize() {
+    allocator.release(allocate(3 * SLAB_ALLOCATION_COUNT));
+    allocator.trim(SLAB_ALLOCATION_COUNT * ALLOCATION_SIZE + 1);
+    Map<byte[], Boolean> slabs = new IdentityHashMap<>();
+    for (Allocation allocation : allocate(2 * SLAB_ALLOCATION_COUNT)) {
+      slabs.put(allocation.data, true);
+    }
+    assertEquals(2, slabs.size());
+  }
+
+  public void testReleaseForeignAllocationFails() {
+    allocate(1);
+    try {
+      allocator.release(new Allocation(new byte[ALLOCATION_SIZE], 0));
+      fail();
+    } catch (IllegalArgumentException e) {
+      // Expected.
+    }
+  }
+
+  public void testReleaseAllocationOfOtherAllocatorFails() {
+    allocate(1);
+    Allocation allocation = new SlabAllocator(ALLOCATION_SIZE).allocate();
+    try {
+      allocator.release(allocation);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // Expected.
+    }
+  }
+
+  public void testBlockWhileTotalBytesAllocatedExceeds() throws Exception {
+    final Allocation[] allocations = allocate(2);
+    final CountDownLatch unblocked = new CountDownLatch(1);
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          allocator.blockWhileTotalBytesAllocatedExceeds(ALLOCATION_SIZE);
+          unblocked.countDown();
+        } catch (InterruptedException e) {
+          // Do nothing.
+        }
+      }
+    };
+    thread.start();
+    assertFalse(unblocked.await(50, TimeUnit.MILLISECONDS));
+    allocator.release(allocations[0]);
+    assertTrue(unblocked.await(1, TimeUnit.SECONDS));
+  }
+
+  public void testConcurrentAllocateAndRelease() throws Exception {
+    final int threadCount = 4;
+    final int iterations = 10000;
+    final Map<Allocation, Boolean> inUse =
+        Collections.synchronizedMap(new IdentityHashMap<Allocation, Boolean>());
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    ArrayList<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < threadCount; i++) {
+      Thread thread = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int j = 0; j < iterations; j++) {
+              Allocation[] allocations = new Allocation[1 + j % 5];
+              for (int k = 0; k < allocations.length; k++) {
+                allocations[k] = allocator.allocate();
+                assertNull(inUse.put(allocations[k], true));
+              }
+              for (Allocation allocation : allocations) {
+                inUse.remove(allocation);
+              }
+              if (j % 2 == 0) {
+                allocator.release(allocations);
+              } else {
+                for (Allocation allocation : allocations) {
+                  allocator.release(allocation);
+                }
+              }
+              if (j % 1000 == 0) {
+                allocator.trim(0);
+              }
+            }
+          } catch (Throwable e) {
+            failure.set(e);
+          }
+        }
+      };
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertNull(failure.get());
+    assertEquals(0, allocator.getTotalBytesAllocated());
+  }
+
+  private Allocation[] allocate(int count) {
+    Allocation[] allocations = new Allocation[count];
+    for (int i = 0; i < count; i++) {
+      allocations[i] = allocator.allocate();
+    }
+    return allocations;
+  }
+
+}
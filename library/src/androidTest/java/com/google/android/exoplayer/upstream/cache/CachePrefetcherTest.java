@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+import android.net.Uri;
+import android.test.InstrumentationTestCase;
+import android.test.MoreAsserts;
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.testutil.TestUtil;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unit tests for {@link CachePrefetcher}.
+ */
+public class CachePrefetcherTest extends InstrumentationTestCase {
+
+  private static final int SEGMENT_LENGTH = 1000;
+  private static final int SEGMENT_COUNT = 5;
+
+  private File cacheDir;
+  private SimpleCache cache;
+  private FakeServer server;
+
+  @Override
+  protected void setUp() throws Exception {
+    cacheDir = TestUtil.createTempFolder(getInstrumentation().getContext());
+    cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    server = new FakeServer();
+    for (int i = 0; i < SEGMENT_COUNT; i++) {
+      server.files.put(getUri(i), TestUtil.buildTestData(SEGMENT_LENGTH));
+    }
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    TestUtil.recursiveDelete(cacheDir);
+  }
+
+  public void testPrefetch() throws Exception {
+    TestProgressListener listener = new TestProgressListener();
+    assertTrue(newPrefetcher(Long.MAX_VALUE).prefetch(getSegments(), listener));
+    for (int i = 0; i < SEGMENT_COUNT; i++) {
+      assertCached(i);
+    }
+    assertEquals(SEGMENT_COUNT, listener.completedSegmentCount);
+    assertEquals(SEGMENT_COUNT * SEGMENT_LENGTH, listener.bytesDownloaded);
+    assertEquals(SEGMENT_COUNT * SEGMENT_LENGTH, server.bytesRead.get());
+  }
+
+  public void testPrefetchSkipsCachedSegments() throws Exception {
+    newPrefetcher(Long.MAX_VALUE).prefetch(getSegments(), null);
+    server.bytesRead.set(0);
+
+    TestProgressListener listener = new TestProgressListener();
+    assertTrue(newPrefetcher(Long.MAX_VALUE).prefetch(getSegments(), listener));
+    assertEquals(SEGMENT_COUNT, listener.completedSegmentCount);
+    assertEquals(0, listener.bytesDownloaded);
+    assertEquals(0, server.bytesRead.get());
+  }
+
+  public void testPrefetchResumesPartiallyCachedSegment() throws Exception {
+    // Cache the first half of the first segment.
+    CacheDataSource dataSource = new CacheDataSource(cache, server.createDataSource(), false,
+        false);
+    dataSource.open(new DataSpec(getUri(0), 0, SEGMENT_LENGTH / 2, getKey(0)));
+    byte[] buffer = new byte[SEGMENT_LENGTH];
+    while (dataSource.read(buffer, 0, buffer.length) != C.RESULT_END_OF_INPUT) {}
+    dataSource.close();
+    server.bytesRead.set(0);
+
+    TestProgressListener listener = new TestProgressListener();
+    assertTrue(newPrefetcher(Long.MAX_VALUE).prefetch(getSegments().subList(0, 1), listener));
+    assertCached(0);
+    assertEquals(SEGMENT_LENGTH / 2, listener.bytesDownloaded);
+    assertEquals(SEGMENT_LENGTH / 2, server.bytesRead.get());
+  }
+
+  public void testPrefetchRespectsBudget() throws Exception {
+    TestProgressListener listener = new TestProgressListener();
+    CachePrefetcher prefetcher = new CachePrefetcher(cache, server, Long.MAX_VALUE, 1,
+        2 * SEGMENT_LENGTH + SEGMENT_LENGTH / 2);
+    assertFalse(prefetcher.prefetch(getSegments(), listener));
+    assertCached(0);
+    assertCached(1);
+    assertNull(cache.getCachedSpans(getKey(2)));
+    assertEquals(2, listener.completedSegmentCount);
+    assertEquals(2 * SEGMENT_LENGTH, server.bytesRead.get());
+  }
+
+  public void testPrefetchSegmentOfUnknownLength() throws Exception {
+    List<DataSpec> segments = new ArrayList<>();
+    segments.add(new DataSpec(getUri(0), 0, C.LENGTH_UNBOUNDED, getKey(0)));
+    assertTrue(newPrefetcher(Long.MAX_VALUE).prefetch(segments, null));
+    assertCached(0);
+    assertEquals(SEGMENT_LENGTH, cache.getContentLength(getKey(0)));
+    // The length was resolved by the request from which the segment was downloaded.
+    assertEquals(1, server.openCount.get());
+    assertEquals(SEGMENT_LENGTH, server.bytesRead.get());
+
+    // Reading the segment with an unknown length is served from the cache.
+    server.bytesRead.set(0);
+    CacheDataSource dataSource = new CacheDataSource(cache, server.createDataSource(), false,
+        false);
+    assertEquals(SEGMENT_LENGTH, dataSource.open(segments.get(0)));
+    byte[] data = new byte[SEGMENT_LENGTH];
+    int position = 0;
+    int bytesRead;
+    while ((bytesRead = dataSource.read(data, position, data.length - position))
+        != C.RESULT_END_OF_INPUT) {
+      position += bytesRead;
+    }
+    dataSource.close();
+    assertEquals(SEGMENT_LENGTH, position);
+    MoreAsserts.assertEquals(server.files.get(getUri(0)), data);
+    assertEquals(0, server.bytesRead.get());
+  }
+
+  public void testPrefetchSegmentOfUnknownLengthRespectsBudget() throws Exception {
+    List<DataSpec> segments = new ArrayList<>();
+    segments.add(new DataSpec(getUri(0), 0, C.LENGTH_UNBOUNDED, getKey(0)));
+    assertFalse(newPrefetcher(SEGMENT_LENGTH / 2).prefetch(segments, null));
+    assertFalse(cache.isCached(getKey(0), 0, 1));
+    assertEquals(0, server.bytesRead.get());
+    // The resolved length is recorded.
+    assertEquals(SEGMENT_LENGTH, cache.getContentLength(getKey(0)));
+  }
+
+  public void testPrefetchFailure() throws Exception {
+    server.files.remove(getUri(2));
+    CachePrefetcher prefetcher = new CachePrefetcher(cache, server, Long.MAX_VALUE, 1,
+        Long.MAX_VALUE);
+    try {
+      prefetcher.prefetch(getSegments(), null);
+      fail();
+    } catch (IOException e) {
+      // Expected.
+    }
+    assertCached(0);
+    assertCached(1);
+    // Repeating the prefetch resumes from the failed segment.
+    server.files.put(getUri(2), TestUtil.buildTestData(SEGMENT_LENGTH));
+    server.bytesRead.set(0);
+    assertTrue(prefetcher.prefetch(getSegments(), null));
+    assertEquals((SEGMENT_COUNT - 2) * SEGMENT_LENGTH, server.bytesRead.get());
+  }
+
+  private CachePrefetcher newPrefetcher(long maxBytes) {
+    return new CachePrefetcher(cache, server, Long.MAX_VALUE, CachePrefetcher.DEFAULT_PARALLELISM,
+        maxBytes);
+  }
+
+  private void assertCached(int segmentIndex) {
+    assertTrue(cache.isCached(getKey(segmentIndex), 0, SEGMENT_LENGTH));
+  }
+
+  private static List<DataSpec> getSegments() {
+    List<DataSpec> segments = new ArrayList<>();
+    for (int i = 0; i < SEGMENT_COUNT; i++) {
+      segments.add(new DataSpec(getUri(i), 0, SEGMENT_LENGTH, getKey(i)));
+    }
+    return segments;
+  }
+
+  private static Uri getUri(int segmentIndex) {
+    return Uri.parse("http://www.google.com/segment" + segmentIndex);
+  }
+
+  private static String getKey(int segmentIndex) {
+    return "segment" + segmentIndex;
+  }
+
+  private static final class TestProgressListener implements CachePrefetcher.ProgressListener {
+
+    public int completedSegmentCount;
+    public long bytesDownloaded;
+
+    @Override
+    public void onProgress(CachePrefetcher prefetcher, int completedSegmentCount,
+        int segmentCount, long bytesDownloaded) {
+      this.completedSegmentCount = completedSegmentCount;
+      this.bytesDownloaded = bytesDownloaded;
+    }
+
+  }
+
+  /**
+   * Serves byte ranges of files, creating a separate {@link DataSource} for each downloading
+   * thread. Lengths of requests of unknown length are resolved.
+   */
+  private static final class FakeServer implements CachePrefetcher.DataSourceFactory {
+
+    public final HashMap<Uri, byte[]> files;
+    public final AtomicLong bytesRead;
+    public final AtomicInteger openCount;
+
+    public FakeServer() {
+      files = new HashMap<>();
+      bytesRead = new AtomicLong();
+      openCount = new AtomicInteger();
+    }
+
+    @Override
+    public DataSource createDataSource() {
+      return new FakeServerDataSource(this);
+    }
+
+  }
+
+  private static final class FakeServerDataSource implements DataSource {
+
+    private final FakeServer server;
+
+    private byte[] data;
+    private int position;
+    private int limit;
+
+    public FakeServerDataSource(FakeServer server) {
+      this.server = server;
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+      server.openCount.incrementAndGet();
+      byte[] file;
+      synchronized (server) {
+        file = server.files.get(dataSpec.uri);
+      }
+      if (file == null) {
+        throw new IOException("Not found: " + dataSpec.uri);
+      }
+      data = file;
+      position = (int) dataSpec.position;
+      limit = dataSpec.length == C.LENGTH_UNBOUNDED ? file.length
+          : (int) (dataSpec.position + dataSpec.length);
+      return limit - position;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+      if (position == limit) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      int bytesRead = Math.min(readLength, limit - position);
+      System.arraycopy(data, position, buffer, offset, bytesRead);
+      position += bytesRead;
+      server.bytesRead.addAndGet(bytesRead);
+      return bytesRead;
+    }
+
+    @Override
+    public void close() {
+      data = null;
+    }
+
+  }
+
+}
@@ -5,6 +5,7 @@ import android.test.MoreAsserts;
 import android.util.SparseArray;
 import com.google.android.exoplayer.C;
 import com.google.android.exoplayer.testutil.TestUtil;
+import com.google.android.exoplayer.util.Util;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -208,6 +209,264 @@ public class CachedContentIndexTest extends InstrumentationTestCase {
     assertStoredAndLoadedEqual(index, new CachedContentIndex(cacheDir, key));
   }
 
+  public void testStoreAppendsToJournalAfterLoad() throws Exception {
+    index.addNew(new CachedContent(5, "key1", 10));
+    index.store();
+    File indexFile = new File(cacheDir, CachedContentIndex.FILE_NAME);
+    File journalFile = new File(cacheDir, CachedContentIndex.JOURNAL_FILE_NAME);
+    long indexFileLength = indexFile.length();
+    assertFalse(journalFile.exists());
+
+    CachedContentIndex index2 = new CachedContentIndex(cacheDir);
+    index2.load();
+    index2.add("key2");
+    index2.setContentLength("key1", 20);
+    index2.store();
+
+    // The changes are appended to the journal, and the index file is unchanged.
+    assertEquals(indexFileLength, indexFile.length());
+    assertTrue(journalFile.length() > 0);
+    assertLoadedEqual(index2, new CachedContentIndex(cacheDir));
+  }
+
+  public void testJournalReplayWithRemoval() throws Exception {
+    index.addNew(new CachedContent(5, "key1", 10));
+    index.store();
+
+    CachedContentIndex index2 = new CachedContentIndex(cacheDir);
+    index2.load();
+    index2.add("key2");
+    index2.removeEmpty("key1");
+    index2.store();
+
+    CachedContentIndex index3 = new CachedContentIndex(cacheDir);
+    index3.load();
+    assertNull(index3.get("key1"));
+    assertNotNull(index3.get("key2"));
+    assertEquals("key2", index3.getKeyForId(index2.get("key2").id));
+    assertNull(index3.getKeyForId(5));
+  }
+
+  public void testJournalWithTornRecord() throws Exception {
+    index.addNew(new CachedContent(5, "key1", 10));
+    index.store();
+    CachedContentIndex index2 = new CachedContentIndex(cacheDir);
+    index2.load();
+    index2.add("key2");
+    index2.store();
+    index2.add("key3");
+    index2.store();
+
+    // Simulate a crash whilst the last record was being appended.
+    File journalFile = new File(cacheDir, CachedContentIndex.JOURNAL_FILE_NAME);
+    byte[] journal = readFile(journalFile);
+    FileOutputStream fos = new FileOutputStream(journalFile);
+    fos.write(journal, 0, journal.length - 3);
+    fos.close();
+
+    CachedContentIndex index3 = new CachedContentIndex(cacheDir);
+    index3.load();
+    assertNotNull(index3.get("key1"));
+    assertNotNull(index3.get("key2"));
+    assertNull(index3.get("key3"));
+
+    // The next store compacts the journal into the index file.
+    index3.add("key4");
+    index3.store();
+    assertFalse(journalFile.exists());
+    assertLoadedEqual(index3, new CachedContentIndex(cacheDir));
+  }
+
+  public void testJournalReplayedOnCompactedIndex() throws Exception {
+    index.addNew(new CachedContent(5, "key1", 10));
+    index.store();
+    CachedContentIndex index2 = new CachedContentIndex(cacheDir);
+    index2.load();
+    index2.removeEmpty("key1");
+    index2.addNew(new CachedContent(5, "key2", 20));
+    index2.store();
+    File journalFile = new File(cacheDir, CachedContentIndex.JOURNAL_FILE_NAME);
+    byte[] journal = readFile(journalFile);
+
+    // Simulate a crash after compaction, but before the journal was deleted.
+    index2.store();
+    CachedContentIndex index3 = new CachedContentIndex(cacheDir);
+    index3.addNew(new CachedContent(5, "key2", 20));
+    index3.store();
+    FileOutputStream fos = new FileOutputStream(journalFile);
+    fos.write(journal);
+    fos.close();
+
+    CachedContentIndex index4 = new CachedContentIndex(cacheDir);
+    index4.load();
+    assertEquals(1, index4.getAll().size());
+    assertEquals("key2", index4.getKeyForId(5));
+    assertEquals(20, index4.getContentLength("key2"));
+  }
+
+  public void testJournalDiscardedAfterInterruptedCompaction() throws Exception {
+    index.store();
+    CachedContentIndex index2 = new CachedContentIndex(cacheDir);
+    index2.load();
+    index2.addNew(new CachedContent(5, "key1", 10));
+    index2.store();
+    index2.removeEmpty("key1");
+    index2.store();
+    // The id of the removed content is reused.
+    index2.addNew(new CachedContent(5, "key2", 20));
+    File journalFile = new File(cacheDir, CachedContentIndex.JOURNAL_FILE_NAME);
+    byte[] journal = readFile(journalFile);
+    for (int i = 0; i < 1000 && journalFile.exists(); i++) {
+      journal = readFile(journalFile);
+      index2.add("key" + (i + 3));
+      index2.store();
+    }
+    assertFalse(journalFile.exists());
+
+    // Simulate a crash after compaction, but before the journal was deleted.
+    FileOutputStream fos = new FileOutputStream(journalFile);
+    fos.write(journal);
+    fos.close();
+
+    CachedContentIndex index3 = new CachedContentIndex(cacheDir);
+    assertLoadedEqual(index2, index3);
+    assertNull(index3.get("key1"));
+    assertEquals("key2", index3.getKeyForId(5));
+    assertEquals(20, index3.getContentLength("key2"));
+    // The stale journal is discarded rather than appended to.
+    assertFalse(journalFile.exists());
+    index3.add("key0");
+    index3.store();
+    assertLoadedEqual(index3, new CachedContentIndex(cacheDir));
+  }
+
+  public void testJournalCompaction() throws Exception {
+    index.store();
+    index.add("key0");
+    index.store();
+    CachedContentIndex index2 = new CachedContentIndex(cacheDir);
+    index2.load();
+    File journalFile = new File(cacheDir, CachedContentIndex.JOURNAL_FILE_NAME);
+    boolean compacted = false;
+    for (int i = 1; i < 1000 && !compacted; i++) {
+      index2.add("key" + i);
+      index2.store();
+      compacted = !journalFile.exists();
+    }
+    assertTrue(compacted);
+    assertLoadedEqual(index2, new CachedContentIndex(cacheDir));
+  }
+
+  public void testEncryptedJournal() throws Exception {
+    byte[] key = "Bar12345Bar12345".getBytes(C.UTF8_NAME); // 128 bit key
+    byte[] key2 = "Foo12345Foo12345".getBytes(C.UTF8_NAME); // 128 bit key
+    CachedContentIndex index = new CachedContentIndex(cacheDir, key);
+    index.addNew(new CachedContent(5, "key1", 10));
+    index.store();
+    CachedContentIndex index2 = new CachedContentIndex(cacheDir, key);
+    index2.load();
+    index2.add("key2");
+    index2.store();
+    assertTrue(new File(cacheDir, CachedContentIndex.JOURNAL_FILE_NAME).exists());
+
+    assertLoadedEqual(index2, new CachedContentIndex(cacheDir, key));
+    CachedContentIndex index3 = new CachedContentIndex(cacheDir, key2);
+    index3.load();
+    assertEquals(0, index3.getAll().size());
+  }
+
+  public void testIndexedSpans() throws Exception {
+    CachedContentIndex index = new CachedContentIndex(cacheDir, null, true);
+    index.load();
+    assertFalse(index.hasIndexedSpans());
+    int id = index.assignIdForKey("key1");
+    SimpleCacheSpan span1 = SimpleCacheSpan.createIndexedEntry(cacheDir, id, "key1", 0, 10, 30);
+    SimpleCacheSpan span2 = SimpleCacheSpan.createIndexedEntry(cacheDir, id, "key1", 10, 20, 40);
+    CachedContent cachedContent = index.addSpan(span1);
+    index.addSpan(span2);
+    index.store();
+
+    // Touch and remove spans, storing the changes in the journal.
+    CachedContentIndex index2 = new CachedContentIndex(cacheDir, null, true);
+    index2.load();
+    assertTrue(index2.hasIndexedSpans());
+    assertSpansEqual(cachedContent, index2.get("key1"));
+    CachedContent cachedContent2 = index2.get("key1");
+    SimpleCacheSpan touchedSpan = SimpleCacheSpan.createIndexedEntry(cacheDir, cachedContent2.id,
+        "key1", 0, 10, 50);
+    assertTrue(index2.replaceSpan(cachedContent2, cachedContent2.getSpan(0), touchedSpan));
+    assertTrue(index2.removeSpan(cachedContent2, cachedContent2.getSpan(10)));
+    index2.store();
+    assertTrue(new File(cacheDir, CachedContentIndex.JOURNAL_FILE_NAME).exists());
+
+    CachedContentIndex index3 = new CachedContentIndex(cacheDir, null, true);
+    index3.load();
+    assertTrue(index3.hasIndexedSpans());
+    assertSpansEqual(cachedContent2, index3.get("key1"));
+    assertEquals(1, index3.get("key1").getSpans().size());
+    assertEquals(50, index3.get("key1").getSpan(0).lastAccessTimestamp);
+
+    // Without span indexing, the spans are ignored and the index rewritten in version 1 format.
+    CachedContentIndex index4 = new CachedContentIndex(cacheDir);
+    index4.load();
+    assertFalse(index4.hasIndexedSpans());
+    assertTrue(index4.get("key1").isEmpty());
+    index4.store();
+    assertFalse(new File(cacheDir, CachedContentIndex.JOURNAL_FILE_NAME).exists());
+    assertEquals(1, readFile(new File(cacheDir, CachedContentIndex.FILE_NAME))[3]);
+  }
+
+  public void testIndexedSpansNotLoadedFromV1Index() throws Exception {
+    FileOutputStream fos = new FileOutputStream(new File(cacheDir, CachedContentIndex.FILE_NAME));
+    fos.write(testIndexV1File);
+    fos.close();
+
+    CachedContentIndex index = new CachedContentIndex(cacheDir, null, true);
+    index.load();
+    assertFalse(index.hasIndexedSpans());
+    assertEquals(2, index.getAll().size());
+    index.store();
+
+    CachedContentIndex index2 = new CachedContentIndex(cacheDir, null, true);
+    index2.load();
+    assertTrue(index2.hasIndexedSpans());
+    assertLoadedEqual(index, new CachedContentIndex(cacheDir, null, true));
+  }
+
+  private static void assertSpansEqual(CachedContent cachedContent,
+      CachedContent cachedContent2) {
+    Object[] spans = cachedContent.getSpans().toArray();
+    Object[] spans2 = cachedContent2.getSpans().toArray();
+    assertEquals(spans.length, spans2.length);
+    for (int i = 0; i < spans.length; i++) {
+      SimpleCacheSpan span = (SimpleCacheSpan) spans[i];
+      SimpleCacheSpan span2 = (SimpleCacheSpan) spans2[i];
+      assertEquals(span.position, span2.position);
+      assertEquals(span.length, span2.length);
+      assertEquals(span.lastAccessTimestamp, span2.lastAccessTimestamp);
+      assertEquals(span.file, span2.file);
+    }
+  }
+
+  private void assertLoadedEqual(CachedContentIndex index, CachedContentIndex index2) {
+    index2.load();
+    Set<String> keys = index.getKeys();
+    assertEquals(keys, index2.getKeys());
+    for (String key : keys) {
+      assertEquals(index.getContentLength(key), index2.getContentLength(key));
+      assertEquals(index.get(key).id, index2.get(key).id);
+    }
+  }
+
+  private static byte[] readFile(File file) throws IOException {
+    FileInputStream fis = new FileInputStream(file);
+    try {
+      return Util.toByteArray(fis);
+    } finally {
+      fis.close();
+    }
+  }
+
   private void assertStoredAndLoadedEqual(CachedContentIndex index, CachedContentIndex index2)
       throws IOException {
     index.addNew(new CachedContent(5, "key1", 10));
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link FrequencySketch}.
+ */
+public class FrequencySketchTest extends TestCase {
+
+  private static final int MAX_ITEM_COUNT = 16;
+  private static final int MAX_FREQUENCY = 15;
+  private static final int ITEM = "item".hashCode();
+
+  private FrequencySketch sketch;
+
+  @Override
+  public void setUp() {
+    sketch = new FrequencySketch(MAX_ITEM_COUNT);
+  }
+
+  public void testFrequencyOfUnseenItemIsZero() {
+    assertEquals(0, sketch.frequency(ITEM));
+  }
+
+  public void testFrequencyCountsIncrements() {
+    for (int i = 1; i <= 5; i++) {
+      sketch.increment(ITEM);
+      assertEquals(i, sketch.frequency(ITEM));
+    }
+    assertEquals(0, sketch.frequency(ITEM + 1));
+  }
+
+  public void testFrequencySaturates() {
+    for (int i = 0; i < 2 * MAX_FREQUENCY; i++) {
+      sketch.increment(ITEM);
+    }
+    assertEquals(MAX_FREQUENCY, sketch.frequency(ITEM));
+  }
+
+  public void testFrequenciesAreHalvedPeriodically() {
+    for (int i = 0; i < MAX_FREQUENCY; i++) {
+      sketch.increment(ITEM);
+    }
+    // Count other items until the counters are halved, which happens after a number of additions
+    // proportional to the size of the sketch.
+    int incrementCount = 0;
+    while (sketch.frequency(ITEM) == MAX_FREQUENCY && incrementCount < 100 * MAX_ITEM_COUNT) {
+      sketch.increment(incrementCount++);
+    }
+    assertEquals(MAX_FREQUENCY / 2, sketch.frequency(ITEM));
+    assertTrue(incrementCount > MAX_ITEM_COUNT);
+    assertTrue(incrementCount <= 10 * MAX_ITEM_COUNT);
+  }
+
+  public void testFrequentItemIsDistinguishedFromInfrequentItems() {
+    for (int i = 0; i < MAX_ITEM_COUNT; i++) {
+      sketch.increment(i);
+    }
+    for (int i = 0; i < 10; i++) {
+      sketch.increment(ITEM);
+    }
+    for (int i = 0; i < MAX_ITEM_COUNT; i++) {
+      assertTrue(sketch.frequency(i) < sketch.frequency(ITEM));
+    }
+  }
+
+}
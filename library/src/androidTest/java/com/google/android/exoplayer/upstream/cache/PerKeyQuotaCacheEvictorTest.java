@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+import com.google.android.exoplayer.testutil.FakeCache;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link PerKeyQuotaCacheEvictor}.
+ */
+public class PerKeyQuotaCacheEvictorTest extends TestCase {
+
+  private static final int MAX_BYTES = 10;
+  private static final int MAX_BYTES_PER_KEY = 4;
+
+  private FakeCache cache;
+
+  @Override
+  public void setUp() {
+    cache = new FakeCache(new PerKeyQuotaCacheEvictor(MAX_BYTES, MAX_BYTES_PER_KEY));
+  }
+
+  public void testQuotaEvictsLeastRecentlyUsedSpanOfKey() {
+    cache.read("other", 0, 1);
+    for (int i = 0; i <= MAX_BYTES_PER_KEY; i++) {
+      cache.read("key", i, 1);
+    }
+    // The span of the other key is used less recently, but the key is within its quota.
+    assertFalse(cache.isCached("key", 0, 1));
+    assertTrue(cache.isCached("key", 1, MAX_BYTES_PER_KEY));
+    assertTrue(cache.isCached("other", 0, 1));
+    assertEquals(MAX_BYTES_PER_KEY + 1, cache.getCacheSpace());
+  }
+
+  public void testTouchedSpanIsEvictedLast() {
+    for (int i = 0; i < MAX_BYTES_PER_KEY; i++) {
+      cache.read("key", i, 1);
+    }
+    assertTrue(cache.read("key", 0, 1));
+    cache.read("key", MAX_BYTES_PER_KEY, 1);
+    assertTrue(cache.isCached("key", 0, 1));
+    assertFalse(cache.isCached("key", 1, 1));
+  }
+
+  public void testCacheEvictsLeastRecentlyUsedSpanOfAnyKey() {
+    for (int i = 0; i < MAX_BYTES_PER_KEY; i++) {
+      cache.read("a", i, 1);
+      cache.read("b", i, 1);
+    }
+    cache.read("c", 0, 1);
+    cache.read("c", 1, 1);
+    assertEquals(MAX_BYTES, cache.getCacheSpace());
+    cache.read("c", 2, 1);
+    assertFalse(cache.isCached("a", 0, 1));
+    assertTrue(cache.isCached("b", 0, MAX_BYTES_PER_KEY));
+    assertTrue(cache.isCached("c", 0, 3));
+    assertEquals(MAX_BYTES, cache.getCacheSpace());
+  }
+
+  public void testSpanLargerThanQuotaEvictsKey() {
+    cache.read("key", 0, 1);
+    cache.read("other", 0, 1);
+    cache.read("key", 1, MAX_BYTES_PER_KEY);
+    assertFalse(cache.isCached("key", 0, 1));
+    assertTrue(cache.isCached("other", 0, 1));
+  }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+import com.google.android.exoplayer.testutil.FakeCache;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link SegmentedLruCacheEvictor}.
+ */
+public class SegmentedLruCacheEvictorTest extends TestCase {
+
+  private static final int MAX_BYTES = 4;
+  private static final float PROTECTED_FRACTION = 0.5f;
+
+  private FakeCache cache;
+
+  @Override
+  public void setUp() {
+    cache = new FakeCache(new SegmentedLruCacheEvictor(MAX_BYTES, PROTECTED_FRACTION));
+  }
+
+  public void testEvictsLeastRecentlyAddedSpanFirst() {
+    for (int i = 0; i <= MAX_BYTES; i++) {
+      assertFalse(cache.read("key", i, 1));
+    }
+    assertFalse(cache.isCached("key", 0, 1));
+    assertTrue(cache.isCached("key", 1, MAX_BYTES));
+    assertEquals(MAX_BYTES, cache.getCacheSpace());
+  }
+
+  public void testSpanReadAgainIsNotEvictedByScan() {
+    cache.read("hot", 0, 1);
+    assertTrue(cache.read("hot", 0, 1));
+    for (int i = 0; i < 10; i++) {
+      cache.read("scan", i, 1);
+    }
+    assertTrue(cache.isCached("hot", 0, 1));
+    // Only the probationary segment is used by the scan.
+    assertTrue(cache.isCached("scan", 7, 3));
+    assertFalse(cache.isCached("scan", 6, 1));
+    assertEquals(MAX_BYTES, cache.getCacheSpace());
+  }
+
+  public void testProtectedSpansAreDemotedWhenProtectedSegmentIsFull() {
+    for (int i = 0; i < 3; i++) {
+      cache.read("key", i, 1);
+    }
+    // Protect the spans. The protected segment holds two, so the first is demoted.
+    for (int i = 0; i < 3; i++) {
+      assertTrue(cache.read("key", i, 1));
+    }
+    cache.read("other", 0, 1);
+    cache.read("other", 1, 1);
+    // The demoted span is the only probationary span when the cache becomes full.
+    assertFalse(cache.isCached("key", 0, 1));
+    assertTrue(cache.isCached("key", 1, 2));
+    assertTrue(cache.isCached("other", 0, 2));
+  }
+
+  public void testProtectedSpansAreEvictedOnceProbationIsEmpty() {
+    cache.read("key", 0, 1);
+    cache.read("key", 0, 1);
+    cache.read("key", 1, 1);
+    cache.read("key", 1, 1);
+    cache.read("large", 0, 3);
+    // Both probation and the least recently used protected span had to be evicted.
+    assertFalse(cache.isCached("key", 0, 1));
+    assertTrue(cache.isCached("key", 1, 1));
+    assertTrue(cache.isCached("large", 0, 3));
+    assertEquals(MAX_BYTES, cache.getCacheSpace());
+  }
+
+}
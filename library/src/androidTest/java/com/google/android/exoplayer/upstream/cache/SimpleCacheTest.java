@@ -27,6 +27,8 @@ import java.io.IOException;
 import java.util.NavigableSet;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Unit tests for {@link SimpleCache}.
@@ -34,6 +36,7 @@ import java.util.Set;
 public class SimpleCacheTest extends InstrumentationTestCase {
 
   private static final String KEY_1 = "key1";
+  private static final String KEY_2 = "key2";
 
   private File cacheDir;
 
@@ -159,6 +162,142 @@ public class SimpleCacheTest extends InstrumentationTestCase {
     assertEquals(0, cacheDir.listFiles().length);
   }
 
+  public void testStartReadWriteDoesNotBlockOnOtherKeys() throws Exception {
+    final SimpleCache simpleCache = getSimpleCache();
+    CacheSpan cacheSpan1 = simpleCache.startReadWrite(KEY_1, 0);
+
+    final CountDownLatch acquiredLatch = new CountDownLatch(1);
+    final CacheSpan[] cacheSpan2 = new CacheSpan[1];
+    new Thread() {
+      @Override
+      public void run() {
+        try {
+          cacheSpan2[0] = simpleCache.startReadWrite(KEY_2, 0);
+          acquiredLatch.countDown();
+        } catch (Exception e) {
+          // Do nothing. The test will fail on the latch timeout.
+        }
+      }
+    }.start();
+
+    assertTrue(acquiredLatch.await(5, TimeUnit.SECONDS));
+    assertFalse(cacheSpan2[0].isCached);
+    simpleCache.releaseHoleSpan(cacheSpan2[0]);
+    simpleCache.releaseHoleSpan(cacheSpan1);
+  }
+
+  public void testStartReadWriteBlocksUntilKeyIsWritten() throws Exception {
+    final SimpleCache simpleCache = getSimpleCache();
+    CacheSpan cacheSpan1 = simpleCache.startReadWrite(KEY_1, 0);
+
+    final CountDownLatch acquiredLatch = new CountDownLatch(1);
+    final CacheSpan[] cacheSpan2 = new CacheSpan[1];
+    new Thread() {
+      @Override
+      public void run() {
+        try {
+          cacheSpan2[0] = simpleCache.startReadWrite(KEY_1, 0);
+          acquiredLatch.countDown();
+        } catch (Exception e) {
+          // Do nothing. The test will fail on the latch timeout.
+        }
+      }
+    }.start();
+
+    assertFalse(acquiredLatch.await(100, TimeUnit.MILLISECONDS));
+    addCache(simpleCache, KEY_1, 0, 15);
+    assertTrue(acquiredLatch.await(5, TimeUnit.SECONDS));
+    assertCachedDataReadCorrect(cacheSpan2[0]);
+    simpleCache.releaseHoleSpan(cacheSpan1);
+  }
+
+  public void testConcurrentReadersAndWriters() throws Exception {
+    final SimpleCache simpleCache = getSimpleCache();
+    final int threadCount = 4;
+    final int keysPerThread = 10;
+    final CountDownLatch doneLatch = new CountDownLatch(threadCount);
+    final Throwable[] error = new Throwable[1];
+    for (int i = 0; i < threadCount; i++) {
+      final int threadIndex = i;
+      new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int j = 0; j < keysPerThread; j++) {
+              String key = "key" + threadIndex + "_" + j;
+              CacheSpan holeSpan = simpleCache.startReadWrite(key, 0);
+              addCache(simpleCache, key, 0, 15);
+              simpleCache.releaseHoleSpan(holeSpan);
+              assertTrue(simpleCache.isCached(key, 0, 15));
+              assertCachedDataReadCorrect(simpleCache.startReadWrite(key, 0));
+            }
+          } catch (Throwable e) {
+            error[0] = e;
+          } finally {
+            doneLatch.countDown();
+          }
+        }
+      }.start();
+    }
+
+    assertTrue(doneLatch.await(30, TimeUnit.SECONDS));
+    assertNull(error[0]);
+    assertEquals(threadCount * keysPerThread, simpleCache.getKeys().size());
+    assertEquals(threadCount * keysPerThread * 15, simpleCache.getCacheSpace());
+  }
+
+  public void testReloadCacheWithIndexedSpans() throws Exception {
+    SimpleCache simpleCache = getIndexedSimpleCache(null);
+    CacheSpan cacheSpan1 = simpleCache.startReadWrite(KEY_1, 0);
+    addCache(simpleCache, KEY_1, 0, 15);
+    addCache(simpleCache, KEY_1, 15, 10);
+    simpleCache.releaseHoleSpan(cacheSpan1);
+
+    // Reload cache
+    TestInitializationListener listener = new TestInitializationListener();
+    simpleCache = getIndexedSimpleCache(listener);
+    assertCachedDataReadCorrect(simpleCache.startReadWrite(KEY_1, 0));
+    assertTrue(listener.readyLatch.await(5, TimeUnit.SECONDS));
+    assertTrue(listener.completedLatch.await(5, TimeUnit.SECONDS));
+    assertTrue(listener.readyElapsedMs <= listener.completedElapsedMs);
+    assertEquals(25, simpleCache.getCacheSpace());
+    assertTrue(simpleCache.isCached(KEY_1, 0, 25));
+  }
+
+  public void testReconcileCacheDirectoryWithIndexedSpans() throws Exception {
+    SimpleCache simpleCache = getIndexedSimpleCache(null);
+    CacheSpan cacheSpan1 = simpleCache.startReadWrite(KEY_1, 0);
+    addCache(simpleCache, KEY_1, 0, 15);
+    addCache(simpleCache, KEY_1, 15, 10);
+    simpleCache.releaseHoleSpan(cacheSpan1);
+    CacheSpan cacheSpan2 = simpleCache.startReadWrite(KEY_2, 0);
+    addCache(simpleCache, KEY_2, 0, 15);
+    simpleCache.releaseHoleSpan(cacheSpan2);
+
+    // Simulate a touch that wasn't stored in the index, and a deleted file.
+    NavigableSet<CacheSpan> spans = simpleCache.getCachedSpans(KEY_1);
+    CacheSpan touchedSpan = spans.first();
+    long touchTimestamp = touchedSpan.lastAccessTimestamp + 1;
+    String touchedFileName = touchedSpan.file.getName().replace(
+        "." + touchedSpan.lastAccessTimestamp + ".", "." + touchTimestamp + ".");
+    assertTrue(touchedSpan.file.renameTo(new File(cacheDir, touchedFileName)));
+    assertTrue(spans.last().file.delete());
+    assertTrue(new File(cacheDir, "unrecognized.file").createNewFile());
+
+    TestInitializationListener listener = new TestInitializationListener();
+    simpleCache = getIndexedSimpleCache(listener);
+    assertTrue(listener.completedLatch.await(5, TimeUnit.SECONDS));
+    assertEquals(30, simpleCache.getCacheSpace());
+    assertEquals(1, simpleCache.getCachedSpans(KEY_1).size());
+    assertCachedDataReadCorrect(simpleCache.startReadWrite(KEY_1, 0));
+    assertCachedDataReadCorrect(simpleCache.startReadWrite(KEY_2, 0));
+    assertFalse(new File(cacheDir, "unrecognized.file").exists());
+  }
+
+  private SimpleCache getIndexedSimpleCache(SimpleCache.InitializationListener listener) {
+    return new SimpleCache(cacheDir, new NoOpCacheEvictor(), null, true, listener);
+  }
+
   private SimpleCache getSimpleCache() {
     return new SimpleCache(cacheDir, new NoOpCacheEvictor());
   }
@@ -190,6 +329,28 @@ public class SimpleCacheTest extends InstrumentationTestCase {
     }
   }
 
+  private static final class TestInitializationListener
+      implements SimpleCache.InitializationListener {
+
+    public final CountDownLatch readyLatch = new CountDownLatch(1);
+    public final CountDownLatch completedLatch = new CountDownLatch(1);
+    public volatile long readyElapsedMs;
+    public volatile long completedElapsedMs;
+
+    @Override
+    public void onCacheReady(SimpleCache cache, long elapsedMs) {
+      readyElapsedMs = elapsedMs;
+      readyLatch.countDown();
+    }
+
+    @Override
+    public void onInitializationCompleted(SimpleCache cache, long elapsedMs) {
+      completedElapsedMs = elapsedMs;
+      completedLatch.countDown();
+    }
+
+  }
+
   private static byte[] generateData(String key, int position, int length) {
     byte[] bytes = new byte[length];
     new Random((long) (key.hashCode() ^ position)).nextBytes(bytes);
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+import com.google.android.exoplayer.testutil.FakeCache;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link TinyLfuCacheEvictor}.
+ */
+public class TinyLfuCacheEvictorTest extends TestCase {
+
+  private static final int MAX_BYTES = 10;
+  private static final float WINDOW_FRACTION = 0.2f;
+  private static final int WINDOW_BYTES = 2;
+  private static final int HOT_SPAN_COUNT = 5;
+  private static final int SCAN_SPAN_COUNT = 50;
+
+  private FakeCache cache;
+
+  @Override
+  public void setUp() {
+    cache = new FakeCache(new TinyLfuCacheEvictor(MAX_BYTES, MAX_BYTES, WINDOW_FRACTION));
+  }
+
+  public void testScanDoesNotEvictFrequentlyReadSpans() {
+    for (int i = 0; i < 5; i++) {
+      for (int j = 0; j < HOT_SPAN_COUNT; j++) {
+        assertEquals(i > 0, cache.read("hot", j, 1));
+      }
+    }
+    for (int i = 0; i < SCAN_SPAN_COUNT; i++) {
+      assertFalse(cache.read("scan", i, 1));
+    }
+    assertTrue(cache.isCached("hot", 0, HOT_SPAN_COUNT));
+    assertEquals(MAX_BYTES, cache.getCacheSpace());
+  }
+
+  public void testWindowRetainsRecentlyAddedSpans() {
+    for (int i = 0; i < SCAN_SPAN_COUNT; i++) {
+      cache.read("scan", i, 1);
+    }
+    assertTrue(cache.isCached("scan", SCAN_SPAN_COUNT - WINDOW_BYTES, WINDOW_BYTES));
+    assertEquals(MAX_BYTES, cache.getCacheSpace());
+  }
+
+  public void testSpanReadInWindowIsAdmittedOverLessFrequentSpans() {
+    for (int i = 0; i < MAX_BYTES; i++) {
+      cache.read("cold", i, 1);
+    }
+    cache.read("new", 0, 1);
+    // Build up frequency whilst the span is in the window.
+    for (int i = 0; i < 3; i++) {
+      assertTrue(cache.read("new", 0, 1));
+    }
+    for (int i = 0; i < SCAN_SPAN_COUNT; i++) {
+      cache.read("scan", i, 1);
+    }
+    assertTrue(cache.isCached("new", 0, 1));
+    for (int i = 0; i < MAX_BYTES; i++) {
+      assertFalse(cache.isCached("cold", i, 1));
+    }
+  }
+
+  public void testCandidateIsRejectedWhenLessFrequentThanVictim() {
+    for (int i = 0; i < MAX_BYTES - WINDOW_BYTES; i++) {
+      cache.read("hot", i, 1);
+      cache.read("hot", i, 1);
+    }
+    cache.read("scan", 0, 1);
+    cache.read("scan", 1, 1);
+    // The cache is full, so the candidate leaving the window must be admitted or evicted.
+    cache.read("scan", 2, 1);
+    assertFalse(cache.isCached("scan", 0, 1));
+    assertTrue(cache.isCached("hot", 0, MAX_BYTES - WINDOW_BYTES));
+    assertTrue(cache.isCached("scan", 1, 2));
+  }
+
+}
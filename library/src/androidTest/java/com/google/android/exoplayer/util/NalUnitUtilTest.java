@@ -16,7 +16,10 @@
 package com.google.android.exoplayer.util;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 import junit.framework.TestCase;
 
 /**
@@ -110,6 +113,82 @@ public class NalUnitUtilTest extends TestCase {
     assertPrefixFlagsCleared(prefixFlags);
   }
 
+  public void testFindNalUnitInLongData() {
+    // Place the prefix at each alignment, so that it's found within, and across the boundary
+    // between, words of the data.
+    for (int position = 0; position < 296; position++) {
+      byte[] data = new byte[300];
+      Arrays.fill(data, (byte) 0xFF);
+      data[position] = 0;
+      data[position + 1] = 0;
+      data[position + 2] = 1;
+      int expectedResult = position + 3 < data.length ? position : data.length;
+      assertEquals(expectedResult, NalUnitUtil.findNalUnit(data, 0, data.length, null));
+      // Zero and one bytes that aren't part of a prefix shouldn't be found.
+      Arrays.fill(data, 0, position, (byte) 1);
+      assertEquals(expectedResult, NalUnitUtil.findNalUnit(data, 0, data.length, null));
+    }
+  }
+
+  public void testFindNalUnitMatchesByteByByteSearch() {
+    Random random = new Random(0);
+    for (int i = 0; i < 200; i++) {
+      byte[] data = buildRandomNalData(random, 1 + random.nextInt(2000));
+      int startOffset = random.nextInt(data.length);
+      int endOffset = startOffset + random.nextInt(data.length - startOffset + 1);
+      assertEquals(findNalUnitByteByByte(data, startOffset, endOffset),
+          NalUnitUtil.findNalUnit(data, startOffset, endOffset, null));
+    }
+  }
+
+  public void testFindNalUnitInShortRangesMatchesByteByByteSearch() {
+    // Dense zero and one bytes exercise the end of the range, which may be read as a word that
+    // overlaps bytes that have already been inspected.
+    Random random = new Random(0);
+    byte[] data = new byte[1000];
+    for (int i = 0; i < data.length; i++) {
+      int value = random.nextInt(4);
+      data[i] = (byte) (value < 2 ? value : random.nextInt(256));
+    }
+    for (int startOffset = 0; startOffset < data.length - 40; startOffset++) {
+      for (int endOffset = startOffset; endOffset <= startOffset + 40; endOffset++) {
+        assertEquals(findNalUnitByteByByte(data, startOffset, endOffset),
+            NalUnitUtil.findNalUnit(data, startOffset, endOffset, null));
+      }
+    }
+  }
+
+  public void testFindNalUnitWithPrefixInRandomChunks() {
+    Random random = new Random(0);
+    for (int i = 0; i < 100; i++) {
+      byte[] data = buildRandomNalData(random, 1 + random.nextInt(4000));
+      List<Integer> expectedPositions = new ArrayList<>();
+      int position = findNalUnitByteByByte(data, 0, data.length);
+      while (position < data.length) {
+        expectedPositions.add(position);
+        position = findNalUnitByteByByte(data, position + 3, data.length);
+      }
+      // Search the data in chunks, as a reader does when it's passed data as it's loaded.
+      List<Integer> positions = new ArrayList<>();
+      boolean[] prefixFlags = new boolean[3];
+      int chunkStart = 0;
+      while (chunkStart < data.length) {
+        int chunkEnd = Math.min(data.length, chunkStart + 1 + random.nextInt(200));
+        int offset = chunkStart;
+        while (offset < chunkEnd) {
+          int result = NalUnitUtil.findNalUnit(data, offset, chunkEnd, prefixFlags);
+          if (result == chunkEnd) {
+            break;
+          }
+          positions.add(result);
+          offset = Math.max(offset, result + 3);
+        }
+        chunkStart = chunkEnd;
+      }
+      assertEquals(expectedPositions, positions);
+    }
+  }
+
   public void testUnescapeDoesNotModifyBuffersWithoutStartCodes() {
     assertUnescapeDoesNotModify("");
     assertUnescapeDoesNotModify("0000");
@@ -154,6 +233,36 @@ public class NalUnitUtilTest extends TestCase {
     return data;
   }
 
+  /**
+   * Builds random data that contains start code prefixes, zero bytes and partial prefixes, and
+   * that may end with a partial or complete prefix.
+   */
+  private static byte[] buildRandomNalData(Random random, int length) {
+    byte[] data = new byte[length];
+    random.nextBytes(data);
+    for (int i = 0; i < length / 20; i++) {
+      int position = random.nextInt(length);
+      int prefixLength = Math.min(length - position, 1 + random.nextInt(3));
+      for (int j = 0; j < prefixLength; j++) {
+        data[position + j] = (byte) (j == 2 ? 1 : 0);
+      }
+    }
+    return data;
+  }
+
+  /**
+   * Returns the offset of the first NAL unit start code prefix that's followed by at least one
+   * byte, or {@code endOffset} if there isn't one, inspecting every byte.
+   */
+  private static int findNalUnitByteByByte(byte[] data, int startOffset, int endOffset) {
+    for (int i = startOffset; i < endOffset - 3; i++) {
+      if (data[i] == 0 && data[i + 1] == 0 && data[i + 2] == 1) {
+        return i;
+      }
+    }
+    return endOffset;
+  }
+
   private static void assertPrefixFlagsCleared(boolean[] flags) {
     assertEquals(false, flags[0] || flags[1] || flags[2]);
   }
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.util;
+
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link ParsableBitArray}.
+ */
+public final class ParsableBitArrayTest extends TestCase {
+
+  private static final byte[] TEST_DATA = new byte[] {0x3C, (byte) 0xD2, (byte) 0x5F, (byte) 0x01,
+      (byte) 0xFF, (byte) 0x14, (byte) 0x60, (byte) 0x99};
+
+  public void testReadAllBytes() {
+    ParsableBitArray testArray = new ParsableBitArray(TEST_DATA);
+    for (int i = 0; i < TEST_DATA.length; i++) {
+      assertEquals(TEST_DATA[i] & 0xFF, testArray.readBits(8));
+    }
+    assertEquals(TEST_DATA.length * 8, testArray.getPosition());
+    assertEquals(0, testArray.bitsLeft());
+  }
+
+  public void testReadBitsAcrossWords() {
+    byte[] data = new byte[16];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) i;
+    }
+    ParsableBitArray testArray = new ParsableBitArray(data);
+    testArray.skipBits(52);
+    assertEquals(0x6070809, testArray.readBits(28));
+    assertEquals(0x0A0B0C0D, testArray.readBits(32));
+    assertEquals(0x0E0F, testArray.readBits(16));
+  }
+
+  public void testReadBitsAfterModifyingDataAndSettingPosition() {
+    byte[] data = new byte[] {0x01, 0x02, 0x03, 0x04};
+    ParsableBitArray testArray = new ParsableBitArray(data);
+    assertEquals(0x0102, testArray.readBits(16));
+    data[0] = 0x05;
+    testArray.setPosition(0);
+    assertEquals(0x05020304, testArray.readBits(32));
+  }
+
+  public void testReadBitsPastLimit() {
+    ParsableBitArray testArray = new ParsableBitArray(TEST_DATA, 2);
+    testArray.readBits(12);
+    try {
+      testArray.readBits(8);
+      fail();
+    } catch (IllegalStateException e) {
+      // Expected.
+    }
+  }
+
+  public void testReadExpGolombCodes() {
+    // 1, 010, 011, 00100, nine zeros and ten ones, then 31 zeros and 32 ones.
+    ParsableBitArray testArray = new ParsableBitArray(new byte[] {(byte) 0xA6, 0x40, 0x07,
+        (byte) 0xFE, 0x00, 0x00, 0x00, 0x03, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFC});
+    assertEquals(0, testArray.readUnsignedExpGolombCodedInt());
+    assertEquals(1, testArray.readUnsignedExpGolombCodedInt());
+    assertEquals(-1, testArray.readSignedExpGolombCodedInt());
+    assertEquals(3, testArray.readUnsignedExpGolombCodedInt());
+    assertEquals(0x3FE, testArray.readUnsignedExpGolombCodedInt());
+    assertTrue(testArray.canReadExpGolombCodedNum());
+    assertEquals(-2, testArray.readUnsignedExpGolombCodedInt());
+    assertEquals(2, testArray.bitsLeft());
+    assertFalse(testArray.canReadExpGolombCodedNum());
+  }
+
+  public void testCanReadExpGolombCodedNumWithTruncatedCode() {
+    // 00000000 0001 followed by four of the twelve bits required.
+    ParsableBitArray testArray = new ParsableBitArray(new byte[] {0x00, 0x1A});
+    assertFalse(testArray.canReadExpGolombCodedNum());
+    assertEquals(0, testArray.getPosition());
+    testArray.skipBits(11);
+    assertTrue(testArray.canReadExpGolombCodedNum());
+  }
+
+  public void testReadBitsMatchesReference() {
+    Random random = new Random(0);
+    for (int i = 0; i < 1000; i++) {
+      byte[] data = new byte[1 + random.nextInt(64)];
+      random.nextBytes(data);
+      ParsableBitArray testArray = new ParsableBitArray(data);
+      ReferenceBitArray referenceArray = new ReferenceBitArray(data);
+      while (referenceArray.bitsLeft() > 0) {
+        int numBits = Math.min(random.nextInt(33), referenceArray.bitsLeft());
+        switch (random.nextInt(4)) {
+          case 0:
+            testArray.skipBits(numBits);
+            referenceArray.skipBits(numBits);
+            break;
+          case 1:
+            int position = random.nextInt(data.length * 8);
+            testArray.setPosition(position);
+            referenceArray.setPosition(position);
+            break;
+          default:
+            assertEquals(referenceArray.readBits(numBits), testArray.readBits(numBits));
+            break;
+        }
+        assertEquals(referenceArray.getPosition(), testArray.getPosition());
+      }
+    }
+  }
+
+  public void testReadExpGolombCodesMatchesReference() {
+    Random random = new Random(0);
+    for (int i = 0; i < 1000; i++) {
+      byte[] data = new byte[1 + random.nextInt(64)];
+      // Sparse data produces long codes, which may run past the limit. Setting the last bit of
+      // every fourth byte limits codes to the 31 leading zeros of the largest value in an int.
+      for (int j = 0; j < data.length; j++) {
+        data[j] = (byte) (random.nextInt() & random.nextInt() & random.nextInt());
+        if (j % 4 == 3) {
+          data[j] |= 1;
+        }
+      }
+      ParsableBitArray testArray = new ParsableBitArray(data);
+      ReferenceBitArray referenceArray = new ReferenceBitArray(data);
+      while (referenceArray.bitsLeft() > 0) {
+        boolean canRead = referenceArray.canReadExpGolombCodedNum();
+        assertEquals(canRead, testArray.canReadExpGolombCodedNum());
+        if (canRead) {
+          assertEquals(referenceArray.readExpGolombCodeNum(),
+              testArray.readUnsignedExpGolombCodedInt());
+        } else {
+          int numBits = 1 + random.nextInt(Math.min(32, referenceArray.bitsLeft()));
+          assertEquals(referenceArray.readBits(numBits), testArray.readBits(numBits));
+        }
+        assertEquals(referenceArray.getPosition(), testArray.getPosition());
+      }
+    }
+  }
+
+  /**
+   * The byte-wise implementation that {@link ParsableBitArray} replaced, against which its results
+   * are compared.
+   */
+  private static final class ReferenceBitArray {
+
+    private final byte[] data;
+    private final int byteLimit;
+    private int byteOffset;
+    private int bitOffset;
+
+    public ReferenceBitArray(byte[] data) {
+      this.data = data;
+      byteLimit = data.length;
+    }
+
+    public int bitsLeft() {
+      return (byteLimit - byteOffset) * 8 - bitOffset;
+    }
+
+    public int getPosition() {
+      return byteOffset * 8 + bitOffset;
+    }
+
+    public void setPosition(int position) {
+      byteOffset = position / 8;
+      bitOffset = position - (byteOffset * 8);
+    }
+
+    public void skipBits(int n) {
+      byteOffset += (n / 8);
+      bitOffset += (n % 8);
+      if (bitOffset > 7) {
+        byteOffset++;
+        bitOffset -= 8;
+      }
+    }
+
+    public boolean readBit() {
+      return readBits(1) == 1;
+    }
+
+    public int readBits(int numBits) {
+      if (numBits == 0) {
+        return 0;
+      }
+      int returnValue = 0;
+      int wholeBytes = (numBits / 8);
+      for (int i = 0; i < wholeBytes; i++) {
+        int byteValue;
+        if (bitOffset != 0) {
+          byteValue = ((data[byteOffset] & 0xFF) << bitOffset)
+              | ((data[byteOffset + 1] & 0xFF) >>> (8 - bitOffset));
+        } else {
+          byteValue = data[byteOffset];
+        }
+        numBits -= 8;
+        returnValue |= (byteValue & 0xFF) << numBits;
+        byteOffset++;
+      }
+      if (numBits > 0) {
+        int nextBit = bitOffset + numBits;
+        byte writeMask = (byte) (0xFF >> (8 - numBits));
+        if (nextBit > 8) {
+          returnValue |= ((((data[byteOffset] & 0xFF) << (nextBit - 8)
+              | ((data[byteOffset + 1] & 0xFF) >> (16 - nextBit))) & writeMask));
+          byteOffset++;
+        } else {
+          returnValue |= (((data[byteOffset] & 0xFF) >> (8 - nextBit)) & writeMask);
+          if (nextBit == 8) {
+            byteOffset++;
+          }
+        }
+        bitOffset = nextBit % 8;
+      }
+      return returnValue;
+    }
+
+    public boolean canReadExpGolombCodedNum() {
+      int initialByteOffset = byteOffset;
+      int initialBitOffset = bitOffset;
+      int leadingZeros = 0;
+      while (byteOffset < byteLimit && !readBit()) {
+        leadingZeros++;
+      }
+      boolean hitLimit = byteOffset == byteLimit;
+      byteOffset = initialByteOffset;
+      bitOffset = initialBitOffset;
+      return !hitLimit && bitsLeft() >= leadingZeros * 2 + 1;
+    }
+
+    public int readExpGolombCodeNum() {
+      int leadingZeros = 0;
+      while (!readBit()) {
+        leadingZeros++;
+      }
+      return (1 << leadingZeros) - 1 + (leadingZeros > 0 ? readBits(leadingZeros) : 0);
+    }
+
+  }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link SlidingPercentile}.
+ */
+public final class SlidingPercentileTest extends TestCase {
+
+  public void testEmpty() {
+    SlidingPercentile slidingPercentile = new SlidingPercentile(100);
+    assertTrue(Float.isNaN(slidingPercentile.getPercentile(0.5f)));
+  }
+
+  public void testPercentiles() {
+    SlidingPercentile slidingPercentile = new SlidingPercentile(100);
+    slidingPercentile.addSample(10, 3f);
+    slidingPercentile.addSample(20, 1f);
+    slidingPercentile.addSample(30, 2f);
+    slidingPercentile.addSample(40, 4f);
+    assertEquals(1f, slidingPercentile.getPercentile(0.2f));
+    assertEquals(2f, slidingPercentile.getPercentile(0.5f));
+    assertEquals(3f, slidingPercentile.getPercentile(0.55f));
+    assertEquals(4f, slidingPercentile.getPercentile(1f));
+  }
+
+  public void testOldestSamplesAreReducedInWeightAndRemoved() {
+    SlidingPercentile slidingPercentile = new SlidingPercentile(100);
+    slidingPercentile.addSample(50, 1f);
+    slidingPercentile.addSample(40, 3f);
+    // The weight of the first sample is reduced to 10.
+    slidingPercentile.addSample(50, 2f);
+    assertEquals(1f, slidingPercentile.getPercentile(0.1f));
+    assertEquals(2f, slidingPercentile.getPercentile(0.11f));
+    // The first sample is removed, and the weight of the second sample is reduced to 20.
+    slidingPercentile.addSample(30, 4f);
+    assertEquals(2f, slidingPercentile.getPercentile(0.5f));
+    assertEquals(3f, slidingPercentile.getPercentile(0.51f));
+    assertEquals(3f, slidingPercentile.getPercentile(0.7f));
+    assertEquals(4f, slidingPercentile.getPercentile(0.71f));
+  }
+
+  public void testMatchesReference() {
+    Random random = new Random(0);
+    for (int i = 0; i < 100; i++) {
+      int maxWeight = 1 + random.nextInt(5000);
+      SlidingPercentile slidingPercentile = new SlidingPercentile(maxWeight);
+      ReferenceSlidingPercentile referencePercentile = new ReferenceSlidingPercentile(maxWeight);
+      for (int j = 0; j < 1000; j++) {
+        int weight = random.nextInt(200);
+        // Repeat values, so that the order of equal values is tested.
+        float value = random.nextInt(50);
+        slidingPercentile.addSample(weight, value);
+        referencePercentile.addSample(weight, value);
+        float percentile = random.nextInt(4) == 0 ? 1f : random.nextFloat();
+        assertEquals(referencePercentile.getPercentile(percentile),
+            slidingPercentile.getPercentile(percentile));
+      }
+    }
+  }
+
+  /**
+   * The sorting implementation that {@link SlidingPercentile} replaced, against which its results
+   * are compared.
+   */
+  private static final class ReferenceSlidingPercentile {
+
+    private static final Comparator<Sample> INDEX_COMPARATOR = new Comparator<Sample>() {
+      @Override
+      public int compare(Sample a, Sample b) {
+        return a.index - b.index;
+      }
+    };
+
+    private static final Comparator<Sample> VALUE_COMPARATOR = new Comparator<Sample>() {
+      @Override
+      public int compare(Sample a, Sample b) {
+        return a.value < b.value ? -1 : b.value < a.value ? 1 : 0;
+      }
+    };
+
+    private final int maxWeight;
+    private final ArrayList<Sample> samples;
+
+    private int nextSampleIndex;
+    private int totalWeight;
+
+    public ReferenceSlidingPercentile(int maxWeight) {
+      this.maxWeight = maxWeight;
+      samples = new ArrayList<>();
+    }
+
+    public void addSample(int weight, float value) {
+      Collections.sort(samples, INDEX_COMPARATOR);
+      Sample newSample = new Sample();
+      newSample.index = nextSampleIndex++;
+      newSample.weight = weight;
+      newSample.value = value;
+      samples.add(newSample);
+      totalWeight += weight;
+      while (totalWeight > maxWeight) {
+        int excessWeight = totalWeight - maxWeight;
+        Sample oldestSample = samples.get(0);
+        if (oldestSample.weight <= excessWeight) {
+          totalWeight -= oldestSample.weight;
+          samples.remove(0);
+        } else {
+          oldestSample.weight -= excessWeight;
+          totalWeight -= excessWeight;
+        }
+      }
+    }
+
+    public float getPercentile(float percentile) {
+      Collections.sort(samples, VALUE_COMPARATOR);
+      float desiredWeight = percentile * totalWeight;
+      int accumulatedWeight = 0;
+      for (int i = 0; i < samples.size(); i++) {
+        Sample currentSample = samples.get(i);
+        accumulatedWeight += currentSample.weight;
+        if (accumulatedWeight >= desiredWeight) {
+          return currentSample.value;
+        }
+      }
+      return samples.isEmpty() ? Float.NaN : samples.get(samples.size() - 1).value;
+    }
+
+    private static final class Sample {
+
+      public int index;
+      public int weight;
+      public float value;
+
+    }
+
+  }
+
+}
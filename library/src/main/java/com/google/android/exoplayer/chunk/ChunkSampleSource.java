@@ -27,8 +27,10 @@ import com.google.android.exoplayer.SampleSource.SampleSourceReader;
 import com.google.android.exoplayer.TrackRenderer;
 import com.google.android.exoplayer.drm.DrmInitData;
 import com.google.android.exoplayer.extractor.DefaultTrackOutput;
+import com.google.android.exoplayer.upstream.DataSpec;
 import com.google.android.exoplayer.upstream.Loader;
 import com.google.android.exoplayer.upstream.Loader.Loadable;
+import com.google.android.exoplayer.upstream.PrefetchingDataSource;
 import com.google.android.exoplayer.util.Assertions;
 import com.google.android.exoplayer.util.Util;
 import java.io.IOException;
@@ -39,6 +41,16 @@ import java.util.List;
 /**
  * A {@link SampleSource} that loads media in {@link Chunk}s, which are themselves obtained from a
  * {@link ChunkSource}.
+ * <p>
+ * Chunks are loaded one at a time, so without prefetching the request for each chunk is only made
+ * once the previous chunk has loaded, and the link is idle while it's answered. If prefetching is
+ * enabled, then when a {@link MediaChunk} starts loading from a {@link PrefetchingDataSource}, a
+ * {@link PrefetchingChunkSource} is asked for the {@link DataSpec} of the chunk that would follow
+ * it in the same format, and the data source is told it, so that its data can be requested before
+ * the current chunk has finished loading. If the {@link FormatEvaluator} then selects a different
+ * format for the next chunk, the prefetch is canceled, and the data source discards any data it
+ * has requested for it. The outcome of prefetches can be read from {@link #getPrefetchCount()},
+ * {@link #getPrefetchHitCount()} and {@link #getPrefetchCancelCount()}.
  */
 public class ChunkSampleSource implements SampleSource, SampleSourceReader, Loader.Callback {
 
@@ -71,6 +83,7 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
   private final Handler eventHandler;
   private final EventListener eventListener;
   private final int minLoadableRetryCount;
+  private final boolean prefetchEnabled;
 
   private int state;
   private long downstreamPositionUs;
@@ -86,6 +99,13 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
   private int currentLoadableExceptionCount;
   private long currentLoadableExceptionTimestamp;
   private long currentLoadStartTimeMs;
+  private DataSpec prefetchedDataSpec;
+  private Format prefetchedFormat;
+
+  // Guarded by this.
+  private int prefetchCount;
+  private int prefetchHitCount;
+  private int prefetchCancelCount;
 
   private DrmInitData downstreamDrmInitData;
   private MediaFormat downstreamMediaFormat;
@@ -131,6 +151,28 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
   public ChunkSampleSource(ChunkSource chunkSource, LoadControl loadControl,
       int bufferSizeContribution, Handler eventHandler, EventListener eventListener,
       int eventSourceId, int minLoadableRetryCount) {
+    this(chunkSource, loadControl, bufferSizeContribution, eventHandler, eventListener,
+        eventSourceId, minLoadableRetryCount, false);
+  }
+
+  /**
+   * @param chunkSource A {@link ChunkSource} from which chunks to load are obtained.
+   * @param loadControl Controls when the source is permitted to load data.
+   * @param bufferSizeContribution The contribution of this source to the media buffer, in bytes.
+   * @param eventHandler A handler to use when delivering events to {@code eventListener}. May be
+   *     null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   * @param eventSourceId An identifier that gets passed to {@code eventListener} methods.
+   * @param minLoadableRetryCount The minimum number of times that the source should retry a load
+   *     before propagating an error.
+   * @param prefetchEnabled Whether the data of the next {@link MediaChunk} should be requested
+   *     while the current one is loading, if {@code chunkSource} is a
+   *     {@link PrefetchingChunkSource} and the chunk's {@link Chunk#dataSource} is a
+   *     {@link PrefetchingDataSource}.
+   */
+  public ChunkSampleSource(ChunkSource chunkSource, LoadControl loadControl,
+      int bufferSizeContribution, Handler eventHandler, EventListener eventListener,
+      int eventSourceId, int minLoadableRetryCount, boolean prefetchEnabled) {
     this.chunkSource = chunkSource;
     this.loadControl = loadControl;
     this.bufferSizeContribution = bufferSizeContribution;
@@ -138,6 +180,7 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
     this.eventListener = eventListener;
     this.eventSourceId = eventSourceId;
     this.minLoadableRetryCount = minLoadableRetryCount;
+    this.prefetchEnabled = prefetchEnabled;
     currentLoadableHolder = new ChunkOperationHolder();
     mediaChunks = new LinkedList<>();
     readOnlyMediaChunks = Collections.unmodifiableList(mediaChunks);
@@ -146,6 +189,30 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
     pendingResetPositionUs = NO_RESET_PENDING;
   }
 
+  /**
+   * Returns the number of {@link MediaChunk}s whose data was requested before they started
+   * loading.
+   */
+  public synchronized int getPrefetchCount() {
+    return prefetchCount;
+  }
+
+  /**
+   * Returns the number of {@link MediaChunk}s whose data was requested before they started
+   * loading, and that were then loaded.
+   */
+  public synchronized int getPrefetchHitCount() {
+    return prefetchHitCount;
+  }
+
+  /**
+   * Returns the number of prefetches that were canceled because the {@link FormatEvaluator}
+   * selected a different format.
+   */
+  public synchronized int getPrefetchCancelCount() {
+    return prefetchCancelCount;
+  }
+
   @Override
   public SampleSourceReader register() {
     Assertions.checkState(state == STATE_IDLE);
@@ -412,6 +479,7 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
   private void restartFrom(long positionUs) {
     pendingResetPositionUs = positionUs;
     loadingFinished = false;
+    prefetchedDataSpec = null;
     if (loader.isLoading()) {
       loader.cancelLoading();
     } else {
@@ -445,6 +513,7 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
       // Perform the evaluation.
       lastPerformedBufferOperation = now;
       doChunkOperation();
+      maybeCancelPrefetch();
       boolean chunksDiscarded = discardUpstreamMediaChunks(currentLoadableHolder.queueSize);
       // Update the next load position as appropriate.
       if (currentLoadableHolder.chunk == null) {
@@ -546,6 +615,12 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
       return;
     }
     currentLoadStartTimeMs = SystemClock.elapsedRealtime();
+    if (prefetchedDataSpec != null) {
+      if (isSameData(currentLoadable.dataSpec, prefetchedDataSpec)) {
+        onPrefetchHit();
+      }
+      prefetchedDataSpec = null;
+    }
     if (isMediaChunk(currentLoadable)) {
       BaseMediaChunk mediaChunk = (BaseMediaChunk) currentLoadable;
       mediaChunk.init(sampleQueue);
@@ -555,6 +630,10 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
       }
       notifyLoadStarted(mediaChunk.dataSpec.length, mediaChunk.type, mediaChunk.trigger,
           mediaChunk.format, mediaChunk.startTimeUs, mediaChunk.endTimeUs);
+      if (prefetchEnabled && chunkSource instanceof PrefetchingChunkSource
+          && mediaChunk.dataSource instanceof PrefetchingDataSource) {
+        prefetchNextChunk(mediaChunk);
+      }
     } else {
       notifyLoadStarted(currentLoadable.dataSpec.length, currentLoadable.type,
           currentLoadable.trigger, currentLoadable.format, -1, -1);
@@ -576,6 +655,51 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
     loadingFinished = currentLoadableHolder.endOfStream;
   }
 
+  /**
+   * Asks the chunk source for the {@link DataSpec} of the media chunk that will follow one that's
+   * about to start loading, in the same format, and passes it to the chunk's
+   * {@link PrefetchingDataSource}. The chunk source's state, including that of its
+   * {@link FormatEvaluator}, isn't changed by the prediction.
+   *
+   * @param mediaChunk The media chunk that's about to start loading, which must be the last chunk
+   *     in {@link #mediaChunks}.
+   */
+  private void prefetchNextChunk(BaseMediaChunk mediaChunk) {
+    DataSpec nextDataSpec =
+        ((PrefetchingChunkSource) chunkSource).getNextChunkDataSpec(readOnlyMediaChunks);
+    if (nextDataSpec != null) {
+      prefetchedDataSpec = nextDataSpec;
+      prefetchedFormat = mediaChunk.format;
+      onPrefetch();
+      ((PrefetchingDataSource) mediaChunk.dataSource).setNextDataSpec(nextDataSpec);
+    }
+  }
+
+  /**
+   * Cancels the prefetch of the next chunk if the chunk source has selected a different format for
+   * it. The data source discards the prefetched data when the selected chunk is opened.
+   */
+  private void maybeCancelPrefetch() {
+    Chunk nextChunk = currentLoadableHolder.chunk;
+    if (prefetchedDataSpec != null && nextChunk != null
+        && !Util.areEqual(nextChunk.format, prefetchedFormat)) {
+      prefetchedDataSpec = null;
+      onPrefetchCanceled();
+    }
+  }
+
+  private synchronized void onPrefetch() {
+    prefetchCount++;
+  }
+
+  private synchronized void onPrefetchHit() {
+    prefetchHitCount++;
+  }
+
+  private synchronized void onPrefetchCanceled() {
+    prefetchCancelCount++;
+  }
+
   /**
    * Discard upstream media chunks until the queue length is equal to the length specified.
    *
@@ -605,6 +729,12 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
     return chunk instanceof BaseMediaChunk;
   }
 
+  private static boolean isSameData(DataSpec dataSpec, DataSpec otherDataSpec) {
+    return dataSpec.uri.equals(otherDataSpec.uri)
+        && dataSpec.absoluteStreamPosition == otherDataSpec.absoluteStreamPosition
+        && dataSpec.length == otherDataSpec.length;
+  }
+
   private boolean isPendingReset() {
     return pendingResetPositionUs != NO_RESET_PENDING;
   }
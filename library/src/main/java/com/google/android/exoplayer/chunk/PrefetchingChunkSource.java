@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.chunk;
+
+import com.google.android.exoplayer.upstream.DataSpec;
+import java.util.List;
+
+/**
+ * A {@link ChunkSource} that can predict the data of the {@link MediaChunk} that will follow the
+ * buffered ones, so that a {@link ChunkSampleSource} can request it ahead of time.
+ */
+public interface PrefetchingChunkSource extends ChunkSource {
+
+  /**
+   * Returns the {@link DataSpec} of the {@link MediaChunk} that follows the last one in the queue,
+   * assuming that it has the same format and is loaded from the same
+   * {@link com.google.android.exoplayer.upstream.DataSource}.
+   * <p>
+   * Unlike {@link #getChunkOperation(List, long, ChunkOperationHolder)}, this method must not
+   * change the state of the source or of its {@link FormatEvaluator}.
+   * <p>
+   * This method should only be called when the source is enabled.
+   *
+   * @param queue A representation of the currently buffered {@link MediaChunk}s, including the one
+   *     that's about to start loading.
+   * @return The {@link DataSpec} of the next {@link MediaChunk}, or null if it isn't known, for
+   *     example because the queue is empty, the end of the stream or period has been reached, or
+   *     an initialization chunk would have to be loaded first.
+   */
+  DataSpec getNextChunkDataSpec(List<? extends MediaChunk> queue);
+
+}
@@ -35,6 +35,7 @@ import com.google.android.exoplayer.chunk.FormatEvaluator;
 import com.google.android.exoplayer.chunk.FormatEvaluator.Evaluation;
 import com.google.android.exoplayer.chunk.InitializationChunk;
 import com.google.android.exoplayer.chunk.MediaChunk;
+import com.google.android.exoplayer.chunk.PrefetchingChunkSource;
 import com.google.android.exoplayer.chunk.SingleSampleMediaChunk;
 import com.google.android.exoplayer.dash.DashTrackSelector.Output;
 import com.google.android.exoplayer.dash.mpd.AdaptationSet;
@@ -73,7 +74,7 @@ import java.util.List;
  * </ol>
  */
 // TODO: handle cases where the above assumption are false
-public class DashChunkSource implements ChunkSource, Output {
+public class DashChunkSource implements PrefetchingChunkSource, Output {
 
   /**
    * Interface definition for a callback to be notified of {@link DashChunkSource} events.
@@ -501,6 +502,32 @@ public class DashChunkSource implements ChunkSource, Output {
     out.chunk = nextMediaChunk;
   }
 
+  @Override
+  public DataSpec getNextChunkDataSpec(List<? extends MediaChunk> queue) {
+    if (fatalError != null || queue.isEmpty()) {
+      return null;
+    }
+    MediaChunk previous = queue.get(queue.size() - 1);
+    PeriodHolder periodHolder = periodHolders.get(previous.parentId);
+    if (periodHolder == null || periodHolder.isIndexUnbounded()) {
+      // The next chunk is in another period, or may not be available yet.
+      return null;
+    }
+    RepresentationHolder representationHolder =
+        periodHolder.representationHolders.get(previous.format.id);
+    if (representationHolder == null || representationHolder.segmentIndex == null
+        || (representationHolder.mediaFormat == null
+            && representationHolder.representation.getInitializationUri() != null)) {
+      // An initialization chunk would be loaded next.
+      return null;
+    }
+    int segmentNum = previous.getNextChunkIndex();
+    if (representationHolder.isBeyondLastSegment(segmentNum)) {
+      return null;
+    }
+    return newMediaChunkDataSpec(representationHolder, segmentNum);
+  }
+
   @Override
   public void onChunkLoadCompleted(Chunk chunk) {
     if (chunk instanceof InitializationChunk) {
@@ -702,9 +729,7 @@ public class DashChunkSource implements ChunkSource, Output {
     Format format = representation.format;
     long startTimeUs = representationHolder.getSegmentStartTimeUs(segmentNum);
     long endTimeUs = representationHolder.getSegmentEndTimeUs(segmentNum);
-    RangedUri segmentUri = representationHolder.getSegmentUrl(segmentNum);
-    DataSpec dataSpec = new DataSpec(segmentUri.resolveUri(representation.baseUrl),
-        segmentUri.start, segmentUri.length, representation.getCacheKey());
+    DataSpec dataSpec = newMediaChunkDataSpec(representationHolder, segmentNum);
 
     long sampleOffsetUs = periodHolder.startTimeUs - representation.presentationTimeOffsetUs;
     if (mimeTypeIsRawText(format.mimeType)) {
@@ -719,6 +744,14 @@ public class DashChunkSource implements ChunkSource, Output {
     }
   }
 
+  private static DataSpec newMediaChunkDataSpec(RepresentationHolder representationHolder,
+      int segmentNum) {
+    Representation representation = representationHolder.representation;
+    RangedUri segmentUri = representationHolder.getSegmentUrl(segmentNum);
+    return new DataSpec(segmentUri.resolveUri(representation.baseUrl), segmentUri.start,
+        segmentUri.length, representation.getCacheKey());
+  }
+
   private long getNowUnixTimeUs() {
     if (elapsedRealtimeOffsetUs != 0) {
       return (systemClock.elapsedRealtime() * 1000) + elapsedRealtimeOffsetUs;
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.dash;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.dash.mpd.AdaptationSet;
+import com.google.android.exoplayer.dash.mpd.MediaPresentationDescription;
+import com.google.android.exoplayer.dash.mpd.RangedUri;
+import com.google.android.exoplayer.dash.mpd.Representation;
+import com.google.android.exoplayer.dash.mpd.Representation.SingleSegmentRepresentation;
+import com.google.android.exoplayer.upstream.DataSpec;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Utility methods for prefetching DASH content into a cache with a
+ * {@link com.google.android.exoplayer.upstream.cache.CachePrefetcher}.
+ */
+public final class DashPrefetchUtil {
+
+  private DashPrefetchUtil() {}
+
+  /**
+   * Returns the segments of the representations selected by a {@link DashTrackSelector}, keyed by
+   * {@link Representation#getCacheKey()} as they're requested by {@link DashChunkSource}.
+   * <p>
+   * Segments are ordered by period and then by start time, so that the start of each selected
+   * representation is prefetched first when the prefetch budget doesn't cover the whole
+   * presentation. The initialization data of a representation precedes its media segments.
+   * Representations whose segment index is stored in the media are prefetched as a whole. Segments
+   * of periods whose last segment isn't known, as is the case for some live presentations, are
+   * omitted.
+   *
+   * @param manifest The media presentation description.
+   * @param trackSelector Selects the representations to prefetch.
+   * @return The segments to prefetch.
+   * @throws IOException If an error occurs selecting representations.
+   */
+  public static List<DataSpec> getSegments(MediaPresentationDescription manifest,
+      DashTrackSelector trackSelector) throws IOException {
+    final ArrayList<Segment> segments = new ArrayList<>();
+    for (int i = 0; i < manifest.getPeriodCount(); i++) {
+      final long periodDurationUs = getPeriodDurationUs(manifest, i);
+      trackSelector.selectTracks(manifest, i, new DashTrackSelector.Output() {
+
+        @Override
+        public void adaptiveTrack(MediaPresentationDescription manifest, int periodIndex,
+            int adaptationSetIndex, int[] representationIndices) {
+          for (int representationIndex : representationIndices) {
+            fixedTrack(manifest, periodIndex, adaptationSetIndex, representationIndex);
+          }
+        }
+
+        @Override
+        public void fixedTrack(MediaPresentationDescription manifest, int periodIndex,
+            int adaptationSetIndex, int representationIndex) {
+          AdaptationSet adaptationSet =
+              manifest.getPeriod(periodIndex).adaptationSets.get(adaptationSetIndex);
+          addSegments(adaptationSet.representations.get(representationIndex), periodIndex,
+              periodDurationUs, segments);
+        }
+
+      });
+    }
+    Collections.sort(segments, new Comparator<Segment>() {
+      @Override
+      public int compare(Segment lhs, Segment rhs) {
+        if (lhs.periodIndex != rhs.periodIndex) {
+          return lhs.periodIndex < rhs.periodIndex ? -1 : 1;
+        }
+        return lhs.startTimeUs < rhs.startTimeUs ? -1 : (lhs.startTimeUs > rhs.startTimeUs ? 1 : 0);
+      }
+    });
+    ArrayList<DataSpec> dataSpecs = new ArrayList<>(segments.size());
+    for (int i = 0; i < segments.size(); i++) {
+      dataSpecs.add(segments.get(i).dataSpec);
+    }
+    return dataSpecs;
+  }
+
+  private static void addSegments(Representation representation, int periodIndex,
+      long periodDurationUs, List<Segment> segments) {
+    DashSegmentIndex segmentIndex = representation.getIndex();
+    if (segmentIndex == null && representation instanceof SingleSegmentRepresentation) {
+      // The segment index is stored in the media, so prefetch the media as a whole.
+      SingleSegmentRepresentation singleSegmentRepresentation =
+          (SingleSegmentRepresentation) representation;
+      segments.add(new Segment(periodIndex, Long.MIN_VALUE,
+          new DataSpec(singleSegmentRepresentation.uri, 0,
+              singleSegmentRepresentation.contentLength, representation.getCacheKey())));
+      return;
+    }
+    RangedUri initializationUri = representation.getInitializationUri();
+    if (initializationUri != null) {
+      segments.add(new Segment(periodIndex, Long.MIN_VALUE,
+          buildDataSpec(representation, initializationUri)));
+    }
+    if (segmentIndex == null) {
+      return;
+    }
+    int firstSegmentNum = segmentIndex.getFirstSegmentNum();
+    int lastSegmentNum = segmentIndex.getLastSegmentNum(periodDurationUs);
+    if (lastSegmentNum == DashSegmentIndex.INDEX_UNBOUNDED) {
+      return;
+    }
+    for (int segmentNum = firstSegmentNum; segmentNum <= lastSegmentNum; segmentNum++) {
+      segments.add(new Segment(periodIndex, segmentIndex.getTimeUs(segmentNum),
+          buildDataSpec(representation, segmentIndex.getSegmentUrl(segmentNum))));
+    }
+  }
+
+  private static DataSpec buildDataSpec(Representation representation, RangedUri rangedUri) {
+    return new DataSpec(rangedUri.resolveUri(representation.baseUrl), rangedUri.start,
+        rangedUri.length, representation.getCacheKey());
+  }
+
+  private static long getPeriodDurationUs(MediaPresentationDescription manifest, int index) {
+    long durationMs = manifest.getPeriodDuration(index);
+    if (durationMs == -1) {
+      return C.UNKNOWN_TIME_US;
+    } else {
+      return durationMs * 1000;
+    }
+  }
+
+  private static final class Segment {
+
+    public final int periodIndex;
+    public final long startTimeUs;
+    public final DataSpec dataSpec;
+
+    public Segment(int periodIndex, long startTimeUs, DataSpec dataSpec) {
+      this.periodIndex = periodIndex;
+      this.startTimeUs = startTimeUs;
+      this.dataSpec = dataSpec;
+    }
+
+  }
+
+}
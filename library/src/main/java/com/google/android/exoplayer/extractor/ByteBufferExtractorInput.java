@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An {@link ExtractorInput} that can provide the data it reads as a {@link ByteBuffer}, without
+ * copying it into a caller supplied array.
+ */
+public interface ByteBufferExtractorInput extends ExtractorInput {
+
+  /**
+   * Reads up to {@code length} bytes from the input without copying them, and resets the peek
+   * position.
+   * <p>
+   * The returned buffer is owned by the input. It's only valid until the next call to a method of
+   * the input, and must not be modified other than by changing its position.
+   *
+   * @param length The maximum number of bytes to read.
+   * @return A buffer whose remaining bytes are the data that was read, or null if no data can be
+   *     read without copying. In that case the caller should use {@link #read(byte[], int, int)},
+   *     which will also indicate the end of the input.
+   * @throws IOException If an error occurs reading from the input.
+   * @throws InterruptedException If the thread is interrupted.
+   */
+  ByteBuffer readBuffer(int length) throws IOException, InterruptedException;
+
+}
@@ -16,15 +16,18 @@
 package com.google.android.exoplayer.extractor;
 
 import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.ByteBufferDataSource;
 import com.google.android.exoplayer.upstream.DataSource;
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
- * An {@link ExtractorInput} that wraps a {@link DataSource}.
+ * An {@link ExtractorInput} that wraps a {@link DataSource}. If the {@link DataSource} is a
+ * {@link ByteBufferDataSource}, data that hasn't been peeked can be read without copying it.
  */
-public final class DefaultExtractorInput implements ExtractorInput {
+public final class DefaultExtractorInput implements ByteBufferExtractorInput {
 
   private static final byte[] SCRATCH_SPACE = new byte[4096];
 
@@ -58,6 +61,22 @@ public final class DefaultExtractorInput implements ExtractorInput {
     return bytesRead;
   }
 
+  @Override
+  public ByteBuffer readBuffer(int length) throws IOException, InterruptedException {
+    if (peekBufferLength != 0 || !(dataSource instanceof ByteBufferDataSource)) {
+      return null;
+    }
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+    peekBufferPosition = 0;
+    ByteBuffer buffer = ((ByteBufferDataSource) dataSource).readBuffer(length);
+    if (buffer != null) {
+      commitBytesRead(buffer.remaining());
+    }
+    return buffer;
+  }
+
   @Override
   public boolean readFully(byte[] target, int offset, int length, boolean allowEndOfInput)
       throws IOException, InterruptedException {
@@ -31,14 +31,18 @@ import com.google.android.exoplayer.drm.DrmInitData;
 import com.google.android.exoplayer.upstream.Allocator;
 import com.google.android.exoplayer.upstream.DataSource;
 import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.DefaultUriDataSource;
+import com.google.android.exoplayer.upstream.HttpDataSource;
 import com.google.android.exoplayer.upstream.Loader;
 import com.google.android.exoplayer.upstream.Loader.Loadable;
+import com.google.android.exoplayer.upstream.UriDataSource;
 import com.google.android.exoplayer.util.Assertions;
 import com.google.android.exoplayer.util.Util;
 import java.io.EOFException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A {@link SampleSource} that extracts sample data using an {@link Extractor}.
@@ -65,6 +69,10 @@ import java.util.List;
  * <p>To override the default extractors, pass one or more {@link Extractor} instances to the
  * constructor. When reading a new stream, the first {@link Extractor} that returns {@code true}
  * from {@link Extractor#sniff(ExtractorInput)} will be used.
+ *
+ * <p>Data is read from the {@link DataSource} and extracted on the same loading thread. To read
+ * from the network in parallel with extraction, pass a
+ * {@link com.google.android.exoplayer.upstream.ReadAheadDataSource} wrapping the data source.
  */
 public final class ExtractorSampleSource implements SampleSource, SampleSourceReader,
     ExtractorOutput, Loader.Callback {
@@ -825,7 +833,7 @@ public final class ExtractorSampleSource implements SampleSource, SampleSourceRe
             length += position;
           }
           input = new DefaultExtractorInput(dataSource, position, length);
-          Extractor extractor = extractorHolder.selectExtractor(input);
+          Extractor extractor = extractorHolder.selectExtractor(input, uri, dataSource);
           if (pendingExtractorSeek) {
             extractor.seek();
             pendingExtractorSeek = false;
@@ -871,18 +879,34 @@ public final class ExtractorSampleSource implements SampleSource, SampleSourceRe
     /**
      * Returns an initialized extractor for reading {@code input}, and returns the same extractor on
      * later calls.
+     * <p>
+     * The extractors are asked to sniff the input in an order determined by
+     * {@link ExtractorSniffingOrder}. Peeked data is buffered by the input, so it is only read from
+     * the {@link DataSource} once however many extractors sniff it.
      *
      * @param input The {@link ExtractorInput} from which data should be read.
+     * @param uri The {@link Uri} of the media stream.
+     * @param dataSource The opened {@link DataSource} from which {@code input} reads.
      * @throws UnrecognizedInputFormatException Thrown if the input format could not be detected.
      * @throws IOException Thrown if the input could not be read.
      * @throws InterruptedException Thrown if the thread was interrupted.
      */
-    public Extractor selectExtractor(ExtractorInput input)
+    public Extractor selectExtractor(ExtractorInput input, Uri uri, DataSource dataSource)
         throws UnrecognizedInputFormatException, IOException, InterruptedException {
       if (extractor != null) {
         return extractor;
       }
-      for (Extractor extractor : extractors) {
+      Extractor[] sniffingOrder = extractors;
+      if (extractors.length > 1) {
+        Uri redirectedUri = null;
+        if (dataSource instanceof UriDataSource) {
+          String redirectedUriString = ((UriDataSource) dataSource).getUri();
+          redirectedUri = redirectedUriString == null ? null : Uri.parse(redirectedUriString);
+        }
+        sniffingOrder = ExtractorSniffingOrder.order(extractors, new Uri[] {uri, redirectedUri},
+            getContentType(dataSource));
+      }
+      for (Extractor extractor : sniffingOrder) {
         try {
           if (extractor.sniff(input)) {
             this.extractor = extractor;
@@ -897,10 +921,29 @@ public final class ExtractorSampleSource implements SampleSource, SampleSourceRe
       if (extractor == null) {
         throw new UnrecognizedInputFormatException(extractors);
       }
+      ExtractorSniffingOrder.onExtractorSelected(uri, extractor);
       extractor.init(extractorOutput);
       return extractor;
     }
 
+    private static String getContentType(DataSource dataSource) {
+      Map<String, List<String>> headers = null;
+      if (dataSource instanceof HttpDataSource) {
+        headers = ((HttpDataSource) dataSource).getResponseHeaders();
+      } else if (dataSource instanceof DefaultUriDataSource) {
+        headers = ((DefaultUriDataSource) dataSource).getResponseHeaders();
+      }
+      if (headers == null) {
+        return null;
+      }
+      for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+        if ("Content-Type".equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+          return header.getValue().get(0);
+        }
+      }
+      return null;
+    }
+
     public void release() {
       if (extractor != null) {
         extractor.release();
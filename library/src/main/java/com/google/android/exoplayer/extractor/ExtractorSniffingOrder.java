@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor;
+
+import android.net.Uri;
+import com.google.android.exoplayer.extractor.flv.FlvExtractor;
+import com.google.android.exoplayer.extractor.mp3.Mp3Extractor;
+import com.google.android.exoplayer.extractor.mp4.FragmentedMp4Extractor;
+import com.google.android.exoplayer.extractor.mp4.Mp4Extractor;
+import com.google.android.exoplayer.extractor.ogg.OggExtractor;
+import com.google.android.exoplayer.extractor.ts.AdtsExtractor;
+import com.google.android.exoplayer.extractor.ts.PsExtractor;
+import com.google.android.exoplayer.extractor.ts.TsExtractor;
+import com.google.android.exoplayer.extractor.wav.WavExtractor;
+import com.google.android.exoplayer.extractor.webm.WebmExtractor;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Orders extractors for sniffing, so that the extractor that is most likely to read a stream is
+ * tried first.
+ * <p>
+ * Extractors that match the MIME type or the file extension of the stream are tried first, followed
+ * by the extractor that was most recently selected for a stream from the same host, followed by the
+ * remaining extractors in their original order.
+ */
+/* package */ final class ExtractorSniffingOrder {
+
+  private static final int MAX_REMEMBERED_HOST_COUNT = 16;
+
+  private static final Map<String, Class<?>[]> EXTENSION_HINTS = new HashMap<>();
+  private static final Map<String, Class<?>[]> MIME_TYPE_HINTS = new HashMap<>();
+  static {
+    addHint(EXTENSION_HINTS, new String[] {"mp4", "m4a", "m4v", "m4s", "mov", "3gp"},
+        FragmentedMp4Extractor.class, Mp4Extractor.class);
+    addHint(EXTENSION_HINTS, new String[] {"webm", "mkv", "mka"}, WebmExtractor.class);
+    addHint(EXTENSION_HINTS, new String[] {"mp3"}, Mp3Extractor.class);
+    addHint(EXTENSION_HINTS, new String[] {"aac", "adts"}, AdtsExtractor.class);
+    addHint(EXTENSION_HINTS, new String[] {"ts"}, TsExtractor.class);
+    addHint(EXTENSION_HINTS, new String[] {"flv"}, FlvExtractor.class);
+    addHint(EXTENSION_HINTS, new String[] {"ogg", "oga", "opus"}, OggExtractor.class);
+    addHint(EXTENSION_HINTS, new String[] {"mpg", "mpeg", "ps", "vob"}, PsExtractor.class);
+    addHint(EXTENSION_HINTS, new String[] {"wav"}, WavExtractor.class);
+    addHint(MIME_TYPE_HINTS, new String[] {"video/mp4", "audio/mp4", "video/quicktime"},
+        FragmentedMp4Extractor.class, Mp4Extractor.class);
+    addHint(MIME_TYPE_HINTS,
+        new String[] {"video/webm", "audio/webm", "video/x-matroska", "audio/x-matroska"},
+        WebmExtractor.class);
+    addHint(MIME_TYPE_HINTS, new String[] {"audio/mpeg"}, Mp3Extractor.class);
+    addHint(MIME_TYPE_HINTS, new String[] {"audio/aac", "audio/aacp"}, AdtsExtractor.class);
+    addHint(MIME_TYPE_HINTS, new String[] {"video/mp2t"}, TsExtractor.class);
+    addHint(MIME_TYPE_HINTS, new String[] {"video/x-flv"}, FlvExtractor.class);
+    addHint(MIME_TYPE_HINTS, new String[] {"audio/ogg", "video/ogg", "application/ogg"},
+        OggExtractor.class);
+    addHint(MIME_TYPE_HINTS, new String[] {"video/mpeg", "video/mp2p"}, PsExtractor.class);
+    addHint(MIME_TYPE_HINTS, new String[] {"audio/wav", "audio/x-wav", "audio/wave"},
+        WavExtractor.class);
+    // The FLAC extractor is in an extension, so it's loaded using reflection in the same way as by
+    // ExtractorSampleSource.
+    try {
+      Class<?> flacExtractorClass =
+          Class.forName("com.google.android.exoplayer.ext.flac.FlacExtractor");
+      addHint(EXTENSION_HINTS, new String[] {"flac"}, flacExtractorClass);
+      addHint(MIME_TYPE_HINTS, new String[] {"audio/flac", "audio/x-flac"}, flacExtractorClass);
+    } catch (ClassNotFoundException e) {
+      // Extractor not found.
+    }
+  }
+
+  // The class of the extractor most recently selected for each host, least recently used first.
+  // Only the MAX_REMEMBERED_HOST_COUNT most recently used hosts are remembered.
+  private static final LinkedHashMap<String, Class<?>> SELECTED_EXTRACTOR_CLASSES =
+      new LinkedHashMap<String, Class<?>>(MAX_REMEMBERED_HOST_COUNT, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Class<?>> eldest) {
+          return size() > MAX_REMEMBERED_HOST_COUNT;
+        }
+      };
+
+  private ExtractorSniffingOrder() {}
+
+  /**
+   * Returns the order in which {@code extractors} should sniff a stream.
+   *
+   * @param extractors The extractors to order.
+   * @param uris The URIs of the stream, including any URI to which it was redirected. Null elements
+   *     are ignored.
+   * @param mimeType The MIME type of the stream, or null if unknown. Any parameters are ignored.
+   * @return The ordered extractors. If the order is unchanged, {@code extractors} is returned.
+   */
+  public static Extractor[] order(Extractor[] extractors, Uri[] uris, String mimeType) {
+    Class<?>[] mimeTypeHint = mimeType == null ? null : MIME_TYPE_HINTS.get(normalize(mimeType));
+    Class<?> selectedExtractorClass = null;
+    Class<?>[][] extensionHints = new Class<?>[uris.length][];
+    for (int i = 0; i < uris.length; i++) {
+      if (uris[i] != null) {
+        extensionHints[i] = EXTENSION_HINTS.get(getExtension(uris[i]));
+        if (selectedExtractorClass == null) {
+          selectedExtractorClass = getSelectedExtractorClass(uris[i]);
+        }
+      }
+    }
+
+    int[] ranks = new int[extractors.length];
+    boolean reordered = false;
+    for (int i = 0; i < extractors.length; i++) {
+      Extractor extractor = extractors[i];
+      if (matches(mimeTypeHint, extractor)) {
+        ranks[i] = 0;
+      } else if (matchesAny(extensionHints, extractor)) {
+        ranks[i] = 1;
+      } else if (selectedExtractorClass != null
+          && selectedExtractorClass.isInstance(extractor)) {
+        ranks[i] = 2;
+      } else {
+        ranks[i] = 3;
+      }
+      reordered |= i > 0 && ranks[i] < ranks[i - 1];
+    }
+    if (!reordered) {
+      return extractors;
+    }
+
+    // Sort by rank, preserving the original order of extractors with the same rank.
+    Extractor[] orderedExtractors = new Extractor[extractors.length];
+    int orderedCount = 0;
+    for (int rank = 0; rank <= 3; rank++) {
+      for (int i = 0; i < extractors.length; i++) {
+        if (ranks[i] == rank) {
+          orderedExtractors[orderedCount++] = extractors[i];
+        }
+      }
+    }
+    return orderedExtractors;
+  }
+
+  /**
+   * Records that {@code extractor} was selected for a stream, so that it is tried earlier for later
+   * streams from the same host.
+   *
+   * @param uri The URI of the stream.
+   * @param extractor The selected extractor.
+   */
+  public static void onExtractorSelected(Uri uri, Extractor extractor) {
+    String host = uri.getHost();
+    if (host != null) {
+      synchronized (SELECTED_EXTRACTOR_CLASSES) {
+        SELECTED_EXTRACTOR_CLASSES.put(host, extractor.getClass());
+      }
+    }
+  }
+
+  private static Class<?> getSelectedExtractorClass(Uri uri) {
+    String host = uri.getHost();
+    if (host == null) {
+      return null;
+    }
+    synchronized (SELECTED_EXTRACTOR_CLASSES) {
+      return SELECTED_EXTRACTOR_CLASSES.get(host);
+    }
+  }
+
+  private static String getExtension(Uri uri) {
+    String lastPathSegment = uri.getLastPathSegment();
+    if (lastPathSegment == null) {
+      return null;
+    }
+    int extensionIndex = lastPathSegment.lastIndexOf('.');
+    return extensionIndex == -1 ? null : normalize(lastPathSegment.substring(extensionIndex + 1));
+  }
+
+  private static String normalize(String value) {
+    int parametersIndex = value.indexOf(';');
+    if (parametersIndex != -1) {
+      value = value.substring(0, parametersIndex);
+    }
+    return value.trim().toLowerCase(Locale.US);
+  }
+
+  private static boolean matchesAny(Class<?>[][] hints, Extractor extractor) {
+    for (Class<?>[] hint : hints) {
+      if (matches(hint, extractor)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean matches(Class<?>[] hint, Extractor extractor) {
+    if (hint != null) {
+      for (Class<?> extractorClass : hint) {
+        if (extractorClass.isInstance(extractor)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static void addHint(Map<String, Class<?>[]> hints, String[] keys,
+      Class<?>... extractorClasses) {
+    for (String key : keys) {
+      hints.put(key, extractorClasses);
+    }
+  }
+
+}
@@ -19,16 +19,21 @@ import com.google.android.exoplayer.C;
 import com.google.android.exoplayer.SampleHolder;
 import com.google.android.exoplayer.upstream.Allocation;
 import com.google.android.exoplayer.upstream.Allocator;
+import com.google.android.exoplayer.upstream.ByteBufferDataSource;
 import com.google.android.exoplayer.upstream.DataSource;
 import com.google.android.exoplayer.util.Assertions;
 import com.google.android.exoplayer.util.ParsableByteArray;
 import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.Arrays;
 
 /**
  * A rolling buffer of sample data and corresponding sample information.
+ * <p>
+ * The buffer is written by a single loading thread and read by a single consuming thread. Sample
+ * data and information are held in queues that don't lock, so neither thread ever waits for the
+ * other.
  */
 /* package */ final class RollingSampleBuffer {
 
@@ -38,7 +43,7 @@ import java.util.concurrent.LinkedBlockingDeque;
   private final int allocationLength;
 
   private final InfoQueue infoQueue;
-  private final LinkedBlockingDeque<Allocation> dataQueue;
+  private final AllocationQueue dataQueue;
   private final SampleExtrasHolder extrasHolder;
   private final ParsableByteArray scratch;
 
@@ -57,7 +62,7 @@ import java.util.concurrent.LinkedBlockingDeque;
     this.allocator = allocator;
     allocationLength = allocator.getIndividualAllocationLength();
     infoQueue = new InfoQueue();
-    dataQueue = new LinkedBlockingDeque<>();
+    dataQueue = new AllocationQueue();
     extrasHolder = new SampleExtrasHolder();
     scratch = new ParsableByteArray(INITIAL_SCRATCH_SIZE);
     lastAllocationOffset = allocationLength;
@@ -71,8 +76,7 @@ import java.util.concurrent.LinkedBlockingDeque;
   public void clear() {
     infoQueue.clear();
 
-    allocator.release(dataQueue.toArray(new Allocation[dataQueue.size()]));
-    dataQueue.clear();
+    allocator.release(dataQueue.clear());
 
     totalBytesDropped = 0;
     totalBytesWritten = 0;
@@ -274,14 +278,15 @@ import java.util.concurrent.LinkedBlockingDeque;
    * @param length The number of bytes to read.
    */
   private void readData(long absolutePosition, ByteBuffer target, int length) {
+    int relativePosition = (int) (absolutePosition - totalBytesDropped);
+    int allocationIndex = relativePosition / allocationLength;
+    int positionInAllocation = relativePosition % allocationLength;
     int remaining = length;
     while (remaining > 0) {
-      dropDownstreamTo(absolutePosition);
-      int positionInAllocation = (int) (absolutePosition - totalBytesDropped);
       int toCopy = Math.min(remaining, allocationLength - positionInAllocation);
-      Allocation allocation = dataQueue.peek();
+      Allocation allocation = dataQueue.get(allocationIndex++);
       target.put(allocation.data, allocation.translateOffset(positionInAllocation), toCopy);
-      absolutePosition += toCopy;
+      positionInAllocation = 0;
       remaining -= toCopy;
     }
   }
@@ -295,15 +300,16 @@ import java.util.concurrent.LinkedBlockingDeque;
    */
   // TODO: Consider reducing duplication of this method and the one above.
   private void readData(long absolutePosition, byte[] target, int length) {
+    int relativePosition = (int) (absolutePosition - totalBytesDropped);
+    int allocationIndex = relativePosition / allocationLength;
+    int positionInAllocation = relativePosition % allocationLength;
     int bytesRead = 0;
     while (bytesRead < length) {
-      dropDownstreamTo(absolutePosition);
-      int positionInAllocation = (int) (absolutePosition - totalBytesDropped);
       int toCopy = Math.min(length - bytesRead, allocationLength - positionInAllocation);
-      Allocation allocation = dataQueue.peek();
+      Allocation allocation = dataQueue.get(allocationIndex++);
       System.arraycopy(allocation.data, allocation.translateOffset(positionInAllocation), target,
           bytesRead, toCopy);
-      absolutePosition += toCopy;
+      positionInAllocation = 0;
       bytesRead += toCopy;
     }
   }
@@ -318,7 +324,7 @@ import java.util.concurrent.LinkedBlockingDeque;
     int relativePosition = (int) (absolutePosition - totalBytesDropped);
     int allocationIndex = relativePosition / allocationLength;
     for (int i = 0; i < allocationIndex; i++) {
-      allocator.release(dataQueue.remove());
+      allocator.release(dataQueue.removeFirst());
       totalBytesDropped += allocationLength;
     }
   }
@@ -357,8 +363,17 @@ import java.util.concurrent.LinkedBlockingDeque;
   public int appendData(DataSource dataSource, int length, boolean allowEndOfInput)
       throws IOException {
     length = prepareForAppend(length);
-    int bytesAppended = dataSource.read(lastAllocation.data,
-        lastAllocation.translateOffset(lastAllocationOffset), length);
+    int bytesAppended;
+    ByteBuffer buffer = dataSource instanceof ByteBufferDataSource
+        ? ((ByteBufferDataSource) dataSource).readBuffer(length) : null;
+    if (buffer != null) {
+      bytesAppended = buffer.remaining();
+      buffer.get(lastAllocation.data, lastAllocation.translateOffset(lastAllocationOffset),
+          bytesAppended);
+    } else {
+      bytesAppended = dataSource.read(lastAllocation.data,
+          lastAllocation.translateOffset(lastAllocationOffset), length);
+    }
     if (bytesAppended == C.RESULT_END_OF_INPUT) {
       if (allowEndOfInput) {
         return C.RESULT_END_OF_INPUT;
@@ -385,8 +400,18 @@ import java.util.concurrent.LinkedBlockingDeque;
   public int appendData(ExtractorInput input, int length, boolean allowEndOfInput)
       throws IOException, InterruptedException {
     length = prepareForAppend(length);
-    int bytesAppended = input.read(lastAllocation.data,
-        lastAllocation.translateOffset(lastAllocationOffset), length);
+    int bytesAppended;
+    ByteBuffer buffer = input instanceof ByteBufferExtractorInput
+        ? ((ByteBufferExtractorInput) input).readBuffer(length) : null;
+    if (buffer != null) {
+      // Copy directly from the input's buffer, which may be a mapping of a cached file.
+      bytesAppended = buffer.remaining();
+      buffer.get(lastAllocation.data, lastAllocation.translateOffset(lastAllocationOffset),
+          bytesAppended);
+    } else {
+      bytesAppended = input.read(lastAllocation.data,
+          lastAllocation.translateOffset(lastAllocationOffset), length);
+    }
     if (bytesAppended == C.RESULT_END_OF_INPUT) {
       if (allowEndOfInput) {
         return C.RESULT_END_OF_INPUT;
@@ -444,31 +469,37 @@ import java.util.concurrent.LinkedBlockingDeque;
 
   /**
    * Holds information about the samples in the rolling buffer.
+   * <p>
+   * Samples are held in a ring buffer, indexed by their absolute indices. The loading thread
+   * writes samples beyond the write index and then advances it, and the consuming thread reads
+   * samples before the write index and then advances the read index. When the ring buffer is full
+   * the loading thread copies the samples into a larger one, which the consuming thread picks up
+   * when it next reads the write index. Neither thread locks.
+   * <p>
+   * The absolute indices and timestamps of keyframes are also held in a ring buffer, so that the
+   * keyframe to which to skip can be found by binary search.
    */
   private static final class InfoQueue {
 
-    private static final int SAMPLE_CAPACITY_INCREMENT = 1000;
+    private static final int INITIAL_CAPACITY = 1024;
 
-    private int capacity;
+    // Written only by the consuming thread, except when there is no loading thread.
+    private volatile int readIndex;
+    private volatile int keyframeReadIndex;
+    // Written only by the loading thread, except when there is no loading thread.
+    private volatile int writeIndex;
+    private volatile int keyframeWriteIndex;
+    private volatile boolean keyframeTimesUnordered;
+    // Written only by the loading thread. Must be read after writeIndex and keyframeWriteIndex by
+    // the consuming thread.
+    private volatile InfoStorage storage;
 
-    private long[] offsets;
-    private int[] sizes;
-    private int[] flags;
-    private long[] timesUs;
-    private byte[][] encryptionKeys;
-
-    private int queueSize;
-    private int absoluteReadIndex;
-    private int relativeReadIndex;
-    private int relativeWriteIndex;
+    // Accessed only by the loading thread, except when there is no loading thread.
+    private long lastKeyframeTimeUs;
 
     public InfoQueue() {
-      capacity = SAMPLE_CAPACITY_INCREMENT;
-      offsets = new long[capacity];
-      timesUs = new long[capacity];
-      flags = new int[capacity];
-      sizes = new int[capacity];
-      encryptionKeys = new byte[capacity][];
+      storage = new InfoStorage(INITIAL_CAPACITY);
+      lastKeyframeTimeUs = Long.MIN_VALUE;
     }
 
     // Called by the consuming thread, but only when there is no loading thread.
@@ -477,17 +508,20 @@ import java.util.concurrent.LinkedBlockingDeque;
      * Clears the queue.
      */
     public void clear() {
-      absoluteReadIndex = 0;
-      relativeReadIndex = 0;
-      relativeWriteIndex = 0;
-      queueSize = 0;
+      readIndex = 0;
+      keyframeReadIndex = 0;
+      writeIndex = 0;
+      keyframeWriteIndex = 0;
+      keyframeTimesUnordered = false;
+      lastKeyframeTimeUs = Long.MIN_VALUE;
+      Arrays.fill(storage.encryptionKeys, null);
     }
 
     /**
      * Returns the current absolute write index.
      */
     public int getWriteIndex() {
-      return absoluteReadIndex + queueSize;
+      return writeIndex;
     }
 
     /**
@@ -497,21 +531,24 @@ import java.util.concurrent.LinkedBlockingDeque;
      * @return The reduced total number of bytes written, after the samples have been discarded.
      */
     public long discardUpstreamSamples(int discardFromIndex) {
-      int discardCount = getWriteIndex() - discardFromIndex;
-      Assertions.checkArgument(0 <= discardCount && discardCount <= queueSize);
-
+      int discardCount = writeIndex - discardFromIndex;
+      Assertions.checkArgument(0 <= discardCount && discardCount <= writeIndex - readIndex);
+      InfoStorage storage = this.storage;
       if (discardCount == 0) {
-        if (absoluteReadIndex == 0) {
-          // queueSize == absoluteReadIndex == 0, so nothing has been written to the queue.
+        if (writeIndex == 0) {
+          // Nothing has been written to the queue.
           return 0;
         }
-        int lastWriteIndex = (relativeWriteIndex == 0 ? capacity : relativeWriteIndex) - 1;
-        return offsets[lastWriteIndex] + sizes[lastWriteIndex];
+        int lastWriteSlot = (writeIndex - 1) & storage.mask;
+        return storage.offsets[lastWriteSlot] + storage.sizes[lastWriteSlot];
       }
-
-      queueSize -= discardCount;
-      relativeWriteIndex = (relativeWriteIndex + capacity - discardCount) % capacity;
-      return offsets[relativeWriteIndex];
+      writeIndex = discardFromIndex;
+      // Discard the keyframes of the discarded samples.
+      keyframeWriteIndex = findFirstKeyframeAtOrAfter(storage, keyframeReadIndex,
+          keyframeWriteIndex, discardFromIndex);
+      lastKeyframeTimeUs = keyframeWriteIndex == keyframeReadIndex ? Long.MIN_VALUE
+          : storage.keyframeTimesUs[(keyframeWriteIndex - 1) & storage.mask];
+      return storage.offsets[discardFromIndex & storage.mask];
     }
 
     // Called by the consuming thread.
@@ -520,13 +557,11 @@ import java.util.concurrent.LinkedBlockingDeque;
      * Returns the current absolute read index.
      */
     public int getReadIndex() {
-      return absoluteReadIndex;
+      return readIndex;
     }
 
     /**
      * Fills {@code holder} with information about the current sample, but does not write its data.
-     * The first entry in {@code offsetHolder} is filled with the absolute position of the sample's
-     * data in the rolling buffer.
      * <p>
      * Populates {@link SampleHolder#size}, {@link SampleHolder#timeUs}, {@link SampleHolder#flags}
      * and the {@code extrasHolder}.
@@ -535,15 +570,18 @@ import java.util.concurrent.LinkedBlockingDeque;
      * @param extrasHolder The holder into which extra sample information should be written.
      * @return True if the holders were filled. False if there is no current sample.
      */
-    public synchronized boolean peekSample(SampleHolder holder, SampleExtrasHolder extrasHolder) {
-      if (queueSize == 0) {
+    public boolean peekSample(SampleHolder holder, SampleExtrasHolder extrasHolder) {
+      int readIndex = this.readIndex;
+      if (readIndex == writeIndex) {
         return false;
       }
-      holder.timeUs = timesUs[relativeReadIndex];
-      holder.size = sizes[relativeReadIndex];
-      holder.flags = flags[relativeReadIndex];
-      extrasHolder.offset = offsets[relativeReadIndex];
-      extrasHolder.encryptionKeyId = encryptionKeys[relativeReadIndex];
+      InfoStorage storage = this.storage;
+      int slot = readIndex & storage.mask;
+      holder.timeUs = storage.timesUs[slot];
+      holder.size = storage.sizes[slot];
+      holder.flags = storage.flags[slot];
+      extrasHolder.offset = storage.offsets[slot];
+      extrasHolder.encryptionKeyId = storage.encryptionKeys[slot];
       return true;
     }
 
@@ -553,16 +591,27 @@ import java.util.concurrent.LinkedBlockingDeque;
      * @return The absolute position of the first byte in the rolling buffer that may still be
      *     required after advancing the index. Data prior to this position can be dropped.
      */
-    public synchronized long moveToNextSample() {
-      queueSize--;
-      int lastReadIndex = relativeReadIndex++;
-      absoluteReadIndex++;
-      if (relativeReadIndex == capacity) {
-        // Wrap around.
-        relativeReadIndex = 0;
+    public long moveToNextSample() {
+      int readIndex = this.readIndex;
+      int writeIndex = this.writeIndex;
+      int keyframeReadIndex = this.keyframeReadIndex;
+      int keyframeWriteIndex = this.keyframeWriteIndex;
+      InfoStorage storage = this.storage;
+      long nextOffset;
+      if (readIndex + 1 < writeIndex) {
+        nextOffset = storage.offsets[(readIndex + 1) & storage.mask];
+      } else {
+        int slot = readIndex & storage.mask;
+        nextOffset = storage.offsets[slot] + storage.sizes[slot];
       }
-      return queueSize > 0 ? offsets[relativeReadIndex]
-          : (sizes[lastReadIndex] + offsets[lastReadIndex]);
+      // Keep the first keyframe in the index at or after the read index.
+      if (keyframeReadIndex != keyframeWriteIndex
+          && storage.keyframeSampleIndices[keyframeReadIndex & storage.mask] == readIndex) {
+        this.keyframeReadIndex = keyframeReadIndex + 1;
+      }
+      // The slot may be overwritten by the loading thread once the read index is advanced.
+      this.readIndex = readIndex + 1;
+      return nextOffset;
     }
 
     /**
@@ -571,91 +620,293 @@ import java.util.concurrent.LinkedBlockingDeque;
      * @param timeUs The seek time.
      * @return The offset of the keyframe's data if the keyframe was present. -1 otherwise.
      */
-    public synchronized long skipToKeyframeBefore(long timeUs) {
-      if (queueSize == 0 || timeUs < timesUs[relativeReadIndex]) {
+    public long skipToKeyframeBefore(long timeUs) {
+      int readIndex = this.readIndex;
+      int writeIndex = this.writeIndex;
+      int keyframeReadIndex = this.keyframeReadIndex;
+      int keyframeWriteIndex = this.keyframeWriteIndex;
+      InfoStorage storage = this.storage;
+      int mask = storage.mask;
+      if (readIndex == writeIndex || timeUs < storage.timesUs[readIndex & mask]) {
         return -1;
       }
 
-      int lastWriteIndex = (relativeWriteIndex == 0 ? capacity : relativeWriteIndex) - 1;
-      long lastTimeUs = timesUs[lastWriteIndex];
+      long lastTimeUs = storage.timesUs[(writeIndex - 1) & mask];
       if (timeUs > lastTimeUs) {
         return -1;
       }
 
-      // TODO: This can be optimized further using binary search, although the fact that the array
-      // is cyclic means we'd need to implement the binary search ourselves.
-      int sampleCount = 0;
-      int sampleCountToKeyframe = -1;
-      int searchIndex = relativeReadIndex;
-      while (searchIndex != relativeWriteIndex) {
-        if (timesUs[searchIndex] > timeUs) {
+      // Keyframes are published before their samples, so ignore any whose samples aren't visible.
+      keyframeWriteIndex = findFirstKeyframeAtOrAfter(storage, keyframeReadIndex,
+          keyframeWriteIndex, writeIndex);
+      int keyframeIndex;
+      if (keyframeTimesUnordered) {
+        keyframeIndex = findKeyframeBeforeLinear(storage, readIndex, writeIndex, timeUs);
+        if (keyframeIndex == -1) {
+          return -1;
+        }
+        keyframeReadIndex = findFirstKeyframeAtOrAfter(storage, keyframeReadIndex,
+            keyframeWriteIndex, keyframeIndex);
+      } else {
+        // Find the last keyframe whose timestamp is not greater than the seek time.
+        int low = keyframeReadIndex;
+        int high = keyframeWriteIndex;
+        while (low < high) {
+          int mid = (low + high) >>> 1;
+          if (storage.keyframeTimesUs[mid & mask] <= timeUs) {
+            low = mid + 1;
+          } else {
+            high = mid;
+          }
+        }
+        if (low == keyframeReadIndex) {
+          return -1;
+        }
+        keyframeReadIndex = low - 1;
+        keyframeIndex = storage.keyframeSampleIndices[keyframeReadIndex & mask];
+      }
+
+      this.keyframeReadIndex = keyframeReadIndex;
+      this.readIndex = keyframeIndex;
+      return storage.offsets[keyframeIndex & mask];
+    }
+
+    /**
+     * Finds the keyframe before the specified time by scanning the samples. Used when keyframe
+     * timestamps are not in increasing order, in which case the index can't be binary searched.
+     *
+     * @return The absolute index of the keyframe, or -1 if it wasn't found.
+     */
+    private static int findKeyframeBeforeLinear(InfoStorage storage, int readIndex,
+        int writeIndex, long timeUs) {
+      int keyframeIndex = -1;
+      for (int index = readIndex; index != writeIndex; index++) {
+        int slot = index & storage.mask;
+        if (storage.timesUs[slot] > timeUs) {
           // We've gone too far.
           break;
-        } else if ((flags[searchIndex] & C.SAMPLE_FLAG_SYNC) != 0) {
+        } else if ((storage.flags[slot] & C.SAMPLE_FLAG_SYNC) != 0) {
           // We've found a keyframe, and we're still before the seek position.
-          sampleCountToKeyframe = sampleCount;
+          keyframeIndex = index;
         }
-        searchIndex = (searchIndex + 1) % capacity;
-        sampleCount++;
       }
+      return keyframeIndex;
+    }
 
-      if (sampleCountToKeyframe == -1) {
-        return -1;
+    /**
+     * Returns the index in the keyframe index of the first keyframe whose absolute sample index is
+     * not less than {@code sampleIndex}, or {@code keyframeWriteIndex} if there is none.
+     */
+    private static int findFirstKeyframeAtOrAfter(InfoStorage storage, int keyframeReadIndex,
+        int keyframeWriteIndex, int sampleIndex) {
+      int low = keyframeReadIndex;
+      int high = keyframeWriteIndex;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (storage.keyframeSampleIndices[mid & storage.mask] < sampleIndex) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
       }
-
-      queueSize -= sampleCountToKeyframe;
-      relativeReadIndex = (relativeReadIndex + sampleCountToKeyframe) % capacity;
-      absoluteReadIndex += sampleCountToKeyframe;
-      return offsets[relativeReadIndex];
+      return low;
     }
 
     // Called by the loading thread.
 
-    public synchronized void commitSample(long timeUs, int sampleFlags, long offset, int size,
+    public void commitSample(long timeUs, int sampleFlags, long offset, int size,
         byte[] encryptionKey) {
-      timesUs[relativeWriteIndex] = timeUs;
-      offsets[relativeWriteIndex] = offset;
-      sizes[relativeWriteIndex] = size;
-      flags[relativeWriteIndex] = sampleFlags;
-      encryptionKeys[relativeWriteIndex] = encryptionKey;
-      // Increment the write index.
-      queueSize++;
-      if (queueSize == capacity) {
-        // Increase the capacity.
-        int newCapacity = capacity + SAMPLE_CAPACITY_INCREMENT;
-        long[] newOffsets = new long[newCapacity];
-        long[] newTimesUs = new long[newCapacity];
-        int[] newFlags = new int[newCapacity];
-        int[] newSizes = new int[newCapacity];
-        byte[][] newEncryptionKeys = new byte[newCapacity][];
-        int beforeWrap = capacity - relativeReadIndex;
-        System.arraycopy(offsets, relativeReadIndex, newOffsets, 0, beforeWrap);
-        System.arraycopy(timesUs, relativeReadIndex, newTimesUs, 0, beforeWrap);
-        System.arraycopy(flags, relativeReadIndex, newFlags, 0, beforeWrap);
-        System.arraycopy(sizes, relativeReadIndex, newSizes, 0, beforeWrap);
-        System.arraycopy(encryptionKeys, relativeReadIndex, newEncryptionKeys, 0, beforeWrap);
-        int afterWrap = relativeReadIndex;
-        System.arraycopy(offsets, 0, newOffsets, beforeWrap, afterWrap);
-        System.arraycopy(timesUs, 0, newTimesUs, beforeWrap, afterWrap);
-        System.arraycopy(flags, 0, newFlags, beforeWrap, afterWrap);
-        System.arraycopy(sizes, 0, newSizes, beforeWrap, afterWrap);
-        System.arraycopy(encryptionKeys, 0, newEncryptionKeys, beforeWrap, afterWrap);
-        offsets = newOffsets;
-        timesUs = newTimesUs;
-        flags = newFlags;
-        sizes = newSizes;
-        encryptionKeys = newEncryptionKeys;
-        relativeReadIndex = 0;
-        relativeWriteIndex = capacity;
-        queueSize = capacity;
-        capacity = newCapacity;
-      } else {
-        relativeWriteIndex++;
-        if (relativeWriteIndex == capacity) {
-          // Wrap around.
-          relativeWriteIndex = 0;
+      int writeIndex = this.writeIndex;
+      int keyframeWriteIndex = this.keyframeWriteIndex;
+      InfoStorage storage = ensureCapacity(writeIndex, keyframeWriteIndex);
+      int slot = writeIndex & storage.mask;
+      storage.timesUs[slot] = timeUs;
+      storage.offsets[slot] = offset;
+      storage.sizes[slot] = size;
+      storage.flags[slot] = sampleFlags;
+      storage.encryptionKeys[slot] = encryptionKey;
+      if ((sampleFlags & C.SAMPLE_FLAG_SYNC) != 0) {
+        addKeyframe(storage, keyframeWriteIndex++, writeIndex, timeUs);
+        this.keyframeWriteIndex = keyframeWriteIndex;
+      }
+      // Publish the sample.
+      this.writeIndex = writeIndex + 1;
+    }
+
+    private void addKeyframe(InfoStorage storage, int keyframeIndex, int sampleIndex,
+        long timeUs) {
+      if (timeUs < lastKeyframeTimeUs) {
+        keyframeTimesUnordered = true;
+      }
+      lastKeyframeTimeUs = timeUs;
+      int slot = keyframeIndex & storage.mask;
+      storage.keyframeSampleIndices[slot] = sampleIndex;
+      storage.keyframeTimesUs[slot] = timeUs;
+    }
+
+    /**
+     * Ensures that there's space to write a sample, growing the ring buffers if necessary.
+     *
+     * @param writeIndex The current write index.
+     * @param keyframeWriteIndex The current keyframe write index.
+     * @return The storage into which the sample should be written.
+     */
+    private InfoStorage ensureCapacity(int writeIndex, int keyframeWriteIndex) {
+      InfoStorage storage = this.storage;
+      int readIndex = this.readIndex;
+      int keyframeReadIndex = this.keyframeReadIndex;
+      // The keyframe read index may lag the read index by one keyframe.
+      int requiredCapacity = Math.max(writeIndex - readIndex,
+          keyframeWriteIndex - keyframeReadIndex) + 1;
+      if (requiredCapacity <= storage.capacity) {
+        return storage;
+      }
+      int newCapacity = storage.capacity;
+      while (newCapacity < requiredCapacity) {
+        newCapacity *= 2;
+      }
+      // Samples before the read index may be copied unnecessarily if the consuming thread advances
+      // the read index concurrently, but the consuming thread only reads the samples it has seen
+      // in the storage that was current when it last read the write index.
+      InfoStorage newStorage = new InfoStorage(newCapacity);
+      for (int index = readIndex; index != writeIndex; index++) {
+        int slot = index & storage.mask;
+        int newSlot = index & newStorage.mask;
+        newStorage.timesUs[newSlot] = storage.timesUs[slot];
+        newStorage.offsets[newSlot] = storage.offsets[slot];
+        newStorage.sizes[newSlot] = storage.sizes[slot];
+        newStorage.flags[newSlot] = storage.flags[slot];
+        newStorage.encryptionKeys[newSlot] = storage.encryptionKeys[slot];
+      }
+      for (int index = keyframeReadIndex; index != keyframeWriteIndex; index++) {
+        int slot = index & storage.mask;
+        int newSlot = index & newStorage.mask;
+        newStorage.keyframeSampleIndices[newSlot] = storage.keyframeSampleIndices[slot];
+        newStorage.keyframeTimesUs[newSlot] = storage.keyframeTimesUs[slot];
+      }
+      this.storage = newStorage;
+      return newStorage;
+    }
+
+  }
+
+  /**
+   * The arrays of an {@link InfoQueue}, whose capacity is a power of two. The keyframe arrays are
+   * indexed by keyframe index rather than by sample index.
+   */
+  private static final class InfoStorage {
+
+    public final int capacity;
+    public final int mask;
+    public final long[] offsets;
+    public final int[] sizes;
+    public final int[] flags;
+    public final long[] timesUs;
+    public final byte[][] encryptionKeys;
+    public final int[] keyframeSampleIndices;
+    public final long[] keyframeTimesUs;
+
+    public InfoStorage(int capacity) {
+      this.capacity = capacity;
+      mask = capacity - 1;
+      offsets = new long[capacity];
+      sizes = new int[capacity];
+      flags = new int[capacity];
+      timesUs = new long[capacity];
+      encryptionKeys = new byte[capacity][];
+      keyframeSampleIndices = new int[capacity];
+      keyframeTimesUs = new long[capacity];
+    }
+
+  }
+
+  /**
+   * Holds the allocations of the rolling buffer, in the order in which they were written.
+   * <p>
+   * Allocations are held in a ring buffer. Only the loading thread adds allocations, and only the
+   * consuming thread removes them, so neither thread locks, as for {@link InfoQueue}.
+   */
+  private static final class AllocationQueue {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Written only by the consuming thread, except when there is no loading thread.
+    private volatile int head;
+    // Written only by the loading thread, except when there is no loading thread.
+    private volatile int tail;
+    // Written only by the loading thread. Must be read after tail by the consuming thread.
+    private volatile Allocation[] allocations;
+
+    public AllocationQueue() {
+      allocations = new Allocation[INITIAL_CAPACITY];
+    }
+
+    // Called by the loading thread.
+
+    public void add(Allocation allocation) {
+      int head = this.head;
+      int tail = this.tail;
+      Allocation[] allocations = this.allocations;
+      if (tail - head == allocations.length) {
+        Allocation[] newAllocations = new Allocation[allocations.length * 2];
+        for (int i = head; i != tail; i++) {
+          newAllocations[i & (newAllocations.length - 1)] =
+              allocations[i & (allocations.length - 1)];
         }
+        this.allocations = newAllocations;
+        allocations = newAllocations;
+      }
+      allocations[tail & (allocations.length - 1)] = allocation;
+      this.tail = tail + 1;
+    }
+
+    // Called by the consuming thread.
+
+    public int size() {
+      return tail - head;
+    }
+
+    /**
+     * Returns the allocation at the specified index, relative to the first allocation.
+     */
+    public Allocation get(int index) {
+      // The allocations must be read after the tail, so that they include any allocation that's
+      // been added.
+      Assertions.checkState(index < tail - head);
+      Allocation[] allocations = this.allocations;
+      return allocations[(head + index) & (allocations.length - 1)];
+    }
+
+    public Allocation removeFirst() {
+      Allocation allocation = get(0);
+      head++;
+      return allocation;
+    }
+
+    // Called by the consuming thread, but only when there is no loading thread.
+
+    public Allocation peekLast() {
+      return tail == head ? null : allocations[(tail - 1) & (allocations.length - 1)];
+    }
+
+    public Allocation removeLast() {
+      Allocation allocation = allocations[(tail - 1) & (allocations.length - 1)];
+      tail--;
+      return allocation;
+    }
+
+    /**
+     * Clears the queue, returning the allocations that it held.
+     */
+    public Allocation[] clear() {
+      Allocation[] removedAllocations = new Allocation[tail - head];
+      for (int i = 0; i < removedAllocations.length; i++) {
+        removedAllocations[i] = get(i);
       }
+      Arrays.fill(allocations, null);
+      head = 0;
+      tail = 0;
+      return removedAllocations;
     }
 
   }
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor;
+
+/**
+ * A cache of the seek indices built by extractors, so that they don't need to be rebuilt when the
+ * same media is played again.
+ * <p>
+ * Indices are keyed by a string that identifies the media (typically its URI) and the length of
+ * the media in bytes, so that an index isn't used if the media changes length. Implementations
+ * must be thread safe, since extractors may use the cache on different loading threads.
+ */
+public interface SeekIndexCache {
+
+  /**
+   * Returns the index of the media with the given key and length, if cached.
+   *
+   * @param key The key that identifies the media.
+   * @param contentLength The length of the media in bytes.
+   * @return The cached index, or null if there isn't one.
+   */
+  ChunkIndex get(String key, long contentLength);
+
+  /**
+   * Caches the index of the media with the given key and length.
+   *
+   * @param key The key that identifies the media.
+   * @param contentLength The length of the media in bytes.
+   * @param chunkIndex The index. Its arrays must not be modified after it's been cached.
+   */
+  void put(String key, long contentLength, ChunkIndex chunkIndex);
+
+}
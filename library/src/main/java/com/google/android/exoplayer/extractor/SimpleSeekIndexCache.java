@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor;
+
+import android.util.Log;
+import com.google.android.exoplayer.util.Assertions;
+import com.google.android.exoplayer.util.AtomicFile;
+import com.google.android.exoplayer.util.Util;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A {@link SeekIndexCache} that holds the most recently used indices in memory and, if a directory
+ * is provided, persists each index to a file in that directory so that it's available to later
+ * instances (e.g. after the application is restarted).
+ */
+public final class SimpleSeekIndexCache implements SeekIndexCache {
+
+  private static final String TAG = "SimpleSeekIndexCache";
+
+  private static final String FILE_EXTENSION = ".sidx";
+  private static final int VERSION = 1;
+
+  private final File directory;
+  private final LinkedHashMap<String, ChunkIndex> entries;
+
+  /**
+   * Creates a cache that holds indices in memory only.
+   *
+   * @param maxEntryCount The maximum number of indices to hold in memory.
+   */
+  public SimpleSeekIndexCache(int maxEntryCount) {
+    this(maxEntryCount, null);
+  }
+
+  /**
+   * @param maxEntryCount The maximum number of indices to hold in memory.
+   * @param directory The directory in which to persist indices, or null to hold indices in memory
+   *     only. The directory is created if it doesn't exist.
+   */
+  public SimpleSeekIndexCache(final int maxEntryCount, File directory) {
+    Assertions.checkArgument(maxEntryCount > 0);
+    this.directory = directory;
+    entries = new LinkedHashMap<String, ChunkIndex>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, ChunkIndex> eldest) {
+        return size() > maxEntryCount;
+      }
+    };
+  }
+
+  @Override
+  public synchronized ChunkIndex get(String key, long contentLength) {
+    String entryKey = getEntryKey(key, contentLength);
+    ChunkIndex chunkIndex = entries.get(entryKey);
+    if (chunkIndex == null && directory != null) {
+      chunkIndex = readFile(key, contentLength);
+      if (chunkIndex != null) {
+        entries.put(entryKey, chunkIndex);
+      }
+    }
+    return chunkIndex;
+  }
+
+  @Override
+  public synchronized void put(String key, long contentLength, ChunkIndex chunkIndex) {
+    entries.put(getEntryKey(key, contentLength), chunkIndex);
+    if (directory != null) {
+      writeFile(key, contentLength, chunkIndex);
+    }
+  }
+
+  private ChunkIndex readFile(String key, long contentLength) {
+    DataInputStream input = null;
+    try {
+      AtomicFile atomicFile = getFile(key, contentLength);
+      input = new DataInputStream(new BufferedInputStream(atomicFile.openRead()));
+      if (input.readInt() != VERSION || !key.equals(input.readUTF())
+          || input.readLong() != contentLength) {
+        // The file was written by an incompatible version, or for a key with the same file name.
+        return null;
+      }
+      int length = input.readInt();
+      int[] sizes = new int[length];
+      long[] offsets = new long[length];
+      long[] durationsUs = new long[length];
+      long[] timesUs = new long[length];
+      for (int i = 0; i < length; i++) {
+        sizes[i] = input.readInt();
+        offsets[i] = input.readLong();
+        durationsUs[i] = input.readLong();
+        timesUs[i] = input.readLong();
+      }
+      return new ChunkIndex(sizes, offsets, durationsUs, timesUs);
+    } catch (FileNotFoundException e) {
+      return null;
+    } catch (IOException e) {
+      Log.w(TAG, "Error reading seek index file.", e);
+      return null;
+    } finally {
+      Util.closeQuietly(input);
+    }
+  }
+
+  private void writeFile(String key, long contentLength, ChunkIndex chunkIndex) {
+    if (!directory.exists() && !directory.mkdirs()) {
+      Log.w(TAG, "Failed to create seek index directory: " + directory);
+      return;
+    }
+    DataOutputStream output = null;
+    try {
+      AtomicFile atomicFile = getFile(key, contentLength);
+      output = new DataOutputStream(new BufferedOutputStream(atomicFile.startWrite()));
+      output.writeInt(VERSION);
+      output.writeUTF(key);
+      output.writeLong(contentLength);
+      output.writeInt(chunkIndex.length);
+      for (int i = 0; i < chunkIndex.length; i++) {
+        output.writeInt(chunkIndex.sizes[i]);
+        output.writeLong(chunkIndex.offsets[i]);
+        output.writeLong(chunkIndex.durationsUs[i]);
+        output.writeLong(chunkIndex.timesUs[i]);
+      }
+      atomicFile.endWrite(output);
+      output = null;
+    } catch (IOException e) {
+      // The index will be rebuilt by the extractor next time.
+      Log.w(TAG, "Error writing seek index file.", e);
+    } finally {
+      Util.closeQuietly(output);
+    }
+  }
+
+  private AtomicFile getFile(String key, long contentLength) {
+    String fileName = Integer.toHexString(key.hashCode()) + "-" + contentLength + FILE_EXTENSION;
+    return new AtomicFile(new File(directory, fileName));
+  }
+
+  private static String getEntryKey(String key, long contentLength) {
+    return contentLength + ":" + key;
+  }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor.mp3;
+
+import com.google.android.exoplayer.extractor.ChunkIndex;
+import com.google.android.exoplayer.util.Util;
+
+/**
+ * MP3 seeker that uses an index built when the stream was previously read in full. Each entry of
+ * the index starts at a frame, and spans the frames up to the next entry. Seeking returns the
+ * position of the entry at or before the seek time, so reading resumes up to one entry early.
+ */
+/* package */ final class IndexSeeker implements Mp3Extractor.Seeker {
+
+  private final ChunkIndex index;
+  private final long durationUs;
+
+  /**
+   * @param index The index, with each chunk starting at a frame of the stream.
+   */
+  public IndexSeeker(ChunkIndex index) {
+    this.index = index;
+    int lastIndex = index.length - 1;
+    durationUs = index.timesUs[lastIndex] + index.durationsUs[lastIndex];
+  }
+
+  @Override
+  public boolean isSeekable() {
+    return true;
+  }
+
+  @Override
+  public long getPosition(long timeUs) {
+    return index.getPosition(timeUs);
+  }
+
+  @Override
+  public long getTimeUs(long position) {
+    return index.timesUs[Util.binarySearchFloor(index.offsets, position, true, true)];
+  }
+
+  @Override
+  public long getDurationUs() {
+    return durationUs;
+  }
+
+}
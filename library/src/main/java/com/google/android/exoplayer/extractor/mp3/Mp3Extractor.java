@@ -18,13 +18,17 @@ package com.google.android.exoplayer.extractor.mp3;
 import com.google.android.exoplayer.C;
 import com.google.android.exoplayer.MediaFormat;
 import com.google.android.exoplayer.ParserException;
+import com.google.android.exoplayer.extractor.ChunkIndex;
 import com.google.android.exoplayer.extractor.Extractor;
 import com.google.android.exoplayer.extractor.ExtractorInput;
 import com.google.android.exoplayer.extractor.ExtractorOutput;
 import com.google.android.exoplayer.extractor.GaplessInfo;
 import com.google.android.exoplayer.extractor.PositionHolder;
+import com.google.android.exoplayer.extractor.SeekIndexCache;
 import com.google.android.exoplayer.extractor.SeekMap;
 import com.google.android.exoplayer.extractor.TrackOutput;
+import com.google.android.exoplayer.util.Assertions;
+import com.google.android.exoplayer.util.LongArray;
 import com.google.android.exoplayer.util.MpegAudioHeader;
 import com.google.android.exoplayer.util.ParsableByteArray;
 import com.google.android.exoplayer.util.Util;
@@ -53,7 +57,14 @@ public final class Mp3Extractor implements Extractor {
   private static final int INFO_HEADER = Util.getIntegerCodeForString("Info");
   private static final int VBRI_HEADER = Util.getIntegerCodeForString("VBRI");
 
+  /**
+   * The maximum duration between the entries of a seek index built by the extractor.
+   */
+  private static final long SEEK_INDEX_INTERVAL_US = 500000;
+
   private final long forcedFirstSampleTimestampUs;
+  private final SeekIndexCache seekIndexCache;
+  private final String seekIndexCacheKey;
   private final ParsableByteArray scratch;
   private final MpegAudioHeader synchronizedHeader;
 
@@ -69,6 +80,16 @@ public final class Mp3Extractor implements Extractor {
   private long samplesRead;
   private int sampleBytesRemaining;
 
+  // Seek index building state.
+  private boolean buildingSeekIndex;
+  private boolean seekIndexCheckPending;
+  private long seekIndexContentLength;
+  private long seekIndexFirstFramePosition;
+  private long seekIndexNextFramePosition;
+  private int seekIndexFramesPerEntry;
+  private int seekIndexFrameCount;
+  private LongArray seekIndexEntryPositions;
+
   /**
    * Constructs a new {@link Mp3Extractor}.
    */
@@ -83,7 +104,31 @@ public final class Mp3Extractor implements Extractor {
    *     is not required.
    */
   public Mp3Extractor(long forcedFirstSampleTimestampUs) {
+    this(forcedFirstSampleTimestampUs, null, null);
+  }
+
+  /**
+   * Constructs a new {@link Mp3Extractor}.
+   * <p>
+   * If a {@code seekIndexCache} is provided then an index with an entry for every frame that starts
+   * at most half a second after the previous entry is built as the stream is read, and cached once
+   * the whole stream has been read in order. The cached index is used for accurate seeking when the
+   * stream is next played, in preference to the approximate seeking provided by Xing or VBRI
+   * headers, or by assuming a constant bitrate. Seeking starts from the entry at or before the seek
+   * time, and the frames between the entry and the seek time are output for the caller to skip.
+   *
+   * @param forcedFirstSampleTimestampUs A timestamp to force for the first sample, or -1 if forcing
+   *     is not required.
+   * @param seekIndexCache A cache of the seek indices built for streams, or null.
+   * @param seekIndexCacheKey The key that identifies the stream in {@code seekIndexCache},
+   *     typically its URI. May be null if {@code seekIndexCache} is null.
+   */
+  public Mp3Extractor(long forcedFirstSampleTimestampUs, SeekIndexCache seekIndexCache,
+      String seekIndexCacheKey) {
+    Assertions.checkArgument(seekIndexCache == null || seekIndexCacheKey != null);
     this.forcedFirstSampleTimestampUs = forcedFirstSampleTimestampUs;
+    this.seekIndexCache = seekIndexCache;
+    this.seekIndexCacheKey = seekIndexCacheKey;
     scratch = new ParsableByteArray(4);
     synchronizedHeader = new MpegAudioHeader();
     basisTimeUs = -1;
@@ -103,6 +148,8 @@ public final class Mp3Extractor implements Extractor {
 
   @Override
   public void seek() {
+    // The seek index can only continue to be built if reading resumes from where it left off.
+    seekIndexCheckPending = true;
     synchronizedHeaderData = 0;
     samplesRead = 0;
     basisTimeUs = -1;
@@ -138,6 +185,7 @@ public final class Mp3Extractor implements Extractor {
   private int readSample(ExtractorInput extractorInput) throws IOException, InterruptedException {
     if (sampleBytesRemaining == 0) {
       if (!maybeResynchronize(extractorInput)) {
+        maybeCacheSeekIndex();
         return RESULT_END_OF_INPUT;
       }
       if (basisTimeUs == -1) {
@@ -151,12 +199,16 @@ public final class Mp3Extractor implements Extractor {
     }
     int bytesAppended = trackOutput.sampleData(extractorInput, sampleBytesRemaining, true);
     if (bytesAppended == C.RESULT_END_OF_INPUT) {
+      maybeCacheSeekIndex();
       return RESULT_END_OF_INPUT;
     }
     sampleBytesRemaining -= bytesAppended;
     if (sampleBytesRemaining > 0) {
       return RESULT_CONTINUE;
     }
+    if (buildingSeekIndex) {
+      updateSeekIndex(extractorInput.getPosition() - synchronizedHeader.frameSize);
+    }
     long timeUs = basisTimeUs + (samplesRead * C.MICROS_PER_SECOND / synchronizedHeader.sampleRate);
     trackOutput.sampleMetadata(timeUs, C.SAMPLE_FLAG_SYNC, synchronizedHeader.frameSize, 0, null);
     samplesRead += synchronizedHeader.samplesPerFrame;
@@ -321,6 +373,84 @@ public final class Mp3Extractor implements Extractor {
       MpegAudioHeader.populateHeader(scratch.readInt(), synchronizedHeader);
       seeker = new ConstantBitrateSeeker(input.getPosition(), synchronizedHeader.bitrate, length);
     }
+
+    if (seekIndexCache != null && length != C.LENGTH_UNBOUNDED) {
+      ChunkIndex seekIndex = seekIndexCache.get(seekIndexCacheKey, length);
+      if (seekIndex != null && seekIndex.length > 0) {
+        seeker = new IndexSeeker(seekIndex);
+      } else {
+        buildingSeekIndex = true;
+        seekIndexContentLength = length;
+        seekIndexFirstFramePosition = input.getPosition();
+        seekIndexNextFramePosition = seekIndexFirstFramePosition;
+        // All frames in the stream have the same sample rate and number of samples per frame.
+        seekIndexFramesPerEntry = Math.max(1, (int) (SEEK_INDEX_INTERVAL_US
+            * synchronizedHeader.sampleRate
+            / (synchronizedHeader.samplesPerFrame * C.MICROS_PER_SECOND)));
+        seekIndexFrameCount = 0;
+        seekIndexEntryPositions = new LongArray();
+      }
+    }
+  }
+
+  /**
+   * Adds a frame that's been read in full to the seek index being built.
+   *
+   * @param framePosition The position of the start of the frame.
+   */
+  private void updateSeekIndex(long framePosition) {
+    if (seekIndexCheckPending) {
+      seekIndexCheckPending = false;
+      if (framePosition == seekIndexFirstFramePosition) {
+        // Reading has restarted from the first frame, so the index is rebuilt.
+        seekIndexFrameCount = 0;
+        seekIndexEntryPositions = new LongArray();
+      } else if (framePosition != seekIndexNextFramePosition) {
+        // Frames have been skipped, so the index can't be completed until reading restarts from the
+        // first frame.
+        seekIndexEntryPositions = null;
+      }
+    }
+    if (seekIndexEntryPositions != null) {
+      if (seekIndexFrameCount % seekIndexFramesPerEntry == 0) {
+        seekIndexEntryPositions.add(framePosition);
+      }
+      seekIndexFrameCount++;
+      seekIndexNextFramePosition = framePosition + synchronizedHeader.frameSize;
+    }
+  }
+
+  /**
+   * Caches the seek index if the stream has been read in full from its first frame.
+   */
+  private void maybeCacheSeekIndex() {
+    if (!buildingSeekIndex || seekIndexEntryPositions == null
+        || seekIndexEntryPositions.size() == 0) {
+      return;
+    }
+    // Each entry spans the frames up to the next entry, or to the end of the last frame.
+    int entryCount = seekIndexEntryPositions.size();
+    int[] sizes = new int[entryCount];
+    long[] offsets = seekIndexEntryPositions.toArray();
+    long[] durationsUs = new long[entryCount];
+    long[] timesUs = new long[entryCount];
+    for (int i = 0; i < entryCount; i++) {
+      timesUs[i] = getSeekIndexFrameTimeUs(i * seekIndexFramesPerEntry);
+      long endTimeUs = getSeekIndexFrameTimeUs(
+          Math.min((i + 1) * seekIndexFramesPerEntry, seekIndexFrameCount));
+      durationsUs[i] = endTimeUs - timesUs[i];
+      long endPosition = i < entryCount - 1 ? offsets[i + 1] : seekIndexNextFramePosition;
+      sizes[i] = (int) (endPosition - offsets[i]);
+    }
+    seekIndexCache.put(seekIndexCacheKey, seekIndexContentLength,
+        new ChunkIndex(sizes, offsets, durationsUs, timesUs));
+    buildingSeekIndex = false;
+    seekIndexEntryPositions = null;
+  }
+
+  private long getSeekIndexFrameTimeUs(int frameIndex) {
+    return (frameIndex * (long) synchronizedHeader.samplesPerFrame * C.MICROS_PER_SECOND)
+        / synchronizedHeader.sampleRate;
   }
 
   /**
@@ -88,195 +88,154 @@ import java.util.List;
   }
 
   /**
-   * Parses an stbl atom (defined in 14496-12).
+   * Builds the sample table of a track from the decoded boxes of its stbl atom (defined in
+   * 14496-12).
    *
    * @param track Track to which this sample table corresponds.
-   * @param stblAtom stbl (sample table) atom to parse.
+   * @param stbl The decoded boxes of the stbl (sample table) atom.
    * @return Sample table described by the stbl atom.
-   * @throws ParserException If the resulting sample sequence does not contain a sync sample.
+   * @throws ParserException If the boxes are missing or malformed, or if the resulting sample
+   *     sequence does not contain a sync sample.
    */
-  public static TrackSampleTable parseStbl(Track track, Atom.ContainerAtom stblAtom)
+  public static TrackSampleTable parseStbl(Track track, SampleTableBoxes stbl)
       throws ParserException {
-    SampleSizeBox sampleSizeBox;
-    Atom.LeafAtom stszAtom = stblAtom.getLeafAtomOfType(Atom.TYPE_stsz);
-    if (stszAtom != null) {
-      sampleSizeBox = new StszSampleSizeBox(stszAtom);
-    } else {
-      Atom.LeafAtom stz2Atom = stblAtom.getLeafAtomOfType(Atom.TYPE_stz2);
-      if (stz2Atom == null) {
-        throw new ParserException("Track has no sample table size information");
-      }
-      sampleSizeBox = new Stz2SampleSizeBox(stz2Atom);
+    if (!stbl.hasSampleSizes) {
+      throw new ParserException("Track has no sample table size information");
     }
-
-    int sampleCount = sampleSizeBox.getSampleCount();
+    int sampleCount = stbl.sampleCount;
     if (sampleCount == 0) {
-      return new TrackSampleTable(new long[0], new int[0], 0, new long[0], new int[0]);
-    }
-
-    // Entries are byte offsets of chunks.
-    boolean chunkOffsetsAreLongs = false;
-    Atom.LeafAtom chunkOffsetsAtom = stblAtom.getLeafAtomOfType(Atom.TYPE_stco);
-    if (chunkOffsetsAtom == null) {
-      chunkOffsetsAreLongs = true;
-      chunkOffsetsAtom = stblAtom.getLeafAtomOfType(Atom.TYPE_co64);
-    }
-    ParsableByteArray chunkOffsets = chunkOffsetsAtom.data;
-    // Entries are (chunk number, number of samples per chunk, sample description index).
-    ParsableByteArray stsc = stblAtom.getLeafAtomOfType(Atom.TYPE_stsc).data;
-    // Entries are (number of samples, timestamp delta between those samples).
-    ParsableByteArray stts = stblAtom.getLeafAtomOfType(Atom.TYPE_stts).data;
-    // Entries are the indices of samples that are synchronization samples.
-    Atom.LeafAtom stssAtom = stblAtom.getLeafAtomOfType(Atom.TYPE_stss);
-    ParsableByteArray stss = stssAtom != null ? stssAtom.data : null;
-    // Entries are (number of samples, timestamp offset).
-    Atom.LeafAtom cttsAtom = stblAtom.getLeafAtomOfType(Atom.TYPE_ctts);
-    ParsableByteArray ctts = cttsAtom != null ? cttsAtom.data : null;
-
-    // Prepare to read chunk information.
-    ChunkIterator chunkIterator = new ChunkIterator(stsc, chunkOffsets, chunkOffsetsAreLongs);
-
-    // Prepare to read sample timestamps.
-    stts.setPosition(Atom.FULL_HEADER_SIZE);
-    int remainingTimestampDeltaChanges = stts.readUnsignedIntToInt() - 1;
-    int remainingSamplesAtTimestampDelta = stts.readUnsignedIntToInt();
-    int timestampDeltaInTimeUnits = stts.readUnsignedIntToInt();
-
-    // Prepare to read sample timestamp offsets, if ctts is present.
-    int remainingSamplesAtTimestampOffset = 0;
-    int remainingTimestampOffsetChanges = 0;
-    int timestampOffset = 0;
-    if (ctts != null) {
-      ctts.setPosition(Atom.FULL_HEADER_SIZE);
-      remainingTimestampOffsetChanges = ctts.readUnsignedIntToInt();
-    }
-
-    int nextSynchronizationSampleIndex = -1;
-    int remainingSynchronizationSamples = 0;
-    if (stss != null) {
-      stss.setPosition(Atom.FULL_HEADER_SIZE);
-      remainingSynchronizationSamples = stss.readUnsignedIntToInt();
-      if (remainingSynchronizationSamples > 0) {
-        nextSynchronizationSampleIndex = stss.readUnsignedIntToInt() - 1;
-      } else {
-        // Ignore empty stss boxes, which causes all samples to be treated as sync samples.
-        stss = null;
+      return new TrackSampleTable(0, 0, null, 0, new long[0], new int[0], new int[] {0},
+          new long[] {0}, new long[] {0}, null, null, null, track.timescale);
+    }
+    if (stbl.chunkOffsets == null || stbl.samplesPerChunkFirstChunks == null
+        || stbl.timeToSampleCounts == null) {
+      throw new ParserException("Track has incomplete sample table");
+    }
+
+    // Find the first sample of each chunk. Entries of the stsc box are (first chunk, number of
+    // samples per chunk).
+    int chunkCount = stbl.chunkCount;
+    int[] chunkSampleCounts = new int[chunkCount];
+    int[] chunkFirstSampleIndices = new int[chunkCount];
+    Assertions.checkState(stbl.samplesPerChunkEntryCount > 0
+        && stbl.samplesPerChunkFirstChunks[0] == 1, "first_chunk must be 1");
+    int samplesPerChunkEntryIndex = 0;
+    int samplesPerChunk = 0;
+    long chunkFirstSampleIndex = 0;
+    for (int i = 0; i < chunkCount; i++) {
+      while (samplesPerChunkEntryIndex < stbl.samplesPerChunkEntryCount
+          && stbl.samplesPerChunkFirstChunks[samplesPerChunkEntryIndex] - 1 == i) {
+        samplesPerChunk = stbl.samplesPerChunk[samplesPerChunkEntryIndex++];
+      }
+      chunkSampleCounts[i] = samplesPerChunk;
+      chunkFirstSampleIndices[i] = (int) Math.min(chunkFirstSampleIndex, Integer.MAX_VALUE);
+      chunkFirstSampleIndex += samplesPerChunk;
+    }
+    Assertions.checkState(chunkFirstSampleIndex >= sampleCount);
+
+    // Entries of the stss box are the indices of samples that are synchronization samples. Ignore
+    // empty stss boxes, which causes all samples to be treated as sync samples.
+    int[] syncSampleIndices = null;
+    int syncSampleCount = 0;
+    if (stbl.syncSampleCount > 0) {
+      syncSampleIndices = stbl.syncSampleIndices;
+      Arrays.sort(syncSampleIndices);
+      for (int i = 0; i < syncSampleIndices.length && syncSampleIndices[i] < sampleCount; i++) {
+        syncSampleCount++;
       }
     }
 
     // True if we can rechunk fixed-sample-size data. Note that we only rechunk raw audio.
-    boolean isRechunkable = sampleSizeBox.isFixedSampleSize()
+    boolean isRechunkable = stbl.fixedSampleSize != 0
         && MimeTypes.AUDIO_RAW.equals(track.mediaFormat.mimeType)
-        && remainingTimestampDeltaChanges == 0
-        && remainingTimestampOffsetChanges == 0
-        && remainingSynchronizationSamples == 0;
-
-    long[] offsets;
-    int[] sizes;
-    int maximumSize = 0;
-    long[] timestamps;
-    int[] flags;
+        && stbl.timeToSampleEntryCount == 1
+        && stbl.compositionOffsetEntryCount == 0
+        && syncSampleIndices == null;
 
+    TrackSampleTable sampleTable;
     if (!isRechunkable) {
-      offsets = new long[sampleCount];
-      sizes = new int[sampleCount];
-      timestamps = new long[sampleCount];
-      flags = new int[sampleCount];
+      // Entries of the stts box are (number of samples, timestamp delta between those samples).
+      int[] durationRunFirstSampleIndices = new int[Math.max(1, stbl.timeToSampleEntryCount)];
+      long[] durationRunFirstTimestamps = new long[durationRunFirstSampleIndices.length];
+      long[] durationRunDurations = new long[durationRunFirstSampleIndices.length];
+      int durationRunCount = 0;
+      long timeToSampleSampleCount = 0;
       long timestampTimeUnits = 0;
-      long offset = 0;
-      int remainingSamplesInChunk = 0;
-
-      for (int i = 0; i < sampleCount; i++) {
-        // Advance to the next chunk if necessary.
-        while (remainingSamplesInChunk == 0) {
-          Assertions.checkState(chunkIterator.moveNext());
-          offset = chunkIterator.offset;
-          remainingSamplesInChunk = chunkIterator.numSamples;
+      for (int i = 0; i < stbl.timeToSampleEntryCount; i++) {
+        int count = stbl.timeToSampleCounts[i];
+        if (count == 0) {
+          continue;
         }
-
-        // Add on the timestamp offset if ctts is present.
-        if (ctts != null) {
-          while (remainingSamplesAtTimestampOffset == 0 && remainingTimestampOffsetChanges > 0) {
-            remainingSamplesAtTimestampOffset = ctts.readUnsignedIntToInt();
-            // The BMFF spec (ISO 14496-12) states that sample offsets should be unsigned integers
-            // in version 0 ctts boxes, however some streams violate the spec and use signed
-            // integers instead. It's safe to always parse sample offsets as signed integers here,
-            // because unsigned integers will still be parsed correctly (unless their top bit is
-            // set, which is never true in practice because sample offsets are always small).
-            timestampOffset = ctts.readInt();
-            remainingTimestampOffsetChanges--;
-          }
-          remainingSamplesAtTimestampOffset--;
-        }
-
-        offsets[i] = offset;
-        sizes[i] = sampleSizeBox.readNextSampleSize();
-        if (sizes[i] > maximumSize) {
-          maximumSize = sizes[i];
-        }
-        timestamps[i] = timestampTimeUnits + timestampOffset;
-
-        // All samples are synchronization samples if the stss is not present.
-        flags[i] = stss == null ? C.SAMPLE_FLAG_SYNC : 0;
-        if (i == nextSynchronizationSampleIndex) {
-          flags[i] = C.SAMPLE_FLAG_SYNC;
-          remainingSynchronizationSamples--;
-          if (remainingSynchronizationSamples > 0) {
-            nextSynchronizationSampleIndex = stss.readUnsignedIntToInt() - 1;
+        durationRunFirstSampleIndices[durationRunCount] =
+            (int) Math.min(timeToSampleSampleCount, Integer.MAX_VALUE);
+        durationRunFirstTimestamps[durationRunCount] = timestampTimeUnits;
+        durationRunDurations[durationRunCount] = stbl.timeToSampleDeltas[i];
+        durationRunCount++;
+        timeToSampleSampleCount += count;
+        timestampTimeUnits += (long) count * stbl.timeToSampleDeltas[i];
+      }
+      durationRunCount = Math.max(1, durationRunCount);
+
+      // Entries of the ctts box are (number of samples, timestamp offset).
+      int[] compositionOffsetRunFirstSampleIndices = null;
+      int[] compositionOffsets = null;
+      if (stbl.compositionOffsetEntryCount > 0) {
+        compositionOffsetRunFirstSampleIndices = new int[stbl.compositionOffsetEntryCount];
+        compositionOffsets = new int[stbl.compositionOffsetEntryCount];
+        int compositionOffsetRunCount = 0;
+        long compositionOffsetSampleCount = 0;
+        for (int i = 0; i < stbl.compositionOffsetEntryCount; i++) {
+          int count = stbl.compositionOffsetCounts[i];
+          if (count == 0) {
+            continue;
           }
+          compositionOffsetRunFirstSampleIndices[compositionOffsetRunCount] =
+              (int) Math.min(compositionOffsetSampleCount, Integer.MAX_VALUE);
+          compositionOffsets[compositionOffsetRunCount] = stbl.compositionOffsets[i];
+          compositionOffsetRunCount++;
+          compositionOffsetSampleCount += count;
         }
-
-        // Add on the duration of this sample.
-        timestampTimeUnits += timestampDeltaInTimeUnits;
-        remainingSamplesAtTimestampDelta--;
-        if (remainingSamplesAtTimestampDelta == 0 && remainingTimestampDeltaChanges > 0) {
-          remainingSamplesAtTimestampDelta = stts.readUnsignedIntToInt();
-          timestampDeltaInTimeUnits = stts.readUnsignedIntToInt();
-          remainingTimestampDeltaChanges--;
-        }
-
-        offset += sizes[i];
-        remainingSamplesInChunk--;
+        Assertions.checkArgument(compositionOffsetSampleCount == sampleCount);
+        compositionOffsetRunFirstSampleIndices =
+            Arrays.copyOf(compositionOffsetRunFirstSampleIndices, compositionOffsetRunCount);
+        compositionOffsets = Arrays.copyOf(compositionOffsets, compositionOffsetRunCount);
       }
 
-      Assertions.checkArgument(remainingSamplesAtTimestampOffset == 0);
-      // Remove trailing ctts entries with 0-valued sample counts.
-      while (remainingTimestampOffsetChanges > 0) {
-        Assertions.checkArgument(ctts.readUnsignedIntToInt() == 0);
-        ctts.readInt(); // Ignore offset.
-        remainingTimestampOffsetChanges--;
+      int maximumSize = stbl.fixedSampleSize;
+      if (stbl.sampleSizes != null) {
+        for (int i = 0; i < sampleCount; i++) {
+          maximumSize = Math.max(maximumSize, stbl.sampleSizes[i]);
+        }
       }
 
       // If the stbl's child boxes are not consistent the container is malformed, but the stream may
       // still be playable.
-      if (remainingSynchronizationSamples != 0 || remainingSamplesAtTimestampDelta != 0
-          || remainingSamplesInChunk != 0 || remainingTimestampDeltaChanges != 0) {
+      if (syncSampleIndices != null && syncSampleCount != syncSampleIndices.length
+          || timeToSampleSampleCount != sampleCount || chunkFirstSampleIndex != sampleCount) {
         Log.w(TAG, "Inconsistent stbl box for track " + track.id
-            + ": remainingSynchronizationSamples " + remainingSynchronizationSamples
-            + ", remainingSamplesAtTimestampDelta " + remainingSamplesAtTimestampDelta
-            + ", remainingSamplesInChunk " + remainingSamplesInChunk
-            + ", remainingTimestampDeltaChanges " + remainingTimestampDeltaChanges);
+            + ": sampleCount " + sampleCount
+            + ", syncSamplesOutOfRange "
+            + (syncSampleIndices == null ? 0 : syncSampleIndices.length - syncSampleCount)
+            + ", timeToSampleSampleCount " + timeToSampleSampleCount
+            + ", chunkSampleCount " + chunkFirstSampleIndex);
       }
+
+      sampleTable = new TrackSampleTable(sampleCount, stbl.fixedSampleSize, stbl.sampleSizes,
+          maximumSize, stbl.chunkOffsets, chunkFirstSampleIndices,
+          Arrays.copyOf(durationRunFirstSampleIndices, durationRunCount),
+          Arrays.copyOf(durationRunFirstTimestamps, durationRunCount),
+          Arrays.copyOf(durationRunDurations, durationRunCount),
+          compositionOffsetRunFirstSampleIndices, compositionOffsets, syncSampleIndices,
+          track.timescale);
     } else {
-      long[] chunkOffsetsBytes = new long[chunkIterator.length];
-      int[] chunkSampleCounts = new int[chunkIterator.length];
-      while (chunkIterator.moveNext()) {
-        chunkOffsetsBytes[chunkIterator.index] = chunkIterator.offset;
-        chunkSampleCounts[chunkIterator.index] = chunkIterator.numSamples;
-      }
-      int fixedSampleSize = sampleSizeBox.readNextSampleSize();
       FixedSampleSizeRechunker.Results rechunkedResults = FixedSampleSizeRechunker.rechunk(
-          fixedSampleSize, chunkOffsetsBytes, chunkSampleCounts, timestampDeltaInTimeUnits);
-      offsets = rechunkedResults.offsets;
-      sizes = rechunkedResults.sizes;
-      maximumSize = rechunkedResults.maximumSize;
-      timestamps = rechunkedResults.timestamps;
-      flags = rechunkedResults.flags;
+          stbl.fixedSampleSize, stbl.chunkOffsets, chunkSampleCounts,
+          stbl.timeToSampleDeltas[0]);
+      sampleTable = buildRechunkedSampleTable(rechunkedResults, track.timescale);
     }
 
     if (track.editListDurations == null) {
-      Util.scaleLargeTimestampsInPlace(timestamps, C.MICROS_PER_SECOND, track.timescale);
-      return new TrackSampleTable(offsets, sizes, maximumSize, timestamps, flags);
+      return sampleTable;
     }
 
     // See the BMFF spec (ISO 14496-12) subsection 8.6.6. Edit lists that truncate audio and
@@ -288,77 +247,75 @@ import java.util.List;
       // The current version of the spec leaves handling of an edit with zero segment_duration in
       // unfragmented files open to interpretation. We handle this as a special case and include all
       // samples in the edit.
-      for (int i = 0; i < timestamps.length; i++) {
-        timestamps[i] = Util.scaleLargeTimestamp(timestamps[i] - track.editListMediaTimes[0],
-            C.MICROS_PER_SECOND, track.timescale);
-      }
-      return new TrackSampleTable(offsets, sizes, maximumSize, timestamps, flags);
+      return sampleTable.copyWithEdits(new int[] {0}, new int[] {sampleTable.sampleCount},
+          new long[] {0}, new long[] {track.editListMediaTimes[0]});
     }
 
-    // Count the number of samples after applying edits.
-    int editedSampleCount = 0;
-    int nextSampleIndex = 0;
-    boolean copyMetadata = false;
-    for (int i = 0; i < track.editListDurations.length; i++) {
-      long mediaTime = track.editListMediaTimes[i];
-      if (mediaTime != -1) {
-        long duration = Util.scaleLargeTimestamp(track.editListDurations[i], track.timescale,
-            track.movieTimescale);
-        int startIndex = Util.binarySearchCeil(timestamps, mediaTime, true, true);
-        int endIndex = Util.binarySearchCeil(timestamps, mediaTime + duration, true, false);
-        editedSampleCount += endIndex - startIndex;
-        copyMetadata |= nextSampleIndex != startIndex;
-        nextSampleIndex = endIndex;
-      }
-    }
-    copyMetadata |= editedSampleCount != sampleCount;
-
-    // Calculate edited sample timestamps and update the corresponding metadata arrays.
-    long[] editedOffsets = copyMetadata ? new long[editedSampleCount] : offsets;
-    int[] editedSizes = copyMetadata ? new int[editedSampleCount] : sizes;
-    int editedMaximumSize = copyMetadata ? 0 : maximumSize;
-    int[] editedFlags = copyMetadata ? new int[editedSampleCount] : flags;
-    long[] editedTimestamps = new long[editedSampleCount];
+    // Find the range of samples in each edit.
+    int editCount = track.editListDurations.length;
+    int[] startIndices = new int[editCount];
+    int[] endIndices = new int[editCount];
+    long[] startTimesUs = new long[editCount];
     long pts = 0;
-    int sampleIndex = 0;
-    for (int i = 0; i < track.editListDurations.length; i++) {
+    boolean hasSyncSample = false;
+    for (int i = 0; i < editCount; i++) {
       long mediaTime = track.editListMediaTimes[i];
       long duration = track.editListDurations[i];
       if (mediaTime != -1) {
         long endMediaTime = mediaTime + Util.scaleLargeTimestamp(duration, track.timescale,
             track.movieTimescale);
-        int startIndex = Util.binarySearchCeil(timestamps, mediaTime, true, true);
-        int endIndex = Util.binarySearchCeil(timestamps, endMediaTime, true, false);
-        if (copyMetadata) {
-          int count = endIndex - startIndex;
-          System.arraycopy(offsets, startIndex, editedOffsets, sampleIndex, count);
-          System.arraycopy(sizes, startIndex, editedSizes, sampleIndex, count);
-          System.arraycopy(flags, startIndex, editedFlags, sampleIndex, count);
-        }
-        for (int j = startIndex; j < endIndex; j++) {
-          long ptsUs = Util.scaleLargeTimestamp(pts, C.MICROS_PER_SECOND, track.movieTimescale);
-          long timeInSegmentUs = Util.scaleLargeTimestamp(timestamps[j] - mediaTime,
-              C.MICROS_PER_SECOND, track.timescale);
-          editedTimestamps[sampleIndex] = ptsUs + timeInSegmentUs;
-          if (copyMetadata && editedSizes[sampleIndex] > editedMaximumSize) {
-            editedMaximumSize = sizes[j];
-          }
-          sampleIndex++;
-        }
+        startIndices[i] = sampleTable.binarySearchCeilMediaTimestamp(mediaTime, true, true);
+        endIndices[i] = sampleTable.binarySearchCeilMediaTimestamp(endMediaTime, true, false);
+        startTimesUs[i] = Util.scaleLargeTimestamp(pts, C.MICROS_PER_SECOND, track.movieTimescale);
+        hasSyncSample |= sampleTable.containsSyncSample(startIndices[i], endIndices[i]);
       }
       pts += duration;
     }
-
-    boolean hasSyncSample = false;
-    for (int i = 0; i < editedFlags.length && !hasSyncSample; i++) {
-      hasSyncSample |= (editedFlags[i] & C.SAMPLE_FLAG_SYNC) != 0;
-    }
     if (!hasSyncSample) {
       throw new ParserException("The edited sample sequence does not contain a sync sample.");
     }
 
-    return new TrackSampleTable(editedOffsets, editedSizes, editedMaximumSize, editedTimestamps,
-        editedFlags);
+    return sampleTable.copyWithEdits(startIndices, endIndices, startTimesUs,
+        track.editListMediaTimes);
+  }
+
+  /**
+   * Builds a sample table for rechunked fixed sample size data, in which every sample is a
+   * synchronization sample in a chunk of its own.
+   */
+  private static TrackSampleTable buildRechunkedSampleTable(
+      FixedSampleSizeRechunker.Results rechunkedResults, long timescale) throws ParserException {
+    int sampleCount = rechunkedResults.sizes.length;
+    int[] chunkFirstSampleIndices = new int[sampleCount];
+    // Each run of samples with equal durations ends where the duration changes.
+    int[] durationRunFirstSampleIndices = new int[Math.max(1, sampleCount)];
+    long[] durationRunFirstTimestamps = new long[durationRunFirstSampleIndices.length];
+    long[] durationRunDurations = new long[durationRunFirstSampleIndices.length];
+    int durationRunCount = 1;
+    long[] timestamps = rechunkedResults.timestamps;
+    for (int i = 0; i < sampleCount; i++) {
+      chunkFirstSampleIndices[i] = i;
+      if (i + 1 < sampleCount) {
+        long duration = timestamps[i + 1] - timestamps[i];
+        int runIndex = durationRunCount - 1;
+        if (i == 0) {
+          durationRunDurations[0] = duration;
+        } else if (duration != durationRunDurations[runIndex]) {
+          durationRunFirstSampleIndices[durationRunCount] = i;
+          durationRunFirstTimestamps[durationRunCount] = timestamps[i];
+          durationRunDurations[durationRunCount] = duration;
+          durationRunCount++;
+        }
+      }
+    }
+    if (sampleCount > 0) {
+      durationRunFirstTimestamps[0] = timestamps[0];
+    }
+    return new TrackSampleTable(sampleCount, 0, rechunkedResults.sizes,
+        rechunkedResults.maximumSize, rechunkedResults.offsets, chunkFirstSampleIndices,
+        Arrays.copyOf(durationRunFirstSampleIndices, durationRunCount),
+        Arrays.copyOf(durationRunFirstTimestamps, durationRunCount),
+        Arrays.copyOf(durationRunDurations, durationRunCount), null, null, null, timescale);
   }
 
   /**
@@ -1143,51 +1100,6 @@ import java.util.List;
     // Prevent instantiation.
   }
 
-  private static final class ChunkIterator {
-
-    public final int length;
-
-    public int index;
-    public int numSamples;
-    public long offset;
-
-    private final boolean chunkOffsetsAreLongs;
-    private final ParsableByteArray chunkOffsets;
-    private final ParsableByteArray stsc;
-
-    private int nextSamplesPerChunkChangeIndex;
-    private int remainingSamplesPerChunkChanges;
-
-    public ChunkIterator(ParsableByteArray stsc, ParsableByteArray chunkOffsets,
-        boolean chunkOffsetsAreLongs) {
-      this.stsc = stsc;
-      this.chunkOffsets = chunkOffsets;
-      this.chunkOffsetsAreLongs = chunkOffsetsAreLongs;
-      chunkOffsets.setPosition(Atom.FULL_HEADER_SIZE);
-      length = chunkOffsets.readUnsignedIntToInt();
-      stsc.setPosition(Atom.FULL_HEADER_SIZE);
-      remainingSamplesPerChunkChanges = stsc.readUnsignedIntToInt();
-      Assertions.checkState(stsc.readInt() == 1, "first_chunk must be 1");
-      index = -1;
-    }
-
-    public boolean moveNext() {
-      if (++index == length) {
-        return false;
-      }
-      offset = chunkOffsetsAreLongs ? chunkOffsets.readUnsignedLongToLong()
-          : chunkOffsets.readUnsignedInt();
-      if (index == nextSamplesPerChunkChangeIndex) {
-        numSamples = stsc.readUnsignedIntToInt();
-        stsc.skipBytes(4); // Skip sample_description_index
-        nextSamplesPerChunkChangeIndex = --remainingSamplesPerChunkChanges > 0
-            ? (stsc.readUnsignedIntToInt() - 1) : -1;
-      }
-      return true;
-    }
-
-  }
-
   /**
    * Holds data parsed from a tkhd atom.
    */
@@ -1240,111 +1152,4 @@ import java.util.List;
 
   }
 
-  /**
-   * A box containing sample sizes (e.g. stsz, stz2).
-   */
-  private interface SampleSizeBox {
-
-    /**
-     * Returns the number of samples.
-     */
-    int getSampleCount();
-
-    /**
-     * Returns the size for the next sample.
-     */
-    int readNextSampleSize();
-
-    /**
-     * Returns whether samples have a fixed size.
-     */
-    boolean isFixedSampleSize();
-
-  }
-
-  /**
-   * An stsz sample size box.
-   */
-  /* package */ static final class StszSampleSizeBox implements SampleSizeBox {
-
-    private final int fixedSampleSize;
-    private final int sampleCount;
-    private final ParsableByteArray data;
-
-    public StszSampleSizeBox(Atom.LeafAtom stszAtom) {
-      data = stszAtom.data;
-      data.setPosition(Atom.FULL_HEADER_SIZE);
-      fixedSampleSize = data.readUnsignedIntToInt();
-      sampleCount = data.readUnsignedIntToInt();
-    }
-
-    @Override
-    public int getSampleCount() {
-      return sampleCount;
-    }
-
-    @Override
-    public int readNextSampleSize() {
-      return fixedSampleSize == 0 ? data.readUnsignedIntToInt() : fixedSampleSize;
-    }
-
-    @Override
-    public boolean isFixedSampleSize() {
-      return fixedSampleSize != 0;
-    }
-
-  }
-
-  /**
-   * An stz2 sample size box.
-   */
-  /* package */ static final class Stz2SampleSizeBox implements SampleSizeBox {
-
-    private final ParsableByteArray data;
-    private final int sampleCount;
-    private final int fieldSize; // Can be 4, 8, or 16.
-
-    // Used only if fieldSize == 4.
-    private int sampleIndex;
-    private int currentByte;
-
-    public Stz2SampleSizeBox(Atom.LeafAtom stz2Atom) {
-      data = stz2Atom.data;
-      data.setPosition(Atom.FULL_HEADER_SIZE);
-      fieldSize = data.readUnsignedIntToInt() & 0x000000FF;
-      sampleCount = data.readUnsignedIntToInt();
-    }
-
-    @Override
-    public int getSampleCount() {
-      return sampleCount;
-    }
-
-    @Override
-    public int readNextSampleSize() {
-      if (fieldSize == 8) {
-        return data.readUnsignedByte();
-      } else if (fieldSize == 16) {
-        return data.readUnsignedShort();
-      } else {
-        // fieldSize == 4.
-        if ((sampleIndex++ % 2) == 0) {
-          // Read the next byte into our cached byte when we are reading the upper bits.
-          currentByte = data.readUnsignedByte();
-          // Read the upper bits from the byte and shift them to the lower 4 bits.
-          return (currentByte & 0xF0) >> 4;
-        } else {
-          // Mask out the upper 4 bits of the last byte we read.
-          return currentByte & 0x0F;
-        }
-      }
-    }
-
-    @Override
-    public boolean isFixedSampleSize() {
-      return false;
-    }
-
-  }
-
 }
@@ -37,6 +37,7 @@ import com.google.android.exoplayer.util.NalUnitUtil;
 import com.google.android.exoplayer.util.ParsableByteArray;
 import com.google.android.exoplayer.util.Util;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Stack;
@@ -73,6 +74,9 @@ public class FragmentedMp4Extractor implements Extractor {
   private static final byte[] PIFF_SAMPLE_ENCRYPTION_BOX_EXTENDED_TYPE =
       new byte[] {-94, 57, 79, 82, 90, -101, 79, 20, -94, 68, 108, 66, 124, 100, -115, -12};
 
+  // Position of a child atom that isn't present in its parent.
+  private static final int POSITION_UNSET = -1;
+
   // Parser states.
   private static final int STATE_READING_ATOM_HEADER = 0;
   private static final int STATE_READING_ATOM_PAYLOAD = 1;
@@ -96,6 +100,7 @@ public class FragmentedMp4Extractor implements Extractor {
   private final ParsableByteArray atomHeader;
   private final byte[] extendedTypeScratch;
   private final Stack<ContainerAtom> containerAtoms;
+  private final ParsableByteArray moofData;
 
   private int parserState;
   private int atomType;
@@ -140,6 +145,7 @@ public class FragmentedMp4Extractor implements Extractor {
     encryptionSignalByte = new ParsableByteArray(1);
     extendedTypeScratch = new byte[16];
     containerAtoms = new Stack<>();
+    moofData = new ParsableByteArray();
     trackBundles = new SparseArray<>();
     enterReadingAtomHeaderState();
   }
@@ -237,6 +243,23 @@ public class FragmentedMp4Extractor implements Extractor {
         fragment.auxiliaryDataPosition = atomPosition;
         fragment.dataPosition = atomPosition;
       }
+      // The whole moof is read into a buffer that's reused for each fragment, and its children are
+      // parsed in place.
+      if (atomSize > Integer.MAX_VALUE) {
+        throw new ParserException("Moof atom with length > 2147483647 (unsupported).");
+      }
+      for (int i = 0; i < trackCount; i++) {
+        TrackBundle trackBundle = trackBundles.valueAt(i);
+        if (trackBundle.currentSampleIndex < trackBundle.fragment.length) {
+          // The samples of the previous fragment haven't all been read.
+          trackBundle.fragment.detachEncryptionData(moofData.data);
+        }
+      }
+      moofData.reset((int) atomSize);
+      System.arraycopy(atomHeader.data, 0, moofData.data, 0, atomHeaderBytesRead);
+      atomData = moofData;
+      parserState = STATE_READING_ATOM_PAYLOAD;
+      return true;
     }
 
     if (atomType == Atom.TYPE_mdat) {
@@ -282,7 +305,10 @@ public class FragmentedMp4Extractor implements Extractor {
 
   private void readAtomPayload(ExtractorInput input) throws IOException, InterruptedException {
     int atomPayloadSize = (int) atomSize - atomHeaderBytesRead;
-    if (atomData != null) {
+    if (atomType == Atom.TYPE_moof) {
+      input.readFully(moofData.data, atomHeaderBytesRead, atomPayloadSize);
+      onMoofAtomRead(moofData, atomHeaderBytesRead);
+    } else if (atomData != null) {
       input.readFully(atomData.data, Atom.HEADER_SIZE, atomPayloadSize);
       onLeafAtomRead(new LeafAtom(atomType, atomData), input.getPosition());
     } else {
@@ -313,8 +339,6 @@ public class FragmentedMp4Extractor implements Extractor {
   private void onContainerAtomRead(ContainerAtom container) throws ParserException {
     if (container.type == Atom.TYPE_moov) {
       onMoovContainerAtomRead(container);
-    } else if (container.type == Atom.TYPE_moof) {
-      onMoofContainerAtomRead(container);
     } else if (!containerAtoms.isEmpty()) {
       containerAtoms.peek().add(container);
     }
@@ -375,12 +399,60 @@ public class FragmentedMp4Extractor implements Extractor {
     }
   }
 
-  private void onMoofContainerAtomRead(ContainerAtom moof) throws ParserException {
-    parseMoof(moof, trackBundles, flags, extendedTypeScratch);
-    DrmInitData.Mapped drmInitData = getDrmInitDataFromAtoms(moof.leafChildren);
-    if (drmInitData != null) {
-      extractorOutput.drmInitData(drmInitData);
+  /**
+   * Parses a moof atom (defined in 14496-12), whose children are parsed in place.
+   *
+   * @param moof The moof atom to parse.
+   * @param headerSize The size of the moof atom's header.
+   */
+  private void onMoofAtomRead(ParsableByteArray moof, int headerSize) throws ParserException {
+    List<LeafAtom> psshAtoms = null;
+    int end = moof.limit();
+    for (int position = headerSize; position < end; ) {
+      int size = readChildAtomSize(moof, position, end);
+      int type = moof.readInt();
+      if (type == Atom.TYPE_traf) {
+        parseTraf(moof, position, position + size, trackBundles, flags, extendedTypeScratch);
+      } else if (type == Atom.TYPE_pssh) {
+        // The data is retained by the DrmInitData, so a copy is made.
+        if (psshAtoms == null) {
+          psshAtoms = new ArrayList<>();
+        }
+        psshAtoms.add(new LeafAtom(type,
+            new ParsableByteArray(Arrays.copyOfRange(moof.data, position, position + size))));
+      }
+      position += size;
+    }
+    if (psshAtoms != null) {
+      DrmInitData.Mapped drmInitData = getDrmInitDataFromAtoms(psshAtoms);
+      if (drmInitData != null) {
+        extractorOutput.drmInitData(drmInitData);
+      }
+    }
+  }
+
+  /**
+   * Reads the size and skips the header of an atom that's a child of an atom whose data has been
+   * read in full.
+   *
+   * @param data The data of the parent atom.
+   * @param position The position of the child atom.
+   * @param end The position at which the parent atom ends.
+   * @return The size of the child atom. The position of {@code data} is set to the child atom's
+   *     type.
+   * @throws ParserException If the child atom doesn't fit inside the parent atom.
+   */
+  private static int readChildAtomSize(ParsableByteArray data, int position, int end)
+      throws ParserException {
+    if (end - position < Atom.HEADER_SIZE) {
+      throw new ParserException("Truncated atom header in moof.");
     }
+    data.setPosition(position);
+    int size = data.readInt();
+    if (size < Atom.HEADER_SIZE || size > end - position) {
+      throw new ParserException("Invalid atom size in moof (unsupported): " + size);
+    }
+    return size;
   }
 
   /**
@@ -408,28 +480,58 @@ public class FragmentedMp4Extractor implements Extractor {
     return version == 0 ? mehd.readUnsignedInt() : mehd.readUnsignedLongToLong();
   }
 
-  private static void parseMoof(ContainerAtom moof, SparseArray<TrackBundle> trackBundleArray,
-      int flags, byte[] extendedTypeScratch) throws ParserException {
-    int moofContainerChildrenSize = moof.containerChildren.size();
-    for (int i = 0; i < moofContainerChildrenSize; i++) {
-      Atom.ContainerAtom child = moof.containerChildren.get(i);
-      if (child.type == Atom.TYPE_traf) {
-        parseTraf(child, trackBundleArray, flags, extendedTypeScratch);
-      }
-    }
-  }
-
   /**
    * Parses a traf atom (defined in 14496-12).
    */
-  private static void parseTraf(ContainerAtom traf, SparseArray<TrackBundle> trackBundleArray,
-      int flags, byte[] extendedTypeScratch) throws ParserException {
-    if (traf.getChildAtomOfTypeCount(Atom.TYPE_trun) != 1) {
+  private static void parseTraf(ParsableByteArray moof, int trafPosition, int trafEnd,
+      SparseArray<TrackBundle> trackBundleArray, int flags, byte[] scratch)
+      throws ParserException {
+    int tfhdPosition = POSITION_UNSET;
+    int tfdtPosition = POSITION_UNSET;
+    int trunPosition = POSITION_UNSET;
+    int trunCount = 0;
+    int saizPosition = POSITION_UNSET;
+    int saioPosition = POSITION_UNSET;
+    int sencPosition = POSITION_UNSET;
+    int sencEnd = 0;
+    int sbgpPosition = POSITION_UNSET;
+    int sgpdPosition = POSITION_UNSET;
+    boolean hasUuid = false;
+    for (int position = trafPosition + Atom.HEADER_SIZE; position < trafEnd; ) {
+      int size = readChildAtomSize(moof, position, trafEnd);
+      int type = moof.readInt();
+      if (type == Atom.TYPE_tfhd && tfhdPosition == POSITION_UNSET) {
+        tfhdPosition = position;
+      } else if (type == Atom.TYPE_tfdt && tfdtPosition == POSITION_UNSET) {
+        tfdtPosition = position;
+      } else if (type == Atom.TYPE_trun) {
+        trunPosition = position;
+        trunCount++;
+      } else if (type == Atom.TYPE_saiz && saizPosition == POSITION_UNSET) {
+        saizPosition = position;
+      } else if (type == Atom.TYPE_saio && saioPosition == POSITION_UNSET) {
+        saioPosition = position;
+      } else if (type == Atom.TYPE_senc && sencPosition == POSITION_UNSET) {
+        sencPosition = position;
+        sencEnd = position + size;
+      } else if (type == Atom.TYPE_sbgp && sbgpPosition == POSITION_UNSET) {
+        sbgpPosition = position;
+      } else if (type == Atom.TYPE_sgpd && sgpdPosition == POSITION_UNSET) {
+        sgpdPosition = position;
+      } else if (type == Atom.TYPE_uuid) {
+        hasUuid = true;
+      }
+      position += size;
+    }
+
+    if (trunCount != 1) {
       throw new ParserException("Trun count in traf != 1 (unsupported).");
     }
+    if (tfhdPosition == POSITION_UNSET) {
+      throw new ParserException("Missing tfhd in traf.");
+    }
 
-    LeafAtom tfhd = traf.getLeafAtomOfType(Atom.TYPE_tfhd);
-    TrackBundle trackBundle = parseTfhd(tfhd.data, trackBundleArray, flags);
+    TrackBundle trackBundle = parseTfhd(moof, tfhdPosition, trackBundleArray, flags);
     if (trackBundle == null) {
       return;
     }
@@ -438,50 +540,45 @@ public class FragmentedMp4Extractor implements Extractor {
     long decodeTime = fragment.nextFragmentDecodeTime;
     trackBundle.reset();
 
-    LeafAtom tfdtAtom = traf.getLeafAtomOfType(Atom.TYPE_tfdt);
-    if (tfdtAtom != null && (flags & FLAG_WORKAROUND_IGNORE_TFDT_BOX) == 0) {
-      decodeTime = parseTfdt(traf.getLeafAtomOfType(Atom.TYPE_tfdt).data);
+    if (tfdtPosition != POSITION_UNSET && (flags & FLAG_WORKAROUND_IGNORE_TFDT_BOX) == 0) {
+      decodeTime = parseTfdt(moof, tfdtPosition);
     }
 
-    LeafAtom trun = traf.getLeafAtomOfType(Atom.TYPE_trun);
-    parseTrun(trackBundle, decodeTime, flags, trun.data);
+    parseTrun(trackBundle, decodeTime, flags, moof, trunPosition);
 
-    LeafAtom saiz = traf.getLeafAtomOfType(Atom.TYPE_saiz);
-    if (saiz != null) {
+    if (saizPosition != POSITION_UNSET) {
       TrackEncryptionBox trackEncryptionBox = trackBundle.track
           .sampleDescriptionEncryptionBoxes[fragment.header.sampleDescriptionIndex];
-      parseSaiz(trackEncryptionBox, saiz.data, fragment);
+      parseSaiz(trackEncryptionBox, moof, saizPosition, fragment);
     }
 
-    LeafAtom saio = traf.getLeafAtomOfType(Atom.TYPE_saio);
-    if (saio != null) {
-      parseSaio(saio.data, fragment);
+    if (saioPosition != POSITION_UNSET) {
+      parseSaio(moof, saioPosition, fragment);
     }
 
-    LeafAtom senc = traf.getLeafAtomOfType(Atom.TYPE_senc);
-    if (senc != null) {
-      parseSenc(senc.data, fragment);
+    if (sencPosition != POSITION_UNSET) {
+      parseSenc(moof, sencPosition + Atom.HEADER_SIZE, sencEnd, fragment);
     }
 
-    LeafAtom sbgp = traf.getLeafAtomOfType(Atom.TYPE_sbgp);
-    LeafAtom sgpd = traf.getLeafAtomOfType(Atom.TYPE_sgpd);
-    if (sbgp != null && sgpd != null) {
-      parseSgpd(sbgp.data, sgpd.data, fragment);
+    if (sbgpPosition != POSITION_UNSET && sgpdPosition != POSITION_UNSET) {
+      parseSgpd(moof, sbgpPosition, sgpdPosition, fragment, scratch);
     }
 
-    int childrenSize = traf.leafChildren.size();
-    for (int i = 0; i < childrenSize; i++) {
-      LeafAtom atom = traf.leafChildren.get(i);
-      if (atom.type == Atom.TYPE_uuid) {
-        parseUuid(atom.data, fragment, extendedTypeScratch);
+    if (hasUuid) {
+      for (int position = trafPosition + Atom.HEADER_SIZE; position < trafEnd; ) {
+        int size = readChildAtomSize(moof, position, trafEnd);
+        if (moof.readInt() == Atom.TYPE_uuid) {
+          parseUuid(moof, position, position + size, fragment, scratch);
+        }
+        position += size;
       }
     }
   }
 
   private static void parseSaiz(TrackEncryptionBox encryptionBox, ParsableByteArray saiz,
-      TrackFragment out) throws ParserException {
+      int position, TrackFragment out) throws ParserException {
     int vectorSize = encryptionBox.initializationVectorSize;
-    saiz.setPosition(Atom.HEADER_SIZE);
+    saiz.setPosition(position + Atom.HEADER_SIZE);
     int fullAtom = saiz.readInt();
     int flags = Atom.parseFullAtomFlags(fullAtom);
     if ((flags & 0x01) == 1) {
@@ -513,11 +610,13 @@ public class FragmentedMp4Extractor implements Extractor {
   /**
    * Parses a saio atom (defined in 14496-12).
    *
-   * @param saio The saio atom to parse.
+   * @param saio The data holding the saio atom to parse.
+   * @param position The position of the saio atom.
    * @param out The {@link TrackFragment} to populate with data from the saio atom.
    */
-  private static void parseSaio(ParsableByteArray saio, TrackFragment out) throws ParserException {
-    saio.setPosition(Atom.HEADER_SIZE);
+  private static void parseSaio(ParsableByteArray saio, int position, TrackFragment out)
+      throws ParserException {
+    saio.setPosition(position + Atom.HEADER_SIZE);
     int fullAtom = saio.readInt();
     int flags = Atom.parseFullAtomFlags(fullAtom);
     if ((flags & 0x01) == 1) {
@@ -540,14 +639,15 @@ public class FragmentedMp4Extractor implements Extractor {
    * returns the {@link TrackBundle} of the corresponding {@link Track}. If the tfhd does not refer
    * to any {@link TrackBundle}, {@code null} is returned and no changes are made.
    *
-   * @param tfhd The tfhd atom to parse.
+   * @param tfhd The data holding the tfhd atom to parse.
+   * @param position The position of the tfhd atom.
    * @param trackBundles The track bundles, one of which corresponds to the tfhd atom being parsed.
    * @return The {@link TrackBundle} to which the {@link TrackFragment} belongs, or null if the tfhd
    *     does not refer to any {@link TrackBundle}.
    */
-  private static TrackBundle parseTfhd(ParsableByteArray tfhd,
+  private static TrackBundle parseTfhd(ParsableByteArray tfhd, int position,
       SparseArray<TrackBundle> trackBundles, int flags) {
-    tfhd.setPosition(Atom.HEADER_SIZE);
+    tfhd.setPosition(position + Atom.HEADER_SIZE);
     int fullAtom = tfhd.readInt();
     int atomFlags = Atom.parseFullAtomFlags(fullAtom);
     int trackId = tfhd.readInt();
@@ -571,8 +671,14 @@ public class FragmentedMp4Extractor implements Extractor {
         ? tfhd.readUnsignedIntToInt() : defaultSampleValues.size;
     int defaultSampleFlags = ((atomFlags & 0x20 /* default_sample_flags_present */) != 0)
         ? tfhd.readUnsignedIntToInt() : defaultSampleValues.flags;
-    trackBundle.fragment.header = new DefaultSampleValues(defaultSampleDescriptionIndex,
-        defaultSampleDuration, defaultSampleSize, defaultSampleFlags);
+    DefaultSampleValues header = trackBundle.fragment.header;
+    if (header == null || header.sampleDescriptionIndex != defaultSampleDescriptionIndex
+        || header.duration != defaultSampleDuration || header.size != defaultSampleSize
+        || header.flags != defaultSampleFlags) {
+      // The values usually match those of the previous fragment, in which case they're reused.
+      trackBundle.fragment.header = new DefaultSampleValues(defaultSampleDescriptionIndex,
+          defaultSampleDuration, defaultSampleSize, defaultSampleFlags);
+    }
     return trackBundle;
   }
 
@@ -582,8 +688,8 @@ public class FragmentedMp4Extractor implements Extractor {
    * @return baseMediaDecodeTime The sum of the decode durations of all earlier samples in the
    *     media, expressed in the media's timescale.
    */
-  private static long parseTfdt(ParsableByteArray tfdt) {
-    tfdt.setPosition(Atom.HEADER_SIZE);
+  private static long parseTfdt(ParsableByteArray tfdt, int position) {
+    tfdt.setPosition(position + Atom.HEADER_SIZE);
     int fullAtom = tfdt.readInt();
     int version = Atom.parseFullAtomVersion(fullAtom);
     return version == 1 ? tfdt.readUnsignedLongToLong() : tfdt.readUnsignedInt();
@@ -596,11 +702,12 @@ public class FragmentedMp4Extractor implements Extractor {
    *     which parsed data should be placed.
    * @param decodeTime The decode time of the first sample in the fragment run.
    * @param flags Flags to allow any required workaround to be executed.
-   * @param trun The trun atom to parse.
+   * @param trun The data holding the trun atom to parse.
+   * @param position The position of the trun atom.
    */
   private static void parseTrun(TrackBundle trackBundle, long decodeTime, int flags,
-      ParsableByteArray trun) {
-    trun.setPosition(Atom.HEADER_SIZE);
+      ParsableByteArray trun, int position) {
+    trun.setPosition(position + Atom.HEADER_SIZE);
     int fullAtom = trun.readInt();
     int atomFlags = Atom.parseFullAtomFlags(fullAtom);
 
@@ -674,9 +781,9 @@ public class FragmentedMp4Extractor implements Extractor {
     fragment.nextFragmentDecodeTime = cumulativeTime;
   }
 
-  private static void parseUuid(ParsableByteArray uuid, TrackFragment out,
+  private static void parseUuid(ParsableByteArray uuid, int position, int end, TrackFragment out,
       byte[] extendedTypeScratch) throws ParserException {
-    uuid.setPosition(Atom.HEADER_SIZE);
+    uuid.setPosition(position + Atom.HEADER_SIZE);
     uuid.readBytes(extendedTypeScratch, 0, 16);
 
     // Currently this parser only supports Microsoft's PIFF SampleEncryptionBox.
@@ -687,16 +794,21 @@ public class FragmentedMp4Extractor implements Extractor {
     // Except for the extended type, this box is identical to a SENC box. See "Portable encoding of
     // audio-video objects: The Protected Interoperable File Format (PIFF), John A. Bocharov et al,
     // Section 5.3.2.1."
-    parseSenc(uuid, 16, out);
+    parseSenc(uuid, uuid.getPosition(), end, out);
   }
 
-  private static void parseSenc(ParsableByteArray senc, TrackFragment out) throws ParserException {
-    parseSenc(senc, 0, out);
-  }
-
-  private static void parseSenc(ParsableByteArray senc, int offset, TrackFragment out)
+  /**
+   * Parses a senc atom (defined in 14496-12). The encryption data isn't copied, but is a view of
+   * the atom's data.
+   *
+   * @param senc The data holding the senc atom to parse.
+   * @param position The position of the version and flags of the senc atom.
+   * @param end The position at which the senc atom ends.
+   * @param out The {@link TrackFragment} to populate with data from the senc atom.
+   */
+  private static void parseSenc(ParsableByteArray senc, int position, int end, TrackFragment out)
       throws ParserException {
-    senc.setPosition(Atom.HEADER_SIZE + offset);
+    senc.setPosition(position);
     int fullAtom = senc.readInt();
     int flags = Atom.parseFullAtomFlags(fullAtom);
 
@@ -712,53 +824,51 @@ public class FragmentedMp4Extractor implements Extractor {
     }
 
     Arrays.fill(out.sampleHasSubsampleEncryptionTable, 0, sampleCount, subsampleEncryption);
-    out.initEncryptionData(senc.bytesLeft());
-    out.fillEncryptionData(senc);
+    out.wrapEncryptionData(senc.data, senc.getPosition(), end - senc.getPosition());
   }
 
-  private static void parseSgpd(ParsableByteArray sbgp, ParsableByteArray sgpd, TrackFragment out)
-      throws ParserException {
-    sbgp.setPosition(Atom.HEADER_SIZE);
-    int sbgpFullAtom = sbgp.readInt();
-    if (sbgp.readInt() != SAMPLE_GROUP_TYPE_seig) {
+  private static void parseSgpd(ParsableByteArray data, int sbgpPosition, int sgpdPosition,
+      TrackFragment out, byte[] keyIdScratch) throws ParserException {
+    data.setPosition(sbgpPosition + Atom.HEADER_SIZE);
+    int sbgpFullAtom = data.readInt();
+    if (data.readInt() != SAMPLE_GROUP_TYPE_seig) {
       // Only seig grouping type is supported.
       return;
     }
     if (Atom.parseFullAtomVersion(sbgpFullAtom) == 1) {
-      sbgp.skipBytes(4);
+      data.skipBytes(4);
     }
-    if (sbgp.readInt() != 1) {
+    if (data.readInt() != 1) {
       throw new ParserException("Entry count in sbgp != 1 (unsupported).");
     }
 
-    sgpd.setPosition(Atom.HEADER_SIZE);
-    int sgpdFullAtom = sgpd.readInt();
-    if (sgpd.readInt() != SAMPLE_GROUP_TYPE_seig) {
+    data.setPosition(sgpdPosition + Atom.HEADER_SIZE);
+    int sgpdFullAtom = data.readInt();
+    if (data.readInt() != SAMPLE_GROUP_TYPE_seig) {
       // Only seig grouping type is supported.
       return;
     }
     int sgpdVersion = Atom.parseFullAtomVersion(sgpdFullAtom);
     if (sgpdVersion == 1) {
-      if (sgpd.readUnsignedInt() == 0) {
+      if (data.readUnsignedInt() == 0) {
         throw new ParserException("Variable length decription in sgpd found (unsupported)");
       }
     } else if (sgpdVersion >= 2) {
-      sgpd.skipBytes(4);
+      data.skipBytes(4);
     }
-    if (sgpd.readUnsignedInt() != 1) {
+    if (data.readUnsignedInt() != 1) {
       throw new ParserException("Entry count in sgpd != 1 (unsupported).");
     }
     // CencSampleEncryptionInformationGroupEntry
-    sgpd.skipBytes(2);
-    boolean isProtected = sgpd.readUnsignedByte() == 1;
+    data.skipBytes(2);
+    boolean isProtected = data.readUnsignedByte() == 1;
     if (!isProtected) {
       return;
     }
-    int initVectorSize = sgpd.readUnsignedByte();
-    byte[] keyId = new byte[16];
-    sgpd.readBytes(keyId, 0, keyId.length);
+    int initVectorSize = data.readUnsignedByte();
+    data.readBytes(keyIdScratch, 0, 16);
     out.definesEncryptionData = true;
-    out.trackEncryptionBox = new TrackEncryptionBox(isProtected, initVectorSize, keyId);
+    out.setTrackEncryptionBox(isProtected, initVectorSize, keyIdScratch);
   }
 
   protected void parseEmsg(ParsableByteArray atom, long inputPosition) throws ParserException {
@@ -1047,19 +1157,16 @@ public class FragmentedMp4Extractor implements Extractor {
   /** Returns whether the extractor should parse a leaf atom with type {@code atom}. */
   private static boolean shouldParseLeafAtom(int atom) {
     return atom == Atom.TYPE_hdlr || atom == Atom.TYPE_mdhd || atom == Atom.TYPE_mvhd
-        || atom == Atom.TYPE_sidx || atom == Atom.TYPE_stsd || atom == Atom.TYPE_tfdt
-        || atom == Atom.TYPE_tfhd || atom == Atom.TYPE_tkhd || atom == Atom.TYPE_trex
-        || atom == Atom.TYPE_trun || atom == Atom.TYPE_pssh || atom == Atom.TYPE_saiz
-        || atom == Atom.TYPE_saio || atom == Atom.TYPE_senc || atom == Atom.TYPE_sbgp
-        || atom == Atom.TYPE_sgpd || atom == Atom.TYPE_uuid || atom == Atom.TYPE_elst
+        || atom == Atom.TYPE_sidx || atom == Atom.TYPE_stsd || atom == Atom.TYPE_tkhd
+        || atom == Atom.TYPE_trex || atom == Atom.TYPE_pssh || atom == Atom.TYPE_elst
         || atom == Atom.TYPE_mehd || atom == Atom.TYPE_emsg;
   }
 
   /** Returns whether the extractor should parse a container atom with type {@code atom}. */
   private static boolean shouldParseContainerAtom(int atom) {
     return atom == Atom.TYPE_moov || atom == Atom.TYPE_trak || atom == Atom.TYPE_mdia
-        || atom == Atom.TYPE_minf || atom == Atom.TYPE_stbl || atom == Atom.TYPE_moof
-        || atom == Atom.TYPE_traf || atom == Atom.TYPE_mvex || atom == Atom.TYPE_edts;
+        || atom == Atom.TYPE_minf || atom == Atom.TYPE_stbl || atom == Atom.TYPE_mvex
+        || atom == Atom.TYPE_edts;
   }
 
   /**
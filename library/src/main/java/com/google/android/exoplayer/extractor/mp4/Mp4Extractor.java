@@ -31,6 +31,7 @@ import com.google.android.exoplayer.util.ParsableByteArray;
 import com.google.android.exoplayer.util.Util;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Stack;
 
@@ -43,7 +44,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
   private static final int STATE_AFTER_SEEK = 0;
   private static final int STATE_READING_ATOM_HEADER = 1;
   private static final int STATE_READING_ATOM_PAYLOAD = 2;
-  private static final int STATE_READING_SAMPLE = 3;
+  private static final int STATE_READING_SAMPLE_TABLE_BOX = 3;
+  private static final int STATE_READING_SAMPLE = 4;
 
   // Brand stored in the ftyp atom for QuickTime media.
   private static final int BRAND_QUICKTIME = Util.getIntegerCodeForString("qt  ");
@@ -54,18 +56,27 @@ public final class Mp4Extractor implements Extractor, SeekMap {
    */
   private static final long RELOAD_MINIMUM_SEEK_DISTANCE = 256 * 1024;
 
+  /**
+   * The size of the buffer into which sample table boxes are read, in bytes.
+   */
+  private static final int SAMPLE_TABLE_BOX_BUFFER_SIZE = 16 * 1024;
+
   // Temporary arrays.
   private final ParsableByteArray nalStartCode;
   private final ParsableByteArray nalLength;
 
   private final ParsableByteArray atomHeader;
   private final Stack<ContainerAtom> containerAtoms;
+  private final ParsableByteArray sampleTableBoxData;
+  private final HashMap<ContainerAtom, SampleTableBoxes> sampleTableBoxes;
 
   private int parserState;
   private int atomType;
   private long atomSize;
   private int atomHeaderBytesRead;
   private ParsableByteArray atomData;
+  private SampleTableBoxes currentSampleTableBoxes;
+  private long sampleTableBoxBytesRemaining;
 
   private int sampleSize;
   private int sampleBytesWritten;
@@ -79,6 +90,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
   public Mp4Extractor() {
     atomHeader = new ParsableByteArray(Atom.LONG_HEADER_SIZE);
     containerAtoms = new Stack<>();
+    sampleTableBoxData = new ParsableByteArray(SAMPLE_TABLE_BOX_BUFFER_SIZE);
+    sampleTableBoxes = new HashMap<>();
     nalStartCode = new ParsableByteArray(NalUnitUtil.NAL_START_CODE);
     nalLength = new ParsableByteArray(4);
     enterReadingAtomHeaderState();
@@ -97,7 +110,10 @@ public final class Mp4Extractor implements Extractor, SeekMap {
   @Override
   public void seek() {
     containerAtoms.clear();
+    sampleTableBoxes.clear();
     atomHeaderBytesRead = 0;
+    currentSampleTableBoxes = null;
+    sampleTableBoxBytesRemaining = 0;
     sampleBytesWritten = 0;
     sampleCurrentNalBytesRemaining = 0;
     parserState = STATE_AFTER_SEEK;
@@ -130,6 +146,9 @@ public final class Mp4Extractor implements Extractor, SeekMap {
             return RESULT_SEEK;
           }
           break;
+        case STATE_READING_SAMPLE_TABLE_BOX:
+          readSampleTableBox(input);
+          break;
         default:
           return readSample(input, seekPosition);
       }
@@ -155,7 +174,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       }
       tracks[trackIndex].sampleIndex = sampleIndex;
 
-      long offset = sampleTable.offsets[sampleIndex];
+      long offset = sampleTable.getOffset(sampleIndex);
       if (offset < earliestSamplePosition) {
         earliestSamplePosition = offset;
       }
@@ -168,6 +187,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
   private void enterReadingAtomHeaderState() {
     parserState = STATE_READING_ATOM_HEADER;
     atomHeaderBytesRead = 0;
+    sampleTableBoxBytesRemaining = 0;
   }
 
   private boolean readAtomHeader(ExtractorInput input) throws IOException, InterruptedException {
@@ -199,6 +219,19 @@ public final class Mp4Extractor implements Extractor, SeekMap {
         // Start reading the first child atom.
         enterReadingAtomHeaderState();
       }
+    } else if (SampleTableBoxes.isSampleTableBox(atomType) && !containerAtoms.isEmpty()
+        && containerAtoms.peek().type == Atom.TYPE_stbl) {
+      // Decode the box as it's read, rather than reading it into memory in full.
+      ContainerAtom stbl = containerAtoms.peek();
+      currentSampleTableBoxes = sampleTableBoxes.get(stbl);
+      if (currentSampleTableBoxes == null) {
+        currentSampleTableBoxes = new SampleTableBoxes();
+        sampleTableBoxes.put(stbl, currentSampleTableBoxes);
+      }
+      sampleTableBoxBytesRemaining = atomSize - atomHeaderBytesRead;
+      currentSampleTableBoxes.startBox(atomType, sampleTableBoxBytesRemaining);
+      sampleTableBoxData.reset(0);
+      parserState = STATE_READING_SAMPLE_TABLE_BOX;
     } else if (shouldParseLeafAtom(atomType)) {
       // We don't support parsing of leaf atoms that define extended atom sizes, or that have
       // lengths greater than Integer.MAX_VALUE.
@@ -245,6 +278,29 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     return seekRequired && parserState != STATE_READING_SAMPLE;
   }
 
+  /**
+   * Reads and decodes the payload of a sample table box, in pieces of at most
+   * {@link #SAMPLE_TABLE_BOX_BUFFER_SIZE} bytes.
+   */
+  private void readSampleTableBox(ExtractorInput input) throws IOException, InterruptedException {
+    byte[] data = sampleTableBoxData.data;
+    while (sampleTableBoxBytesRemaining > 0) {
+      // Move any partially decoded entry to the start of the buffer, and fill the rest. The buffer
+      // is reset before reading, so that reading can resume here if it fails.
+      int bytesLeft = sampleTableBoxData.bytesLeft();
+      System.arraycopy(data, sampleTableBoxData.getPosition(), data, 0, bytesLeft);
+      sampleTableBoxData.reset(bytesLeft);
+      int bytesToRead = (int) Math.min(data.length - bytesLeft, sampleTableBoxBytesRemaining);
+      input.readFully(data, bytesLeft, bytesToRead);
+      sampleTableBoxBytesRemaining -= bytesToRead;
+      sampleTableBoxData.reset(bytesLeft + bytesToRead);
+      currentSampleTableBoxes.parse(sampleTableBoxData);
+    }
+    currentSampleTableBoxes.endBox();
+    currentSampleTableBoxes = null;
+    processAtomEnded(input.getPosition());
+  }
+
   private void processAtomEnded(long atomEndPosition) throws ParserException {
     while (!containerAtoms.isEmpty() && containerAtoms.peek().endPosition == atomEndPosition) {
       Atom.ContainerAtom containerAtom = containerAtoms.pop();
@@ -252,6 +308,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
         // We've reached the end of the moov atom. Process it and prepare to read samples.
         processMoovAtom(containerAtom);
         containerAtoms.clear();
+        sampleTableBoxes.clear();
         parserState = STATE_READING_SAMPLE;
       } else if (!containerAtoms.isEmpty()) {
         containerAtoms.peek().add(containerAtom);
@@ -308,7 +365,9 @@ public final class Mp4Extractor implements Extractor, SeekMap {
 
       Atom.ContainerAtom stblAtom = atom.getContainerAtomOfType(Atom.TYPE_mdia)
           .getContainerAtomOfType(Atom.TYPE_minf).getContainerAtomOfType(Atom.TYPE_stbl);
-      TrackSampleTable trackSampleTable = AtomParsers.parseStbl(track, stblAtom);
+      SampleTableBoxes stbl = sampleTableBoxes.get(stblAtom);
+      TrackSampleTable trackSampleTable = AtomParsers.parseStbl(track,
+          stbl != null ? stbl : new SampleTableBoxes());
       if (trackSampleTable.sampleCount == 0) {
         continue;
       }
@@ -325,7 +384,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       mp4Track.trackOutput.format(mediaFormat);
       tracks.add(mp4Track);
 
-      long firstSampleOffset = trackSampleTable.offsets[0];
+      long firstSampleOffset = trackSampleTable.getOffset(0);
       if (firstSampleOffset < earliestSampleOffset) {
         earliestSampleOffset = firstSampleOffset;
       }
@@ -360,14 +419,14 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     Mp4Track track = tracks[trackIndex];
     TrackOutput trackOutput = track.trackOutput;
     int sampleIndex = track.sampleIndex;
-    long position = track.sampleTable.offsets[sampleIndex];
+    long position = track.sampleTable.getOffset(sampleIndex);
     long skipAmount = position - input.getPosition() + sampleBytesWritten;
     if (skipAmount < 0 || skipAmount >= RELOAD_MINIMUM_SEEK_DISTANCE) {
       positionHolder.position = position;
       return RESULT_SEEK;
     }
     input.skipFully((int) skipAmount);
-    sampleSize = track.sampleTable.sizes[sampleIndex];
+    sampleSize = track.sampleTable.getSize(sampleIndex);
     if (track.track.nalUnitLengthFieldLength != -1) {
       // Zero the top three bytes of the array that we'll use to parse nal unit lengths, in case
       // they're only 1 or 2 bytes long.
@@ -405,8 +464,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
         sampleCurrentNalBytesRemaining -= writtenBytes;
       }
     }
-    trackOutput.sampleMetadata(track.sampleTable.timestampsUs[sampleIndex],
-        track.sampleTable.flags[sampleIndex], sampleSize, 0, null);
+    trackOutput.sampleMetadata(track.sampleTable.getTimestampUs(sampleIndex),
+        track.sampleTable.getFlags(sampleIndex), sampleSize, 0, null);
     track.sampleIndex++;
     sampleBytesWritten = 0;
     sampleCurrentNalBytesRemaining = 0;
@@ -427,7 +486,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
         continue;
       }
 
-      long trackSampleOffset = track.sampleTable.offsets[sampleIndex];
+      long trackSampleOffset = track.sampleTable.getOffset(sampleIndex);
       if (trackSampleOffset < earliestSampleOffset) {
         earliestSampleOffset = trackSampleOffset;
         earliestSampleTrackIndex = trackIndex;
@@ -442,11 +501,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
    */
   private static boolean shouldParseLeafAtom(int atom) {
     return atom == Atom.TYPE_mdhd || atom == Atom.TYPE_mvhd || atom == Atom.TYPE_hdlr
-        || atom == Atom.TYPE_stsd || atom == Atom.TYPE_stts || atom == Atom.TYPE_stss
-        || atom == Atom.TYPE_ctts || atom == Atom.TYPE_elst || atom == Atom.TYPE_stsc
-        || atom == Atom.TYPE_stsz || atom == Atom.TYPE_stz2 || atom == Atom.TYPE_stco
-        || atom == Atom.TYPE_co64 || atom == Atom.TYPE_tkhd || atom == Atom.TYPE_ftyp
-        || atom == Atom.TYPE_udta;
+        || atom == Atom.TYPE_stsd || atom == Atom.TYPE_elst || atom == Atom.TYPE_tkhd
+        || atom == Atom.TYPE_ftyp || atom == Atom.TYPE_udta;
   }
 
   /**
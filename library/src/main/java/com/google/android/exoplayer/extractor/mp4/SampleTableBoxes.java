@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor.mp4;
+
+import com.google.android.exoplayer.ParserException;
+import com.google.android.exoplayer.util.Assertions;
+import com.google.android.exoplayer.util.ParsableByteArray;
+
+/**
+ * The decoded contents of the boxes in an stbl atom whose size is proportional to the number of
+ * samples in the track (stsz, stz2, stco, co64, stsc, stts, ctts and stss).
+ * <p>
+ * Each box is decoded into primitive arrays as its data is read. The data of a box is passed to
+ * {@link #parse(ParsableByteArray)} in pieces of any size, between calls to
+ * {@link #startBox(int, long)} and {@link #endBox()}, so the box never needs to be held in memory
+ * in full. If a track has more than one box of the same kind, only the first is decoded.
+ */
+/* package */ final class SampleTableBoxes {
+
+  /**
+   * Size of the header of an stsz or stz2 box following its atom header: version, flags, sample
+   * size (or field size) and sample count.
+   */
+  private static final int SAMPLE_SIZE_BOX_HEADER_SIZE = 12;
+  /**
+   * Size of the header of other boxes following their atom header: version, flags and entry count.
+   */
+  private static final int BOX_HEADER_SIZE = 8;
+
+  /**
+   * Whether the sizes of the samples have been decoded from an stsz or stz2 box.
+   */
+  public boolean hasSampleSizes;
+  /**
+   * The number of samples.
+   */
+  public int sampleCount;
+  /**
+   * The size of every sample if all samples have the same size, or 0 otherwise.
+   */
+  public int fixedSampleSize;
+  /**
+   * The size of each sample, or null if all samples have the same size.
+   */
+  public int[] sampleSizes;
+
+  /**
+   * The number of chunks.
+   */
+  public int chunkCount;
+  /**
+   * The offset of each chunk, or null if no stco or co64 box was decoded.
+   */
+  public long[] chunkOffsets;
+
+  /**
+   * The number of entries in the stsc box.
+   */
+  public int samplesPerChunkEntryCount;
+  /**
+   * The one-based index of the first chunk of each stsc entry, or null if no stsc box was decoded.
+   */
+  public int[] samplesPerChunkFirstChunks;
+  /**
+   * The number of samples in each chunk of each stsc entry.
+   */
+  public int[] samplesPerChunk;
+
+  /**
+   * The number of entries in the stts box.
+   */
+  public int timeToSampleEntryCount;
+  /**
+   * The number of samples in each stts entry, or null if no stts box was decoded.
+   */
+  public int[] timeToSampleCounts;
+  /**
+   * The duration of each sample in each stts entry.
+   */
+  public int[] timeToSampleDeltas;
+
+  /**
+   * The number of entries in the ctts box.
+   */
+  public int compositionOffsetEntryCount;
+  /**
+   * The number of samples in each ctts entry, or null if no ctts box was decoded.
+   */
+  public int[] compositionOffsetCounts;
+  /**
+   * The composition offset of each sample in each ctts entry.
+   */
+  public int[] compositionOffsets;
+
+  /**
+   * The number of entries in the stss box.
+   */
+  public int syncSampleCount;
+  /**
+   * The zero-based index of each synchronization sample, or null if no stss box was decoded.
+   */
+  public int[] syncSampleIndices;
+
+  private int boxType;
+  private long boxPayloadSize;
+  private boolean skippingBox;
+  private boolean parsedHeader;
+  private int entryCount;
+  private int entryIndex;
+  private int stz2FieldSize;
+
+  /**
+   * Returns whether an atom of type {@code atomType} is one of the sample table boxes decoded by
+   * this class.
+   */
+  public static boolean isSampleTableBox(int atomType) {
+    return atomType == Atom.TYPE_stsz || atomType == Atom.TYPE_stz2 || atomType == Atom.TYPE_stco
+        || atomType == Atom.TYPE_co64 || atomType == Atom.TYPE_stsc || atomType == Atom.TYPE_stts
+        || atomType == Atom.TYPE_ctts || atomType == Atom.TYPE_stss;
+  }
+
+  /**
+   * Starts decoding a box.
+   *
+   * @param type The type of the box. Must be one for which {@link #isSampleTableBox(int)} returns
+   *     true.
+   * @param payloadSize The size of the box, excluding its atom header.
+   */
+  public void startBox(int type, long payloadSize) {
+    Assertions.checkArgument(isSampleTableBox(type));
+    boxType = type;
+    boxPayloadSize = payloadSize;
+    skippingBox = isDecoded(type);
+    parsedHeader = false;
+    entryCount = 0;
+    entryIndex = 0;
+  }
+
+  /**
+   * Decodes data of the current box. Entries that are only partially contained in {@code data} are
+   * not consumed, and should be passed again along with the box's remaining data.
+   *
+   * @param data Data of the box, which is consumed from its current position.
+   * @throws ParserException If the box is malformed.
+   */
+  public void parse(ParsableByteArray data) throws ParserException {
+    if (skippingBox) {
+      data.skipBytes(data.bytesLeft());
+      return;
+    }
+    if (!parsedHeader) {
+      int headerSize = boxType == Atom.TYPE_stsz || boxType == Atom.TYPE_stz2
+          ? SAMPLE_SIZE_BOX_HEADER_SIZE : BOX_HEADER_SIZE;
+      if (data.bytesLeft() < headerSize) {
+        return;
+      }
+      parseHeader(data, boxPayloadSize - headerSize);
+      parsedHeader = true;
+    }
+    if (boxType == Atom.TYPE_stsz) {
+      while (entryIndex < entryCount && data.bytesLeft() >= 4) {
+        sampleSizes[entryIndex++] = data.readUnsignedIntToInt();
+      }
+    } else if (boxType == Atom.TYPE_stz2) {
+      parseStz2Entries(data);
+    } else if (boxType == Atom.TYPE_stco) {
+      while (entryIndex < entryCount && data.bytesLeft() >= 4) {
+        chunkOffsets[entryIndex++] = data.readUnsignedInt();
+      }
+    } else if (boxType == Atom.TYPE_co64) {
+      while (entryIndex < entryCount && data.bytesLeft() >= 8) {
+        chunkOffsets[entryIndex++] = data.readUnsignedLongToLong();
+      }
+    } else if (boxType == Atom.TYPE_stsc) {
+      while (entryIndex < entryCount && data.bytesLeft() >= 12) {
+        samplesPerChunkFirstChunks[entryIndex] = data.readUnsignedIntToInt();
+        samplesPerChunk[entryIndex] = data.readUnsignedIntToInt();
+        data.skipBytes(4); // sample_description_index
+        entryIndex++;
+      }
+    } else if (boxType == Atom.TYPE_stts) {
+      while (entryIndex < entryCount && data.bytesLeft() >= 8) {
+        timeToSampleCounts[entryIndex] = data.readUnsignedIntToInt();
+        timeToSampleDeltas[entryIndex] = data.readUnsignedIntToInt();
+        entryIndex++;
+      }
+    } else if (boxType == Atom.TYPE_ctts) {
+      while (entryIndex < entryCount && data.bytesLeft() >= 8) {
+        compositionOffsetCounts[entryIndex] = data.readUnsignedIntToInt();
+        // The BMFF spec (ISO 14496-12) states that sample offsets should be unsigned integers in
+        // version 0 ctts boxes, however some streams violate the spec and use signed integers
+        // instead. It's safe to always parse sample offsets as signed integers here, because
+        // unsigned integers will still be parsed correctly (unless their top bit is set, which is
+        // never true in practice because sample offsets are always small).
+        compositionOffsets[entryIndex] = data.readInt();
+        entryIndex++;
+      }
+    } else if (boxType == Atom.TYPE_stss) {
+      while (entryIndex < entryCount && data.bytesLeft() >= 4) {
+        syncSampleIndices[entryIndex++] = data.readUnsignedIntToInt() - 1;
+      }
+    }
+    if (entryIndex == entryCount) {
+      // Skip any data following the entries.
+      data.skipBytes(data.bytesLeft());
+    }
+  }
+
+  /**
+   * Finishes decoding the current box.
+   *
+   * @throws ParserException If the box ended before its header.
+   */
+  public void endBox() throws ParserException {
+    if (!skippingBox && !parsedHeader) {
+      throw new ParserException("Truncated sample table box: " + Atom.getAtomTypeString(boxType));
+    }
+  }
+
+  private boolean isDecoded(int type) {
+    if (type == Atom.TYPE_stsz || type == Atom.TYPE_stz2) {
+      return hasSampleSizes;
+    } else if (type == Atom.TYPE_stco || type == Atom.TYPE_co64) {
+      return chunkOffsets != null;
+    } else if (type == Atom.TYPE_stsc) {
+      return samplesPerChunkFirstChunks != null;
+    } else if (type == Atom.TYPE_stts) {
+      return timeToSampleCounts != null;
+    } else if (type == Atom.TYPE_ctts) {
+      return compositionOffsetCounts != null;
+    } else {
+      return syncSampleIndices != null;
+    }
+  }
+
+  /**
+   * Parses the header of the current box, and allocates arrays for its entries. Entry counts are
+   * limited to the number of entries that fit in the box.
+   *
+   * @param data Data of the box, positioned at the start of its header.
+   * @param entryBytes The number of bytes in the box following its header.
+   */
+  private void parseHeader(ParsableByteArray data, long entryBytes) throws ParserException {
+    data.skipBytes(4); // version, flags
+    if (boxType == Atom.TYPE_stsz) {
+      hasSampleSizes = true;
+      fixedSampleSize = data.readUnsignedIntToInt();
+      sampleCount = data.readUnsignedIntToInt();
+      if (fixedSampleSize == 0) {
+        sampleCount = getEntryCount(sampleCount, entryBytes, 4);
+        sampleSizes = new int[sampleCount];
+        entryCount = sampleCount;
+      }
+    } else if (boxType == Atom.TYPE_stz2) {
+      hasSampleSizes = true;
+      stz2FieldSize = data.readUnsignedIntToInt() & 0x000000FF;
+      if (stz2FieldSize != 4 && stz2FieldSize != 8 && stz2FieldSize != 16) {
+        throw new ParserException("Unsupported stz2 field size: " + stz2FieldSize);
+      }
+      sampleCount = (int) Math.min(data.readUnsignedIntToInt(), entryBytes * 8 / stz2FieldSize);
+      sampleSizes = new int[sampleCount];
+      entryCount = sampleCount;
+    } else if (boxType == Atom.TYPE_stco || boxType == Atom.TYPE_co64) {
+      chunkCount = getEntryCount(data.readUnsignedIntToInt(), entryBytes,
+          boxType == Atom.TYPE_stco ? 4 : 8);
+      chunkOffsets = new long[chunkCount];
+      entryCount = chunkCount;
+    } else if (boxType == Atom.TYPE_stsc) {
+      samplesPerChunkEntryCount = getEntryCount(data.readUnsignedIntToInt(), entryBytes, 12);
+      samplesPerChunkFirstChunks = new int[samplesPerChunkEntryCount];
+      samplesPerChunk = new int[samplesPerChunkEntryCount];
+      entryCount = samplesPerChunkEntryCount;
+    } else if (boxType == Atom.TYPE_stts) {
+      timeToSampleEntryCount = getEntryCount(data.readUnsignedIntToInt(), entryBytes, 8);
+      timeToSampleCounts = new int[timeToSampleEntryCount];
+      timeToSampleDeltas = new int[timeToSampleEntryCount];
+      entryCount = timeToSampleEntryCount;
+    } else if (boxType == Atom.TYPE_ctts) {
+      compositionOffsetEntryCount = getEntryCount(data.readUnsignedIntToInt(), entryBytes, 8);
+      compositionOffsetCounts = new int[compositionOffsetEntryCount];
+      compositionOffsets = new int[compositionOffsetEntryCount];
+      entryCount = compositionOffsetEntryCount;
+    } else {
+      syncSampleCount = getEntryCount(data.readUnsignedIntToInt(), entryBytes, 4);
+      syncSampleIndices = new int[syncSampleCount];
+      entryCount = syncSampleCount;
+    }
+  }
+
+  private void parseStz2Entries(ParsableByteArray data) {
+    if (stz2FieldSize == 8) {
+      while (entryIndex < entryCount && data.bytesLeft() >= 1) {
+        sampleSizes[entryIndex++] = data.readUnsignedByte();
+      }
+    } else if (stz2FieldSize == 16) {
+      while (entryIndex < entryCount && data.bytesLeft() >= 2) {
+        sampleSizes[entryIndex++] = data.readUnsignedShort();
+      }
+    } else {
+      // Each byte holds the sizes of two samples, with the first in the upper four bits.
+      while (entryIndex < entryCount && data.bytesLeft() >= 1) {
+        int sampleSizesByte = data.readUnsignedByte();
+        sampleSizes[entryIndex++] = (sampleSizesByte & 0xF0) >> 4;
+        if (entryIndex < entryCount) {
+          sampleSizes[entryIndex++] = sampleSizesByte & 0x0F;
+        }
+      }
+    }
+  }
+
+  private static int getEntryCount(int declaredEntryCount, long entryBytes, int entrySize) {
+    return (int) Math.min(declaredEntryCount, Math.max(0, entryBytes) / entrySize);
+  }
+
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor.mp4;
+
+/**
+ * Index of the synchronization samples of a track.
+ * <p>
+ * {@link #create(int[], int)} picks the smallest of the available encodings: no index if every
+ * sample is a synchronization sample, the sorted indices of the synchronization samples if they're
+ * sparse, and a bitset with a bit per sample if they're dense. The bitset is only used when there
+ * are more than two synchronization samples per 64 samples on average, so searching it for the
+ * nearest synchronization sample typically examines a single word.
+ */
+/* package */ abstract class SyncSampleIndex {
+
+  /**
+   * Sample index when no sample is available.
+   */
+  public static final int NO_SAMPLE = -1;
+
+  /**
+   * Creates an index.
+   *
+   * @param sortedIndices The sorted indices of the synchronization samples, or null if every sample
+   *     is a synchronization sample. Indices outside of {@code [0, sampleCount)} are ignored.
+   * @param sampleCount The number of samples.
+   * @return The index.
+   */
+  public static SyncSampleIndex create(int[] sortedIndices, int sampleCount) {
+    if (sortedIndices == null) {
+      return new AllSyncSampleIndex();
+    }
+    long bitSetSize = (long) ((sampleCount + 63) / 64) * 8;
+    long sortedIndicesSize = (long) sortedIndices.length * 4;
+    return bitSetSize < sortedIndicesSize ? new BitSetSyncSampleIndex(sortedIndices, sampleCount)
+        : new SortedSyncSampleIndex(sortedIndices);
+  }
+
+  /**
+   * Returns whether a sample is a synchronization sample.
+   *
+   * @param index The index of the sample.
+   * @return Whether the sample is a synchronization sample.
+   */
+  public abstract boolean isSyncSample(int index);
+
+  /**
+   * Returns the index of the last synchronization sample at or before a given sample.
+   *
+   * @param index The index of the sample.
+   * @return The index of the synchronization sample, or {@link #NO_SAMPLE} if there isn't one.
+   */
+  public abstract int getIndexAtOrBefore(int index);
+
+  /**
+   * Returns the index of the first synchronization sample at or after a given sample.
+   *
+   * @param index The index of the sample.
+   * @return The index of the synchronization sample, or {@link #NO_SAMPLE} if there isn't one.
+   */
+  public abstract int getIndexAtOrAfter(int index);
+
+  /**
+   * An index for tracks in which every sample is a synchronization sample.
+   */
+  private static final class AllSyncSampleIndex extends SyncSampleIndex {
+
+    @Override
+    public boolean isSyncSample(int index) {
+      return true;
+    }
+
+    @Override
+    public int getIndexAtOrBefore(int index) {
+      return index;
+    }
+
+    @Override
+    public int getIndexAtOrAfter(int index) {
+      return index;
+    }
+
+  }
+
+  /**
+   * An index that holds the sorted indices of the synchronization samples.
+   */
+  private static final class SortedSyncSampleIndex extends SyncSampleIndex {
+
+    private final int[] indices;
+
+    public SortedSyncSampleIndex(int[] indices) {
+      this.indices = indices;
+    }
+
+    @Override
+    public boolean isSyncSample(int index) {
+      return index != NO_SAMPLE && getIndexAtOrBefore(index) == index;
+    }
+
+    @Override
+    public int getIndexAtOrBefore(int index) {
+      int position = getLastPositionAtOrBefore(index);
+      return position == -1 ? NO_SAMPLE : indices[position];
+    }
+
+    @Override
+    public int getIndexAtOrAfter(int index) {
+      int position = getLastPositionAtOrBefore(index - 1) + 1;
+      return position == indices.length ? NO_SAMPLE : indices[position];
+    }
+
+    /**
+     * Returns the position of the last index that's less than or equal to a key, or -1 if there
+     * isn't one.
+     */
+    private int getLastPositionAtOrBefore(int key) {
+      int low = 0;
+      int high = indices.length - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        if (indices[mid] <= key) {
+          low = mid + 1;
+        } else {
+          high = mid - 1;
+        }
+      }
+      return low - 1;
+    }
+
+  }
+
+  /**
+   * An index that holds a bit for each sample, which is set if it's a synchronization sample.
+   */
+  private static final class BitSetSyncSampleIndex extends SyncSampleIndex {
+
+    private final long[] words;
+
+    public BitSetSyncSampleIndex(int[] sortedIndices, int sampleCount) {
+      words = new long[(sampleCount + 63) / 64];
+      for (int index : sortedIndices) {
+        if (index >= 0 && index < sampleCount) {
+          words[index >>> 6] |= 1L << index;
+        }
+      }
+    }
+
+    @Override
+    public boolean isSyncSample(int index) {
+      int wordIndex = index >>> 6;
+      return index >= 0 && wordIndex < words.length && (words[wordIndex] & (1L << index)) != 0;
+    }
+
+    @Override
+    public int getIndexAtOrBefore(int index) {
+      if (index < 0) {
+        return NO_SAMPLE;
+      }
+      int wordIndex = index >>> 6;
+      long word;
+      if (wordIndex >= words.length) {
+        wordIndex = words.length - 1;
+        word = wordIndex < 0 ? 0 : words[wordIndex];
+      } else {
+        // Mask out the bits of the samples after the index.
+        word = words[wordIndex] & (-1L >>> (63 - (index & 63)));
+      }
+      while (word == 0) {
+        if (--wordIndex < 0) {
+          return NO_SAMPLE;
+        }
+        word = words[wordIndex];
+      }
+      return wordIndex * 64 + 63 - Long.numberOfLeadingZeros(word);
+    }
+
+    @Override
+    public int getIndexAtOrAfter(int index) {
+      index = Math.max(index, 0);
+      int wordIndex = index >>> 6;
+      if (wordIndex >= words.length) {
+        return NO_SAMPLE;
+      }
+      // Mask out the bits of the samples before the index.
+      long word = words[wordIndex] & (-1L << index);
+      while (word == 0) {
+        if (++wordIndex == words.length) {
+          return NO_SAMPLE;
+        }
+        word = words[wordIndex];
+      }
+      return wordIndex * 64 + Long.numberOfTrailingZeros(word);
+    }
+
+  }
+
+}
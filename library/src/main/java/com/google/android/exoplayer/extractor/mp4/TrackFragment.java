@@ -18,6 +18,7 @@ package com.google.android.exoplayer.extractor.mp4;
 import com.google.android.exoplayer.extractor.ExtractorInput;
 import com.google.android.exoplayer.util.ParsableByteArray;
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * A holder for information corresponding to a single fragment of an mp4 file.
@@ -72,9 +73,10 @@ import java.io.IOException;
   public int sampleEncryptionDataLength;
   /**
    * If {@link #definesEncryptionData} is true, contains binary sample encryption data. Undefined
-   * otherwise.
+   * otherwise. The data is either held in a buffer owned by the fragment, or is a view of the data
+   * of the box from which it was parsed.
    */
-  public ParsableByteArray sampleEncryptionData;
+  public final ParsableByteArray sampleEncryptionData;
   /**
    * Whether {@link #sampleEncryptionData} needs populating with the actual encryption data.
    */
@@ -89,6 +91,13 @@ import java.io.IOException;
    */
   public long nextFragmentDecodeTime;
 
+  private byte[] sampleEncryptionDataBuffer;
+  private TrackEncryptionBox previousTrackEncryptionBox;
+
+  public TrackFragment() {
+    sampleEncryptionData = new ParsableByteArray();
+  }
+
   /**
    * Resets the fragment.
    * <p>
@@ -130,15 +139,18 @@ import java.io.IOException;
    * Configures the fragment to be one that defines encryption data of the specified length.
    * <p>
    * {@link #definesEncryptionData} is set to true, {@link #sampleEncryptionDataLength} is set to
-   * the specified length, and {@link #sampleEncryptionData} is resized if necessary such that it
-   * is at least this length.
+   * the specified length, and the buffer owned by the fragment is resized if necessary such that it
+   * is at least this length. {@link #sampleEncryptionData} must then be populated by calling one
+   * of the {@code fillEncryptionData} methods.
    *
    * @param length The length in bytes of the encryption data.
    */
   public void initEncryptionData(int length) {
-    if (sampleEncryptionData == null || sampleEncryptionData.limit() < length) {
-      sampleEncryptionData = new ParsableByteArray(length);
+    if (sampleEncryptionDataBuffer == null || sampleEncryptionDataBuffer.length < length) {
+      // Size the buffer 25% larger than needed, as for the tables.
+      sampleEncryptionDataBuffer = new byte[(length * 125) / 100];
     }
+    sampleEncryptionData.reset(sampleEncryptionDataBuffer, length);
     sampleEncryptionDataLength = length;
     definesEncryptionData = true;
     sampleEncryptionDataNeedsFill = true;
@@ -156,16 +168,60 @@ import java.io.IOException;
   }
 
   /**
-   * Fills {@link #sampleEncryptionData} from the provided source.
+   * Configures the fragment to be one that defines encryption data, and sets
+   * {@link #sampleEncryptionData} to be a view of the provided data. The data must not be modified
+   * until the fragment's samples have been read, or until {@link #detachEncryptionData(byte[])} is
+   * called.
    *
-   * @param source A source from which to read the encryption data.
+   * @param data An array holding the encryption data.
+   * @param offset The offset of the encryption data in the array.
+   * @param length The length in bytes of the encryption data.
    */
-  public void fillEncryptionData(ParsableByteArray source) {
-    source.readBytes(sampleEncryptionData.data, 0, sampleEncryptionDataLength);
-    sampleEncryptionData.setPosition(0);
+  public void wrapEncryptionData(byte[] data, int offset, int length) {
+    sampleEncryptionData.reset(data, offset + length);
+    sampleEncryptionData.setPosition(offset);
+    sampleEncryptionDataLength = length;
+    definesEncryptionData = true;
     sampleEncryptionDataNeedsFill = false;
   }
 
+  /**
+   * If {@link #sampleEncryptionData} is a view of the provided data, copies the remaining
+   * encryption data into the buffer owned by the fragment.
+   *
+   * @param data The data that's about to be modified.
+   */
+  public void detachEncryptionData(byte[] data) {
+    if (!definesEncryptionData || sampleEncryptionData.data != data) {
+      return;
+    }
+    int position = sampleEncryptionData.getPosition();
+    int bytesLeft = sampleEncryptionData.bytesLeft();
+    initEncryptionData(bytesLeft);
+    System.arraycopy(data, position, sampleEncryptionDataBuffer, 0, bytesLeft);
+    sampleEncryptionDataNeedsFill = false;
+  }
+
+  /**
+   * Sets {@link #trackEncryptionBox}, reusing the box set for a previous fragment if it has the
+   * same values.
+   *
+   * @param isEncrypted Indicates the encryption state of the samples in the fragment.
+   * @param initializationVectorSize The initialization vector size in bytes.
+   * @param keyId A buffer holding the key identifier, which is copied if a new box is created.
+   */
+  public void setTrackEncryptionBox(boolean isEncrypted, int initializationVectorSize,
+      byte[] keyId) {
+    TrackEncryptionBox box = previousTrackEncryptionBox;
+    if (box == null || box.isEncrypted != isEncrypted
+        || box.initializationVectorSize != initializationVectorSize
+        || !Arrays.equals(box.keyId, keyId)) {
+      box = new TrackEncryptionBox(isEncrypted, initializationVectorSize, keyId.clone());
+      previousTrackEncryptionBox = box;
+    }
+    trackEncryptionBox = box;
+  }
+
   public long getSamplePresentationTime(int index) {
     return sampleDecodingTimeTable[index] + sampleCompositionTimeOffsetTable[index];
   }
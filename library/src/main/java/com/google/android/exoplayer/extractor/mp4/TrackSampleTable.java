@@ -16,11 +16,23 @@
 package com.google.android.exoplayer.extractor.mp4;
 
 import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.ParserException;
 import com.google.android.exoplayer.util.Assertions;
 import com.google.android.exoplayer.util.Util;
+import java.util.Arrays;
 
 /**
  * Sample table for a track in an MP4 file.
+ * <p>
+ * The metadata of each sample isn't stored individually, but is computed when it's requested from a
+ * representation that's similar in size to the boxes of the sample table: sample offsets are
+ * computed from the offset of each chunk and the offset of the sample relative to the start of the
+ * chunk, sizes from the relative offsets of consecutive samples, timestamps from runs of samples
+ * with equal durations and either runs of samples with equal composition offsets or, if the runs
+ * are short, the composition offset of each sample, and flags from a {@link SyncSampleIndex}. For a
+ * track with a fixed sample size, no per sample data is held at all. The samples of the media are
+ * mapped to the samples of the table by a list of edits, each of which selects a range of the
+ * media's samples and places it on the presentation timeline.
  */
 /* package */ final class TrackSampleTable {
 
@@ -34,37 +46,214 @@ import com.google.android.exoplayer.util.Util;
    */
   public final int sampleCount;
   /**
-   * Sample offsets in bytes.
+   * Maximum sample size.
    */
-  public final long[] offsets;
+  public final int maximumSize;
+
+  // The media's samples, before edits are applied.
+  private final int mediaSampleCount;
+  private final int fixedSampleSize;
+  private final int[] sampleOffsetsInChunk;
+  private final int[] chunkSizes;
+  private final long[] chunkOffsets;
+  private final int[] chunkFirstSampleIndices;
+  private final int[] durationRunFirstSampleIndices;
+  private final long[] durationRunFirstTimestamps;
+  private final long[] durationRunDurations;
+  private final int[] compositionOffsetRunFirstSampleIndices;
+  private final int[] compositionOffsets;
+  private final SyncSampleIndex syncSampleIndex;
+  private final long timescale;
+
+  // The edits, each mapping a range of the table's samples to a range of the media's samples.
+  private final int[] editFirstSampleIndices;
+  private final int[] editFirstMediaSampleIndices;
+  private final long[] editStartTimesUs;
+  private final long[] editMediaTimes;
+
   /**
-   * Sample sizes in bytes.
+   * @param sampleCount The number of samples.
+   * @param fixedSampleSize The size of every sample, if {@code sizes} is null.
+   * @param sizes The size of each sample, or null if all samples have size {@code fixedSampleSize}.
+   *     The array is overwritten with the offset of each sample relative to the start of its
+   *     chunk, so must not be used by the caller after the table is created.
+   * @param maximumSize The maximum sample size.
+   * @param chunkOffsets The offset of each chunk.
+   * @param chunkFirstSampleIndices The index of the first sample in each chunk.
+   * @param durationRunFirstSampleIndices The index of the first sample of each run of samples with
+   *     equal durations. The first run must start at sample 0.
+   * @param durationRunFirstTimestamps The decoding timestamp of the first sample of each run, in
+   *     units of {@code timescale}.
+   * @param durationRunDurations The duration of the samples in each run, in units of
+   *     {@code timescale}.
+   * @param compositionOffsetRunFirstSampleIndices The index of the first sample of each run of
+   *     samples with equal composition offsets, or null if there are no composition offsets. The
+   *     first run must start at sample 0.
+   * @param compositionOffsets The composition offset of the samples in each run, in units of
+   *     {@code timescale}.
+   * @param syncSampleIndices The sorted indices of synchronization samples, or null if all samples
+   *     are synchronization samples.
+   * @param timescale The number of timestamp units per second.
+   * @throws ParserException If the total size of the samples in a chunk exceeds 2^31 - 1 bytes.
    */
-  public final int[] sizes;
+  TrackSampleTable(int sampleCount, int fixedSampleSize, int[] sizes, int maximumSize,
+      long[] chunkOffsets, int[] chunkFirstSampleIndices, int[] durationRunFirstSampleIndices,
+      long[] durationRunFirstTimestamps, long[] durationRunDurations,
+      int[] compositionOffsetRunFirstSampleIndices, int[] compositionOffsets,
+      int[] syncSampleIndices, long timescale) throws ParserException {
+    Assertions.checkArgument(sizes == null || sizes.length >= sampleCount);
+    Assertions.checkArgument(chunkOffsets.length == chunkFirstSampleIndices.length);
+    Assertions.checkArgument(durationRunFirstSampleIndices.length > 0
+        && durationRunFirstSampleIndices[0] == 0);
+    Assertions.checkArgument(compositionOffsetRunFirstSampleIndices == null
+        || compositionOffsetRunFirstSampleIndices[0] == 0);
+
+    this.sampleCount = sampleCount;
+    this.mediaSampleCount = sampleCount;
+    this.fixedSampleSize = fixedSampleSize;
+    this.maximumSize = maximumSize;
+    this.chunkOffsets = chunkOffsets;
+    this.chunkFirstSampleIndices = chunkFirstSampleIndices;
+    if (sizes == null) {
+      sampleOffsetsInChunk = null;
+      chunkSizes = null;
+    } else {
+      sampleOffsetsInChunk = sizes;
+      chunkSizes = new int[chunkOffsets.length];
+      convertSizesToOffsetsInChunks(sampleCount, sizes, chunkFirstSampleIndices, chunkSizes);
+    }
+    this.durationRunFirstSampleIndices = durationRunFirstSampleIndices;
+    this.durationRunFirstTimestamps = durationRunFirstTimestamps;
+    this.durationRunDurations = durationRunDurations;
+    if (compositionOffsets != null && compositionOffsets.length > sampleCount / 2) {
+      // The runs are short, as for a track with B-frames, so it's smaller to hold the composition
+      // offset of each sample.
+      this.compositionOffsetRunFirstSampleIndices = null;
+      this.compositionOffsets = expandRuns(sampleCount, compositionOffsetRunFirstSampleIndices,
+          compositionOffsets);
+    } else {
+      this.compositionOffsetRunFirstSampleIndices = compositionOffsetRunFirstSampleIndices;
+      this.compositionOffsets = compositionOffsets;
+    }
+    syncSampleIndex = SyncSampleIndex.create(syncSampleIndices, sampleCount);
+    this.timescale = timescale;
+    editFirstSampleIndices = new int[] {0};
+    editFirstMediaSampleIndices = new int[] {0};
+    editStartTimesUs = new long[] {0};
+    editMediaTimes = new long[] {0};
+  }
+
+  private TrackSampleTable(TrackSampleTable mediaTable, int sampleCount,
+      int[] editFirstSampleIndices, int[] editFirstMediaSampleIndices, long[] editStartTimesUs,
+      long[] editMediaTimes) {
+    this.sampleCount = sampleCount;
+    maximumSize = mediaTable.maximumSize;
+    mediaSampleCount = mediaTable.mediaSampleCount;
+    fixedSampleSize = mediaTable.fixedSampleSize;
+    sampleOffsetsInChunk = mediaTable.sampleOffsetsInChunk;
+    chunkSizes = mediaTable.chunkSizes;
+    chunkOffsets = mediaTable.chunkOffsets;
+    chunkFirstSampleIndices = mediaTable.chunkFirstSampleIndices;
+    durationRunFirstSampleIndices = mediaTable.durationRunFirstSampleIndices;
+    durationRunFirstTimestamps = mediaTable.durationRunFirstTimestamps;
+    durationRunDurations = mediaTable.durationRunDurations;
+    compositionOffsetRunFirstSampleIndices = mediaTable.compositionOffsetRunFirstSampleIndices;
+    compositionOffsets = mediaTable.compositionOffsets;
+    syncSampleIndex = mediaTable.syncSampleIndex;
+    timescale = mediaTable.timescale;
+    this.editFirstSampleIndices = editFirstSampleIndices;
+    this.editFirstMediaSampleIndices = editFirstMediaSampleIndices;
+    this.editStartTimesUs = editStartTimesUs;
+    this.editMediaTimes = editMediaTimes;
+  }
+
   /**
-   * Maximum sample size in {@link #sizes}.
+   * Returns a copy of this table with edits applied. Must only be called on a table to which edits
+   * have not been applied.
+   *
+   * @param mediaStartIndices The index of the first sample of the media in each edit.
+   * @param mediaEndIndices The index after the last sample of the media in each edit.
+   * @param startTimesUs The presentation time at which each edit starts, in microseconds.
+   * @param mediaTimes The timestamp of the media at which each edit starts, in units of the
+   *     timescale.
+   * @return The edited table.
    */
-  public final int maximumSize;
+  public TrackSampleTable copyWithEdits(int[] mediaStartIndices, int[] mediaEndIndices,
+      long[] startTimesUs, long[] mediaTimes) {
+    Assertions.checkState(mediaSampleCount == sampleCount && editMediaTimes[0] == 0);
+    // Drop edits that don't contain any samples, so that each sample is in the last edit whose
+    // first sample index is less than or equal to its index.
+    int editCount = 0;
+    for (int i = 0; i < mediaStartIndices.length; i++) {
+      if (mediaEndIndices[i] > mediaStartIndices[i]) {
+        editCount++;
+      }
+    }
+    int[] firstSampleIndices = new int[editCount];
+    int[] firstMediaSampleIndices = new int[editCount];
+    long[] editedStartTimesUs = new long[editCount];
+    long[] editedMediaTimes = new long[editCount];
+    int editedSampleCount = 0;
+    int editIndex = 0;
+    for (int i = 0; i < mediaStartIndices.length; i++) {
+      if (mediaEndIndices[i] > mediaStartIndices[i]) {
+        firstSampleIndices[editIndex] = editedSampleCount;
+        firstMediaSampleIndices[editIndex] = mediaStartIndices[i];
+        editedStartTimesUs[editIndex] = startTimesUs[i];
+        editedMediaTimes[editIndex] = mediaTimes[i];
+        editedSampleCount += mediaEndIndices[i] - mediaStartIndices[i];
+        editIndex++;
+      }
+    }
+    return new TrackSampleTable(this, editedSampleCount, firstSampleIndices,
+        firstMediaSampleIndices, editedStartTimesUs, editedMediaTimes);
+  }
+
   /**
-   * Sample timestamps in microseconds.
+   * Returns the offset of a sample in bytes.
    */
-  public final long[] timestampsUs;
+  public long getOffset(int index) {
+    int mediaIndex = getMediaSampleIndex(index);
+    int chunkIndex = getChunkIndex(mediaIndex);
+    if (sampleOffsetsInChunk == null) {
+      return chunkOffsets[chunkIndex]
+          + (long) fixedSampleSize * (mediaIndex - chunkFirstSampleIndices[chunkIndex]);
+    }
+    return chunkOffsets[chunkIndex] + sampleOffsetsInChunk[mediaIndex];
+  }
+
   /**
-   * Sample flags.
+   * Returns the size of a sample in bytes.
    */
-  public final int[] flags;
+  public int getSize(int index) {
+    if (sampleOffsetsInChunk == null) {
+      return fixedSampleSize;
+    }
+    int mediaIndex = getMediaSampleIndex(index);
+    int chunkIndex = getChunkIndex(mediaIndex);
+    int nextOffsetInChunk = chunkIndex + 1 < chunkFirstSampleIndices.length
+        && mediaIndex + 1 >= chunkFirstSampleIndices[chunkIndex + 1] ? chunkSizes[chunkIndex]
+        : mediaIndex + 1 < mediaSampleCount ? sampleOffsetsInChunk[mediaIndex + 1]
+        : chunkSizes[chunkIndex];
+    return nextOffsetInChunk - sampleOffsetsInChunk[mediaIndex];
+  }
 
-  TrackSampleTable(long[] offsets, int[] sizes, int maximumSize, long[] timestampsUs, int[] flags) {
-    Assertions.checkArgument(sizes.length == timestampsUs.length);
-    Assertions.checkArgument(offsets.length == timestampsUs.length);
-    Assertions.checkArgument(flags.length == timestampsUs.length);
+  /**
+   * Returns the timestamp of a sample in microseconds.
+   */
+  public long getTimestampUs(int index) {
+    int editIndex = getEditIndex(index);
+    int mediaIndex = editFirstMediaSampleIndices[editIndex] + index
+        - editFirstSampleIndices[editIndex];
+    return editStartTimesUs[editIndex] + Util.scaleLargeTimestamp(
+        getMediaTimestamp(mediaIndex) - editMediaTimes[editIndex], C.MICROS_PER_SECOND, timescale);
+  }
 
-    this.offsets = offsets;
-    this.sizes = sizes;
-    this.maximumSize = maximumSize;
-    this.timestampsUs = timestampsUs;
-    this.flags = flags;
-    sampleCount = offsets.length;
+  /**
+   * Returns the flags of a sample.
+   */
+  public int getFlags(int index) {
+    return syncSampleIndex.isSyncSample(getMediaSampleIndex(index)) ? C.SAMPLE_FLAG_SYNC : 0;
   }
 
   /**
@@ -77,10 +266,19 @@ import com.google.android.exoplayer.util.Util;
   public int getIndexOfEarlierOrEqualSynchronizationSample(long timeUs) {
     // Video frame timestamps may not be sorted, so the behavior of this call can be undefined.
     // Frames are not reordered past synchronization samples so this works in practice.
-    int startIndex = Util.binarySearchFloor(timestampsUs, timeUs, true, false);
-    for (int i = startIndex; i >= 0; i--) {
-      if ((flags[i] & C.SAMPLE_FLAG_SYNC) != 0) {
-        return i;
+    int index = binarySearchTimestampsUs(timeUs);
+    index = index < 0 ? -(index + 2) : index;
+    for (int editIndex = index < 0 ? -1 : getEditIndex(index); editIndex >= 0; editIndex--) {
+      int firstSampleIndex = editFirstSampleIndices[editIndex];
+      int firstMediaSampleIndex = editFirstMediaSampleIndices[editIndex];
+      if (editIndex + 1 < editFirstSampleIndices.length
+          && index >= editFirstSampleIndices[editIndex + 1]) {
+        index = editFirstSampleIndices[editIndex + 1] - 1;
+      }
+      int mediaIndex = firstMediaSampleIndex + index - firstSampleIndex;
+      int syncMediaIndex = syncSampleIndex.getIndexAtOrBefore(mediaIndex);
+      if (syncMediaIndex >= firstMediaSampleIndex) {
+        return firstSampleIndex + syncMediaIndex - firstMediaSampleIndex;
       }
     }
     return NO_SAMPLE;
@@ -94,13 +292,180 @@ import com.google.android.exoplayer.util.Util;
    * @return index Index of the synchronization sample, or {@link #NO_SAMPLE} if none.
    */
   public int getIndexOfLaterOrEqualSynchronizationSample(long timeUs) {
-    int startIndex = Util.binarySearchCeil(timestampsUs, timeUs, true, false);
-    for (int i = startIndex; i < timestampsUs.length; i++) {
-      if ((flags[i] & C.SAMPLE_FLAG_SYNC) != 0) {
-        return i;
+    int index = binarySearchTimestampsUs(timeUs);
+    index = index < 0 ? ~index : index;
+    for (int editIndex = index < sampleCount ? getEditIndex(index) : editFirstSampleIndices.length;
+        editIndex < editFirstSampleIndices.length; editIndex++) {
+      int firstSampleIndex = editFirstSampleIndices[editIndex];
+      int firstMediaSampleIndex = editFirstMediaSampleIndices[editIndex];
+      int endSampleIndex = editIndex + 1 < editFirstSampleIndices.length
+          ? editFirstSampleIndices[editIndex + 1] : sampleCount;
+      index = Math.max(index, firstSampleIndex);
+      int mediaIndex = firstMediaSampleIndex + index - firstSampleIndex;
+      int syncMediaIndex = syncSampleIndex.getIndexAtOrAfter(mediaIndex);
+      if (syncMediaIndex != NO_SAMPLE
+          && syncMediaIndex < firstMediaSampleIndex + endSampleIndex - firstSampleIndex) {
+        return firstSampleIndex + syncMediaIndex - firstMediaSampleIndex;
       }
     }
     return NO_SAMPLE;
   }
 
+  /**
+   * Returns the timestamp of a sample of the media in units of the timescale, before edits are
+   * applied.
+   *
+   * @param mediaIndex The index of the sample in the media.
+   * @return The timestamp of the sample.
+   */
+  /* package */ long getMediaTimestamp(int mediaIndex) {
+    int runIndex = getLastIndexAtOrBefore(durationRunFirstSampleIndices, mediaIndex);
+    long timestamp = durationRunFirstTimestamps[runIndex] + durationRunDurations[runIndex]
+        * (mediaIndex - durationRunFirstSampleIndices[runIndex]);
+    if (compositionOffsetRunFirstSampleIndices != null) {
+      timestamp += compositionOffsets[
+          getLastIndexAtOrBefore(compositionOffsetRunFirstSampleIndices, mediaIndex)];
+    } else if (compositionOffsets != null) {
+      timestamp += compositionOffsets[mediaIndex];
+    }
+    return timestamp;
+  }
+
+  /**
+   * Returns whether any sample of the media in a range is a synchronization sample.
+   *
+   * @param startMediaIndex The index of the first sample of the media in the range.
+   * @param endMediaIndex The index after the last sample of the media in the range.
+   * @return Whether the range contains a synchronization sample.
+   */
+  /* package */ boolean containsSyncSample(int startMediaIndex, int endMediaIndex) {
+    if (startMediaIndex >= endMediaIndex) {
+      return false;
+    }
+    int syncMediaIndex = syncSampleIndex.getIndexAtOrAfter(startMediaIndex);
+    return syncMediaIndex != NO_SAMPLE && syncMediaIndex < endMediaIndex;
+  }
+
+  /**
+   * Returns the index of a sample of the media whose timestamp before edits are applied is equal
+   * to, or is the smallest that's greater than, a specified timestamp, with the same semantics as
+   * {@link Util#binarySearchCeil(long[], long, boolean, boolean)} applied to the timestamps.
+   */
+  /* package */ int binarySearchCeilMediaTimestamp(long timestamp, boolean inclusive,
+      boolean stayInBounds) {
+    // Search in the same way as Arrays.binarySearch, so that the result is the same as for a search
+    // of an array of the timestamps, even if they're unsorted.
+    int low = 0;
+    int high = mediaSampleCount - 1;
+    int index = -1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long midTimestamp = getMediaTimestamp(mid);
+      if (midTimestamp < timestamp) {
+        low = mid + 1;
+      } else if (midTimestamp > timestamp) {
+        high = mid - 1;
+      } else {
+        index = mid;
+        break;
+      }
+    }
+    index = index == -1 ? low : (inclusive ? index : (index + 1));
+    return stayInBounds ? Math.min(mediaSampleCount - 1, index) : index;
+  }
+
+  private int getEditIndex(int index) {
+    return editFirstSampleIndices.length == 1 ? 0
+        : getLastIndexAtOrBefore(editFirstSampleIndices, index);
+  }
+
+  private int getMediaSampleIndex(int index) {
+    int editIndex = getEditIndex(index);
+    return editFirstMediaSampleIndices[editIndex] + index - editFirstSampleIndices[editIndex];
+  }
+
+  private int getChunkIndex(int mediaIndex) {
+    return Math.max(0, getLastIndexAtOrBefore(chunkFirstSampleIndices, mediaIndex));
+  }
+
+  /**
+   * Searches the timestamps of the samples in the same way as {@link java.util.Arrays#binarySearch(
+   * long[], long)}, so that the result is the same as for a search of an array of the timestamps,
+   * even if they're unsorted.
+   */
+  private int binarySearchTimestampsUs(long timeUs) {
+    int low = 0;
+    int high = sampleCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long midTimeUs = getTimestampUs(mid);
+      if (midTimeUs < timeUs) {
+        low = mid + 1;
+      } else if (midTimeUs > timeUs) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  /**
+   * Replaces the size of each sample with its offset relative to the start of its chunk, and sets
+   * the size of each chunk to the total size of its samples.
+   */
+  private static void convertSizesToOffsetsInChunks(int sampleCount, int[] sizes,
+      int[] chunkFirstSampleIndices, int[] chunkSizes) throws ParserException {
+    int chunkCount = chunkFirstSampleIndices.length;
+    int chunkIndex = 0;
+    int offsetInChunk = 0;
+    for (int i = 0; i < sampleCount; i++) {
+      while (chunkIndex + 1 < chunkCount && chunkFirstSampleIndices[chunkIndex + 1] <= i) {
+        chunkSizes[chunkIndex++] = offsetInChunk;
+        offsetInChunk = 0;
+      }
+      int size = sizes[i];
+      sizes[i] = offsetInChunk;
+      offsetInChunk += size;
+      if (offsetInChunk < 0) {
+        throw new ParserException("Unsupported chunk size");
+      }
+    }
+    if (chunkCount > 0) {
+      chunkSizes[chunkIndex] = offsetInChunk;
+    }
+  }
+
+  /**
+   * Returns an array holding the value of each sample, given the values of runs of samples.
+   */
+  private static int[] expandRuns(int sampleCount, int[] runFirstSampleIndices, int[] runValues) {
+    int[] values = new int[sampleCount];
+    for (int runIndex = 0; runIndex < runFirstSampleIndices.length; runIndex++) {
+      int runEndIndex = runIndex + 1 < runFirstSampleIndices.length
+          ? runFirstSampleIndices[runIndex + 1] : sampleCount;
+      Arrays.fill(values, runFirstSampleIndices[runIndex], runEndIndex, runValues[runIndex]);
+    }
+    return values;
+  }
+
+  /**
+   * Returns the index of the last value in a sorted array that's less than or equal to a key, or
+   * -1 if there isn't one. If the array contains the key more than once, the last occurrence is
+   * returned.
+   */
+  private static int getLastIndexAtOrBefore(int[] array, int key) {
+    int low = 0;
+    int high = array.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (array[mid] <= key) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low - 1;
+  }
+
 }
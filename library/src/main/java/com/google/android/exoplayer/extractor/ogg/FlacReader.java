@@ -38,6 +38,8 @@ import java.util.List;
 
   private static final byte AUDIO_PACKET_TYPE = (byte) 0xFF;
   private static final byte SEEKTABLE_PACKET_TYPE = 0x03;
+  // Enough to hold the frame header up to the end of the frame or sample number.
+  private static final int MAX_FRAME_HEADER_SIZE = 16;
 
   private FlacStreamInfo streamInfo;
 
@@ -45,16 +47,74 @@ import java.util.List;
 
   private boolean firstAudioPacketProcessed;
 
+  private boolean streamingPacket;
+  private int runBytesRemaining;
+  private int sampleSize;
+  private long sampleTimeUs;
+
   /* package */ static boolean verifyBitstreamType(ParsableByteArray data) {
     return data.readUnsignedByte() == 0x7F && // packet type
         data.readUnsignedInt() == 0x464C4143; // ASCII signature "FLAC"
   }
 
+  @Override
+  public void seek() {
+    super.seek();
+    streamingPacket = false;
+    runBytesRemaining = 0;
+  }
+
   @Override
   public int read(ExtractorInput input, PositionHolder seekPosition)
       throws IOException, InterruptedException {
-    long position = input.getPosition();
+    // Audio packets are passed to the track output one run at a time, without being copied. Other
+    // packets, and audio packets whose frame header spans pages, are read whole.
+    if (runBytesRemaining == 0) {
+      long position = input.getPosition();
+      int runSize = oggParser.peekPacketRun(input);
+      if (runSize == C.RESULT_END_OF_INPUT) {
+        return Extractor.RESULT_END_OF_INPUT;
+      }
+      if (!oggParser.isPacketInProgress()) {
+        streamingPacket = streamInfo != null && runSize >= MAX_FRAME_HEADER_SIZE
+            && startAudioPacket(input, position);
+      }
+      if (!streamingPacket) {
+        return readPacket(input, position);
+      }
+      runBytesRemaining = runSize;
+    }
+    while (runBytesRemaining > 0) {
+      int bytesAppended = trackOutput.sampleData(input, runBytesRemaining, false);
+      runBytesRemaining -= bytesAppended;
+      sampleSize += bytesAppended;
+    }
+    boolean packetComplete = oggParser.isPacketRunLast();
+    oggParser.advancePacketRun();
+    if (packetComplete) {
+      trackOutput.sampleMetadata(sampleTimeUs, C.SAMPLE_FLAG_SYNC, sampleSize, 0, null);
+      streamingPacket = false;
+    }
+    return Extractor.RESULT_CONTINUE;
+  }
+
+  private boolean startAudioPacket(ExtractorInput input, long position)
+      throws IOException, InterruptedException {
+    input.peekFully(scratch.data, 0, MAX_FRAME_HEADER_SIZE);
+    input.resetPeekPosition();
+    if (scratch.data[0] != AUDIO_PACKET_TYPE) {
+      return false;
+    }
+    maybeOutputSeekMap(position);
+    scratch.reset(MAX_FRAME_HEADER_SIZE);
+    sampleTimeUs = FlacUtil.extractSampleTimestamp(streamInfo, scratch);
+    scratch.reset();
+    sampleSize = 0;
+    return true;
+  }
 
+  private int readPacket(ExtractorInput input, long position)
+      throws IOException, InterruptedException {
     if (!oggParser.readPacket(input, scratch)) {
       return Extractor.RESULT_END_OF_INPUT;
     }
@@ -73,16 +133,7 @@ import java.util.List;
       trackOutput.format(mediaFormat);
 
     } else if (data[0] == AUDIO_PACKET_TYPE) {
-      if (!firstAudioPacketProcessed) {
-        if (seekTable != null) {
-          extractorOutput.seekMap(seekTable.createSeekMap(position, streamInfo.sampleRate));
-          seekTable = null;
-        } else {
-          extractorOutput.seekMap(SeekMap.UNSEEKABLE);
-        }
-        firstAudioPacketProcessed = true;
-      }
-
+      maybeOutputSeekMap(position);
       trackOutput.sampleData(scratch, scratch.limit());
       scratch.setPosition(0);
       long timeUs = FlacUtil.extractSampleTimestamp(streamInfo, scratch);
@@ -96,4 +147,16 @@ import java.util.List;
     return Extractor.RESULT_CONTINUE;
   }
 
+  private void maybeOutputSeekMap(long position) {
+    if (!firstAudioPacketProcessed) {
+      if (seekTable != null) {
+        extractorOutput.seekMap(seekTable.createSeekMap(position, streamInfo.sampleRate));
+        seekTable = null;
+      } else {
+        extractorOutput.seekMap(SeekMap.UNSEEKABLE);
+      }
+      firstAudioPacketProcessed = true;
+    }
+  }
+
 }
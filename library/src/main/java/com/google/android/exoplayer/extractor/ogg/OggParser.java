@@ -22,9 +22,16 @@ import com.google.android.exoplayer.extractor.ogg.OggUtil.PacketInfoHolder;
 import com.google.android.exoplayer.util.Assertions;
 import com.google.android.exoplayer.util.ParsableByteArray;
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * Reads OGG packets from an {@link ExtractorInput}.
+ * <p>
+ * Packets can either be read whole into a {@link ParsableByteArray} using
+ * {@link #readPacket(ExtractorInput, ParsableByteArray)}, or be consumed directly from the input
+ * one run at a time, where a run is the part of a packet within a single page. To consume a packet
+ * run by run, call {@link #peekPacketRun(ExtractorInput)} to get the size of the next run, consume
+ * that many bytes from the input and then call {@link #advancePacketRun()}.
  */
 /* package */ final class OggParser {
 
@@ -33,8 +40,10 @@ import java.io.IOException;
   private final OggUtil.PageHeader pageHeader = new OggUtil.PageHeader();
   private final ParsableByteArray headerArray = new ParsableByteArray(27 + 255);
   private final PacketInfoHolder holder = new PacketInfoHolder();
+  private final byte[] skipBuffer = new byte[2048];
 
   private int currentSegmentIndex = -1;
+  private boolean packetInProgress;
   private long elapsedSamples;
 
   /**
@@ -44,13 +53,15 @@ import java.io.IOException;
     pageHeader.reset();
     headerArray.reset();
     currentSegmentIndex = -1;
+    packetInProgress = false;
   }
 
   /**
    * Reads the next packet of the ogg stream. In case of an {@code IOException} the caller must make
    * sure to pass the same instance of {@code ParsableByteArray} to this method again so this reader
    * can resume properly from an error while reading a continued packet spanned across multiple
-   * pages.
+   * pages. If {@code packetArray} is too small to hold the packet, its data is replaced by a larger
+   * array.
    *
    * @param input the {@link ExtractorInput} to read data from.
    * @param packetArray the {@link ParsableByteArray} to write the packet data into.
@@ -65,38 +76,98 @@ import java.io.IOException;
 
     boolean packetComplete = false;
     while (!packetComplete) {
-      if (currentSegmentIndex < 0) {
-        // We're at the start of a page.
-        if (!OggUtil.populatePageHeader(input, pageHeader, headerArray, true)) {
-          return false;
-        }
-        int segmentIndex = 0;
-        int bytesToSkip = pageHeader.headerSize;
-        if ((pageHeader.type & 0x01) == 0x01 && packetArray.limit() == 0) {
-          // After seeking, the first packet may be the remainder
-          // part of a continued packet which has to be discarded.
-          OggUtil.calculatePacketSize(pageHeader, segmentIndex, holder);
-          segmentIndex += holder.segmentCount;
-          bytesToSkip += holder.size;
-        }
-        input.skipFully(bytesToSkip);
-        currentSegmentIndex = segmentIndex;
+      int size = peekPacketRun(input);
+      if (size == C.RESULT_END_OF_INPUT) {
+        return false;
       }
-
-      OggUtil.calculatePacketSize(pageHeader, currentSegmentIndex, holder);
-      int segmentIndex = currentSegmentIndex + holder.segmentCount;
-      if (holder.size > 0) {
-        input.readFully(packetArray.data, packetArray.limit(), holder.size);
-        packetArray.setLimit(packetArray.limit() + holder.size);
-        packetComplete = pageHeader.laces[segmentIndex - 1] != 255;
+      // Empty packets are skipped, but an empty run may terminate a packet spanning pages.
+      if (size > 0 || packetInProgress) {
+        int limit = packetArray.limit();
+        if (packetArray.capacity() < limit + size) {
+          packetArray.reset(Arrays.copyOf(packetArray.data, Math.max(packetArray.capacity() * 2,
+              limit + size)), limit);
+        }
+        input.readFully(packetArray.data, limit, size);
+        packetArray.setLimit(limit + size);
+        packetComplete = isPacketRunLast();
       }
       // advance now since we are sure reading didn't throw an exception
-      currentSegmentIndex = segmentIndex == pageHeader.pageSegmentCount ? -1
-          : segmentIndex;
+      advancePacketRun();
     }
     return true;
   }
 
+  /**
+   * Returns the size of the next run of packet data, reading the header of the next page if the
+   * current page has been consumed. Calling this method again before {@link #advancePacketRun()}
+   * returns the same run.
+   * <p>
+   * After seeking, data continued from a packet that started on an earlier page is skipped.
+   *
+   * @param input the {@link ExtractorInput} to read from.
+   * @return the size of the run in bytes, which may be zero, or {@link C#RESULT_END_OF_INPUT} if
+   *     the end of the input was encountered.
+   * @throws IOException thrown if reading from the input fails.
+   * @throws InterruptedException thrown if interrupted while reading from the input.
+   */
+  public int peekPacketRun(ExtractorInput input) throws IOException, InterruptedException {
+    while (currentSegmentIndex < 0) {
+      // We're at the start of a page.
+      if (!OggUtil.populatePageHeader(input, pageHeader, headerArray, true)) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      int segmentIndex = 0;
+      int bytesToSkip = pageHeader.headerSize;
+      if ((pageHeader.type & 0x01) == 0x01 && !packetInProgress) {
+        // After seeking, the first packet may be the remainder
+        // part of a continued packet which has to be discarded.
+        OggUtil.calculatePacketSize(pageHeader, segmentIndex, holder);
+        segmentIndex += holder.segmentCount;
+        bytesToSkip += holder.size;
+      }
+      input.skipFully(bytesToSkip);
+      currentSegmentIndex = segmentIndex == pageHeader.pageSegmentCount ? -1 : segmentIndex;
+    }
+    OggUtil.calculatePacketSize(pageHeader, currentSegmentIndex, holder);
+    return holder.size;
+  }
+
+  /**
+   * Returns whether the run returned by {@link #peekPacketRun(ExtractorInput)} ends its packet.
+   */
+  public boolean isPacketRunLast() {
+    return pageHeader.laces[currentSegmentIndex + holder.segmentCount - 1] != 255;
+  }
+
+  /**
+   * Returns whether the run returned by {@link #peekPacketRun(ExtractorInput)} continues a packet,
+   * rather than starting one.
+   */
+  public boolean isPacketInProgress() {
+    return packetInProgress;
+  }
+
+  /**
+   * Advances past the run returned by {@link #peekPacketRun(ExtractorInput)}. Must only be called
+   * once all of the run's data has been consumed from the input.
+   */
+  public void advancePacketRun() {
+    packetInProgress = !isPacketRunLast();
+    int segmentIndex = currentSegmentIndex + holder.segmentCount;
+    currentSegmentIndex = segmentIndex == pageHeader.pageSegmentCount ? -1 : segmentIndex;
+  }
+
+  /**
+   * Skips to the next page, using a buffer owned by this parser.
+   *
+   * @param input The {@code ExtractorInput} to skip to the next page.
+   * @throws IOException thrown if peeking/reading from the input fails.
+   * @throws InterruptedException thrown if interrupted while peeking/reading from the input.
+   */
+  public void skipToNextPage(ExtractorInput input) throws IOException, InterruptedException {
+    OggUtil.skipToNextPage(input, skipBuffer);
+  }
+
   /**
    * Skips to the last Ogg page in the stream and reads the header's granule field which is the
    * total number of samples per channel.
@@ -109,7 +180,7 @@ import java.io.IOException;
   public long readGranuleOfLastPage(ExtractorInput input)
       throws IOException, InterruptedException {
     Assertions.checkArgument(input.getLength() != C.LENGTH_UNBOUNDED); // never read forever!
-    OggUtil.skipToNextPage(input);
+    skipToNextPage(input);
     pageHeader.reset();
     while ((pageHeader.type & 0x04) != 0x04 && input.getPosition() < input.getLength()) {
       OggUtil.populatePageHeader(input, pageHeader, headerArray, false);
@@ -135,12 +206,15 @@ import java.io.IOException;
    */
   public long skipToPageOfGranule(ExtractorInput input, long targetGranule)
       throws IOException, InterruptedException {
-    OggUtil.skipToNextPage(input);
+    skipToNextPage(input);
     OggUtil.populatePageHeader(input, pageHeader, headerArray, false);
     while (pageHeader.granulePosition < targetGranule) {
       input.skipFully(pageHeader.headerSize + pageHeader.bodySize);
-      // Store in a member field to be able to resume after IOExceptions.
-      elapsedSamples = pageHeader.granulePosition;
+      if (pageHeader.granulePosition != -1) {
+        // Store in a member field to be able to resume after IOExceptions. Pages on which no
+        // packet ends have a granule of -1.
+        elapsedSamples = pageHeader.granulePosition;
+      }
       // Peek next header.
       OggUtil.populatePageHeader(input, pageHeader, headerArray, false);
     }
@@ -152,6 +226,7 @@ import java.io.IOException;
     // Reset member state.
     elapsedSamples = 0;
     currentSegmentIndex = -1;
+    packetInProgress = false;
     return returnValue;
   }
 
@@ -20,37 +20,83 @@ import com.google.android.exoplayer.extractor.ExtractorInput;
 import com.google.android.exoplayer.util.Assertions;
 import com.google.android.exoplayer.util.ParsableByteArray;
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * Used to seek in an Ogg stream.
+ * <p>
+ * Seeking bisects the audio data. Each step reads the granule of the first page after a guessed
+ * position, which narrows the range of positions known to hold the target, until the input is
+ * positioned at a page shortly before the target. The granules and positions of the pages read are
+ * cached, so that later seeks start from a narrower range, or need no bisection at all.
  */
 /* package */ final class OggSeeker {
 
   private static final int MATCH_RANGE = 72000;
+  // Pages within this number of bytes of the target are skipped rather than bisected.
+  private static final int MATCH_BYTE_RANGE = 16000;
+  private static final int MAX_CACHED_PAGE_COUNT = 256;
 
   private final OggUtil.PageHeader pageHeader = new OggUtil.PageHeader();
   private final ParsableByteArray headerArray = new ParsableByteArray(27 + 255);
-  private long audioDataLength = C.LENGTH_UNBOUNDED;
+  private final byte[] skipBuffer = new byte[2048];
+  // The positions and granules of pages read while seeking, in order of position.
+  private final long[] cachedPositions = new long[MAX_CACHED_PAGE_COUNT];
+  private final long[] cachedGranules = new long[MAX_CACHED_PAGE_COUNT];
+  private int cachedPageCount;
+
+  private long audioStartPosition;
+  private long inputLength = C.LENGTH_UNBOUNDED;
   private long totalSamples;
 
+  // The current seek. The page at start has a granule below the target, unless start is the start
+  // of the audio data. The first page with a granule at or after end has a granule of at least the
+  // target.
+  private long targetGranule = -1;
+  private long start;
+  private long startGranule;
+  private long end;
+  private long endGranule;
+
   /**
    * Setup the seeker with the data it needs to to an educated guess of seeking positions.
    *
-   * @param audioDataLength the length of the audio data (total bytes - header bytes).
+   * @param audioStartPosition the position of the first page of audio data.
+   * @param inputLength the length of the input.
    * @param totalSamples the total number of samples of audio data.
    */
-  public void setup(long audioDataLength, long totalSamples) {
-    Assertions.checkArgument(audioDataLength > 0 && totalSamples > 0);
-    this.audioDataLength = audioDataLength;
+  public void setup(long audioStartPosition, long inputLength, long totalSamples) {
+    Assertions.checkArgument(audioStartPosition >= 0 && inputLength > audioStartPosition
+        && totalSamples > 0);
+    this.audioStartPosition = audioStartPosition;
+    this.inputLength = inputLength;
     this.totalSamples = totalSamples;
+    cachedPageCount = 0;
+    targetGranule = -1;
+  }
+
+  /**
+   * Returns the position from which to seek to {@code targetGranule}. If a page shortly before the
+   * target has been read by an earlier seek, its position is returned and no further seeks are
+   * required.
+   *
+   * @param targetGranule the target granule position to seek to.
+   * @return the position to seek the {@link ExtractorInput} to before the first call to
+   *     {@link #getNextSeekPosition(long, ExtractorInput)}.
+   */
+  public long getInitialSeekPosition(long targetGranule) {
+    Assertions.checkState(inputLength != C.LENGTH_UNBOUNDED && totalSamples != 0);
+    startSeek(targetGranule);
+    return getNextGuess();
   }
 
   /**
    * Returns a position converging to the {@code targetGranule} to which the {@link ExtractorInput}
    * has to seek and then be passed for another call until -1 is return. If -1 is returned the
-   * input is at a position which is before the start of the page before the target page and at
-   * which it is sensible to just skip pages to the target granule and pre-roll instead of doing
-   * another seek request.
+   * input is positioned at the start of a page which is before the page containing the target, and
+   * from which it is sensible to just skip pages to the target granule and pre-roll instead of
+   * doing another seek request. If the target is on the first page of audio data, the input is
+   * positioned at that page.
    *
    * @param targetGranule the target granule position to seek to.
    * @param input the {@link ExtractorInput} to read from.
@@ -61,18 +107,109 @@ import java.io.IOException;
    */
   public long getNextSeekPosition(long targetGranule, ExtractorInput input)
       throws IOException, InterruptedException {
-    Assertions.checkState(audioDataLength != C.LENGTH_UNBOUNDED && totalSamples != 0);
-    OggUtil.populatePageHeader(input, pageHeader, headerArray, false);
-    long granuleDistance = targetGranule - pageHeader.granulePosition;
-    if (granuleDistance <= 0 || granuleDistance > MATCH_RANGE) {
-      // estimated position too high or too low
-      long offset = (pageHeader.bodySize + pageHeader.headerSize)
-          * (granuleDistance <= 0 ? 2 : 1);
-      return input.getPosition() - offset + (granuleDistance * audioDataLength / totalSamples);
+    Assertions.checkState(inputLength != C.LENGTH_UNBOUNDED && totalSamples != 0);
+    if (targetGranule != this.targetGranule) {
+      startSeek(targetGranule);
+    }
+    long searchPosition = input.getPosition();
+    if (searchPosition == start) {
+      // Position accepted. The page is close enough below the target, the range has converged, or
+      // the target is on the first page of audio data.
+      this.targetGranule = -1;
+      return -1;
+    } else if (searchPosition < start || searchPosition >= end) {
+      return getNextGuess();
+    }
+
+    // Find the first page after the search position on which a packet ends.
+    while (true) {
+      if (!OggUtil.skipToNextPage(input, skipBuffer, end)) {
+        // The first such page is the one at the end of the range.
+        end = searchPosition;
+        return getNextGuess();
+      }
+      if (OggUtil.populatePageHeader(input, pageHeader, headerArray, true)
+          && pageHeader.granulePosition != -1) {
+        break;
+      }
+      // Skip the capture pattern of an invalid page or the header of a page without a granule.
+      input.resetPeekPosition();
+      input.skipFully(1);
     }
-    // position accepted (below target granule and within MATCH_RANGE)
     input.resetPeekPosition();
-    return -1;
+
+    long pagePosition = input.getPosition();
+    long granule = pageHeader.granulePosition;
+    cachePage(pagePosition, granule);
+    if (granule < targetGranule && targetGranule - granule <= MATCH_RANGE) {
+      // Position accepted.
+      this.targetGranule = -1;
+      return -1;
+    } else if (granule < targetGranule) {
+      start = pagePosition;
+      startGranule = granule;
+    } else {
+      end = pagePosition;
+      endGranule = granule;
+    }
+    return getNextGuess();
+  }
+
+  private void startSeek(long targetGranule) {
+    this.targetGranule = targetGranule;
+    // The index of the last cached page with a granule below the target.
+    int index = Arrays.binarySearch(cachedGranules, 0, cachedPageCount, targetGranule);
+    index = (index >= 0 ? index : -index - 1) - 1;
+    if (index >= 0) {
+      start = cachedPositions[index];
+      startGranule = cachedGranules[index];
+    } else {
+      start = audioStartPosition;
+      startGranule = 0;
+    }
+    if (index + 1 < cachedPageCount) {
+      end = cachedPositions[index + 1];
+      endGranule = cachedGranules[index + 1];
+    } else {
+      end = inputLength;
+      endGranule = totalSamples;
+    }
+  }
+
+  private long getNextGuess() {
+    if (end - start <= MATCH_BYTE_RANGE || targetGranule - startGranule <= MATCH_RANGE
+        || endGranule <= startGranule) {
+      return start;
+    }
+    // Aim below the target, so that the page found is likely to be within MATCH_RANGE of it.
+    double fraction = (double) (targetGranule - MATCH_RANGE / 2 - startGranule)
+        / (endGranule - startGranule);
+    long guess = start + (long) (fraction * (end - start));
+    // Narrow the range by at least an eighth in each step, even if the bitrate varies.
+    long margin = (end - start) / 8;
+    return Math.max(start + margin, Math.min(guess, end - margin));
+  }
+
+  private void cachePage(long position, long granule) {
+    int index = Arrays.binarySearch(cachedPositions, 0, cachedPageCount, position);
+    if (index >= 0) {
+      return;
+    }
+    if (cachedPageCount == MAX_CACHED_PAGE_COUNT) {
+      // Drop every other page, which keeps the remaining pages spread across the stream.
+      cachedPageCount /= 2;
+      for (int i = 0; i < cachedPageCount; i++) {
+        cachedPositions[i] = cachedPositions[2 * i + 1];
+        cachedGranules[i] = cachedGranules[2 * i + 1];
+      }
+      index = Arrays.binarySearch(cachedPositions, 0, cachedPageCount, position);
+    }
+    index = -index - 1;
+    System.arraycopy(cachedPositions, index, cachedPositions, index + 1, cachedPageCount - index);
+    System.arraycopy(cachedGranules, index, cachedGranules, index + 1, cachedPageCount - index);
+    cachedPositions[index] = position;
+    cachedGranules[index] = granule;
+    cachedPageCount++;
   }
 
 }
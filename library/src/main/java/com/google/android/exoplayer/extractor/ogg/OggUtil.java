@@ -49,22 +49,41 @@ import java.io.IOException;
    * Skips to the next page.
    *
    * @param input The {@code ExtractorInput} to skip to the next page.
+   * @param buffer A buffer into which data is peeked while searching for the next page. Its
+   *     length must be at least 4.
    * @throws IOException thrown if peeking/reading from the input fails.
    * @throws InterruptedException thrown if interrupted while peeking/reading from the input.
    */
-  public static void skipToNextPage(ExtractorInput input)
+  public static void skipToNextPage(ExtractorInput input, byte[] buffer)
       throws IOException, InterruptedException {
+    if (!skipToNextPage(input, buffer, input.getLength())) {
+      // Not found until eof.
+      throw new EOFException();
+    }
+  }
 
-    byte[] buffer = new byte[2048];
+  /**
+   * Skips to the next page that starts before {@code limit}.
+   *
+   * @param input The {@code ExtractorInput} to skip to the next page.
+   * @param buffer A buffer into which data is peeked while searching for the next page. Its
+   *     length must be at least 4.
+   * @param limit The position before which the page must start, or {@link C#LENGTH_UNBOUNDED} to
+   *     search until the end of the input.
+   * @return {@code true} if a page was found. {@code false} if no page starts before the limit, in
+   *     which case the input is positioned within 3 bytes of the limit.
+   * @throws IOException thrown if peeking/reading from the input fails.
+   * @throws InterruptedException thrown if interrupted while peeking/reading from the input.
+   */
+  public static boolean skipToNextPage(ExtractorInput input, byte[] buffer, long limit)
+      throws IOException, InterruptedException {
     int peekLength = buffer.length;
     while (true) {
-      if (input.getLength() != C.LENGTH_UNBOUNDED
-          && input.getPosition() + peekLength > input.getLength()) {
-        // Make sure to not peek beyond the end of the input.
-        peekLength = (int) (input.getLength() - input.getPosition());
+      if (limit != C.LENGTH_UNBOUNDED && input.getPosition() + peekLength > limit) {
+        // Make sure to not peek beyond the limit.
+        peekLength = (int) (limit - input.getPosition());
         if (peekLength < 4) {
-          // Not found until eof.
-          throw new EOFException();
+          return false;
         }
       }
       input.peekFully(buffer, 0, peekLength, false);
@@ -73,7 +92,7 @@ import java.io.IOException;
             && buffer[i + 3] == 'S') {
           // Match! Skip to the start of the pattern.
           input.skipFully(i);
-          return;
+          return true;
         }
       }
       // Overlap by not skipping the entire peekLength.
@@ -25,11 +25,19 @@ import com.google.android.exoplayer.util.Assertions;
  */
 /* package */ final class VorbisBitArray {
 
+  private static final int NO_WORD = Integer.MAX_VALUE;
+
   public final byte[] data;
   private int limit;
   private int byteOffset;
   private int bitOffset;
 
+  // The byte offset of the first of the eight bytes held in word, which are stored least
+  // significant byte first, or NO_WORD if word is invalid. Bytes past the end of the data are held
+  // as zeros.
+  private int wordByteOffset = NO_WORD;
+  private long word;
+
   /**
    * Creates a new instance that wraps an existing array.
    *
@@ -54,6 +62,7 @@ import com.google.android.exoplayer.util.Assertions;
   public void reset() {
     byteOffset = 0;
     bitOffset = 0;
+    wordByteOffset = NO_WORD;
   }
 
   /**
@@ -76,33 +85,15 @@ import com.google.android.exoplayer.util.Assertions;
     if (numBits == 0) {
       return 0;
     }
-    int result = 0;
-    int bitCount = 0;
-    if (bitOffset != 0) {
-      bitCount = Math.min(numBits, 8 - bitOffset);
-      int mask = 0xFF >>> (8 - bitCount);
-      result = (data[byteOffset] >>> bitOffset) & mask;
-      bitOffset += bitCount;
-      if (bitOffset == 8) {
-        byteOffset++;
-        bitOffset = 0;
-      }
-    }
-
-    if (numBits - bitCount > 7) {
-      int numBytes = (numBits - bitCount) / 8;
-      for (int i = 0; i < numBytes; i++) {
-        result |= (data[byteOffset++] & 0xFFL) << bitCount;
-        bitCount += 8;
-      }
-    }
-
-    if (numBits > bitCount) {
-      int bitsOnNextByte = numBits - bitCount;
-      int mask = 0xFF >>> (8 - bitsOnNextByte);
-      result |= (data[byteOffset] & mask) << bitCount;
-      bitOffset += bitsOnNextByte;
+    if (byteOffset < wordByteOffset
+        || (byteOffset - wordByteOffset) * 8 + bitOffset + numBits > 64) {
+      loadWord();
     }
+    int shift = (byteOffset - wordByteOffset) * 8 + bitOffset;
+    int result = (int) ((word >>> shift) & (0xFFFFFFFFL >>> (32 - numBits)));
+    int nextBit = bitOffset + numBits;
+    byteOffset += nextBit / 8;
+    bitOffset = nextBit % 8;
     return result;
   }
 
@@ -139,6 +130,7 @@ import com.google.android.exoplayer.util.Assertions;
     Assertions.checkArgument(position < limit && position >= 0);
     byteOffset = position / 8;
     bitOffset = position - (byteOffset * 8);
+    wordByteOffset = NO_WORD;
   }
 
   /**
@@ -159,4 +151,16 @@ import com.google.android.exoplayer.util.Assertions;
     return limit;
   }
 
+  private void loadWord() {
+    long value = 0;
+    for (int i = 7; i >= 0; i--) {
+      value <<= 8;
+      if (byteOffset + i < data.length) {
+        value |= data[byteOffset + i] & 0xFF;
+      }
+    }
+    word = value;
+    wordByteOffset = byteOffset;
+  }
+
 }
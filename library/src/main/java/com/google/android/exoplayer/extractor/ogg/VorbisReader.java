@@ -41,7 +41,15 @@ import java.util.ArrayList;
   private boolean seenFirstAudioPacket;
 
   private final OggSeeker oggSeeker = new OggSeeker();
+  private final ParsableByteArray sampleCount = new ParsableByteArray(4);
   private long targetGranule = -1;
+  private boolean seeking;
+  private boolean skippingToTargetPage;
+
+  private int runBytesRemaining;
+  private boolean outputtingPacket;
+  private int sampleSize;
+  private long sampleTimeUs;
 
   private VorbisUtil.VorbisIdHeader vorbisIdHeader;
   private VorbisUtil.CommentHeader commentHeader;
@@ -64,6 +72,8 @@ import java.util.ArrayList;
     previousPacketBlockSize = 0;
     elapsedSamples = 0;
     seenFirstAudioPacket = false;
+    skippingToTargetPage = false;
+    runBytesRemaining = 0;
   }
 
   @Override
@@ -98,7 +108,7 @@ import java.util.ArrayList;
           codecInitialisationData, null));
 
       if (inputLength != C.LENGTH_UNBOUNDED) {
-        oggSeeker.setup(inputLength - audioStartPosition, totalSamples);
+        oggSeeker.setup(audioStartPosition, inputLength, totalSamples);
         // seek back to resume from where we finished reading vorbis headers
         seekPosition.position = audioStartPosition;
         return Extractor.RESULT_SEEK;
@@ -106,48 +116,85 @@ import java.util.ArrayList;
     }
 
     // seeking requested
-    if (!seenFirstAudioPacket && targetGranule > -1) {
-      OggUtil.skipToNextPage(input);
+    if (seeking) {
       long position = oggSeeker.getNextSeekPosition(targetGranule, input);
       if (position != -1) {
         seekPosition.position = position;
         return Extractor.RESULT_SEEK;
-      } else {
-        elapsedSamples = oggParser.skipToPageOfGranule(input, targetGranule);
-        previousPacketBlockSize = vorbisIdHeader.blockSize0;
-        // we're never at the first packet after seeking
-        seenFirstAudioPacket = true;
       }
+      seeking = false;
+      // if the target is on the first audio page we play from the start
+      skippingToTargetPage = input.getPosition() != audioStartPosition;
+    }
+    if (skippingToTargetPage) {
+      elapsedSamples = oggParser.skipToPageOfGranule(input, targetGranule);
+      previousPacketBlockSize = vorbisIdHeader.blockSize0;
+      // we're never at the first packet after seeking
+      seenFirstAudioPacket = true;
+      skippingToTargetPage = false;
     }
 
-    // playback
-    if (oggParser.readPacket(input, scratch)) {
-      // if this is an audio packet...
-      if ((scratch.data[0] & 0x01) != 1) {
-        // ... we need to decode the block size
-        int packetBlockSize = decodeBlockSize(scratch.data[0], vorbisSetup);
-        // a packet contains samples produced from overlapping the previous and current frame data
-        // (https://www.xiph.org/vorbis/doc/Vorbis_I_spec.html#x1-350001.3.2)
-        int samplesInPacket = seenFirstAudioPacket ? (packetBlockSize + previousPacketBlockSize) / 4
-            : 0;
-        if (elapsedSamples + samplesInPacket >= targetGranule) {
-          // codec expects the number of samples appended to audio data
-          appendNumberOfSamples(scratch, samplesInPacket);
-          // calculate time and send audio data to codec
-          long timeUs = elapsedSamples * C.MICROS_PER_SECOND / vorbisSetup.idHeader.sampleRate;
-          trackOutput.sampleData(scratch, scratch.limit());
-          trackOutput.sampleMetadata(timeUs, C.SAMPLE_FLAG_SYNC, scratch.limit(), 0, null);
-          targetGranule = -1;
+    // playback: packets are passed to the track output one run at a time, without being copied
+    if (runBytesRemaining == 0) {
+      int runSize = oggParser.peekPacketRun(input);
+      if (runSize == C.RESULT_END_OF_INPUT) {
+        return Extractor.RESULT_END_OF_INPUT;
+      }
+      if (!oggParser.isPacketInProgress()) {
+        if (runSize == 0) {
+          // skip empty packet
+          oggParser.advancePacketRun();
+          return Extractor.RESULT_CONTINUE;
         }
-        // update state in members for next iteration
-        seenFirstAudioPacket = true;
-        elapsedSamples += samplesInPacket;
-        previousPacketBlockSize = packetBlockSize;
+        startPacket(input);
       }
-      scratch.reset();
-      return Extractor.RESULT_CONTINUE;
+      runBytesRemaining = runSize;
+    }
+    while (runBytesRemaining > 0) {
+      if (outputtingPacket) {
+        int bytesAppended = trackOutput.sampleData(input, runBytesRemaining, false);
+        runBytesRemaining -= bytesAppended;
+        sampleSize += bytesAppended;
+      } else {
+        input.skipFully(runBytesRemaining);
+        runBytesRemaining = 0;
+      }
+    }
+    boolean packetComplete = oggParser.isPacketRunLast();
+    oggParser.advancePacketRun();
+    if (packetComplete && outputtingPacket) {
+      // codec expects the number of samples appended to audio data
+      trackOutput.sampleData(sampleCount, 4);
+      trackOutput.sampleMetadata(sampleTimeUs, C.SAMPLE_FLAG_SYNC, sampleSize + 4, 0, null);
+    }
+    return Extractor.RESULT_CONTINUE;
+  }
+
+  private void startPacket(ExtractorInput input) throws IOException, InterruptedException {
+    input.peekFully(scratch.data, 0, 1);
+    input.resetPeekPosition();
+    outputtingPacket = false;
+    // if this is an audio packet...
+    if ((scratch.data[0] & 0x01) != 1) {
+      // ... we need to decode the block size
+      int packetBlockSize = decodeBlockSize(scratch.data[0], vorbisSetup);
+      // a packet contains samples produced from overlapping the previous and current frame data
+      // (https://www.xiph.org/vorbis/doc/Vorbis_I_spec.html#x1-350001.3.2)
+      int samplesInPacket = seenFirstAudioPacket ? (packetBlockSize + previousPacketBlockSize) / 4
+          : 0;
+      if (elapsedSamples + samplesInPacket >= targetGranule) {
+        outputtingPacket = true;
+        sampleSize = 0;
+        sampleTimeUs = elapsedSamples * C.MICROS_PER_SECOND / vorbisSetup.idHeader.sampleRate;
+        sampleCount.reset();
+        appendNumberOfSamples(sampleCount, samplesInPacket);
+        targetGranule = -1;
+      }
+      // update state in members for next iteration
+      seenFirstAudioPacket = true;
+      elapsedSamples += samplesInPacket;
+      previousPacketBlockSize = packetBlockSize;
     }
-    return Extractor.RESULT_END_OF_INPUT;
   }
 
   //@VisibleForTesting
@@ -214,11 +261,12 @@ import java.util.ArrayList;
   public long getPosition(long timeUs) {
     if (timeUs == 0) {
       targetGranule = -1;
+      seeking = false;
       return audioStartPosition;
     }
     targetGranule = vorbisSetup.idHeader.sampleRate * timeUs / C.MICROS_PER_SECOND;
-    return Math.max(audioStartPosition, ((inputLength - audioStartPosition) * timeUs
-        / duration) - 4000);
+    seeking = true;
+    return oggSeeker.getInitialSeekPosition(targetGranule);
   }
 
   /**
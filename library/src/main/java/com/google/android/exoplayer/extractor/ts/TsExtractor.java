@@ -43,6 +43,12 @@ public final class TsExtractor implements Extractor {
   public static final int WORKAROUND_DETECT_ACCESS_UNITS = 8;
   public static final int WORKAROUND_HLS_MODE = 16;
 
+  /**
+   * Value for the {@code programNumber} constructor parameter indicating that the tracks of every
+   * program in the stream should be extracted.
+   */
+  public static final int PROGRAM_NUMBER_ALL = -1;
+
   private static final String TAG = "TsExtractor";
 
   private static final int TS_PACKET_SIZE = 188;
@@ -66,13 +72,17 @@ public final class TsExtractor implements Extractor {
   private static final long E_AC3_FORMAT_IDENTIFIER = Util.getIntegerCodeForString("EAC3");
   private static final long HEVC_FORMAT_IDENTIFIER = Util.getIntegerCodeForString("HEVC");
 
-  private static final int BUFFER_PACKET_COUNT = 5; // Should be at least 2
+  private static final int SNIFF_PACKET_COUNT = 5; // Should be at least 2
+  private static final int SNIFF_SIZE = TS_PACKET_SIZE * SNIFF_PACKET_COUNT;
+  private static final int BUFFER_PACKET_COUNT = 50; // Should be at least SNIFF_PACKET_COUNT
   private static final int BUFFER_SIZE = TS_PACKET_SIZE * BUFFER_PACKET_COUNT;
 
+  private static final int PID_UNSET = -1;
+
   private final PtsTimestampAdjuster ptsTimestampAdjuster;
   private final int workaroundFlags;
+  private final int selectedProgramNumber;
   private final ParsableByteArray tsPacketBuffer;
-  private final ParsableBitArray tsScratch;
   private final SparseIntArray continuityCounters;
   /* package */ final SparseArray<TsPayloadReader> tsPayloadReaders; // Indexed by pid
   /* package */ final SparseBooleanArray trackIds;
@@ -83,6 +93,10 @@ public final class TsExtractor implements Extractor {
   private int nextEmbeddedTrackId;
   /* package */ Id3Reader id3Reader;
 
+  // The result of the most recent lookup in tsPayloadReaders.
+  private int cachedPid;
+  private TsPayloadReader cachedPayloadReader;
+
   public TsExtractor() {
     this(new PtsTimestampAdjuster(0));
   }
@@ -92,10 +106,22 @@ public final class TsExtractor implements Extractor {
   }
 
   public TsExtractor(PtsTimestampAdjuster ptsTimestampAdjuster, int workaroundFlags) {
+    this(ptsTimestampAdjuster, workaroundFlags, PROGRAM_NUMBER_ALL);
+  }
+
+  /**
+   * @param ptsTimestampAdjuster Adjusts the timestamps of the extracted samples.
+   * @param workaroundFlags Flags that enable workarounds for non-conformant streams.
+   * @param programNumber The program_number of the program whose tracks should be extracted, or
+   *     {@link #PROGRAM_NUMBER_ALL} to extract the tracks of every program. Packets belonging to
+   *     other programs are skipped without their payloads being parsed.
+   */
+  public TsExtractor(PtsTimestampAdjuster ptsTimestampAdjuster, int workaroundFlags,
+      int programNumber) {
     this.ptsTimestampAdjuster = ptsTimestampAdjuster;
     this.workaroundFlags = workaroundFlags;
+    selectedProgramNumber = programNumber;
     tsPacketBuffer = new ParsableByteArray(BUFFER_SIZE);
-    tsScratch = new ParsableBitArray(new byte[3]);
     tsPayloadReaders = new SparseArray<>();
     trackIds = new SparseBooleanArray();
     continuityCounters = new SparseIntArray();
@@ -107,10 +133,10 @@ public final class TsExtractor implements Extractor {
   @Override
   public boolean sniff(ExtractorInput input) throws IOException, InterruptedException {
     byte[] buffer = tsPacketBuffer.data;
-    input.peekFully(buffer, 0, BUFFER_SIZE);
+    input.peekFully(buffer, 0, SNIFF_SIZE);
     for (int j = 0; j < TS_PACKET_SIZE; j++) {
       for (int i = 0; true; i++) {
-        if (i == BUFFER_PACKET_COUNT) {
+        if (i == SNIFF_PACKET_COUNT) {
           input.skipFully(j);
           return true;
         }
@@ -146,8 +172,9 @@ public final class TsExtractor implements Extractor {
   public int read(ExtractorInput input, PositionHolder seekPosition)
       throws IOException, InterruptedException {
     byte[] data = tsPacketBuffer.data;
-    // Shift bytes to the start of the buffer if there isn't enough space left at the end
-    if (BUFFER_SIZE - tsPacketBuffer.getPosition() < TS_PACKET_SIZE) {
+    // All complete packets were consumed by the previous call, so move any partial packet to the
+    // start of the buffer to leave as much space as possible for the next read.
+    if (tsPacketBuffer.getPosition() > 0) {
       int bytesLeft = tsPacketBuffer.bytesLeft();
       if (bytesLeft > 0) {
         System.arraycopy(data, tsPacketBuffer.getPosition(), data, 0, bytesLeft);
@@ -164,81 +191,98 @@ public final class TsExtractor implements Extractor {
       tsPacketBuffer.setLimit(limit + read);
     }
 
-    // Note: see ISO/IEC 13818-1, section 2.4.3.2 for detailed information on the format of
-    // the header.
-    final int limit = tsPacketBuffer.limit();
+    // Consume every complete packet in the buffer.
+    int limit = tsPacketBuffer.limit();
     int position = tsPacketBuffer.getPosition();
-    while (position < limit && data[position] != TS_SYNC_BYTE) {
-      position++;
+    while (true) {
+      while (position < limit && data[position] != TS_SYNC_BYTE) {
+        position++;
+      }
+      int endOfPacket = position + TS_PACKET_SIZE;
+      if (endOfPacket > limit) {
+        break;
+      }
+      consumePacket(data, position, endOfPacket, limit);
+      position = endOfPacket;
     }
     tsPacketBuffer.setPosition(position);
+    return RESULT_CONTINUE;
+  }
 
-    int endOfPacket = position + TS_PACKET_SIZE;
-    if (endOfPacket > limit) {
-      return RESULT_CONTINUE;
-    }
+  // Internals.
 
-    tsPacketBuffer.skipBytes(1);
-    tsPacketBuffer.readBytes(tsScratch, 3);
-    if (tsScratch.readBit()) { // transport_error_indicator
+  /**
+   * Consumes the TS packet starting at {@code position} in {@code data}, which must be the data of
+   * {@link #tsPacketBuffer}.
+   */
+  private void consumePacket(byte[] data, int position, int endOfPacket, int limit) {
+    // Note: see ISO/IEC 13818-1, section 2.4.3.2 for detailed information on the format of
+    // the header.
+    int header = ((data[position + 1] & 0xFF) << 16) | ((data[position + 2] & 0xFF) << 8)
+        | (data[position + 3] & 0xFF);
+    if ((header & 0x800000) != 0) { // transport_error_indicator
       // There are uncorrectable errors in this packet.
-      tsPacketBuffer.setPosition(endOfPacket);
-      return RESULT_CONTINUE;
+      return;
     }
-    boolean payloadUnitStartIndicator = tsScratch.readBit();
-    tsScratch.skipBits(1); // transport_priority
-    int pid = tsScratch.readBits(13);
-    tsScratch.skipBits(2); // transport_scrambling_control
-    boolean adaptationFieldExists = tsScratch.readBit();
-    boolean payloadExists = tsScratch.readBit();
+    int pid = (header >> 8) & 0x1FFF;
+    TsPayloadReader payloadReader;
+    if (pid == cachedPid) {
+      payloadReader = cachedPayloadReader;
+    } else {
+      payloadReader = tsPayloadReaders.get(pid);
+      cachedPid = pid;
+      cachedPayloadReader = payloadReader;
+    }
+    if (payloadReader == null) {
+      // The packet doesn't belong to a table or track that's being extracted.
+      return;
+    }
+    boolean payloadUnitStartIndicator = (header & 0x400000) != 0;
+    boolean adaptationFieldExists = (header & 0x20) != 0;
+    boolean payloadExists = (header & 0x10) != 0;
 
     // Discontinuity check.
     boolean discontinuityFound = false;
-    int continuityCounter = tsScratch.readBits(4);
+    int continuityCounter = header & 0x0F;
     if ((workaroundFlags & WORKAROUND_HLS_MODE) == 0) {
       int previousCounter = continuityCounters.get(pid, continuityCounter - 1);
       continuityCounters.put(pid, continuityCounter);
       if (previousCounter == continuityCounter) {
         if (payloadExists) {
           // Duplicate packet found.
-          tsPacketBuffer.setPosition(endOfPacket);
-          return RESULT_CONTINUE;
+          return;
         }
       } else if (continuityCounter != (previousCounter + 1) % 16) {
         discontinuityFound = true;
       }
     }
 
+    if (!payloadExists) {
+      return;
+    }
+
     // Skip the adaptation field.
+    int payloadPosition = position + 4;
     if (adaptationFieldExists) {
-      int adaptationFieldLength = tsPacketBuffer.readUnsignedByte();
-      tsPacketBuffer.skipBytes(adaptationFieldLength);
+      payloadPosition += 1 + (data[payloadPosition] & 0xFF);
     }
 
     // Read the payload.
-    if (payloadExists) {
-      TsPayloadReader payloadReader = tsPayloadReaders.get(pid);
-      if (payloadReader != null) {
-        if (discontinuityFound) {
-          payloadReader.seek();
-        }
-        tsPacketBuffer.setLimit(endOfPacket);
-        payloadReader.consume(tsPacketBuffer, payloadUnitStartIndicator, output);
-        Assertions.checkState(tsPacketBuffer.getPosition() <= endOfPacket);
-        tsPacketBuffer.setLimit(limit);
-      }
+    if (discontinuityFound) {
+      payloadReader.seek();
     }
-
-    tsPacketBuffer.setPosition(endOfPacket);
-    return RESULT_CONTINUE;
+    tsPacketBuffer.setPosition(payloadPosition);
+    tsPacketBuffer.setLimit(endOfPacket);
+    payloadReader.consume(tsPacketBuffer, payloadUnitStartIndicator, output);
+    Assertions.checkState(tsPacketBuffer.getPosition() <= endOfPacket);
+    tsPacketBuffer.setLimit(limit);
   }
 
-  // Internals.
-
   private void resetPayloadReaders() {
     trackIds.clear();
     tsPayloadReaders.clear();
     tsPayloadReaders.put(TS_PAT_PID, new PatReader());
+    cachedPid = PID_UNSET;
     id3Reader = null;
     nextEmbeddedTrackId = BASE_EMBEDDED_TRACK_ID;
   }
@@ -334,11 +378,15 @@ public final class TsExtractor implements Extractor {
         patScratch.skipBits(3); // reserved (3)
         if (programNumber == 0) {
           patScratch.skipBits(13); // network_PID (13)
-        } else {
+        } else if (selectedProgramNumber == PROGRAM_NUMBER_ALL
+            || selectedProgramNumber == programNumber) {
           int pid = patScratch.readBits(13);
           tsPayloadReaders.put(pid, new PmtReader(pid));
+        } else {
+          patScratch.skipBits(13); // program_map_PID (13) of a program that isn't extracted
         }
       }
+      cachedPid = PID_UNSET;
 
       // Skip CRC_32.
     }
@@ -503,6 +551,7 @@ public final class TsExtractor implements Extractor {
         tsPayloadReaders.remove(pid);
         output.endTracks();
       }
+      cachedPid = PID_UNSET;
       tracksEnded = true;
     }
 
@@ -28,8 +28,10 @@ import com.google.android.exoplayer.extractor.Extractor;
 import com.google.android.exoplayer.extractor.ExtractorInput;
 import com.google.android.exoplayer.extractor.ExtractorOutput;
 import com.google.android.exoplayer.extractor.PositionHolder;
+import com.google.android.exoplayer.extractor.SeekIndexCache;
 import com.google.android.exoplayer.extractor.SeekMap;
 import com.google.android.exoplayer.extractor.TrackOutput;
+import com.google.android.exoplayer.util.Assertions;
 import com.google.android.exoplayer.util.LongArray;
 import com.google.android.exoplayer.util.MimeTypes;
 import com.google.android.exoplayer.util.NalUnitUtil;
@@ -236,6 +238,8 @@ public final class WebmExtractor implements Extractor {
   private final VarintReader varintReader;
   private final SparseArray<Track> tracks;
   private final boolean seekForCuesEnabled;
+  private final SeekIndexCache seekIndexCache;
+  private final String seekIndexCacheKey;
 
   // Temporary arrays.
   private final ParsableByteArray nalStartCode;
@@ -249,6 +253,7 @@ public final class WebmExtractor implements Extractor {
   private final ParsableByteArray encryptionSubsampleData;
   private ByteBuffer encryptionSubsampleDataBuffer;
 
+  private long inputLength = C.LENGTH_UNBOUNDED;
   private long segmentContentPosition = UNKNOWN;
   private long segmentContentSize = UNKNOWN;
   private long timecodeScale = C.UNKNOWN_TIME_US;
@@ -303,19 +308,38 @@ public final class WebmExtractor implements Extractor {
   private ExtractorOutput extractorOutput;
 
   public WebmExtractor() {
-    this(new DefaultEbmlReader(), 0);
+    this(0);
   }
 
   /**
    * @param flags Flags that control the extractor's behavior.
    */
   public WebmExtractor(int flags) {
-    this(new DefaultEbmlReader(), flags);
+    this(flags, null, null);
+  }
+
+  /**
+   * @param flags Flags that control the extractor's behavior.
+   * @param seekIndexCache A cache of the seek indices built from cues, or null. If an index for the
+   *     media is cached, it's used instead of seeking for the cues element.
+   * @param seekIndexCacheKey The key that identifies the media in {@code seekIndexCache}, typically
+   *     its URI. May be null if {@code seekIndexCache} is null.
+   */
+  public WebmExtractor(int flags, SeekIndexCache seekIndexCache, String seekIndexCacheKey) {
+    this(new DefaultEbmlReader(), flags, seekIndexCache, seekIndexCacheKey);
   }
 
   /* package */ WebmExtractor(EbmlReader reader, int flags) {
+    this(reader, flags, null, null);
+  }
+
+  /* package */ WebmExtractor(EbmlReader reader, int flags, SeekIndexCache seekIndexCache,
+      String seekIndexCacheKey) {
+    Assertions.checkArgument(seekIndexCache == null || seekIndexCacheKey != null);
     this.reader = reader;
     this.reader.init(new InnerEbmlReaderOutput());
+    this.seekIndexCache = seekIndexCache;
+    this.seekIndexCacheKey = seekIndexCacheKey;
     seekForCuesEnabled = (flags & FLAG_DISABLE_SEEK_FOR_CUES) == 0;
     varintReader = new VarintReader();
     tracks = new SparseArray<>();
@@ -358,6 +382,7 @@ public final class WebmExtractor implements Extractor {
   public int read(ExtractorInput input, PositionHolder seekPosition) throws IOException,
       InterruptedException {
     sampleRead = false;
+    inputLength = input.getLength();
     boolean continueReading = true;
     while (continueReading && !sampleRead) {
       continueReading = reader.read(input);
@@ -484,7 +509,12 @@ public final class WebmExtractor implements Extractor {
       case ID_CLUSTER:
         if (!sentSeekMap) {
           // We need to build cues before parsing the cluster.
-          if (seekForCuesEnabled && cuesContentPosition != UNKNOWN) {
+          ChunkIndex cachedSeekIndex = getCachedSeekIndex();
+          if (cachedSeekIndex != null) {
+            // The cues were built when the media was previously played.
+            extractorOutput.seekMap(cachedSeekIndex);
+            sentSeekMap = true;
+          } else if (seekForCuesEnabled && cuesContentPosition != UNKNOWN) {
             // We know where the Cues element is located. Seek to request it.
             seekForCues = true;
           } else {
@@ -536,7 +566,15 @@ public final class WebmExtractor implements Extractor {
         return;
       case ID_CUES:
         if (!sentSeekMap) {
-          extractorOutput.seekMap(buildSeekMap());
+          SeekMap seekMap = getCachedSeekIndex();
+          if (seekMap == null) {
+            seekMap = buildSeekMap();
+            if (seekMap instanceof ChunkIndex && seekIndexCache != null
+                && inputLength != C.LENGTH_UNBOUNDED) {
+              seekIndexCache.put(seekIndexCacheKey, inputLength, (ChunkIndex) seekMap);
+            }
+          }
+          extractorOutput.seekMap(seekMap);
           sentSeekMap = true;
         } else {
           // We have already built the cues. Ignore.
@@ -1298,6 +1336,16 @@ public final class WebmExtractor implements Extractor {
     return new ChunkIndex(sizes, offsets, durationsUs, timesUs);
   }
 
+  /**
+   * Returns the seek index cached for the media, or null if there isn't one.
+   */
+  private ChunkIndex getCachedSeekIndex() {
+    if (seekIndexCache == null || inputLength == C.LENGTH_UNBOUNDED) {
+      return null;
+    }
+    return seekIndexCache.get(seekIndexCacheKey, inputLength);
+  }
+
   /**
    * Updates the position of the holder to Cues element's position if the extractor configuration
    * permits use of master seek entry. After building Cues sets the holder's position back to where
@@ -458,7 +458,7 @@ public class HlsChunkSource implements HlsTrackSelector.Output {
 
     // Configure the data source and spec for the chunk.
     DataSpec dataSpec = new DataSpec(chunkUri, segment.byterangeOffset, segment.byterangeLength,
-        null);
+        getCacheKey(chunkUri));
 
     // Compute start and end times, and the sequence number of the next chunk.
     long startTimeUs;
@@ -862,6 +862,13 @@ public class HlsChunkSource implements HlsTrackSelector.Output {
     throw new IllegalStateException("Invalid format: " + format);
   }
 
+  /**
+   * Returns the cache key of a media segment, which is its resolved URI.
+   */
+  /* package */ static String getCacheKey(Uri chunkUri) {
+    return chunkUri.toString();
+  }
+
   // Private classes.
 
   private static final class ExposedTrack {
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.hls;
+
+import android.net.Uri;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.util.UriUtil;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Utility methods for prefetching HLS content into a cache with a
+ * {@link com.google.android.exoplayer.upstream.cache.CachePrefetcher}.
+ * <p>
+ * The media playlists of the variants returned by
+ * {@link #getMediaPlaylistUris(HlsMasterPlaylist, HlsTrackSelector)} can be loaded with a
+ * {@link com.google.android.exoplayer.upstream.UriLoadable} and an {@link HlsPlaylistParser}, and
+ * their segments obtained from {@link #getSegments(HlsMediaPlaylist)}.
+ */
+public final class HlsPrefetchUtil {
+
+  private HlsPrefetchUtil() {}
+
+  /**
+   * Returns the URIs of the media playlists of the variants selected by an
+   * {@link HlsTrackSelector}.
+   *
+   * @param playlist The master playlist.
+   * @param trackSelector Selects the variants to prefetch.
+   * @return The URIs of the media playlists of the selected variants.
+   * @throws IOException If an error occurs selecting variants.
+   */
+  public static List<Uri> getMediaPlaylistUris(final HlsMasterPlaylist playlist,
+      HlsTrackSelector trackSelector) throws IOException {
+    final ArrayList<Uri> uris = new ArrayList<>();
+    trackSelector.selectTracks(playlist, new HlsTrackSelector.Output() {
+
+      @Override
+      public void adaptiveTrack(HlsMasterPlaylist playlist, Variant[] variants) {
+        for (Variant variant : variants) {
+          fixedTrack(playlist, variant);
+        }
+      }
+
+      @Override
+      public void fixedTrack(HlsMasterPlaylist playlist, Variant variant) {
+        Uri uri = UriUtil.resolveToUri(playlist.baseUri, variant.url);
+        if (!uris.contains(uri)) {
+          uris.add(uri);
+        }
+      }
+
+    });
+    return uris;
+  }
+
+  /**
+   * Returns the segments of a media playlist, keyed as they're requested by
+   * {@link HlsChunkSource}.
+   * <p>
+   * Encrypted segments are prefetched as they're stored, and are decrypted when they're played.
+   * The encryption keys themselves aren't prefetched.
+   *
+   * @param playlist The media playlist.
+   * @return The segments to prefetch.
+   */
+  public static List<DataSpec> getSegments(HlsMediaPlaylist playlist) {
+    ArrayList<DataSpec> dataSpecs = new ArrayList<>(playlist.segments.size());
+    for (int i = 0; i < playlist.segments.size(); i++) {
+      HlsMediaPlaylist.Segment segment = playlist.segments.get(i);
+      Uri uri = UriUtil.resolveToUri(playlist.baseUri, segment.url);
+      dataSpecs.add(new DataSpec(uri, segment.byterangeOffset, segment.byterangeLength,
+          HlsChunkSource.getCacheKey(uri)));
+    }
+    return dataSpecs;
+  }
+
+}
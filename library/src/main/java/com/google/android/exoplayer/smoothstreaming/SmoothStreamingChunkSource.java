@@ -32,6 +32,7 @@ import com.google.android.exoplayer.chunk.Format.DecreasingBandwidthComparator;
 import com.google.android.exoplayer.chunk.FormatEvaluator;
 import com.google.android.exoplayer.chunk.FormatEvaluator.Evaluation;
 import com.google.android.exoplayer.chunk.MediaChunk;
+import com.google.android.exoplayer.chunk.PrefetchingChunkSource;
 import com.google.android.exoplayer.drm.DrmInitData;
 import com.google.android.exoplayer.drm.DrmInitData.SchemeInitData;
 import com.google.android.exoplayer.extractor.mp4.FragmentedMp4Extractor;
@@ -55,7 +56,7 @@ import java.util.List;
 /**
  * An {@link ChunkSource} for SmoothStreaming.
  */
-public class SmoothStreamingChunkSource implements ChunkSource,
+public class SmoothStreamingChunkSource implements PrefetchingChunkSource,
     SmoothStreamingTrackSelector.Output {
 
   private static final int MINIMUM_MANIFEST_REFRESH_PERIOD_MS = 5000;
@@ -322,6 +323,22 @@ public class SmoothStreamingChunkSource implements ChunkSource,
     out.chunk = mediaChunk;
   }
 
+  @Override
+  public DataSpec getNextChunkDataSpec(List<? extends MediaChunk> queue) {
+    if (fatalError != null || queue.isEmpty()) {
+      return null;
+    }
+    MediaChunk previous = queue.get(queue.size() - 1);
+    StreamElement streamElement = currentManifest.streamElements[enabledTrack.elementIndex];
+    int chunkIndex = previous.chunkIndex + 1 - currentManifestChunkOffset;
+    if (chunkIndex < 0 || chunkIndex >= streamElement.chunkCount) {
+      return null;
+    }
+    int manifestTrackIndex = getManifestTrackIndex(streamElement, previous.format);
+    return newMediaChunkDataSpec(streamElement.buildRequestUri(manifestTrackIndex, chunkIndex),
+        null);
+  }
+
   @Override
   public void onChunkLoadCompleted(Chunk chunk) {
     // Do nothing.
@@ -476,8 +493,7 @@ public class SmoothStreamingChunkSource implements ChunkSource,
       ChunkExtractorWrapper extractorWrapper, DrmInitData drmInitData, DataSource dataSource,
       int chunkIndex, long chunkStartTimeUs, long chunkEndTimeUs, int trigger,
       MediaFormat mediaFormat, int adaptiveMaxWidth, int adaptiveMaxHeight) {
-    long offset = 0;
-    DataSpec dataSpec = new DataSpec(uri, offset, -1, cacheKey);
+    DataSpec dataSpec = newMediaChunkDataSpec(uri, cacheKey);
     // In SmoothStreaming each chunk contains sample timestamps relative to the start of the chunk.
     // To convert them the absolute timestamps, we need to set sampleOffsetUs to -chunkStartTimeUs.
     return new ContainerMediaChunk(dataSource, dataSpec, trigger, formatInfo, chunkStartTimeUs,
@@ -485,6 +501,11 @@ public class SmoothStreamingChunkSource implements ChunkSource,
         adaptiveMaxWidth, adaptiveMaxHeight, drmInitData, true, Chunk.NO_PARENT_ID);
   }
 
+  private static DataSpec newMediaChunkDataSpec(Uri uri, String cacheKey) {
+    long offset = 0;
+    return new DataSpec(uri, offset, -1, cacheKey);
+  }
+
   private static int getManifestTrackKey(int elementIndex, int trackIndex) {
     Assertions.checkState(elementIndex <= 65536 && trackIndex <= 65536);
     return (elementIndex << 16) | trackIndex;
@@ -29,6 +29,13 @@ public final class Allocation {
    */
   public final byte[] data;
 
+  /**
+   * The index assigned to the allocation by the {@link Allocator} that created it, or -1 if it
+   * wasn't assigned one. Allows {@link SlabAllocator} to find a released allocation without
+   * searching for it.
+   */
+  /* package */ final int allocatorIndex;
+
   private final int offset;
 
   /**
@@ -36,8 +43,19 @@ public final class Allocation {
    * @param offset The offset of the allocated space within the array.
    */
   public Allocation(byte[] data, int offset) {
+    this(data, offset, -1);
+  }
+
+  /**
+   * @param data The array containing the allocated space.
+   * @param offset The offset of the allocated space within the array.
+   * @param allocatorIndex The index assigned to the allocation by the {@link Allocator} that
+   *     created it.
+   */
+  /* package */ Allocation(byte[] data, int offset, int allocatorIndex) {
     this.data = data;
     this.offset = offset;
+    this.allocatorIndex = allocatorIndex;
   }
 
   /**
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+/**
+ * Estimates the available bandwidth from samples of completed transfers.
+ * <p>
+ * Estimators are used by {@link DefaultBandwidthMeter}, which synchronizes calls to them.
+ * Implementations therefore need not be thread-safe.
+ */
+public interface BandwidthEstimator {
+
+  /**
+   * Adds a sample for a transfer that has ended.
+   *
+   * @param bytes The number of bytes transferred.
+   * @param timeToFirstByteMs The time from the start of the transfer until the first bytes were
+   *     transferred, in milliseconds.
+   * @param elapsedMs The duration of the transfer, including {@code timeToFirstByteMs}, in
+   *     milliseconds. Always greater than zero.
+   */
+  void addSample(long bytes, long timeToFirstByteMs, long elapsedMs);
+
+  /**
+   * Gets the estimated bandwidth, in bits/sec.
+   *
+   * @return Estimated bandwidth in bits/sec, or {@link BandwidthMeter#NO_ESTIMATE} if no estimate
+   *     is available.
+   */
+  long getBitrateEstimate();
+
+}
@@ -18,24 +18,33 @@ package com.google.android.exoplayer.upstream;
 import android.os.Handler;
 import com.google.android.exoplayer.util.Assertions;
 import com.google.android.exoplayer.util.Clock;
-import com.google.android.exoplayer.util.SlidingPercentile;
 import com.google.android.exoplayer.util.SystemClock;
 
 /**
- * Counts transferred bytes while transfers are open and creates a bandwidth sample and updated
- * bandwidth estimate each time a transfer ends.
+ * Measures transfers and passes a sample to a {@link BandwidthEstimator} each time a transfer
+ * ends, updating the bandwidth estimate.
+ * <p>
+ * When the meter is itself used as the {@link TransferListener} of several data sources, their
+ * transfers can't be told apart, so bytes transferred while any transfer is open are counted
+ * together. {@link #createTransferListener()} instead returns a listener that times the transfers
+ * of a single data source. Sampling each data source separately prevents overlapping transfers,
+ * for example of audio, video and manifests, from skewing each other's samples.
  */
 public final class DefaultBandwidthMeter implements BandwidthMeter {
 
-  public static final int DEFAULT_MAX_WEIGHT = 2000;
+  public static final int DEFAULT_MAX_WEIGHT =
+      SlidingPercentileBandwidthEstimator.DEFAULT_MAX_WEIGHT;
+
+  private static final long NO_FIRST_BYTE = -1;
 
   private final Handler eventHandler;
   private final EventListener eventListener;
   private final Clock clock;
-  private final SlidingPercentile slidingPercentile;
+  private final BandwidthEstimator bandwidthEstimator;
 
   private long bytesAccumulator;
   private long startTimeMs;
+  private long timeToFirstByteMs;
   private long bitrateEstimate;
   private int streamCount;
 
@@ -57,13 +66,31 @@ public final class DefaultBandwidthMeter implements BandwidthMeter {
 
   public DefaultBandwidthMeter(Handler eventHandler, EventListener eventListener, Clock clock,
       int maxWeight) {
+    this(eventHandler, eventListener, clock, new SlidingPercentileBandwidthEstimator(maxWeight,
+        SlidingPercentileBandwidthEstimator.DEFAULT_PERCENTILE));
+  }
+
+  public DefaultBandwidthMeter(Handler eventHandler, EventListener eventListener, Clock clock,
+      BandwidthEstimator bandwidthEstimator) {
     this.eventHandler = eventHandler;
     this.eventListener = eventListener;
     this.clock = clock;
-    this.slidingPercentile = new SlidingPercentile(maxWeight);
+    this.bandwidthEstimator = bandwidthEstimator;
     bitrateEstimate = NO_ESTIMATE;
   }
 
+  /**
+   * Returns a {@link TransferListener} that samples the transfers of a single data source
+   * separately from those of any other data source.
+   * <p>
+   * The returned listener should be used by one data source only.
+   *
+   * @return The {@link TransferListener}.
+   */
+  public TransferListener createTransferListener() {
+    return new ConnectionTransferListener();
+  }
+
   @Override
   public synchronized long getBitrateEstimate() {
     return bitrateEstimate;
@@ -73,12 +100,16 @@ public final class DefaultBandwidthMeter implements BandwidthMeter {
   public synchronized void onTransferStart() {
     if (streamCount == 0) {
       startTimeMs = clock.elapsedRealtime();
+      timeToFirstByteMs = NO_FIRST_BYTE;
     }
     streamCount++;
   }
 
   @Override
   public synchronized void onBytesTransferred(int bytes) {
+    if (timeToFirstByteMs == NO_FIRST_BYTE) {
+      timeToFirstByteMs = clock.elapsedRealtime() - startTimeMs;
+    }
     bytesAccumulator += bytes;
   }
 
@@ -86,22 +117,29 @@ public final class DefaultBandwidthMeter implements BandwidthMeter {
   public synchronized void onTransferEnd() {
     Assertions.checkState(streamCount > 0);
     long nowMs = clock.elapsedRealtime();
-    int elapsedMs = (int) (nowMs - startTimeMs);
-    if (elapsedMs > 0) {
-      float bitsPerSecond = (bytesAccumulator * 8000) / elapsedMs;
-      slidingPercentile.addSample((int) Math.sqrt(bytesAccumulator), bitsPerSecond);
-      float bandwidthEstimateFloat = slidingPercentile.getPercentile(0.5f);
-      bitrateEstimate = Float.isNaN(bandwidthEstimateFloat) ? NO_ESTIMATE
-          : (long) bandwidthEstimateFloat;
-      notifyBandwidthSample(elapsedMs, bytesAccumulator, bitrateEstimate);
-    }
+    addSample(bytesAccumulator, timeToFirstByteMs, nowMs - startTimeMs);
     streamCount--;
     if (streamCount > 0) {
+      // The remaining transfers are already under way.
       startTimeMs = nowMs;
+      timeToFirstByteMs = 0;
     }
     bytesAccumulator = 0;
   }
 
+  private synchronized void addSample(long bytes, long timeToFirstByteMs, long elapsedMs) {
+    if (elapsedMs <= 0) {
+      return;
+    }
+    if (timeToFirstByteMs == NO_FIRST_BYTE) {
+      // No bytes were transferred.
+      timeToFirstByteMs = elapsedMs;
+    }
+    bandwidthEstimator.addSample(bytes, timeToFirstByteMs, elapsedMs);
+    bitrateEstimate = bandwidthEstimator.getBitrateEstimate();
+    notifyBandwidthSample((int) elapsedMs, bytes, bitrateEstimate);
+  }
+
   private void notifyBandwidthSample(final int elapsedMs, final long bytes, final long bitrate) {
     if (eventHandler != null && eventListener != null) {
       eventHandler.post(new Runnable()  {
@@ -113,4 +151,40 @@ public final class DefaultBandwidthMeter implements BandwidthMeter {
     }
   }
 
+  /**
+   * Times the transfers of a single data source.
+   */
+  private final class ConnectionTransferListener implements TransferListener {
+
+    private long startTimeMs;
+    private long timeToFirstByteMs;
+    private long bytesTransferred;
+    private boolean transferring;
+
+    @Override
+    public void onTransferStart() {
+      Assertions.checkState(!transferring);
+      transferring = true;
+      startTimeMs = clock.elapsedRealtime();
+      timeToFirstByteMs = NO_FIRST_BYTE;
+      bytesTransferred = 0;
+    }
+
+    @Override
+    public void onBytesTransferred(int bytes) {
+      if (timeToFirstByteMs == NO_FIRST_BYTE) {
+        timeToFirstByteMs = clock.elapsedRealtime() - startTimeMs;
+      }
+      bytesTransferred += bytes;
+    }
+
+    @Override
+    public void onTransferEnd() {
+      Assertions.checkState(transferring);
+      transferring = false;
+      addSample(bytesTransferred, timeToFirstByteMs, clock.elapsedRealtime() - startTimeMs);
+    }
+
+  }
+
 }
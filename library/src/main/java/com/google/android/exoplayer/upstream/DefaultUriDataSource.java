@@ -19,6 +19,8 @@ import android.content.Context;
 import com.google.android.exoplayer.util.Assertions;
 import com.google.android.exoplayer.util.Util;
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 
 /**
  * A {@link UriDataSource} that supports multiple URI schemes. The supported schemes are:
@@ -32,7 +34,7 @@ import java.io.IOException;
  * <li>content: For fetching data from a content URI (e.g. content://authority/path/123).
  * </ul>
  */
-public final class DefaultUriDataSource implements UriDataSource {
+public final class DefaultUriDataSource implements UriDataSource, PrefetchingDataSource {
 
   private static final String SCHEME_ASSET = "asset";
   private static final String SCHEME_CONTENT = "content";
@@ -47,6 +49,7 @@ public final class DefaultUriDataSource implements UriDataSource {
    * data source is a file, or {@link #httpDataSource} otherwise.
    */
   private UriDataSource dataSource;
+  private DataSpec nextDataSpec;
 
   /**
    * Constructs a new instance.
@@ -111,9 +114,22 @@ public final class DefaultUriDataSource implements UriDataSource {
     this.contentDataSource = new ContentDataSource(context, listener);
   }
 
+  /**
+   * {@inheritDoc}
+   * <p>
+   * The prediction is passed on if the next {@link DataSpec} is opened by the
+   * {@link UriDataSource} used for non-file URIs, and it's a {@link PrefetchingDataSource}.
+   */
+  @Override
+  public void setNextDataSpec(DataSpec nextDataSpec) {
+    this.nextDataSpec = nextDataSpec;
+  }
+
   @Override
   public long open(DataSpec dataSpec) throws IOException {
     Assertions.checkState(dataSource == null);
+    DataSpec nextDataSpec = this.nextDataSpec;
+    this.nextDataSpec = null;
     // Choose the correct source for the scheme.
     String scheme = dataSpec.uri.getScheme();
     if (Util.isLocalFileUri(dataSpec.uri)) {
@@ -128,6 +144,9 @@ public final class DefaultUriDataSource implements UriDataSource {
       dataSource = contentDataSource;
     } else {
       dataSource = httpDataSource;
+      if (httpDataSource instanceof PrefetchingDataSource) {
+        ((PrefetchingDataSource) httpDataSource).setNextDataSpec(nextDataSpec);
+      }
     }
     // Open the source and return.
     return dataSource.open(dataSpec);
@@ -143,6 +162,18 @@ public final class DefaultUriDataSource implements UriDataSource {
     return dataSource == null ? null : dataSource.getUri();
   }
 
+  /**
+   * Gets the headers provided in the response, if the open data source is an
+   * {@link HttpDataSource}.
+   *
+   * @return The response headers, or {@code null} if no data source is open, the open data source
+   *     isn't an {@link HttpDataSource}, or response headers are unavailable.
+   */
+  public Map<String, List<String>> getResponseHeaders() {
+    return dataSource instanceof HttpDataSource
+        ? ((HttpDataSource) dataSource).getResponseHeaders() : null;
+  }
+
   @Override
   public void close() throws IOException {
     if (dataSource != null) {
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+/**
+ * A {@link BandwidthEstimator} that keeps a fast and a slow exponentially weighted moving average
+ * of the throughput, and estimates the bandwidth as the lower of the two. The fast average reacts
+ * quickly when the bandwidth drops, and the slow average prevents a short burst from raising the
+ * estimate.
+ * <p>
+ * Each transfer is weighted by its duration, so an average decays by half for each half-life of
+ * transfer time, however the transfer time is split between transfers. Transfers of fewer than
+ * {@link #DEFAULT_MIN_SAMPLE_BYTES} bytes are ignored by default, as their throughput is dominated
+ * by latency.
+ */
+public final class EwmaBandwidthEstimator implements BandwidthEstimator {
+
+  public static final int DEFAULT_FAST_HALF_LIFE_MS = 2000;
+  public static final int DEFAULT_SLOW_HALF_LIFE_MS = 5000;
+  public static final int DEFAULT_MIN_SAMPLE_BYTES = 16 * 1024;
+  public static final int DEFAULT_MIN_TOTAL_BYTES = 128 * 1024;
+
+  private final Ewma fast;
+  private final Ewma slow;
+  private final int minSampleBytes;
+  private final int minTotalBytes;
+
+  private long totalBytes;
+
+  public EwmaBandwidthEstimator() {
+    this(DEFAULT_FAST_HALF_LIFE_MS, DEFAULT_SLOW_HALF_LIFE_MS, DEFAULT_MIN_SAMPLE_BYTES,
+        DEFAULT_MIN_TOTAL_BYTES);
+  }
+
+  /**
+   * @param fastHalfLifeMs The half-life of the fast average, in milliseconds of transfer time.
+   * @param slowHalfLifeMs The half-life of the slow average, in milliseconds of transfer time.
+   * @param minSampleBytes The minimum number of bytes a transfer must have transferred to be
+   *     sampled.
+   * @param minTotalBytes The number of bytes that must have been sampled before an estimate is
+   *     available.
+   */
+  public EwmaBandwidthEstimator(int fastHalfLifeMs, int slowHalfLifeMs, int minSampleBytes,
+      int minTotalBytes) {
+    fast = new Ewma(fastHalfLifeMs);
+    slow = new Ewma(slowHalfLifeMs);
+    this.minSampleBytes = minSampleBytes;
+    this.minTotalBytes = minTotalBytes;
+  }
+
+  @Override
+  public void addSample(long bytes, long timeToFirstByteMs, long elapsedMs) {
+    if (bytes < minSampleBytes) {
+      return;
+    }
+    double bitsPerSecond = (bytes * 8000d) / elapsedMs;
+    fast.addSample(elapsedMs, bitsPerSecond);
+    slow.addSample(elapsedMs, bitsPerSecond);
+    totalBytes += bytes;
+  }
+
+  @Override
+  public long getBitrateEstimate() {
+    if (totalBytes < minTotalBytes) {
+      return BandwidthMeter.NO_ESTIMATE;
+    }
+    return (long) Math.min(fast.getEstimate(), slow.getEstimate());
+  }
+
+  /**
+   * An exponentially weighted moving average, in which samples are weighted by their duration.
+   */
+  private static final class Ewma {
+
+    private final double halfLifeMs;
+
+    private double estimate;
+    private double totalWeightMs;
+
+    public Ewma(int halfLifeMs) {
+      this.halfLifeMs = halfLifeMs;
+    }
+
+    public void addSample(long weightMs, double value) {
+      double alpha = Math.pow(0.5, weightMs / halfLifeMs);
+      estimate = value * (1 - alpha) + estimate * alpha;
+      totalWeightMs += weightMs;
+    }
+
+    public double getEstimate() {
+      // The average starts from zero, so it's biased towards zero until enough samples have been
+      // added. Dividing by the total weight of the samples removes the bias.
+      return estimate / (1 - Math.pow(0.5, totalWeightMs / halfLifeMs));
+    }
+
+  }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+/**
+ * A {@link BandwidthEstimator} that estimates the bandwidth as the harmonic mean of the throughput
+ * of the most recent transfers. The harmonic mean is dominated by the lowest samples, so a single
+ * fast transfer has little effect on the estimate, whereas a drop in bandwidth is followed
+ * quickly.
+ */
+public final class HarmonicMeanBandwidthEstimator implements BandwidthEstimator {
+
+  public static final int DEFAULT_SAMPLE_COUNT = 20;
+
+  private final double[] inverseBitrates;
+
+  private int nextSampleIndex;
+  private int sampleCount;
+
+  public HarmonicMeanBandwidthEstimator() {
+    this(DEFAULT_SAMPLE_COUNT);
+  }
+
+  /**
+   * @param maxSampleCount The number of most recent transfers over which the mean is taken.
+   */
+  public HarmonicMeanBandwidthEstimator(int maxSampleCount) {
+    inverseBitrates = new double[maxSampleCount];
+  }
+
+  @Override
+  public void addSample(long bytes, long timeToFirstByteMs, long elapsedMs) {
+    if (bytes == 0) {
+      return;
+    }
+    inverseBitrates[nextSampleIndex] = elapsedMs / (bytes * 8000d);
+    nextSampleIndex = (nextSampleIndex + 1) % inverseBitrates.length;
+    sampleCount = Math.min(sampleCount + 1, inverseBitrates.length);
+  }
+
+  @Override
+  public long getBitrateEstimate() {
+    if (sampleCount == 0) {
+      return BandwidthMeter.NO_ESTIMATE;
+    }
+    // The sum is recomputed rather than maintained incrementally, so that rounding errors don't
+    // accumulate.
+    double inverseBitrateSum = 0;
+    for (int i = 0; i < sampleCount; i++) {
+      inverseBitrateSum += inverseBitrates[i];
+    }
+    return (long) (sampleCount / inverseBitrateSum);
+  }
+
+}
@@ -0,0 +1,474 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import android.os.SystemClock;
+import android.util.Log;
+import com.google.android.exoplayer.util.Assertions;
+import com.google.android.exoplayer.util.Util;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.ProtocolException;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * A pool of persistent HTTP/1.1 connections, kept alive per host for reuse by
+ * {@link PooledHttpDataSource}s.
+ * <p>
+ * Reusing a connection avoids the TCP and TLS handshakes of a new one, which for short media
+ * segments can take longer than transferring the segment itself. Idle connections are kept for
+ * up to {@link #DEFAULT_KEEP_ALIVE_DURATION_MS}, and at most
+ * {@link #DEFAULT_MAX_IDLE_CONNECTIONS_PER_HOST} are kept per host. Connections can be opened
+ * ahead of time by {@link #warmUp(String, int)}, for example as soon as a manifest is parsed, so
+ * that the first segment requests find a connection ready.
+ * <p>
+ * HTTPS connections are made with an {@link SSLSocketFactory}, and the certificate presented by the
+ * server is checked against the host name by a {@link HostnameVerifier}. By default these are
+ * the same as used by {@link HttpsURLConnection}.
+ * <p>
+ * The pool connects to hosts directly. URLs for which the default {@link ProxySelector} selects a
+ * proxy aren't loaded through the pool: {@link PooledHttpDataSource} loads them with a
+ * {@link DefaultHttpDataSource} instead, and {@link #warmUp(String, int)} ignores them.
+ * <p>
+ * The pool counts how many connections it's asked for and how many of those it provides from its
+ * idle connections, so that its hit rate can be monitored.
+ */
+public final class HttpConnectionPool {
+
+  /**
+   * The default maximum duration for which a connection is kept idle, in milliseconds.
+   */
+  public static final int DEFAULT_KEEP_ALIVE_DURATION_MS = 5 * 60 * 1000; // Same as okhttp.
+  /**
+   * The default maximum number of idle connections kept for each host.
+   */
+  public static final int DEFAULT_MAX_IDLE_CONNECTIONS_PER_HOST = 5;
+
+  private static final String TAG = "HttpConnectionPool";
+
+  /* package */ final int connectTimeoutMillis;
+  /* package */ final int readTimeoutMillis;
+  private final int keepAliveDurationMs;
+  private final int maxIdleConnectionsPerHost;
+  private final SSLSocketFactory sslSocketFactory;
+  private final HostnameVerifier hostnameVerifier;
+  private final HashMap<String, ArrayDeque<Connection>> idleConnections;
+
+  private ExecutorService warmUpExecutorService;
+  private int requestCount;
+  private int hitCount;
+
+  public HttpConnectionPool() {
+    this(DefaultHttpDataSource.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+        DefaultHttpDataSource.DEFAULT_READ_TIMEOUT_MILLIS, DEFAULT_KEEP_ALIVE_DURATION_MS,
+        DEFAULT_MAX_IDLE_CONNECTIONS_PER_HOST);
+  }
+
+  /**
+   * @param connectTimeoutMillis The connection timeout, in milliseconds. A timeout of zero is
+   *     interpreted as an infinite timeout.
+   * @param readTimeoutMillis The read timeout, in milliseconds. A timeout of zero is interpreted
+   *     as an infinite timeout.
+   * @param keepAliveDurationMs The maximum duration for which a connection is kept idle, in
+   *     milliseconds.
+   * @param maxIdleConnectionsPerHost The maximum number of idle connections kept for each host.
+   */
+  public HttpConnectionPool(int connectTimeoutMillis, int readTimeoutMillis,
+      int keepAliveDurationMs, int maxIdleConnectionsPerHost) {
+    this(connectTimeoutMillis, readTimeoutMillis, keepAliveDurationMs, maxIdleConnectionsPerHost,
+        HttpsURLConnection.getDefaultSSLSocketFactory(),
+        HttpsURLConnection.getDefaultHostnameVerifier());
+  }
+
+  /**
+   * @param connectTimeoutMillis The connection timeout, in milliseconds. A timeout of zero is
+   *     interpreted as an infinite timeout.
+   * @param readTimeoutMillis The read timeout, in milliseconds. A timeout of zero is interpreted
+   *     as an infinite timeout.
+   * @param keepAliveDurationMs The maximum duration for which a connection is kept idle, in
+   *     milliseconds.
+   * @param maxIdleConnectionsPerHost The maximum number of idle connections kept for each host.
+   * @param sslSocketFactory The factory used to make HTTPS connections.
+   * @param hostnameVerifier The verifier used to check that the certificate presented by a server
+   *     is valid for the host name of an HTTPS connection.
+   */
+  public HttpConnectionPool(int connectTimeoutMillis, int readTimeoutMillis,
+      int keepAliveDurationMs, int maxIdleConnectionsPerHost, SSLSocketFactory sslSocketFactory,
+      HostnameVerifier hostnameVerifier) {
+    this.connectTimeoutMillis = connectTimeoutMillis;
+    this.readTimeoutMillis = readTimeoutMillis;
+    this.keepAliveDurationMs = keepAliveDurationMs;
+    this.maxIdleConnectionsPerHost = maxIdleConnectionsPerHost;
+    this.sslSocketFactory = Assertions.checkNotNull(sslSocketFactory);
+    this.hostnameVerifier = Assertions.checkNotNull(hostnameVerifier);
+    idleConnections = new HashMap<>();
+  }
+
+  /**
+   * Opens connections to the host of a URL in the background, until the pool holds at least the
+   * specified number of idle connections to it, or as many as it keeps per host if that's fewer.
+   * Does nothing if the URL is loaded through a proxy.
+   *
+   * @param url The URL, whose protocol must be http or https.
+   * @param connectionCount The number of idle connections to hold.
+   */
+  public synchronized void warmUp(final String url, int connectionCount) {
+    if (usesProxy(url)) {
+      return;
+    }
+    final int targetConnectionCount = Math.min(connectionCount, maxIdleConnectionsPerHost);
+    if (warmUpExecutorService == null) {
+      warmUpExecutorService = Util.newSingleThreadExecutor("HttpConnectionPool:WarmUp");
+    }
+    warmUpExecutorService.submit(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          URL parsedUrl = new URL(url);
+          String key = getKey(parsedUrl);
+          int idleConnectionCount = getIdleConnectionCount(key);
+          while (idleConnectionCount < targetConnectionCount
+              && !Thread.currentThread().isInterrupted()) {
+            release(open(parsedUrl, key), true);
+            int previousIdleConnectionCount = idleConnectionCount;
+            idleConnectionCount = getIdleConnectionCount(key);
+            if (idleConnectionCount <= previousIdleConnectionCount) {
+              // The pool was filled by connections released concurrently, so stop.
+              return;
+            }
+          }
+        } catch (IOException e) {
+          Log.w(TAG, "Failed to warm up connection to " + url, e);
+        }
+      }
+    });
+  }
+
+  /**
+   * Returns the number of connections the pool has been asked for.
+   */
+  public synchronized int getRequestCount() {
+    return requestCount;
+  }
+
+  /**
+   * Returns the number of connections that were provided from the pool's idle connections,
+   * rather than newly opened.
+   */
+  public synchronized int getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * Returns the fraction of requested connections that were provided from the pool's idle
+   * connections, or 0 if no connections have been requested.
+   */
+  public synchronized float getHitRate() {
+    return requestCount == 0 ? 0 : (float) hitCount / requestCount;
+  }
+
+  /**
+   * Returns the number of idle connections held by the pool.
+   */
+  public synchronized int getIdleConnectionCount() {
+    evictExpiredConnections();
+    int idleConnectionCount = 0;
+    for (ArrayDeque<Connection> hostConnections : idleConnections.values()) {
+      idleConnectionCount += hostConnections.size();
+    }
+    return idleConnectionCount;
+  }
+
+  /**
+   * Closes all idle connections, and stops any warm-up in progress.
+   */
+  public void evictAll() {
+    ExecutorService executorService;
+    ArrayDeque<Connection> connections = new ArrayDeque<>();
+    synchronized (this) {
+      executorService = warmUpExecutorService;
+      warmUpExecutorService = null;
+      for (ArrayDeque<Connection> hostConnections : idleConnections.values()) {
+        connections.addAll(hostConnections);
+      }
+      idleConnections.clear();
+    }
+    if (executorService != null) {
+      executorService.shutdownNow();
+    }
+    for (Connection connection : connections) {
+      connection.closeQuietly();
+    }
+  }
+
+  /**
+   * Gets a connection to the host of a URL, reusing an idle connection if one is available.
+   *
+   * @param url The URL.
+   * @return The connection.
+   * @throws IOException If a new connection couldn't be opened.
+   */
+  /* package */ Connection acquire(URL url) throws IOException {
+    String key = getKey(url);
+    Connection connection;
+    synchronized (this) {
+      requestCount++;
+      connection = pollIdleConnection(key);
+      if (connection != null) {
+        hitCount++;
+        return connection;
+      }
+    }
+    return open(url, key);
+  }
+
+  /**
+   * Opens a new connection to the host of a URL, bypassing the pool's idle connections.
+   *
+   * @param url The URL.
+   * @return The connection.
+   * @throws IOException If the connection couldn't be opened.
+   */
+  /* package */ Connection acquireNew(URL url) throws IOException {
+    return open(url, getKey(url));
+  }
+
+  /**
+   * Returns a connection to the pool, or closes it.
+   *
+   * @param connection The connection.
+   * @param reusable Whether the connection can be reused. If false, it's closed.
+   */
+  /* package */ void release(Connection connection, boolean reusable) {
+    if (reusable) {
+      synchronized (this) {
+        evictExpiredConnections();
+        ArrayDeque<Connection> hostConnections = idleConnections.get(connection.key);
+        if (hostConnections == null) {
+          hostConnections = new ArrayDeque<>();
+          idleConnections.put(connection.key, hostConnections);
+        }
+        if (hostConnections.size() < maxIdleConnectionsPerHost) {
+          connection.idleSinceMs = SystemClock.elapsedRealtime();
+          connection.reused = true;
+          hostConnections.addFirst(connection);
+          return;
+        }
+      }
+    }
+    connection.closeQuietly();
+  }
+
+  private synchronized int getIdleConnectionCount(String key) {
+    evictExpiredConnections();
+    ArrayDeque<Connection> hostConnections = idleConnections.get(key);
+    return hostConnections == null ? 0 : hostConnections.size();
+  }
+
+  private Connection pollIdleConnection(String key) {
+    evictExpiredConnections();
+    ArrayDeque<Connection> hostConnections = idleConnections.get(key);
+    // The most recently used connection is the least likely to have been closed by the server.
+    return hostConnections == null ? null : hostConnections.pollFirst();
+  }
+
+  private void evictExpiredConnections() {
+    long nowMs = SystemClock.elapsedRealtime();
+    for (ArrayDeque<Connection> hostConnections : idleConnections.values()) {
+      Iterator<Connection> iterator = hostConnections.descendingIterator();
+      while (iterator.hasNext()) {
+        Connection connection = iterator.next();
+        if (nowMs - connection.idleSinceMs < keepAliveDurationMs) {
+          break;
+        }
+        iterator.remove();
+        connection.closeQuietly();
+      }
+    }
+  }
+
+  private Connection open(URL url, String key) throws IOException {
+    boolean secure = "https".equals(url.getProtocol());
+    Socket socket = new Socket();
+    try {
+      socket.connect(new InetSocketAddress(url.getHost(), getPort(url)), connectTimeoutMillis);
+      socket.setSoTimeout(readTimeoutMillis);
+      socket.setTcpNoDelay(true);
+      if (secure) {
+        SSLSocket sslSocket = (SSLSocket) sslSocketFactory.createSocket(socket, url.getHost(),
+            getPort(url), true);
+        socket = sslSocket;
+        // An SSLSocket checks the certificate chain but not the host name, so check it here.
+        sslSocket.startHandshake();
+        if (!hostnameVerifier.verify(url.getHost(), sslSocket.getSession())) {
+          throw new SSLPeerUnverifiedException("Hostname " + url.getHost() + " not verified");
+        }
+      }
+      return new Connection(key, socket);
+    } catch (IOException e) {
+      socket.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Returns whether the default {@link ProxySelector} selects a proxy for a URL, in which case it
+   * shouldn't be loaded over a pooled connection.
+   *
+   * @param url The URL.
+   * @return Whether a proxy is selected for the URL.
+   */
+  /* package */ static boolean usesProxy(String url) {
+    ProxySelector proxySelector = ProxySelector.getDefault();
+    if (proxySelector == null) {
+      return false;
+    }
+    List<Proxy> proxies;
+    try {
+      proxies = proxySelector.select(new URI(url));
+    } catch (URISyntaxException | IllegalArgumentException e) {
+      // The URL will fail to load anyway.
+      return false;
+    }
+    for (Proxy proxy : proxies) {
+      if (proxy.type() != Proxy.Type.DIRECT) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the key under which connections to the host of a URL are pooled.
+   */
+  private static String getKey(URL url) throws MalformedURLException {
+    String protocol = url.getProtocol();
+    if (!"http".equals(protocol) && !"https".equals(protocol)) {
+      throw new MalformedURLException("Unsupported protocol: " + protocol);
+    }
+    return protocol + "://" + url.getHost() + ":" + getPort(url);
+  }
+
+  private static int getPort(URL url) {
+    return url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+  }
+
+  /**
+   * A connection to a host.
+   */
+  /* package */ static final class Connection {
+
+    private static final int MAX_LINE_LENGTH = 8 * 1024;
+
+    public final String key;
+    public final InputStream inputStream;
+    public final OutputStream outputStream;
+
+    /**
+     * Whether the connection has been used before, in which case the server may have closed it
+     * while it was idle.
+     */
+    public boolean reused;
+
+    private final Socket socket;
+
+    private long idleSinceMs;
+
+    private Connection(String key, Socket socket) throws IOException {
+      this.key = key;
+      this.socket = socket;
+      inputStream = new BufferedInputStream(socket.getInputStream());
+      outputStream = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    /**
+     * Waits until the first byte of a response can be read, without consuming it.
+     *
+     * @return Whether a byte can be read. False if the server closed the connection before sending
+     *     anything.
+     * @throws IOException If an error occurs reading from the connection.
+     */
+    public boolean awaitResponse() throws IOException {
+      inputStream.mark(1);
+      if (inputStream.read() == -1) {
+        return false;
+      }
+      inputStream.reset();
+      return true;
+    }
+
+    /**
+     * Reads a line terminated by CRLF or LF, without the terminator.
+     *
+     * @return The line.
+     * @throws EOFException If the end of the stream is reached before the end of the line.
+     * @throws ProtocolException If the line is longer than {@link #MAX_LINE_LENGTH}.
+     * @throws IOException If an error occurs reading from the connection.
+     */
+    public String readLine() throws IOException {
+      StringBuilder line = new StringBuilder();
+      while (true) {
+        int c = inputStream.read();
+        if (c == -1) {
+          throw new EOFException();
+        } else if (c == '\n') {
+          int length = line.length();
+          if (length > 0 && line.charAt(length - 1) == '\r') {
+            line.setLength(length - 1);
+          }
+          return line.toString();
+        } else if (line.length() == MAX_LINE_LENGTH) {
+          throw new ProtocolException("Line longer than " + MAX_LINE_LENGTH + " characters");
+        }
+        line.append((char) c);
+      }
+    }
+
+    /**
+     * Closes the connection, ignoring any errors.
+     */
+    public void closeQuietly() {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // Ignore.
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.FileDataSource.FileDataSourceException;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A local file {@link UriDataSource} that memory maps the file.
+ * <p>
+ * Reads copy data directly from the mapping, without a system call, and the mapped data can be
+ * read without copying it at all through {@link #readBuffer(int)}. The file is mapped in windows
+ * of up to {@link #MAX_MAPPING_LENGTH} bytes, to bound the address space used for large files. The
+ * file must not be truncated whilst it's being read, which makes this source suitable for immutable
+ * files such as those of a {@link com.google.android.exoplayer.upstream.cache.SimpleCache}.
+ */
+public final class MappedFileDataSource implements UriDataSource, ByteBufferDataSource {
+
+  /**
+   * The maximum number of bytes mapped at a time.
+   */
+  public static final int MAX_MAPPING_LENGTH = 8 * 1024 * 1024;
+
+  private final TransferListener listener;
+
+  private RandomAccessFile file;
+  private FileChannel channel;
+  private MappedByteBuffer mapping;
+  private int mappingPosition;
+  private long nextMappingPosition;
+  private String uriString;
+  private long bytesRemaining;
+  private boolean opened;
+
+  /**
+   * Constructs a new {@link DataSource} that retrieves data from a file.
+   */
+  public MappedFileDataSource() {
+    this(null);
+  }
+
+  /**
+   * Constructs a new {@link DataSource} that retrieves data from a file.
+   *
+   * @param listener An optional listener. Specify {@code null} for no listener.
+   */
+  public MappedFileDataSource(TransferListener listener) {
+    this.listener = listener;
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws FileDataSourceException {
+    try {
+      uriString = dataSpec.uri.toString();
+      file = new RandomAccessFile(dataSpec.uri.getPath(), "r");
+      channel = file.getChannel();
+      nextMappingPosition = dataSpec.position;
+      bytesRemaining = dataSpec.length == C.LENGTH_UNBOUNDED ? file.length() - dataSpec.position
+          : dataSpec.length;
+      if (bytesRemaining < 0) {
+        throw new EOFException();
+      }
+    } catch (IOException e) {
+      throw new FileDataSourceException(e);
+    }
+
+    opened = true;
+    if (listener != null) {
+      listener.onTransferStart();
+    }
+
+    return bytesRemaining;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws FileDataSourceException {
+    ByteBuffer data = readBuffer(readLength);
+    if (data == null) {
+      return C.RESULT_END_OF_INPUT;
+    }
+    int bytesRead = data.remaining();
+    data.get(buffer, offset, bytesRead);
+    return bytesRead;
+  }
+
+  @Override
+  public ByteBuffer readBuffer(int length) throws FileDataSourceException {
+    if (bytesRemaining == 0) {
+      return null;
+    }
+    if (mapping == null || mappingPosition == mapping.capacity()) {
+      int mappingLength = (int) Math.min(bytesRemaining, MAX_MAPPING_LENGTH);
+      try {
+        if (nextMappingPosition + mappingLength > channel.size()) {
+          // The file is shorter than expected. Accessing a mapping beyond the end of the file would
+          // crash the process rather than throw, so this must be checked upfront.
+          throw new EOFException();
+        }
+        mapping = channel.map(FileChannel.MapMode.READ_ONLY, nextMappingPosition, mappingLength);
+      } catch (IOException e) {
+        throw new FileDataSourceException(e);
+      }
+      mappingPosition = 0;
+      nextMappingPosition += mappingLength;
+    }
+    int bytesRead = Math.min(length, mapping.capacity() - mappingPosition);
+    // Reuse the mapping as the returned buffer, to avoid allocating a view for each read.
+    mapping.limit(mappingPosition + bytesRead);
+    mapping.position(mappingPosition);
+    mappingPosition += bytesRead;
+    bytesRemaining -= bytesRead;
+    if (listener != null) {
+      listener.onBytesTransferred(bytesRead);
+    }
+    return mapping;
+  }
+
+  @Override
+  public String getUri() {
+    return uriString;
+  }
+
+  @Override
+  public void close() throws FileDataSourceException {
+    uriString = null;
+    // The mapping is released when it's garbage collected.
+    mapping = null;
+    channel = null;
+    if (file != null) {
+      try {
+        file.close();
+      } catch (IOException e) {
+        throw new FileDataSourceException(e);
+      } finally {
+        file = null;
+        if (opened) {
+          opened = false;
+          if (listener != null) {
+            listener.onTransferEnd();
+          }
+        }
+      }
+    }
+  }
+
+}
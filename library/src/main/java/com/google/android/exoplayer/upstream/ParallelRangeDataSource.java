@@ -0,0 +1,431 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.util.Assertions;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * A {@link DataSource} that splits the data of a {@link DataSpec} into parts, and loads several
+ * parts at once with range requests over separate upstream {@link DataSource}s.
+ * <p>
+ * On a link with a high bandwidth-delay product, a single connection may be unable to use all of
+ * the available bandwidth, for example when loading a large
+ * {@link com.google.android.exoplayer.chunk.SingleSampleMediaChunk} or a progressive stream through
+ * {@link com.google.android.exoplayer.extractor.ExtractorSampleSource}. Loading parts over several
+ * connections at once can then increase throughput.
+ * <p>
+ * Each upstream source is used by its own I/O thread. The parts are loaded into a bounded ring of
+ * buffers, and are read back in order, so at most {@code partSize * bufferedPartCount} bytes are
+ * buffered. Data can be read from a part as soon as it's loaded, before the rest of the part. The
+ * buffers are allocated when data is opened that's loaded in parallel, and released by
+ * {@link #close()}.
+ * <p>
+ * Each I/O thread opens, reads from and closes its upstream source itself. {@link #close()} asks
+ * the I/O threads to stop, and waits for those that are reading to return from their current read
+ * and close their upstream sources. It doesn't wait for threads that are opening an upstream
+ * source, which may not return until the connection times out. They close the upstream source once
+ * it's opened, and the next call to {@link #open(DataSpec)} waits for them before using it again.
+ * <p>
+ * The number of parts loaded at once adapts to the measured throughput: it's increased while
+ * doing so increases the throughput by at least {@link #MIN_THROUGHPUT_GAIN}, and then decreased
+ * while doing so decreases the throughput by less than {@link #MIN_THROUGHPUT_GAIN}. If each of the
+ * upstream sources is added without the gain falling below that threshold, they're all kept in
+ * use. The number that's reached is kept for subsequent {@link DataSpec}s.
+ * <p>
+ * If the length of the data is unknown, or fits in a single part, the data is read directly from
+ * the first upstream source.
+ */
+public final class ParallelRangeDataSource implements DataSource {
+
+  /**
+   * The default size of each part, in bytes.
+   */
+  public static final int DEFAULT_PART_SIZE = 256 * 1024;
+  /**
+   * The default number of parts that can be buffered.
+   */
+  public static final int DEFAULT_BUFFERED_PART_COUNT = 8;
+  /**
+   * The relative change in throughput above which a change in the number of parts loaded at once
+   * is considered significant.
+   */
+  public static final float MIN_THROUGHPUT_GAIN = 0.1f;
+
+  private final DataSource[] upstreams;
+  private final int partSize;
+  private final int bufferedPartCount;
+  private final long[] bufferPartIndices;
+  private final int[] bufferLengths;
+
+  // Guarded by this.
+  private long partCount;
+  private long nextPartIndex;
+  private long readPartIndex;
+  private IOException upstreamException;
+  private boolean stopping;
+  private int connectionCount;
+  private int connectionCountChange;
+  private double previousThroughput;
+  private long measurementStartTimeNs;
+  private long measurementStartBytesLoaded;
+  private int measurementPartCount;
+  private long bytesLoaded;
+
+  // Written only by the consuming thread, whilst the I/O threads aren't running.
+  private byte[][] buffers;
+
+  // Accessed only by the consuming thread.
+  private DataSpec dataSpec;
+  private long length;
+  private boolean parallel;
+  private IoThread[] ioThreads;
+  private IoThread[] stoppingIoThreads;
+  private int readPosition;
+
+  /**
+   * @param upstreams The upstream {@link DataSource}s, one for each part that may be loaded at
+   *     once. Each must support range requests.
+   */
+  public ParallelRangeDataSource(DataSource... upstreams) {
+    this(upstreams, DEFAULT_PART_SIZE, DEFAULT_BUFFERED_PART_COUNT);
+  }
+
+  /**
+   * @param upstreams The upstream {@link DataSource}s, one for each part that may be loaded at
+   *     once. Each must support range requests.
+   * @param partSize The size of each part, in bytes.
+   * @param bufferedPartCount The number of parts that can be buffered. Must be at least the number
+   *     of upstream sources.
+   */
+  public ParallelRangeDataSource(DataSource[] upstreams, int partSize, int bufferedPartCount) {
+    Assertions.checkArgument(upstreams.length > 0 && partSize > 0
+        && bufferedPartCount >= upstreams.length);
+    this.upstreams = upstreams;
+    this.partSize = partSize;
+    this.bufferedPartCount = bufferedPartCount;
+    bufferPartIndices = new long[bufferedPartCount];
+    bufferLengths = new int[bufferedPartCount];
+    connectionCount = Math.min(2, upstreams.length);
+    connectionCountChange = 1;
+  }
+
+  /**
+   * Returns the number of parts currently loaded at once.
+   */
+  public synchronized int getConnectionCount() {
+    return connectionCount;
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    Assertions.checkState(ioThreads == null);
+    if (stoppingIoThreads != null) {
+      // Wait for any I/O threads that were opening an upstream source when the source was closed.
+      for (IoThread ioThread : stoppingIoThreads) {
+        try {
+          ioThread.join();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+      }
+      stoppingIoThreads = null;
+    }
+    this.dataSpec = dataSpec;
+    // Open the first part on the calling thread, so that errors opening the data are thrown here,
+    // and so that the length is known if it wasn't specified.
+    long firstPartLength = dataSpec.length == C.LENGTH_UNBOUNDED ? C.LENGTH_UNBOUNDED
+        : Math.min(partSize, dataSpec.length);
+    long openedLength = upstreams[0].open(createPartDataSpec(0, firstPartLength));
+    length = dataSpec.length != C.LENGTH_UNBOUNDED ? dataSpec.length : openedLength;
+    parallel = length != C.LENGTH_UNBOUNDED && length > partSize;
+    if (!parallel) {
+      return length;
+    }
+
+    if (buffers == null) {
+      buffers = new byte[bufferedPartCount][partSize];
+    }
+    synchronized (this) {
+      partCount = (length + partSize - 1) / partSize;
+      readPartIndex = 0;
+      upstreamException = null;
+      stopping = false;
+      for (int i = 0; i < bufferedPartCount; i++) {
+        bufferPartIndices[i] = -1;
+      }
+      // The first part is loaded by the first I/O thread, from the upstream source opened above.
+      bufferPartIndices[0] = 0;
+      bufferLengths[0] = 0;
+      nextPartIndex = 1;
+      startMeasurement();
+    }
+    readPosition = 0;
+    ioThreads = new IoThread[upstreams.length];
+    for (int i = 0; i < upstreams.length; i++) {
+      ioThreads[i] = new IoThread(i);
+      ioThreads[i].start();
+    }
+    return length;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws IOException {
+    if (!parallel) {
+      return upstreams[0].read(buffer, offset, readLength);
+    }
+    if (readLength == 0) {
+      return 0;
+    }
+    int bufferIndex;
+    int bufferLength;
+    synchronized (this) {
+      if (readPartIndex == partCount) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      bufferIndex = (int) (readPartIndex % bufferedPartCount);
+      while (upstreamException == null && (bufferPartIndices[bufferIndex] != readPartIndex
+          || bufferLengths[bufferIndex] == readPosition)) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+      }
+      if (upstreamException != null) {
+        throw upstreamException;
+      }
+      bufferLength = bufferLengths[bufferIndex];
+    }
+    int bytesRead = Math.min(readLength, bufferLength - readPosition);
+    System.arraycopy(buffers[bufferIndex], readPosition, buffer, offset, bytesRead);
+    readPosition += bytesRead;
+    if (readPosition == getPartLength(readPartIndex)) {
+      readPosition = 0;
+      synchronized (this) {
+        // Free the buffer for a later part.
+        readPartIndex++;
+        notifyAll();
+      }
+    }
+    return bytesRead;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (ioThreads == null) {
+      upstreams[0].close();
+      return;
+    }
+    synchronized (this) {
+      stopping = true;
+      notifyAll();
+    }
+    boolean interrupted = false;
+    for (IoThread ioThread : ioThreads) {
+      interrupted |= ioThread.joinUnlessOpening();
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    stoppingIoThreads = ioThreads;
+    ioThreads = null;
+    buffers = null;
+  }
+
+  private DataSpec createPartDataSpec(long partIndex, long partLength) {
+    long partOffset = partIndex * partSize;
+    return new DataSpec(dataSpec.uri, dataSpec.postBody,
+        dataSpec.absoluteStreamPosition + partOffset, dataSpec.position + partOffset, partLength,
+        dataSpec.key, dataSpec.flags);
+  }
+
+  private long getPartLength(long partIndex) {
+    return Math.min(partSize, length - partIndex * partSize);
+  }
+
+  private void startMeasurement() {
+    measurementStartTimeNs = System.nanoTime();
+    measurementStartBytesLoaded = bytesLoaded;
+    measurementPartCount = 0;
+  }
+
+  /**
+   * Called when a part has been loaded. Once twice as many parts as there are connections have
+   * been loaded since the number of connections was last changed, the throughput is measured and
+   * the number is changed again.
+   */
+  private void onPartLoaded() {
+    if (connectionCountChange == 0 || ++measurementPartCount < 2 * connectionCount) {
+      return;
+    }
+    long elapsedNs = System.nanoTime() - measurementStartTimeNs;
+    if (elapsedNs <= 0) {
+      return;
+    }
+    double throughput = (double) (bytesLoaded - measurementStartBytesLoaded) / elapsedNs;
+    if (previousThroughput != 0) {
+      if (connectionCountChange > 0
+          ? throughput < previousThroughput * (1 + MIN_THROUGHPUT_GAIN)
+          : throughput < previousThroughput * (1 - MIN_THROUGHPUT_GAIN)) {
+        // Adding a connection didn't increase the throughput enough, or removing one decreased it
+        // too much, so change the number in the opposite direction.
+        connectionCountChange = -connectionCountChange;
+      }
+    }
+    previousThroughput = throughput;
+    if (connectionCountChange < 0 && connectionCount == 1) {
+      connectionCountChange = 1;
+    }
+    if (connectionCountChange > 0 && connectionCount == upstreams.length) {
+      // Each connection that was added helped, so keep them all.
+      connectionCountChange = 0;
+    } else {
+      connectionCount += connectionCountChange;
+    }
+    startMeasurement();
+    notifyAll();
+  }
+
+  private final class IoThread extends Thread {
+
+    private final int index;
+    private final DataSource upstream;
+
+    // Guarded by ParallelRangeDataSource.this.
+    private boolean opening;
+
+    public IoThread(int index) {
+      super("ParallelRangeDataSource:Io");
+      this.index = index;
+      upstream = upstreams[index];
+    }
+
+    /**
+     * Waits for the thread to stop, unless it's opening the upstream source. Called by the
+     * consuming thread once stopping, after which the thread doesn't start opening the upstream
+     * source again.
+     *
+     * @return Whether the calling thread was interrupted whilst waiting.
+     */
+    public boolean joinUnlessOpening() {
+      boolean interrupted = false;
+      while (true) {
+        synchronized (ParallelRangeDataSource.this) {
+          if (opening) {
+            return interrupted;
+          }
+        }
+        try {
+          join();
+          return interrupted;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    }
+
+    @Override
+    public void run() {
+      // The first upstream source was opened for the first part by open().
+      boolean opened = index == 0;
+      long partIndex = 0;
+      try {
+        while (true) {
+          if (!opened) {
+            synchronized (ParallelRangeDataSource.this) {
+              while (!stopping && nextPartIndex < partCount && (index >= connectionCount
+                  || nextPartIndex - readPartIndex == bufferedPartCount)) {
+                ParallelRangeDataSource.this.wait();
+              }
+              if (stopping || nextPartIndex == partCount) {
+                return;
+              }
+              partIndex = nextPartIndex++;
+              int bufferIndex = (int) (partIndex % bufferedPartCount);
+              bufferPartIndices[bufferIndex] = partIndex;
+              bufferLengths[bufferIndex] = 0;
+              opening = true;
+            }
+            opened = true;
+            upstream.open(createPartDataSpec(partIndex, getPartLength(partIndex)));
+            synchronized (ParallelRangeDataSource.this) {
+              opening = false;
+              if (stopping) {
+                throw new InterruptedIOException();
+              }
+            }
+          }
+          loadPart(upstream, partIndex);
+          opened = false;
+          upstream.close();
+        }
+      } catch (IOException e) {
+        synchronized (ParallelRangeDataSource.this) {
+          if (!stopping && upstreamException == null) {
+            upstreamException = e;
+            ParallelRangeDataSource.this.notifyAll();
+          }
+        }
+      } catch (InterruptedException e) {
+        // The I/O threads aren't interrupted, but stop if they are.
+      } finally {
+        synchronized (ParallelRangeDataSource.this) {
+          opening = false;
+        }
+        if (opened) {
+          try {
+            upstream.close();
+          } catch (IOException e) {
+            // Ignore.
+          }
+        }
+      }
+    }
+
+    private void loadPart(DataSource upstream, long partIndex) throws IOException {
+      int bufferIndex = (int) (partIndex % bufferedPartCount);
+      byte[] buffer = buffers[bufferIndex];
+      int partLength = (int) getPartLength(partIndex);
+      int bufferLength = 0;
+      while (bufferLength < partLength) {
+        int bytesRead = upstream.read(buffer, bufferLength, partLength - bufferLength);
+        if (bytesRead == C.RESULT_END_OF_INPUT) {
+          throw new EOFException();
+        }
+        bufferLength += bytesRead;
+        synchronized (ParallelRangeDataSource.this) {
+          if (stopping) {
+            throw new InterruptedIOException();
+          }
+          bufferLengths[bufferIndex] = bufferLength;
+          bytesLoaded += bytesRead;
+          ParallelRangeDataSource.this.notifyAll();
+        }
+      }
+      synchronized (ParallelRangeDataSource.this) {
+        onPartLoaded();
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,861 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.HttpConnectionPool.Connection;
+import com.google.android.exoplayer.util.Assertions;
+import com.google.android.exoplayer.util.Predicate;
+import com.google.android.exoplayer.util.Util;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.NoRouteToHostException;
+import java.net.ProtocolException;
+import java.net.SocketException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link HttpDataSource} that speaks HTTP/1.1 over connections from a
+ * {@link HttpConnectionPool}, so that connections are kept alive and reused between requests
+ * rather than left to the platform's connection handling.
+ * <p>
+ * A connection is returned to the pool when the source is closed, provided the response was read
+ * to its end and the server allows the connection to be kept alive. A response that's closed
+ * before its end is drained if only a few bytes remain, and otherwise the connection is closed. If
+ * a pooled connection turns out to have been closed by the server while it was idle, that is if
+ * it's closed or reset before any of the response arrives, a GET request is retried once on a new
+ * connection. Requests with a body and requests that time out aren't retried.
+ * <p>
+ * If the {@link DataSpec} that will be opened next is known, it can be passed to
+ * {@link #setNextDataSpec(DataSpec)}. Its request is then pipelined: it's sent on the same
+ * connection straight after the request for the {@link DataSpec} being opened, so that its
+ * response follows without a round trip. If a different {@link DataSpec} is opened next, the
+ * pipelined response is discarded along with its connection.
+ * <p>
+ * URLs for which the default {@link java.net.ProxySelector} selects a proxy are loaded by a
+ * {@link DefaultHttpDataSource}, which connects through the proxy, rather than over a pooled
+ * connection.
+ * <p>
+ * Responses are always requested without content coding, so {@link DataSpec#FLAG_ALLOW_GZIP} has
+ * no effect.
+ */
+public final class PooledHttpDataSource implements HttpDataSource, PrefetchingDataSource {
+
+  private static final int MAX_REDIRECTS = 20; // Same limit as okhttp.
+  private static final int MAX_DRAIN_BYTES = 8 * 1024;
+  private static final String TAG = "PooledHttpDataSource";
+  private static final Pattern CONTENT_RANGE_HEADER =
+      Pattern.compile("^bytes (\\d+)-(\\d+)/(\\d+)$");
+
+  private final String userAgent;
+  private final Predicate<String> contentTypePredicate;
+  private final TransferListener listener;
+  private final HttpConnectionPool connectionPool;
+  private final boolean allowCrossProtocolRedirects;
+  private final HashMap<String, String> requestProperties;
+  private final byte[] skipBuffer;
+
+  private DefaultHttpDataSource proxiedDataSource;
+  private boolean proxied;
+
+  private DataSpec dataSpec;
+  private DataSpec nextDataSpec;
+  private Connection connection;
+  private DataSpec pipelinedDataSpec;
+  private URL url;
+  private Map<String, List<String>> responseHeaders;
+  private boolean keepAlive;
+  private boolean opened;
+
+  private boolean chunked;
+  private long bodyBytesRemaining;
+  private boolean bodyEnded;
+
+  private long bytesToSkip;
+  private long bytesToRead;
+
+  private long bytesSkipped;
+  private long bytesRead;
+
+  // Guarded by this.
+  private int responseWaitCount;
+  private long totalResponseWaitMs;
+
+  /**
+   * @param userAgent The User-Agent string that should be used.
+   * @param contentTypePredicate An optional {@link Predicate}. If a content type is
+   *     rejected by the predicate then a {@link HttpDataSource.InvalidContentTypeException} is
+   *     thrown from {@link #open(DataSpec)}.
+   * @param listener An optional listener.
+   * @param connectionPool The pool from which connections are obtained.
+   */
+  public PooledHttpDataSource(String userAgent, Predicate<String> contentTypePredicate,
+      TransferListener listener, HttpConnectionPool connectionPool) {
+    this(userAgent, contentTypePredicate, listener, connectionPool, false);
+  }
+
+  /**
+   * @param userAgent The User-Agent string that should be used.
+   * @param contentTypePredicate An optional {@link Predicate}. If a content type is
+   *     rejected by the predicate then a {@link HttpDataSource.InvalidContentTypeException} is
+   *     thrown from {@link #open(DataSpec)}.
+   * @param listener An optional listener.
+   * @param connectionPool The pool from which connections are obtained.
+   * @param allowCrossProtocolRedirects Whether cross-protocol redirects (i.e. redirects from HTTP
+   *     to HTTPS and vice versa) are enabled.
+   */
+  public PooledHttpDataSource(String userAgent, Predicate<String> contentTypePredicate,
+      TransferListener listener, HttpConnectionPool connectionPool,
+      boolean allowCrossProtocolRedirects) {
+    this.userAgent = Assertions.checkNotEmpty(userAgent);
+    this.contentTypePredicate = contentTypePredicate;
+    this.listener = listener;
+    this.connectionPool = Assertions.checkNotNull(connectionPool);
+    this.allowCrossProtocolRedirects = allowCrossProtocolRedirects;
+    requestProperties = new HashMap<>();
+    skipBuffer = new byte[4096];
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * The request for the {@link DataSpec} is pipelined. Requests with a body aren't pipelined.
+   */
+  @Override
+  public void setNextDataSpec(DataSpec nextDataSpec) {
+    this.nextDataSpec = nextDataSpec;
+  }
+
+  /**
+   * Returns the mean time for which {@link #open(DataSpec)} has waited for a response, in
+   * milliseconds, or -1 if nothing has been opened.
+   * <p>
+   * When {@link DataSpec}s are loaded one after another, this is the gap between them during which
+   * the link carries no data. It's reduced by {@link #setNextDataSpec(DataSpec)}, since the
+   * response to a pipelined request follows the previous response without a round trip.
+   */
+  public synchronized long getMeanIdleGapMs() {
+    return responseWaitCount == 0 ? -1 : totalResponseWaitMs / responseWaitCount;
+  }
+
+  @Override
+  public String getUri() {
+    if (proxied) {
+      return proxiedDataSource.getUri();
+    }
+    return url == null ? null : url.toString();
+  }
+
+  @Override
+  public Map<String, List<String>> getResponseHeaders() {
+    if (proxied) {
+      return proxiedDataSource.getResponseHeaders();
+    }
+    return responseHeaders;
+  }
+
+  @Override
+  public void setRequestProperty(String name, String value) {
+    Assertions.checkNotNull(name);
+    Assertions.checkNotNull(value);
+    synchronized (requestProperties) {
+      requestProperties.put(name, value);
+    }
+  }
+
+  @Override
+  public void clearRequestProperty(String name) {
+    Assertions.checkNotNull(name);
+    synchronized (requestProperties) {
+      requestProperties.remove(name);
+    }
+  }
+
+  @Override
+  public void clearAllRequestProperties() {
+    synchronized (requestProperties) {
+      requestProperties.clear();
+    }
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws HttpDataSourceException {
+    this.dataSpec = dataSpec;
+    this.bytesRead = 0;
+    this.bytesSkipped = 0;
+    DataSpec nextDataSpec = this.nextDataSpec;
+    this.nextDataSpec = null;
+
+    proxied = HttpConnectionPool.usesProxy(dataSpec.uri.toString());
+    if (proxied) {
+      // Discard any connection on which a pipelined response is pending.
+      releaseConnection(false);
+      return openProxiedDataSource(dataSpec);
+    }
+
+    int responseCode;
+    try {
+      long requestTimeMs = SystemClock.elapsedRealtime();
+      responseCode = makeRequest(dataSpec, nextDataSpec);
+      onResponseWait(SystemClock.elapsedRealtime() - requestTimeMs);
+    } catch (IOException e) {
+      releaseConnection(false);
+      throw new HttpDataSourceException("Unable to connect to " + dataSpec.uri.toString(), e,
+          dataSpec, HttpDataSourceException.TYPE_OPEN);
+    }
+
+    // Check for a valid response code.
+    if (responseCode < 200 || responseCode > 299) {
+      Map<String, List<String>> headers = responseHeaders;
+      releaseConnection(false);
+      throw new InvalidResponseCodeException(responseCode, headers, dataSpec);
+    }
+
+    // Check for a valid content type.
+    String contentType = getResponseHeader("Content-Type");
+    if (contentTypePredicate != null && !contentTypePredicate.evaluate(contentType)) {
+      releaseConnection(false);
+      throw new InvalidContentTypeException(contentType, dataSpec);
+    }
+
+    // If we requested a range starting from a non-zero position and received a 200 rather than a
+    // 206, then the server does not support partial requests. We'll need to manually skip to the
+    // requested position.
+    bytesToSkip = responseCode == 200 && dataSpec.position != 0 ? dataSpec.position : 0;
+
+    // Determine the length of the data to be read, after skipping.
+    long contentLength = getContentLength();
+    bytesToRead = dataSpec.length != C.LENGTH_UNBOUNDED ? dataSpec.length
+        : contentLength != C.LENGTH_UNBOUNDED ? contentLength - bytesToSkip
+        : C.LENGTH_UNBOUNDED;
+
+    opened = true;
+    if (listener != null) {
+      listener.onTransferStart();
+    }
+
+    return bytesToRead;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws HttpDataSourceException {
+    if (proxied) {
+      return proxiedDataSource.read(buffer, offset, readLength);
+    }
+    try {
+      skipInternal();
+      return readInternal(buffer, offset, readLength);
+    } catch (IOException e) {
+      throw new HttpDataSourceException(e, dataSpec, HttpDataSourceException.TYPE_READ);
+    }
+  }
+
+  @Override
+  public void close() throws HttpDataSourceException {
+    if (proxied) {
+      proxiedDataSource.close();
+      return;
+    }
+    try {
+      if (connection != null) {
+        boolean reusable = keepAlive && maybeDrainBody();
+        if (reusable && pipelinedDataSpec != null) {
+          // Keep the connection, on which the response to the pipelined request will follow.
+          url = null;
+        } else {
+          releaseConnection(reusable);
+        }
+      }
+    } finally {
+      if (opened) {
+        opened = false;
+        if (listener != null) {
+          listener.onTransferEnd();
+        }
+      }
+    }
+  }
+
+  /**
+   * Opens a {@link DataSpec} that's loaded through a proxy, with a {@link DefaultHttpDataSource}
+   * configured in the same way as this source.
+   */
+  private long openProxiedDataSource(DataSpec dataSpec) throws HttpDataSourceException {
+    if (proxiedDataSource == null) {
+      proxiedDataSource = new DefaultHttpDataSource(userAgent, contentTypePredicate, listener,
+          connectionPool.connectTimeoutMillis, connectionPool.readTimeoutMillis,
+          allowCrossProtocolRedirects);
+    }
+    proxiedDataSource.clearAllRequestProperties();
+    synchronized (requestProperties) {
+      for (Map.Entry<String, String> property : requestProperties.entrySet()) {
+        proxiedDataSource.setRequestProperty(property.getKey(), property.getValue());
+      }
+    }
+    return proxiedDataSource.open(dataSpec);
+  }
+
+  /**
+   * Returns the number of bytes that are still to be read for the current {@link DataSpec}.
+   * <p>
+   * If the total length of the data being read is known, then this length minus {@code bytesRead()}
+   * is returned. If the total length is unknown, {@link C#LENGTH_UNBOUNDED} is returned.
+   *
+   * @return The remaining length, or {@link C#LENGTH_UNBOUNDED}.
+   */
+  private long bytesRemaining() {
+    return bytesToRead == C.LENGTH_UNBOUNDED ? bytesToRead : bytesToRead - bytesRead;
+  }
+
+  /**
+   * Makes the request for a {@link DataSpec}, following redirects where permitted, and reads the
+   * response headers.
+   *
+   * @param dataSpec The {@link DataSpec} to request.
+   * @param nextDataSpec The {@link DataSpec} whose request should be pipelined, or null.
+   * @return The response code.
+   */
+  private int makeRequest(DataSpec dataSpec, DataSpec nextDataSpec) throws IOException {
+    URL url = new URL(dataSpec.uri.toString());
+    byte[] postBody = dataSpec.postBody;
+    long position = dataSpec.position;
+    long length = dataSpec.length;
+
+    if (!isPipelinable(url, nextDataSpec)) {
+      nextDataSpec = null;
+    }
+    if (connection != null && pipelinedDataSpec != null) {
+      // A response to a pipelined request is pending on the current connection.
+      if (isSameRequest(dataSpec, pipelinedDataSpec) && tryReadPipelinedResponse(nextDataSpec)) {
+        this.url = url;
+        return getResponseCodeFollowingRedirects(url, postBody, position, length);
+      }
+      // The pipelined response isn't wanted, or the connection was lost before it arrived.
+      releaseConnection(false);
+    }
+
+    connection = connectionPool.acquire(url);
+    this.url = url;
+    if (!tryRequest(url, postBody, position, length, nextDataSpec)) {
+      // The connection was closed by the server while idle in the pool. Retry on a new one.
+      releaseConnection(false);
+      connection = connectionPool.acquireNew(url);
+      if (!tryRequest(url, postBody, position, length, nextDataSpec)) {
+        throw new EOFException();
+      }
+    }
+    return getResponseCodeFollowingRedirects(url, postBody, position, length);
+  }
+
+  /**
+   * Follows the response on the current connection through any redirects.
+   *
+   * @return The response code of the final response.
+   */
+  private int getResponseCodeFollowingRedirects(URL url, byte[] postBody, long position,
+      long length) throws IOException {
+    int redirectCount = 0;
+    while (true) {
+      int responseCode = readResponseCode();
+      if (!(responseCode == 300 || responseCode == 301 || responseCode == 302
+          || responseCode == 303
+          || (postBody == null && (responseCode == 307 || responseCode == 308)))) {
+        return responseCode;
+      }
+      if (redirectCount++ == MAX_REDIRECTS) {
+        throw new NoRouteToHostException("Too many redirects: " + redirectCount);
+      }
+      // For 300, 301, 302, and 303 POST requests follow the redirect and are transformed into
+      // GET requests. For 307 and 308 POST requests are not redirected.
+      postBody = null;
+      URL redirectUrl = handleRedirect(url, getResponseHeader("Location"));
+      // A pipelined request is for the original host, so it can't be kept.
+      releaseConnection(pipelinedDataSpec == null && keepAlive && maybeDrainBody());
+      url = redirectUrl;
+      connection = connectionPool.acquire(url);
+      this.url = url;
+      if (!tryRequest(url, postBody, position, length, null)) {
+        releaseConnection(false);
+        connection = connectionPool.acquireNew(url);
+        if (!tryRequest(url, postBody, position, length, null)) {
+          throw new EOFException();
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads the headers of the pipelined response pending on the current connection, first
+   * pipelining the request for the next {@link DataSpec} behind it.
+   *
+   * @param nextDataSpec The {@link DataSpec} whose request should be pipelined, or null.
+   * @return Whether the response headers were read. False if the connection was found to have
+   *     been closed by the server, in which case the request should be made on a new connection.
+   * @throws IOException If reading the response failed, or the response was malformed.
+   */
+  private boolean tryReadPipelinedResponse(DataSpec nextDataSpec) throws IOException {
+    try {
+      if (nextDataSpec != null) {
+        writeRequest(new URL(nextDataSpec.uri.toString()), null, nextDataSpec.position,
+            nextDataSpec.length);
+        connection.outputStream.flush();
+      }
+    } catch (SocketException e) {
+      return false;
+    }
+    pipelinedDataSpec = nextDataSpec;
+    // Pipelined requests are GET requests, so they can be retried.
+    return tryReadResponseHeaders(true);
+  }
+
+  /**
+   * Writes a request, and any pipelined request, on the current connection and reads the response
+   * headers.
+   *
+   * @return Whether the response headers were read. False if the request is a GET request on a
+   *     reused connection that was found to have been closed by the server, in which case the
+   *     request should be retried on a new connection.
+   * @throws IOException If the request failed and can't be retried.
+   */
+  private boolean tryRequest(URL url, byte[] postBody, long position, long length,
+      DataSpec nextDataSpec) throws IOException {
+    // The server may have processed a request with a body before closing the connection, so only
+    // requests without one are retried.
+    boolean retryable = connection.reused && postBody == null;
+    try {
+      writeRequest(url, postBody, position, length);
+      if (nextDataSpec != null) {
+        writeRequest(new URL(nextDataSpec.uri.toString()), null, nextDataSpec.position,
+            nextDataSpec.length);
+      }
+      connection.outputStream.flush();
+    } catch (SocketException e) {
+      if (retryable) {
+        return false;
+      }
+      throw e;
+    }
+    pipelinedDataSpec = nextDataSpec;
+    return tryReadResponseHeaders(retryable);
+  }
+
+  /**
+   * Reads the status line and headers of a response from the current connection.
+   *
+   * @param retryable Whether the request can be retried if the connection was closed by the
+   *     server before any of the response arrived.
+   * @return Whether the response headers were read. False if the request can be retried and the
+   *     connection was closed by the server before any of the response arrived.
+   * @throws IOException If reading failed and the request can't be retried, or the response was
+   *     malformed.
+   */
+  private boolean tryReadResponseHeaders(boolean retryable) throws IOException {
+    boolean responseArrived;
+    try {
+      responseArrived = connection.awaitResponse();
+    } catch (SocketException e) {
+      // The connection was reset. A timeout isn't a SocketException, so it's never retried.
+      if (retryable) {
+        return false;
+      }
+      throw e;
+    }
+    if (!responseArrived) {
+      if (retryable) {
+        return false;
+      }
+      throw new EOFException();
+    }
+    readResponseHeaders(connection.readLine());
+    return true;
+  }
+
+  private void writeRequest(URL url, byte[] postBody, long position, long length)
+      throws IOException {
+    StringBuilder request = new StringBuilder();
+    request.append(postBody != null ? "POST " : "GET ").append(getRequestTarget(url))
+        .append(" HTTP/1.1\r\n");
+    request.append("Host: ").append(url.getHost());
+    if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+      request.append(':').append(url.getPort());
+    }
+    request.append("\r\n");
+    synchronized (requestProperties) {
+      for (Map.Entry<String, String> property : requestProperties.entrySet()) {
+        request.append(property.getKey()).append(": ").append(property.getValue()).append("\r\n");
+      }
+    }
+    if (!(position == 0 && length == C.LENGTH_UNBOUNDED)) {
+      request.append("Range: bytes=").append(position).append('-');
+      if (length != C.LENGTH_UNBOUNDED) {
+        request.append(position + length - 1);
+      }
+      request.append("\r\n");
+    }
+    request.append("User-Agent: ").append(userAgent).append("\r\n");
+    request.append("Accept-Encoding: identity\r\n");
+    request.append("Connection: keep-alive\r\n");
+    if (postBody != null) {
+      request.append("Content-Length: ").append(postBody.length).append("\r\n");
+    }
+    request.append("\r\n");
+    OutputStream outputStream = connection.outputStream;
+    // Headers are encoded as ISO-8859-1, as they are decoded by Connection.readLine().
+    outputStream.write(request.toString().getBytes("ISO-8859-1"));
+    if (postBody != null) {
+      outputStream.write(postBody);
+    }
+  }
+
+  /**
+   * Reads the response headers following a status line, and determines how the response body is
+   * delimited.
+   */
+  private void readResponseHeaders(String statusLine) throws IOException {
+    while (true) {
+      Map<String, List<String>> headers = new LinkedHashMap<>();
+      headers.put(null, Collections.singletonList(statusLine));
+      String line;
+      while (!(line = connection.readLine()).isEmpty()) {
+        int colonIndex = line.indexOf(':');
+        if (colonIndex == -1) {
+          throw new ProtocolException("Malformed header: " + line);
+        }
+        String name = line.substring(0, colonIndex).trim();
+        String value = line.substring(colonIndex + 1).trim();
+        List<String> values = headers.get(name);
+        if (values == null) {
+          values = new ArrayList<>();
+          headers.put(name, values);
+        }
+        values.add(value);
+      }
+      for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+        header.setValue(Collections.unmodifiableList(header.getValue()));
+      }
+      responseHeaders = Collections.unmodifiableMap(headers);
+      if (readResponseCode() != 100) {
+        break;
+      }
+      // Skip the interim response that precedes the final one.
+      statusLine = connection.readLine();
+    }
+
+    int responseCode = readResponseCode();
+    String connectionHeader = getResponseHeader("Connection");
+    connectionHeader = connectionHeader == null ? "" : Util.toLowerInvariant(connectionHeader);
+    keepAlive = statusLine.startsWith("HTTP/1.1")
+        ? !connectionHeader.contains("close") : connectionHeader.contains("keep-alive");
+    String transferEncoding = getResponseHeader("Transfer-Encoding");
+    chunked = transferEncoding != null
+        && Util.toLowerInvariant(transferEncoding).contains("chunked");
+    bodyEnded = false;
+    if (responseCode == 204 || responseCode == 304) {
+      bodyEnded = true;
+    } else if (chunked) {
+      bodyBytesRemaining = 0;
+    } else {
+      String contentLengthHeader = getResponseHeader("Content-Length");
+      bodyBytesRemaining = C.LENGTH_UNBOUNDED;
+      if (!TextUtils.isEmpty(contentLengthHeader)) {
+        try {
+          bodyBytesRemaining = Long.parseLong(contentLengthHeader);
+        } catch (NumberFormatException e) {
+          throw new ProtocolException("Unexpected Content-Length [" + contentLengthHeader + "]");
+        }
+      }
+      if (bodyBytesRemaining == C.LENGTH_UNBOUNDED) {
+        // The body is delimited by the end of the connection.
+        keepAlive = false;
+      }
+      bodyEnded = bodyBytesRemaining == 0;
+    }
+  }
+
+  private int readResponseCode() throws ProtocolException {
+    String statusLine = responseHeaders.get(null).get(0);
+    String[] parts = statusLine.split(" ", 3);
+    if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+      throw new ProtocolException("Malformed status line: " + statusLine);
+    }
+    try {
+      return Integer.parseInt(parts[1]);
+    } catch (NumberFormatException e) {
+      throw new ProtocolException("Malformed status line: " + statusLine);
+    }
+  }
+
+  /**
+   * Reads up to {@code length} bytes of the response body.
+   *
+   * @return The number of bytes read, or -1 if the end of the body has been reached.
+   */
+  private int readBody(byte[] buffer, int offset, int length) throws IOException {
+    if (bodyEnded) {
+      return -1;
+    }
+    if (chunked && bodyBytesRemaining == 0) {
+      if (!readChunkHeader()) {
+        bodyEnded = true;
+        return -1;
+      }
+    }
+    if (bodyBytesRemaining != C.LENGTH_UNBOUNDED) {
+      length = (int) Math.min(length, bodyBytesRemaining);
+    }
+    int read = connection.inputStream.read(buffer, offset, length);
+    if (read == -1) {
+      if (bodyBytesRemaining != C.LENGTH_UNBOUNDED) {
+        // The server closed the connection having not sent the whole body.
+        throw new EOFException();
+      }
+      bodyEnded = true;
+      return -1;
+    }
+    if (bodyBytesRemaining != C.LENGTH_UNBOUNDED) {
+      bodyBytesRemaining -= read;
+      if (bodyBytesRemaining == 0 && chunked) {
+        // Consume the CRLF that terminates the chunk data.
+        connection.readLine();
+      } else if (bodyBytesRemaining == 0) {
+        bodyEnded = true;
+      }
+    }
+    return read;
+  }
+
+  /**
+   * Reads the header of the next chunk of a chunked body.
+   *
+   * @return Whether a chunk follows. False if the last chunk has been reached, in which case the
+   *     trailer is consumed too.
+   */
+  private boolean readChunkHeader() throws IOException {
+    String line = connection.readLine();
+    int extensionIndex = line.indexOf(';');
+    if (extensionIndex != -1) {
+      line = line.substring(0, extensionIndex);
+    }
+    try {
+      bodyBytesRemaining = Long.parseLong(line.trim(), 16);
+    } catch (NumberFormatException e) {
+      throw new ProtocolException("Malformed chunk size: " + line);
+    }
+    if (bodyBytesRemaining == 0) {
+      while (!connection.readLine().isEmpty()) {
+        // Skip the trailer.
+      }
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Reads the remainder of the response body, if it's known to be short.
+   *
+   * @return Whether the body has been read to its end, leaving the connection ready for another
+   *     response.
+   */
+  private boolean maybeDrainBody() {
+    if (bodyEnded) {
+      return true;
+    }
+    if (chunked || bodyBytesRemaining > MAX_DRAIN_BYTES) {
+      return false;
+    }
+    try {
+      while (readBody(skipBuffer, 0, skipBuffer.length) != -1) {
+        // Do nothing.
+      }
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns the current connection to the pool, or closes it.
+   */
+  private void releaseConnection(boolean reusable) {
+    if (connection != null) {
+      connectionPool.release(connection, reusable);
+      connection = null;
+    }
+    pipelinedDataSpec = null;
+  }
+
+  private synchronized void onResponseWait(long responseWaitMs) {
+    responseWaitCount++;
+    totalResponseWaitMs += responseWaitMs;
+  }
+
+  private String getResponseHeader(String name) {
+    if (responseHeaders == null) {
+      return null;
+    }
+    for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+      if (name.equalsIgnoreCase(header.getKey())) {
+        List<String> values = header.getValue();
+        return values.get(values.size() - 1);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Attempts to extract the length of the content from the response headers.
+   *
+   * @return The extracted length, or {@link C#LENGTH_UNBOUNDED}.
+   */
+  private long getContentLength() {
+    long contentLength = chunked ? C.LENGTH_UNBOUNDED : bodyBytesRemaining;
+    String contentRangeHeader = getResponseHeader("Content-Range");
+    if (!TextUtils.isEmpty(contentRangeHeader)) {
+      Matcher matcher = CONTENT_RANGE_HEADER.matcher(contentRangeHeader);
+      if (matcher.find()) {
+        try {
+          long contentLengthFromRange =
+              Long.parseLong(matcher.group(2)) - Long.parseLong(matcher.group(1)) + 1;
+          if (contentLength < 0) {
+            contentLength = contentLengthFromRange;
+          } else if (contentLength != contentLengthFromRange) {
+            Log.w(TAG, "Inconsistent headers [" + contentLength + "] [" + contentRangeHeader
+                + "]");
+            contentLength = Math.max(contentLength, contentLengthFromRange);
+          }
+        } catch (NumberFormatException e) {
+          Log.e(TAG, "Unexpected Content-Range [" + contentRangeHeader + "]");
+        }
+      }
+    }
+    return contentLength;
+  }
+
+  /**
+   * Handles a redirect.
+   *
+   * @param originalUrl The original URL.
+   * @param location The Location header in the response.
+   * @return The next URL.
+   * @throws IOException If redirection isn't possible.
+   */
+  private URL handleRedirect(URL originalUrl, String location) throws IOException {
+    if (location == null) {
+      throw new ProtocolException("Null location redirect");
+    }
+    URL url = new URL(originalUrl, location);
+    String protocol = url.getProtocol();
+    if (!"https".equals(protocol) && !"http".equals(protocol)) {
+      throw new ProtocolException("Unsupported protocol redirect: " + protocol);
+    }
+    if (!allowCrossProtocolRedirects && !protocol.equals(originalUrl.getProtocol())) {
+      throw new ProtocolException("Disallowed cross-protocol redirect ("
+          + originalUrl.getProtocol() + " to " + protocol + ")");
+    }
+    return url;
+  }
+
+  /**
+   * Skips any bytes that need skipping. Else does nothing.
+   *
+   * @throws InterruptedIOException If the thread is interrupted during the operation.
+   * @throws EOFException If the end of the input stream is reached before the bytes are skipped.
+   */
+  private void skipInternal() throws IOException {
+    while (bytesSkipped != bytesToSkip) {
+      int readLength = (int) Math.min(bytesToSkip - bytesSkipped, skipBuffer.length);
+      int read = readBody(skipBuffer, 0, readLength);
+      if (Thread.interrupted()) {
+        throw new InterruptedIOException();
+      }
+      if (read == -1) {
+        throw new EOFException();
+      }
+      bytesSkipped += read;
+      if (listener != null) {
+        listener.onBytesTransferred(read);
+      }
+    }
+  }
+
+  /**
+   * Reads up to {@code length} bytes of data and stores them into {@code buffer}, starting at
+   * index {@code offset}.
+   *
+   * @return The number of bytes read, or {@link C#RESULT_END_OF_INPUT} if the end of the opened
+   *     range is reached.
+   */
+  private int readInternal(byte[] buffer, int offset, int readLength) throws IOException {
+    if (readLength == 0) {
+      return 0;
+    }
+    long bytesRemaining = bytesRemaining();
+    if (bytesRemaining == 0) {
+      return C.RESULT_END_OF_INPUT;
+    } else if (bytesRemaining != C.LENGTH_UNBOUNDED) {
+      readLength = (int) Math.min(readLength, bytesRemaining);
+    }
+
+    int read = readBody(buffer, offset, readLength);
+    if (read == -1) {
+      if (bytesToRead != C.LENGTH_UNBOUNDED && bytesToRead != bytesRead) {
+        // The server closed the connection having not sent sufficient data.
+        throw new EOFException();
+      }
+      return C.RESULT_END_OF_INPUT;
+    }
+
+    bytesRead += read;
+    if (listener != null) {
+      listener.onBytesTransferred(read);
+    }
+    return read;
+  }
+
+  private static String getRequestTarget(URL url) {
+    String path = url.getFile();
+    return TextUtils.isEmpty(path) ? "/" : path;
+  }
+
+  private static boolean isPipelinable(URL url, DataSpec nextDataSpec) throws IOException {
+    if (nextDataSpec == null || nextDataSpec.postBody != null) {
+      return false;
+    }
+    URL nextUrl = new URL(nextDataSpec.uri.toString());
+    return url.getProtocol().equals(nextUrl.getProtocol())
+        && url.getHost().equals(nextUrl.getHost()) && url.getPort() == nextUrl.getPort();
+  }
+
+  private static boolean isSameRequest(DataSpec dataSpec, DataSpec pipelinedDataSpec) {
+    return dataSpec.postBody == null && dataSpec.uri.equals(pipelinedDataSpec.uri)
+        && dataSpec.position == pipelinedDataSpec.position
+        && dataSpec.length == pipelinedDataSpec.length;
+  }
+
+}
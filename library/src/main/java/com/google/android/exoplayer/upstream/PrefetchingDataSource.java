@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+/**
+ * A {@link DataSource} that can start requesting the data of the {@link DataSpec} it's expected to
+ * open next while it's still reading the current one.
+ */
+public interface PrefetchingDataSource extends DataSource {
+
+  /**
+   * Sets the {@link DataSpec} that's expected to be opened after the next call to
+   * {@link #open(DataSpec)}. The prediction applies to the next call to {@link #open(DataSpec)}
+   * only. If a different {@link DataSpec} is opened after it, any data requested for the
+   * prediction is discarded.
+   *
+   * @param nextDataSpec The {@link DataSpec} expected to be opened next, or null if it's not
+   *     known.
+   */
+  void setNextDataSpec(DataSpec nextDataSpec);
+
+}
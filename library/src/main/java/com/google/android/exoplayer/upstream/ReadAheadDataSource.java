@@ -0,0 +1,322 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.util.Assertions;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * A {@link DataSource} that reads ahead from an upstream {@link DataSource} on a dedicated I/O
+ * thread, so that reading from the network and consuming the data happen in parallel.
+ * <p>
+ * Whilst the source is open, the I/O thread fills a bounded ring of buffers and the thread calling
+ * {@link #read(byte[], int, int)} consumes them. When the ring is full the I/O thread stops reading
+ * from the upstream source, so a consumer that stops reading (for example because an
+ * {@link Allocator} has reached its buffering limit) also stops the I/O.
+ * <p>
+ * Wrapping the {@link DataSource} passed to
+ * {@link com.google.android.exoplayer.extractor.ExtractorSampleSource} in an instance of this
+ * class decouples network reads from extraction, which otherwise happen on the same loading thread.
+ * The throughput of each stage can be obtained from {@link #getBytesLoaded()} and
+ * {@link #getLoadDurationUs()}, and from {@link #getBytesConsumed()} and
+ * {@link #getConsumeDurationUs()}.
+ * <p>
+ * Once opened, the upstream source is used only by the I/O thread, which also closes it.
+ * {@link #close()} asks the I/O thread to stop and waits for it to do so. Since each read from the
+ * upstream source is for at most the remainder of a single buffer, the I/O thread stops as soon as
+ * its current read returns, which for a {@link HttpDataSource} is bounded by its read timeout.
+ */
+public final class ReadAheadDataSource implements DataSource {
+
+  /**
+   * The default size of each buffer, in bytes.
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * The default number of buffers.
+   */
+  public static final int DEFAULT_BUFFER_COUNT = 8;
+
+  private final DataSource upstream;
+  private final byte[][] buffers;
+  private final int[] bufferLengths;
+
+  // Guarded by this.
+  private int readBufferIndex;
+  private int writeBufferIndex;
+  private boolean upstreamEnded;
+  private IOException upstreamException;
+  private boolean stopping;
+  private boolean consumerWaiting;
+  private IOException closeException;
+
+  // Accessed only by the consuming thread.
+  private IoThread ioThread;
+  private int readBufferPosition;
+  private long lastReadTimeNs;
+
+  private volatile long bytesLoaded;
+  private volatile long loadDurationNs;
+  private volatile long bytesConsumed;
+  private volatile long consumeDurationNs;
+
+  /**
+   * @param upstream The upstream {@link DataSource}.
+   */
+  public ReadAheadDataSource(DataSource upstream) {
+    this(upstream, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_COUNT);
+  }
+
+  /**
+   * @param upstream The upstream {@link DataSource}.
+   * @param bufferSize The size of each buffer, in bytes.
+   * @param bufferCount The number of buffers. The I/O thread reads at most
+   *     {@code bufferSize * bufferCount} bytes ahead of the consumer.
+   */
+  public ReadAheadDataSource(DataSource upstream, int bufferSize, int bufferCount) {
+    Assertions.checkArgument(bufferSize > 0 && bufferCount > 0);
+    this.upstream = Assertions.checkNotNull(upstream);
+    buffers = new byte[bufferCount][bufferSize];
+    bufferLengths = new int[bufferCount];
+  }
+
+  /**
+   * Returns the total number of bytes read from the upstream source by the I/O thread.
+   */
+  public long getBytesLoaded() {
+    return bytesLoaded;
+  }
+
+  /**
+   * Returns the total time spent by the I/O thread reading from the upstream source, in
+   * microseconds. Time during which the I/O thread is blocked because the ring is full is excluded.
+   */
+  public long getLoadDurationUs() {
+    return loadDurationNs / 1000;
+  }
+
+  /**
+   * Returns the total number of bytes read from this source.
+   */
+  public long getBytesConsumed() {
+    return bytesConsumed;
+  }
+
+  /**
+   * Returns the total time spent by the consumer between successive reads from this source, in
+   * microseconds. Time spent waiting for the I/O thread is excluded, so for a consumer that reads
+   * continuously this is the time taken to process the data that's been read.
+   */
+  public long getConsumeDurationUs() {
+    return consumeDurationNs / 1000;
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    Assertions.checkState(ioThread == null);
+    long length = upstream.open(dataSpec);
+    synchronized (this) {
+      readBufferIndex = 0;
+      writeBufferIndex = 0;
+      upstreamEnded = false;
+      upstreamException = null;
+      stopping = false;
+      consumerWaiting = false;
+      closeException = null;
+    }
+    readBufferPosition = 0;
+    lastReadTimeNs = 0;
+    ioThread = new IoThread();
+    ioThread.start();
+    return length;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws IOException {
+    if (readLength == 0) {
+      return 0;
+    }
+    long startTimeNs = System.nanoTime();
+    if (lastReadTimeNs != 0) {
+      consumeDurationNs += startTimeNs - lastReadTimeNs;
+    }
+    int bufferIndex;
+    synchronized (this) {
+      while (readBufferIndex == writeBufferIndex && !upstreamEnded && upstreamException == null) {
+        consumerWaiting = true;
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        } finally {
+          consumerWaiting = false;
+        }
+      }
+      if (readBufferIndex == writeBufferIndex) {
+        // All of the data read before the upstream source ended or failed has been consumed.
+        if (upstreamException != null) {
+          throw upstreamException;
+        }
+        return C.RESULT_END_OF_INPUT;
+      }
+      bufferIndex = readBufferIndex % buffers.length;
+    }
+    int bytesRead = Math.min(readLength, bufferLengths[bufferIndex] - readBufferPosition);
+    System.arraycopy(buffers[bufferIndex], readBufferPosition, buffer, offset, bytesRead);
+    readBufferPosition += bytesRead;
+    if (readBufferPosition == bufferLengths[bufferIndex]) {
+      readBufferPosition = 0;
+      synchronized (this) {
+        readBufferIndex++;
+        notifyAll();
+      }
+    }
+    bytesConsumed += bytesRead;
+    lastReadTimeNs = System.nanoTime();
+    return bytesRead;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (ioThread == null) {
+      upstream.close();
+      return;
+    }
+    IOException exception;
+    synchronized (this) {
+      stopping = true;
+      notifyAll();
+    }
+    // The I/O thread closes the upstream source once its current read, if any, has returned.
+    boolean interrupted = false;
+    while (ioThread.isAlive()) {
+      try {
+        ioThread.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    ioThread = null;
+    synchronized (this) {
+      exception = closeException;
+    }
+    if (exception != null) {
+      throw exception;
+    }
+  }
+
+  private final class IoThread extends Thread {
+
+    public IoThread() {
+      super("ReadAheadDataSource:Io");
+    }
+
+    @Override
+    public void run() {
+      try {
+        readUntilStoppedOrEnded();
+      } finally {
+        IOException exception = null;
+        try {
+          upstream.close();
+        } catch (IOException e) {
+          exception = e;
+        }
+        synchronized (ReadAheadDataSource.this) {
+          closeException = exception;
+        }
+      }
+    }
+
+    private void readUntilStoppedOrEnded() {
+      while (true) {
+        int bufferIndex;
+        synchronized (ReadAheadDataSource.this) {
+          while (!stopping && writeBufferIndex - readBufferIndex == buffers.length) {
+            try {
+              ReadAheadDataSource.this.wait();
+            } catch (InterruptedException e) {
+              // Ignore. The thread stops only when stopping is set.
+            }
+          }
+          if (stopping) {
+            return;
+          }
+          bufferIndex = writeBufferIndex % buffers.length;
+        }
+        if (!fillBuffer(bufferIndex)) {
+          return;
+        }
+      }
+    }
+
+    /**
+     * Reads from the upstream source into a buffer, publishing it when it's full or when the
+     * consumer is waiting for data.
+     *
+     * @return Whether the I/O thread should continue.
+     */
+    private boolean fillBuffer(int bufferIndex) {
+      byte[] buffer = buffers[bufferIndex];
+      int bufferLength = 0;
+      while (true) {
+        int bytesRead;
+        IOException exception = null;
+        long startTimeNs = System.nanoTime();
+        try {
+          bytesRead = upstream.read(buffer, bufferLength, buffer.length - bufferLength);
+        } catch (IOException e) {
+          bytesRead = 0;
+          exception = e;
+        }
+        loadDurationNs += System.nanoTime() - startTimeNs;
+        if (bytesRead > 0) {
+          bytesLoaded += bytesRead;
+          bufferLength += bytesRead;
+        }
+        synchronized (ReadAheadDataSource.this) {
+          if (stopping) {
+            return false;
+          }
+          boolean ended = exception != null || bytesRead == C.RESULT_END_OF_INPUT;
+          boolean publish = bufferLength > 0
+              && (ended || bufferLength == buffer.length || consumerWaiting);
+          if (publish) {
+            bufferLengths[bufferIndex] = bufferLength;
+            writeBufferIndex++;
+          }
+          if (ended) {
+            upstreamException = exception;
+            upstreamEnded = exception == null;
+          }
+          if (publish || ended) {
+            ReadAheadDataSource.this.notifyAll();
+            return !ended;
+          }
+        }
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.util.Assertions;
+import com.google.android.exoplayer.util.Util;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link Allocator} that carves {@link Allocation}s out of large slabs, and which can be used by
+ * several loading threads and the playback thread without contention.
+ * <p>
+ * Available allocations are held in a lock-free stack, so {@link #allocate()} and
+ * {@link #release(Allocation)} don't lock unless a new slab is required, or unless a thread is
+ * blocked in {@link #blockWhileTotalBytesAllocatedExceeds(int)}. The stack is linked through
+ * arrays of indices held by each slab, so pushing and popping allocations doesn't allocate.
+ * <p>
+ * Slabs are only discarded by {@link #trim(int)} when none of their allocations are in use. Memory
+ * is therefore held in a small number of long lived arrays, rather than in one array per
+ * allocation that becomes garbage whenever the allocator is trimmed.
+ */
+public final class SlabAllocator implements Allocator {
+
+  /**
+   * The default number of allocations in each slab.
+   */
+  public static final int DEFAULT_SLAB_ALLOCATION_COUNT = 32;
+
+  private static final int NO_INDEX = -1;
+  private static final long EMPTY_STACK = NO_INDEX & 0xFFFFFFFFL;
+
+  private final int individualAllocationSize;
+  private final int slabAllocationCount;
+  private final AtomicInteger allocatedCount;
+  /**
+   * The top of the stack of available allocations. The low 32 bits hold the index of the top
+   * allocation, or {@link #NO_INDEX}, and the high 32 bits hold a counter that's incremented by
+   * each push and pop to prevent ABA problems.
+   */
+  private final AtomicLong stackTop;
+  private final Object lock;
+
+  /**
+   * The slabs, indexed such that the allocation with index {@code i} is allocation
+   * {@code i % slabAllocationCount} of slab {@code i / slabAllocationCount}. Discarded slabs leave
+   * null entries, so that indices of allocations remain valid. Only replaced whilst holding
+   * {@link #lock}.
+   */
+  private volatile Slab[] slabs;
+  private volatile int waitingThreadCount;
+
+  /**
+   * @param individualAllocationSize The length of each individual allocation.
+   */
+  public SlabAllocator(int individualAllocationSize) {
+    this(individualAllocationSize, DEFAULT_SLAB_ALLOCATION_COUNT);
+  }
+
+  /**
+   * @param individualAllocationSize The length of each individual allocation.
+   * @param slabAllocationCount The number of allocations in each slab.
+   */
+  public SlabAllocator(int individualAllocationSize, int slabAllocationCount) {
+    Assertions.checkArgument(individualAllocationSize > 0);
+    Assertions.checkArgument(slabAllocationCount > 0);
+    Assertions.checkArgument(
+        (long) individualAllocationSize * slabAllocationCount <= Integer.MAX_VALUE);
+    this.individualAllocationSize = individualAllocationSize;
+    this.slabAllocationCount = slabAllocationCount;
+    allocatedCount = new AtomicInteger();
+    stackTop = new AtomicLong(EMPTY_STACK);
+    lock = new Object();
+    slabs = new Slab[0];
+  }
+
+  @Override
+  public Allocation allocate() {
+    Allocation allocation = pop();
+    if (allocation == null) {
+      synchronized (lock) {
+        allocation = pop();
+        if (allocation == null) {
+          allocation = addSlab();
+        }
+      }
+    }
+    allocatedCount.incrementAndGet();
+    return allocation;
+  }
+
+  @Override
+  public void release(Allocation allocation) {
+    int index = getIndex(allocation);
+    push(index, index);
+    allocatedCount.decrementAndGet();
+    maybeNotifyWaitingThreads();
+  }
+
+  @Override
+  public void release(Allocation[] allocations) {
+    if (allocations.length == 0) {
+      return;
+    }
+    // Link the allocations together, so that they can be pushed at once.
+    int firstIndex = getIndex(allocations[0]);
+    int lastIndex = firstIndex;
+    for (int i = 1; i < allocations.length; i++) {
+      int index = getIndex(allocations[i]);
+      setNextIndex(lastIndex, index);
+      lastIndex = index;
+    }
+    push(firstIndex, lastIndex);
+    allocatedCount.addAndGet(-allocations.length);
+    maybeNotifyWaitingThreads();
+  }
+
+  @Override
+  public void trim(int targetSize) {
+    synchronized (lock) {
+      int targetSlabCount = Util.ceilDivide(Util.ceilDivide(targetSize, individualAllocationSize),
+          slabAllocationCount);
+      Slab[] slabs = this.slabs;
+      // Take all of the available allocations, and count those of each slab.
+      long top;
+      do {
+        top = stackTop.get();
+      } while (!stackTop.compareAndSet(top, pack(NO_INDEX, top)));
+      int[] availableCounts = new int[slabs.length];
+      int slabCount = 0;
+      for (int index = (int) top; index != NO_INDEX; index = getNextIndex(slabs, index)) {
+        availableCounts[index / slabAllocationCount]++;
+      }
+      for (int i = 0; i < slabs.length; i++) {
+        if (slabs[i] != null && availableCounts[i] < slabAllocationCount) {
+          // Some of the slab's allocations are in use, so it must be retained.
+          slabCount++;
+        }
+      }
+      // Discard unused slabs beyond the target.
+      Slab[] newSlabs = Arrays.copyOf(slabs, slabs.length);
+      for (int i = 0; i < slabs.length; i++) {
+        if (slabs[i] != null && availableCounts[i] == slabAllocationCount) {
+          if (slabCount < targetSlabCount) {
+            slabCount++;
+          } else {
+            newSlabs[i] = null;
+          }
+        }
+      }
+      this.slabs = newSlabs;
+      // Return the available allocations of the retained slabs.
+      int firstIndex = NO_INDEX;
+      int lastIndex = NO_INDEX;
+      for (int index = (int) top; index != NO_INDEX;) {
+        int nextIndex = getNextIndex(slabs, index);
+        if (newSlabs[index / slabAllocationCount] != null) {
+          if (firstIndex == NO_INDEX) {
+            firstIndex = index;
+          } else {
+            setNextIndex(lastIndex, index);
+          }
+          lastIndex = index;
+        }
+        index = nextIndex;
+      }
+      if (firstIndex != NO_INDEX) {
+        push(firstIndex, lastIndex);
+      }
+    }
+  }
+
+  @Override
+  public int getTotalBytesAllocated() {
+    return allocatedCount.get() * individualAllocationSize;
+  }
+
+  @Override
+  public void blockWhileTotalBytesAllocatedExceeds(int limit) throws InterruptedException {
+    synchronized (lock) {
+      waitingThreadCount++;
+      try {
+        while (getTotalBytesAllocated() > limit) {
+          lock.wait();
+        }
+      } finally {
+        waitingThreadCount--;
+      }
+    }
+  }
+
+  @Override
+  public int getIndividualAllocationLength() {
+    return individualAllocationSize;
+  }
+
+  /**
+   * Pops an allocation from the stack of available allocations.
+   *
+   * @return The allocation, or null if none are available.
+   */
+  private Allocation pop() {
+    while (true) {
+      long top = stackTop.get();
+      int index = (int) top;
+      if (index == NO_INDEX) {
+        return null;
+      }
+      // The slabs must be read after the top of the stack, so that they include the slab of any
+      // index that's been pushed.
+      Slab[] slabs = this.slabs;
+      int slabIndex = index / slabAllocationCount;
+      Slab slab = slabIndex < slabs.length ? slabs[slabIndex] : null;
+      if (slab == null) {
+        // The stack was modified by trim(int) after its top was read.
+        continue;
+      }
+      int allocationIndex = index % slabAllocationCount;
+      if (stackTop.compareAndSet(top, pack(slab.nextIndices[allocationIndex], top))) {
+        return slab.allocations[allocationIndex];
+      }
+    }
+  }
+
+  /**
+   * Pushes a chain of allocations linked by {@link #setNextIndex(int, int)} onto the stack of
+   * available allocations.
+   */
+  private void push(int firstIndex, int lastIndex) {
+    long top;
+    do {
+      top = stackTop.get();
+      setNextIndex(lastIndex, (int) top);
+    } while (!stackTop.compareAndSet(top, pack(firstIndex, top)));
+  }
+
+  /**
+   * Adds a slab, pushing all but one of its allocations onto the stack of available allocations.
+   * Must be called whilst holding {@link #lock}.
+   *
+   * @return The allocation that wasn't pushed.
+   */
+  private Allocation addSlab() {
+    Slab[] slabs = this.slabs;
+    int slabIndex = 0;
+    while (slabIndex < slabs.length && slabs[slabIndex] != null) {
+      slabIndex++;
+    }
+    Slab[] newSlabs = Arrays.copyOf(slabs, Math.max(slabs.length, slabIndex + 1));
+    int firstIndex = slabIndex * slabAllocationCount;
+    Slab slab = new Slab(individualAllocationSize, slabAllocationCount, firstIndex);
+    newSlabs[slabIndex] = slab;
+    this.slabs = newSlabs;
+    if (slabAllocationCount > 1) {
+      for (int i = 1; i < slabAllocationCount - 1; i++) {
+        slab.nextIndices[i] = firstIndex + i + 1;
+      }
+      push(firstIndex + 1, firstIndex + slabAllocationCount - 1);
+    }
+    return slab.allocations[0];
+  }
+
+  private int getIndex(Allocation allocation) {
+    int index = allocation.allocatorIndex;
+    Slab[] slabs = this.slabs;
+    int slabIndex = index / slabAllocationCount;
+    if (index < 0 || slabIndex >= slabs.length || slabs[slabIndex] == null
+        || slabs[slabIndex].allocations[index % slabAllocationCount] != allocation) {
+      // The allocation didn't originate from this allocator.
+      throw new IllegalArgumentException();
+    }
+    return index;
+  }
+
+  private int getNextIndex(Slab[] slabs, int index) {
+    return slabs[index / slabAllocationCount].nextIndices[index % slabAllocationCount];
+  }
+
+  private void setNextIndex(int index, int nextIndex) {
+    slabs[index / slabAllocationCount].nextIndices[index % slabAllocationCount] = nextIndex;
+  }
+
+  private void maybeNotifyWaitingThreads() {
+    if (waitingThreadCount > 0) {
+      synchronized (lock) {
+        lock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Returns the value of the top of the stack with the given index, which replaces the given
+   * value.
+   */
+  private static long pack(int index, long previousTop) {
+    return (((previousTop >>> 32) + 1) << 32) | (index & 0xFFFFFFFFL);
+  }
+
+  private static final class Slab {
+
+    public final Allocation[] allocations;
+    public final int[] nextIndices;
+
+    public Slab(int individualAllocationSize, int allocationCount, int firstIndex) {
+      byte[] data = new byte[individualAllocationSize * allocationCount];
+      allocations = new Allocation[allocationCount];
+      for (int i = 0; i < allocationCount; i++) {
+        allocations[i] = new Allocation(data, i * individualAllocationSize, firstIndex + i);
+      }
+      nextIndices = new int[allocationCount];
+    }
+
+  }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+/**
+ * A {@link BandwidthEstimator} that separates the time to first byte of each transfer from the
+ * time taken to transfer its data.
+ * <p>
+ * The throughput of the data, excluding the time to first byte, is estimated by a wrapped
+ * estimator. Averages of the time to first byte and of the number of bytes transferred are kept
+ * alongside, and the bandwidth is estimated as the effective bitrate of an average transfer: the
+ * average number of bytes divided by the average time to first byte plus the time to transfer
+ * them at the estimated throughput. A change in latency is therefore not mistaken for a change in
+ * throughput, and vice versa.
+ */
+public final class TimeToFirstByteBandwidthEstimator implements BandwidthEstimator {
+
+  /**
+   * The default weight of each transfer in the averages of the time to first byte and of the
+   * number of bytes transferred.
+   */
+  public static final float DEFAULT_AVERAGE_WEIGHT = 0.2f;
+
+  private final BandwidthEstimator throughputEstimator;
+  private final float averageWeight;
+
+  private double averageTimeToFirstByteMs;
+  private double averageBytes;
+  private boolean hasSamples;
+
+  /**
+   * @param throughputEstimator Estimates the throughput of transfers, excluding their time to first
+   *     byte.
+   */
+  public TimeToFirstByteBandwidthEstimator(BandwidthEstimator throughputEstimator) {
+    this(throughputEstimator, DEFAULT_AVERAGE_WEIGHT);
+  }
+
+  /**
+   * @param throughputEstimator Estimates the throughput of transfers, excluding their time to first
+   *     byte.
+   * @param averageWeight The weight of each transfer in the averages of the time to first byte and
+   *     of the number of bytes transferred, from 0 (exclusive) to 1.
+   */
+  public TimeToFirstByteBandwidthEstimator(BandwidthEstimator throughputEstimator,
+      float averageWeight) {
+    this.throughputEstimator = throughputEstimator;
+    this.averageWeight = averageWeight;
+  }
+
+  @Override
+  public void addSample(long bytes, long timeToFirstByteMs, long elapsedMs) {
+    long transferMs = Math.max(1, elapsedMs - timeToFirstByteMs);
+    throughputEstimator.addSample(bytes, 0, transferMs);
+    if (hasSamples) {
+      averageTimeToFirstByteMs += (timeToFirstByteMs - averageTimeToFirstByteMs) * averageWeight;
+      averageBytes += (bytes - averageBytes) * averageWeight;
+    } else {
+      averageTimeToFirstByteMs = timeToFirstByteMs;
+      averageBytes = bytes;
+      hasSamples = true;
+    }
+  }
+
+  @Override
+  public long getBitrateEstimate() {
+    long throughputEstimate = throughputEstimator.getBitrateEstimate();
+    if (throughputEstimate == BandwidthMeter.NO_ESTIMATE || throughputEstimate == 0) {
+      return throughputEstimate;
+    }
+    double averageBits = averageBytes * 8;
+    double averageTransferMs = averageBits * 1000 / throughputEstimate;
+    return (long) (averageBits * 1000 / (averageTimeToFirstByteMs + averageTransferMs));
+  }
+
+}
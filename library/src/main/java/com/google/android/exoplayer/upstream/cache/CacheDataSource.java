@@ -18,21 +18,28 @@ package com.google.android.exoplayer.upstream.cache;
 import android.net.Uri;
 import android.util.Log;
 import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.ByteBufferDataSource;
 import com.google.android.exoplayer.upstream.DataSink;
 import com.google.android.exoplayer.upstream.DataSource;
 import com.google.android.exoplayer.upstream.DataSpec;
 import com.google.android.exoplayer.upstream.FileDataSource;
+import com.google.android.exoplayer.upstream.MappedFileDataSource;
 import com.google.android.exoplayer.upstream.TeeDataSource;
 import com.google.android.exoplayer.upstream.cache.Cache.CacheException;
 import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
 
 /**
  * A {@link DataSource} that reads and writes a {@link Cache}. Requests are fulfilled from the cache
  * when possible. When data is not cached it is requested from an upstream {@link DataSource} and
  * written into the cache.
+ * <p>
+ * If the {@link DataSource} used to read the cache is a {@link ByteBufferDataSource}, such as a
+ * {@link MappedFileDataSource}, cached data can be read without copying it through
+ * {@link #readBuffer(int)}.
  */
-public final class CacheDataSource implements DataSource {
+public final class CacheDataSource implements ByteBufferDataSource {
 
   /**
    * Interface definition for a callback to be notified of {@link CacheDataSource} events.
@@ -86,8 +93,19 @@ public final class CacheDataSource implements DataSource {
    */
   public CacheDataSource(Cache cache, DataSource upstream, boolean blockOnCache,
       boolean ignoreCacheOnError, long maxCacheFileSize) {
-    this(cache, upstream, new FileDataSource(), new CacheDataSink(cache, maxCacheFileSize),
-        blockOnCache, ignoreCacheOnError, null);
+    this(cache, upstream, blockOnCache, ignoreCacheOnError, maxCacheFileSize, false);
+  }
+
+  /**
+   * Constructs an instance with default {@link DataSource} and {@link DataSink} instances for
+   * reading and writing the cache. The sink is configured to fragment data such that no single
+   * cache file is greater than maxCacheFileSize bytes. If {@code memoryMapCacheFiles} is true then
+   * cache files are read through a {@link MappedFileDataSource}.
+   */
+  public CacheDataSource(Cache cache, DataSource upstream, boolean blockOnCache,
+      boolean ignoreCacheOnError, long maxCacheFileSize, boolean memoryMapCacheFiles) {
+    this(cache, upstream, memoryMapCacheFiles ? new MappedFileDataSource() : new FileDataSource(),
+        new CacheDataSink(cache, maxCacheFileSize), blockOnCache, ignoreCacheOnError, null);
   }
 
   /**
@@ -130,8 +148,15 @@ public final class CacheDataSource implements DataSource {
       key = dataSpec.key;
       readPosition = dataSpec.position;
       bytesRemaining = dataSpec.length;
+      if (bytesRemaining == C.LENGTH_UNBOUNDED && key != null && !ignoreCache
+          && cache instanceof ContentLengthCache) {
+        long contentLength = ((ContentLengthCache) cache).getContentLength(key);
+        if (contentLength != C.LENGTH_UNBOUNDED) {
+          bytesRemaining = contentLength - readPosition;
+        }
+      }
       openNextSource();
-      return dataSpec.length;
+      return bytesRemaining;
     } catch (IOException e) {
       handleBeforeThrow(e);
       throw e;
@@ -164,6 +189,29 @@ public final class CacheDataSource implements DataSource {
     }
   }
 
+  @Override
+  public ByteBuffer readBuffer(int length) throws IOException {
+    if (currentDataSource != cacheReadDataSource
+        || !(cacheReadDataSource instanceof ByteBufferDataSource)) {
+      return null;
+    }
+    try {
+      ByteBuffer buffer = ((ByteBufferDataSource) cacheReadDataSource).readBuffer(length);
+      if (buffer != null) {
+        int bytesRead = buffer.remaining();
+        totalCachedBytesRead += bytesRead;
+        readPosition += bytesRead;
+        if (bytesRemaining != C.LENGTH_UNBOUNDED) {
+          bytesRemaining -= bytesRead;
+        }
+      }
+      return buffer;
+    } catch (IOException e) {
+      handleBeforeThrow(e);
+      throw e;
+    }
+  }
+
   @Override
   public void close() throws IOException {
     notifyBytesRead();
@@ -186,10 +234,17 @@ public final class CacheDataSource implements DataSource {
     if (ignoreCache) {
       span = null;
     } else if (bytesRemaining == C.LENGTH_UNBOUNDED) {
-      // TODO: Support caching for unbounded requests. This requires storing the source length
-      // into the cache (the simplest approach is to incorporate it into each cache file's name).
+      // The content length isn't known to the cache. Bypass it, recording the length resolved by
+      // the upstream source so that subsequent requests can be served from the cache.
       Log.w(TAG, "Cache bypassed due to unbounded length.");
-      span = null;
+      currentDataSource = upstreamDataSource;
+      long resolvedLength = currentDataSource.open(
+          new DataSpec(uri, readPosition, C.LENGTH_UNBOUNDED, key, flags));
+      if (resolvedLength != C.LENGTH_UNBOUNDED && key != null
+          && cache instanceof ContentLengthCache) {
+        ((ContentLengthCache) cache).setContentLength(key, readPosition + resolvedLength);
+      }
+      return;
     } else if (blockOnCache) {
       try {
         span = cache.startReadWrite(key, readPosition);
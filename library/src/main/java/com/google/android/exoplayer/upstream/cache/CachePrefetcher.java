@@ -0,0 +1,402 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+import android.util.Log;
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.FileDataSource;
+import com.google.android.exoplayer.util.Assertions;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+
+/**
+ * Downloads content into a {@link Cache} ahead of playback.
+ * <p>
+ * The content is defined by a list of segments, each of which is a {@link DataSpec} with a cache
+ * key. The segments of DASH and HLS content can be obtained from
+ * {@link com.google.android.exoplayer.dash.DashPrefetchUtil} and
+ * {@link com.google.android.exoplayer.hls.HlsPrefetchUtil}. Segments are downloaded in order by a
+ * number of threads, through {@link CacheDataSource}s that write to the cache with
+ * {@link CacheDataSink}s. Segments that are already cached are skipped, and only the parts of
+ * partially cached segments that aren't cached are downloaded, so a prefetch that was canceled or
+ * failed resumes where it stopped when it's repeated.
+ * <p>
+ * The number of bytes downloaded by a prefetch is limited by a budget. A segment is only started
+ * if it fits within the budget, and no further segments are started once one doesn't.
+ */
+public final class CachePrefetcher {
+
+  /**
+   * Creates the {@link DataSource}s from which segments are downloaded.
+   */
+  public interface DataSourceFactory {
+
+    /**
+     * Creates a {@link DataSource}. Invoked once by each downloading thread.
+     *
+     * @return The created {@link DataSource}.
+     */
+    DataSource createDataSource();
+
+  }
+
+  /**
+   * Interface definition for a callback to be notified of the progress of a prefetch.
+   */
+  public interface ProgressListener {
+
+    /**
+     * Invoked when a segment has been downloaded, or has been found to be cached already.
+     * <p>
+     * Invoked on the downloading threads, one call at a time.
+     *
+     * @param prefetcher The source of the event.
+     * @param completedSegmentCount The number of segments that are cached.
+     * @param segmentCount The total number of segments.
+     * @param bytesDownloaded The number of bytes downloaded so far.
+     */
+    void onProgress(CachePrefetcher prefetcher, int completedSegmentCount, int segmentCount,
+        long bytesDownloaded);
+
+  }
+
+  /**
+   * The default number of segments that are downloaded in parallel.
+   */
+  public static final int DEFAULT_PARALLELISM = 2;
+
+  private static final String TAG = "CachePrefetcher";
+
+  private static final int BUFFER_SIZE = 32 * 1024;
+
+  private final Cache cache;
+  private final DataSourceFactory upstreamFactory;
+  private final long maxCacheFileSize;
+  private final int parallelism;
+  private final long maxBytes;
+
+  private volatile Prefetch currentPrefetch;
+
+  /**
+   * @param cache The cache into which segments are downloaded.
+   * @param upstreamFactory Creates the {@link DataSource}s from which segments are downloaded.
+   * @param maxCacheFileSize The maximum size of a cache file, in bytes.
+   * @param parallelism The number of segments that are downloaded in parallel.
+   * @param maxBytes The maximum number of bytes to download in each call to
+   *     {@link #prefetch(List, ProgressListener)}.
+   */
+  public CachePrefetcher(Cache cache, DataSourceFactory upstreamFactory, long maxCacheFileSize,
+      int parallelism, long maxBytes) {
+    Assertions.checkArgument(parallelism > 0);
+    this.cache = Assertions.checkNotNull(cache);
+    this.upstreamFactory = Assertions.checkNotNull(upstreamFactory);
+    this.maxCacheFileSize = maxCacheFileSize;
+    this.parallelism = parallelism;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Downloads segments into the cache, blocking until they're cached, the budget is exhausted or
+   * the prefetch is canceled.
+   *
+   * @param segments The segments to download, in the order in which they should be downloaded.
+   *     Each segment must have a cache key.
+   * @param listener An optional listener to be notified of progress.
+   * @return Whether all of the segments are cached.
+   * @throws IOException If a segment couldn't be downloaded. Segments that are being downloaded
+   *     in parallel are canceled.
+   * @throws InterruptedException If the calling thread was interrupted. The prefetch is canceled.
+   */
+  public boolean prefetch(List<DataSpec> segments, ProgressListener listener)
+      throws IOException, InterruptedException {
+    Assertions.checkState(currentPrefetch == null);
+    Prefetch prefetch = new Prefetch(segments, listener);
+    currentPrefetch = prefetch;
+    try {
+      Thread[] threads = new Thread[Math.min(parallelism, segments.size())];
+      for (int i = 0; i < threads.length; i++) {
+        threads[i] = new PrefetchThread(prefetch, upstreamFactory.createDataSource());
+        threads[i].start();
+      }
+      try {
+        for (int i = 0; i < threads.length; i++) {
+          threads[i].join();
+        }
+      } catch (InterruptedException e) {
+        prefetch.stop();
+        throw e;
+      }
+      if (prefetch.exception != null) {
+        throw prefetch.exception;
+      }
+      return prefetch.completedSegmentCount == segments.size();
+    } finally {
+      currentPrefetch = null;
+    }
+  }
+
+  /**
+   * Cancels the ongoing call to {@link #prefetch(List, ProgressListener)}, if there is one. The
+   * call returns once the segments being downloaded have been closed. The parts of these segments
+   * that have been downloaded remain cached.
+   */
+  public void cancel() {
+    Prefetch prefetch = currentPrefetch;
+    if (prefetch != null) {
+      prefetch.stop();
+    }
+  }
+
+  /**
+   * Downloads a segment.
+   *
+   * @return Whether the segment is cached. False if it doesn't fit within the budget, if the
+   *     prefetch was stopped or if its length couldn't be resolved.
+   */
+  private boolean prefetchSegment(Prefetch prefetch, DataSpec segment, DataSource upstream,
+      byte[] buffer) throws IOException {
+    String key = Assertions.checkNotNull(segment.key);
+    long length = segment.length;
+    if (length == C.LENGTH_UNBOUNDED) {
+      length = getCachedLength(key, segment.position);
+      if (length == C.LENGTH_UNBOUNDED) {
+        return prefetchSegmentOfUnknownLength(prefetch, segment, upstream, buffer);
+      }
+    }
+    if (cache.isCached(key, segment.position, length)) {
+      return true;
+    }
+    if (!prefetch.reserve(length)) {
+      return false;
+    }
+    ByteCounter cachedBytesCounter = new ByteCounter();
+    CacheDataSource dataSource = new CacheDataSource(cache, upstream, new FileDataSource(),
+        new CacheDataSink(cache, maxCacheFileSize), true, false, cachedBytesCounter);
+    long bytesRead = 0;
+    try {
+      dataSource.open(new DataSpec(segment.uri, segment.absoluteStreamPosition, segment.position,
+          length, key, segment.flags));
+      int read = 0;
+      while (!prefetch.stopped && read != C.RESULT_END_OF_INPUT) {
+        read = dataSource.read(buffer, 0, buffer.length);
+        if (read > 0) {
+          bytesRead += read;
+        }
+      }
+    } finally {
+      dataSource.close();
+      prefetch.release(length, bytesRead - cachedBytesCounter.bytes);
+    }
+    return !prefetch.stopped;
+  }
+
+  /**
+   * Downloads a segment whose length isn't known to the cache. The length is resolved by opening
+   * the upstream source, and the data is written to the cache as it's read from the same request.
+   *
+   * @return Whether the segment is cached. False if it doesn't fit within the budget, if the
+   *     prefetch was stopped, if its length couldn't be resolved or if part of it is cached.
+   */
+  private boolean prefetchSegmentOfUnknownLength(Prefetch prefetch, DataSpec segment,
+      DataSource upstream, byte[] buffer) throws IOException {
+    String key = segment.key;
+    CacheSpan holeSpan;
+    try {
+      holeSpan = cache.startReadWrite(key, segment.position);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+    if (holeSpan.isCached) {
+      Log.w(TAG, "Segment skipped due to unknown length: " + segment.uri);
+      return false;
+    }
+    CacheDataSink dataSink = null;
+    long length = C.LENGTH_UNBOUNDED;
+    boolean reserved = false;
+    long bytesRead = 0;
+    try {
+      length = upstream.open(segment);
+      if (length == C.LENGTH_UNBOUNDED || !holeSpan.isOpenEnded()) {
+        // The data can't be written to the cache, because its length is unknown or because part of
+        // it is cached already.
+        Log.w(TAG, "Segment skipped due to unknown length: " + segment.uri);
+        return false;
+      }
+      if (cache instanceof ContentLengthCache) {
+        ((ContentLengthCache) cache).setContentLength(key, segment.position + length);
+      }
+      reserved = prefetch.reserve(length);
+      if (!reserved) {
+        return false;
+      }
+      dataSink = new CacheDataSink(cache, maxCacheFileSize);
+      dataSink.open(new DataSpec(segment.uri, segment.absoluteStreamPosition, segment.position,
+          length, key, segment.flags));
+      int read = 0;
+      while (!prefetch.stopped && read != C.RESULT_END_OF_INPUT) {
+        read = upstream.read(buffer, 0, buffer.length);
+        if (read > 0) {
+          dataSink.write(buffer, 0, read);
+          bytesRead += read;
+        }
+      }
+    } finally {
+      try {
+        upstream.close();
+      } finally {
+        try {
+          if (dataSink != null) {
+            dataSink.close();
+          }
+        } finally {
+          cache.releaseHoleSpan(holeSpan);
+          if (reserved) {
+            prefetch.release(length, bytesRead);
+          }
+        }
+      }
+    }
+    return !prefetch.stopped;
+  }
+
+  private long getCachedLength(String key, long position) {
+    if (!(cache instanceof ContentLengthCache)) {
+      return C.LENGTH_UNBOUNDED;
+    }
+    long contentLength = ((ContentLengthCache) cache).getContentLength(key);
+    return contentLength == C.LENGTH_UNBOUNDED ? C.LENGTH_UNBOUNDED : contentLength - position;
+  }
+
+  /**
+   * The state of a call to {@link #prefetch(List, ProgressListener)}, shared by its threads.
+   */
+  private final class Prefetch {
+
+    private final List<DataSpec> segments;
+    private final ProgressListener listener;
+
+    private volatile boolean stopped;
+    private int nextSegmentIndex;
+    private int completedSegmentCount;
+    private long bytesDownloaded;
+    private long bytesReserved;
+    private IOException exception;
+
+    public Prefetch(List<DataSpec> segments, ProgressListener listener) {
+      this.segments = segments;
+      this.listener = listener;
+    }
+
+    /**
+     * Returns the next segment to download, or null if there isn't one or the prefetch has stopped.
+     */
+    public synchronized DataSpec nextSegment() {
+      return stopped || nextSegmentIndex == segments.size() ? null
+          : segments.get(nextSegmentIndex++);
+    }
+
+    /**
+     * Reserves space within the budget for a segment. If there isn't enough space, the prefetch
+     * stops.
+     *
+     * @param length The length of the segment.
+     * @return Whether the space was reserved.
+     */
+    public synchronized boolean reserve(long length) {
+      if (bytesDownloaded + bytesReserved + length > maxBytes) {
+        stopped = true;
+        return false;
+      }
+      bytesReserved += length;
+      return true;
+    }
+
+    /**
+     * Releases space reserved by {@link #reserve(long)}, once the segment has been downloaded.
+     *
+     * @param length The length of the segment.
+     * @param downloadedLength The number of bytes of the segment that were downloaded.
+     */
+    public synchronized void release(long length, long downloadedLength) {
+      bytesReserved -= length;
+      bytesDownloaded += downloadedLength;
+    }
+
+    public synchronized void onSegmentCompleted() {
+      completedSegmentCount++;
+      if (listener != null) {
+        listener.onProgress(CachePrefetcher.this, completedSegmentCount, segments.size(),
+            bytesDownloaded);
+      }
+    }
+
+    public synchronized void onError(IOException e) {
+      if (exception == null) {
+        exception = e;
+      }
+      stopped = true;
+    }
+
+    public void stop() {
+      stopped = true;
+    }
+
+  }
+
+  private final class PrefetchThread extends Thread {
+
+    private final Prefetch prefetch;
+    private final DataSource upstream;
+
+    public PrefetchThread(Prefetch prefetch, DataSource upstream) {
+      super(TAG);
+      this.prefetch = prefetch;
+      this.upstream = upstream;
+    }
+
+    @Override
+    public void run() {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      try {
+        DataSpec segment;
+        while ((segment = prefetch.nextSegment()) != null) {
+          if (prefetchSegment(prefetch, segment, upstream, buffer)) {
+            prefetch.onSegmentCompleted();
+          }
+        }
+      } catch (IOException e) {
+        prefetch.onError(e);
+      }
+    }
+
+  }
+
+  private static final class ByteCounter implements CacheDataSource.EventListener {
+
+    public long bytes;
+
+    @Override
+    public void onCachedBytesRead(long cacheSizeBytes, long cachedBytesRead) {
+      bytes += cachedBytesRead;
+    }
+
+  }
+
+}
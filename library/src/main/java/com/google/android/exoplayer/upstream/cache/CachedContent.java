@@ -16,15 +16,20 @@
 package com.google.android.exoplayer.upstream.cache;
 
 import com.google.android.exoplayer.C;
-import com.google.android.exoplayer.upstream.cache.Cache.CacheException;
 import com.google.android.exoplayer.util.Assertions;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.Map;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
  * Defines the cached content for a single stream.
+ * <p>
+ * Spans are held in a concurrent map keyed by position, so queries ({@link #getSpan(long)},
+ * {@link #isCached(long, long)} and {@link #getSpans()}) are safe without holding any lock.
+ * Modifications must be serialized by the caller.
  */
 /*package*/ final class CachedContent {
 
@@ -37,13 +42,13 @@ import java.util.TreeSet;
    */
   public final String key;
   /**
-   * The cached spans of this content.
+   * The cached spans of this content, keyed by position.
    */
-  private final TreeSet<SimpleCacheSpan> cachedSpans;
+  private final ConcurrentSkipListMap<Long, SimpleCacheSpan> cachedSpans;
   /**
    * The length of the original stream, or {@link C#LENGTH_UNBOUNDED} if the length is unknown.
    */
-  private long length;
+  private volatile long length;
 
   /**
    * Reads an instance from a {@link DataInputStream}.
@@ -66,7 +71,7 @@ import java.util.TreeSet;
     this.id = id;
     this.key = key;
     this.length = length;
-    this.cachedSpans = new TreeSet<>();
+    this.cachedSpans = new ConcurrentSkipListMap<>();
   }
 
   /**
@@ -93,12 +98,17 @@ import java.util.TreeSet;
 
   /** Adds the given {@link SimpleCacheSpan} which contains a part of the content. */
   public void addSpan(SimpleCacheSpan span) {
-    cachedSpans.add(span);
+    cachedSpans.put(span.position, span);
   }
 
-  /** Returns a set of all {@link SimpleCacheSpan}s. */
+  /** Returns a snapshot of all {@link SimpleCacheSpan}s. */
   public TreeSet<SimpleCacheSpan> getSpans() {
-    return cachedSpans;
+    return new TreeSet<>(cachedSpans.values());
+  }
+
+  /** Returns whether the given {@link CacheSpan} is one of the spans of this content. */
+  public boolean containsSpan(CacheSpan span) {
+    return cachedSpans.get(span.position) == span;
   }
 
   /**
@@ -108,9 +118,9 @@ import java.util.TreeSet;
   public SimpleCacheSpan getSpan(long position) {
     SimpleCacheSpan span = getSpanInternal(position);
     if (!span.isCached) {
-      SimpleCacheSpan ceilEntry = cachedSpans.ceiling(span);
+      Map.Entry<Long, SimpleCacheSpan> ceilEntry = cachedSpans.ceilingEntry(position);
       return ceilEntry == null ? SimpleCacheSpan.createOpenHole(key, position)
-          : SimpleCacheSpan.createClosedHole(key, position, ceilEntry.position - position);
+          : SimpleCacheSpan.createClosedHole(key, position, ceilEntry.getKey() - position);
     }
     return span;
   }
@@ -128,7 +138,7 @@ import java.util.TreeSet;
       // floorSpan covers the queried region.
       return true;
     }
-    for (SimpleCacheSpan next : cachedSpans.tailSet(floorSpan, false)) {
+    for (SimpleCacheSpan next : cachedSpans.tailMap(floorSpan.position, false).values()) {
       if (next.position > currentEndPosition) {
         // There's a hole in the cache within the queried region.
         return false;
@@ -146,26 +156,17 @@ import java.util.TreeSet;
   }
 
   /**
-   * Copies the given span with an updated last access time. Passed span becomes invalid after this
-   * call.
+   * Replaces a span with a copy of it, such as one with an updated last access time. Concurrent
+   * readers observe either the old or the new span, but never a hole.
    *
-   * @param cacheSpan Span to be copied and updated.
-   * @return a span with the updated last access time.
-   * @throws CacheException If renaming of the underlying span file failed.
+   * @param oldSpan The span to be replaced.
+   * @param newSpan The replacement span. Must have the same position as {@code oldSpan}.
+   * @return Whether {@code oldSpan} was replaced. False if it's not one of the spans of this
+   *     content.
    */
-  public SimpleCacheSpan touch(SimpleCacheSpan cacheSpan) throws CacheException {
-    // Remove the old span from the in-memory representation.
-    Assertions.checkState(cachedSpans.remove(cacheSpan));
-    // Obtain a new span with updated last access timestamp.
-    SimpleCacheSpan newCacheSpan = cacheSpan.copyWithUpdatedLastAccessTime(id);
-    // Rename the cache file
-    if (!cacheSpan.file.renameTo(newCacheSpan.file)) {
-      throw new CacheException("Renaming of " + cacheSpan.file + " to " + newCacheSpan.file
-          + " failed.");
-    }
-    // Add the updated span back into the in-memory representation.
-    cachedSpans.add(newCacheSpan);
-    return newCacheSpan;
+  public boolean replaceSpan(SimpleCacheSpan oldSpan, SimpleCacheSpan newSpan) {
+    Assertions.checkArgument(oldSpan.position == newSpan.position);
+    return cachedSpans.replace(oldSpan.position, oldSpan, newSpan);
   }
 
   /** Returns whether there are any spans cached. */
@@ -175,13 +176,21 @@ import java.util.TreeSet;
 
   /** Removes the given span from cache. */
   public boolean removeSpan(CacheSpan span) {
-    if (cachedSpans.remove(span)) {
+    if (cachedSpans.remove(span.position, span)) {
       span.file.delete();
       return true;
     }
     return false;
   }
 
+  /**
+   * Removes the span at the given position without deleting its file. Used when replaying changes
+   * to the in-memory representation whose files have already been deleted.
+   */
+  public void removeSpanWithoutFile(long position) {
+    cachedSpans.remove(position);
+  }
+
   /** Calculates a hash code for the header of this {@code CachedContent}. */
   public int headerHashCode() {
     int result = id;
@@ -195,10 +204,10 @@ import java.util.TreeSet;
    * used for searching.
    */
   private SimpleCacheSpan getSpanInternal(long position) {
-    SimpleCacheSpan lookupSpan = SimpleCacheSpan.createLookup(key, position);
-    SimpleCacheSpan floorSpan = cachedSpans.floor(lookupSpan);
-    return floorSpan == null || floorSpan.position + floorSpan.length <= position ? lookupSpan
-        : floorSpan;
+    Map.Entry<Long, SimpleCacheSpan> floorEntry = cachedSpans.floorEntry(position);
+    SimpleCacheSpan floorSpan = floorEntry == null ? null : floorEntry.getValue();
+    return floorSpan == null || floorSpan.position + floorSpan.length <= position
+        ? SimpleCacheSpan.createLookup(key, position) : floorSpan;
   }
 
 }
@@ -21,24 +21,34 @@ import com.google.android.exoplayer.C;
 import com.google.android.exoplayer.upstream.cache.Cache.CacheException;
 import com.google.android.exoplayer.util.Assertions;
 import com.google.android.exoplayer.util.AtomicFile;
+import com.google.android.exoplayer.util.ParsableByteArray;
 import com.google.android.exoplayer.util.ReusableBufferedOutputStream;
 import com.google.android.exoplayer.util.Util;
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Random;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.CipherOutputStream;
@@ -48,23 +58,88 @@ import javax.crypto.spec.SecretKeySpec;
 
 /**
  * This class maintains the index of cached content.
+ * <p>
+ * The index is persisted as a snapshot file ({@link #FILE_NAME}) and an append-only journal
+ * ({@link #JOURNAL_FILE_NAME}). {@link #store()} appends a record to the journal for each addition,
+ * removal or content length change made since the previous call, which costs O(1) per change
+ * rather than O(index size). Once the journal holds more records than the snapshot has entries,
+ * it's compacted by rewriting the snapshot and deleting the journal. When loading, the journal is
+ * replayed on top of the snapshot. Records are individually checksummed, so a record that's torn
+ * by a crash during an append is ignored.
+ * <p>
+ * Replaying a journal on top of a snapshot that already reflects it isn't safe, since ids are
+ * reused once removed. Both files therefore carry a generation, which is incremented when a
+ * snapshot replaces one with a journal, and a journal whose generation doesn't match that of the
+ * snapshot is discarded. Such a journal can only survive a crash during compaction, after the new
+ * snapshot was written. Generation 0 is implied by the absence of {@link #FLAG_GENERATION}, so an
+ * index that has never been journaled is written in the original snapshot format.
+ * <p>
+ * If span indexing is enabled, the metadata of the cached spans of each content (position, length
+ * and last access timestamp) is persisted too, using version 2 of the snapshot format and span
+ * records in the journal. This allows {@link SimpleCache} to restore its in-memory representation
+ * without listing the cache directory and parsing the name of each cache file. Because touching a
+ * span doesn't store the index, the indexed spans may lag behind the cache directory, which must
+ * still be reconciled with the index after loading.
+ * <p>
+ * Lookups ({@link #get(String)}, {@link #getAll()} and {@link #getKeys()}) may be performed
+ * concurrently with modifications. Modifications must be serialized by the caller.
  */
 /*package*/ final class CachedContentIndex {
 
   public static final String FILE_NAME = "cached_content_index.exi";
+  public static final String JOURNAL_FILE_NAME = "cached_content_index.exj";
 
   private static final int VERSION = 1;
+  private static final int VERSION_WITH_SPANS = 2;
+  private static final int JOURNAL_VERSION = 1;
 
   private static final int FLAG_ENCRYPTED_INDEX = 1;
+  private static final int FLAG_GENERATION = 2;
+
+  private static final int RECORD_TYPE_ADD = 0;
+  private static final int RECORD_TYPE_REMOVE = 1;
+  private static final int RECORD_TYPE_SET_LENGTH = 2;
+  private static final int RECORD_TYPE_ADD_SPAN = 3;
+  private static final int RECORD_TYPE_REMOVE_SPAN = 4;
+
+  /**
+   * The size of the header of each journal record, consisting of the payload length and checksum.
+   */
+  private static final int RECORD_HEADER_SIZE = 8;
+  /**
+   * The minimum number of records in the journal before it's compacted.
+   */
+  private static final int MIN_COMPACTION_RECORD_COUNT = 256;
 
   private static final String TAG = "CachedContentIndex";
 
-  private final HashMap<String, CachedContent> keyToContent;
+  private final File cacheDir;
+  private final boolean indexSpans;
+  private final ConcurrentHashMap<String, CachedContent> keyToContent;
   private final SparseArray<String> idToKey;
   private final AtomicFile atomicFile;
+  private final File journalFile;
   private final Cipher cipher;
+  private final Cipher recordCipher;
   private final SecretKeySpec secretKeySpec;
-  private boolean changed;
+  private final Random random;
+  private final CRC32 crc32;
+  private final Object storeLock;
+
+  // Guarded by this.
+  private final ByteArrayOutputStream recordBuffer;
+  private final DataOutputStream recordOutput;
+  private final ByteArrayOutputStream pendingRecords;
+  private final DataOutputStream pendingRecordsOutput;
+  private int pendingRecordCount;
+  private boolean snapshotRequired;
+  private boolean spansLoaded;
+
+  // Guarded by storeLock.
+  private boolean journalAppendable;
+  private int journalRecordCount;
+  private int snapshotEntryCount;
+  private int generation;
   private ReusableBufferedOutputStream bufferedOutputStream;
 
   /**
@@ -84,40 +159,124 @@ import javax.crypto.spec.SecretKeySpec;
    *     The key must be 16 bytes long.
    */
   public CachedContentIndex(File cacheDir, byte[] secretKey) {
+    this(cacheDir, secretKey, false);
+  }
+
+  /**
+   * Creates a CachedContentIndex which works on the index file in the given cacheDir.
+   *
+   * @param cacheDir Directory where the index file is kept.
+   * @param secretKey If not null, cache keys will be stored encrypted on filesystem using AES/CBC.
+   *     The key must be 16 bytes long.
+   * @param indexSpans Whether the metadata of cached spans should be persisted in the index.
+   */
+  public CachedContentIndex(File cacheDir, byte[] secretKey, boolean indexSpans) {
     if (secretKey != null) {
       Assertions.checkArgument(secretKey.length == 16);
       try {
         cipher = Cipher.getInstance("AES/CBC/PKCS5PADDING");
+        recordCipher = Cipher.getInstance("AES/CBC/PKCS5PADDING");
         secretKeySpec = new SecretKeySpec(secretKey, "AES");
       } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
         throw new IllegalStateException(e); // Should never happen.
       }
     } else {
       cipher = null;
+      recordCipher = null;
       secretKeySpec = null;
     }
-    keyToContent = new HashMap<>();
+    this.cacheDir = cacheDir;
+    this.indexSpans = indexSpans;
+    keyToContent = new ConcurrentHashMap<>();
     idToKey = new SparseArray<>();
     atomicFile = new AtomicFile(new File(cacheDir, FILE_NAME));
+    journalFile = new File(cacheDir, JOURNAL_FILE_NAME);
+    random = new Random();
+    crc32 = new CRC32();
+    storeLock = new Object();
+    recordBuffer = new ByteArrayOutputStream();
+    recordOutput = new DataOutputStream(recordBuffer);
+    pendingRecords = new ByteArrayOutputStream();
+    pendingRecordsOutput = new DataOutputStream(pendingRecords);
+  }
+
+  /**
+   * Returns whether the given file name is one of the files used to persist the index.
+   */
+  public static boolean isIndexFile(String fileName) {
+    return fileName.equals(FILE_NAME) || fileName.equals(JOURNAL_FILE_NAME);
   }
 
-  /** Loads the index file. */
+  /** Loads the index file and replays the journal on top of it. */
   public void load() {
-    Assertions.checkState(!changed);
-    if (!readFile()) {
+    Assertions.checkState(pendingRecordCount == 0);
+    if (readFile() && readJournal()) {
+      journalAppendable = true;
+    } else {
       atomicFile.delete();
+      journalFile.delete();
       keyToContent.clear();
       idToKey.clear();
+      journalRecordCount = 0;
+      generation = 0;
+      spansLoaded = false;
     }
   }
 
-  /** Stores the index data to index file if there is a change. */
+  /**
+   * Returns whether the cached spans were restored by the last call to {@link #load()}. If false,
+   * the spans must be restored by scanning the cache directory.
+   */
+  public boolean hasIndexedSpans() {
+    return spansLoaded;
+  }
+
+  /**
+   * Stores the changes to the index since the last call, either by appending them to the journal
+   * or, if the journal has grown too large, by rewriting the index file. May be called concurrently
+   * with modifications, in which case the stored data reflects a consistent snapshot of the index.
+   */
   public void store() throws CacheException {
-    if (!changed) {
-      return;
+    synchronized (storeLock) {
+      byte[] records;
+      int recordCount;
+      boolean writeSnapshot;
+      synchronized (this) {
+        if (!snapshotRequired && pendingRecordCount == 0) {
+          return;
+        }
+        recordCount = pendingRecordCount;
+        writeSnapshot = snapshotRequired || !journalAppendable
+            || journalRecordCount + recordCount
+                > Math.max(MIN_COMPACTION_RECORD_COUNT, snapshotEntryCount);
+        records = writeSnapshot ? null : pendingRecords.toByteArray();
+        // Modifications made whilst writing are stored by the next call.
+        pendingRecords.reset();
+        pendingRecordCount = 0;
+        snapshotRequired = false;
+      }
+      try {
+        if (writeSnapshot) {
+          if (journalFile.exists()) {
+            // Prevent the journal from being replayed on top of the snapshot if deleting it fails.
+            generation++;
+          }
+          writeFile();
+          journalFile.delete();
+          journalRecordCount = 0;
+          journalAppendable = true;
+        } else {
+          appendToJournal(records);
+          journalRecordCount += recordCount;
+        }
+      } catch (CacheException e) {
+        synchronized (this) {
+          // The pending records have been dropped, so the index file must be rewritten.
+          snapshotRequired = true;
+        }
+        throw e;
+      }
     }
-    writeFile();
-    changed = false;
   }
 
   /**
@@ -142,9 +301,9 @@ import javax.crypto.spec.SecretKeySpec;
   /**
    * Returns a Collection of all CachedContent instances in the index. The collection is backed by
    * the {@code keyToContent} map, so changes to the map are reflected in the collection, and
-   * vice-versa. If the map is modified while an iteration over the collection is in progress
-   * (except through the iterator's own remove operation), the results of the iteration are
-   * undefined.
+   * vice-versa. Iterators over the collection are weakly consistent: they never throw
+   * {@link java.util.ConcurrentModificationException}, but may or may not reflect modifications
+   * made after their creation.
    */
   public Collection<CachedContent> getAll() {
     return keyToContent.values();
@@ -170,7 +329,7 @@ import javax.crypto.spec.SecretKeySpec;
     if (cachedContent != null) {
       Assertions.checkState(cachedContent.isEmpty());
       idToKey.remove(cachedContent.id);
-      changed = true;
+      appendRecord(RECORD_TYPE_REMOVE, cachedContent);
     }
   }
 
@@ -187,11 +346,56 @@ import javax.crypto.spec.SecretKeySpec;
     }
   }
 
+  /**
+   * Adds the given span to the {@link CachedContent} with the same key, which is added to the index
+   * if it isn't there already.
+   *
+   * @param span The span to be added.
+   * @return The {@link CachedContent} to which the span was added.
+   */
+  public CachedContent addSpan(SimpleCacheSpan span) {
+    CachedContent cachedContent = add(span.key);
+    cachedContent.addSpan(span);
+    if (indexSpans) {
+      appendRecord(RECORD_TYPE_ADD_SPAN, cachedContent, span);
+    }
+    return cachedContent;
+  }
+
+  /**
+   * Replaces a span of the given {@link CachedContent} with a copy of it, such as one with an
+   * updated last access time. See {@link CachedContent#replaceSpan(SimpleCacheSpan,
+   * SimpleCacheSpan)}.
+   */
+  public boolean replaceSpan(CachedContent cachedContent, SimpleCacheSpan oldSpan,
+      SimpleCacheSpan newSpan) {
+    if (!cachedContent.replaceSpan(oldSpan, newSpan)) {
+      return false;
+    }
+    if (indexSpans) {
+      appendRecord(RECORD_TYPE_ADD_SPAN, cachedContent, newSpan);
+    }
+    return true;
+  }
+
+  /**
+   * Removes a span from the given {@link CachedContent} and deletes its file. See
+   * {@link CachedContent#removeSpan(CacheSpan)}.
+   */
+  public boolean removeSpan(CachedContent cachedContent, CacheSpan span) {
+    if (!cachedContent.removeSpan(span)) {
+      return false;
+    }
+    if (indexSpans) {
+      appendRecord(RECORD_TYPE_REMOVE_SPAN, cachedContent, span);
+    }
+    return true;
+  }
+
   /**
    * Returns a set of all content keys. The set is backed by the {@code keyToContent} map, so
-   * changes to the map are reflected in the set, and vice-versa. If the map is modified while an
-   * iteration over the set is in progress (except through the iterator's own remove operation), the
-   * results of the iteration are undefined.
+   * changes to the map are reflected in the set, and vice-versa. Iterators over the set are weakly
+   * consistent, as for {@link #getAll()}.
    */
   public Set<String> getKeys() {
     return keyToContent.keySet();
@@ -206,7 +410,7 @@ import javax.crypto.spec.SecretKeySpec;
     if (cachedContent != null) {
       if (cachedContent.getLength() != length) {
         cachedContent.setLength(length);
-        changed = true;
+        appendRecord(RECORD_TYPE_SET_LENGTH, cachedContent);
       }
     } else {
       addNew(key, length);
@@ -228,12 +432,17 @@ import javax.crypto.spec.SecretKeySpec;
       InputStream inputStream = new BufferedInputStream(atomicFile.openRead());
       input = new DataInputStream(inputStream);
       int version = input.readInt();
-      if (version != VERSION) {
-        // Currently there is no other version
+      if (version != VERSION && version != VERSION_WITH_SPANS) {
         return false;
       }
+      if (indexSpans != (version == VERSION_WITH_SPANS)) {
+        // Force index to be rewritten in the configured format after read.
+        snapshotRequired = true;
+      }
+      spansLoaded = indexSpans && version == VERSION_WITH_SPANS;
 
       int flags = input.readInt();
+      generation = (flags & FLAG_GENERATION) != 0 ? input.readInt() : 0;
       if ((flags & FLAG_ENCRYPTED_INDEX) != 0) {
         if (cipher == null) {
           return false;
@@ -249,16 +458,20 @@ import javax.crypto.spec.SecretKeySpec;
         input = new DataInputStream(new CipherInputStream(inputStream, cipher));
       } else {
         if (cipher != null) {
-          changed = true; // Force index to be rewritten encrypted after read.
+          snapshotRequired = true; // Force index to be rewritten encrypted after read.
         }
       }
 
       int count = input.readInt();
+      snapshotEntryCount = count;
       int hashCode = 0;
       for (int i = 0; i < count; i++) {
         CachedContent cachedContent = new CachedContent(input);
         add(cachedContent);
         hashCode += cachedContent.headerHashCode();
+        if (version == VERSION_WITH_SPANS) {
+          hashCode += readSpans(input, cachedContent);
+        }
       }
       if (input.readInt() != hashCode) {
         return false;
@@ -286,14 +499,18 @@ import javax.crypto.spec.SecretKeySpec;
         bufferedOutputStream.reset(outputStream);
       }
       output = new DataOutputStream(bufferedOutputStream);
-      output.writeInt(VERSION);
+      output.writeInt(indexSpans ? VERSION_WITH_SPANS : VERSION);
 
-      int flags = cipher != null ? FLAG_ENCRYPTED_INDEX : 0;
+      int flags = (cipher != null ? FLAG_ENCRYPTED_INDEX : 0)
+          | (generation != 0 ? FLAG_GENERATION : 0);
       output.writeInt(flags);
+      if (generation != 0) {
+        output.writeInt(generation);
+      }
 
       if (cipher != null) {
         byte[] initializationVector = new byte[16];
-        new Random().nextBytes(initializationVector);
+        random.nextBytes(initializationVector);
         output.write(initializationVector);
         IvParameterSpec ivParameterSpec = new IvParameterSpec(initializationVector);
         try {
@@ -305,11 +522,16 @@ import javax.crypto.spec.SecretKeySpec;
         output = new DataOutputStream(new CipherOutputStream(bufferedOutputStream, cipher));
       }
 
-      output.writeInt(keyToContent.size());
+      ArrayList<CachedContent> cachedContents = new ArrayList<>(keyToContent.values());
+      output.writeInt(cachedContents.size());
+      snapshotEntryCount = cachedContents.size();
       int hashCode = 0;
-      for (CachedContent cachedContent : keyToContent.values()) {
+      for (CachedContent cachedContent : cachedContents) {
         cachedContent.writeToStream(output);
         hashCode += cachedContent.headerHashCode();
+        if (indexSpans) {
+          hashCode += writeSpans(output, cachedContent);
+        }
       }
       output.writeInt(hashCode);
       atomicFile.endWrite(output);
@@ -323,6 +545,268 @@ import javax.crypto.spec.SecretKeySpec;
     }
   }
 
+  /**
+   * Reads the spans of the given {@link CachedContent} from a version 2 index file, adding them to
+   * it if span indexing is enabled.
+   *
+   * @return A hash code of the spans that were read.
+   */
+  private int readSpans(DataInputStream input, CachedContent cachedContent) throws IOException {
+    int count = input.readInt();
+    int hashCode = count;
+    for (int i = 0; i < count; i++) {
+      long position = input.readLong();
+      long length = input.readLong();
+      long lastAccessTimestamp = input.readLong();
+      hashCode = 31 * hashCode + spanHashCode(position, length, lastAccessTimestamp);
+      if (spansLoaded) {
+        cachedContent.addSpan(SimpleCacheSpan.createIndexedEntry(cacheDir, cachedContent.id,
+            cachedContent.key, position, length, lastAccessTimestamp));
+      }
+    }
+    return hashCode;
+  }
+
+  /**
+   * Writes the spans of the given {@link CachedContent} to a version 2 index file.
+   *
+   * @return A hash code of the spans that were written.
+   */
+  private static int writeSpans(DataOutputStream output, CachedContent cachedContent)
+      throws IOException {
+    // Take a snapshot, since spans may be modified concurrently.
+    TreeSet<SimpleCacheSpan> spans = cachedContent.getSpans();
+    output.writeInt(spans.size());
+    int hashCode = spans.size();
+    for (SimpleCacheSpan span : spans) {
+      output.writeLong(span.position);
+      output.writeLong(span.length);
+      output.writeLong(span.lastAccessTimestamp);
+      hashCode = 31 * hashCode + spanHashCode(span.position, span.length, span.lastAccessTimestamp);
+    }
+    return hashCode;
+  }
+
+  private static int spanHashCode(long position, long length, long lastAccessTimestamp) {
+    int result = (int) (position ^ (position >>> 32));
+    result = 31 * result + (int) (length ^ (length >>> 32));
+    result = 31 * result + (int) (lastAccessTimestamp ^ (lastAccessTimestamp >>> 32));
+    return result;
+  }
+
+  /**
+   * Replays the journal on top of the index read from the index file.
+   *
+   * @return Whether the journal was replayed. If false, the index must be discarded.
+   */
+  private boolean readJournal() {
+    if (!journalFile.exists()) {
+      return true;
+    }
+    ParsableByteArray journal;
+    InputStream inputStream = null;
+    try {
+      inputStream = new FileInputStream(journalFile);
+      journal = new ParsableByteArray(Util.toByteArray(inputStream));
+    } catch (IOException e) {
+      Log.e(TAG, "Error reading cache content index journal.", e);
+      return false;
+    } finally {
+      Util.closeQuietly(inputStream);
+    }
+    if (journal.bytesLeft() < 8) {
+      // The journal was torn whilst its header was being written.
+      snapshotRequired = true;
+      return true;
+    }
+    if (journal.readInt() != JOURNAL_VERSION) {
+      // Currently there is no other version.
+      return false;
+    }
+    int flags = journal.readInt();
+    if ((flags & FLAG_GENERATION) != 0 && journal.bytesLeft() < 4) {
+      // The journal was torn whilst its header was being written.
+      snapshotRequired = true;
+      return true;
+    }
+    int journalGeneration = (flags & FLAG_GENERATION) != 0 ? journal.readInt() : 0;
+    if (journalGeneration != generation) {
+      // Compaction was interrupted after the snapshot was written, so it already reflects the
+      // journal.
+      journalFile.delete();
+      return true;
+    }
+    boolean encrypted = (flags & FLAG_ENCRYPTED_INDEX) != 0;
+    if (encrypted && cipher == null) {
+      return false;
+    } else if (!encrypted && cipher != null) {
+      snapshotRequired = true; // Force index to be rewritten encrypted after read.
+    }
+    while (journal.bytesLeft() > 0) {
+      int payloadLength = journal.bytesLeft() < RECORD_HEADER_SIZE ? -1 : journal.readInt();
+      if (payloadLength < 0 || payloadLength > journal.bytesLeft() - 4) {
+        // The last record was torn whilst it was being appended.
+        snapshotRequired = true;
+        break;
+      }
+      int checksum = journal.readInt();
+      byte[] payload = new byte[payloadLength];
+      journal.readBytes(payload, 0, payloadLength);
+      crc32.reset();
+      crc32.update(payload, 0, payloadLength);
+      if ((int) crc32.getValue() != checksum || (encrypted && payloadLength < 16)) {
+        snapshotRequired = true;
+        break;
+      }
+      try {
+        if (encrypted) {
+          cipher.init(Cipher.DECRYPT_MODE, secretKeySpec, new IvParameterSpec(payload, 0, 16));
+          payload = cipher.doFinal(payload, 16, payloadLength - 16);
+        }
+        replayRecord(new DataInputStream(new ByteArrayInputStream(payload)));
+      } catch (GeneralSecurityException | IOException e) {
+        Log.e(TAG, "Error replaying cache content index journal.", e);
+        return false;
+      }
+      journalRecordCount++;
+    }
+    return true;
+  }
+
+  private void replayRecord(DataInputStream input) throws IOException {
+    int type = input.readUnsignedByte();
+    int id = input.readInt();
+    if (type == RECORD_TYPE_ADD) {
+      CachedContent cachedContent = new CachedContent(id, input.readUTF(), input.readLong());
+      // Replace any conflicting mappings, so that a corrupt journal can't leave the key and id
+      // mappings inconsistent.
+      removeForReplay(idToKey.get(id));
+      removeForReplay(cachedContent.key);
+      add(cachedContent);
+    } else if (type == RECORD_TYPE_REMOVE) {
+      removeForReplay(idToKey.get(id));
+    } else if (type == RECORD_TYPE_SET_LENGTH) {
+      long length = input.readLong();
+      String key = idToKey.get(id);
+      if (key != null) {
+        keyToContent.get(key).setLength(length);
+      }
+    } else if (type == RECORD_TYPE_ADD_SPAN || type == RECORD_TYPE_REMOVE_SPAN) {
+      long position = input.readLong();
+      String key = idToKey.get(id);
+      if (!spansLoaded) {
+        // The spans will be restored by scanning the cache directory. Drop the records.
+        snapshotRequired = true;
+      } else if (key != null) {
+        CachedContent cachedContent = keyToContent.get(key);
+        if (type == RECORD_TYPE_ADD_SPAN) {
+          cachedContent.addSpan(SimpleCacheSpan.createIndexedEntry(cacheDir, id, key, position,
+              input.readLong(), input.readLong()));
+        } else {
+          cachedContent.removeSpanWithoutFile(position);
+        }
+      }
+    } else {
+      throw new IOException("Unexpected record type: " + type);
+    }
+  }
+
+  private void removeForReplay(String key) {
+    CachedContent cachedContent = key == null ? null : keyToContent.remove(key);
+    if (cachedContent != null) {
+      idToKey.remove(cachedContent.id);
+    }
+  }
+
+  private void appendToJournal(byte[] records) throws CacheException {
+    DataOutputStream output = null;
+    try {
+      boolean writeHeader = journalFile.length() == 0;
+      FileOutputStream fileOutputStream = new FileOutputStream(journalFile, true);
+      if (bufferedOutputStream == null) {
+        bufferedOutputStream = new ReusableBufferedOutputStream(fileOutputStream);
+      } else {
+        bufferedOutputStream.reset(fileOutputStream);
+      }
+      output = new DataOutputStream(bufferedOutputStream);
+      if (writeHeader) {
+        output.writeInt(JOURNAL_VERSION);
+        output.writeInt((cipher != null ? FLAG_ENCRYPTED_INDEX : 0)
+            | (generation != 0 ? FLAG_GENERATION : 0));
+        if (generation != 0) {
+          output.writeInt(generation);
+        }
+      }
+      output.write(records);
+      output.flush();
+      try {
+        fileOutputStream.getFD().sync();
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to sync cache content index journal:", e);
+      }
+    } catch (IOException e) {
+      throw new CacheException(e);
+    } finally {
+      Util.closeQuietly(output);
+    }
+  }
+
+  /**
+   * Adds a record describing a modification of the given {@link CachedContent} to the records to
+   * be appended to the journal by the next call to {@link #store()}.
+   */
+  private void appendRecord(int type, CachedContent cachedContent) {
+    appendRecord(type, cachedContent, null);
+  }
+
+  /**
+   * Adds a record describing a modification of the given {@link CachedContent}, or of one of its
+   * spans, to the records to be appended to the journal by the next call to {@link #store()}.
+   */
+  private synchronized void appendRecord(int type, CachedContent cachedContent, CacheSpan span) {
+    try {
+      recordBuffer.reset();
+      recordOutput.writeByte(type);
+      recordOutput.writeInt(cachedContent.id);
+      if (type == RECORD_TYPE_ADD) {
+        recordOutput.writeUTF(cachedContent.key);
+      }
+      if (type == RECORD_TYPE_ADD || type == RECORD_TYPE_SET_LENGTH) {
+        recordOutput.writeLong(cachedContent.getLength());
+      }
+      if (type == RECORD_TYPE_ADD_SPAN || type == RECORD_TYPE_REMOVE_SPAN) {
+        recordOutput.writeLong(span.position);
+      }
+      if (type == RECORD_TYPE_ADD_SPAN) {
+        recordOutput.writeLong(span.length);
+        recordOutput.writeLong(span.lastAccessTimestamp);
+      }
+      byte[] payload = recordBuffer.toByteArray();
+      if (recordCipher != null) {
+        byte[] initializationVector = new byte[16];
+        random.nextBytes(initializationVector);
+        try {
+          recordCipher.init(Cipher.ENCRYPT_MODE, secretKeySpec,
+              new IvParameterSpec(initializationVector));
+          byte[] encryptedRecord = recordCipher.doFinal(payload);
+          payload = new byte[16 + encryptedRecord.length];
+          System.arraycopy(initializationVector, 0, payload, 0, 16);
+          System.arraycopy(encryptedRecord, 0, payload, 16, encryptedRecord.length);
+        } catch (GeneralSecurityException e) {
+          throw new IllegalStateException(e); // Should never happen.
+        }
+      }
+      crc32.reset();
+      crc32.update(payload, 0, payload.length);
+      pendingRecordsOutput.writeInt(payload.length);
+      pendingRecordsOutput.writeInt((int) crc32.getValue());
+      pendingRecordsOutput.write(payload);
+      pendingRecordCount++;
+    } catch (IOException e) {
+      throw new IllegalStateException(e); // Should never happen.
+    }
+  }
+
   private void add(CachedContent cachedContent) {
     keyToContent.put(cachedContent.key, cachedContent);
     idToKey.put(cachedContent.id, cachedContent.key);
@@ -331,7 +815,7 @@ import javax.crypto.spec.SecretKeySpec;
   /** Adds the given CachedContent to the index. */
   /*package*/ void addNew(CachedContent cachedContent) {
     add(cachedContent);
-    changed = true;
+    appendRecord(RECORD_TYPE_ADD, cachedContent);
   }
 
   private CachedContent addNew(String key, long length) {
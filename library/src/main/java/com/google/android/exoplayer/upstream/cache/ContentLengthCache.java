@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+/**
+ * A {@link Cache} that records the lengths of the content it caches. {@link CacheDataSource} uses
+ * the recorded lengths to serve requests for content whose lengths are unknown from the cache.
+ */
+public interface ContentLengthCache extends Cache {
+
+  /**
+   * Sets the length of the content with a given key. Once set, requests for the content whose
+   * lengths are unknown can be served from the cache.
+   *
+   * @param key The cache key for the data.
+   * @param length The length of the content.
+   */
+  void setContentLength(String key, long length) throws CacheException;
+
+  /**
+   * Returns the length of the content with a given key, as set by
+   * {@link #setContentLength(String, long)}.
+   *
+   * @param key The cache key for the data.
+   * @return The length of the content, or {@link com.google.android.exoplayer.C#LENGTH_UNBOUNDED}
+   *     if it's unknown.
+   */
+  long getContentLength(String key);
+
+}
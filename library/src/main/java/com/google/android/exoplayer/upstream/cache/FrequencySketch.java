@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+/**
+ * A count-min sketch that estimates the access frequency of items, with 4-bit counters that are
+ * periodically halved so that the estimates favor recent accesses.
+ * <p>
+ * Each item maps to one counter in each of four rows. The four counters of an item are held in
+ * four different words of a single table, sixteen counters per word, so the sketch takes 8 bytes
+ * per counted item and an estimate reads four words.
+ */
+/*package*/ final class FrequencySketch {
+
+  private static final int ROW_COUNT = 4;
+  private static final long MAX_COUNT = 15;
+  private static final long RESET_MASK = 0x7777777777777777L;
+  private static final long[] SEEDS = {
+      0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+  private final long[] table;
+  private final int tableMask;
+  private final int sampleSize;
+
+  private int additions;
+
+  /**
+   * @param maxItemCount The expected maximum number of distinct items in the cache. The sketch is
+   *     sized so that estimates are reasonably accurate for this many items.
+   */
+  public FrequencySketch(int maxItemCount) {
+    int tableSize = Integer.highestOneBit(Math.max(maxItemCount, 16) - 1) << 1;
+    table = new long[tableSize];
+    tableMask = tableSize - 1;
+    sampleSize = 10 * tableSize;
+  }
+
+  /**
+   * Returns the estimated number of accesses of an item, up to 15.
+   *
+   * @param itemHash The hash code of the item.
+   */
+  public int frequency(int itemHash) {
+    int hash = spread(itemHash);
+    int start = (hash & 3) << 2;
+    long frequency = MAX_COUNT;
+    for (int i = 0; i < ROW_COUNT; i++) {
+      int shift = (start + i) << 2;
+      frequency = Math.min(frequency, (table[indexOf(hash, i)] >>> shift) & MAX_COUNT);
+    }
+    return (int) frequency;
+  }
+
+  /**
+   * Records an access of an item.
+   *
+   * @param itemHash The hash code of the item.
+   */
+  public void increment(int itemHash) {
+    int hash = spread(itemHash);
+    int start = (hash & 3) << 2;
+    boolean added = false;
+    for (int i = 0; i < ROW_COUNT; i++) {
+      int index = indexOf(hash, i);
+      int shift = (start + i) << 2;
+      if (((table[index] >>> shift) & MAX_COUNT) != MAX_COUNT) {
+        table[index] += 1L << shift;
+        added = true;
+      }
+    }
+    if (added && ++additions == sampleSize) {
+      reset();
+    }
+  }
+
+  /** Halves every counter, so that old accesses are gradually forgotten. */
+  private void reset() {
+    for (int i = 0; i < table.length; i++) {
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    additions >>>= 1;
+  }
+
+  private int indexOf(int hash, int row) {
+    long index = (hash + SEEDS[row]) * SEEDS[row];
+    index += index >>> 32;
+    return (int) index & tableMask;
+  }
+
+  private static int spread(int hash) {
+    hash *= 0x9e3779b9;
+    return hash ^ (hash >>> 16);
+  }
+
+}
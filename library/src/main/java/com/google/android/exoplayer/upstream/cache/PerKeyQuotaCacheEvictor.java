@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+import com.google.android.exoplayer.upstream.cache.Cache.CacheException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.TreeSet;
+
+/**
+ * Evicts least recently used cache files first, and additionally limits the space used by each
+ * key. When the files of a key would exceed the quota, the least recently used files of that key
+ * are evicted first, so a single long piece of content can't evict everything else.
+ */
+public final class PerKeyQuotaCacheEvictor implements CacheEvictor, Comparator<CacheSpan> {
+
+  private final long maxBytes;
+  private final long maxBytesPerKey;
+  private final TreeSet<CacheSpan> leastRecentlyUsed;
+  private final HashMap<String, KeyUsage> keyUsages;
+
+  private long currentSize;
+
+  /**
+   * @param maxBytes The maximum size of the cache, in bytes.
+   * @param maxBytesPerKey The maximum size of the cached spans of each key, in bytes.
+   */
+  public PerKeyQuotaCacheEvictor(long maxBytes, long maxBytesPerKey) {
+    this.maxBytes = maxBytes;
+    this.maxBytesPerKey = maxBytesPerKey;
+    this.leastRecentlyUsed = new TreeSet<>(this);
+    this.keyUsages = new HashMap<>();
+  }
+
+  @Override
+  public void onCacheInitialized() {
+    // Do nothing.
+  }
+
+  @Override
+  public void onStartFile(Cache cache, String key, long position, long length) {
+    evictKey(cache, keyUsages.get(key), length);
+    evictCache(cache, length);
+  }
+
+  @Override
+  public void onSpanAdded(Cache cache, CacheSpan span) {
+    KeyUsage keyUsage = keyUsages.get(span.key);
+    if (keyUsage == null) {
+      keyUsage = new KeyUsage(this);
+      keyUsages.put(span.key, keyUsage);
+    }
+    keyUsage.spans.add(span);
+    keyUsage.size += span.length;
+    leastRecentlyUsed.add(span);
+    currentSize += span.length;
+    evictKey(cache, keyUsage, 0);
+    evictCache(cache, 0);
+  }
+
+  @Override
+  public void onSpanRemoved(Cache cache, CacheSpan span) {
+    KeyUsage keyUsage = keyUsages.get(span.key);
+    if (keyUsage != null && keyUsage.spans.remove(span)) {
+      keyUsage.size -= span.length;
+      if (keyUsage.spans.isEmpty()) {
+        keyUsages.remove(span.key);
+      }
+    }
+    leastRecentlyUsed.remove(span);
+    currentSize -= span.length;
+  }
+
+  @Override
+  public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    onSpanRemoved(cache, oldSpan);
+    onSpanAdded(cache, newSpan);
+  }
+
+  @Override
+  public int compare(CacheSpan lhs, CacheSpan rhs) {
+    long lastAccessTimestampDelta = lhs.lastAccessTimestamp - rhs.lastAccessTimestamp;
+    if (lastAccessTimestampDelta == 0) {
+      // Use the standard compareTo method as a tie-break.
+      return lhs.compareTo(rhs);
+    }
+    return lhs.lastAccessTimestamp < rhs.lastAccessTimestamp ? -1 : 1;
+  }
+
+  private void evictKey(Cache cache, KeyUsage keyUsage, long requiredSpace) {
+    while (keyUsage != null && keyUsage.size + requiredSpace > maxBytesPerKey
+        && !keyUsage.spans.isEmpty()) {
+      try {
+        cache.removeSpan(keyUsage.spans.first());
+      } catch (CacheException e) {
+        // do nothing.
+      }
+    }
+  }
+
+  private void evictCache(Cache cache, long requiredSpace) {
+    while (currentSize + requiredSpace > maxBytes && !leastRecentlyUsed.isEmpty()) {
+      try {
+        cache.removeSpan(leastRecentlyUsed.first());
+      } catch (CacheException e) {
+        // do nothing.
+      }
+    }
+  }
+
+  private static final class KeyUsage {
+
+    public final TreeSet<CacheSpan> spans;
+    public long size;
+
+    public KeyUsage(Comparator<CacheSpan> comparator) {
+      spans = new TreeSet<>(comparator);
+    }
+
+  }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+import com.google.android.exoplayer.upstream.cache.Cache.CacheException;
+import com.google.android.exoplayer.util.Assertions;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * Evicts cache files using a segmented LRU policy.
+ * <p>
+ * Spans are admitted to a probationary segment, and promoted to a protected segment when they're
+ * accessed again. Spans are evicted from the least recently used end of the probationary segment
+ * first, so content that's read once (for example during a long scan through on-demand content)
+ * can't evict content that's read repeatedly (such as initialization segments and the live window).
+ * When the protected segment exceeds its share of the cache, its least recently used spans are
+ * demoted back to the probationary segment.
+ * <p>
+ * All operations take constant time. Spans that are present when the cache is initialized are
+ * admitted to the probationary segment in the order they're reported by the cache.
+ */
+public final class SegmentedLruCacheEvictor implements CacheEvictor {
+
+  /**
+   * The default fraction of the cache reserved for the protected segment.
+   */
+  public static final float DEFAULT_PROTECTED_FRACTION = 0.8f;
+
+  private final long maxBytes;
+  private final long maxProtectedBytes;
+  private final LinkedHashSet<CacheSpan> probation;
+  private final LinkedHashSet<CacheSpan> protectedSpans;
+
+  private long currentSize;
+  private long protectedSize;
+
+  /**
+   * @param maxBytes The maximum size of the cache, in bytes.
+   */
+  public SegmentedLruCacheEvictor(long maxBytes) {
+    this(maxBytes, DEFAULT_PROTECTED_FRACTION);
+  }
+
+  /**
+   * @param maxBytes The maximum size of the cache, in bytes.
+   * @param protectedFraction The fraction of the cache reserved for the protected segment, in the
+   *     range [0, 1).
+   */
+  public SegmentedLruCacheEvictor(long maxBytes, float protectedFraction) {
+    Assertions.checkArgument(protectedFraction >= 0 && protectedFraction < 1);
+    this.maxBytes = maxBytes;
+    this.maxProtectedBytes = (long) (maxBytes * protectedFraction);
+    this.probation = new LinkedHashSet<>();
+    this.protectedSpans = new LinkedHashSet<>();
+  }
+
+  @Override
+  public void onCacheInitialized() {
+    // Do nothing.
+  }
+
+  @Override
+  public void onStartFile(Cache cache, String key, long position, long length) {
+    evictCache(cache, length);
+  }
+
+  @Override
+  public void onSpanAdded(Cache cache, CacheSpan span) {
+    probation.add(span);
+    currentSize += span.length;
+    evictCache(cache, 0);
+  }
+
+  @Override
+  public void onSpanRemoved(Cache cache, CacheSpan span) {
+    if (protectedSpans.remove(span)) {
+      protectedSize -= span.length;
+    } else {
+      probation.remove(span);
+    }
+    currentSize -= span.length;
+  }
+
+  @Override
+  public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    if (protectedSpans.remove(oldSpan)) {
+      protectedSize -= oldSpan.length;
+    } else {
+      probation.remove(oldSpan);
+    }
+    protectedSpans.add(newSpan);
+    protectedSize += newSpan.length;
+    currentSize += newSpan.length - oldSpan.length;
+    // Demote the least recently used protected spans, but never the span that was just touched.
+    Iterator<CacheSpan> iterator = protectedSpans.iterator();
+    while (protectedSize > maxProtectedBytes && protectedSpans.size() > 1) {
+      CacheSpan demotedSpan = iterator.next();
+      iterator.remove();
+      protectedSize -= demotedSpan.length;
+      probation.add(demotedSpan);
+    }
+  }
+
+  private void evictCache(Cache cache, long requiredSpace) {
+    while (currentSize + requiredSpace > maxBytes
+        && (!probation.isEmpty() || !protectedSpans.isEmpty())) {
+      CacheSpan span = !probation.isEmpty() ? probation.iterator().next()
+          : protectedSpans.iterator().next();
+      try {
+        cache.removeSpan(span);
+      } catch (CacheException e) {
+        // do nothing.
+      }
+    }
+  }
+
+}
@@ -16,28 +16,88 @@
 package com.google.android.exoplayer.upstream.cache;
 
 import android.os.ConditionVariable;
+import android.os.SystemClock;
+import android.util.Log;
 import com.google.android.exoplayer.util.Assertions;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.NavigableSet;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A {@link Cache} implementation that maintains an in-memory representation.
+ * <p>
+ * The cache is safe for concurrent use by many readers and writers:
+ * <ul>
+ *   <li>Queries ({@link #getCachedSpans(String)}, {@link #isCached(String, long, long)},
+ *       {@link #getKeys()} and {@link #getCacheSpace()}) do not acquire any lock.</li>
+ *   <li>Hole spans are locked per key, so {@link #startReadWrite(String, long)} only waits for
+ *       writers of the requested key, and is only woken by events for keys that share its lock
+ *       stripe.</li>
+ *   <li>Changes to the in-memory representation are serialized on the cache instance, which
+ *       guarantees that listeners and the {@link CacheEvictor} are invoked one at a time and in
+ *       order.</li>
+ * </ul>
+ * <p>
+ * By default, initialization lists the cache directory and parses the name of every cache file
+ * before any request is served. If span indexing is enabled, the metadata of cached spans is also
+ * persisted in the index, and requests are served as soon as it has been loaded. The directory is
+ * then reconciled with the index in the background, adding cache files that weren't indexed and
+ * removing indexed spans whose files are missing. Requests served during reconciliation may
+ * observe holes where such cache files haven't been added yet.
  */
-public final class SimpleCache implements Cache {
+public final class SimpleCache implements ContentLengthCache {
+
+  /**
+   * Listener of {@link SimpleCache} initialization events. Methods are invoked on the thread that
+   * initializes the cache.
+   */
+  public interface InitializationListener {
+
+    /**
+     * Invoked when the cache has loaded its in-memory representation and starts serving requests.
+     *
+     * @param cache The source of the event.
+     * @param elapsedMs The time taken since initialization started, in milliseconds.
+     */
+    void onCacheReady(SimpleCache cache, long elapsedMs);
+
+    /**
+     * Invoked when initialization has completed. If span indexing is enabled this is after the
+     * cache directory has been reconciled with the index. Otherwise it's immediately after
+     * {@link #onCacheReady(SimpleCache, long)}.
+     *
+     * @param cache The source of the event.
+     * @param elapsedMs The time taken since initialization started, in milliseconds.
+     */
+    void onInitializationCompleted(SimpleCache cache, long elapsedMs);
+
+  }
+
+  private static final String TAG = "SimpleCache";
+
+  /**
+   * The number of lock stripes used to guard hole spans. Must be a power of two.
+   */
+  private static final int KEY_LOCK_STRIPE_COUNT = 32;
 
   private final File cacheDir;
   private final CacheEvictor evictor;
-  private final HashMap<String, CacheSpan> lockedSpans;
+  private final ConcurrentHashMap<String, CacheSpan> lockedSpans;
+  private final Object[] keyLocks;
+  private final Set<CacheSpan> touchingSpans;
   private final CachedContentIndex index;
   private final HashMap<String, ArrayList<Listener>> listeners;
-  private long totalSpace = 0;
-  private CacheException initializationException;
+  private final InitializationListener initializationListener;
+  private volatile long totalSpace = 0;
+  private volatile boolean initialized;
+  private volatile CacheException initializationException;
 
   /**
    * Constructs the cache. The cache will delete any unrecognized files from the directory. Hence
@@ -60,24 +120,68 @@ public final class SimpleCache implements Cache {
    *     The key must be 16 bytes long.
    */
   public SimpleCache(File cacheDir, CacheEvictor evictor, byte[] secretKey) {
+    this(cacheDir, evictor, secretKey, false, null);
+  }
+
+  /**
+   * Constructs the cache. The cache will delete any unrecognized files from the directory. Hence
+   * the directory cannot be used to store other files.
+   *
+   * @param cacheDir A dedicated cache directory.
+   * @param evictor The evictor to be used.
+   * @param secretKey If not null, cache keys will be stored encrypted on filesystem using AES/CBC.
+   *     The key must be 16 bytes long.
+   * @param indexSpans Whether the metadata of cached spans should be persisted in the index, so
+   *     that requests can be served without waiting for the cache directory to be scanned. An
+   *     index written with span indexing enabled can't be read by earlier versions of this class,
+   *     which will clear the cache.
+   * @param initializationListener A listener of initialization events, or null.
+   */
+  public SimpleCache(File cacheDir, CacheEvictor evictor, byte[] secretKey, boolean indexSpans,
+      InitializationListener initializationListener) {
     this.cacheDir = cacheDir;
     this.evictor = evictor;
-    this.lockedSpans = new HashMap<>();
-    this.index = new CachedContentIndex(cacheDir, secretKey);
+    this.lockedSpans = new ConcurrentHashMap<>();
+    this.keyLocks = new Object[KEY_LOCK_STRIPE_COUNT];
+    for (int i = 0; i < KEY_LOCK_STRIPE_COUNT; i++) {
+      keyLocks[i] = new Object();
+    }
+    this.touchingSpans =
+        Collections.newSetFromMap(new ConcurrentHashMap<CacheSpan, Boolean>());
+    this.index = new CachedContentIndex(cacheDir, secretKey, indexSpans);
     this.listeners = new HashMap<>();
+    this.initializationListener = initializationListener;
     // Start cache initialization.
     final ConditionVariable conditionVariable = new ConditionVariable();
     new Thread("SimpleCache.initialize()") {
       @Override
       public void run() {
+        long startTimeMs = SystemClock.elapsedRealtime();
+        boolean reconciliationRequired = false;
         synchronized (SimpleCache.this) {
           conditionVariable.open();
           try {
-            initialize();
+            reconciliationRequired = initialize();
           } catch (CacheException e) {
             initializationException = e;
           }
           SimpleCache.this.evictor.onCacheInitialized();
+          initialized = true;
+        }
+        if (SimpleCache.this.initializationListener != null) {
+          SimpleCache.this.initializationListener.onCacheReady(SimpleCache.this,
+              SystemClock.elapsedRealtime() - startTimeMs);
+        }
+        if (reconciliationRequired) {
+          try {
+            reconcileCacheDirectory();
+          } catch (CacheException e) {
+            Log.e(TAG, "Failed to reconcile cache directory.", e);
+          }
+        }
+        if (SimpleCache.this.initializationListener != null) {
+          SimpleCache.this.initializationListener.onInitializationCompleted(SimpleCache.this,
+              SystemClock.elapsedRealtime() - startTimeMs);
         }
       }
     }.start();
@@ -107,63 +211,85 @@ public final class SimpleCache implements Cache {
   }
 
   @Override
-  public synchronized NavigableSet<CacheSpan> getCachedSpans(String key) {
+  public NavigableSet<CacheSpan> getCachedSpans(String key) {
+    blockUntilInitialized();
     CachedContent cachedContent = index.get(key);
     return cachedContent == null ? null : new TreeSet<CacheSpan>(cachedContent.getSpans());
   }
 
   @Override
-  public synchronized Set<String> getKeys() {
+  public Set<String> getKeys() {
+    blockUntilInitialized();
     return new HashSet<>(index.getKeys());
   }
 
   @Override
-  public synchronized long getCacheSpace() {
+  public long getCacheSpace() {
+    blockUntilInitialized();
     return totalSpace;
   }
 
   @Override
-  public synchronized SimpleCacheSpan startReadWrite(String key, long position)
+  public SimpleCacheSpan startReadWrite(String key, long position)
       throws InterruptedException, CacheException {
+    Object keyLock = getKeyLock(key);
     while (true) {
       SimpleCacheSpan span = startReadWriteNonBlocking(key, position);
       if (span != null) {
         return span;
-      } else {
-        // Write case, lock not available. We'll be woken up when a locked span is released (if the
-        // released lock is for the requested key then we'll be able to make progress) or when a
-        // span is added to the cache (if the span is for the requested key and covers the requested
-        // position, then we'll become a read and be able to make progress).
-        wait();
+      }
+      synchronized (keyLock) {
+        // Write case, lock not available. We'll be woken up when a locked span for a key in the
+        // same stripe is released (if the released lock is for the requested key then we'll be
+        // able to make progress) or when a span for such a key is added to the cache (if the span
+        // is for the requested key and covers the requested position, then we'll become a read
+        // and be able to make progress). Both happen whilst holding keyLock, so checking the state
+        // again here ensures that the wake up cannot be missed.
+        if (lockedSpans.containsKey(key) && !getSpan(key, position).isCached) {
+          keyLock.wait();
+        }
       }
     }
   }
 
   @Override
-  public synchronized SimpleCacheSpan startReadWriteNonBlocking(String key, long position)
+  public SimpleCacheSpan startReadWriteNonBlocking(String key, long position)
       throws CacheException {
+    blockUntilInitialized();
     if (initializationException != null) {
       throw initializationException;
     }
 
-    SimpleCacheSpan cacheSpan = getSpan(key, position);
+    while (true) {
+      SimpleCacheSpan cacheSpan = getSpan(key, position);
+
+      // Read case.
+      if (cacheSpan.isCached) {
+        // Obtain a new span with updated last access timestamp.
+        SimpleCacheSpan newCacheSpan = touchSpan(cacheSpan);
+        if (newCacheSpan != null) {
+          return newCacheSpan;
+        }
+        // The span was touched or removed by another thread. Look it up again.
+        continue;
+      }
 
-    // Read case.
-    if (cacheSpan.isCached) {
-      // Obtain a new span with updated last access timestamp.
-      SimpleCacheSpan newCacheSpan = index.get(key).touch(cacheSpan);
-      notifySpanTouched(cacheSpan, newCacheSpan);
-      return newCacheSpan;
-    }
+      synchronized (getKeyLock(key)) {
+        // Write case, lock available.
+        if (!lockedSpans.containsKey(key)) {
+          // The hole may have been filled since it was looked up.
+          cacheSpan = getSpan(key, position);
+          if (cacheSpan.isCached) {
+            continue;
+          }
+          lockedSpans.put(key, cacheSpan);
+          return cacheSpan;
+        }
+      }
 
-    // Write case, lock available.
-    if (!lockedSpans.containsKey(key)) {
-      lockedSpans.put(key, cacheSpan);
-      return cacheSpan;
+      // Write case, lock not available.
+      return null;
     }
-
-    // Write case, lock not available.
-    return null;
   }
 
   @Override
@@ -181,8 +307,11 @@ public final class SimpleCache implements Cache {
   }
 
   @Override
-  public synchronized void commitFile(File file) throws CacheException {
-    SimpleCacheSpan span = SimpleCacheSpan.createCacheEntry(file, index);
+  public void commitFile(File file) throws CacheException {
+    SimpleCacheSpan span;
+    synchronized (this) {
+      span = SimpleCacheSpan.createCacheEntry(file, index);
+    }
     Assertions.checkState(span != null);
     Assertions.checkState(lockedSpans.containsKey(span.key));
     // If the file doesn't exist, don't add it to the in-memory representation.
@@ -194,15 +323,23 @@ public final class SimpleCache implements Cache {
       file.delete();
       return;
     }
-    addSpan(span);
+    synchronized (this) {
+      addSpan(span);
+    }
     index.store();
-    notifyAll();
+    Object keyLock = getKeyLock(span.key);
+    synchronized (keyLock) {
+      keyLock.notifyAll();
+    }
   }
 
   @Override
-  public synchronized void releaseHoleSpan(CacheSpan holeSpan) {
-    Assertions.checkState(holeSpan == lockedSpans.remove(holeSpan.key));
-    notifyAll();
+  public void releaseHoleSpan(CacheSpan holeSpan) {
+    Object keyLock = getKeyLock(holeSpan.key);
+    synchronized (keyLock) {
+      Assertions.checkState(lockedSpans.remove(holeSpan.key, holeSpan));
+      keyLock.notifyAll();
+    }
   }
 
   /**
@@ -219,39 +356,120 @@ public final class SimpleCache implements Cache {
    * @return The corresponding cache {@link SimpleCacheSpan}.
    */
   private SimpleCacheSpan getSpan(String key, long position) throws CacheException {
-    CachedContent cachedContent = index.get(key);
-    if (cachedContent == null) {
-      return SimpleCacheSpan.createOpenHole(key, position);
-    }
     while (true) {
+      CachedContent cachedContent = index.get(key);
+      if (cachedContent == null) {
+        return SimpleCacheSpan.createOpenHole(key, position);
+      }
       SimpleCacheSpan span = cachedContent.getSpan(position);
       if (span.isCached && !span.file.exists()) {
-        // The file has been deleted from under us. It's likely that other files will have been
-        // deleted too, so scan the whole in-memory representation.
-        removeStaleSpansAndCachedContents();
+        if (touchingSpans.contains(span)) {
+          synchronized (getKeyLock(key)) {
+            // The file is being renamed by a touch, which holds the lock until it has completed.
+          }
+        } else if (cachedContent.containsSpan(span)) {
+          // The file has been deleted from under us. It's likely that other files will have been
+          // deleted too, so scan the whole in-memory representation.
+          removeStaleSpansAndCachedContents();
+        }
+        // Else the span was touched or removed concurrently, and renamed or deleted its file.
         continue;
       }
       return span;
     }
   }
 
+  /**
+   * Replaces a cached span with a copy whose last access timestamp is updated.
+   * <p>
+   * Touches of spans with the same key are serialized on the key's lock, which allows the file of
+   * the span to be renamed without holding the lock of the cache.
+   *
+   * @param span The span to touch.
+   * @return The new span, or null if {@code span} is no longer part of the cache.
+   * @throws CacheException If renaming of the underlying span file failed.
+   */
+  private SimpleCacheSpan touchSpan(SimpleCacheSpan span) throws CacheException {
+    synchronized (getKeyLock(span.key)) {
+      CachedContent cachedContent = index.get(span.key);
+      if (cachedContent == null || !cachedContent.containsSpan(span)) {
+        return null;
+      }
+      SimpleCacheSpan newSpan = span.copyWithUpdatedLastAccessTime(cachedContent.id);
+      touchingSpans.add(span);
+      try {
+        if (!span.file.renameTo(newSpan.file)) {
+          if (!cachedContent.containsSpan(span)) {
+            // The span was removed concurrently.
+            return null;
+          }
+          throw new CacheException("Renaming of " + span.file + " to " + newSpan.file
+              + " failed.");
+        }
+        synchronized (this) {
+          if (!index.replaceSpan(cachedContent, span, newSpan)) {
+            // The span was removed whilst its file was being renamed.
+            newSpan.file.delete();
+            return null;
+          }
+          notifySpanTouched(span, newSpan);
+        }
+      } finally {
+        touchingSpans.remove(span);
+      }
+      return newSpan;
+    }
+  }
+
+  /**
+   * Returns the lock guarding hole spans for the given key.
+   */
+  private Object getKeyLock(String key) {
+    int hash = key.hashCode();
+    return keyLocks[(hash ^ (hash >>> 16)) & (KEY_LOCK_STRIPE_COUNT - 1)];
+  }
+
+  /**
+   * Blocks until the in-memory representation has been initialized.
+   */
+  private void blockUntilInitialized() {
+    if (!initialized) {
+      synchronized (this) {
+        // The initialization thread holds the lock until initialization has completed.
+      }
+    }
+  }
+
   /**
    * Ensures that the cache's in-memory representation has been initialized.
+   *
+   * @return Whether the in-memory representation was restored from indexed spans, in which case
+   *     the cache directory must be reconciled with it.
    */
-  private void initialize() throws CacheException {
+  private boolean initialize() throws CacheException {
     if (!cacheDir.exists()) {
       cacheDir.mkdirs();
-      return;
+      return false;
     }
 
     index.load();
 
+    if (index.hasIndexedSpans()) {
+      for (CachedContent cachedContent : index.getAll()) {
+        for (SimpleCacheSpan span : cachedContent.getSpans()) {
+          totalSpace += span.length;
+          notifySpanAdded(span);
+        }
+      }
+      return true;
+    }
+
     File[] files = cacheDir.listFiles();
     if (files == null) {
-      return;
+      return false;
     }
     for (File file : files) {
-      if (file.getName().equals(CachedContentIndex.FILE_NAME)) {
+      if (CachedContentIndex.isIndexFile(file.getName())) {
         continue;
       }
       SimpleCacheSpan span = file.length() > 0
@@ -265,6 +483,76 @@ public final class SimpleCache implements Cache {
 
     index.removeEmpty();
     index.store();
+    return false;
+  }
+
+  /**
+   * Reconciles the in-memory representation restored from indexed spans with the cache directory.
+   * Cache files which aren't indexed, for example because the process was killed before the index
+   * was stored, are added or deleted, and indexed spans whose files are missing are removed.
+   * Requests are served concurrently.
+   */
+  private void reconcileCacheDirectory() throws CacheException {
+    // Collect the file names before listing the directory. A span touched in between will have its
+    // new file listed, which is checked by reconcileFile, and its old name left over.
+    HashSet<String> indexedFileNames = new HashSet<>();
+    for (CachedContent cachedContent : index.getAll()) {
+      for (SimpleCacheSpan span : cachedContent.getSpans()) {
+        indexedFileNames.add(span.file.getName());
+      }
+    }
+    File[] files = cacheDir.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      String name = file.getName();
+      if (!indexedFileNames.remove(name) && !CachedContentIndex.isIndexFile(name)) {
+        reconcileFile(file);
+      }
+    }
+    if (!indexedFileNames.isEmpty()) {
+      removeStaleSpansAndCachedContents();
+    } else {
+      synchronized (this) {
+        removeEmptyCachedContents();
+      }
+      index.store();
+    }
+  }
+
+  /**
+   * Adds a cache file which isn't indexed to the in-memory representation, or deletes it if it
+   * isn't a valid cache file.
+   */
+  private synchronized void reconcileFile(File file) {
+    if (!file.exists()) {
+      // The file was renamed by a touch or deleted since the directory was listed.
+      return;
+    }
+    SimpleCacheSpan span = SimpleCacheSpan.createCacheEntry(file, index);
+    if (span != null && lockedSpans.containsKey(span.key)) {
+      // The file may be being written, in which case it's added when committed.
+      return;
+    }
+    if (span == null || span.length == 0) {
+      file.delete();
+      return;
+    }
+    CachedContent cachedContent = index.get(span.key);
+    SimpleCacheSpan indexedSpan = cachedContent.getSpan(span.position);
+    if (!indexedSpan.isCached || indexedSpan.position != span.position) {
+      addSpan(span);
+    } else if (indexedSpan.file.equals(span.file) || touchingSpans.contains(indexedSpan)) {
+      // The span was added or touched concurrently.
+    } else if (indexedSpan.file.exists()) {
+      // Keep the indexed file, and delete the duplicate.
+      file.delete();
+    } else if (index.replaceSpan(cachedContent, indexedSpan, span)) {
+      // The touch that renamed the file wasn't stored in the index.
+      totalSpace += span.length - indexedSpan.length;
+      notifySpanTouched(indexedSpan, span);
+    }
   }
 
   /**
@@ -273,16 +561,20 @@ public final class SimpleCache implements Cache {
    * @param span The span to be added.
    */
   private void addSpan(SimpleCacheSpan span) {
-    index.add(span.key).addSpan(span);
+    index.addSpan(span);
     totalSpace += span.length;
     notifySpanAdded(span);
   }
 
   private void removeSpan(CacheSpan span, boolean removeEmptyCachedContent) throws CacheException {
     CachedContent cachedContent = index.get(span.key);
-    Assertions.checkState(cachedContent.removeSpan(span));
+    if (cachedContent == null || !index.removeSpan(cachedContent, span)) {
+      // The span has already been removed or replaced by a concurrent operation.
+      return;
+    }
     totalSpace -= span.length;
-    if (removeEmptyCachedContent && cachedContent.isEmpty()) {
+    if (removeEmptyCachedContent && cachedContent.isEmpty()
+        && !lockedSpans.containsKey(cachedContent.key)) {
       index.removeEmpty(cachedContent.key);
       index.store();
     }
@@ -298,11 +590,11 @@ public final class SimpleCache implements Cache {
    * Scans all of the cached spans in the in-memory representation, removing any for which files
    * no longer exist.
    */
-  private void removeStaleSpansAndCachedContents() throws CacheException {
+  private synchronized void removeStaleSpansAndCachedContents() throws CacheException {
     LinkedList<CacheSpan> spansToBeRemoved = new LinkedList<>();
     for (CachedContent cachedContent : index.getAll()) {
       for (CacheSpan span : cachedContent.getSpans()) {
-        if (!span.file.exists()) {
+        if (!span.file.exists() && !touchingSpans.contains(span)) {
           spansToBeRemoved.add(span);
         }
       }
@@ -311,10 +603,22 @@ public final class SimpleCache implements Cache {
       // Remove span but not CachedContent to prevent multiple index.store() calls.
       removeSpan(span, false);
     }
-    index.removeEmpty();
+    removeEmptyCachedContents();
     index.store();
   }
 
+  /**
+   * Removes empty {@link CachedContent} instances from the index, except for those of keys which
+   * are being written.
+   */
+  private void removeEmptyCachedContents() {
+    for (CachedContent cachedContent : index.getAll()) {
+      if (cachedContent.isEmpty() && !lockedSpans.containsKey(cachedContent.key)) {
+        index.removeEmpty(cachedContent.key);
+      }
+    }
+  }
+
   private void notifySpanRemoved(CacheSpan span) {
     ArrayList<Listener> keyListeners = listeners.get(span.key);
     if (keyListeners != null) {
@@ -346,9 +650,22 @@ public final class SimpleCache implements Cache {
   }
 
   @Override
-  public synchronized boolean isCached(String key, long position, long length) {
+  public boolean isCached(String key, long position, long length) {
+    blockUntilInitialized();
     CachedContent cachedContent = index.get(key);
     return cachedContent != null && cachedContent.isCached(position, length);
   }
 
+  @Override
+  public synchronized void setContentLength(String key, long length) throws CacheException {
+    index.setContentLength(key, length);
+    index.store();
+  }
+
+  @Override
+  public long getContentLength(String key) {
+    blockUntilInitialized();
+    return index.getContentLength(key);
+  }
+
 }
@@ -23,7 +23,8 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * This class stores span metadata in filename.
+ * This class stores span metadata in filename. The metadata may also be persisted in the
+ * {@link CachedContentIndex}.
  */
 /*package*/ final class SimpleCacheSpan extends CacheSpan {
 
@@ -81,6 +82,24 @@ import java.util.regex.Pattern;
         Long.parseLong(matcher.group(3)), file);
   }
 
+  /**
+   * Creates a cache span from metadata persisted in the content index. Unlike
+   * {@link #createCacheEntry(File, CachedContentIndex)}, this doesn't access the file system.
+   *
+   * @param cacheDir The cache directory.
+   * @param id The cache file id.
+   * @param key The cache key.
+   * @param position The position of the span in the original stream.
+   * @param length The length of the span.
+   * @param lastAccessTimestamp The last access timestamp of the span.
+   * @return The span.
+   */
+  public static SimpleCacheSpan createIndexedEntry(File cacheDir, int id, String key,
+      long position, long length, long lastAccessTimestamp) {
+    return new SimpleCacheSpan(key, position, length, lastAccessTimestamp,
+        getCacheFile(cacheDir, id, position, lastAccessTimestamp));
+  }
+
   private static File upgradeFile(File file, CachedContentIndex index) {
     String key;
     String filename = file.getName();
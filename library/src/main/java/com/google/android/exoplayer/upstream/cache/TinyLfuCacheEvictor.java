@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+import com.google.android.exoplayer.upstream.cache.Cache.CacheException;
+import com.google.android.exoplayer.util.Assertions;
+import java.util.LinkedHashSet;
+
+/**
+ * Evicts cache files using a W-TinyLFU policy.
+ * <p>
+ * Added spans enter a small least recently used admission window. Spans leaving the window are
+ * candidates for admission to the main least recently used region. When the cache is full, a
+ * candidate is only admitted if it's accessed at least as frequently as the least recently used
+ * span of the main region, which is evicted in its place. Otherwise the candidate is evicted
+ * itself. Access frequencies of spans, identified by their key and position, are estimated by a
+ * count-min sketch that's updated whenever a span is read or written. Spans that are read
+ * repeatedly can therefore only be evicted by spans that are read about as often, and not by a
+ * scan through content that's read once, whilst the window retains recently added spans long
+ * enough for them to build up frequency.
+ * <p>
+ * Space isn't reserved when a file is started, since the admission decision is made once the span
+ * has been written. The cache can therefore temporarily exceed its maximum size by the size of
+ * files being written.
+ */
+public final class TinyLfuCacheEvictor implements CacheEvictor {
+
+  /**
+   * The default fraction of the cache used by the admission window. Streaming workloads favor
+   * recency, since segments near the live edge are typically read again shortly after they're
+   * written, so the window is larger than is usual for general purpose caches.
+   */
+  public static final float DEFAULT_WINDOW_FRACTION = 0.2f;
+
+  private final long maxBytes;
+  private final long maxWindowBytes;
+  private final FrequencySketch sketch;
+  private final LinkedHashSet<CacheSpan> window;
+  private final LinkedHashSet<CacheSpan> main;
+
+  private long currentSize;
+  private long windowSize;
+
+  /**
+   * @param maxBytes The maximum size of the cache, in bytes.
+   * @param maxSpanCount The expected maximum number of spans in the cache, used to size the
+   *     frequency sketch.
+   */
+  public TinyLfuCacheEvictor(long maxBytes, int maxSpanCount) {
+    this(maxBytes, maxSpanCount, DEFAULT_WINDOW_FRACTION);
+  }
+
+  /**
+   * @param maxBytes The maximum size of the cache, in bytes.
+   * @param maxSpanCount The expected maximum number of spans in the cache, used to size the
+   *     frequency sketch.
+   * @param windowFraction The fraction of the cache used by the admission window, in the range
+   *     [0, 1).
+   */
+  public TinyLfuCacheEvictor(long maxBytes, int maxSpanCount, float windowFraction) {
+    Assertions.checkArgument(windowFraction >= 0 && windowFraction < 1);
+    this.maxBytes = maxBytes;
+    this.maxWindowBytes = (long) (maxBytes * windowFraction);
+    this.sketch = new FrequencySketch(maxSpanCount);
+    this.window = new LinkedHashSet<>();
+    this.main = new LinkedHashSet<>();
+  }
+
+  @Override
+  public void onCacheInitialized() {
+    // Do nothing.
+  }
+
+  @Override
+  public void onStartFile(Cache cache, String key, long position, long length) {
+    sketch.increment(hashCode(key, position));
+  }
+
+  @Override
+  public void onSpanAdded(Cache cache, CacheSpan span) {
+    window.add(span);
+    windowSize += span.length;
+    currentSize += span.length;
+    while (windowSize > maxWindowBytes && !window.isEmpty()) {
+      CacheSpan candidate = window.iterator().next();
+      window.remove(candidate);
+      windowSize -= candidate.length;
+      main.add(candidate);
+      if (currentSize > maxBytes) {
+        CacheSpan victim = main.iterator().next();
+        if (victim != candidate && frequency(candidate) < frequency(victim)) {
+          // The candidate isn't admitted.
+          victim = candidate;
+        }
+        removeSpan(cache, victim);
+      }
+    }
+    while (currentSize > maxBytes && (!main.isEmpty() || !window.isEmpty())) {
+      removeSpan(cache, !main.isEmpty() ? main.iterator().next() : window.iterator().next());
+    }
+  }
+
+  @Override
+  public void onSpanRemoved(Cache cache, CacheSpan span) {
+    if (window.remove(span)) {
+      windowSize -= span.length;
+    } else {
+      main.remove(span);
+    }
+    currentSize -= span.length;
+  }
+
+  @Override
+  public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    sketch.increment(hashCode(newSpan.key, newSpan.position));
+    if (window.remove(oldSpan)) {
+      window.add(newSpan);
+      windowSize += newSpan.length - oldSpan.length;
+    } else {
+      main.remove(oldSpan);
+      main.add(newSpan);
+    }
+    currentSize += newSpan.length - oldSpan.length;
+  }
+
+  private int frequency(CacheSpan span) {
+    return sketch.frequency(hashCode(span.key, span.position));
+  }
+
+  private static void removeSpan(Cache cache, CacheSpan span) {
+    try {
+      cache.removeSpan(span);
+    } catch (CacheException e) {
+      // do nothing.
+    }
+  }
+
+  private static int hashCode(String key, long position) {
+    return 31 * key.hashCode() + (int) (position ^ (position >>> 32));
+  }
+
+}
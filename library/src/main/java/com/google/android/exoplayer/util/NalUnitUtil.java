@@ -17,6 +17,7 @@ package com.google.android.exoplayer.util;
 
 import android.util.Log;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 
 /**
@@ -26,6 +27,15 @@ public final class NalUnitUtil {
 
   private static final String TAG = "NalUnitUtil";
 
+  /**
+   * The minimum number of bytes to search for which {@link #findNalUnit(byte[], int, int,
+   * boolean[])} reads the data a word at a time. Shorter ranges, which don't span two words, are
+   * read a byte at a time.
+   */
+  private static final int WORD_SCAN_MIN_LENGTH = 16;
+  private static final long ONES = 0x0101010101010101L;
+  private static final long HIGH_BITS = 0x8080808080808080L;
+
   /**
    * Holds data parsed from a sequence parameter set NAL unit.
    */
@@ -403,23 +413,14 @@ public final class NalUnitUtil {
       }
     }
 
-    int limit = endOffset - 1;
-    // We're looking for the NAL unit start code prefix 0x000001. The value of i tracks the index of
-    // the third byte.
-    for (int i = startOffset + 2; i < limit; i += 3) {
-      if ((data[i] & 0xFE) != 0) {
-        // There isn't a NAL prefix here, or at the next two positions. Do nothing and let the
-        // loop advance the index by three.
-      } else if (data[i - 2] == 0 && data[i - 1] == 0 && data[i] == 1) {
-        if (prefixFlags != null) {
-          clearPrefixFlags(prefixFlags);
-        }
-        return i - 2;
-      } else {
-        // There isn't a NAL prefix here, but there might be at the next position. We should
-        // only skip forward by one. The loop will skip forward by three, so subtract two here.
-        i -= 2;
+    int nalUnitOffset = length >= WORD_SCAN_MIN_LENGTH
+        ? findNalUnitByWord(data, startOffset, endOffset)
+        : findNalUnitByByte(data, startOffset, endOffset);
+    if (nalUnitOffset != endOffset) {
+      if (prefixFlags != null) {
+        clearPrefixFlags(prefixFlags);
       }
+      return nalUnitOffset;
     }
 
     if (prefixFlags != null) {
@@ -438,6 +439,84 @@ public final class NalUnitUtil {
     return endOffset;
   }
 
+  /**
+   * Finds the first NAL unit start code prefix that's followed by at least one byte, inspecting
+   * each byte that might be the last byte of a prefix.
+   *
+   * @param data The data to search.
+   * @param startOffset The offset (inclusive) in the data to start the search.
+   * @param endOffset The offset (exclusive) in the data to end the search.
+   * @return The offset of the prefix, or {@code endOffset} if a prefix was not found.
+   */
+  private static int findNalUnitByByte(byte[] data, int startOffset, int endOffset) {
+    // We're looking for the NAL unit start code prefix 0x000001, followed by at least one byte.
+    int limit = endOffset - 1;
+    // The value of i tracks the index of the third byte.
+    for (int i = startOffset + 2; i < limit; i += 3) {
+      if ((data[i] & 0xFE) != 0) {
+        // There isn't a NAL prefix here, or at the next two positions. Do nothing and let the
+        // loop advance the index by three.
+      } else if (data[i - 2] == 0 && data[i - 1] == 0 && data[i] == 1) {
+        return i - 2;
+      } else {
+        // There isn't a NAL prefix here, but there might be at the next position. We should
+        // only skip forward by one. The loop will skip forward by three, so subtract two here.
+        i -= 2;
+      }
+    }
+    return endOffset;
+  }
+
+  /**
+   * Finds the first NAL unit start code prefix that's followed by at least one byte, reading the
+   * data eight bytes at a time. Only bytes equal to 1, which may be the last byte of a prefix, are
+   * inspected individually. The data is read in little endian order, so that the lowest byte equal
+   * to 1 in each word is the first such byte in the data.
+   *
+   * @param data The data to search.
+   * @param startOffset The offset (inclusive) in the data to start the search.
+   * @param endOffset The offset (exclusive) in the data to end the search.
+   * @return The offset of the prefix, or {@code endOffset} if a prefix was not found.
+   */
+  private static int findNalUnitByWord(byte[] data, int startOffset, int endOffset) {
+    ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+    // The value of i tracks the index of the third byte of the prefix, which must be followed by at
+    // least one byte.
+    int limit = endOffset - 1;
+    int lastWordOffset = limit - 8;
+    int i = startOffset + 2;
+    while (i <= lastWordOffset) {
+      // XOR maps bytes equal to 1 to 0. The lowest zero byte is the lowest byte whose highest bit
+      // is set when one is subtracted from each byte.
+      long word = buffer.getLong(i) ^ ONES;
+      long zeroBytes = (word - ONES) & ~word & HIGH_BITS;
+      if (zeroBytes == 0) {
+        i += 8;
+        continue;
+      }
+      i += Long.numberOfTrailingZeros(zeroBytes) >>> 3;
+      if (data[i - 2] == 0 && data[i - 1] == 0) {
+        return i - 2;
+      }
+      i++;
+    }
+    if (i < limit) {
+      // Read the last word before the limit, which overlaps bytes that have already been inspected,
+      // and mask those bytes out. Bytes above the lowest zero byte may be set by a borrow, so each
+      // candidate is checked.
+      long word = buffer.getLong(lastWordOffset) ^ ONES;
+      long zeroBytes = (word - ONES) & ~word & HIGH_BITS & (-1L << ((i - lastWordOffset) << 3));
+      while (zeroBytes != 0) {
+        i = lastWordOffset + (Long.numberOfTrailingZeros(zeroBytes) >>> 3);
+        if (data[i] == 1 && data[i - 2] == 0 && data[i - 1] == 0) {
+          return i - 2;
+        }
+        zeroBytes &= zeroBytes - 1;
+      }
+    }
+    return endOffset;
+  }
+
   /**
    * Clears prefix flags, as used by {@link #findNalUnit(byte[], int, int, boolean[])}.
    *
@@ -17,9 +17,16 @@ package com.google.android.exoplayer.util;
 
 /**
  * Wraps a byte array, providing methods that allow it to be read as a bitstream.
+ * <p>
+ * Multi-bit and Exp-Golomb-coded reads are served from a cached 64-bit word holding the eight
+ * bytes that follow a byte offset in {@link #data}. The cached word is discarded by
+ * {@link #reset(byte[], int)} and {@link #setPosition(int)}, so a caller that modifies
+ * {@link #data} directly must call one of them before reading the modified bytes.
  */
 public final class ParsableBitArray {
 
+  private static final int NO_WORD = Integer.MAX_VALUE;
+
   public byte[] data;
 
   // The offset within the data, stored as the current byte offset, and the bit offset within that
@@ -28,6 +35,11 @@ public final class ParsableBitArray {
   private int bitOffset;
   private int byteLimit;
 
+  // The byte offset of the first byte held in word, or NO_WORD if word is invalid. Bytes past the
+  // end of the data are held as zeros.
+  private int wordByteOffset = NO_WORD;
+  private long word;
+
   /** Creates a new instance that initially has no backing data. */
   public ParsableBitArray() {}
 
@@ -71,6 +83,7 @@ public final class ParsableBitArray {
     byteOffset = 0;
     bitOffset = 0;
     byteLimit = limit;
+    wordByteOffset = NO_WORD;
   }
 
   /**
@@ -97,6 +110,7 @@ public final class ParsableBitArray {
   public void setPosition(int position) {
     byteOffset = position / 8;
     bitOffset = position - (byteOffset * 8);
+    wordByteOffset = NO_WORD;
     assertValidOffset();
   }
 
@@ -121,7 +135,13 @@ public final class ParsableBitArray {
    * @return True if the bit is set. False otherwise.
    */
   public boolean readBit() {
-    return readBits(1) == 1;
+    boolean returnValue = (data[byteOffset] & (0x80 >> bitOffset)) != 0;
+    if (++bitOffset == 8) {
+      bitOffset = 0;
+      byteOffset++;
+    }
+    assertValidOffset();
+    return returnValue;
   }
 
   /**
@@ -134,46 +154,9 @@ public final class ParsableBitArray {
     if (numBits == 0) {
       return 0;
     }
-
-    int returnValue = 0;
-
-    // Read as many whole bytes as we can.
-    int wholeBytes = (numBits / 8);
-    for (int i = 0; i < wholeBytes; i++) {
-      int byteValue;
-      if (bitOffset != 0) {
-        byteValue = ((data[byteOffset] & 0xFF) << bitOffset)
-            | ((data[byteOffset + 1] & 0xFF) >>> (8 - bitOffset));
-      } else {
-        byteValue = data[byteOffset];
-      }
-      numBits -= 8;
-      returnValue |= (byteValue & 0xFF) << numBits;
-      byteOffset++;
-    }
-
-    // Read any remaining bits.
-    if (numBits > 0) {
-      int nextBit = bitOffset + numBits;
-      byte writeMask = (byte) (0xFF >> (8 - numBits));
-
-      if (nextBit > 8) {
-        // Combine bits from current byte and next byte.
-        returnValue |= ((((data[byteOffset] & 0xFF) << (nextBit - 8)
-            | ((data[byteOffset + 1] & 0xFF) >> (16 - nextBit))) & writeMask));
-        byteOffset++;
-      } else {
-        // Bits to be read only within current byte.
-        returnValue |= (((data[byteOffset] & 0xFF) >> (8 - nextBit)) & writeMask);
-        if (nextBit == 8) {
-          byteOffset++;
-        }
-      }
-
-      bitOffset = nextBit % 8;
-    }
-
-    assertValidOffset();
+    int shift = getWordShift(numBits);
+    int returnValue = (int) ((word << shift) >>> (64 - numBits));
+    advance(numBits);
     return returnValue;
   }
 
@@ -184,16 +167,25 @@ public final class ParsableBitArray {
    * @return Whether it is possible to read an Exp-Golomb-coded integer.
    */
   public boolean canReadExpGolombCodedNum() {
-    int initialByteOffset = byteOffset;
-    int initialBitOffset = bitOffset;
-    int leadingZeros = 0;
-    while (byteOffset < byteLimit && !readBit()) {
-      leadingZeros++;
+    if (byteOffset == byteLimit) {
+      return false;
     }
-    boolean hitLimit = byteOffset == byteLimit;
-    byteOffset = initialByteOffset;
-    bitOffset = initialBitOffset;
-    return !hitLimit && bitsLeft() >= leadingZeros * 2 + 1;
+    // Find the first set bit, a byte at a time. The bits of the current byte that have already been
+    // read are masked off, and excluded from the count.
+    int index = byteOffset;
+    int value = data[index] & (0xFF >> bitOffset);
+    int leadingZeros = -bitOffset;
+    while (value == 0) {
+      leadingZeros += 8;
+      if (++index == byteLimit) {
+        return false;
+      }
+      value = data[index] & 0xFF;
+    }
+    leadingZeros += Integer.numberOfLeadingZeros(value) - 24;
+    // Reading the set bit so as to reach the limit is treated as hitting the limit.
+    int bitsLeft = bitsLeft();
+    return leadingZeros + 1 < bitsLeft && bitsLeft >= leadingZeros * 2 + 1;
   }
 
   /**
@@ -216,13 +208,65 @@ public final class ParsableBitArray {
   }
 
   private int readExpGolombCodeNum() {
-    int leadingZeros = 0;
+    int shift = getWordShift(1);
+    if (shift > bitOffset && Long.numberOfLeadingZeros(word << shift) * 2 + 1 > 64 - shift) {
+      // The code may continue past the end of the word, so load the word from the current byte.
+      loadWord();
+      shift = bitOffset;
+    }
+    long bits = word << shift;
+    int leadingZeros = Long.numberOfLeadingZeros(bits);
+    int codeLength = leadingZeros * 2 + 1;
+    if (codeLength <= 64 - shift) {
+      advance(codeLength);
+      return (int) (bits >>> (64 - codeLength)) - 1;
+    }
+    // The code is longer than the bits held in the word, or runs past the end of the data.
+    leadingZeros = 0;
     while (!readBit()) {
       leadingZeros++;
     }
     return (1 << leadingZeros) - 1 + (leadingZeros > 0 ? readBits(leadingZeros) : 0);
   }
 
+  /**
+   * Returns the number of bits by which {@link #word} must be shifted left to align the bit at the
+   * current offset with its top bit, first loading the word if it doesn't hold the next
+   * {@code numBits} bits.
+   */
+  private int getWordShift(int numBits) {
+    if (byteOffset < wordByteOffset
+        || (byteOffset - wordByteOffset) * 8 + bitOffset + numBits > 64) {
+      loadWord();
+    }
+    return (byteOffset - wordByteOffset) * 8 + bitOffset;
+  }
+
+  private void loadWord() {
+    long value = 0;
+    if (byteOffset + 8 <= data.length) {
+      for (int i = 0; i < 8; i++) {
+        value = (value << 8) | (data[byteOffset + i] & 0xFF);
+      }
+    } else {
+      for (int i = 0; i < 8; i++) {
+        value <<= 8;
+        if (byteOffset + i < data.length) {
+          value |= data[byteOffset + i] & 0xFF;
+        }
+      }
+    }
+    word = value;
+    wordByteOffset = byteOffset;
+  }
+
+  private void advance(int numBits) {
+    int nextBit = bitOffset + numBits;
+    byteOffset += nextBit / 8;
+    bitOffset = nextBit % 8;
+    assertValidOffset();
+  }
+
   private void assertValidOffset() {
     // It is fine for position to be at the end of the array, but no further.
     Assertions.checkState(byteOffset >= 0
@@ -15,10 +15,6 @@
  */
 package com.google.android.exoplayer.util;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-
 /**
  * Calculate any percentile over a sliding window of weighted values. A maximum total weight is
  * configured. Once the maximum weight is reached, the oldest value is reduced in weight until it
@@ -27,48 +23,41 @@ import java.util.Comparator;
  * SlidingPercentile can be used for bandwidth estimation based on a sliding window of past
  * download rate observations. This is an alternative to sliding mean and exponential averaging
  * which suffer from susceptibility to outliers and slow adaptation to step functions.
+ * <p>
+ * Samples are held in a treap ordered by value, in which each node also holds the total weight of
+ * its subtree. Adding a sample and computing a percentile therefore take logarithmic time. The
+ * nodes are stored in arrays that are reused, so no allocations are made once the number of
+ * samples in the window has peaked.
  *
  * @see <a href="http://en.wikipedia.org/wiki/Moving_average">Wiki: Moving average</a>
  * @see <a href="http://en.wikipedia.org/wiki/Selection_algorithm">Wiki: Selection algorithm</a>
  */
 public final class SlidingPercentile {
 
-  // Orderings.
-  private static final Comparator<Sample> INDEX_COMPARATOR = new Comparator<Sample>() {
-    @Override
-    public int compare(Sample a, Sample b) {
-      return a.index - b.index;
-    }
-  };
-
-  private static final Comparator<Sample> VALUE_COMPARATOR = new Comparator<Sample>() {
-    @Override
-    public int compare(Sample a, Sample b) {
-      return a.value < b.value ? -1 : b.value < a.value ? 1 : 0;
-    }
-  };
-
-  private static final int SORT_ORDER_NONE = -1;
-  private static final int SORT_ORDER_BY_VALUE = 0;
-  private static final int SORT_ORDER_BY_INDEX = 1;
-
-  private static final int MAX_RECYCLED_SAMPLES = 5;
+  private static final int NONE = -1;
+  private static final int INITIAL_CAPACITY = 16;
 
   private final int maxWeight;
-  private final ArrayList<Sample> samples;
 
-  private final Sample[] recycledSamples;
+  // The nodes of the treap. Nodes are allocated in order of age from a circular buffer, so the
+  // oldest sample is always the node at the start of the buffer.
+  private int[] indices;
+  private float[] values;
+  private int[] weights;
+  private int[] subtreeWeights;
+  private int[] lefts;
+  private int[] rights;
 
-  private int currentSortOrder;
+  private int root;
+  private int oldestNode;
+  private int sampleCount;
   private int nextSampleIndex;
   private int totalWeight;
-  private int recycledSampleCount;
 
   public SlidingPercentile(int maxWeight) {
     this.maxWeight = maxWeight;
-    recycledSamples = new Sample[MAX_RECYCLED_SAMPLES];
-    samples = new ArrayList<>();
-    currentSortOrder = SORT_ORDER_NONE;
+    allocateNodes(INITIAL_CAPACITY);
+    root = NONE;
   }
 
   /**
@@ -79,27 +68,28 @@ public final class SlidingPercentile {
    * @param value The value of the new observation.
    */
   public void addSample(int weight, float value) {
-    ensureSortedByIndex();
-
-    Sample newSample = recycledSampleCount > 0 ? recycledSamples[--recycledSampleCount]
-        : new Sample();
-    newSample.index = nextSampleIndex++;
-    newSample.weight = weight;
-    newSample.value = value;
-    samples.add(newSample);
+    if (sampleCount == indices.length) {
+      growNodes();
+    }
+    int node = (oldestNode + sampleCount++) % indices.length;
+    indices[node] = nextSampleIndex++;
+    values[node] = value;
+    weights[node] = weight;
+    subtreeWeights[node] = weight;
+    lefts[node] = NONE;
+    rights[node] = NONE;
+    root = insert(root, node);
     totalWeight += weight;
 
     while (totalWeight > maxWeight) {
       int excessWeight = totalWeight - maxWeight;
-      Sample oldestSample = samples.get(0);
-      if (oldestSample.weight <= excessWeight) {
-        totalWeight -= oldestSample.weight;
-        samples.remove(0);
-        if (recycledSampleCount < MAX_RECYCLED_SAMPLES) {
-          recycledSamples[recycledSampleCount++] = oldestSample;
-        }
+      if (weights[oldestNode] <= excessWeight) {
+        totalWeight -= weights[oldestNode];
+        root = remove(root, oldestNode);
+        oldestNode = (oldestNode + 1) % indices.length;
+        sampleCount--;
       } else {
-        oldestSample.weight -= excessWeight;
+        reduceWeight(root, oldestNode, excessWeight);
         totalWeight -= excessWeight;
       }
     }
@@ -112,46 +102,175 @@ public final class SlidingPercentile {
    * @return The requested percentile value or Float.NaN.
    */
   public float getPercentile(float percentile) {
-    ensureSortedByValue();
     float desiredWeight = percentile * totalWeight;
     int accumulatedWeight = 0;
-    for (int i = 0; i < samples.size(); i++) {
-      Sample currentSample = samples.get(i);
-      accumulatedWeight += currentSample.weight;
-      if (accumulatedWeight >= desiredWeight) {
-        return currentSample.value;
+    int node = root;
+    while (node != NONE) {
+      int left = lefts[node];
+      int leftWeight = left == NONE ? 0 : subtreeWeights[left];
+      if (accumulatedWeight + leftWeight >= desiredWeight) {
+        node = left;
+      } else if (accumulatedWeight + leftWeight + weights[node] >= desiredWeight) {
+        return values[node];
+      } else {
+        accumulatedWeight += leftWeight + weights[node];
+        node = rights[node];
       }
     }
-    // Clamp to maximum value or NaN if no values.
-    return samples.isEmpty() ? Float.NaN : samples.get(samples.size() - 1).value;
+    if (root == NONE) {
+      return Float.NaN;
+    }
+    // Clamp to the maximum value.
+    node = root;
+    while (rights[node] != NONE) {
+      node = rights[node];
+    }
+    return values[node];
   }
 
   /**
-   * Sort the samples by index, if not already.
+   * Inserts {@code node} into the subtree rooted at {@code subtree}, returning the new root.
    */
-  private void ensureSortedByIndex() {
-    if (currentSortOrder != SORT_ORDER_BY_INDEX) {
-      Collections.sort(samples, INDEX_COMPARATOR);
-      currentSortOrder = SORT_ORDER_BY_INDEX;
+  private int insert(int subtree, int node) {
+    if (subtree == NONE) {
+      return node;
     }
+    subtreeWeights[subtree] += weights[node];
+    if (compare(node, subtree) < 0) {
+      lefts[subtree] = insert(lefts[subtree], node);
+      if (priority(lefts[subtree]) > priority(subtree)) {
+        subtree = rotateRight(subtree);
+      }
+    } else {
+      rights[subtree] = insert(rights[subtree], node);
+      if (priority(rights[subtree]) > priority(subtree)) {
+        subtree = rotateLeft(subtree);
+      }
+    }
+    return subtree;
   }
 
   /**
-   * Sort the samples by value, if not already.
+   * Removes {@code node} from the subtree rooted at {@code subtree}, returning the new root.
    */
-  private void ensureSortedByValue() {
-    if (currentSortOrder != SORT_ORDER_BY_VALUE) {
-      Collections.sort(samples, VALUE_COMPARATOR);
-      currentSortOrder = SORT_ORDER_BY_VALUE;
+  private int remove(int subtree, int node) {
+    if (subtree == node) {
+      return merge(lefts[node], rights[node]);
     }
+    subtreeWeights[subtree] -= weights[node];
+    if (compare(node, subtree) < 0) {
+      lefts[subtree] = remove(lefts[subtree], node);
+    } else {
+      rights[subtree] = remove(rights[subtree], node);
+    }
+    return subtree;
   }
 
-  private static class Sample {
+  /**
+   * Merges two subtrees, where all values in {@code left} precede those in {@code right}.
+   */
+  private int merge(int left, int right) {
+    if (left == NONE) {
+      return right;
+    } else if (right == NONE) {
+      return left;
+    } else if (priority(left) > priority(right)) {
+      subtreeWeights[left] += subtreeWeights[right];
+      rights[left] = merge(rights[left], right);
+      return left;
+    } else {
+      subtreeWeights[right] += subtreeWeights[left];
+      lefts[right] = merge(left, lefts[right]);
+      return right;
+    }
+  }
 
-    public int index;
-    public int weight;
-    public float value;
+  private void reduceWeight(int subtree, int node, int weight) {
+    while (true) {
+      subtreeWeights[subtree] -= weight;
+      if (subtree == node) {
+        weights[node] -= weight;
+        return;
+      }
+      subtree = compare(node, subtree) < 0 ? lefts[subtree] : rights[subtree];
+    }
+  }
+
+  private int rotateRight(int node) {
+    int left = lefts[node];
+    lefts[node] = rights[left];
+    rights[left] = node;
+    subtreeWeights[left] = subtreeWeights[node];
+    subtreeWeights[node] = weights[node] + getSubtreeWeight(lefts[node])
+        + getSubtreeWeight(rights[node]);
+    return left;
+  }
+
+  private int rotateLeft(int node) {
+    int right = rights[node];
+    rights[node] = lefts[right];
+    lefts[right] = node;
+    subtreeWeights[right] = subtreeWeights[node];
+    subtreeWeights[node] = weights[node] + getSubtreeWeight(lefts[node])
+        + getSubtreeWeight(rights[node]);
+    return right;
+  }
+
+  private int getSubtreeWeight(int node) {
+    return node == NONE ? 0 : subtreeWeights[node];
+  }
+
+  /**
+   * Orders nodes by value, and then by index so that each node has a distinct position.
+   */
+  private int compare(int a, int b) {
+    return values[a] < values[b] ? -1 : values[b] < values[a] ? 1 : indices[a] - indices[b];
+  }
+
+  /**
+   * Returns the pseudo-random priority of a node, derived from its sample index.
+   */
+  private int priority(int node) {
+    int hash = indices[node] * 0x9E3779B9;
+    return hash ^ (hash >>> 16);
+  }
+
+  private void allocateNodes(int capacity) {
+    indices = new int[capacity];
+    values = new float[capacity];
+    weights = new int[capacity];
+    subtreeWeights = new int[capacity];
+    lefts = new int[capacity];
+    rights = new int[capacity];
+  }
+
+  /**
+   * Doubles the capacity of the node arrays, moving the nodes so that the oldest is at the start.
+   */
+  private void growNodes() {
+    int capacity = indices.length;
+    int[] oldIndices = indices;
+    float[] oldValues = values;
+    int[] oldWeights = weights;
+    int[] oldSubtreeWeights = subtreeWeights;
+    int[] oldLefts = lefts;
+    int[] oldRights = rights;
+    allocateNodes(capacity * 2);
+    for (int i = 0; i < sampleCount; i++) {
+      int oldNode = (oldestNode + i) % capacity;
+      indices[i] = oldIndices[oldNode];
+      values[i] = oldValues[oldNode];
+      weights[i] = oldWeights[oldNode];
+      subtreeWeights[i] = oldSubtreeWeights[oldNode];
+      lefts[i] = moveNode(oldLefts[oldNode], capacity);
+      rights[i] = moveNode(oldRights[oldNode], capacity);
+    }
+    root = moveNode(root, capacity);
+    oldestNode = 0;
+  }
 
+  private int moveNode(int oldNode, int oldCapacity) {
+    return oldNode == NONE ? NONE : (oldNode - oldestNode + oldCapacity) % oldCapacity;
   }
 
 }